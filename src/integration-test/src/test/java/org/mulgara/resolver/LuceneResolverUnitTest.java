@@ -1096,12 +1096,18 @@ public class LuceneResolverUnitTest extends TestCase {
   }
 
   private static class TestMutableLocalQuery implements MutableLocalQuery {
+    private final Query query;
     private ConstraintExpression expr;
 
     public TestMutableLocalQuery(Query query) {
+      this.query = query;
       expr = query.getConstraintExpression();
     }
 
+    public Query getQuery() {
+      return query;
+    }
+
     public ConstraintExpression getConstraintExpression() {
       return expr;
     }
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2008 Fedora Commons, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mulgara.krule;
+
+/**
+ * An append-only log of the localized triples inserted into the target graph during
+ * a single run of a rule structure. Rules record their position in the log each time
+ * they are executed, so the triples after that position are the delta that a rule has
+ * not yet seen. Positions are absolute, so the head of the log can be released once no
+ * rule needs it any more.
+ *
+ * @created 2026-10-17
+ * @copyright &copy; 2008 <a href="http://www.fedora-commons.org/">Fedora Commons</a>
+ */
+class InferenceLog {
+
+  /** The number of longs used for each triple. */
+  private static final int WIDTH = 3;
+
+  /** The initial number of triples the log has space for. */
+  private static final int INITIAL_SIZE = 1024;
+
+  /** The retained triples, stored as consecutive subject/predicate/object values. */
+  private long[] triples = new long[INITIAL_SIZE * WIDTH];
+
+  /** The number of triples currently retained in the array. */
+  private int length = 0;
+
+  /** The absolute position of the first retained triple. */
+  private long offset = 0;
+
+
+  /**
+   * Appends a triple to the log.
+   * @param s The subject of the triple.
+   * @param p The predicate of the triple.
+   * @param o The object of the triple.
+   */
+  void add(long s, long p, long o) {
+    if ((length + 1) * WIDTH > triples.length) {
+      if (length >= Integer.MAX_VALUE / (2 * WIDTH)) throw new IllegalStateException("Inference log is full");
+      long[] t = new long[triples.length * 2];
+      System.arraycopy(triples, 0, t, 0, length * WIDTH);
+      triples = t;
+    }
+    int i = length++ * WIDTH;
+    triples[i] = s;
+    triples[i + 1] = p;
+    triples[i + 2] = o;
+  }
+
+
+  /**
+   * Gets the absolute position after the last triple in the log.
+   * @return The position that the next triple will be written to.
+   */
+  long end() {
+    return offset + length;
+  }
+
+
+  /**
+   * Gets a single node from a triple in the log.
+   * @param position The absolute position of the triple.
+   * @param column The column of the node, 0 for subject, 1 for predicate, 2 for object.
+   * @return The node at the requested location.
+   * @throws IndexOutOfBoundsException If the position has been released or is past the end.
+   */
+  long get(long position, int column) {
+    if (position < offset || position >= end()) {
+      throw new IndexOutOfBoundsException("Position " + position + " is outside the log: [" + offset + "," + end() + ")");
+    }
+    return triples[(int)(position - offset) * WIDTH + column];
+  }
+
+
+  /**
+   * Discards all triples before a given position. The space is only reclaimed once
+   * at least half of the log can be discarded, to keep the copying cost linear.
+   * @param position The absolute position of the first triple that is still required.
+   */
+  void release(long position) {
+    int discard = (int)(Math.min(position, end()) - offset);
+    if (discard <= 0 || discard < length / 2) return;
+    System.arraycopy(triples, discard * WIDTH, triples, 0, (length - discard) * WIDTH);
+    length -= discard;
+    offset += discard;
+  }
+
+}
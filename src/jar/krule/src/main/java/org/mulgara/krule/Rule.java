@@ -21,6 +21,7 @@ import static org.mulgara.krule.RuleStructure.UNINITIALIZED;
 
 import java.io.Serializable;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
@@ -29,20 +30,35 @@ import java.util.List;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
+import org.jrdf.graph.Node;
 import org.mulgara.query.Answer;
 import org.mulgara.query.AnswerImpl;
+import org.mulgara.query.ConstantValue;
+import org.mulgara.query.ConstraintConjunction;
+import org.mulgara.query.ConstraintElement;
+import org.mulgara.query.ConstraintExpression;
+import org.mulgara.query.ConstraintImpl;
 import org.mulgara.query.Cursor;
+import org.mulgara.query.GraphExpression;
+import org.mulgara.query.GraphResource;
+import org.mulgara.query.GraphUnion;
+import org.mulgara.query.LocalNode;
 import org.mulgara.query.Query;
 import org.mulgara.query.QueryException;
+import org.mulgara.query.SelectElement;
 import org.mulgara.query.TuplesException;
 import org.mulgara.query.Variable;
+import org.mulgara.query.rdf.URIReferenceImpl;
 import org.mulgara.resolver.OperationContext;
+import org.mulgara.resolver.spi.LocalizeException;
 import org.mulgara.resolver.spi.LocalizedTuples;
 import org.mulgara.resolver.spi.Resolver;
 import org.mulgara.resolver.spi.ResolverException;
 import org.mulgara.resolver.spi.Statements;
 import org.mulgara.resolver.spi.SystemResolver;
+import org.mulgara.store.tuples.LiteralTuples;
 import org.mulgara.store.tuples.Tuples;
+import org.mulgara.store.tuples.TuplesOperations;
 
 /**
  * Represents a single executable rule.
@@ -79,6 +95,18 @@ public class Rule implements Serializable {
   /** The structure containing this rule */
   protected RuleStructure ruleStruct;
 
+  /** The log of inferred triples for the current run, or <code>null</code> for full evaluation only. */
+  private transient InferenceLog log;
+
+  /** The position in the log that this rule has seen, or {@link RuleStructure#UNINITIALIZED} if not yet run. */
+  private transient long logPosition = UNINITIALIZED;
+
+  /** The localized body of the rule, or <code>null</code> if it cannot be evaluated incrementally. */
+  private transient BodyConstraint[] body;
+
+  /** The localized constants in the selection, indexed by selection column. */
+  private transient long[] selectConstants;
+
   // TODO: Change this to a map of constraints to longs
 
   /**
@@ -177,6 +205,10 @@ public class Rule implements Serializable {
    */
   public void execute(OperationContext context, Resolver resolver, SystemResolver sysResolver) throws QueryException, TuplesException, ResolverException {
     if (targetGraph == UNINITIALIZED) throw new IllegalStateException("Target graph has not been set");
+    if (log != null) {
+      executeSemiNaive(context, resolver, sysResolver);
+      return;
+    }
     // see if this rule needs to be run
     Answer answer = null;
     try {
@@ -217,6 +249,351 @@ public class Rule implements Serializable {
   }
 
 
+  /**
+   * Prepares this rule for a new run of the rule structure. The first execution in a run
+   * always evaluates the full query.
+   *
+   * @param log The log of triples inferred during the run, or <code>null</code> if every
+   *        execution is to evaluate the full query.
+   */
+  void startRun(InferenceLog log) {
+    this.log = log;
+    logPosition = UNINITIALIZED;
+    body = null;
+    selectConstants = null;
+  }
+
+
+  /**
+   * Gets the earliest position in the inference log that this rule may still need to read.
+   *
+   * @return The position of the first triple this rule has not seen, or {@link Long#MAX_VALUE}
+   *         if this rule will never read from the log.
+   */
+  long getLogPosition() {
+    return (log == null || logPosition == UNINITIALIZED || body == null) ? Long.MAX_VALUE : logPosition;
+  }
+
+
+  /**
+   * Runs this rule with semi-naive evaluation. The first execution in a run evaluates the
+   * full query, as do all executions of rules that are not a simple conjunction of constraints.
+   * After that, each constraint that reads from the target graph is evaluated in turn against
+   * only the triples inferred since the last execution, and joined to the full data for the
+   * remaining constraints. Only triples not already in the target graph are inserted and logged.
+   *
+   * @param context The context to query against.
+   * @param resolver The resolver to add data with.
+   * @param sysResolver The resolver to localize data with.
+   */
+  private void executeSemiNaive(OperationContext context, Resolver resolver, SystemResolver sysResolver) throws QueryException, TuplesException, ResolverException {
+    long end = log.end();
+    LiteralTuples inferred;
+    if (logPosition == UNINITIALIZED || body == null) {
+      if (logPosition == UNINITIALIZED) body = localizeBody(context, sysResolver);
+      logPosition = end;
+      inferred = evaluateFull(context, resolver, sysResolver);
+      if (inferred == null) return;
+    } else {
+      if (logPosition == end) {
+        logger.debug("Rule <" + name + "> is up to date.");
+        return;
+      }
+      logger.debug("Rule <" + name + "> evaluating " + (end - logPosition) + " new statements");
+      inferred = evaluateDelta(context, resolver, logPosition, end);
+      logPosition = end;
+    }
+    try {
+      long newCount = inferred.getRowCount();
+      if (newCount == 0) {
+        logger.debug("Rule <" + name + "> inferred no new statements.");
+        return;
+      }
+      logger.debug("Rule <" + name + "> inferred " + newCount + " new statements");
+      Statements statements = new TuplesStatements((Tuples)inferred.clone());
+      try {
+        resolver.modifyModel(targetGraph, statements, true);
+      } finally {
+        statements.close();
+      }
+      inferred.beforeFirst();
+      while (inferred.next()) log.add(inferred.getColumnValue(0), inferred.getColumnValue(1), inferred.getColumnValue(2));
+    } finally {
+      inferred.close();
+    }
+    scheduleTriggeredRules();
+  }
+
+
+  /**
+   * Evaluates the full query for this rule, keeping only the statements that are new.
+   *
+   * @return The new statements, or <code>null</code> if the results have not changed since
+   *         the last time the full query was evaluated.
+   */
+  private LiteralTuples evaluateFull(OperationContext context, Resolver resolver, SystemResolver sysResolver) throws QueryException, TuplesException {
+    Answer answer = null;
+    try {
+      answer = context.doQuery(query);
+    } catch (Exception e) {
+      throw new QueryException("Unable to access data in rule.", e);
+    }
+    try {
+      long newCount = answer.getRowCount();
+      if (newCount == lastCount) {
+        logger.debug("Rule <" + name + "> is up to date.");
+        return null;
+      }
+      lastCount = newCount;
+      Tuples rows = new LocalizedTuples(sysResolver, answer, true);
+      try {
+        int[] columns = new int[rows.getNumberOfVariables()];
+        for (int c = 0; c < columns.length; c++) columns[c] = c;
+        LiteralTuples inferred = newStatementTuples();
+        collectNew(rows, columns, resolver, inferred, new HashSet<StatementKey>());
+        return inferred;
+      } finally {
+        rows.close();
+      }
+    } finally {
+      answer.close();
+    }
+  }
+
+
+  /**
+   * Evaluates this rule against a range of the inference log.
+   *
+   * @param context The context to resolve the full constraints against.
+   * @param resolver The resolver for the target graph.
+   * @param from The first position in the log to evaluate.
+   * @param to The position after the last triple in the log to evaluate.
+   * @return The new statements inferred from the log.
+   */
+  private LiteralTuples evaluateDelta(OperationContext context, Resolver resolver, long from, long to) throws QueryException, TuplesException {
+    LiteralTuples inferred = newStatementTuples();
+    Set<StatementKey> seen = new HashSet<StatementKey>();
+    try {
+      for (int i = 0; i < body.length; i++) {
+        if (!body[i].readsTarget) continue;
+        List<Tuples> operands = new ArrayList<Tuples>(body.length);
+        try {
+          Tuples delta = body[i].resolveDelta(log, from, to);
+          operands.add(delta);
+          if (delta.getRowCardinality() == Cursor.ZERO) continue;
+          for (int j = 0; j < body.length; j++) {
+            if (j != i) operands.add(body[j].resolve(context));
+          }
+          Tuples joined = TuplesOperations.join(operands);
+          try {
+            collectNew(joined, selectColumns(joined), resolver, inferred, seen);
+          } finally {
+            joined.close();
+          }
+        } finally {
+          for (Tuples t: operands) t.close();
+        }
+      }
+    } catch (QueryException e) {
+      inferred.close();
+      throw e;
+    } catch (TuplesException e) {
+      inferred.close();
+      throw e;
+    }
+    return inferred;
+  }
+
+
+  /**
+   * Maps the selection of the query onto the columns of a tuples.
+   *
+   * @param tuples The result of evaluating the rule body.
+   * @return An array with an entry for each selection column, holding the column in the tuples,
+   *         or -1 if the selection column is a constant from {@link #selectConstants}.
+   */
+  private int[] selectColumns(Tuples tuples) throws TuplesException {
+    List<SelectElement> selection = query.getVariableList();
+    int[] columns = new int[selection.size()];
+    for (int c = 0; c < columns.length; c++) {
+      SelectElement e = selection.get(c);
+      columns[c] = (e instanceof Variable) ? tuples.getColumnIndex((Variable)e) : -1;
+    }
+    return columns;
+  }
+
+
+  /**
+   * Reads the statements from the rows of a tuples, and adds the ones not already in the target
+   * graph to a set of inferred statements. Each statement is only added once.
+   *
+   * @param rows The rows to convert to statements. Each row holds a multiple of 3 nodes.
+   * @param columns The column in the rows for each node, or -1 for a constant selection value.
+   * @param resolver The resolver for the target graph.
+   * @param inferred The tuples to add the new statements to.
+   * @param seen The statements already considered for <var>inferred</var>.
+   */
+  private void collectNew(Tuples rows, int[] columns, Resolver resolver, LiteralTuples inferred, Set<StatementKey> seen) throws QueryException, TuplesException {
+    long[] statement = new long[3];
+    rows.beforeFirst();
+    while (rows.next()) {
+      for (int t = 0; t < columns.length; t += 3) {
+        boolean bound = true;
+        for (int n = 0; n < 3; n++) {
+          int c = columns[t + n];
+          statement[n] = c < 0 ? selectConstants[t + n] : rows.getColumnValue(c);
+          if (statement[n] == Tuples.UNBOUND) bound = false;
+        }
+        if (bound && seen.add(new StatementKey(statement)) && !inTarget(resolver, statement)) {
+          inferred.appendTuple(statement);
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Tests if a statement is already in the target graph.
+   *
+   * @param resolver The resolver for the target graph.
+   * @param statement The localized subject, predicate and object of the statement.
+   * @return <code>true</code> if the statement is in the target graph.
+   */
+  private boolean inTarget(Resolver resolver, long[] statement) throws QueryException, TuplesException {
+    Tuples t = resolver.resolve(new ConstraintImpl(new LocalNode(statement[0]), new LocalNode(statement[1]),
+        new LocalNode(statement[2]), new LocalNode(targetGraph)));
+    try {
+      return t.getRowCardinality() != Cursor.ZERO;
+    } finally {
+      t.close();
+    }
+  }
+
+
+  /**
+   * Creates an empty tuples for holding inferred statements.
+   *
+   * @return A new tuples with subject, predicate and object columns.
+   */
+  private static LiteralTuples newStatementTuples() {
+    return new LiteralTuples(new Variable[] { Statements.SUBJECT, Statements.PREDICATE, Statements.OBJECT });
+  }
+
+
+  /**
+   * Localizes the body of the rule for incremental evaluation. This is only possible when the
+   * where clause is a conjunction of simple constraints over a union of graphs, with no having clause.
+   *
+   * @param context The context to find the canonical graphs with.
+   * @param sysResolver The resolver to localize nodes with.
+   * @return The localized constraints, or <code>null</code> if the rule needs full evaluation.
+   * @throws QueryException If the nodes in the query could not be localized.
+   */
+  private BodyConstraint[] localizeBody(OperationContext context, SystemResolver sysResolver) throws QueryException {
+    if (query.getHavingExpression() != null) return null;
+    List<ConstraintImpl> conjuncts = new ArrayList<ConstraintImpl>();
+    if (!flatten(query.getConstraintExpression(), conjuncts)) return null;
+    try {
+      List<SelectElement> selection = query.getVariableList();
+      long[] constants = new long[selection.size()];
+      for (int c = 0; c < constants.length; c++) {
+        SelectElement e = selection.get(c);
+        if (e instanceof ConstantValue) {
+          constants[c] = localize(((ConstantValue)e).getValue(), sysResolver);
+        } else if (!(e instanceof Variable)) {
+          return null;
+        }
+      }
+
+      BodyConstraint[] result = new BodyConstraint[conjuncts.size()];
+      List<Long> defaultGraphs = null;
+      for (int i = 0; i < result.length; i++) {
+        ConstraintImpl c = conjuncts.get(i);
+        long[] nodes = new long[3];
+        Variable[] vars = new Variable[3];
+        for (int n = 0; n < 3; n++) {
+          ConstraintElement e = c.getElement(n);
+          if (e instanceof Variable) vars[n] = (Variable)e;
+          else nodes[n] = localize(e, sysResolver);
+        }
+        List<Long> graphs;
+        ConstraintElement g = c.getModel();
+        if (g.equals(Variable.FROM)) {
+          if (defaultGraphs == null) {
+            defaultGraphs = new ArrayList<Long>();
+            if (!localizeGraphs(query.getModelExpression(), defaultGraphs, context, sysResolver)) return null;
+          }
+          graphs = defaultGraphs;
+        } else if (g instanceof Variable) {
+          return null;
+        } else {
+          graphs = Collections.singletonList(context.getCanonicalModel(localize(g, sysResolver)));
+        }
+        result[i] = new BodyConstraint(vars, nodes, graphs, graphs.contains(targetGraph));
+      }
+      selectConstants = constants;
+      logger.debug("Rule <" + name + "> will be evaluated incrementally");
+      return result;
+    } catch (LocalizeException e) {
+      throw new QueryException("Unable to localize the query for rule: " + name, e);
+    }
+  }
+
+
+  /**
+   * Collects the simple constraints of a conjunction.
+   *
+   * @param expr The expression to flatten.
+   * @param conjuncts The list to add the constraints to.
+   * @return <code>true</code> if the expression only contained conjunctions of simple constraints.
+   */
+  private static boolean flatten(ConstraintExpression expr, List<ConstraintImpl> conjuncts) {
+    if (expr instanceof ConstraintConjunction) {
+      for (ConstraintExpression e: ((ConstraintConjunction)expr).getElements()) {
+        if (!flatten(e, conjuncts)) return false;
+      }
+      return true;
+    }
+    if (expr == null || expr.getClass() != ConstraintImpl.class) return false;
+    conjuncts.add((ConstraintImpl)expr);
+    return true;
+  }
+
+
+  /**
+   * Localizes the graphs in a union of graphs.
+   *
+   * @param expr The graph expression.
+   * @param graphs The list to add the canonical graph nodes to.
+   * @return <code>true</code> if the expression was a union of graph resources.
+   */
+  private static boolean localizeGraphs(GraphExpression expr, List<Long> graphs, OperationContext context, SystemResolver sysResolver) throws LocalizeException {
+    if (expr instanceof GraphUnion) {
+      GraphUnion union = (GraphUnion)expr;
+      return localizeGraphs(union.getLHS(), graphs, context, sysResolver) && localizeGraphs(union.getRHS(), graphs, context, sysResolver);
+    }
+    if (!(expr instanceof GraphResource)) return false;
+    // create the URIReferenceImpl without checking if it is absolute
+    long graph = context.getCanonicalModel(sysResolver.localize(new URIReferenceImpl(((GraphResource)expr).getURI(), false)));
+    if (!graphs.contains(graph)) graphs.add(graph);
+    return true;
+  }
+
+
+  /**
+   * Localizes a constant from the query.
+   *
+   * @param element The constant to localize.
+   * @param sysResolver The resolver to localize with.
+   * @return The local node for the constant.
+   */
+  private static long localize(Object element, SystemResolver sysResolver) throws LocalizeException {
+    if (element instanceof LocalNode) return ((LocalNode)element).getValue();
+    if (element instanceof Node) return sysResolver.localize((Node)element);
+    throw new IllegalArgumentException("Not a constant node: " + element);
+  }
+
+
   /**
    * Schedule subsequent rules.
    */
@@ -258,6 +635,140 @@ public class Rule implements Serializable {
     return new TuplesStatements(new LocalizedTuples(resolver, answer, true));
   }
   
+  /**
+   * A localized constraint from the body of a rule, which can be resolved against either
+   * the full data, or against a range of the inference log.
+   */
+  private static class BodyConstraint {
+
+    /** The variables in each position of the constraint, or <code>null</code> for constants. */
+    private final Variable[] vars;
+
+    /** The local nodes for the constant positions of the constraint. */
+    private final long[] nodes;
+
+    /** The canonical graphs the constraint is resolved against. */
+    private final List<Long> graphs;
+
+    /** Indicates that the target graph is one of the graphs for the constraint. */
+    final boolean readsTarget;
+
+    /** The distinct variables of the constraint, in the order of the delta tuples. */
+    private final Variable[] columnVars;
+
+    /** The column in the delta tuples for each position, or -1 for constants. */
+    private final int[] columns;
+
+    /** Indicates that a position holds the first occurrence of its variable. */
+    private final boolean[] first;
+
+    BodyConstraint(Variable[] vars, long[] nodes, List<Long> graphs, boolean readsTarget) {
+      this.vars = vars;
+      this.nodes = nodes;
+      this.graphs = graphs;
+      this.readsTarget = readsTarget;
+      List<Variable> distinct = new ArrayList<Variable>(3);
+      columns = new int[3];
+      first = new boolean[3];
+      for (int n = 0; n < 3; n++) {
+        if (vars[n] == null) {
+          columns[n] = -1;
+        } else {
+          columns[n] = distinct.indexOf(vars[n]);
+          if (columns[n] < 0) {
+            first[n] = true;
+            columns[n] = distinct.size();
+            distinct.add(vars[n]);
+          }
+        }
+      }
+      columnVars = distinct.toArray(new Variable[distinct.size()]);
+    }
+
+    /**
+     * Resolves this constraint against all of its graphs.
+     * @param context The context to resolve against.
+     * @return The tuples satisfying the constraint.
+     */
+    Tuples resolve(OperationContext context) throws QueryException, TuplesException {
+      ConstraintElement[] e = new ConstraintElement[3];
+      for (int n = 0; n < 3; n++) e[n] = vars[n] != null ? vars[n] : new LocalNode(nodes[n]);
+      List<Tuples> results = new ArrayList<Tuples>(graphs.size());
+      try {
+        for (long g: graphs) results.add(context.resolve(new ConstraintImpl(e[0], e[1], e[2], new LocalNode(g))));
+        return results.size() == 1 ? (Tuples)results.get(0).clone() : TuplesOperations.append(results);
+      } finally {
+        for (Tuples t: results) t.close();
+      }
+    }
+
+    /**
+     * Resolves this constraint against a range of the inference log.
+     * @param log The log of inferred statements.
+     * @param from The first position in the log to resolve against.
+     * @param to The position after the last statement in the log to resolve against.
+     * @return The tuples satisfying the constraint for the statements in the log range.
+     */
+    Tuples resolveDelta(InferenceLog log, long from, long to) throws TuplesException {
+      LiteralTuples delta = new LiteralTuples(columnVars);
+      long[] row = new long[columnVars.length];
+      for (long pos = from; pos < to; pos++) {
+        if (matches(log, pos, row)) delta.appendTuple(row);
+      }
+      return delta;
+    }
+
+    /**
+     * Tests a statement in the log against this constraint, and binds the variables if it matches.
+     * @param log The log of inferred statements.
+     * @param pos The position of the statement to test.
+     * @param row The row to bind the variables into.
+     * @return <code>true</code> if the statement matches the constraint.
+     */
+    private boolean matches(InferenceLog log, long pos, long[] row) {
+      for (int n = 0; n < 3; n++) {
+        long node = log.get(pos, n);
+        if (columns[n] < 0) {
+          if (node != nodes[n]) return false;
+        } else if (first[n]) {
+          row[columns[n]] = node;
+        } else if (row[columns[n]] != node) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+
+  /**
+   * A localized statement, for finding statements that have already been inferred.
+   */
+  private static final class StatementKey {
+
+    private final long subject;
+    private final long predicate;
+    private final long object;
+
+    StatementKey(long[] statement) {
+      subject = statement[0];
+      predicate = statement[1];
+      object = statement[2];
+    }
+
+    public boolean equals(Object o) {
+      if (!(o instanceof StatementKey)) return false;
+      StatementKey k = (StatementKey)o;
+      return subject == k.subject && predicate == k.predicate && object == k.object;
+    }
+
+    public int hashCode() {
+      long h = (subject * 31 + predicate) * 31 + object;
+      return (int)(h ^ (h >>> 32));
+    }
+  }
+
+
   /**
    * Wrapper for converting a Tuples to a Statements object.  Unlike the
    * TuplesWrapperStatements class, this class handles Tuples whose row length is
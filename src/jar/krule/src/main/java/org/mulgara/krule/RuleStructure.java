@@ -61,6 +61,9 @@ public class RuleStructure implements Rules, Serializable {
   /** Used to indicate that a gNode is not configured */
   static final long UNINITIALIZED = -1;
 
+  /** The property for disabling semi-naive evaluation of rules. */
+  public static final String SEMI_NAIVE_PROP = "mulgara.krule.semiNaive";
+
   /** Logger.  */
   private static Logger logger = Logger.getLogger(RuleStructure.class.getName());
 
@@ -221,6 +224,10 @@ public class RuleStructure implements Rules, Serializable {
     localizeRuleTarget(context, systemResolver);
     Resolver resolver = extractTargetResolver(context);
 
+    // set up the log of inferred statements for incremental evaluation
+    InferenceLog log = isSemiNaive() ? new InferenceLog() : null;
+    for (Rule rule: rules) rule.startRun(log);
+
     // set up the run queue
     runQueue = new LinkedHashSet<Rule>(rules);
     // fill the run queue
@@ -236,6 +243,7 @@ public class RuleStructure implements Rules, Serializable {
         logger.debug("Executing rule: " + currentRule);
         // execute the rule
         currentRule.execute(context, resolver, systemResolver);
+        if (log != null) releaseLog(log);
       }
     } catch (TuplesException te) {
       logger.error("Error getting data within rule: " + currentRule);
@@ -246,11 +254,39 @@ public class RuleStructure implements Rules, Serializable {
     } catch (QueryException qe) {
       logger.error("Error executing rule: " + currentRule, qe);
       throw new RulesException("Error executing rule: " + currentRule, qe);
+    } finally {
+      for (Rule rule: rules) rule.startRun(null);
     }
     logger.debug("All rules complete");
   }
 
 
+  /**
+   * Determines if rules are to be evaluated incrementally, using only the statements
+   * inferred since their last execution. This is enabled unless the
+   * {@link #SEMI_NAIVE_PROP} property is set to <code>false</code>.
+   *
+   * @return <code>true</code> for semi-naive evaluation, or <code>false</code> to always
+   *         evaluate the full query for each rule.
+   */
+  private static boolean isSemiNaive() {
+    String semiNaive = System.getProperty(SEMI_NAIVE_PROP);
+    return semiNaive == null || !semiNaive.trim().equalsIgnoreCase("false");
+  }
+
+
+  /**
+   * Discards the statements in the inference log that have been seen by every rule.
+   *
+   * @param log The log of inferred statements.
+   */
+  private void releaseLog(InferenceLog log) {
+    long position = Long.MAX_VALUE;
+    for (Rule rule: rules) position = Math.min(position, rule.getLogPosition());
+    log.release(position);
+  }
+
+
   /**
    * Schedules a rule to be run.
    * 
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2008 Fedora Commons, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mulgara.krule;
+
+// Third party packages
+import junit.framework.*;
+
+/**
+ * Test case for {@link InferenceLog}.
+ *
+ * @created 2026-10-17
+ * @copyright &copy; 2008 <a href="http://www.fedora-commons.org/">Fedora Commons</a>
+ */
+public class InferenceLogUnitTest extends TestCase {
+
+  /**
+   * Constructs a new test with the given name.
+   * @param name the name of the test
+   */
+  public InferenceLogUnitTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Hook for test runner to obtain a test suite from.
+   * @return The test suite
+   */
+  public static Test suite() {
+    TestSuite testSuite = new TestSuite();
+    testSuite.addTest(new InferenceLogUnitTest("testAdd"));
+    testSuite.addTest(new InferenceLogUnitTest("testRelease"));
+    return testSuite;
+  }
+
+  /**
+   * Default text runner.
+   * @param args The command line arguments
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+
+  /**
+   * Triples are read back from their positions as the log grows.
+   */
+  public void testAdd() {
+    InferenceLog log = new InferenceLog();
+    assertEquals(0, log.end());
+    for (int i = 0; i < 3000; i++) log.add(i, i + 1, i + 2);
+    assertEquals(3000, log.end());
+    for (int i = 0; i < 3000; i += 7) {
+      assertEquals(i, log.get(i, 0));
+      assertEquals(i + 1, log.get(i, 1));
+      assertEquals(i + 2, log.get(i, 2));
+    }
+    try {
+      log.get(3000, 0);
+      fail("Read past the end of the log");
+    } catch (IndexOutOfBoundsException e) { }
+  }
+
+  /**
+   * Released triples can't be read, and positions are unchanged by a release.
+   */
+  public void testRelease() {
+    InferenceLog log = new InferenceLog();
+    for (int i = 0; i < 10; i++) log.add(i, 0, 0);
+
+    // less than half of the log is kept
+    log.release(2);
+    assertEquals(0, log.get(0, 0));
+
+    log.release(6);
+    assertEquals(10, log.end());
+    assertEquals(6, log.get(6, 0));
+    try {
+      log.get(5, 0);
+      fail("Read a released triple");
+    } catch (IndexOutOfBoundsException e) { }
+
+    log.add(10, 0, 0);
+    assertEquals(11, log.end());
+    assertEquals(10, log.get(10, 0));
+
+    // releasing everything leaves an empty log at the same position
+    log.release(Long.MAX_VALUE);
+    assertEquals(11, log.end());
+    log.add(11, 0, 0);
+    assertEquals(11, log.get(11, 0));
+  }
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright 2008 Fedora Commons, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mulgara.krule;
+
+// Java 2 standard packages
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Third party packages
+import junit.framework.*;
+import org.jrdf.graph.Node;
+
+// Locally written packages
+import org.mulgara.query.ArrayAnswer;
+import org.mulgara.query.ConstantValue;
+import org.mulgara.query.Constraint;
+import org.mulgara.query.ConstraintConjunction;
+import org.mulgara.query.ConstraintElement;
+import org.mulgara.query.ConstraintExpression;
+import org.mulgara.query.ConstraintImpl;
+import org.mulgara.query.GraphResource;
+import org.mulgara.query.LocalNode;
+import org.mulgara.query.Query;
+import org.mulgara.query.SelectElement;
+import org.mulgara.query.Variable;
+import org.mulgara.query.rdf.URIReferenceImpl;
+import org.mulgara.resolver.OperationContext;
+import org.mulgara.resolver.spi.Statements;
+import org.mulgara.resolver.spi.SystemResolver;
+import org.mulgara.resolver.spi.TuplesWrapperResolution;
+import org.mulgara.store.tuples.LiteralTuples;
+import org.mulgara.store.tuples.Tuples;
+import org.mulgara.store.tuples.TuplesOperations;
+
+/**
+ * Test case for {@link RuleStructure}, running a small rule set over an in-memory graph.
+ *
+ * @created 2026-10-17
+ * @copyright &copy; 2008 <a href="http://www.fedora-commons.org/">Fedora Commons</a>
+ */
+public class RuleStructureUnitTest extends TestCase {
+
+  /** The graph holding both the base data and the inferred statements. */
+  private static final URI GRAPH = URI.create("test:graph");
+
+  /** The length of the chain of statements the rules are run over. */
+  private static final int CHAIN = 6;
+
+  private final Variable a = new Variable("a");
+  private final Variable b = new Variable("b");
+  private final Variable c = new Variable("c");
+
+  /** The statements in the store, as lists of subject, predicate, object and graph. */
+  private Set<List<Long>> store;
+
+  /** The nodes in the store, indexed by local node. */
+  private List<Node> nodes;
+
+  /** The local node of each node in the store. */
+  private Map<Node,Long> nodeMap;
+
+  /** The number of statements passed to {@link org.mulgara.resolver.spi.Resolver#modifyModel}. */
+  private int inserted;
+
+  /** The number of full queries evaluated for the rules. */
+  private int queries;
+
+  /** The original value of the semi-naive property. */
+  private String semiNaiveProp;
+
+  /**
+   * Constructs a new test with the given name.
+   * @param name the name of the test
+   */
+  public RuleStructureUnitTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Hook for test runner to obtain a test suite from.
+   * @return The test suite
+   */
+  public static Test suite() {
+    TestSuite testSuite = new TestSuite();
+    testSuite.addTest(new RuleStructureUnitTest("testFullEvaluation"));
+    testSuite.addTest(new RuleStructureUnitTest("testSemiNaive"));
+    return testSuite;
+  }
+
+  /**
+   * Default text runner.
+   * @param args The command line arguments
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+
+  public void setUp() {
+    store = new LinkedHashSet<List<Long>>();
+    nodes = new ArrayList<Node>();
+    nodes.add(null);
+    nodeMap = new HashMap<Node,Long>();
+    inserted = 0;
+    queries = 0;
+    semiNaiveProp = System.getProperty(RuleStructure.SEMI_NAIVE_PROP);
+  }
+
+  public void tearDown() {
+    restore(RuleStructure.SEMI_NAIVE_PROP, semiNaiveProp);
+  }
+
+  /**
+   * The rules reach their closure when every execution evaluates the full query.
+   * @throws Exception if the rules fail to run
+   */
+  public void testFullEvaluation() throws Exception {
+    System.setProperty(RuleStructure.SEMI_NAIVE_PROP, "false");
+    runRules();
+    assertClosure();
+  }
+
+  /**
+   * The rules reach the same closure when evaluated against the statements inferred since
+   * their last execution, and each new statement is only inserted once.
+   * @throws Exception if the rules fail to run
+   */
+  public void testSemiNaive() throws Exception {
+    runRules();
+    assertClosure();
+    assertEquals(store.size() - (CHAIN - 1), inserted);
+    // only the first execution of each rule evaluates the full query
+    assertEquals(2, queries);
+  }
+
+  /**
+   * Runs a transitive rule for <code>p</code>, and a rule inferring the inverse <code>q</code>
+   * of <code>p</code>, over a chain of <code>p</code> statements.
+   */
+  private void runRules() throws Exception {
+    for (int i = 1; i < CHAIN; i++) add(i, "p", i + 1);
+
+    RuleStructure rules = new RuleStructure();
+    rules.setTargetModel(GRAPH);
+    rules.add(rule("transitive", a, "p", c, new ConstraintImpl(a, uri("p"), b), new ConstraintImpl(b, uri("p"), c)));
+    rules.add(rule("inverse", b, "q", a, new ConstraintImpl(a, uri("p"), b)));
+    rules.setTrigger("transitive", "transitive");
+    rules.setTrigger("transitive", "inverse");
+
+    SystemResolver resolver = (SystemResolver)proxy(SystemResolver.class);
+    OperationContext context = (OperationContext)proxy(OperationContext.class);
+    rules.run(new Object[] { context, resolver });
+  }
+
+  /**
+   * Checks that the store holds exactly the closure of the chain under the rules.
+   */
+  private void assertClosure() {
+    Set<List<Long>> expected = new LinkedHashSet<List<Long>>();
+    long g = local(new URIReferenceImpl(GRAPH));
+    for (int i = 1; i <= CHAIN; i++) {
+      for (int j = i + 1; j <= CHAIN; j++) {
+        expected.add(Arrays.asList(local(uri(i)), local(uri("p")), local(uri(j)), g));
+        expected.add(Arrays.asList(local(uri(j)), local(uri("q")), local(uri(i)), g));
+      }
+    }
+    assertEquals(expected, store);
+  }
+
+  /**
+   * Creates a rule.
+   * @param name The name of the rule.
+   * @param s The subject of the inferred statements.
+   * @param p The name of the predicate of the inferred statements.
+   * @param o The object of the inferred statements.
+   * @param body The constraints in the body of the rule.
+   * @return The new rule.
+   */
+  private Rule rule(String name, Variable s, String p, Variable o, ConstraintExpression... body) throws Exception {
+    List<SelectElement> selection = Arrays.<SelectElement>asList(s, new ConstantValue(new Variable("k"), uri(p)), o);
+    QueryStruct query = new QueryStruct(selection);
+    query.setWhereClause(body.length == 1 ? body[0] : new ConstraintConjunction(body));
+    query.setGraphExpression(new GraphResource(GRAPH));
+    Rule rule = new Rule(name);
+    rule.setQueryStruct(query);
+    return rule;
+  }
+
+  /**
+   * Evaluates a rule query against the store.
+   * @param query The query, which is a conjunction of constraints with constant selection values.
+   * @return The globalized answer to the query.
+   */
+  private ArrayAnswer query(Query query) throws Exception {
+    List<ConstraintExpression> constraints = new ArrayList<ConstraintExpression>();
+    if (query.getConstraintExpression() instanceof ConstraintConjunction) {
+      constraints.addAll(((ConstraintConjunction)query.getConstraintExpression()).getElements());
+    } else {
+      constraints.add(query.getConstraintExpression());
+    }
+    LocalNode g = new LocalNode(local(new URIReferenceImpl(((GraphResource)query.getModelExpression()).getURI())));
+    List<Tuples> operands = new ArrayList<Tuples>();
+    for (ConstraintExpression expr: constraints) {
+      Constraint constraint = (Constraint)expr;
+      ConstraintElement[] e = new ConstraintElement[4];
+      for (int n = 0; n < 3; n++) {
+        ConstraintElement element = constraint.getElement(n);
+        e[n] = element instanceof Node ? new LocalNode(local((Node)element)) : element;
+      }
+      e[3] = g;
+      operands.add(resolve(new ConstraintImpl(e[0], e[1], e[2], e[3])));
+    }
+
+    Tuples joined = TuplesOperations.join(operands);
+    try {
+      List<SelectElement> selection = query.getVariableList();
+      Variable[] vars = new Variable[selection.size()];
+      for (int i = 0; i < vars.length; i++) {
+        SelectElement e = selection.get(i);
+        vars[i] = e instanceof Variable ? (Variable)e : ((ConstantValue)e).getVariable();
+      }
+      List<Object> values = new ArrayList<Object>();
+      joined.beforeFirst();
+      while (joined.next()) {
+        for (SelectElement e: selection) {
+          values.add(e instanceof Variable ? nodes.get((int)joined.getColumnValue(joined.getColumnIndex((Variable)e))) : ((ConstantValue)e).getValue());
+        }
+      }
+      return new ArrayAnswer(vars, values.toArray());
+    } finally {
+      joined.close();
+      for (Tuples t: operands) t.close();
+    }
+  }
+
+  /**
+   * Resolves a localized constraint against the store.
+   * @param constraint The constraint, with local nodes for its constant elements.
+   * @return The tuples satisfying the constraint.
+   */
+  private Tuples resolve(Constraint constraint) throws Exception {
+    List<Variable> vars = new ArrayList<Variable>();
+    for (int n = 0; n < 4; n++) {
+      ConstraintElement e = constraint.getElement(n);
+      if (e instanceof Variable && !vars.contains(e)) vars.add((Variable)e);
+    }
+    LiteralTuples result = new LiteralTuples(vars.toArray(new Variable[vars.size()]));
+    boolean found = false;
+    for (List<Long> statement: store) {
+      long[] row = new long[vars.size()];
+      boolean matches = true;
+      for (int n = 0; n < 4 && matches; n++) {
+        ConstraintElement e = constraint.getElement(n);
+        if (e instanceof LocalNode) {
+          matches = ((LocalNode)e).getValue() == statement.get(n);
+        } else {
+          int v = vars.indexOf(e);
+          if (row[v] == 0) row[v] = statement.get(n);
+          else matches = row[v] == statement.get(n);
+        }
+      }
+      if (matches) {
+        found = true;
+        if (!vars.isEmpty()) result.appendTuple(row);
+      }
+    }
+    if (!vars.isEmpty()) return result;
+    result.close();
+    return found ? TuplesOperations.unconstrained() : TuplesOperations.empty();
+  }
+
+  /**
+   * Adds statements to the store.
+   * @param graph The graph to add the statements to.
+   * @param statements The statements to add.
+   */
+  private void insert(long graph, Statements statements) throws Exception {
+    statements.beforeFirst();
+    while (statements.next()) {
+      store.add(Arrays.asList(statements.getSubject(), statements.getPredicate(), statements.getObject(), graph));
+      inserted++;
+    }
+  }
+
+  /**
+   * Creates an implementation of the context or resolver interfaces, backed by the store.
+   * @param iface The interface to implement.
+   * @return An object that implements the methods of the interface used by the rules.
+   */
+  private Object proxy(Class<?> iface) {
+    return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { iface }, new InvocationHandler() {
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if (name.equals("hashCode")) return System.identityHashCode(proxy);
+        if (name.equals("equals")) return proxy == args[0];
+        if (name.equals("toString")) return "Test " + method.getDeclaringClass().getSimpleName();
+
+        if (name.equals("localize") || name.equals("localizePersistent")) return local((Node)args[0]);
+        if (name.equals("globalize")) return nodes.get((int)((Long)args[0]).longValue());
+        if (name.equals("getCanonicalModel")) return args[0];
+        if (name.equals("findModelResolverFactory")) return null;
+        if (name.equals("obtainResolver")) return proxy(SystemResolver.class);
+        if (name.equals("resolve")) {
+          Tuples t = resolve((Constraint)args[0]);
+          if (!method.getReturnType().isInstance(t)) t = new TuplesWrapperResolution(t, (Constraint)args[0]);
+          return t;
+        }
+        if (name.equals("doQuery")) {
+          queries++;
+          return query((Query)args[0]);
+        }
+        if (name.equals("modifyModel")) {
+          assertTrue((Boolean)args[2]);
+          insert((Long)args[0], (Statements)args[1]);
+          return null;
+        }
+        throw new UnsupportedOperationException(name);
+      }
+    });
+  }
+
+  /**
+   * Adds a statement to the store.
+   * @param s The number of the subject.
+   * @param p The name of the predicate.
+   * @param o The number of the object.
+   */
+  private void add(int s, String p, int o) {
+    store.add(Arrays.asList(local(uri(s)), local(uri(p)), local(uri(o)), local(new URIReferenceImpl(GRAPH))));
+  }
+
+  /**
+   * Gets the local node for a node, allocating a new one if needed.
+   * @param node The node to localize.
+   * @return The local node.
+   */
+  private long local(Node node) {
+    Long l = nodeMap.get(node);
+    if (l == null) {
+      l = (long)nodes.size();
+      nodes.add(node);
+      nodeMap.put(node, l);
+    }
+    return l;
+  }
+
+  private static URIReferenceImpl uri(int n) {
+    return new URIReferenceImpl(URI.create("test:n" + n));
+  }
+
+  private static URIReferenceImpl uri(String name) {
+    return new URIReferenceImpl(URI.create("test:" + name));
+  }
+
+  private static void restore(String property, String value) {
+    if (value == null) System.clearProperty(property);
+    else System.setProperty(property, value);
+  }
+}
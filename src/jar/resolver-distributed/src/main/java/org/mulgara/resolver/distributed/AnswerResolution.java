@@ -49,20 +49,34 @@ class AnswerResolution extends LocalizedTuples implements Resolution {
   /** The server URI being accessed. */
   private final URI serverUri;
 
+  /** The cache of local nodes for remote nodes, shared by the resolutions of a transaction. */
+  private final LocalizationCache localizationCache;
+
+  /** The last remote node read from each column. Treat as final except in clone. */
+  private Object[] lastNodes;
+
+  /** The local node for the last remote node read from each column. Treat as final except in clone. */
+  private long[] lastValues;
+
 
   /**
    * Construct an AnswerResolution, passing most of the work off to the LocalizedTuples.
    * @param session The current session.
+   * @param localizationCache The cache to localize remote nodes with.
    * @param answer The answer to be wrapped by the parent class.
    * @param constraint the constraint.
    * @throws IllegalArgumentException if <var>constraint<var> is <code>null</code>
    */
-  AnswerResolution(URI serverUri, ResolverSession session, Answer answer, Constraint constraint) throws TuplesException {
+  AnswerResolution(URI serverUri, ResolverSession session, LocalizationCache localizationCache,
+                   Answer answer, Constraint constraint) throws TuplesException {
     super(session, answer);
     logger.debug("Constructed AnswerResolution for distributed resolver");
     if (constraint == null) throw new IllegalArgumentException("Null constraint parameter");
     this.constraint = constraint;
     this.serverUri = serverUri;
+    this.localizationCache = localizationCache;
+    lastNodes = new Object[getNumberOfVariables()];
+    lastValues = new long[lastNodes.length];
     logger.debug("Created resolution on server: " + serverUri + " for: " + constraint);
   }
 
@@ -83,9 +97,19 @@ class AnswerResolution extends LocalizedTuples implements Resolution {
     return true;
   }
 
+  public Object clone() {
+    AnswerResolution copy = (AnswerResolution)super.clone();
+    copy.lastNodes = lastNodes.clone();
+    copy.lastValues = lastValues.clone();
+    return copy;
+  }
+
+
   /**
    * Get the bound value for the column, converting Blank Nodes to a
-   * remote representation when needed.
+   * remote representation when needed.  Sorted answers repeat the values of
+   * their leading columns, so the last value of each column is remembered, and
+   * other values are localized through the cache for the transaction.
    * @param column The column of the bound value.
    * @return the Localized long integer for the bound value.
    * @throws TuplesException Indicates an error getting the value from the string pool.
@@ -94,9 +118,13 @@ class AnswerResolution extends LocalizedTuples implements Resolution {
     try {
       Object obj = answer.getObject(column);
       assert obj instanceof Node;
+      if (obj != null && obj.equals(lastNodes[column])) return lastValues[column];
 
       Node node = obj instanceof BlankNodeImpl ? new ForeignBlankNode(serverUri, (BlankNodeImpl)obj) : (Node)obj;
-      return session.localize(node);
+      long gNode = localizationCache.localize(node);
+      lastNodes[column] = obj;
+      lastValues[column] = gNode;
+      return gNode;
     } catch (LocalizeException e) {
       throw new TuplesException("Couldn't localize column " + column, e);
     }
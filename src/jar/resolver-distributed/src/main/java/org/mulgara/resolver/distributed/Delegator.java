@@ -45,6 +45,15 @@ public interface Delegator {
    */
   public Resolution resolve(Constraint constraint, LocalNode model) throws QueryException, ResolverException;
 
+  /**
+   * Resolve a conjunction of constraints on a remote server as a single query.
+   * @param constraint The constraints to resolve, with graphs on the same server.
+   * @param model The LocalNode containing the model of the first constraint.
+   * @throws QueryException A delegator specific problem occurred resolving the constraint.
+   * @throws ResolverException A delegator specific problem occurred setting up the resolution.
+   */
+  public Resolution resolve(DistributedConstraint constraint, LocalNode model) throws QueryException, ResolverException;
+
   /**
    * Add a set of statements to a model.
    * @param model The <code>long</code> containing the model gNode.
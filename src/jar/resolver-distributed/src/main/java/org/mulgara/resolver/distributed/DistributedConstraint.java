@@ -0,0 +1,204 @@
+/*
+ * Copyright 2008 Fedora Commons, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mulgara.resolver.distributed;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.mulgara.query.Constraint;
+import org.mulgara.query.ConstraintElement;
+import org.mulgara.query.ConstraintExpression;
+import org.mulgara.query.Variable;
+import org.mulgara.resolver.spi.CompoundConstraint;
+
+/**
+ * A conjunction of constraints against graphs on a single remote server, which
+ * is sent to that server as one query.
+ * <p>
+ * The constraints may also be joined to a local expression.  The local
+ * expression is resolved first, and its bindings for the shared variables are
+ * sent to the remote server in batches, so that only the matching remote rows
+ * are returned.  This is a bind join.  The local expression is the inner
+ * expression of this constraint, so other symbolic transformations still apply
+ * to it.
+ * </p>
+ *
+ * @created 2026-10-17
+ */
+public class DistributedConstraint implements CompoundConstraint {
+
+  /** Serialization ID */
+  private static final long serialVersionUID = 3312417092823614532L;
+
+  /** The constraints to resolve on the remote server, in global form. */
+  private final List<Constraint> constraints;
+
+  /** The graph used to find the resolver for this constraint. */
+  private final ConstraintElement model;
+
+  /** The expression to bind the remote constraints with, or <code>null</code>. */
+  private final ConstraintExpression local;
+
+  /** Bindings for the remote variables to send with the constraints, or <code>null</code>. */
+  private final ConstraintExpression bindings;
+
+  /** The variables of the remote constraints. */
+  private final Set<Variable> remoteVariables;
+
+  /** All the variables of this constraint. */
+  private final Set<Variable> variables;
+
+  /**
+   * Creates a conjunction of constraints against graphs on a single server.
+   * @param constraints The constraints to send to the server. These all have graphs on the server.
+   * @param local An expression to resolve locally and use to bind the constraints,
+   *        or <code>null</code> to resolve the constraints on their own.
+   */
+  public DistributedConstraint(List<Constraint> constraints, ConstraintExpression local) {
+    this(constraints, constraints.get(0).getModel(), local, null);
+  }
+
+  /**
+   * Internal constructor for copies with different properties.
+   * @param constraints The constraints to send to the server.
+   * @param model The graph used to find the resolver for this constraint.
+   * @param local The expression to bind the constraints with, or <code>null</code>.
+   * @param bindings The bindings to send with the constraints, or <code>null</code>.
+   */
+  private DistributedConstraint(List<Constraint> constraints, ConstraintElement model,
+                                ConstraintExpression local, ConstraintExpression bindings) {
+    if (constraints.isEmpty()) throw new IllegalArgumentException("No constraints for a distributed constraint");
+    this.constraints = Collections.unmodifiableList(new ArrayList<Constraint>(constraints));
+    this.model = model;
+    this.local = local;
+    this.bindings = bindings;
+    remoteVariables = new LinkedHashSet<Variable>();
+    for (Constraint c: constraints) remoteVariables.addAll(c.getVariables());
+    variables = new LinkedHashSet<Variable>(remoteVariables);
+    if (local != null) variables.addAll(local.getVariables());
+  }
+
+  /**
+   * @return The constraints to send to the remote server.
+   */
+  public List<Constraint> getConstraints() {
+    return constraints;
+  }
+
+  /**
+   * @return The expression to bind the remote constraints with, or <code>null</code>.
+   */
+  public ConstraintExpression getLocal() {
+    return local;
+  }
+
+  /**
+   * @return The bindings to send with the remote constraints, or <code>null</code>.
+   */
+  public ConstraintExpression getBindings() {
+    return bindings;
+  }
+
+  /**
+   * @return The variables of the remote constraints, in the order they appear.
+   */
+  public Set<Variable> getRemoteVariables() {
+    return remoteVariables;
+  }
+
+  /**
+   * Gets the part of this constraint that is resolved on the remote server.
+   * @return This constraint without the local expression.
+   */
+  public DistributedConstraint getRemoteConstraint() {
+    return local == null ? this : new DistributedConstraint(constraints, model, null, bindings);
+  }
+
+  /**
+   * Creates a copy of the remote part of this constraint, restricted by bindings.
+   * @param bindings An expression of <code>mulgara:is</code> constraints on the remote variables.
+   * @return The remote constraints, which will only match the bindings.
+   */
+  public DistributedConstraint bind(ConstraintExpression bindings) {
+    return new DistributedConstraint(constraints, model, null, bindings);
+  }
+
+  /**
+   * Creates a copy of this constraint with different parts.
+   * @param constraints The new remote constraints.
+   * @param model The new graph for finding the resolver.
+   * @param local The new local expression.
+   * @return The new constraint.
+   */
+  DistributedConstraint copy(List<Constraint> constraints, ConstraintElement model, ConstraintExpression local) {
+    return new DistributedConstraint(constraints, model, local, bindings);
+  }
+
+  public ConstraintExpression getInnerExpression() {
+    return local;
+  }
+
+  public DistributedConstraint withInnerExpression(ConstraintExpression inner) {
+    return new DistributedConstraint(constraints, model, inner, bindings);
+  }
+
+  public ConstraintElement getModel() {
+    return model;
+  }
+
+  public ConstraintElement getElement(int index) {
+    throw new IllegalStateException("Cannot index DistributedConstraint");
+  }
+
+  public boolean isRepeating() {
+    return false;
+  }
+
+  public Set<Variable> getVariables() {
+    return variables;
+  }
+
+  /**
+   * Not a binary operation, so not a binary constraint.
+   * @return <code>false</code> to indicate that this operation is not associative.
+   */
+  public boolean isAssociative() {
+    return false;
+  }
+
+  public boolean equals(Object o) {
+    if (!(o instanceof DistributedConstraint)) return false;
+    DistributedConstraint dc = (DistributedConstraint)o;
+    return constraints.equals(dc.constraints) && model.equals(dc.model) &&
+           (local == null ? dc.local == null : local.equals(dc.local)) &&
+           (bindings == null ? dc.bindings == null : bindings.equals(dc.bindings));
+  }
+
+  public int hashCode() {
+    return constraints.hashCode() ^ (local == null ? 0 : local.hashCode());
+  }
+
+  public String toString() {
+    StringBuilder sb = new StringBuilder("DC");
+    sb.append(constraints);
+    if (local != null) sb.append(" bound by ").append(local);
+    return sb.toString();
+  }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2008 Fedora Commons, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mulgara.resolver.distributed;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.jrdf.graph.BlankNode;
+import org.jrdf.graph.Literal;
+import org.jrdf.graph.Node;
+import org.jrdf.graph.URIReference;
+
+import org.mulgara.query.Constraint;
+import org.mulgara.query.ConstraintConjunction;
+import org.mulgara.query.ConstraintDisjunction;
+import org.mulgara.query.ConstraintElement;
+import org.mulgara.query.ConstraintExpression;
+import org.mulgara.query.ConstraintIs;
+import org.mulgara.query.GraphExpression;
+import org.mulgara.query.Value;
+import org.mulgara.query.Variable;
+import org.mulgara.query.rdf.LiteralImpl;
+import org.mulgara.query.rdf.URIReferenceImpl;
+import org.mulgara.resolver.ConstraintOperations;
+import org.mulgara.resolver.spi.ConstraintBindingHandler;
+import org.mulgara.resolver.spi.ConstraintDescriptor;
+import org.mulgara.resolver.spi.ConstraintLocalization;
+import org.mulgara.resolver.spi.QueryEvaluationContext;
+import org.mulgara.resolver.spi.ResolverSession;
+import org.mulgara.store.tuples.Tuples;
+import org.mulgara.store.tuples.TuplesOperations;
+
+/**
+ * Resolves, localizes and binds {@link DistributedConstraint}s.
+ * <p>
+ * A constraint with a local expression is resolved with a bind join.  The local
+ * expression is resolved first, and the distinct values of the variables it
+ * shares with the remote constraints are sent to the remote server in batches
+ * of <code>mulgara.distributed.bindJoinBatchSize</code> rows, as a disjunction
+ * of <code>mulgara:is</code> constraints.  If the local expression is expected
+ * to have more than <code>mulgara.distributed.bindJoinLimit</code> rows, has
+ * more distinct values than that, or binds any of the shared variables to blank
+ * nodes, the remote constraints are resolved on their own and joined locally
+ * instead.
+ * </p>
+ *
+ * @created 2026-10-17
+ */
+public class DistributedConstraintDescriptor implements ConstraintDescriptor, ConstraintLocalization, ConstraintBindingHandler {
+
+  /** Logger. */
+  private static final Logger logger = Logger.getLogger(DistributedConstraintDescriptor.class.getName());
+
+  /** The property for the most rows of a local expression to send to a remote server. */
+  public static final String BIND_JOIN_LIMIT_PROPERTY = "mulgara.distributed.bindJoinLimit";
+
+  /** The property for the number of rows to send to a remote server in each query. */
+  public static final String BIND_JOIN_BATCH_SIZE_PROPERTY = "mulgara.distributed.bindJoinBatchSize";
+
+  /** The default for the most rows of a local expression to send to a remote server. */
+  private static final long DEFAULT_BIND_JOIN_LIMIT = 10000;
+
+  /** The default number of rows to send to a remote server in each query. */
+  private static final int DEFAULT_BIND_JOIN_BATCH_SIZE = 200;
+
+  /** The most rows of a local expression to send to a remote server. */
+  private final long bindJoinLimit;
+
+  /** The number of rows to send to a remote server in each query. */
+  private final int batchSize;
+
+  /**
+   * Creates a descriptor, configured from the system properties.
+   */
+  public DistributedConstraintDescriptor() {
+    this(Long.getLong(BIND_JOIN_LIMIT_PROPERTY, DEFAULT_BIND_JOIN_LIMIT).longValue(),
+         Integer.getInteger(BIND_JOIN_BATCH_SIZE_PROPERTY, DEFAULT_BIND_JOIN_BATCH_SIZE).intValue());
+  }
+
+  /**
+   * Creates a descriptor.
+   * @param bindJoinLimit The most rows of a local expression to send to a remote server.
+   * @param batchSize The number of rows to send to a remote server in each query.
+   */
+  DistributedConstraintDescriptor(long bindJoinLimit, int batchSize) {
+    this.bindJoinLimit = bindJoinLimit;
+    this.batchSize = Math.max(1, batchSize);
+  }
+
+  /**
+   * Tests if bind joins are enabled in the system properties.
+   * @return <code>true</code> unless the bind join limit is set to 0.
+   */
+  static boolean isBindJoinEnabled() {
+    return Long.getLong(BIND_JOIN_LIMIT_PROPERTY, DEFAULT_BIND_JOIN_LIMIT).longValue() > 0;
+  }
+
+  public Class<DistributedConstraint> getConstraintClass() {
+    return DistributedConstraint.class;
+  }
+
+  public Tuples resolve(QueryEvaluationContext queryContext, GraphExpression modelExpr,
+                        ConstraintExpression constraintExpr) throws Exception {
+    assert constraintExpr instanceof DistributedConstraint;
+    DistributedConstraint dc = (DistributedConstraint)constraintExpr;
+    if (dc.getLocal() == null) return ConstraintOperations.resolveModelExpression(queryContext, modelExpr, dc);
+
+    Tuples local = queryContext.resolve(modelExpr, dc.getLocal());
+    try {
+      Tuples remote = bindJoin(queryContext, modelExpr, dc, local);
+      if (remote == null) {
+        if (logger.isDebugEnabled()) logger.debug("Resolving " + dc.getConstraints() + " without local bindings");
+        remote = ConstraintOperations.resolveModelExpression(queryContext, modelExpr, dc.getRemoteConstraint());
+      }
+      try {
+        return TuplesOperations.join(local, remote);
+      } finally {
+        remote.close();
+      }
+    } finally {
+      local.close();
+    }
+  }
+
+  public Constraint rewrite(ConstraintElement newModel, Constraint constraint) throws Exception {
+    assert constraint instanceof DistributedConstraint;
+    DistributedConstraint dc = (DistributedConstraint)constraint;
+    return dc.copy(dc.getConstraints(), newModel, dc.getLocal());
+  }
+
+  /**
+   * Localizes the graph used to find the resolver.  The remote constraints
+   * are kept in global form, since they are sent to another server.
+   */
+  public Constraint localize(QueryEvaluationContext context, Constraint constraint) throws Exception {
+    assert constraint instanceof DistributedConstraint;
+    DistributedConstraint dc = (DistributedConstraint)constraint;
+    return dc.copy(dc.getConstraints(), context.localize(dc.getModel()), dc.getLocal());
+  }
+
+  public ConstraintExpression bindVariables(Map<Variable,Value> bindings, ConstraintExpression constraintExpr) throws Exception {
+    assert constraintExpr instanceof DistributedConstraint;
+    DistributedConstraint dc = (DistributedConstraint)constraintExpr;
+    List<Constraint> bound = new ArrayList<Constraint>(dc.getConstraints().size());
+    for (Constraint c: dc.getConstraints()) bound.add((Constraint)ConstraintOperations.bindVariables(bindings, c));
+    ConstraintExpression local = dc.getLocal();
+    if (local != null) local = ConstraintOperations.bindVariables(bindings, local);
+    return dc.copy(bound, dc.getModel(), local);
+  }
+
+  /**
+   * Resolves the remote constraints, bound to the values of a local expression.
+   * @param queryContext The context to resolve the remote constraints in.
+   * @param modelExpr The graph expression of the query.
+   * @param dc The constraint to resolve.
+   * @param local The resolved local expression.
+   * @return The remote rows matching the local expression, or <code>null</code>
+   *         if the remote constraints should be resolved on their own.
+   * @throws Exception If the remote constraints could not be resolved.
+   */
+  private Tuples bindJoin(QueryEvaluationContext queryContext, GraphExpression modelExpr,
+                          DistributedConstraint dc, Tuples local) throws Exception {
+    List<Variable> shared = new ArrayList<Variable>();
+    for (Variable v: local.getVariables()) {
+      if (dc.getRemoteVariables().contains(v)) shared.add(v);
+    }
+    if (shared.isEmpty() || local.getRowExpectedCount() > bindJoinLimit) return null;
+
+    List<ConstraintExpression> rows = getBindings(queryContext.getResolverSession(), local, shared);
+    if (rows == null) return null;
+
+    List<Tuples> results = new ArrayList<Tuples>();
+    try {
+      for (int start = 0; start < rows.size(); start += batchSize) {
+        int end = Math.min(start + batchSize, rows.size());
+        results.add(resolveBatch(queryContext, modelExpr, dc, new ArrayList<ConstraintExpression>(rows.subList(start, end))));
+      }
+    } catch (Exception e) {
+      close(results);
+      throw e;
+    }
+
+    if (logger.isDebugEnabled()) logger.debug("Bind join of " + dc.getConstraints() + " in " + results.size() + " batches");
+    if (results.isEmpty()) return TuplesOperations.empty();
+    if (results.size() == 1) return results.get(0);
+    try {
+      return TuplesOperations.append(results);
+    } finally {
+      close(results);
+    }
+  }
+
+  /**
+   * Reads the distinct values of the shared variables from a local expression.
+   * Nothing is sent to the remote server until all the values are read, so
+   * giving up on the bind join does not waste any remote queries.
+   * @param session The session to globalize the values with.
+   * @param local The resolved local expression.
+   * @param shared The variables of <var>local</var> that the remote constraints also use.
+   * @return A <code>mulgara:is</code> expression for each row of values, or <code>null</code>
+   *         if there are more than the bind join limit, or a row can't be sent to the server.
+   * @throws Exception If the values could not be read.
+   */
+  private List<ConstraintExpression> getBindings(ResolverSession session, Tuples local,
+                                                 List<Variable> shared) throws Exception {
+    List<ConstraintExpression> rows = new ArrayList<ConstraintExpression>();
+    Tuples values = TuplesOperations.project(local, shared, true);
+    try {
+      int[] columns = new int[shared.size()];
+      for (int c = 0; c < columns.length; c++) columns[c] = values.getColumnIndex(shared.get(c));
+
+      values.beforeFirst();
+      while (values.next()) {
+        // the expected count is only an estimate
+        if (rows.size() == bindJoinLimit) return null;
+        List<ConstraintExpression> row = new ArrayList<ConstraintExpression>(columns.length);
+        for (int c = 0; c < columns.length; c++) {
+          long gNode = values.getColumnValue(columns[c]);
+          if (gNode == Tuples.UNBOUND) continue;
+          ConstraintElement value = toValue(session.globalize(gNode));
+          if (value == null) return null;
+          row.add(new ConstraintIs(shared.get(c), value));
+        }
+        // a row without bindings matches every remote row
+        if (row.isEmpty()) return null;
+        rows.add(row.size() == 1 ? row.get(0) : new ConstraintConjunction(row));
+      }
+      return rows;
+    } finally {
+      values.close();
+    }
+  }
+
+  /**
+   * Resolves the remote constraints for a batch of bindings.
+   * @param queryContext The context to resolve the remote constraints in.
+   * @param modelExpr The graph expression of the query.
+   * @param dc The constraint to resolve.
+   * @param rows The bindings for each row of the batch.
+   * @return The remote rows matching the batch.
+   * @throws Exception If the remote constraints could not be resolved.
+   */
+  private static Tuples resolveBatch(QueryEvaluationContext queryContext, GraphExpression modelExpr,
+                                     DistributedConstraint dc, List<ConstraintExpression> rows) throws Exception {
+    ConstraintExpression bindings = rows.size() == 1 ? rows.get(0) : new ConstraintDisjunction(rows);
+    return ConstraintOperations.resolveModelExpression(queryContext, modelExpr, dc.bind(bindings));
+  }
+
+  /**
+   * Converts a global node into a value that can be sent to another server.
+   * @param node The node to convert.
+   * @return The value, or <code>null</code> for a blank node, which can't be matched on another server.
+   */
+  private static ConstraintElement toValue(Node node) {
+    if (node instanceof BlankNode) return null;
+    if (node instanceof Value) return (Value)node;
+    if (node instanceof URIReference) return new URIReferenceImpl(((URIReference)node).getURI());
+    if (node instanceof Literal) {
+      Literal l = (Literal)node;
+      if (l.getDatatypeURI() != null) return new LiteralImpl(l.getLexicalForm(), l.getDatatypeURI());
+      return new LiteralImpl(l.getLexicalForm(), l.getLanguage());
+    }
+    return null;
+  }
+
+  /**
+   * Closes a list of tuples.
+   * @param tuples The tuples to close.
+   * @throws Exception If any of the tuples could not be closed.
+   */
+  private static void close(List<Tuples> tuples) throws Exception {
+    for (Tuples t: tuples) t.close();
+  }
+}
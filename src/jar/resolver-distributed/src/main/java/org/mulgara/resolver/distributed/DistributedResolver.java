@@ -145,6 +145,9 @@ public class DistributedResolver implements Resolver, TransactionCoordinator {
     if (!(modelElement instanceof LocalNode)) throw new QueryException("Constraint not set to a distributed model.");
 
     try {
+      if (constraint instanceof DistributedConstraint) {
+        return delegator.resolve((DistributedConstraint)constraint, (LocalNode)modelElement);
+      }
       return delegator.resolve(constraint, (LocalNode)modelElement);
     } catch (ResolverException re) {
       throw new QueryException(re.getMessage(), re);
@@ -67,6 +67,10 @@ public class DistributedResolverFactory implements ResolverFactory {
     for (String p: protocols) {
       initializer.addProtocol(p, this);
     }
+
+    // Push conjunctions down to the remote servers
+    initializer.registerNewConstraint(new DistributedConstraintDescriptor());
+    initializer.addSymbolicTransformation(new DistributedTransformer(DistributedConstraintDescriptor.isBindJoinEnabled()));
   }
 
   /**
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2008 Fedora Commons, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mulgara.resolver.distributed;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.jrdf.graph.URIReference;
+
+import org.mulgara.query.Constraint;
+import org.mulgara.query.ConstraintConjunction;
+import org.mulgara.query.ConstraintElement;
+import org.mulgara.query.ConstraintExpression;
+import org.mulgara.query.ConstraintImpl;
+import org.mulgara.query.ConstraintOperation;
+import org.mulgara.query.QueryException;
+import org.mulgara.query.Variable;
+import org.mulgara.resolver.spi.AbstractSymbolicTransformer;
+import org.mulgara.resolver.spi.ResolverException;
+import org.mulgara.resolver.spi.SymbolicTransformationContext;
+import org.mulgara.resolver.spi.SymbolicTransformationException;
+
+/**
+ * Pushes conjunctions of constraints down to remote servers.
+ * <p>
+ * The constraints of a conjunction which are against graphs on the same remote
+ * server are combined into a single {@link DistributedConstraint}, so the
+ * server can join them itself and only return the result of the join.  When a
+ * conjunction has constraints for just one remote server, the rest of the
+ * conjunction shares variables with them, and bind joins are enabled, the rest
+ * of the conjunction is included in the {@link DistributedConstraint} to bind
+ * the remote constraints with.
+ * </p>
+ *
+ * @created 2026-10-17
+ */
+public class DistributedTransformer extends AbstractSymbolicTransformer {
+
+  /** Logger */
+  private static final Logger logger = Logger.getLogger(DistributedTransformer.class);
+
+  /** Whether to create bind joins. */
+  private final boolean bindJoin;
+
+  /**
+   * Creates a transformer.
+   * @param bindJoin <code>true</code> if conjunctions with local constraints
+   *        should be resolved with a bind join.
+   */
+  public DistributedTransformer(boolean bindJoin) {
+    this.bindJoin = bindJoin;
+  }
+
+  @Override
+  protected ConstraintExpression transformOperation(SymbolicTransformationContext context,
+                                                    ConstraintOperation expr)
+        throws SymbolicTransformationException {
+    if (expr instanceof ConstraintConjunction) return transformConj(context, (ConstraintConjunction)expr);
+    return super.transformOperation(context, expr);
+  }
+
+  @Override
+  protected ConstraintExpression transformConstraint(SymbolicTransformationContext context, Constraint c) {
+    return c;
+  }
+
+  /**
+   * Groups the remote constraints of a conjunction by server.
+   * @param context The context to use for looking up graphs.
+   * @param cc The conjunction to transform.
+   * @return A new expression if any constraints were combined, or <var>cc</var> if not.
+   * @throws SymbolicTransformationException If a graph could not be looked up.
+   */
+  public ConstraintExpression transformConj(SymbolicTransformationContext context, ConstraintConjunction cc)
+        throws SymbolicTransformationException {
+    List<ConstraintExpression> retainedArgs = new ArrayList<ConstraintExpression>();
+    Map<URI,List<Constraint>> remoteArgs = new LinkedHashMap<URI,List<Constraint>>();
+    Map<URI,DistributedConstraint> pushedArgs = new LinkedHashMap<URI,DistributedConstraint>();
+
+    boolean transformed = false;
+
+    for (ConstraintExpression arg: cc.getElements()) {
+      URI server = null;
+      if (arg instanceof DistributedConstraint) {
+        DistributedConstraint dc = (DistributedConstraint)arg;
+        if (dc.getLocal() == null) server = getServer(context, dc.getModel());
+        if (server != null && !pushedArgs.containsKey(server)) {
+          pushedArgs.put(server, dc);
+          continue;
+        }
+      } else if (arg.getClass() == ConstraintImpl.class) {
+        server = getServer(context, ((Constraint)arg).getModel());
+      }
+
+      if (server != null) {
+        List<Constraint> serverArgs = remoteArgs.get(server);
+        if (serverArgs == null) {
+          serverArgs = new ArrayList<Constraint>();
+          remoteArgs.put(server, serverArgs);
+        }
+        if (arg instanceof DistributedConstraint) serverArgs.addAll(((DistributedConstraint)arg).getConstraints());
+        else serverArgs.add((Constraint)arg);
+      } else {
+        ConstraintExpression trans = transformExpression(context, arg);
+        retainedArgs.add(trans);
+        if (arg != trans) transformed = true;
+      }
+    }
+
+    // Combine the constraints for each server with any constraint already pushed to it
+    List<DistributedConstraint> serverArgs = new ArrayList<DistributedConstraint>();
+    for (Map.Entry<URI,DistributedConstraint> e: pushedArgs.entrySet()) {
+      DistributedConstraint dc = e.getValue();
+      List<Constraint> args = remoteArgs.remove(e.getKey());
+      if (args != null) {
+        List<Constraint> combined = new ArrayList<Constraint>(dc.getConstraints());
+        combined.addAll(args);
+        dc = new DistributedConstraint(combined, null);
+        transformed = true;
+      }
+      serverArgs.add(dc);
+    }
+    for (List<Constraint> args: remoteArgs.values()) {
+      serverArgs.add(new DistributedConstraint(args, null));
+      // a single constraint is already sent to the server on its own
+      if (args.size() > 1) transformed = true;
+    }
+
+    // Bind the constraints for a single server with the rest of the conjunction
+    if (bindJoin && serverArgs.size() == 1 && sharesVariables(serverArgs.get(0), retainedArgs)) {
+      DistributedConstraint dc = serverArgs.get(0);
+      ConstraintExpression local = retainedArgs.size() == 1 ? retainedArgs.get(0) : new ConstraintConjunction(retainedArgs);
+      if (logger.isDebugEnabled()) logger.debug("Bind join of " + dc.getConstraints() + " with " + local);
+      return new DistributedConstraint(dc.getConstraints(), local);
+    }
+
+    if (!transformed) return cc;
+    List<ConstraintExpression> args = new ArrayList<ConstraintExpression>(retainedArgs);
+    for (List<Constraint> remote: remoteArgs.values()) {
+      // keep single constraints in their original form
+      if (remote.size() == 1) args.add(remote.get(0));
+    }
+    for (DistributedConstraint dc: serverArgs) {
+      if (dc.getConstraints().size() > 1 || pushedArgs.containsValue(dc)) args.add(dc);
+    }
+    return args.size() == 1 ? args.get(0) : new ConstraintConjunction(args);
+  }
+
+  /**
+   * Finds the remote server holding a graph.
+   * @param context The context to use for looking up the graph.
+   * @param model The graph.
+   * @return The URI of the server, or <code>null</code> if the graph is not on a remote server.
+   * @throws SymbolicTransformationException If the graph could not be looked up.
+   */
+  private static URI getServer(SymbolicTransformationContext context, ConstraintElement model)
+        throws SymbolicTransformationException {
+    if (!(model instanceof URIReference)) return null;
+    URIReference ref = (URIReference)model;
+    String scheme = ref.getURI().getScheme();
+    if (scheme == null || !DistributedResolverFactory.getProtocols().contains(scheme)) return null;
+    try {
+      // graphs known to this server are resolved locally
+      if (context.mapToModelTypeURI(ref.getURI()) != null) return null;
+      return NetworkDelegator.getServerUri(ref);
+    } catch (ResolverException re) {
+      return null;
+    } catch (QueryException qe) {
+      throw new SymbolicTransformationException("Failed to map graph to graph type", qe);
+    }
+  }
+
+  /**
+   * Tests if remote constraints share any variables with local expressions.
+   * @param dc The remote constraints.
+   * @param args The local expressions.
+   * @return <code>true</code> if a variable in <var>dc</var> appears in <var>args</var>.
+   */
+  private static boolean sharesVariables(DistributedConstraint dc, List<ConstraintExpression> args) {
+    if (args.isEmpty()) return false;
+    Set<Variable> vars = new HashSet<Variable>();
+    for (ConstraintExpression arg: args) vars.addAll(arg.getVariables());
+    vars.retainAll(dc.getRemoteVariables());
+    return !vars.isEmpty();
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2008 Fedora Commons, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mulgara.resolver.distributed;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.jrdf.graph.BlankNode;
+import org.jrdf.graph.Node;
+
+import org.mulgara.resolver.spi.LocalizeException;
+import org.mulgara.resolver.spi.ResolverSession;
+
+/**
+ * A bounded, least recently used map of remote nodes to the local nodes they
+ * were localized to.
+ * <p>
+ * Local nodes for values that are not in the string pool are only valid for
+ * the transaction they were allocated in, so a cache must not outlive the
+ * resolver that created it.
+ * </p>
+ * <p>
+ * Remote blank nodes are allocated a new local node each time they are
+ * localized, so their local nodes are kept apart from the cache, for as long
+ * as the cache is in use.  This ensures that a remote blank node is given the
+ * same local node everywhere it appears, whatever the size of the cache.
+ * </p>
+ * <p>
+ * The number of other nodes to keep is set with the
+ * <code>mulgara.distributed.localizeCacheSize</code> system property, which
+ * may be set to 0 to disable the cache.
+ * </p>
+ * <p>
+ * A cache may be shared by several resolutions, so access is synchronized.
+ * </p>
+ *
+ * @created 2026-10-17
+ */
+class LocalizationCache {
+
+  /** Logger. */
+  private static final Logger logger = Logger.getLogger(LocalizationCache.class.getName());
+
+  /** The property for the number of nodes to keep. */
+  static final String CACHE_SIZE_PROPERTY = "mulgara.distributed.localizeCacheSize";
+
+  /** The default number of nodes to keep. */
+  private static final int DEFAULT_CACHE_SIZE = 10000;
+
+  /** The session to localize nodes with. */
+  private final ResolverSession session;
+
+  /** The cached nodes, or <code>null</code> if caching is disabled. */
+  private final Map<Node,Long> cache;
+
+  /** The local nodes allocated to remote blank nodes. */
+  private final Map<Node,Long> blankNodes = new HashMap<Node,Long>();
+
+  /** The number of lookups found in the cache. */
+  private long hits = 0;
+
+  /** The number of lookups that were localized with the session. */
+  private long misses = 0;
+
+  /**
+   * Creates a cache, with a size taken from the system properties.
+   * @param session The session to localize nodes with.
+   */
+  LocalizationCache(ResolverSession session) {
+    this(session, Integer.getInteger(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE).intValue());
+  }
+
+  /**
+   * Creates a cache.
+   * @param session The session to localize nodes with.
+   * @param size The most nodes to keep. 0 disables the cache.
+   */
+  LocalizationCache(ResolverSession session, final int size) {
+    if (session == null) throw new IllegalArgumentException("Null \"session\" parameter");
+    this.session = session;
+    if (size <= 0) {
+      cache = null;
+    } else {
+      cache = new LinkedHashMap<Node,Long>(Math.min(size, 1024), 0.75f, true) {
+        private static final long serialVersionUID = -2470583164025306637L;
+        protected boolean removeEldestEntry(Map.Entry<Node,Long> eldest) {
+          return size() > size;
+        }
+      };
+    }
+  }
+
+  /**
+   * Localizes a node, using the cached local node if there is one.
+   * @param node The node to localize.
+   * @return The local node.
+   * @throws LocalizeException If the node could not be localized.
+   */
+  synchronized long localize(Node node) throws LocalizeException {
+    if (node instanceof BlankNode) {
+      Long gNode = blankNodes.get(node);
+      if (gNode == null) {
+        gNode = session.localize(node);
+        blankNodes.put(node, gNode);
+      }
+      return gNode.longValue();
+    }
+    if (cache == null) return session.localize(node);
+    Long gNode = cache.get(node);
+    if (gNode != null) {
+      hits++;
+      return gNode.longValue();
+    }
+    misses++;
+    long result = session.localize(node);
+    cache.put(node, result);
+    return result;
+  }
+
+  /**
+   * Logs the effectiveness of the cache.
+   */
+  synchronized void logStatistics() {
+    if (logger.isDebugEnabled() && cache != null) {
+      logger.debug("Localization cache: " + hits + " hits, " + misses + " misses, " + cache.size() + " nodes, " + blankNodes.size() + " blank nodes");
+    }
+  }
+
+}
@@ -18,7 +18,9 @@ package org.mulgara.resolver.distributed;
 
 import org.mulgara.query.Answer;
 import org.mulgara.query.Constraint;
+import org.mulgara.query.ConstraintConjunction;
 import org.mulgara.query.ConstraintElement;
+import org.mulgara.query.ConstraintExpression;
 import org.mulgara.query.ConstraintImpl;
 import org.mulgara.query.LocalNode;
 import org.mulgara.query.GraphResource;
@@ -26,6 +28,7 @@ import org.mulgara.query.Query;
 import org.mulgara.query.QueryException;
 import org.mulgara.query.TuplesException;
 import org.mulgara.query.UnconstrainedAnswer;
+import org.mulgara.query.Value;
 import org.mulgara.query.Variable;
 import org.mulgara.query.rdf.URIReferenceImpl;
 import org.mulgara.server.Session;
@@ -75,6 +78,9 @@ public class NetworkDelegator implements Delegator {
   /** The session cache to use. */
   private final SessionCache sessionCache;
 
+  /** The local nodes of remote nodes returned in this transaction. */
+  private final LocalizationCache localizationCache;
+
   /** The map of distributed sessions. */
   private Map<URI,Session> sessionMap = new HashMap<URI,Session>();
 
@@ -92,6 +98,7 @@ public class NetworkDelegator implements Delegator {
     this.forWrite = forWrite;
     this.txCord = txCord;
     this.sessionCache = sessionCache;
+    this.localizationCache = new LocalizationCache(session);
   }
 
 
@@ -112,7 +119,29 @@ public class NetworkDelegator implements Delegator {
       logger.debug("Querying for: " + localConstraint + " in model: " + modelRef + " on server: " + serverUri);
   
       Answer ans = getServerSession(serverUri).query(globalizedQuery(localConstraint, modelRef));
-      return new AnswerResolution(serverUri, session, ans, localConstraint);
+      return new AnswerResolution(serverUri, session, localizationCache, ans, localConstraint);
+    } catch (TuplesException te) {
+      throw new ResolverException("Localization failed", te);
+    } catch (URISyntaxException qe) {
+      throw new QueryException("Bad graph URI provided for resolution", qe);
+    }
+  }
+
+
+  /**
+   * Resolve a conjunction of constraints on a remote server as a single query.
+   * @param constraint The constraints to resolve, with graphs on the same server.
+   * @param localModel The LocalNode containing the model of the first constraint.
+   * @throws QueryException A error occurred resolving the constraint.
+   * @throws ResolverException A error occurred setting up the resolution.
+   */
+  public Resolution resolve(DistributedConstraint constraint, LocalNode localModel) throws QueryException, ResolverException {
+    URI serverUri = getServerUri(getModelRef(localModel));
+    try {
+      logger.debug("Querying for: " + constraint + " on server: " + serverUri);
+
+      Answer ans = getServerSession(serverUri).query(globalizedQuery(constraint));
+      return new AnswerResolution(serverUri, session, localizationCache, ans, constraint);
     } catch (TuplesException te) {
       throw new ResolverException("Localization failed", te);
     } catch (URISyntaxException qe) {
@@ -220,6 +249,37 @@ public class NetworkDelegator implements Delegator {
   }
 
 
+  /**
+   * Create a query for a conjunction of constraints on one server.
+   * @param constraint The constraints to query for, and any bindings to restrict them with.
+   * @return The globalized query, looking for the conjunction of the constraints.
+   * @throws ResolverException There was an error globalizing the constraint elements.
+   * @throws URISyntaxException A graph URI could not be converted for the remote server.
+   */
+  @SuppressWarnings("unchecked")
+  protected Query globalizedQuery(DistributedConstraint constraint) throws ResolverException, URISyntaxException {
+    List<ConstraintExpression> args = new ArrayList<ConstraintExpression>();
+    URIReferenceImpl firstModel = null;
+    for (Constraint c: constraint.getConstraints()) {
+      ConstraintElement modelElement = globalizeConstraintElement(c.getModel());
+      if (!(modelElement instanceof URIReference)) throw new ResolverException("Unexpected model type in constraint: " + modelElement);
+      URIReferenceImpl model = new URIReferenceImpl(URIUtil.localizeGraphUri(((URIReference)modelElement).getURI()));
+      if (firstModel == null) firstModel = model;
+      args.add(new ConstraintImpl(
+              globalizeConstraintElement(c.getElement(0)),
+              globalizeConstraintElement(c.getElement(1)),
+              globalizeConstraintElement(c.getElement(2)),
+              model
+      ));
+    }
+    if (constraint.getBindings() != null) args.add(constraint.getBindings());
+
+    List<Variable> variables = new ArrayList<Variable>(constraint.getRemoteVariables());
+    ConstraintExpression where = args.size() == 1 ? args.get(0) : new ConstraintConjunction(args);
+    return new Query(variables, new GraphResource(firstModel.getURI()), where, null, Collections.EMPTY_LIST, null, 0, true, new UnconstrainedAnswer());
+  }
+
+
   /**
    * Convert a local node to a global value.
    * @param localNode The node to globalize.
@@ -255,8 +315,10 @@ public class NetworkDelegator implements Delegator {
     // return the element if it does not need to be converted
     if (!(localElement instanceof LocalNode) || (localElement instanceof URIReferenceImpl)) return localElement;
 
-    // convert the reference to a Value
-    return makeRefImpl((URIReference)globalizeNode((LocalNode)localElement));
+    // convert the node to a Value
+    Node node = globalizeNode((LocalNode)localElement);
+    if (node instanceof Value) return (Value)node;
+    return makeRefImpl((URIReference)node);
   }
 
 
@@ -352,6 +414,7 @@ public class NetworkDelegator implements Delegator {
    * Return all sessions used by this delegator.
    */
   public void close() {
+    localizationCache.logStatistics();
     for (Map.Entry<URI,Session> e : sessionMap.entrySet()) {
       sessionCache.returnSession(e.getKey(), e.getValue());
     }
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2008 Fedora Commons, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mulgara.resolver.distributed;
+
+// Java 2 standard packages
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Third party packages
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+// Locally written packages
+import org.mulgara.query.Constraint;
+import org.mulgara.query.ConstraintDisjunction;
+import org.mulgara.query.ConstraintElement;
+import org.mulgara.query.ConstraintExpression;
+import org.mulgara.query.ConstraintImpl;
+import org.mulgara.query.ConstraintIs;
+import org.mulgara.query.ConstraintOperation;
+import org.mulgara.query.GraphExpression;
+import org.mulgara.query.GraphResource;
+import org.mulgara.query.QueryException;
+import org.mulgara.query.Variable;
+import org.mulgara.query.rdf.URIReferenceImpl;
+import org.mulgara.resolver.spi.QueryEvaluationContext;
+import org.mulgara.resolver.spi.ResolverSession;
+import org.mulgara.resolver.spi.TestResolverSession;
+import org.mulgara.store.tuples.LiteralTuples;
+import org.mulgara.store.tuples.Tuples;
+
+/**
+ * Testing the bind joins of {@link DistributedConstraintDescriptor}.
+ *
+ * @created 2026-10-17
+ */
+public class DistributedConstraintDescriptorUnitTest extends TestCase {
+
+  /** A graph on a remote server. */
+  private static final URIReferenceImpl REMOTE = ref("rmi://remote-a.example.org/server1#g1");
+
+  /** A graph on this server. */
+  private static final URIReferenceImpl LOCAL = ref("rmi://localhost/server1#local");
+
+  /** A predicate. */
+  private static final URIReferenceImpl P = ref("http://example.org/p");
+
+  /** The remote constraints: <code>$x &lt;p&gt; $y</code>. */
+  private static final Constraint REMOTE_CONSTRAINT = new ConstraintImpl(new Variable("x"), P, new Variable("y"), REMOTE);
+
+  /** The local expression: <code>$y &lt;p&gt; $z</code>. */
+  private static final Constraint LOCAL_CONSTRAINT = new ConstraintImpl(new Variable("y"), P, new Variable("z"), LOCAL);
+
+  /** The session holding the nodes of the test. */
+  private TestResolverSession session;
+
+  /** The context resolving the test constraints. */
+  private TestContext context;
+
+  /** Nodes for the values of the variables. */
+  private long x1, x2, u1, u2, u4, v1, v2, v3;
+
+  public DistributedConstraintDescriptorUnitTest(String name) {
+    super(name);
+  }
+
+  public static Test suite() {
+    TestSuite suite = new TestSuite();
+    suite.addTest(new DistributedConstraintDescriptorUnitTest("testBindJoin"));
+    suite.addTest(new DistributedConstraintDescriptorUnitTest("testBatches"));
+    suite.addTest(new DistributedConstraintDescriptorUnitTest("testLimit"));
+    suite.addTest(new DistributedConstraintDescriptorUnitTest("testNoLocal"));
+    return suite;
+  }
+
+  /**
+   * Default test runner.
+   * @param args The command line arguments
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+
+  public void setUp() throws Exception {
+    session = new TestResolverSession();
+    x1 = node("x1");
+    x2 = node("x2");
+    u1 = node("u1");
+    u2 = node("u2");
+    u4 = node("u4");
+    v1 = node("v1");
+    v2 = node("v2");
+    v3 = node("v3");
+
+    // the local rows for $y $z, sorted like a resolved constraint, and the remote rows for $x $y
+    context = new TestContext(new long[][] { { u1, v1 }, { u1, v3 }, { u2, v2 } },
+                              new long[][] { { x1, u1 }, { x2, u4 } });
+  }
+
+  /**
+   * The distinct local values of the shared variables are sent to the remote server.
+   */
+  public void testBindJoin() throws Exception {
+    Tuples result = resolve(new DistributedConstraintDescriptor(10, 10));
+    try {
+      assertEquals(2, result.getRowCount());
+      assertEquals(3, result.getVariables().length);
+    } finally {
+      result.close();
+    }
+
+    assertEquals(1, context.remote.size());
+    ConstraintExpression bindings = context.remote.get(0).getBindings();
+    assertTrue(bindings instanceof ConstraintDisjunction);
+    assertEquals(set(u1, u2), values(bindings));
+    assertNull(context.remote.get(0).getLocal());
+  }
+
+  /**
+   * The values are sent in batches.
+   */
+  public void testBatches() throws Exception {
+    Tuples result = resolve(new DistributedConstraintDescriptor(10, 1));
+    try {
+      assertEquals(2, result.getRowCount());
+    } finally {
+      result.close();
+    }
+
+    assertEquals(2, context.remote.size());
+    Set<Long> sent = new HashSet<Long>();
+    for (DistributedConstraint dc: context.remote) {
+      assertTrue(dc.getBindings() instanceof ConstraintIs);
+      sent.addAll(values(dc.getBindings()));
+    }
+    assertEquals(set(u1, u2), sent);
+  }
+
+  /**
+   * A local expression expected to be larger than the limit is not sent to the remote server.
+   */
+  public void testLimit() throws Exception {
+    Tuples result = resolve(new DistributedConstraintDescriptor(2, 10));
+    try {
+      assertEquals(2, result.getRowCount());
+    } finally {
+      result.close();
+    }
+
+    assertEquals(1, context.remote.size());
+    assertNull(context.remote.get(0).getBindings());
+  }
+
+  /**
+   * A constraint without a local expression is sent to the remote server on its own.
+   */
+  public void testNoLocal() throws Exception {
+    DistributedConstraint dc = new DistributedConstraint(Arrays.asList(REMOTE_CONSTRAINT), null);
+    Tuples result = new DistributedConstraintDescriptor(10, 10).resolve(context, new GraphResource(LOCAL.getURI()), dc);
+    try {
+      assertEquals(2, result.getRowCount());
+    } finally {
+      result.close();
+    }
+    assertEquals(Arrays.asList(dc), context.remote);
+    assertEquals(0, context.localCount);
+  }
+
+  /**
+   * Resolves the remote constraint bound by the local constraint.
+   * @param descriptor The descriptor to resolve with.
+   * @return The result of the bind join.
+   */
+  private Tuples resolve(DistributedConstraintDescriptor descriptor) throws Exception {
+    DistributedConstraint dc = new DistributedConstraint(Arrays.asList(REMOTE_CONSTRAINT), LOCAL_CONSTRAINT);
+    Tuples result = descriptor.resolve(context, new GraphResource(LOCAL.getURI()), dc);
+    assertEquals(1, context.localCount);
+    return result;
+  }
+
+  /**
+   * Finds the values of the <code>mulgara:is</code> constraints of some bindings.
+   * @param bindings A <code>mulgara:is</code> constraint, or a disjunction of them.
+   * @return The nodes of the values.
+   */
+  private Set<Long> values(ConstraintExpression bindings) throws Exception {
+    Set<Long> values = new HashSet<Long>();
+    if (bindings instanceof ConstraintIs) {
+      values.add(session.lookup((URIReferenceImpl)((ConstraintIs)bindings).getValueNode()));
+    } else {
+      for (ConstraintExpression e: ((ConstraintDisjunction)bindings).getElements()) values.addAll(values(e));
+    }
+    return values;
+  }
+
+  private long node(String name) throws Exception {
+    return session.localize(ref("http://example.org/" + name));
+  }
+
+  private static Set<Long> set(long... values) {
+    Set<Long> set = new HashSet<Long>();
+    for (long v: values) set.add(v);
+    return set;
+  }
+
+  private static URIReferenceImpl ref(String uri) {
+    return new URIReferenceImpl(URI.create(uri));
+  }
+
+  /**
+   * Resolves the local constraint and the remote constraints from fixed rows.
+   */
+  private class TestContext implements QueryEvaluationContext {
+
+    /** The rows of the local constraint. */
+    private final long[][] localRows;
+
+    /** The rows of the remote constraints, before any bindings are applied. */
+    private final long[][] remoteRows;
+
+    /** The remote constraints resolved. */
+    final List<DistributedConstraint> remote = new ArrayList<DistributedConstraint>();
+
+    /** The number of times the local constraint was resolved. */
+    int localCount = 0;
+
+    TestContext(long[][] localRows, long[][] remoteRows) {
+      this.localRows = localRows;
+      this.remoteRows = remoteRows;
+    }
+
+    public Tuples resolve(GraphResource graphResource, Constraint constraint) throws QueryException {
+      DistributedConstraint dc = (DistributedConstraint)constraint;
+      remote.add(dc);
+      try {
+        Set<Long> allowed = dc.getBindings() == null ? null : values(dc.getBindings());
+        LiteralTuples result = new LiteralTuples(new String[] { "x", "y" });
+        for (long[] row: remoteRows) {
+          if (allowed == null || allowed.contains(row[1])) result.appendTuple(row);
+        }
+        return result;
+      } catch (Exception e) {
+        throw new QueryException("Failed to resolve " + constraint, e);
+      }
+    }
+
+    public Tuples resolve(GraphExpression graphExpression, ConstraintExpression constraintExpression) throws QueryException {
+      assertEquals(LOCAL_CONSTRAINT, constraintExpression);
+      localCount++;
+      try {
+        return LiteralTuples.create(new String[] { "y", "z" }, localRows);
+      } catch (Exception e) {
+        throw new QueryException("Failed to resolve " + constraintExpression, e);
+      }
+    }
+
+    public ResolverSession getResolverSession() {
+      return session;
+    }
+
+    public ConstraintElement localize(ConstraintElement constraintElement) {
+      throw new UnsupportedOperationException();
+    }
+
+    public ConstraintElement globalize(ConstraintElement constraintElement) {
+      throw new UnsupportedOperationException();
+    }
+
+    public List<Tuples> resolveConstraintOperation(GraphExpression modelExpr, ConstraintOperation constraintOper) {
+      throw new UnsupportedOperationException();
+    }
+
+    public boolean isDistinctQuery() {
+      return true;
+    }
+
+    public boolean setDistinctQuery(boolean newValue) {
+      return true;
+    }
+  }
+}
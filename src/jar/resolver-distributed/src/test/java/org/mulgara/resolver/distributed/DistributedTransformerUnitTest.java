@@ -0,0 +1,221 @@
+/*
+ * Copyright 2008 Fedora Commons, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mulgara.resolver.distributed;
+
+// Java 2 standard packages
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+
+// Third party packages
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+// Locally written packages
+import org.mulgara.query.Constraint;
+import org.mulgara.query.ConstraintConjunction;
+import org.mulgara.query.ConstraintExpression;
+import org.mulgara.query.ConstraintImpl;
+import org.mulgara.query.Variable;
+import org.mulgara.query.rdf.URIReferenceImpl;
+import org.mulgara.resolver.spi.AbstractSymbolicTransformer;
+import org.mulgara.resolver.spi.SymbolicTransformationContext;
+
+/**
+ * Testing the grouping of remote constraints by {@link DistributedTransformer}.
+ *
+ * @created 2026-10-17
+ */
+public class DistributedTransformerUnitTest extends TestCase {
+
+  /** A graph on the first remote server. */
+  private static final URIReferenceImpl A1 = ref("rmi://remote-a.example.org/server1#g1");
+
+  /** Another graph on the first remote server. */
+  private static final URIReferenceImpl A2 = ref("rmi://remote-a.example.org/server1#g2");
+
+  /** A graph on the second remote server. */
+  private static final URIReferenceImpl B1 = ref("rmi://remote-b.example.org/server1#g1");
+
+  /** A graph on this server. */
+  private static final URIReferenceImpl LOCAL = ref("rmi://localhost/server1#local");
+
+  /** A graph that is not on any server. */
+  private static final URIReferenceImpl FILE = ref("file:/tmp/data.rdf");
+
+  /** A predicate. */
+  private static final URIReferenceImpl P = ref("http://example.org/p");
+
+  /** Knows that only {@link #LOCAL} is stored in this server. */
+  private static final SymbolicTransformationContext CONTEXT = new SymbolicTransformationContext() {
+    public URI mapToModelTypeURI(URI modelURI) {
+      return LOCAL.getURI().equals(modelURI) ? URI.create("http://mulgara.org/mulgara#Model") : null;
+    }
+  };
+
+  public DistributedTransformerUnitTest(String name) {
+    super(name);
+  }
+
+  public static Test suite() {
+    TestSuite suite = new TestSuite();
+    suite.addTest(new DistributedTransformerUnitTest("testPushdown"));
+    suite.addTest(new DistributedTransformerUnitTest("testSeparateServers"));
+    suite.addTest(new DistributedTransformerUnitTest("testNoPushdown"));
+    suite.addTest(new DistributedTransformerUnitTest("testBindJoin"));
+    suite.addTest(new DistributedTransformerUnitTest("testFixedPoint"));
+    suite.addTest(new DistributedTransformerUnitTest("testInnerExpression"));
+    return suite;
+  }
+
+  /**
+   * Default test runner.
+   * @param args The command line arguments
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+
+  /**
+   * Constraints on graphs of one server are combined, and the rest of the
+   * conjunction is left alone when bind joins are disabled.
+   */
+  public void testPushdown() throws Exception {
+    Constraint r1 = constraint("x", "y", A1);
+    Constraint r2 = constraint("y", "z", A2);
+    Constraint l1 = constraint("z", "w", LOCAL);
+    ConstraintExpression result = new DistributedTransformer(false).transformExpression(CONTEXT, conj(r1, l1, r2));
+
+    assertTrue(result instanceof ConstraintConjunction);
+    List<ConstraintExpression> args = ((ConstraintConjunction)result).getElements();
+    assertEquals(2, args.size());
+    assertEquals(l1, args.get(0));
+    DistributedConstraint dc = (DistributedConstraint)args.get(1);
+    assertEquals(Arrays.asList(r1, r2), dc.getConstraints());
+    assertNull(dc.getLocal());
+    assertEquals(A1, dc.getModel());
+  }
+
+  /**
+   * Constraints on different servers are pushed to each server separately.
+   */
+  public void testSeparateServers() throws Exception {
+    Constraint a1 = constraint("x", "y", A1);
+    Constraint a2 = constraint("y", "z", A2);
+    Constraint b1 = constraint("z", "w", B1);
+    Constraint b2 = constraint("w", "v", B1);
+    ConstraintExpression result = new DistributedTransformer(true).transformExpression(CONTEXT, conj(a1, b1, a2, b2));
+
+    List<ConstraintExpression> args = ((ConstraintConjunction)result).getElements();
+    assertEquals(2, args.size());
+    assertEquals(Arrays.asList(a1, a2), ((DistributedConstraint)args.get(0)).getConstraints());
+    assertEquals(Arrays.asList(b1, b2), ((DistributedConstraint)args.get(1)).getConstraints());
+  }
+
+  /**
+   * Conjunctions without two constraints for the same remote server are unchanged.
+   */
+  public void testNoPushdown() throws Exception {
+    ConstraintConjunction cc = conj(constraint("x", "y", A1), constraint("y", "z", B1), constraint("z", "w", LOCAL));
+    assertSame(cc, new DistributedTransformer(false).transformExpression(CONTEXT, cc));
+
+    cc = conj(constraint("x", "y", FILE), constraint("y", "z", FILE));
+    assertSame(cc, new DistributedTransformer(true).transformExpression(CONTEXT, cc));
+
+    // no shared variables to bind
+    cc = conj(constraint("x", "y", A1), constraint("z", "w", LOCAL));
+    assertSame(cc, new DistributedTransformer(true).transformExpression(CONTEXT, cc));
+  }
+
+  /**
+   * The rest of a conjunction with one remote server binds the remote constraints.
+   */
+  public void testBindJoin() throws Exception {
+    Constraint r1 = constraint("x", "y", A1);
+    Constraint l1 = constraint("y", "z", LOCAL);
+    Constraint l2 = constraint("z", "w", FILE);
+    ConstraintExpression result = new DistributedTransformer(true).transformExpression(CONTEXT, conj(l1, r1, l2));
+
+    DistributedConstraint dc = (DistributedConstraint)result;
+    assertEquals(Arrays.asList(r1), dc.getConstraints());
+    assertEquals(conj(l1, l2), dc.getLocal());
+    assertEquals(4, dc.getVariables().size());
+    assertEquals(2, dc.getRemoteVariables().size());
+    assertEquals(dc.getConstraints(), dc.getRemoteConstraint().getConstraints());
+    assertNull(dc.getRemoteConstraint().getLocal());
+  }
+
+  /**
+   * A transformed expression is not transformed again.
+   */
+  public void testFixedPoint() throws Exception {
+    ConstraintConjunction cc = conj(constraint("x", "y", A1), constraint("y", "z", A2), constraint("a", "b", LOCAL));
+    DistributedTransformer transformer = new DistributedTransformer(false);
+    ConstraintExpression result = transformer.transformExpression(CONTEXT, cc);
+    assertNotSame(cc, result);
+    assertSame(result, transformer.transformExpression(CONTEXT, result));
+
+    // a constraint for a server that already has a pushed conjunction joins it
+    Constraint a3 = constraint("z", "w", A1);
+    List<ConstraintExpression> args = ((ConstraintConjunction)result).getElements();
+    ConstraintExpression merged = transformer.transformExpression(CONTEXT, conj(args.get(0), args.get(1), a3));
+    args = ((ConstraintConjunction)merged).getElements();
+    assertEquals(2, args.size());
+    assertEquals(3, ((DistributedConstraint)args.get(1)).getConstraints().size());
+
+    transformer = new DistributedTransformer(true);
+    cc = conj(constraint("x", "y", A1), constraint("y", "z", A2), constraint("z", "w", LOCAL));
+    result = transformer.transformExpression(CONTEXT, cc);
+    assertTrue(result instanceof DistributedConstraint);
+    assertSame(result, transformer.transformExpression(CONTEXT, result));
+  }
+
+  /**
+   * Other transformers still apply to the local expression of a bind join.
+   */
+  public void testInnerExpression() throws Exception {
+    Constraint r1 = constraint("x", "y", A1);
+    Constraint l1 = constraint("y", "z", FILE);
+    DistributedConstraint dc = (DistributedConstraint)new DistributedTransformer(true).transformExpression(CONTEXT, conj(r1, l1));
+
+    // moves constraints on FILE to LOCAL
+    AbstractSymbolicTransformer transformer = new AbstractSymbolicTransformer() {
+      protected ConstraintExpression transformConstraint(SymbolicTransformationContext context, Constraint c) {
+        if (!FILE.equals(c.getModel())) return c;
+        return new ConstraintImpl(c.getElement(0), c.getElement(1), c.getElement(2), LOCAL);
+      }
+    };
+    ConstraintExpression result = transformer.transformExpression(CONTEXT, dc);
+    DistributedConstraint moved = (DistributedConstraint)result;
+    assertEquals(constraint("y", "z", LOCAL), moved.getLocal());
+    assertEquals(dc.getConstraints(), moved.getConstraints());
+    assertSame(moved, transformer.transformExpression(CONTEXT, moved));
+  }
+
+  private static Constraint constraint(String s, String o, URIReferenceImpl graph) {
+    return new ConstraintImpl(new Variable(s), P, new Variable(o), graph);
+  }
+
+  private static ConstraintConjunction conj(ConstraintExpression... args) {
+    return new ConstraintConjunction(Arrays.asList(args));
+  }
+
+  private static URIReferenceImpl ref(String uri) {
+    return new URIReferenceImpl(URI.create(uri));
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2008 Fedora Commons, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mulgara.resolver.distributed;
+
+// Java 2 standard packages
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+// Third party packages
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.jrdf.graph.Node;
+
+// Locally written packages
+import org.mulgara.query.rdf.BlankNodeImpl;
+import org.mulgara.query.rdf.URIReferenceImpl;
+import org.mulgara.resolver.spi.LocalizeException;
+import org.mulgara.resolver.spi.TestResolverSession;
+
+/**
+ * Test case for {@link LocalizationCache}.
+ *
+ * @created 2026-10-17
+ */
+public class LocalizationCacheUnitTest extends TestCase {
+
+  /** The remote server. */
+  private static final URI SERVER = URI.create("rmi://remote.example.org/server1");
+
+  /** The session the cache localizes with. */
+  private AllocatingSession session;
+
+  public LocalizationCacheUnitTest(String name) {
+    super(name);
+  }
+
+  public static Test suite() {
+    TestSuite suite = new TestSuite();
+    suite.addTest(new LocalizationCacheUnitTest("testCache"));
+    suite.addTest(new LocalizationCacheUnitTest("testBlankNodes"));
+    suite.addTest(new LocalizationCacheUnitTest("testConcurrentAccess"));
+    return suite;
+  }
+
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+
+  public void setUp() {
+    session = new AllocatingSession();
+  }
+
+  /**
+   * Cached nodes are not localized again, and the least recently used nodes are evicted.
+   */
+  public void testCache() throws Exception {
+    LocalizationCache cache = new LocalizationCache(session, 2);
+    long a = cache.localize(ref(1));
+    long b = cache.localize(ref(2));
+    assertEquals(a, cache.localize(ref(1)));
+    assertEquals(2, session.calls);
+
+    // 2 is the least recently used, so it is evicted
+    cache.localize(ref(3));
+    assertEquals(a, cache.localize(ref(1)));
+    assertEquals(3, session.calls);
+    assertFalse(b == cache.localize(ref(2)));
+    assertEquals(4, session.calls);
+
+    // a disabled cache localizes every time
+    cache = new LocalizationCache(session, 0);
+    cache.localize(ref(1));
+    cache.localize(ref(1));
+    assertEquals(6, session.calls);
+  }
+
+  /**
+   * A remote blank node keeps its local node, however many other nodes are localized.
+   */
+  public void testBlankNodes() throws Exception {
+    for (int size = 0; size <= 2; size++) {
+      LocalizationCache cache = new LocalizationCache(session, size);
+      long blank = cache.localize(blank(1));
+      for (int i = 0; i < 10; i++) cache.localize(ref(i));
+      assertEquals(blank, cache.localize(blank(1)));
+      assertFalse(blank == cache.localize(blank(2)));
+    }
+  }
+
+  /**
+   * Several threads sharing a cache always get the same local node for a remote node.
+   */
+  public void testConcurrentAccess() throws Exception {
+    final LocalizationCache cache = new LocalizationCache(session, 50);
+    final long[][] results = new long[4][200];
+    final List<Throwable> errors = new ArrayList<Throwable>();
+    Thread[] threads = new Thread[results.length];
+    for (int t = 0; t < threads.length; t++) {
+      final long[] result = results[t];
+      threads[t] = new Thread() {
+        public void run() {
+          try {
+            for (int i = 0; i < result.length; i++) result[i] = cache.localize(blank(i));
+          } catch (Throwable e) {
+            synchronized (errors) {
+              errors.add(e);
+            }
+          }
+        }
+      };
+    }
+    for (Thread t: threads) t.start();
+    for (Thread t: threads) t.join();
+    assertTrue(errors.toString(), errors.isEmpty());
+    for (int t = 1; t < results.length; t++) {
+      for (int i = 0; i < results[t].length; i++) assertEquals(results[0][i], results[t][i]);
+    }
+    assertEquals(results[0].length, session.calls);
+  }
+
+  private static Node ref(int i) {
+    return new URIReferenceImpl(URI.create("http://example.org/n" + i));
+  }
+
+  private static Node blank(int i) {
+    return new ForeignBlankNode(SERVER, new BlankNodeImpl(i + 1));
+  }
+
+  /**
+   * A session that allocates a new local node each time a node is localized, as a
+   * session does for blank nodes.
+   */
+  private static class AllocatingSession extends TestResolverSession {
+    int calls = 0;
+
+    public long localize(Node node) throws LocalizeException {
+      return ++calls;
+    }
+  }
+}
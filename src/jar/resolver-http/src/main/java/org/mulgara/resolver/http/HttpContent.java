@@ -50,6 +50,7 @@ import org.apache.log4j.Logger;          // Apache Log4J
 
 //Local packages
 import org.jrdf.graph.BlankNode;
+import org.mulgara.content.CacheableContent;
 import org.mulgara.content.Content;
 import org.mulgara.content.NotModifiedException;
 
@@ -68,7 +69,7 @@ import org.mulgara.content.NotModifiedException;
  * @licence <a href=" {@docRoot}/../../LICENCE">Mozilla Public License v1.1
  *          </a>
  */
-public class HttpContent implements Content {
+public class HttpContent implements CacheableContent {
 
   /** Logger. */
   private final static Logger logger = Logger.getLogger(HttpContent.class.getName());
@@ -112,6 +113,15 @@ public class HttpContent implements Content {
   /** Max. number of redirects */
   private static final int MAX_NO_REDIRECTS = 10;
 
+  /** The prefix of a validator holding an entity tag */
+  private static final String ETAG_VALIDATOR = "etag:";
+
+  /** The prefix of a validator holding a modification date */
+  private static final String LAST_MODIFIED_VALIDATOR = "date:";
+
+  /** The validator of the content when it was last read, or <code>null</code> */
+  private String validator = null;
+
   public HttpContent(URI uri) throws URISyntaxException, MalformedURLException {
     this(uri.toURL());
   }
@@ -229,27 +239,28 @@ public class HttpContent implements Content {
    * @throws IOException  if there's difficulty communicating with the web site
    */
   private HttpMethod establishConnection(int methodType) throws IOException, NotModifiedException {
+    return establishConnection(methodType, null);
+  }
+
+  /**
+   * Obtain a valid connection and follow redirects if necessary.
+   * 
+   * @param methodType request the headders (HEAD) or body (GET)
+   * @param condition the validator of a cached copy of the content, or <code>null</code>
+   * @return valid connection method. Can be null.
+   * @throws NotModifiedException  if the content validates against the <var>condition</var>
+   * @throws IOException  if there's difficulty communicating with the web site
+   */
+  private HttpMethod establishConnection(int methodType, String condition) throws IOException, NotModifiedException {
     if (logger.isDebugEnabled()) logger.debug("Establishing connection");
 
     HttpMethod method = getConnectionMethod(methodType);
     Header header = null;
 
     if (method != null) {
-      /*
       // Add cache validation headers to the request
-      if (lastModifiedMap.containsKey(httpUri)) {
-        String lastModified = (String) lastModifiedMap.get(httpUri);
-        assert lastModified != null;
-        method.addRequestHeader("If-Modified-Since", lastModified);
-      }
+      addCondition(method, condition);
 
-      if (eTagMap.containsKey(httpUri)) {
-        String eTag = (String) eTagMap.get(httpUri);
-        assert eTag != null;
-        method.addRequestHeader("If-None-Match", eTag);
-      }
-      */
-     
       // Make the request
       if (logger.isDebugEnabled()) logger.debug("Executing HTTP request");
       connection.open();
@@ -287,9 +298,12 @@ public class HttpContent implements Content {
 
               // attempt a new connection to this location
               method = getConnectionMethod(methodType);
+              addCondition(method, condition);
               connection.open();
               method.execute(state, connection);
-              if (!isValidStatusCode(method.getStatusCode())) {
+              if (method.getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+                throw new NotModifiedException(httpUri);
+              } else if (!isValidStatusCode(method.getStatusCode())) {
                 throw new UnknownHostException(
                     "Unable to obtain connection to " + " the redirected site "
                         + httpUri + ". Returned status code "
@@ -317,7 +331,6 @@ public class HttpContent implements Content {
       assert lastModifiedHeader.getElements().length >= 1;
       assert lastModifiedHeader.getElements()[0].getName() != null;
       assert lastModifiedHeader.getElements()[0].getName() instanceof String;
-      // previous code: added to cache
     }
 
     Header eTagHeader = method.getResponseHeader("Etag");
@@ -326,12 +339,41 @@ public class HttpContent implements Content {
       assert eTagHeader.getElements().length >= 1;
       assert eTagHeader.getElements()[0].getName() != null;
       assert eTagHeader.getElements()[0].getName() instanceof String;
-      // previous code: added to cache
     }
+    if (methodType == GET) validator = readValidator(method);
 
     return method;
   }
 
+  /**
+   * Make a request conditional on the content having changed from a cached copy.
+   *
+   * @param method the request
+   * @param condition the validator of the cached copy, or <code>null</code> for an unconditional request
+   */
+  private void addCondition(HttpMethod method, String condition) {
+    if (condition == null) return;
+    if (condition.startsWith(ETAG_VALIDATOR)) {
+      method.addRequestHeader("If-None-Match", condition.substring(ETAG_VALIDATOR.length()));
+    } else if (condition.startsWith(LAST_MODIFIED_VALIDATOR)) {
+      method.addRequestHeader("If-Modified-Since", condition.substring(LAST_MODIFIED_VALIDATOR.length()));
+    }
+  }
+
+  /**
+   * Read the validator of a response, preferring the entity tag to the modification date.
+   *
+   * @param method the executed request
+   * @return the validator, or <code>null</code> if the response has neither
+   */
+  private String readValidator(HttpMethod method) {
+    Header eTagHeader = method.getResponseHeader("Etag");
+    if (eTagHeader != null) return ETAG_VALIDATOR + eTagHeader.getValue();
+    Header lastModifiedHeader = method.getResponseHeader("Last-Modified");
+    if (lastModifiedHeader != null) return LAST_MODIFIED_VALIDATOR + lastModifiedHeader.getValue();
+    return null;
+  }
+
   /**
    * {@inheritDoc}
    *
@@ -411,6 +453,30 @@ public class HttpContent implements Content {
     return httpUri.toString();
   }
 
+  /** @see org.mulgara.content.CacheableContent#getValidator() */
+  public String getValidator() {
+    return validator;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * This implementation makes a conditional <code>HEAD</code> request.  If the
+   * server ignores the condition, the validators are compared directly.
+   */
+  public boolean isUnmodified(String validator) throws IOException {
+    HttpMethod method = null;
+    try {
+      method = establishConnection(HEAD, validator);
+      return validator.equals(readValidator(method));
+    } catch (NotModifiedException e) {
+      return true;
+    } finally {
+      if (method != null) method.releaseConnection();
+      if (connection != null) connection.close();
+    }
+  }
+
 
   /**
    * Read the mime type. Should only be done if the Mime type is not already available
@@ -34,6 +34,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 
 // Log4J
 import org.apache.log4j.Logger;
@@ -116,7 +117,7 @@ public class FullTextStringIndex {
   /** The index writer */
   private IndexWriter indexer;
 
-  /** The index searcher */
+  /** The index searcher, shared with the other indexes of the same indexer cache */
   private IndexSearcher indexSearcher;
 
   /** Whether any modifications have been made to the index. */
@@ -513,7 +514,7 @@ public class FullTextStringIndex {
     }
 
     if (indexSearcher != null) {
-      indexerCache.returnReader(indexSearcher.getIndexReader(), closeIndexers);
+      indexerCache.returnSearcher(indexSearcher, closeIndexers);
       indexSearcher = null;
     }
   }
@@ -550,6 +551,34 @@ public class FullTextStringIndex {
    * @throws FullTextStringIndexException IOException occurs on reading index
    */
   public Hits find(String subject, String predicate, String literal) throws FullTextStringIndexException {
+    return find(subject, predicate, literal, 0);
+  }
+
+  /**
+   * Find the best scoring matches of a string within the fulltext string pool.
+   *
+   * @param subject subject; may be null
+   * @param predicate predicate; may be null
+   * @param literal literal to be searched via the analyzer; may be null
+   * @param maxHits the number of best scoring hits to return, or 0 for all hits
+   * @return Object containing the hits
+   * @throws FullTextStringIndexException IOException occurs on reading index
+   */
+  public Hits find(String subject, String predicate, String literal, int maxHits)
+      throws FullTextStringIndexException {
+    return find(buildQuery(subject, predicate, literal), maxHits);
+  }
+
+  /**
+   * Build the query for a search of the fulltext string pool.
+   *
+   * @param subject subject; may be null
+   * @param predicate predicate; may be null
+   * @param literal literal to be searched via the analyzer; may be null
+   * @return the query
+   * @throws FullTextStringIndexException if the literal could not be parsed
+   */
+  private Query buildQuery(String subject, String predicate, String literal) throws FullTextStringIndexException {
     Query query;
 
     if (subject == null && predicate == null && literal == null) {
@@ -609,8 +638,7 @@ public class FullTextStringIndex {
       }
     }
 
-    //Perform query
-    return find(query);
+    return query;
   }
 
   /**
@@ -626,6 +654,18 @@ public class FullTextStringIndex {
    * @throws FullTextStringIndexException EXCEPTION TO DO
    */
   public Hits find(Query query) throws FullTextStringIndexException {
+    return find(query, 0);
+  }
+
+  /**
+   * Execute a query against the string pool, keeping only the best scoring hits.
+   *
+   * @param query The query to execute.
+   * @param maxHits The number of best scoring hits to keep, or 0 to keep all hits.
+   * @return The hits.
+   * @throws FullTextStringIndexException if the index could not be read.
+   */
+  public Hits find(Query query, int maxHits) throws FullTextStringIndexException {
     if (query == null) {
       throw new FullTextStringIndexException("The query may not be null.");
     }
@@ -639,7 +679,8 @@ public class FullTextStringIndex {
       }
 
       //Perform query
-      indexSearcher.search(query, hits = new Hits(indexSearcher.getIndexReader()));
+      indexSearcher.search(query, hits = new Hits(indexSearcher.getIndexReader(), Math.max(maxHits, 0)));
+      hits.finish();
 
       if (logger.isDebugEnabled()) {
         logger.debug("Got hits: " + hits.length());
@@ -653,6 +694,16 @@ public class FullTextStringIndex {
     return hits;
   }
 
+  /**
+   * Enumerate every document in the fulltext string pool. The documents are
+   * read from the index as they are needed, rather than being collected first.
+   *
+   * @return The hits, with no scores.
+   */
+  public Hits findAll() {
+    return new Hits(indexSearcher.getIndexReader(), -1);
+  }
+
   /**
    * The maximum number of documents the given query could return.
    *
@@ -751,7 +802,7 @@ public class FullTextStringIndex {
    */
   private void openReadIndex() throws FullTextStringIndexException {
     try {
-      indexSearcher = new IndexSearcher(indexerCache.getReader());
+      indexSearcher = indexerCache.getSearcher();
     } catch (IOException ioe) {
       closeIndexers = true;
       throw new FullTextStringIndexException("Unable to open fulltext index for reading", ioe);
@@ -794,31 +845,89 @@ public class FullTextStringIndex {
    * we could have problems with very large results. However, jdk 1.5 memory usage seems to be
    * around 20B/entry on 32-bit and 33B/entry on 64-bit systems for the hits array, allowing us
    * to handle 1M hits without too much trouble.
+   *
+   * <p>When only the best scoring hits are wanted they are collected in a bounded queue, so
+   * memory use depends on the number of hits wanted rather than the number found. When all the
+   * documents of the index are wanted nothing is collected; each position is a document number,
+   * and {@link #doc} returns <code>null</code> for positions holding deleted documents.
    */
   public static class Hits extends HitCollector implements Cloneable {
     private final IndexReader reader;
-    private final List<ScoreDoc> hits = new ArrayList<ScoreDoc>();
+    private List<ScoreDoc> hits = new ArrayList<ScoreDoc>();
+    private PriorityQueue<ScoreDoc> best = null;
+    private final int maxHits;
     private boolean closed = false;
 
     public Hits(IndexReader reader) {
+      this(reader, 0);
+    }
+
+    /**
+     * @param reader the reader the hits are found in
+     * @param maxHits the number of best scoring hits to keep; 0 to keep all hits, or -1 for all
+     *                the documents in the index
+     */
+    public Hits(IndexReader reader, int maxHits) {
       this.reader = reader;
+      this.maxHits = maxHits;
       reader.incRef();
+
+      if (maxHits > 0) {
+        // lowest score first, and the latest document first among equal scores
+        best = new PriorityQueue<ScoreDoc>(Math.min(maxHits, 1024) + 1, new Comparator<ScoreDoc>() {
+          public int compare(ScoreDoc sd1, ScoreDoc sd2) {
+            if (sd1.score != sd2.score) return (sd1.score < sd2.score) ? -1 : +1;
+            return (sd1.doc > sd2.doc) ? -1 : (sd1.doc == sd2.doc) ? 0 : +1;
+          }
+        });
+      }
     }
 
     public void collect(int doc, float score) {
-      if (score > 0.0f) hits.add(new ScoreDoc(doc, score));
+      if (score <= 0.0f) return;
+
+      if (best == null) {
+        hits.add(new ScoreDoc(doc, score));
+      } else if (best.size() < maxHits) {
+        best.add(new ScoreDoc(doc, score));
+      } else if (score > best.peek().score) {
+        best.poll();
+        best.add(new ScoreDoc(doc, score));
+      }
     }
 
+    /**
+     * Move the best scoring hits into the list of hits once they have all been collected.
+     */
+    private void finish() {
+      if (best != null) {
+        hits = new ArrayList<ScoreDoc>(best);
+        best = null;
+      }
+    }
+
+    /**
+     * @return the number of positions of hits, which is the number of hits unless all the
+     *         documents of the index are being enumerated
+     */
     public final int length() {
-      return hits.size();
+      return (maxHits < 0) ? reader.maxDoc() : hits.size();
+    }
+
+    /**
+     * @return the number of hits
+     */
+    public final int count() {
+      return (maxHits < 0) ? reader.numDocs() : hits.size();
     }
 
     public final Document doc(int n, FieldSelector fs) throws IOException {
+      if (maxHits < 0) return reader.isDeleted(n) ? null : reader.document(n, fs);
       return reader.document(hits.get(n).doc, fs);
     }
 
     public final float score(int n) throws IOException {
-      return hits.get(n).score;
+      return (maxHits < 0) ? 1.0f : hits.get(n).score;
     }
 
     public void sort() {
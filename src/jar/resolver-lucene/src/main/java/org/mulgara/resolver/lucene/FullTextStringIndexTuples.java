@@ -272,6 +272,7 @@ class FullTextStringIndexTuples extends AbstractTuples implements Resolution, Cl
             fullTextStringIndex.getMaxDocs(getString(subjectElement),
                                            getString(predicateElement),
                                            getString(objectElement));
+        if (constraint.getMaxHits() > 0) rowUpperBound = Math.min(rowUpperBound, constraint.getMaxHits());
       } catch (FullTextStringIndexException e) {
         throw new TuplesException("Couldn't row upper-bound from text index: subject='" +
                                   getString(subjectElement) + "', predicate='" +
@@ -382,7 +383,12 @@ class FullTextStringIndexTuples extends AbstractTuples implements Resolution, Cl
 
       // run the query
       try {
-        hits = fullTextStringIndex.find(subject, predicate, object);
+        if (subject == null && predicate == null && object == null) {
+          // stream the whole index rather than collecting a hit for every document
+          hits = fullTextStringIndex.findAll();
+        } else {
+          hits = fullTextStringIndex.find(subject, predicate, object, constraint.getMaxHits());
+        }
       } catch (FullTextStringIndexException e) {
         throw new TuplesException("Couldn't generate answer from text index: subject='" + subject +
                                   "', predicate='" + predicate + "', object='" + object + "'", e);
@@ -421,7 +427,8 @@ class FullTextStringIndexTuples extends AbstractTuples implements Resolution, Cl
       try {
         while (nextDocumentIndex < hits.length()) {
           document = hits.doc(nextDocumentIndex++, fieldSelector);
-          if (matches(subject, document.get(FullTextStringIndex.SUBJECT_KEY)) &&
+          if (document != null &&
+              matches(subject, document.get(FullTextStringIndex.SUBJECT_KEY)) &&
               matches(predicate, document.get(FullTextStringIndex.PREDICATE_KEY)) &&
               matches(object, document.get(FullTextStringIndex.LITERAL_KEY))) {
             return true;
@@ -440,19 +447,19 @@ class FullTextStringIndexTuples extends AbstractTuples implements Resolution, Cl
     }
 
     public long getRowCount() throws TuplesException {
-      return hits.length();
+      return hits.count();
     }
 
     public long getRowUpperBound() throws TuplesException {
-      return hits.length();
+      return hits.count();
     }
 
     public long getRowExpectedCount() throws TuplesException {
-      return hits.length();
+      return hits.count();
     }
 
     public int getRowCardinality() throws TuplesException {
-      switch (hits.length()) {
+      switch (hits.count()) {
         case 0: return Tuples.ZERO;
         case 1: return Tuples.ONE;
         default: return Tuples.MANY;
@@ -23,6 +23,7 @@ import java.util.Set;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
+import org.jrdf.graph.Literal;
 import org.jrdf.graph.URIReference;
 
 import org.mulgara.query.Constraint;
@@ -50,6 +51,7 @@ public class LuceneConstraint implements Constraint {
   private ConstraintElement object;
   private Variable binder;
   private Variable score;
+  private int maxHits;
 
   /**
    * Empty constructor. Used internally during constraint rewriting.
@@ -77,9 +79,11 @@ public class LuceneConstraint implements Constraint {
    * @param constraint the first raw constraint
    * @param searchPred our predicate indicating a lucene search
    * @param scorePred  our predicate indicating the variable to hold the score
+   * @param maxHitsPred our predicate indicating the number of best scoring hits to return
    * @throws SymbolicTransformationException
    */
-  LuceneConstraint(Constraint constraint, URIReference searchPred, URIReference scorePred)
+  LuceneConstraint(Constraint constraint, URIReference searchPred, URIReference scorePred,
+                   URIReference maxHitsPred)
       throws SymbolicTransformationException {
 
     // extract model
@@ -103,6 +107,9 @@ public class LuceneConstraint implements Constraint {
       }
       score = (Variable)o;
       assignBinder(s);
+    } else if (p.equals(maxHitsPred)) {
+      maxHits = parseMaxHits(o);
+      assignBinder(s);
     } else {
       subject = s;
       predicate = p;
@@ -110,6 +117,18 @@ public class LuceneConstraint implements Constraint {
     }
   }
 
+  private static int parseMaxHits(ConstraintElement o) throws SymbolicTransformationException {
+    if (o instanceof Literal) {
+      try {
+        int max = Integer.parseInt(((Literal)o).getLexicalForm().trim());
+        if (max > 0) return max;
+      } catch (NumberFormatException nfe) {
+        // fall through
+      }
+    }
+    throw new SymbolicTransformationException("Lucene query maximum hits must be a positive integer: " + o);
+  }
+
   private final void assignBinder(ConstraintElement b) throws SymbolicTransformationException {
     if (!(b instanceof Variable)) {
       throw new SymbolicTransformationException("Lucene query binder must be a variable: " + b);
@@ -142,6 +161,12 @@ public class LuceneConstraint implements Constraint {
     object = getNoDup(constraint.object, object, "Only one object supported per search", "obj");
 
     score = getNoDup(constraint.score, score, "Only one score supported per search", "score");
+
+    if (maxHits != 0 && constraint.maxHits != 0 && maxHits != constraint.maxHits) {
+      throw new SymbolicTransformationException("Only one maximum hits supported per search: max1=" +
+                                                maxHits + ", max2=" + constraint.maxHits);
+    }
+    if (maxHits == 0) maxHits = constraint.maxHits;
   }
 
   private static <T extends ConstraintElement> T getNoDup(T elem, T existing, String msg, String elemType)
@@ -172,6 +197,11 @@ public class LuceneConstraint implements Constraint {
       throw new SymbolicTransformationException("Missing <mulgara:search> for lucene constraint: " +
                                                 "binder=" + binder + ", predicate=" + predicate +
                                                 ", query=" + object + ", score=" + score);
+
+    if (subject == null && maxHits != 0)
+      throw new SymbolicTransformationException("Missing <mulgara:search> for lucene constraint: " +
+                                                "binder=" + binder + ", predicate=" + predicate +
+                                                ", query=" + object + ", maxHits=" + maxHits);
   }
 
   public ConstraintElement getModel() {
@@ -222,6 +252,31 @@ public class LuceneConstraint implements Constraint {
     return score;
   }
 
+  /** the number of best scoring hits to return, or 0 for all hits */
+  int getMaxHits() {
+    return maxHits;
+  }
+
+  /**
+   * Create a copy of this constraint which only returns the best scoring hits.
+   *
+   * @param maxHits the number of hits to return
+   * @return the new constraint
+   */
+  LuceneConstraint withMaxHits(int maxHits) {
+    LuceneConstraint limited = new LuceneConstraint();
+
+    limited.subject = subject;
+    limited.predicate = predicate;
+    limited.object = object;
+    limited.model = model;
+    limited.binder = binder;
+    limited.score = score;
+    limited.maxHits = maxHits;
+
+    return limited;
+  }
+
   static LuceneConstraint localize(QueryEvaluationContext context, LuceneConstraint constraint)
       throws Exception {
     LuceneConstraint localized = new LuceneConstraint();
@@ -233,6 +288,7 @@ public class LuceneConstraint implements Constraint {
 
     localized.binder = constraint.binder;
     localized.score = constraint.score;
+    localized.maxHits = constraint.maxHits;
 
     return localized;
   }
@@ -251,13 +307,14 @@ public class LuceneConstraint implements Constraint {
     bound.binder = constraint.binder;
 
     bound.score = constraint.score;
+    bound.maxHits = constraint.maxHits;
 
     return bound;
   }
 
   public String toString() {
     return "LC{subj=" + subject + ", pred=" + predicate + ", obj=" + object + ", score=" + score +
-           ", binder=" + binder + "}";
+           ", binder=" + binder + (maxHits != 0 ? ", maxHits=" + maxHits : "") + "}";
   }
 
   /**
@@ -27,17 +27,20 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
-import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 
 /**
- * A cache of lucene index-readers and index-writers. Opening a lucene index-reader or writer is
+ * A cache of lucene index-searchers and index-writers. Opening a lucene index-reader or writer is
  * fairly expensive, so caching them can provide substantial performance gains. No cache-expiry
  * has been implemented, however; the assumption is that there will a limited number of lucene
  * models.
  *
+ * <p>All readers of an index share a single searcher, which is managed by a {@link
+ * SearcherManager} and can be acquired without locking the cache.
+ *
  * <p>This also manages the setting up and removal of the index directory.
  *
  * @created 2008-09-28
@@ -48,14 +51,15 @@ public class LuceneIndexerCache {
   private static final Logger logger = Logger.getLogger(LuceneIndexerCache.class);
 
   /* our caches */
-  private final Stack<ReaderInfo> freeReaders = new Stack<ReaderInfo>();
   private final Stack<WriterInfo> freeWriters = new Stack<WriterInfo>();
-  private final Map<IndexReader,ReaderInfo> allocdReaders = new HashMap<IndexReader,ReaderInfo>();
   private final Map<IndexWriter,WriterInfo> allocdWriters = new HashMap<IndexWriter,WriterInfo>();
 
   /** The Directory for Lucene.  */
   private final Directory luceneIndexDirectory;
 
+  /** The searcher shared by all readers */
+  private final SearcherManager searcherManager;
+
   /** Whether this cache has been closed */
   private boolean closed = false;
 
@@ -69,6 +73,7 @@ public class LuceneIndexerCache {
   public LuceneIndexerCache(String directory) throws IOException {
     luceneIndexDirectory = FSDirectory.getDirectory(createOrValidateDirectory(directory));
     clearLocks();
+    searcherManager = new SearcherManager(luceneIndexDirectory);
 
     if (logger.isDebugEnabled()) {
       logger.debug("Fulltext string indexer cache initialized; directory =" + directory);
@@ -116,34 +121,13 @@ public class LuceneIndexerCache {
   }
 
   /**
-   * Get an index-reader. It must be returned via {@link #returnReader}.
+   * Get an index-searcher. It must be returned via {@link #returnSearcher}. The searcher is
+   * shared with other users, so it must not be closed.
    *
-   * @return the index-reader
+   * @return the index-searcher
    */
-  public synchronized IndexReader getReader() throws IOException {
-    if (closed) throw new IllegalStateException("IndexerCache has been closed: " + luceneIndexDirectory);
-
-    ReaderInfo ri = freeReaders.pop();
-    if (ri == null) {
-      ri = new ReaderInfo(luceneIndexDirectory);
-
-      if (logger.isDebugEnabled()) logger.debug("Creating new index-reader: " + ri.reader);
-    } else if (ri.needsRefresh) {
-      IndexReader reader = ri.reader.reopen();
-      if (reader != ri.reader) {
-        ri.reader.close();
-        ri = new ReaderInfo(reader);
-
-        if (logger.isDebugEnabled()) logger.debug("Refreshed index-reader: " + ri.reader);
-      } else {
-        ri.needsRefresh = false;
-      }
-    } else {
-      if (logger.isDebugEnabled()) logger.debug("Reusing index-reader: " + ri.reader);
-    }
-
-    allocdReaders.put(ri.reader, ri);
-    return ri.reader;
+  public IndexSearcher getSearcher() throws IOException {
+    return searcherManager.acquire();
   }
 
   /**
@@ -173,26 +157,14 @@ public class LuceneIndexerCache {
   }
 
   /**
-   * Return an index-reader to the cache. It must have been previously retrieved through {@link
-   * #getReader}.
+   * Return an index-searcher to the cache. It must have been previously retrieved through {@link
+   * #getSearcher}.
    *
-   * @param reader the reader to return
-   * @param close if true the reader is closed and not returned to the pool
+   * @param searcher the searcher to return
+   * @param close if true the searcher's reader is not used again once all users have returned it
    */
-  public synchronized void returnReader(IndexReader reader, boolean close) {
-    ReaderInfo ri = allocdReaders.remove(reader);
-
-    if (close || closed) {
-      try {
-        reader.close();
-        if (logger.isDebugEnabled()) logger.debug("Closed index-reader: " + reader);
-      } catch (IOException ioe) {
-        logger.warn("Error closing index-reader: " + reader);
-      }
-    } else {
-      freeReaders.push(ri);
-      if (logger.isDebugEnabled()) logger.debug("Returned index-reader: " + reader);
-    }
+  public void returnSearcher(IndexSearcher searcher, boolean close) {
+    searcherManager.release(searcher, close);
   }
 
   /**
@@ -225,9 +197,8 @@ public class LuceneIndexerCache {
    * @param writer the writer that made the modification
    */
   public synchronized void indexModified(IndexWriter writer) {
-    for (RefreshableObject ro : freeReaders) ro.needsRefresh = true;
+    searcherManager.indexModified();
     for (RefreshableObject ro : freeWriters) ro.needsRefresh = true;
-    for (RefreshableObject ro : allocdReaders.values()) ro.needsRefresh = true;
     for (WriterInfo wi : allocdWriters.values()) {
       if (wi.writer != writer) wi.needsRefresh = true;
     }
@@ -251,7 +222,7 @@ public class LuceneIndexerCache {
    * @throws IOException if an exception occurs while attempting to delete the files
    */
   public synchronized boolean removeAllIndexes() throws IOException {
-    if (allocdWriters.size() > 0 || allocdReaders.size() > 0) {
+    if (allocdWriters.size() > 0 || searcherManager.getActiveCount() > 0) {
       logger.warn("Attempting to remove all indexes while readers or writers are still active");
     }
     if (logger.isDebugEnabled()) {
@@ -270,19 +241,12 @@ public class LuceneIndexerCache {
    * in use will be closed upon being returned.
    */
   public synchronized void close() {
-    if (allocdWriters.size() > 0 || allocdReaders.size() > 0) {
+    if (allocdWriters.size() > 0 || searcherManager.getActiveCount() > 0) {
       logger.warn("Attempting to close indexer-cache while readers or writers are still active");
     }
 
     closed = true;
-
-    for (ReaderInfo ri : freeReaders) {
-      try {
-        ri.reader.close();
-      } catch (IOException ioe) {
-        logger.error("Error closing index-reader: " + ri.reader, ioe);
-      }
-    }
+    searcherManager.close();
 
     for (WriterInfo wi : freeWriters) {
       try {
@@ -299,18 +263,6 @@ public class LuceneIndexerCache {
     public boolean needsRefresh = false;
   }
 
-  private static class ReaderInfo extends RefreshableObject {
-    public final IndexReader reader;
-
-    public ReaderInfo(Directory directory) throws IOException {
-      reader = IndexReader.open(directory, true);
-    }
-
-    public ReaderInfo(IndexReader reader) {
-      this.reader = reader;
-    }
-  }
-
   private static class WriterInfo extends RefreshableObject {
     public final IndexWriter writer;
 
@@ -74,6 +74,7 @@ public class LuceneResolverFactory implements ResolverFactory {
   public static final URI modelTypeURI = URI.create(Mulgara.NAMESPACE + "LuceneModel");
   public static final URI searchURI = URI.create(Mulgara.NAMESPACE + "search");
   public static final URI scoreURI = URI.create(Mulgara.NAMESPACE + "score");
+  public static final URI maxHitsURI = URI.create(Mulgara.NAMESPACE + "maxHits");
 
   private final Map<String,LuceneIndexerCache> indexerCaches = new HashMap<String,LuceneIndexerCache>();
   private String directory;
@@ -107,7 +108,7 @@ public class LuceneResolverFactory implements ResolverFactory {
     initializer.registerNewConstraint(new LuceneConstraintDescriptor());
 
     // Register the LuceneConstraint's transformation
-    initializer.addSymbolicTransformation(new LuceneTransformer(modelTypeURI, searchURI, scoreURI));
+    initializer.addSymbolicTransformation(new LuceneTransformer(modelTypeURI, searchURI, scoreURI, maxHitsURI));
   }
 
   //
@@ -33,10 +33,13 @@ import org.mulgara.query.ConstraintExpression;
 import org.mulgara.query.ConstraintElement;
 import org.mulgara.query.ConstraintConjunction;
 import org.mulgara.query.ConstraintOperation;
+import org.mulgara.query.Order;
+import org.mulgara.query.Query;
 import org.mulgara.query.QueryException;
 import org.mulgara.query.Variable;
 import org.mulgara.query.rdf.URIReferenceImpl;
 import org.mulgara.resolver.spi.AbstractSymbolicTransformer;
+import org.mulgara.resolver.spi.MutableLocalQuery;
 import org.mulgara.resolver.spi.SymbolicTransformationContext;
 import org.mulgara.resolver.spi.SymbolicTransformationException;
 
@@ -49,6 +52,11 @@ import org.mulgara.resolver.spi.SymbolicTransformationException;
  *     $s &lt;mulgara:score&gt; $score in &lt;lucene&gt;
  * </pre>
  *
+ * <p>Only the best scoring hits of a search are returned if the search has a
+ * <code>$s &lt;mulgara:maxHits&gt; '50' in &lt;lucene&gt;</code> constraint, or if the search
+ * is the whole <code>WHERE</code> clause of a query which selects all of its variables, is ordered
+ * by descending score alone, and has a <code>LIMIT</code>.
+ *
  * @created 2008-09-28
  * @author Ronald Tschalär
  * @licence Apache License v2.0
@@ -59,6 +67,7 @@ public class LuceneTransformer extends AbstractSymbolicTransformer {
   private final URI modelTypeURI;
   private final URIReference searchPred;
   private final URIReference scorePred;
+  private final URIReference maxHitsPred;
 
   /**
    * Create a new tranformer to rewrite lucene queries.
@@ -68,9 +77,73 @@ public class LuceneTransformer extends AbstractSymbolicTransformer {
    * @param scorePredUri  the uri of the score predicate
    */
   public LuceneTransformer(URI modelTypeURI, URI searchPredUri, URI scorePredUri) {
+    this(modelTypeURI, searchPredUri, scorePredUri, null);
+  }
+
+  /**
+   * Create a new tranformer to rewrite lucene queries.
+   *
+   * @param modelTypeURI  the uri of the lucene model type
+   * @param searchPredUri the uri of the search predicate
+   * @param scorePredUri  the uri of the score predicate
+   * @param maxHitsPredUri the uri of the predicate for the number of best scoring hits to
+   *                       return; may be null
+   */
+  public LuceneTransformer(URI modelTypeURI, URI searchPredUri, URI scorePredUri, URI maxHitsPredUri) {
     this.modelTypeURI = modelTypeURI;
     searchPred = new URIReferenceImpl(searchPredUri);
     scorePred = new URIReferenceImpl(scorePredUri);
+    maxHitsPred = (maxHitsPredUri != null) ? new URIReferenceImpl(maxHitsPredUri) : null;
+  }
+
+  @Override
+  public void transform(SymbolicTransformationContext context, MutableLocalQuery mutableLocalQuery)
+        throws SymbolicTransformationException {
+    super.transform(context, mutableLocalQuery);
+
+    ConstraintExpression expr = mutableLocalQuery.getConstraintExpression();
+    ConstraintExpression limited = limitHits(mutableLocalQuery.getQuery(), expr);
+    if (limited != expr) mutableLocalQuery.setConstraintExpression(limited);
+  }
+
+  /**
+   * Only search for the best scoring hits when a query only uses that many. This is the case
+   * when the search is the whole <code>WHERE</code> clause, and the query is ordered by
+   * descending score alone and has a <code>LIMIT</code>. Any other sort key could order
+   * the hits which tie with the last one kept ahead of it, so they could not be dropped.
+   * Every variable of the search must also be selected, as otherwise several hits could be
+   * projected onto the same row, and the query would return fewer rows than its limit.
+   *
+   * @param query the query being transformed; may be null
+   * @param expr  the current <code>WHERE</code> clause of the query
+   * @return a new expression if the number of hits was limited, or <var>expr</var> if not
+   */
+  static ConstraintExpression limitHits(Query query, ConstraintExpression expr) {
+    if (query == null || query.getLimit() == null || query.getOrderList().size() != 1 ||
+        query.getHavingExpression() != null) {
+      return expr;
+    }
+
+    ConstraintExpression search = expr;
+    if (search instanceof ConstraintConjunction && ((ConstraintConjunction)search).getElements().size() == 1) {
+      search = ((ConstraintConjunction)search).getElements().get(0);
+    }
+    if (!(search instanceof LuceneConstraint)) return expr;
+
+    LuceneConstraint lc = (LuceneConstraint)search;
+    Order first = query.getOrderList().get(0);
+    if (lc.getScoreVar() == null || !lc.getScoreVar().equals(first.getVariable()) || first.isAscending()) {
+      return expr;
+    }
+    if (!query.getVariableList().containsAll(lc.getVariables())) return expr;
+
+    long wanted = (long)query.getOffset() + query.getLimit();
+    if (wanted <= 0 || wanted > Integer.MAX_VALUE) return expr;
+    int maxHits = (lc.getMaxHits() != 0) ? (int)Math.min(lc.getMaxHits(), wanted) : (int)wanted;
+    if (maxHits == lc.getMaxHits()) return expr;
+
+    if (logger.isDebugEnabled()) logger.debug("Limiting " + lc + " to the best " + maxHits + " hits");
+    return lc.withMaxHits(maxHits);
   }
 
   @Override
@@ -94,7 +167,7 @@ public class LuceneTransformer extends AbstractSymbolicTransformer {
         URI constraintModelType = context.mapToModelTypeURI(((URIReference)ce).getURI());
         if (constraintModelType != null && constraintModelType.equals(modelTypeURI)) {
           if (logger.isTraceEnabled()) logger.trace("Creating LC for: " + c);
-          return new LuceneConstraint(c, searchPred, scorePred);
+          return new LuceneConstraint(c, searchPred, scorePred, maxHitsPred);
         }
       }
       return c;
@@ -0,0 +1,243 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.resolver.lucene;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.Directory;
+
+/**
+ * A single index-searcher shared by all the readers of an index. Each user of the searcher holds
+ * a reference to it, and its reader is closed when the last reference is released after it has
+ * been replaced by a newer searcher.
+ *
+ * <p>Acquiring the searcher does not lock the manager. Once the index has been modified, the next
+ * acquisition reopens the reader, which only loads the segments that have changed, and other
+ * threads acquiring the searcher wait for the reopen, so that a search always sees the commits made
+ * before it started. Reopens may instead be limited to one every
+ * <code>mulgara.textindex.refreshInterval</code> milliseconds, 0 by default, so that a busy writer
+ * does not cause a reopen on each query. A non-zero interval means a search may not see the most
+ * recent commits, and threads keep using the current searcher while another thread reopens it.
+ *
+ * @created 2026-10-17
+ */
+class SearcherManager {
+  private static final Logger logger = Logger.getLogger(SearcherManager.class);
+
+  /** The property for the least number of milliseconds between reopens of the reader. */
+  static final String REFRESH_INTERVAL_PROPERTY = "mulgara.textindex.refreshInterval";
+
+  /** The least number of milliseconds between reopens of the reader. */
+  private static final long REFRESH_INTERVAL = Long.getLong(REFRESH_INTERVAL_PROPERTY, 0).longValue();
+
+  /** The directory of the index. */
+  private final Directory directory;
+
+  /** The current searcher; null before the first acquisition and after closing. */
+  private volatile Searcher current = null;
+
+  /** The number of times the index has been modified. */
+  private final AtomicLong modifications = new AtomicLong();
+
+  /**
+   * The number of modifications seen by the current searcher. This is only updated once the
+   * searcher has been replaced, so a reopen in progress still leaves the searcher stale.
+   */
+  private volatile long refreshed = 0;
+
+  /** Whether the current reader had an error, and must be replaced instead of reopened. */
+  private volatile boolean broken = false;
+
+  /** When the reader was last opened or reopened. */
+  private volatile long lastRefresh = 0;
+
+  /** Whether this manager has been closed. */
+  private volatile boolean closed = false;
+
+  /** Held while opening or replacing the searcher. */
+  private final ReentrantLock refreshLock = new ReentrantLock();
+
+  /** The number of searchers that have been acquired and not yet released. */
+  private final AtomicInteger active = new AtomicInteger();
+
+  /**
+   * Create a new manager. The reader is not opened until the first searcher is acquired.
+   *
+   * @param directory the directory of the index
+   */
+  SearcherManager(Directory directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Get the current searcher, reopening it first if the index has been modified. It must be
+   * released via {@link #release}.
+   *
+   * @return the searcher
+   * @throws IOException if the reader could not be opened
+   */
+  IndexSearcher acquire() throws IOException {
+    maybeRefresh();
+
+    while (true) {
+      Searcher s = current;
+      if (s == null) throw new IllegalStateException("IndexerCache has been closed: " + directory);
+      if (s.tryIncRef()) {
+        active.incrementAndGet();
+        return s;
+      }
+      // the searcher was replaced and closed after we read it; try the new one
+    }
+  }
+
+  /**
+   * Release a searcher previously acquired through {@link #acquire}.
+   *
+   * @param searcher   the searcher to release
+   * @param invalidate if true the reader had an error and is not reused
+   */
+  void release(IndexSearcher searcher, boolean invalidate) {
+    active.decrementAndGet();
+    if (invalidate) {
+      broken = true;
+      modifications.incrementAndGet();
+    }
+    ((Searcher)searcher).decRef();
+  }
+
+  /**
+   * Notify the manager that the index has been modified, so the next acquisition reopens the
+   * reader.
+   */
+  void indexModified() {
+    modifications.incrementAndGet();
+  }
+
+  /**
+   * @return the number of searchers that have been acquired and not yet released
+   */
+  int getActiveCount() {
+    return active.get();
+  }
+
+  /**
+   * Close this manager. The current reader is closed once all its searchers have been released.
+   */
+  void close() {
+    refreshLock.lock();
+    try {
+      closed = true;
+      Searcher old = current;
+      current = null;
+      if (old != null) old.decRef();
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  /**
+   * Open the reader if it is not open yet, or reopen it if the index has been modified and the
+   * refresh interval has passed. With a refresh interval, a reopen is skipped if another thread is
+   * already doing one; otherwise this waits for it, and then checks the reader again.
+   *
+   * @throws IOException if the reader could not be opened
+   */
+  private void maybeRefresh() throws IOException {
+    if (current != null && (modifications.get() == refreshed || System.currentTimeMillis() - lastRefresh < REFRESH_INTERVAL)) {
+      return;
+    }
+
+    if (current == null || REFRESH_INTERVAL <= 0) {
+      refreshLock.lock();
+    } else if (!refreshLock.tryLock()) {
+      return;
+    }
+
+    try {
+      if (closed) throw new IllegalStateException("IndexerCache has been closed: " + directory);
+
+      Searcher old = current;
+      // read first, so that modifications made during the reopen are not missed
+      long seen = modifications.get();
+      if (old != null && seen == refreshed) return;
+
+      IndexReader reader;
+      if (old == null || broken) {
+        reader = IndexReader.open(directory, true);
+        broken = false;
+      } else {
+        reader = old.getIndexReader().reopen();
+      }
+      lastRefresh = System.currentTimeMillis();
+
+      if (old != null && reader == old.getIndexReader()) {
+        refreshed = seen;
+        return;
+      }
+
+      current = new Searcher(reader);
+      refreshed = seen;
+      if (old != null) old.decRef();
+
+      if (logger.isDebugEnabled()) logger.debug((old == null ? "Opened" : "Refreshed") + " index-reader: " + reader);
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+
+  /**
+   * A searcher with a count of its users. The manager holds one reference for as long as the
+   * searcher is current.
+   */
+  private static class Searcher extends IndexSearcher {
+    private final AtomicInteger refs = new AtomicInteger(1);
+
+    public Searcher(IndexReader reader) {
+      super(reader);
+    }
+
+    /**
+     * Add a reference unless the searcher has already been closed.
+     *
+     * @return true if the reference was added
+     */
+    public boolean tryIncRef() {
+      while (true) {
+        int n = refs.get();
+        if (n <= 0) return false;
+        if (refs.compareAndSet(n, n + 1)) return true;
+      }
+    }
+
+    /**
+     * Remove a reference, closing the reader when the last one is removed.
+     */
+    public void decRef() {
+      if (refs.decrementAndGet() == 0) {
+        try {
+          getIndexReader().close();
+          if (logger.isDebugEnabled()) logger.debug("Closed index-reader: " + getIndexReader());
+        } catch (IOException ioe) {
+          logger.warn("Error closing index-reader: " + getIndexReader(), ioe);
+        }
+      }
+    }
+  }
+}
@@ -35,13 +35,17 @@ import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 // 3rd party
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 import org.apache.log4j.Logger;
+import org.apache.lucene.search.IndexSearcher;
 
 import org.mulgara.util.TempDir;
 
@@ -95,6 +99,9 @@ public class FullTextStringIndexUnitTest extends TestCase {
     TestSuite suite = new TestSuite();
     suite.addTest(new FullTextStringIndexUnitTest("testFullTextStringPool"));
     suite.addTest(new FullTextStringIndexUnitTest("testFullTextStringPoolCornerCases"));
+    suite.addTest(new FullTextStringIndexUnitTest("testFullTextStringPoolTopHits"));
+    suite.addTest(new FullTextStringIndexUnitTest("testSharedSearcher"));
+    suite.addTest(new FullTextStringIndexUnitTest("testReadAfterCommit"));
     suite.addTest(new FullTextStringIndexUnitTest("testFullTextStringPoolwithFiles"));
     suite.addTest(new FullTextStringIndexUnitTest("testFullTextStringPoolTransactions"));
 
@@ -318,6 +325,184 @@ public class FullTextStringIndexUnitTest extends TestCase {
   }
 
 
+  /**
+   * Test that only the best scoring hits are kept when a limit is given, and that
+   * the whole index can be enumerated.
+   *
+   * @throws Exception Test fails
+   */
+  public void testFullTextStringPoolTopHits() throws Exception {
+    LuceneIndexerCache cache = new LuceneIndexerCache(indexDirectory);
+    FullTextStringIndex index = null;
+
+    try {
+      String document = "http://mulgara.org/mulgara/document#";
+      String has = "http://mulgara.org/mulgara/document#has";
+
+      cache.close();
+      cache.removeAllIndexes();
+      cache = new LuceneIndexerCache(indexDirectory);
+
+      index = new FullTextStringIndex(cache, true, true);
+      for (String literal : theStrings) {
+        index.add(document, has, literal);
+      }
+      index.commit();
+      index.close();
+      index = new FullTextStringIndex(cache, true, true);
+
+      FullTextStringIndex.Hits all = index.find(document, has, "study group");
+      FullTextStringIndex.Hits best = index.find(document, has, "study group", 5);
+      assertTrue("Expected more than 5 hits", all.length() > 5);
+      assertEquals("Expected only the best 5 hits", 5, best.length());
+
+      float[] scores = new float[all.length()];
+      for (int i = 0; i < scores.length; i++) scores[i] = all.score(i);
+      Arrays.sort(scores);
+      float fifth = scores[scores.length - 5];
+      for (int i = 0; i < best.length(); i++) {
+        assertTrue("Hit " + i + " is not among the best", best.score(i) >= fifth);
+      }
+
+      assertEquals("Limit larger than the hits should find all hits", all.length(),
+                   index.find(document, has, "study group", 1000).length());
+      all.close();
+      best.close();
+
+      index.remove(document, has, "one");
+      index.commit();
+      index.close();
+      index = new FullTextStringIndex(cache, true, true);
+
+      FullTextStringIndex.Hits docs = index.findAll();
+      assertEquals("Unexpected number of documents", theStrings.size() - 1, docs.count());
+      int found = 0;
+      for (int i = 0; i < docs.length(); i++) {
+        if (docs.doc(i, null) != null) found++;
+      }
+      assertEquals("Unexpected number of documents enumerated", docs.count(), found);
+      docs.close();
+    } finally {
+      if (index != null) {
+        index.close();
+        cache.close();
+        assertTrue("Unable to remove all index files", cache.removeAllIndexes());
+      }
+    }
+  }
+
+
+  /**
+   * Test that readers share a searcher, which is only replaced after the index is modified.
+   *
+   * @throws Exception Test fails
+   */
+  public void testSharedSearcher() throws Exception {
+    LuceneIndexerCache cache = new LuceneIndexerCache(indexDirectory);
+    FullTextStringIndex index = null;
+
+    try {
+      String document = "http://mulgara.org/mulgara/document#";
+      String has = "http://mulgara.org/mulgara/document#has";
+
+      cache.close();
+      cache.removeAllIndexes();
+      cache = new LuceneIndexerCache(indexDirectory);
+
+      index = new FullTextStringIndex(cache, true, true);
+      index.add(document, has, "one");
+      index.commit();
+      index.close();
+
+      IndexSearcher s1 = cache.getSearcher();
+      IndexSearcher s2 = cache.getSearcher();
+      assertSame("Readers should share the searcher", s1, s2);
+      cache.returnSearcher(s2, false);
+
+      index = new FullTextStringIndex(cache, true, true);
+      index.add(document, has, "one two");
+      index.commit();
+      index.close();
+
+      IndexSearcher s3 = cache.getSearcher();
+      assertNotSame("Searcher should be refreshed after a commit", s1, s3);
+      assertEquals("Old searcher should not see the commit", 1, s1.maxDoc());
+      assertEquals("New searcher should see the commit", 2, s3.maxDoc());
+      cache.returnSearcher(s1, false);
+
+      IndexSearcher s4 = cache.getSearcher();
+      assertSame("Searcher should be reused until the next commit", s3, s4);
+      cache.returnSearcher(s3, false);
+      cache.returnSearcher(s4, false);
+
+      index = new FullTextStringIndex(cache, false, true);
+      assertEquals("Failed to find both documents", 2, index.find(document, has, "one").length());
+    } finally {
+      if (index != null) {
+        index.close();
+        cache.close();
+        assertTrue("Unable to remove all index files", cache.removeAllIndexes());
+      }
+    }
+  }
+
+
+  /**
+   * Test that searchers acquired concurrently after a commit all see it, including the ones that
+   * arrive while another thread is reopening the reader.
+   *
+   * @throws Exception Test fails
+   */
+  public void testReadAfterCommit() throws Exception {
+    LuceneIndexerCache cache = new LuceneIndexerCache(indexDirectory);
+    FullTextStringIndex index = null;
+
+    try {
+      String document = "http://mulgara.org/mulgara/document#";
+      String has = "http://mulgara.org/mulgara/document#has";
+
+      cache.close();
+      cache.removeAllIndexes();
+      final LuceneIndexerCache shared = cache = new LuceneIndexerCache(indexDirectory);
+
+      for (int round = 1; round <= 10; round++) {
+        index = new FullTextStringIndex(cache, true, true);
+        index.add(document + round, has, "one");
+        index.commit();
+        index.close();
+        index = null;
+
+        final int expected = round;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger stale = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+          threads[t] = new Thread() {
+            public void run() {
+              try {
+                start.await();
+                IndexSearcher s = shared.getSearcher();
+                if (s.maxDoc() != expected) stale.incrementAndGet();
+                shared.returnSearcher(s, false);
+              } catch (Exception e) {
+                stale.incrementAndGet();
+              }
+            }
+          };
+          threads[t].start();
+        }
+        start.countDown();
+        for (Thread t: threads) t.join();
+        assertEquals("Searchers missed commit " + round, 0, stale.get());
+      }
+    } finally {
+      if (index != null) index.close();
+      cache.close();
+      assertTrue("Unable to remove all index files", cache.removeAllIndexes());
+    }
+  }
+
+
   /**
    * Test corner cases (null subject, object, predicate, etc).
    *
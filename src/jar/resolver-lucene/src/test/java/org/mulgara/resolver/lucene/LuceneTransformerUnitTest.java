@@ -0,0 +1,119 @@
+/*
+ * Copyright 2008 The Topaz Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Contributions:
+ */
+
+package org.mulgara.resolver.lucene;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.mulgara.query.ConstraintExpression;
+import org.mulgara.query.ConstraintImpl;
+import org.mulgara.query.GraphResource;
+import org.mulgara.query.Order;
+import org.mulgara.query.Query;
+import org.mulgara.query.SelectElement;
+import org.mulgara.query.UnconstrainedAnswer;
+import org.mulgara.query.Variable;
+import org.mulgara.query.rdf.LiteralImpl;
+import org.mulgara.query.rdf.URIReferenceImpl;
+
+/**
+ * Unit tests for limiting the hits of a search in {@link LuceneTransformer}.
+ *
+ * @created 2026-10-17
+ * @licence Apache License v2.0
+ */
+public class LuceneTransformerUnitTest extends TestCase {
+  private static final URIReferenceImpl MODEL = new URIReferenceImpl(URI.create("rmi://localhost/server1#lucene"));
+  private static final URIReferenceImpl SEARCH = new URIReferenceImpl(URI.create("http://mulgara.org/mulgara#search"));
+  private static final URIReferenceImpl SCORE = new URIReferenceImpl(URI.create("http://mulgara.org/mulgara#score"));
+  private static final URIReferenceImpl FOO = new URIReferenceImpl(URI.create("http://example.org/foo"));
+
+  private final Variable x = new Variable("x");
+  private final Variable s = new Variable("s");
+  private final Variable score = new Variable("score");
+
+  public LuceneTransformerUnitTest(String name) {
+    super(name);
+  }
+
+  public static Test suite() {
+    TestSuite suite = new TestSuite();
+    suite.addTest(new LuceneTransformerUnitTest("testLimitHits"));
+    suite.addTest(new LuceneTransformerUnitTest("testProjectedHits"));
+    return suite;
+  }
+
+  /**
+   * Default test runner.
+   * @param args The command line arguments
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+
+  /**
+   * A search selected in full, ordered by descending score and limited, only keeps the best hits.
+   */
+  public void testLimitHits() throws Exception {
+    LuceneConstraint lc = search();
+    ConstraintExpression limited = LuceneTransformer.limitHits(query(lc, x, score), lc);
+    assertTrue(limited instanceof LuceneConstraint);
+    assertEquals(15, ((LuceneConstraint)limited).getMaxHits());
+  }
+
+  /**
+   * The hits are not limited when a variable of the search is projected away, as several hits
+   * could then make the same row.
+   */
+  public void testProjectedHits() throws Exception {
+    LuceneConstraint lc = search();
+    assertSame(lc, LuceneTransformer.limitHits(query(lc, x), lc));
+    assertSame(lc, LuceneTransformer.limitHits(query(lc, score), lc));
+  }
+
+  /**
+   * @return the search <code>$x &lt;mulgara:search&gt; $s . $s &lt;foo&gt; 'story' .
+   *         $s &lt;mulgara:score&gt; $score</code>
+   */
+  private LuceneConstraint search() throws Exception {
+    LuceneConstraint lc = constraint(new ConstraintImpl(x, SEARCH, s, MODEL));
+    lc.conjoinWith(constraint(new ConstraintImpl(s, FOO, new LiteralImpl("story"), MODEL)));
+    lc.conjoinWith(constraint(new ConstraintImpl(s, SCORE, score, MODEL)));
+    return lc;
+  }
+
+  private static LuceneConstraint constraint(ConstraintImpl c) throws Exception {
+    return new LuceneConstraint(c, SEARCH, SCORE, null);
+  }
+
+  /**
+   * @return a distinct query of the search ordered by descending score, with a limit of 10 and
+   *         an offset of 5
+   */
+  private static Query query(LuceneConstraint lc, SelectElement... select) {
+    return new Query(Arrays.asList(select), new GraphResource(MODEL.getURI()), lc, null,
+                     Collections.singletonList(new Order(lc.getScoreVar(), false)), 10, 5, true,
+                     new UnconstrainedAnswer());
+  }
+}
@@ -36,6 +36,7 @@ import java.util.*;
 // Locally written packages
 import org.mulgara.query.*;
 import org.mulgara.resolver.spi.Resolution;
+import org.mulgara.store.nodepool.NodePool;
 import org.mulgara.store.tuples.AbstractTuples;
 import org.mulgara.store.tuples.Tuples;
 
@@ -61,68 +62,87 @@ public class MemoryResolution extends AbstractTuples implements Resolution {
   private final Constraint constraint;
 
   /**
-   * The unmodifiable set of {@link Stating}s from which to filter the
-   * resolution statements.
+   * The statings from which to filter the resolution statements.
    *
-   * This is cloned from the <var>statingSet</var> parameter passed to the
-   * constructor, so as to avoid side effects when models are subsequently
-   * modified.
+   * This is an immutable snapshot of the statings passed to the constructor,
+   * so as to avoid side effects when models are subsequently modified.
    */
-  private final Set<Stating> statingSet;
+  private final StatingStore.Snapshot statings;
 
   /**
-   * The {@link Iterator} use to obtain the {@link #stating} from the
-   * {@link #statingSet}.
+   * The value of each column of the constraint, or {@link NodePool#NONE} for
+   * the columns which are not bound to a {@link LocalNode}.
    */
-  private Iterator<Stating> iterator;
+  private final long[] bound = new long[4];
 
   /**
-   * The current stating, <code>null</code> if not on a row.
+   * The number of statings which satisfy the constraint, or <code>-1</code>
+   * if the constraint has to be filtered row by row.
    */
-  private Stating stating = null;
+  private final long constraintRowCount;
 
   /**
-   * Which column of the current {@link #stating} provides the value of each
+   * The number of statings in the range of the index scanned for the
+   * constraint.
+   */
+  private final long constraintUpperBound;
+
+  /**
+   * Which column of the current stating provides the value of each
    * column of the current resolution tuple row.
    */
   private final int[] columnIndex;
 
   /**
-   * The prefix passed into the most recent invocation of {@link #beforeFirst}
+   * The index scanned since the most recent invocation of {@link #beforeFirst}.
+   */
+  private int index;
+
+  /**
+   * The values of each column of a stating, for the constraint combined with
+   * the prefix passed into the most recent invocation of {@link #beforeFirst}.
+   */
+  private long[] filter;
+
+  /**
+   * The number of leading columns of the {@link #index} which are bound by
+   * the {@link #filter}.  The remaining bound columns are checked row by row.
    */
-  private long[] prefix;
+  private int filterLength;
+
+  /**
+   * The statings in the {@link #index} which start with the bound columns, or
+   * <code>null</code> if {@link #beforeFirst} hasn't been called.
+   */
+  private StatingStore.Range range;
 
   //
   // Constructors
   //
 
   /**
-   * Construct the resolution to a constraint from a set of {@link Stating}s.
+   * Construct the resolution to a constraint from a set of statings.
    *
    * @param constraint  the constraint to resolver, never <code>null</code>
-   * @param statingSet  the {@link Stating}s to filter for constraint
-   *   satisfaction, never <code>null</code>
+   * @param statings  the statings to filter for constraint satisfaction, never
+   *   <code>null</code>
    * @throws IllegalArgumentException if the <var>constraint</var> or
-   *   <var>statingSet</var> are <code>null</code>
+   *   <var>statings</var> are <code>null</code>
    */
-  MemoryResolution(Constraint constraint, Set<Stating> statingSet) {
+  MemoryResolution(Constraint constraint, StatingStore.Snapshot statings) {
     // Validate "constraint" parameter
     if (constraint == null) {
       throw new IllegalArgumentException( "Null \"constraint\" parameter");
     }
 
-    // Validate "statingSet" parameter
-    if (statingSet == null) {
-      throw new IllegalArgumentException( "Null \"statingSet\" parameter");
+    // Validate "statings" parameter
+    if (statings == null) {
+      throw new IllegalArgumentException( "Null \"statings\" parameter");
     }
 
     // Initialize fields
     this.constraint = constraint;
-
-    // Clone the statings, for isolation from subsequent changes
-    synchronized (statingSet) {
-      this.statingSet = Collections.unmodifiableSet(new HashSet<Stating>(statingSet));
-    }
+    this.statings = statings;
 
     // Calculate columnIndex and set the variable list
     int length = 0;
@@ -133,10 +153,18 @@ public class MemoryResolution extends AbstractTuples implements Resolution {
         temp[length++] = i;
         variableList.add((Variable)constraint.getElement(i));
       }
+      bound[i] = constraint.getElement(i) instanceof LocalNode ?
+          ((LocalNode)constraint.getElement(i)).getValue() : NodePool.NONE;
     }
     columnIndex = new int[length];
     for (int i=0; i<length; i++) columnIndex[i] = temp[i];
     setVariables(variableList);
+
+    // Count the statings satisfying the constraint from the range of an index
+    select(bound);
+    constraintUpperBound = range.size;
+    constraintRowCount = filterLength == countBound(bound) ? constraintUpperBound : -1;
+    range = null;
   }
 
   //
@@ -158,22 +186,25 @@ public class MemoryResolution extends AbstractTuples implements Resolution {
   public void beforeFirst(long[] prefix, int suffixTruncation) throws TuplesException {
     // Validate "prefix" parameter
     if (prefix == null) throw new IllegalArgumentException("Null \"prefix\" parameter");
-    if (prefix.length > 4) {
-      throw new TuplesException("Bad prefix (>4): " + toString(prefix));
+    if (prefix.length > columnIndex.length) {
+      throw new TuplesException("Bad prefix (>" + columnIndex.length + "): " + toString(prefix));
     }
 
     // Validate "suffixTruncation" parameter
     if (suffixTruncation != 0)  throw new IllegalArgumentException("Nonzero suffix truncationr");
 
-    // Reset fields
-    iterator    = statingSet.iterator();
-    this.prefix = prefix;
-    stating     = null;
+    // Combine the prefix with the constraint, and find the matching statings
+    long[] values = bound.clone();
+    for (int i = 0; i < prefix.length; i++) values[columnIndex[i]] = prefix[i];
+    select(values);
   }
 
   public Object clone() {
-    // Copy mutable fields by value (all fields are immutable)
-    return (MemoryResolution) super.clone();
+    // Copy mutable fields by value (the statings are immutable)
+    MemoryResolution cloned = (MemoryResolution) super.clone();
+    if (filter != null) cloned.filter = filter.clone();
+    if (range != null) cloned.range = range.clone();
+    return cloned;
   }
 
   /**
@@ -187,13 +218,13 @@ public class MemoryResolution extends AbstractTuples implements Resolution {
    * @param column  0 for the subject, 1 for the predicate, 2 for the object
    */
   public long getColumnValue(int column) throws TuplesException {
-    if (stating == null) throw new TuplesException("Not on a row");
+    if (range == null || !range.isOnStating()) throw new TuplesException("Not on a row");
 
     if (column < 0 || column >= columnIndex.length) {
       throw new TuplesException("No such column: " + column);
     }
 
-    return stating.get(columnIndex[column]);
+    return range.get(columnIndex[column]);
   }
 
   @SuppressWarnings("unchecked")
@@ -202,15 +233,16 @@ public class MemoryResolution extends AbstractTuples implements Resolution {
   }
 
   public long getRowCount() throws TuplesException {
-    return statingSet.size();
+    if (constraintRowCount >= 0) return constraintRowCount;
+    return super.getRowCount();
   }
 
   public long getRowUpperBound() throws TuplesException {
-    return getRowCount();
+    return constraintUpperBound;
   }
 
   public long getRowExpectedCount() throws TuplesException {
-    return getRowCount();
+    return constraintRowCount >= 0 ? constraintRowCount : constraintUpperBound;
   }
 
   public boolean hasNoDuplicates() throws TuplesException {
@@ -227,21 +259,16 @@ public class MemoryResolution extends AbstractTuples implements Resolution {
   }
 
   public boolean next() throws TuplesException {
-    if (iterator == null) {
+    if (range == null) {
       throw new TuplesException("Haven't called beforeFirst");
     }
 
-    // Advance to the next stating that satisfies the constraint
-    filtering_statings: while (iterator.hasNext()) {
-      stating = (Stating) iterator.next();
-      for (int i = 0; i < prefix.length; i++) {
-        if (prefix[i] != stating.get(columnIndex[i])) {
-          continue filtering_statings;
-        }
-      }
-      for (int i = 0; i < 4; i++) {
-        if (constraint.getElement(i) instanceof LocalNode &&
-            ((LocalNode)constraint.getElement(i)).getValue() != stating.get(i)) {
+    // Advance to the next stating that satisfies the remaining bound columns
+    int[] order = StatingStore.ORDERS[index];
+    filtering_statings: while (range.next()) {
+      for (int i = filterLength; i < order.length; i++) {
+        int column = order[i];
+        if (filter[column] != NodePool.NONE && filter[column] != range.get(column)) {
           continue filtering_statings;
         }
       }
@@ -250,4 +277,44 @@ public class MemoryResolution extends AbstractTuples implements Resolution {
 
     return false;
   }
+
+  //
+  // Internal methods
+  //
+
+  /**
+   * Select the index with the most leading columns bound, and position the
+   * cursor before the statings which start with those columns.
+   *
+   * @param values  the value of each column, or {@link NodePool#NONE} for
+   *   unbound columns
+   */
+  private void select(long[] values) {
+    index = 0;
+    filterLength = -1;
+    for (int i = 0; i < StatingStore.ORDERS.length; i++) {
+      int[] order = StatingStore.ORDERS[i];
+      int length = 0;
+      while (length < order.length && values[order[length]] != NodePool.NONE) length++;
+      if (length > filterLength) {
+        index = i;
+        filterLength = length;
+      }
+    }
+
+    int[] order = StatingStore.ORDERS[index];
+    long[] prefix = new long[filterLength];
+    for (int i = 0; i < filterLength; i++) prefix[i] = values[order[i]];
+    filter = values;
+    range = statings.range(index, prefix, filterLength);
+  }
+
+  /**
+   * @return the number of bound columns in <var>values</var>
+   */
+  private static int countBound(long[] values) {
+    int count = 0;
+    for (long value: values) if (value != NodePool.NONE) count++;
+    return count;
+  }
 }
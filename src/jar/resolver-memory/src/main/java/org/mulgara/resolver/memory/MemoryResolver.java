@@ -31,7 +31,6 @@ package org.mulgara.resolver.memory;
 // Java 2 standard packages
 import java.io.*;
 import java.net.*;
-import java.util.*;
 import javax.transaction.xa.XAResource;
 
 // Third party packages
@@ -82,10 +81,9 @@ public class MemoryResolver implements SystemResolver {
   private final ResolverSession resolverSession;
 
   /**
-   * The shared set of {@link Stating}s for the factory that produced this
-   * instance.
+   * The shared statings for the factory that produced this instance.
    */
-  private final Set<Stating> statingSet;
+  private final StatingStore statingStore;
 
   private final XAResource xares;
 
@@ -104,33 +102,33 @@ public class MemoryResolver implements SystemResolver {
    *   property
    * @param modelTypeURI  the local node representing the model type managed
    *   by this class, never {@link NodePool#NONE}
-   * @param statingSet  the set of statings shared between all resolvers from
-   *   this particular factory
+   * @param statingStore  the statings shared between all resolvers from this
+   *   particular factory
    * @throws IllegalArgumentException  {@inheritDoc}, or if <var>modelType</var>
    *   is {@link NodePool#NONE}
    */
   MemoryResolver(ResolverSession resolverSession,
                  long            rdfType,
                  URI             modelTypeURI,
-                 Set<Stating>    statingSet)
+                 StatingStore    statingStore)
       throws ResolverFactoryException {
-    this(resolverSession, rdfType, modelTypeURI, statingSet, null, null);
+    this(resolverSession, rdfType, modelTypeURI, statingStore, null, null);
   }
 
   MemoryResolver(long              rdfType,
                  URI               modelTypeURI,
-                 Set<Stating>      statingSet,
+                 StatingStore      statingStore,
                  XAResolverSession resolverSession,
                  ResolverFactory   resolverFactory)
       throws ResolverFactoryException {
-    this(resolverSession, rdfType, modelTypeURI, statingSet, resolverSession,
+    this(resolverSession, rdfType, modelTypeURI, statingStore, resolverSession,
          resolverFactory);
   }
 
   private MemoryResolver(ResolverSession   resolverSession,
                          long              rdfType,
                          URI               modelTypeURI,
-                         Set<Stating>      statingSet,
+                         StatingStore      statingStore,
                          XAResolverSession xaResolverSession,
                          ResolverFactory   resolverFactory)
       throws ResolverFactoryException {
@@ -143,7 +141,7 @@ public class MemoryResolver implements SystemResolver {
     memoryModelTypeURI = modelTypeURI;
     this.rdfType = rdfType;
     this.resolverSession = resolverSession;
-    this.statingSet = statingSet;
+    this.statingStore = statingStore;
     this.xaResolverSession = xaResolverSession;
 
     this.xares = (xaResolverSession != null) ?
@@ -212,9 +210,7 @@ public class MemoryResolver implements SystemResolver {
     }
 
     // Remove all the statings belonging to the model
-    for (Iterator<Stating> i = statingSet.iterator(); i.hasNext();) {
-      if (i.next().get(3) == model) i.remove();
-    }
+    statingStore.removeModel(model);
   }
 
   /**
@@ -237,27 +233,29 @@ public class MemoryResolver implements SystemResolver {
     // Modify statement occurrences
     try {
       statements.beforeFirst();
-      synchronized (statingSet) {
+      synchronized (statingStore) {
         while (statements.next()) {
-          // Create the stating
-          Stating stating = new Stating(statements.getSubject(),
-                                        statements.getPredicate(),
-                                        statements.getObject(),
-                                        model);
+          long subject = statements.getSubject();
+          long predicate = statements.getPredicate();
+          long object = statements.getObject();
 
           // Modify the occurrence of the stating
           if (occurs) {
-            if (logger.isDebugEnabled()) logger.debug("Adding " + stating);
-            statingSet.add(stating);
+            if (logger.isDebugEnabled()) {
+              logger.debug("Adding " + new Stating(subject, predicate, object, model));
+            }
+            statingStore.add(subject, predicate, object, model);
           } else {
-            if (logger.isDebugEnabled()) logger.debug("Removing " + stating);
-            statingSet.remove(stating);
+            if (logger.isDebugEnabled()) {
+              logger.debug("Removing " + new Stating(subject, predicate, object, model));
+            }
+            statingStore.remove(subject, predicate, object, model);
           }
         }
       }
 
       if (logger.isDebugEnabled()) {
-        logger.debug("Modified memory model " + model + ": " + statingSet);
+        logger.debug("Modified memory model " + model + ": " + statingStore);
       }
     } catch (TuplesException e) {
       throw new ResolverException("Couldn't modify model, and may have corrupted the store", e);
@@ -270,10 +268,10 @@ public class MemoryResolver implements SystemResolver {
    */
   public Resolution resolve(Constraint constraint) throws QueryException {
     if (logger.isDebugEnabled()) {
-      logger.debug("Resolve " + constraint + " against " + statingSet);
+      logger.debug("Resolve " + constraint + " against " + statingStore);
     }
 
-    return new MemoryResolution(constraint, statingSet);
+    return new MemoryResolution(constraint, statingStore.snapshot());
   }
 
 
@@ -302,6 +300,14 @@ public class MemoryResolver implements SystemResolver {
   public long localizePersistent(Node node) throws LocalizeException {
     return resolverSession.localizePersistent(node);
   }
+
+  public long[] localize(Node[] nodes) throws LocalizeException {
+    return resolverSession.localize(nodes);
+  }
+
+  public long[] localizePersistent(Node[] nodes) throws LocalizeException {
+    return resolverSession.localizePersistent(nodes);
+  }
   
   public long newBlankNode() throws NodePoolException {
     return resolverSession.newBlankNode();
@@ -347,27 +353,6 @@ public class MemoryResolver implements SystemResolver {
   // Internal methods
   //
 
-  /**
-   * Format a stating set.
-   *
-   * @param statingSet  a set of statings (<code>long[4]</code> instances),
-   *   possibly <code>null</code>
-   * @throws IllegalArgumentException if the <var>statingSet</var> contains any
-   *   element which is not a stating (<code>long[4]</code>)
-   */
-  @SuppressWarnings("unused")
-  private static String toString(Set<Stating> statingSet) {
-    if (statingSet == null) return "null";
-
-    StringBuffer buffer = new StringBuffer("[");
-    for (Iterator<Stating> i = statingSet.iterator(); i.hasNext();) {
-      buffer.append(i.next());
-      buffer.append(i.hasNext() ? " " : "]");
-    }
-
-    return buffer.toString();
-  }
-
   public void abort() {
     if (xaResolverSession != null) {
       try {
@@ -29,8 +29,6 @@ package org.mulgara.resolver.memory;
 
 // Java 2 standard packages
 import java.net.*;
-import java.util.HashSet;
-import java.util.Set;
 
 // Third party packages
 import org.apache.log4j.Logger;
@@ -74,10 +72,10 @@ public class MemoryResolverFactory implements SystemResolverFactory
 
 
   /**
-   * The {@link Stating}s which occur in all models created by resolvers
-   * created by this factory.
+   * The statings which occur in all models created by resolvers created by
+   * this factory.
    */
-  private final Set<Stating> statingSet = new HashSet<Stating>();
+  private final StatingStore statingStore = new StatingStore();
 
   private XAResolverSessionFactory sessionFactory;
 
@@ -231,7 +229,7 @@ public class MemoryResolverFactory implements SystemResolverFactory
     return new MemoryResolver(resolverSession,
                               rdfType,
                               modelTypeURI,
-                              statingSet);
+                              statingStore);
   }
 
 
@@ -239,7 +237,7 @@ public class MemoryResolverFactory implements SystemResolverFactory
     assert sessionFactory != null;
     if (logger.isDebugEnabled()) logger.debug("Creating memory resolver factory");
     try {
-      return new MemoryResolver(rdfType, modelTypeURI, statingSet,
+      return new MemoryResolver(rdfType, modelTypeURI, statingStore,
                                 (XAResolverSession) sessionFactory.newWritableResolverSession(),
                                 this);
     } catch (ResolverSessionFactoryException er) {
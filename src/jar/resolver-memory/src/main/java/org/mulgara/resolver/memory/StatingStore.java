@@ -0,0 +1,527 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.resolver.memory;
+
+// Java 2 standard packages
+import java.util.Arrays;
+
+// Local packages
+import org.mulgara.store.nodepool.NodePool;
+
+/**
+ * The statings of the models created by a {@link MemoryResolverFactory}.
+ * <p>
+ * Statings are held as sorted arrays of primitive <code>long</code>s, four to
+ * a stating, with one array for each of the {@link #ORDERS}.  The arrays are
+ * never changed once they have been built.  Readers take a {@link Snapshot} of
+ * the current arrays, which is isolated from any later modifications without
+ * being copied.
+ * </p>
+ * <p>
+ * A snapshot is made of a large base set of statings, and a small overlay of
+ * the statings added to and removed from the base since it was built.
+ * Modifications are buffered, and are merged into a new overlay when the next
+ * snapshot is taken, so the cost of a snapshot depends on the size of the
+ * overlay rather than the number of statings.  The overlay is merged into a new
+ * base once it grows past a fraction of the base, so the cost of rebuilding the
+ * base is spread over the modifications that caused it.
+ * </p>
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+class StatingStore {
+
+  /** The number of nodes in a stating. */
+  static final int SIZEOF_STATING = 4;
+
+  /**
+   * The column orders of the indexes.  All of them start with the model, since
+   * constraints are resolved against a single model, and between them every
+   * combination of the other columns is a prefix of one of the orders.
+   */
+  static final int[][] ORDERS = {
+      {3, 0, 1, 2},
+      {3, 1, 2, 0},
+      {3, 2, 0, 1}
+  };
+
+  /** The number of longs in a buffered modification: a stating and its sequence. */
+  private static final int SIZEOF_MODIFICATION = SIZEOF_STATING + 1;
+
+  /** The sort order of buffered modifications, which keeps them in sequence for each stating. */
+  private static final int[] MODIFICATION_ORDER = {3, 0, 1, 2, 4};
+
+  /** The initial size of the modification buffer, in modifications. */
+  private static final int INITIAL_BUFFER_SIZE = 1024;
+
+  /** Below this size, sections of an array are sorted by insertion. */
+  private static final int INSERTION_SORT_THRESHOLD = 8;
+
+  /** The size an overlay may always grow to before it is merged into the base. */
+  static final int MIN_OVERLAY_SIZE = 1024;
+
+  /** The largest overlay, as a fraction of the base, before it is merged into the base. */
+  private static final int OVERLAY_FRACTION = 8;
+
+  /** The current statings. */
+  private Snapshot snapshot = new Snapshot();
+
+  /**
+   * The buffered modifications, not yet merged into the {@link #snapshot}.
+   * Each is a stating followed by its sequence number, shifted left by one to
+   * hold a flag of 1 for an addition or 0 for a removal.
+   */
+  private long[] modifications = new long[INITIAL_BUFFER_SIZE * SIZEOF_MODIFICATION];
+
+  /** The number of buffered modifications. */
+  private int nrModifications = 0;
+
+  /**
+   * Buffers the addition of a stating.
+   */
+  synchronized void add(long s, long p, long o, long m) {
+    modify(s, p, o, m, true);
+  }
+
+  /**
+   * Buffers the removal of a stating.
+   */
+  synchronized void remove(long s, long p, long o, long m) {
+    modify(s, p, o, m, false);
+  }
+
+  /**
+   * Removes every stating in a model.
+   *
+   * @param model  the model to remove
+   */
+  synchronized void removeModel(long model) {
+    Range range = snapshot().range(0, new long[] {model}, 1);
+    while (range.next()) {
+      modify(range.get(0), range.get(1), range.get(2), model, false);
+    }
+  }
+
+  /**
+   * Gets the current statings, merging any buffered modifications.
+   *
+   * @return an immutable view of the statings
+   */
+  synchronized Snapshot snapshot() {
+    if (nrModifications > 0) {
+      snapshot = merge(snapshot);
+      nrModifications = 0;
+      if (modifications.length > INITIAL_BUFFER_SIZE * SIZEOF_MODIFICATION) {
+        modifications = new long[INITIAL_BUFFER_SIZE * SIZEOF_MODIFICATION];
+      }
+    }
+    return snapshot;
+  }
+
+  public String toString() {
+    return "[" + snapshot().size + " statings]";
+  }
+
+  /**
+   * Buffers a modification.
+   */
+  private void modify(long s, long p, long o, long m, boolean occurs) {
+    assert s != NodePool.NONE;
+    assert p != NodePool.NONE;
+    assert o != NodePool.NONE;
+    assert m != NodePool.NONE;
+
+    int offset = nrModifications * SIZEOF_MODIFICATION;
+    if (offset == modifications.length) {
+      modifications = Arrays.copyOf(modifications, modifications.length * 2);
+    }
+    modifications[offset] = s;
+    modifications[offset + 1] = p;
+    modifications[offset + 2] = o;
+    modifications[offset + 3] = m;
+    modifications[offset + 4] = ((long)nrModifications << 1) | (occurs ? 1 : 0);
+    nrModifications++;
+  }
+
+  /**
+   * Merges the buffered modifications into the overlay of a snapshot.
+   *
+   * @param current  the statings to modify
+   * @return the modified statings
+   */
+  private Snapshot merge(Snapshot current) {
+    // Sort the modifications, and keep the last one for each stating.  Since
+    // the statings added since the base was built are never in the base, and
+    // the statings removed always are, only the base has to be searched to
+    // find how each modification changes the overlay.
+    sort(modifications, SIZEOF_MODIFICATION, MODIFICATION_ORDER, 0, nrModifications);
+    Level base = current.base;
+    long[] addToAdded = new long[nrModifications * SIZEOF_STATING];
+    long[] removeFromAdded = new long[nrModifications * SIZEOF_STATING];
+    long[] addToRemoved = new long[nrModifications * SIZEOF_STATING];
+    long[] removeFromRemoved = new long[nrModifications * SIZEOF_STATING];
+    int nrAddToAdded = 0, nrRemoveFromAdded = 0, nrAddToRemoved = 0, nrRemoveFromRemoved = 0;
+    long[] stating = new long[SIZEOF_STATING];
+    for (int i = 0; i < nrModifications; i++) {
+      int offset = i * SIZEOF_MODIFICATION;
+      if (i + 1 < nrModifications && compare(modifications, offset, modifications,
+          offset + SIZEOF_MODIFICATION, ORDERS[0]) == 0) {
+        continue;
+      }
+      boolean occurs = (modifications[offset + SIZEOF_STATING] & 1) != 0;
+      for (int c = 0; c < SIZEOF_STATING; c++) stating[c] = modifications[offset + ORDERS[0][c]];
+      boolean inBase = base.find(0, stating, SIZEOF_STATING, true) < base.find(0, stating, SIZEOF_STATING, false);
+      if (occurs && inBase) {
+        System.arraycopy(modifications, offset, removeFromRemoved, nrRemoveFromRemoved++ * SIZEOF_STATING, SIZEOF_STATING);
+      } else if (occurs) {
+        System.arraycopy(modifications, offset, addToAdded, nrAddToAdded++ * SIZEOF_STATING, SIZEOF_STATING);
+      } else if (inBase) {
+        System.arraycopy(modifications, offset, addToRemoved, nrAddToRemoved++ * SIZEOF_STATING, SIZEOF_STATING);
+      } else {
+        System.arraycopy(modifications, offset, removeFromAdded, nrRemoveFromAdded++ * SIZEOF_STATING, SIZEOF_STATING);
+      }
+    }
+
+    Level added = merge(current.added, addToAdded, nrAddToAdded, removeFromAdded, nrRemoveFromAdded);
+    Level removed = merge(current.removed, addToRemoved, nrAddToRemoved, removeFromRemoved, nrRemoveFromRemoved);
+    if (added.size + removed.size <= Math.max(MIN_OVERLAY_SIZE, base.size / OVERLAY_FRACTION)) {
+      return new Snapshot(base, added, removed);
+    }
+
+    // Rebuild the base, with copies of the overlay as they are sorted in place
+    base = merge(base, added.indexes[0].clone(), added.size, removed.indexes[0].clone(), removed.size);
+    return new Snapshot(base, new Level(), new Level());
+  }
+
+  /**
+   * Merges statings into a level.
+   *
+   * @param level  the level to modify
+   * @param additions  the statings to add, sorted in the first of the
+   *   {@link #ORDERS}.  This array is reordered.
+   * @param nrAdditions  the number of statings in <var>additions</var>
+   * @param removals  the statings to remove, sorted in the first of the
+   *   {@link #ORDERS}, none of which are in <var>additions</var>.  This array
+   *   is reordered.
+   * @param nrRemovals  the number of statings in <var>removals</var>
+   * @return the modified level
+   */
+  private static Level merge(Level level, long[] additions, int nrAdditions, long[] removals, int nrRemovals) {
+    if (nrAdditions == 0 && nrRemovals == 0) return level;
+    long[][] indexes = new long[ORDERS.length][];
+    int size = 0;
+    for (int i = 0; i < ORDERS.length; i++) {
+      if (i > 0) {
+        sort(additions, SIZEOF_STATING, ORDERS[i], 0, nrAdditions);
+        sort(removals, SIZEOF_STATING, ORDERS[i], 0, nrRemovals);
+      }
+      long[] index = level.indexes[i];
+      long[] merged = new long[(level.size + nrAdditions) * SIZEOF_STATING];
+      int[] order = ORDERS[i];
+      int b = 0, a = 0, r = 0;
+      size = 0;
+      while (b < level.size || a < nrAdditions) {
+        int c;
+        if (b == level.size) c = 1;
+        else if (a == nrAdditions) c = -1;
+        else c = compare(index, b * SIZEOF_STATING, additions, a * SIZEOF_STATING, order);
+
+        long[] from = c <= 0 ? index : additions;
+        int offset = (c <= 0 ? b : a) * SIZEOF_STATING;
+        if (c <= 0) b++;
+        if (c >= 0) a++;
+
+        while (r < nrRemovals && compare(removals, r * SIZEOF_STATING, from, offset, order) < 0) r++;
+        if (r < nrRemovals && compare(removals, r * SIZEOF_STATING, from, offset, order) == 0) continue;
+        System.arraycopy(from, offset, merged, size++ * SIZEOF_STATING, SIZEOF_STATING);
+      }
+      indexes[i] = merged;
+    }
+    return new Level(indexes, size);
+  }
+
+  /**
+   * Compares two statings.
+   *
+   * @param a  the array holding the first stating
+   * @param aOffset  the position of the first stating in <var>a</var>
+   * @param b  the array holding the second stating
+   * @param bOffset  the position of the second stating in <var>b</var>
+   * @param order  the columns to compare, in order
+   * @return a negative number, zero or a positive number if the first stating
+   *   sorts before, with or after the second
+   */
+  static int compare(long[] a, int aOffset, long[] b, int bOffset, int[] order) {
+    for (int c: order) {
+      long x = a[aOffset + c];
+      long y = b[bOffset + c];
+      if (x != y) return x < y ? -1 : 1;
+    }
+    return 0;
+  }
+
+  /**
+   * Sorts records of an array in place.
+   *
+   * @param a  the array of records
+   * @param stride  the number of longs in each record
+   * @param order  the columns of a record to sort by
+   * @param from  the first record to sort
+   * @param to  the record after the last one to sort
+   */
+  static void sort(long[] a, int stride, int[] order, int from, int to) {
+    long[] tmp = new long[stride];
+    long[] pivot = new long[stride];
+    while (to - from > INSERTION_SORT_THRESHOLD) {
+      // Partition around the median of three records
+      int mid = (from + to) >>> 1;
+      int last = to - 1;
+      if (compare(a, mid * stride, a, from * stride, order) < 0) swap(a, stride, mid, from, tmp);
+      if (compare(a, last * stride, a, mid * stride, order) < 0) {
+        swap(a, stride, last, mid, tmp);
+        if (compare(a, mid * stride, a, from * stride, order) < 0) swap(a, stride, mid, from, tmp);
+      }
+      System.arraycopy(a, mid * stride, pivot, 0, stride);
+      int i = from, j = last;
+      while (i <= j) {
+        while (compare(a, i * stride, pivot, 0, order) < 0) i++;
+        while (compare(a, j * stride, pivot, 0, order) > 0) j--;
+        if (i <= j) swap(a, stride, i++, j--, tmp);
+      }
+
+      // Recurse into the smaller part, and loop on the larger one
+      if (j - from < to - i) {
+        sort(a, stride, order, from, j + 1);
+        from = i;
+      } else {
+        sort(a, stride, order, i, to);
+        to = j + 1;
+      }
+    }
+    for (int i = from + 1; i < to; i++) {
+      for (int j = i; j > from && compare(a, j * stride, a, (j - 1) * stride, order) < 0; j--) {
+        swap(a, stride, j, j - 1, tmp);
+      }
+    }
+  }
+
+  /**
+   * Swaps two records of an array.
+   */
+  private static void swap(long[] a, int stride, int i, int j, long[] tmp) {
+    System.arraycopy(a, i * stride, tmp, 0, stride);
+    System.arraycopy(a, j * stride, a, i * stride, stride);
+    System.arraycopy(tmp, 0, a, j * stride, stride);
+  }
+
+  /**
+   * An immutable set of statings, indexed in each of the {@link #ORDERS}.
+   */
+  private static final class Level {
+
+    /** The statings, four longs to a stating, sorted in each of the {@link #ORDERS}. */
+    final long[][] indexes;
+
+    /** The number of statings. */
+    final int size;
+
+    /** Creates an empty set of statings. */
+    Level() {
+      this(new long[ORDERS.length][0], 0);
+    }
+
+    /** Creates a set of statings from its indexes. */
+    Level(long[][] indexes, int size) {
+      this.indexes = indexes;
+      this.size = size;
+    }
+
+    /**
+     * Finds the boundary of the statings that start with a prefix.
+     *
+     * @param index  the index to search
+     * @param prefix  the values of the leading columns of the index
+     * @param length  the number of values in the <var>prefix</var>
+     * @param first  <code>true</code> to find the first stating starting with
+     *   the prefix, or <code>false</code> to find the stating after the last one
+     * @return the position of the boundary in the index
+     */
+    int find(int index, long[] prefix, int length, boolean first) {
+      long[] statings = indexes[index];
+      int[] order = ORDERS[index];
+      int lo = 0, hi = size;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        int offset = mid * SIZEOF_STATING;
+        int c = 0;
+        for (int i = 0; i < length && c == 0; i++) {
+          long x = statings[offset + order[i]];
+          if (x != prefix[i]) c = x < prefix[i] ? -1 : 1;
+        }
+        if (c < 0 || (c == 0 && !first)) lo = mid + 1;
+        else hi = mid;
+      }
+      return lo;
+    }
+  }
+
+  /**
+   * An immutable view of the statings: a base set, plus the statings added to
+   * it and less the statings removed from it.
+   */
+  static final class Snapshot {
+
+    /** The base statings. */
+    private final Level base;
+
+    /** The statings which are not in the base. */
+    private final Level added;
+
+    /** The statings of the base which have been removed. */
+    private final Level removed;
+
+    /** The number of statings. */
+    final int size;
+
+    /** Creates an empty set of statings. */
+    private Snapshot() {
+      this(new Level(), new Level(), new Level());
+    }
+
+    /** Creates a set of statings from a base and its overlay. */
+    private Snapshot(Level base, Level added, Level removed) {
+      this.base = base;
+      this.added = added;
+      this.removed = removed;
+      this.size = base.size + added.size - removed.size;
+    }
+
+    /**
+     * Finds the statings that start with a prefix.
+     *
+     * @param index  the index to search
+     * @param prefix  the values of the leading columns of the index
+     * @param length  the number of values in the <var>prefix</var>
+     * @return a cursor over the statings, in the order of the index
+     */
+    Range range(int index, long[] prefix, int length) {
+      return new Range(this, index, prefix, length);
+    }
+
+    /**
+     * Gets the number of statings in the overlay of the base.
+     */
+    int getOverlaySize() {
+      return added.size + removed.size;
+    }
+  }
+
+  /**
+   * A cursor over the statings of a {@link Snapshot} which start with a
+   * prefix, in the order of one of the indexes.
+   */
+  static final class Range implements Cloneable {
+
+    /** The index being read. */
+    private final int index;
+
+    /** The base statings. */
+    private final long[] base;
+
+    /** The statings which are not in the base. */
+    private final long[] added;
+
+    /** The statings of the base which have been removed. */
+    private final long[] removed;
+
+    /** The next stating to read from each array, and the end of the range in each array. */
+    private int b, baseEnd, a, addedEnd, r, removedEnd;
+
+    /** The array holding the current stating, or <code>null</code> if not on a stating. */
+    private long[] current;
+
+    /** The position of the current stating in {@link #current}. */
+    private int offset;
+
+    /** The number of statings in the range. */
+    final int size;
+
+    private Range(Snapshot snapshot, int index, long[] prefix, int length) {
+      this.index = index;
+      base = snapshot.base.indexes[index];
+      added = snapshot.added.indexes[index];
+      removed = snapshot.removed.indexes[index];
+      b = snapshot.base.find(index, prefix, length, true);
+      baseEnd = snapshot.base.find(index, prefix, length, false);
+      a = snapshot.added.find(index, prefix, length, true);
+      addedEnd = snapshot.added.find(index, prefix, length, false);
+      r = snapshot.removed.find(index, prefix, length, true);
+      removedEnd = snapshot.removed.find(index, prefix, length, false);
+      size = (baseEnd - b) + (addedEnd - a) - (removedEnd - r);
+    }
+
+    /**
+     * Moves to the next stating.
+     *
+     * @return <code>false</code> if there are no more statings
+     */
+    boolean next() {
+      int[] order = ORDERS[index];
+      while (b < baseEnd || a < addedEnd) {
+        if (b < baseEnd && (a == addedEnd ||
+            compare(base, b * SIZEOF_STATING, added, a * SIZEOF_STATING, order) < 0)) {
+          int o = b++ * SIZEOF_STATING;
+          // skip the removed statings, which are always in the base
+          if (r < removedEnd && compare(removed, r * SIZEOF_STATING, base, o, order) == 0) {
+            r++;
+            continue;
+          }
+          current = base;
+          offset = o;
+        } else {
+          current = added;
+          offset = a++ * SIZEOF_STATING;
+        }
+        return true;
+      }
+      current = null;
+      return false;
+    }
+
+    /**
+     * Indicates if the cursor is on a stating.
+     */
+    boolean isOnStating() {
+      return current != null;
+    }
+
+    /**
+     * Gets a column of the current stating.
+     *
+     * @param column  the column to get
+     * @return the node in the column
+     */
+    long get(int column) {
+      return current[offset + column];
+    }
+
+    public Range clone() {
+      try {
+        return (Range)super.clone();
+      } catch (CloneNotSupportedException e) {
+        throw new Error("Clone ought to be supported.");
+      }
+    }
+  }
+}
@@ -0,0 +1,312 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.resolver.memory;
+
+// Java 2 standard packages
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+// Third party packages
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+// Locally written packages
+import org.mulgara.query.ConstraintImpl;
+import org.mulgara.query.LocalNode;
+import org.mulgara.query.Variable;
+
+/**
+ * Test case for {@link StatingStore}.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public class StatingStoreUnitTest extends TestCase {
+
+  /** Compares statings held as lists of subject, predicate, object and model. */
+  private static final Comparator<List<Long>> LIST_ORDER = new Comparator<List<Long>>() {
+    public int compare(List<Long> a, List<Long> b) {
+      for (int i = 0; i < a.size(); i++) {
+        int c = a.get(i).compareTo(b.get(i));
+        if (c != 0) return c;
+      }
+      return 0;
+    }
+  };
+
+  public StatingStoreUnitTest(String name) {
+    super(name);
+  }
+
+  public static Test suite() {
+    TestSuite suite = new TestSuite();
+    suite.addTest(new StatingStoreUnitTest("testSort"));
+    suite.addTest(new StatingStoreUnitTest("testAddRemove"));
+    suite.addTest(new StatingStoreUnitTest("testSnapshotIsolation"));
+    suite.addTest(new StatingStoreUnitTest("testRemoveModel"));
+    suite.addTest(new StatingStoreUnitTest("testRangeCounts"));
+    suite.addTest(new StatingStoreUnitTest("testOverlay"));
+    suite.addTest(new StatingStoreUnitTest("testResolution"));
+    return suite;
+  }
+
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+
+  /**
+   * Statings are sorted in the order of each index, including runs of equal
+   * columns and sections short enough to be sorted by insertion.
+   */
+  public void testSort() {
+    Random random = new Random(42);
+    for (int n: new int[] {0, 1, 7, 8, 9, 100, 1000}) {
+      for (int[] order: StatingStore.ORDERS) {
+        long[] statings = new long[n * StatingStore.SIZEOF_STATING];
+        for (int i = 0; i < statings.length; i++) statings[i] = 1 + random.nextInt(4);
+        List<List<Long>> expected = toLists(statings, n, order);
+        Collections.sort(expected, LIST_ORDER);
+
+        StatingStore.sort(statings, StatingStore.SIZEOF_STATING, order, 0, n);
+        assertEquals(expected, toLists(statings, n, order));
+      }
+    }
+  }
+
+  /**
+   * The last modification of a stating before a snapshot wins.
+   */
+  public void testAddRemove() {
+    StatingStore store = new StatingStore();
+    store.add(1, 2, 3, 9);
+    store.add(1, 2, 3, 9);
+    store.add(4, 5, 6, 9);
+    store.remove(4, 5, 6, 9);
+    store.remove(7, 8, 9, 9);
+    assertEquals(set(new long[] {1, 2, 3, 9}), contents(store.snapshot()));
+
+    store.remove(1, 2, 3, 9);
+    store.add(1, 2, 3, 9);
+    store.add(4, 5, 6, 9);
+    assertEquals(set(new long[] {1, 2, 3, 9}, new long[] {4, 5, 6, 9}), contents(store.snapshot()));
+
+    store.remove(1, 2, 3, 9);
+    assertEquals(set(new long[] {4, 5, 6, 9}), contents(store.snapshot()));
+    assertEquals(1, store.snapshot().size);
+  }
+
+  /**
+   * A snapshot isn't changed by later modifications, or by the snapshots taken after them.
+   */
+  public void testSnapshotIsolation() {
+    StatingStore store = new StatingStore();
+    store.add(1, 2, 3, 9);
+    StatingStore.Snapshot first = store.snapshot();
+    assertSame(first, store.snapshot());
+
+    store.add(4, 5, 6, 9);
+    store.remove(1, 2, 3, 9);
+    assertEquals(set(new long[] {1, 2, 3, 9}), contents(first));
+
+    StatingStore.Snapshot second = store.snapshot();
+    assertEquals(set(new long[] {1, 2, 3, 9}), contents(first));
+    assertEquals(set(new long[] {4, 5, 6, 9}), contents(second));
+  }
+
+  /**
+   * Removing a model removes its statings, and none of any other model.
+   */
+  public void testRemoveModel() {
+    StatingStore store = new StatingStore();
+    for (long m = 8; m <= 10; m++) {
+      for (long s = 1; s <= 3; s++) store.add(s, 2, 3, m);
+    }
+    store.snapshot();
+    store.add(4, 2, 3, 9);
+    store.removeModel(9);
+
+    StatingStore.Snapshot snapshot = store.snapshot();
+    assertEquals(6, snapshot.size);
+    assertEquals(0, snapshot.range(0, new long[] {9}, 1).size);
+    assertEquals(3, snapshot.range(0, new long[] {8}, 1).size);
+    assertEquals(3, snapshot.range(0, new long[] {10}, 1).size);
+  }
+
+  /**
+   * The size of a range is the number of statings it iterates over, for
+   * every prefix of every index.
+   */
+  public void testRangeCounts() {
+    StatingStore store = new StatingStore();
+    for (long s = 1; s <= 3; s++) {
+      for (long p = 1; p <= 3; p++) {
+        for (long o = 1; o <= 3; o++) {
+          if ((s + p + o) % 2 == 0) store.add(s, p, o, 9);
+        }
+      }
+    }
+    StatingStore.Snapshot snapshot = store.snapshot();
+    assertEquals(13, snapshot.size);
+    assertEquals(13, snapshot.range(0, new long[] {9}, 1).size);
+    assertEquals(0, snapshot.range(0, new long[] {8}, 1).size);
+    assertEquals(4, snapshot.range(0, new long[] {9, 1}, 2).size);
+    assertEquals(4, snapshot.range(1, new long[] {9, 1}, 2).size);
+    assertEquals(4, snapshot.range(2, new long[] {9, 1}, 2).size);
+    assertEquals(1, snapshot.range(0, new long[] {9, 1, 1}, 3).size);
+    assertEquals(1, snapshot.range(0, new long[] {9, 1, 1, 2}, 4).size);
+    assertEquals(0, snapshot.range(0, new long[] {9, 1, 1, 1}, 4).size);
+    assertConsistent(snapshot, contents(snapshot));
+  }
+
+  /**
+   * Random modifications, with snapshots small enough to be held as an
+   * overlay and large enough to be merged into the base, always give the same
+   * statings as a reference set.
+   */
+  public void testOverlay() {
+    Random random = new Random(7);
+    StatingStore store = new StatingStore();
+    TreeSet<List<Long>> expected = new TreeSet<List<Long>>(LIST_ORDER);
+    boolean overlaid = false;
+    boolean rebuilt = false;
+    for (int round = 0; round < 40; round++) {
+      int n = round % 10 == 9 ? 3 * StatingStore.MIN_OVERLAY_SIZE : 1 + random.nextInt(50);
+      for (int i = 0; i < n; i++) {
+        long s = 1 + random.nextInt(20), p = 1 + random.nextInt(5), o = 1 + random.nextInt(20), m = 1 + random.nextInt(3);
+        List<Long> stating = Arrays.asList(s, p, o, m);
+        if (random.nextInt(3) == 0) {
+          store.remove(s, p, o, m);
+          expected.remove(stating);
+        } else {
+          store.add(s, p, o, m);
+          expected.add(stating);
+        }
+      }
+      StatingStore.Snapshot snapshot = store.snapshot();
+      if (snapshot.getOverlaySize() > 0) overlaid = true;
+      else rebuilt = true;
+      assertEquals(expected, contents(snapshot));
+      assertEquals(expected.size(), snapshot.size);
+      assertConsistent(snapshot, expected);
+    }
+    assertTrue(overlaid);
+    assertTrue(rebuilt);
+  }
+
+  /**
+   * A resolution counts and iterates the statings matching its constraint,
+   * including the statings of the overlay.
+   */
+  public void testResolution() throws Exception {
+    StatingStore store = new StatingStore();
+    for (long s = 1; s <= 4; s++) store.add(s, 2, 3, 9);
+    store.add(1, 2, 4, 9);
+    store.add(1, 5, 3, 9);
+    store.snapshot();
+    store.remove(2, 2, 3, 9);
+    store.add(5, 2, 3, 9);
+
+    Variable subject = new Variable("s");
+    MemoryResolution resolution = new MemoryResolution(new ConstraintImpl(subject,
+        new LocalNode(2), new LocalNode(3), new LocalNode(9)), store.snapshot());
+    assertEquals(4, resolution.getRowCount());
+    assertEquals(4, resolution.getRowUpperBound());
+    resolution.beforeFirst();
+    List<Long> subjects = new ArrayList<Long>();
+    while (resolution.next()) subjects.add(resolution.getColumnValue(0));
+    assertEquals(Arrays.asList(1L, 3L, 4L, 5L), subjects);
+
+    // the object can't be part of the prefix of the subject index, so it's filtered
+    Variable predicate = new Variable("p");
+    resolution = new MemoryResolution(new ConstraintImpl(new LocalNode(1), predicate,
+        new LocalNode(3), new LocalNode(9)), store.snapshot());
+    assertEquals(2, resolution.getRowCount());
+    resolution.beforeFirst(new long[] {5}, 0);
+    assertTrue(resolution.next());
+    assertEquals(5, resolution.getColumnValue(0));
+    assertFalse(resolution.next());
+  }
+
+  /**
+   * Checks every index of a snapshot, for prefixes of every length taken from
+   * up to 20 of the statings, against a reference set of statings.
+   */
+  private static void assertConsistent(StatingStore.Snapshot snapshot, TreeSet<List<Long>> expected) {
+    List<List<Long>> sample = new ArrayList<List<Long>>(expected);
+    for (int i = 0; i < StatingStore.ORDERS.length; i++) {
+      int[] order = StatingStore.ORDERS[i];
+      for (int j = 0; j < sample.size(); j += 1 + sample.size() / 20) {
+        List<Long> stating = sample.get(j);
+        for (int length = 1; length <= StatingStore.SIZEOF_STATING; length++) {
+          long[] prefix = new long[length];
+          for (int c = 0; c < length; c++) prefix[c] = stating.get(order[c]);
+
+          List<List<Long>> matching = new ArrayList<List<Long>>();
+          for (List<Long> other: expected) {
+            boolean matches = true;
+            for (int c = 0; c < length && matches; c++) matches = other.get(order[c]) == prefix[c];
+            if (matches) matching.add(reorder(other, order));
+          }
+          Collections.sort(matching, LIST_ORDER);
+
+          StatingStore.Range range = snapshot.range(i, prefix, length);
+          assertEquals(matching.size(), range.size);
+          List<List<Long>> actual = new ArrayList<List<Long>>();
+          while (range.next()) {
+            actual.add(reorder(Arrays.asList(range.get(0), range.get(1), range.get(2), range.get(3)), order));
+          }
+          assertEquals(matching, actual);
+        }
+      }
+    }
+  }
+
+  /** Gets the statings of a snapshot. */
+  private static TreeSet<List<Long>> contents(StatingStore.Snapshot snapshot) {
+    TreeSet<List<Long>> statings = new TreeSet<List<Long>>(LIST_ORDER);
+    StatingStore.Range range = snapshot.range(0, new long[0], 0);
+    while (range.next()) statings.add(Arrays.asList(range.get(0), range.get(1), range.get(2), range.get(3)));
+    return statings;
+  }
+
+  /** Creates a set of statings. */
+  private static TreeSet<List<Long>> set(long[]... statings) {
+    TreeSet<List<Long>> set = new TreeSet<List<Long>>(LIST_ORDER);
+    for (long[] s: statings) set.add(Arrays.asList(s[0], s[1], s[2], s[3]));
+    return set;
+  }
+
+  /** Reads an array of statings as lists of their columns in an order. */
+  private static List<List<Long>> toLists(long[] statings, int n, int[] order) {
+    List<List<Long>> lists = new ArrayList<List<Long>>();
+    for (int i = 0; i < n; i++) {
+      List<Long> stating = new ArrayList<Long>();
+      for (int c: order) stating.add(statings[i * StatingStore.SIZEOF_STATING + c]);
+      lists.add(stating);
+    }
+    return lists;
+  }
+
+  /** Puts the columns of a stating in an order. */
+  private static List<Long> reorder(List<Long> stating, int[] order) {
+    List<Long> reordered = new ArrayList<Long>();
+    for (int c: order) reordered.add(stating.get(c));
+    return reordered;
+  }
+}
@@ -0,0 +1,239 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.resolver.relational;
+
+// Java 2 standard packages
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+// Third party packages
+import org.apache.log4j.Logger;
+
+// Locally written packages
+import org.mulgara.query.TuplesException;
+import org.mulgara.resolver.relational.d2rq.DatabaseElem;
+
+/**
+ * Idle connections to a relational database, shared by all the resolutions
+ * against a D2RQ database definition.
+ * <p>
+ * Opening a connection can take longer than running the query it is needed
+ * for, so connections are returned here when a resolution is closed, and
+ * handed out again to the next resolution against the same database.  The
+ * pools are configured with system properties:
+ * </p>
+ * <dl>
+ *   <dt><code>mulgara.relational.poolSize</code></dt>
+ *   <dd>The most idle connections to keep for each database. Default 8.</dd>
+ *   <dt><code>mulgara.relational.validationTimeout</code></dt>
+ *   <dd>The most seconds to wait when checking that an idle connection still
+ *       works before it is reused. Default 5.</dd>
+ *   <dt><code>mulgara.relational.statementCacheSize</code></dt>
+ *   <dd>The most prepared statements to keep for each connection. Default 32.</dd>
+ *   <dt><code>mulgara.relational.fetchSize</code></dt>
+ *   <dd>The number of rows to fetch from the database at a time. Default 1000.
+ *       When this is not 0, queries run with auto-commit off, so that drivers
+ *       such as PostgreSQL's stream results through a cursor instead of
+ *       reading them all into memory.</dd>
+ * </dl>
+ *
+ * @created 2026-10-17
+ */
+class ConnectionPool {
+
+  /** Logger */
+  private static final Logger logger = Logger.getLogger(ConnectionPool.class);
+
+  /** The property for the most idle connections to keep for each database. */
+  static final String POOL_SIZE_PROPERTY = "mulgara.relational.poolSize";
+
+  /** The property for the seconds to wait when checking an idle connection. */
+  static final String VALIDATION_TIMEOUT_PROPERTY = "mulgara.relational.validationTimeout";
+
+  /** The property for the most prepared statements to keep for each connection. */
+  static final String STATEMENT_CACHE_SIZE_PROPERTY = "mulgara.relational.statementCacheSize";
+
+  /** The property for the number of rows to fetch at a time. */
+  static final String FETCH_SIZE_PROPERTY = "mulgara.relational.fetchSize";
+
+  /** The most idle connections to keep for each database. */
+  static final int POOL_SIZE = Integer.getInteger(POOL_SIZE_PROPERTY, 8).intValue();
+
+  /** The seconds to wait when checking an idle connection. */
+  private static final int VALIDATION_TIMEOUT = Integer.getInteger(VALIDATION_TIMEOUT_PROPERTY, 5).intValue();
+
+  /** The most prepared statements to keep for each connection. */
+  static final int STATEMENT_CACHE_SIZE = Integer.getInteger(STATEMENT_CACHE_SIZE_PROPERTY, 32).intValue();
+
+  /** The number of rows to fetch at a time, or 0 to use the driver default. */
+  static final int FETCH_SIZE = Integer.getInteger(FETCH_SIZE_PROPERTY, 1000).intValue();
+
+  /** The pools for each database, keyed on driver, DSN, user name and password. */
+  private static final Map<List<String>,ConnectionPool> pools = new HashMap<List<String>,ConnectionPool>();
+
+  /** The JDBC DSN of the database. */
+  private final String jdbcDSN;
+
+  /** The properties to connect with. */
+  private final Properties properties;
+
+  /** The idle connections, most recently used first. */
+  private final LinkedList<DatabaseConnection> idle = new LinkedList<DatabaseConnection>();
+
+  /** The estimates of the rows of queries against the database. */
+  private final RowEstimator estimator = new RowEstimator(this);
+
+  /**
+   * Creates a pool for a database.
+   * @param database The database definition.
+   */
+  private ConnectionPool(DatabaseElem database) {
+    this(database.jdbcDSN, new Properties());
+    if (database.username != null) {
+      properties.setProperty("user", database.username);
+    }
+    if (database.password != null) {
+      properties.setProperty("password", database.password);
+    }
+  }
+
+  /**
+   * Creates a pool for a JDBC DSN, whose driver has already been loaded.
+   * @param jdbcDSN The JDBC DSN of the database.
+   * @param properties The properties to connect with.
+   */
+  ConnectionPool(String jdbcDSN, Properties properties) {
+    this.jdbcDSN = jdbcDSN;
+    this.properties = properties;
+  }
+
+  /**
+   * Gets the pool for a database, loading its driver the first time the
+   * database is used.
+   * @param database The database definition.
+   * @return The pool of connections to the database.
+   * @throws TuplesException If the JDBC driver could not be loaded.
+   */
+  static ConnectionPool getPool(DatabaseElem database) throws TuplesException {
+    if (database.jdbcDriver == null) {
+      throw new IllegalArgumentException("defn.jdbcDriver cannot be null");
+    } else if (database.jdbcDSN == null) {
+      throw new IllegalArgumentException("defn.jdbcDSN cannot be null");
+    }
+
+    List<String> key = Arrays.asList(database.jdbcDriver, database.jdbcDSN, database.username, database.password);
+    synchronized (pools) {
+      ConnectionPool pool = pools.get(key);
+      if (pool == null) {
+        try {
+          Class.forName(database.jdbcDriver);
+        } catch (ClassNotFoundException ec) {
+          throw new TuplesException("Couldn't find Driver", ec);
+        }
+        pool = new ConnectionPool(database);
+        pools.put(key, pool);
+      }
+      return pool;
+    }
+  }
+
+  /**
+   * @return The estimator for queries against the database.
+   */
+  RowEstimator getEstimator() {
+    return estimator;
+  }
+
+  /**
+   * Gets a connection to the database, reusing an idle connection if there is
+   * one that still works.
+   * @return A connection, which must be returned with {@link DatabaseConnection#close()}.
+   * @throws SQLException If a new connection could not be opened.
+   */
+  DatabaseConnection acquire() throws SQLException {
+    while (true) {
+      DatabaseConnection conn;
+      synchronized (idle) {
+        conn = idle.poll();
+      }
+      if (conn == null) break;
+      if (isUsable(conn.getConnection())) return conn;
+      if (logger.isDebugEnabled()) logger.debug("Discarding broken connection to " + jdbcDSN);
+      conn.destroy();
+    }
+
+    if (logger.isDebugEnabled()) logger.debug("Opening connection to " + jdbcDSN);
+    Connection conn = DriverManager.getConnection(jdbcDSN, properties);
+    if (FETCH_SIZE != 0) {
+      conn.setAutoCommit(false);
+    }
+    return new DatabaseConnection(this, conn);
+  }
+
+  /**
+   * Returns a connection to the pool, ending any transaction it is in.  The
+   * connection is closed if the pool is full, or if it can't be reset.
+   * @param conn The connection to return.
+   */
+  void release(DatabaseConnection conn) {
+    try {
+      if (!conn.getConnection().getAutoCommit()) {
+        conn.getConnection().rollback();
+      }
+    } catch (SQLException es) {
+      logger.warn("Unable to reset connection to " + jdbcDSN + ", closing it", es);
+      conn.destroy();
+      return;
+    }
+
+    synchronized (idle) {
+      if (idle.size() < POOL_SIZE) {
+        idle.addFirst(conn);
+        return;
+      }
+    }
+    conn.destroy();
+  }
+
+  /**
+   * Checks that an idle connection still works, as the database or the network
+   * may have dropped it while it was in the pool.
+   * @param conn The connection to check.
+   * @return <code>true</code> if the connection can be used.
+   */
+  private static boolean isUsable(Connection conn) {
+    try {
+      return conn.isValid(VALIDATION_TIMEOUT);
+    } catch (SQLFeatureNotSupportedException es) {
+      // fall back to the check of older drivers
+    } catch (SQLException es) {
+      return false;
+    } catch (AbstractMethodError e) {
+      // the driver predates JDBC 4
+    }
+    // older drivers can only say if the connection was closed
+    try {
+      return !conn.isClosed();
+    } catch (SQLException es) {
+      return false;
+    }
+  }
+}
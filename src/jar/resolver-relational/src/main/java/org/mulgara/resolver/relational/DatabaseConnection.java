@@ -0,0 +1,139 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.resolver.relational;
+
+// Java 2 standard packages
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Third party packages
+import org.apache.log4j.Logger;
+
+/**
+ * A connection from a {@link ConnectionPool}, with the prepared statements
+ * that have been run on it.
+ * <p>
+ * Queries are generated from the same templates each time a constraint is
+ * resolved, so their SQL repeats, and the statements are kept to save the
+ * database parsing and planning them again.  A statement can only have one
+ * open result set, so a statement is taken out of the cache while it is in use
+ * and put back with {@link #release(String, PreparedStatement)}.
+ * </p>
+ *
+ * @created 2026-10-17
+ */
+class DatabaseConnection {
+
+  /** Logger */
+  private static final Logger logger = Logger.getLogger(DatabaseConnection.class);
+
+  /** The pool to return this connection to. */
+  private final ConnectionPool pool;
+
+  /** The JDBC connection. */
+  private final Connection conn;
+
+  /** The unused statements, keyed on their SQL, least recently used first. */
+  private final Map<String,PreparedStatement> statements;
+
+  /**
+   * Wraps a connection.
+   * @param pool The pool to return the connection to.
+   * @param conn The connection.
+   */
+  DatabaseConnection(ConnectionPool pool, Connection conn) {
+    this.pool = pool;
+    this.conn = conn;
+    this.statements = new LinkedHashMap<String,PreparedStatement>(16, 0.75f, true);
+  }
+
+  /**
+   * @return The JDBC connection.
+   */
+  Connection getConnection() {
+    return conn;
+  }
+
+  /**
+   * Gets a statement for a query, reusing a cached one if possible.
+   * @param sql The query.
+   * @return The statement, which should be given back with {@link #release(String, PreparedStatement)}.
+   * @throws SQLException If the statement could not be prepared.
+   */
+  PreparedStatement prepare(String sql) throws SQLException {
+    PreparedStatement statement = statements.remove(sql);
+    if (statement == null) {
+      statement = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+      if (ConnectionPool.FETCH_SIZE != 0) {
+        statement.setFetchSize(ConnectionPool.FETCH_SIZE);
+      }
+    }
+    return statement;
+  }
+
+  /**
+   * Gives back a statement that is no longer in use.  The statement is closed
+   * if it can't be cached.
+   * @param sql The query of the statement.
+   * @param statement The statement.
+   */
+  void release(String sql, PreparedStatement statement) {
+    if (ConnectionPool.STATEMENT_CACHE_SIZE <= 0 || statements.containsKey(sql)) {
+      close(statement);
+      return;
+    }
+    statements.put(sql, statement);
+    if (statements.size() > ConnectionPool.STATEMENT_CACHE_SIZE) {
+      Iterator<PreparedStatement> eldest = statements.values().iterator();
+      close(eldest.next());
+      eldest.remove();
+    }
+  }
+
+  /**
+   * Returns this connection to its pool.
+   */
+  void close() {
+    pool.release(this);
+  }
+
+  /**
+   * Closes the cached statements and the connection.
+   */
+  void destroy() {
+    for (PreparedStatement statement: statements.values()) close(statement);
+    statements.clear();
+    try {
+      conn.close();
+    } catch (SQLException es) {
+      logger.warn("Error closing connection", es);
+    }
+  }
+
+  /**
+   * Closes a statement, logging any error.
+   * @param statement The statement to close.
+   */
+  private static void close(PreparedStatement statement) {
+    try {
+      statement.close();
+    } catch (SQLException es) {
+      logger.warn("Error closing statement", es);
+    }
+  }
+}
@@ -44,11 +44,10 @@ package org.mulgara.resolver.relational;
 import org.apache.log4j.*;
 
 // Standard Java packages.
-import java.sql.Connection;
 import java.util.List;
 import java.util.Iterator;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.Statement;
 import java.sql.SQLException;
 
 // Local packages
@@ -60,15 +59,16 @@ import org.mulgara.query.Variable;
 public class RelationalAnswer implements Answer {
   private static Logger logger = Logger.getLogger(RelationalAnswer.class.getName());
 
-  private Connection conn;
-  private Statement statement;
+  private DatabaseConnection conn;
+  private PreparedStatement statement;
+  private String sql;
   private ResultSet result;
   private List<Variable> variables;
   private RelationalQuery query;
   private List<String> queryList;
   private Iterator<String> queries;
 
-  public RelationalAnswer(RelationalQuery query, Connection conn) throws TuplesException {
+  public RelationalAnswer(RelationalQuery query, DatabaseConnection conn) throws TuplesException {
     if (logger.isDebugEnabled()) {
       logger.debug("Creating RelationalAnswer with query = " + query);
     }
@@ -82,6 +82,8 @@ public class RelationalAnswer implements Answer {
     try {
       RelationalAnswer cloned = (RelationalAnswer)super.clone();
       cloned.result = null;
+      cloned.statement = null;
+      cloned.sql = null;
 
       return cloned;
     } catch (CloneNotSupportedException ec) {
@@ -112,7 +114,7 @@ public class RelationalAnswer implements Answer {
 
   public void beforeFirst() throws TuplesException {
     try {
-      statement = conn.createStatement();
+      closeResult();
       queryList = query.getQuery();
       if (logger.isDebugEnabled()) {
         logger.warn("Executing query: " + queryList);
@@ -120,7 +122,7 @@ public class RelationalAnswer implements Answer {
 
       queries = queryList.iterator();
       if (queries.hasNext()) {
-        result = statement.executeQuery(queries.next());
+        execute(queries.next());
       }
     } catch (SQLException es) {
       throw new TuplesException("Failed to resolve query '" + query.getQuery() + "'", es);
@@ -128,12 +130,40 @@ public class RelationalAnswer implements Answer {
   }
 
   public void close()  throws TuplesException {
+    try {
+      closeResult();
+    } catch (SQLException es) {
+      throw new TuplesException("Error closing resultset.", es);
+    }
+  }
+
+  /**
+   * Runs a query, using a statement cached by the connection.
+   * @param sql The query to run.
+   * @throws SQLException If the query failed.
+   */
+  private void execute(String sql) throws SQLException {
+    this.sql = sql;
+    statement = conn.prepare(sql);
+    result = statement.executeQuery();
+  }
+
+  /**
+   * Closes the current result set, and gives its statement back to the connection.
+   * @throws SQLException If the result set could not be closed.
+   */
+  private void closeResult() throws SQLException {
     try {
       if (result != null) {
         result.close();
       }
-    } catch (SQLException es) {
-      throw new TuplesException("Error closing resultset.", es);
+    } finally {
+      result = null;
+      if (statement != null) {
+        conn.release(sql, statement);
+        statement = null;
+        sql = null;
+      }
     }
   }
 
@@ -185,8 +215,9 @@ public class RelationalAnswer implements Answer {
       if (n) {
         return true;
       } else {
+        closeResult();
         if (queries.hasNext()) {
-          result = statement.executeQuery((String)queries.next());
+          execute(queries.next());
 
           return this.next();
         } else {
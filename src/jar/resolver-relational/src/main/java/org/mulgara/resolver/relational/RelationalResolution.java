@@ -42,12 +42,9 @@
 package org.mulgara.resolver.relational;
 
 // Java 2 standard packages
-import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Properties;
 import java.util.List;
 import java.util.Map;
 import java.util.Iterator;
@@ -97,12 +94,14 @@ public class RelationalResolution extends AbstractTuples implements Resolution {
 
   private Definition defn;
   private Tuples result;
-  private Connection conn;
+  private DatabaseConnection conn;
   private Variable[] variables;
   private int[] refCount;
   private ResolverSession resolverSession;
   private int[] columnMapping;
   private long cachedCount = -1;
+  private long estimatedCount = RowEstimator.UNKNOWN;
+  private boolean estimated = false;
 
   /**
    * @param constraint  the constraint to resolver, never <code>null</code>
@@ -126,7 +125,7 @@ public class RelationalResolution extends AbstractTuples implements Resolution {
     try {
       this.defn = defn;
       this.constraint = constraint;
-      this.conn = obtainConnection(defn);
+      this.conn = ConnectionPool.getPool(defn.databaseDefn).acquire();
       this.result = null;
       this.variables = (Variable[])constraint.getVariables().toArray(new Variable[] {});
       this.columnMapping = new int[variables.length];
@@ -166,7 +165,42 @@ public class RelationalResolution extends AbstractTuples implements Resolution {
 
 
   public long getRowExpectedCount() throws TuplesException {
-    return cachedCount == -1 ? Long.MAX_VALUE : cachedCount;
+    if (cachedCount != -1) {
+      return cachedCount;
+    }
+    long estimate = estimateRowCount();
+    return estimate == RowEstimator.UNKNOWN ? Long.MAX_VALUE : estimate;
+  }
+
+
+  /**
+   * Estimates the rows of this resolution from the database, without running
+   * the queries.  The instances of each class are joined on the properties
+   * that link them, so the largest estimate is used.
+   * @return The estimated rows, or {@link RowEstimator#UNKNOWN}.
+   */
+  private long estimateRowCount() throws TuplesException {
+    if (!estimated) {
+      estimated = true;
+      RowEstimator estimator = ConnectionPool.getPool(defn.databaseDefn).getEstimator();
+      long estimate = 0;
+      for (ConstraintExpression head: constraint.getRdfTypeConstraints()) {
+        RelationalQuery query = buildInstanceQuery((Constraint)head, constraint, defn, null);
+        if (query == null) {
+          // the constraint can't match anything
+          estimate = 0;
+          break;
+        }
+        long rows = estimator.estimate(query.getQuery());
+        if (rows == RowEstimator.UNKNOWN) {
+          estimate = RowEstimator.UNKNOWN;
+          break;
+        }
+        estimate = Math.max(estimate, rows);
+      }
+      estimatedCount = estimate;
+    }
+    return estimatedCount;
   }
 
 
@@ -283,12 +317,8 @@ public class RelationalResolution extends AbstractTuples implements Resolution {
       result = null;
     }
     refCount[0]--;
-    try {
-      if (refCount[0] == 0) {
-        conn.close();
-      }
-    } catch (SQLException es) {
-      throw new TuplesException("Error closing connection", es);
+    if (refCount[0] == 0) {
+      conn.close();
     }
   }
 
@@ -345,32 +375,53 @@ public class RelationalResolution extends AbstractTuples implements Resolution {
   }
 
 
-  private Connection obtainConnection(Definition defn) throws SQLException, TuplesException {
-    if (defn.databaseDefn.jdbcDriver == null) {
-      throw new IllegalArgumentException("defn.jdbcDriver cannot be null");
-    } else if (defn.databaseDefn.jdbcDSN == null) {
-      throw new IllegalArgumentException("defn.jdbcDSN cannot be null");
+  private Tuples resolveInstance(Constraint head, RelationalConstraint constraint, DatabaseConnection conn, Definition defn) throws TuplesException {
+
+    List<Tuples> additionalProperties = new ArrayList<Tuples>();
+    RelationalQuery query = buildInstanceQuery(head, constraint, defn, additionalProperties);
+    if (query == null) {
+      return TuplesOperations.empty();
     }
 
+    Answer answer;
+    answer = new RelationalAnswer(query, conn);
+
+    Tuples lt, st;
     try {
-      Class.forName(defn.databaseDefn.jdbcDriver);
-    } catch (ClassNotFoundException ec) {
-      throw new TuplesException("Couldn't find Driver", ec);
+      lt = new LocalizedTuples(resolverSession, answer, false);
+    } finally {
+      answer.close();
     }
-
-    Properties properties = new Properties();
-    if (defn.databaseDefn.username != null) {
-      properties.setProperty("user", defn.databaseDefn.username);
+    try {
+      st = TuplesOperations.sort(lt);
+    } finally {
+      lt.close();
     }
-    if (defn.databaseDefn.password != null) {
-      properties.setProperty("password", defn.databaseDefn.password);
+    
+    // Combine result with additional properties via join.
+    additionalProperties.add(st);
+    Tuples jt;
+    try {
+      jt = TuplesOperations.join(additionalProperties);
+    } finally {
+      st.close();
     }
 
-    return DriverManager.getConnection(defn.databaseDefn.jdbcDSN, properties);
+    return jt;
   }
 
 
-  private Tuples resolveInstance(Constraint head, RelationalConstraint constraint, Connection conn, Definition defn) throws TuplesException {
+  /**
+   * Builds the SQL query for the instances of a class.
+   * @param head The rdf:type constraint on the instances.
+   * @param constraint The constraint being resolved.
+   * @param defn The D2RQ definition.
+   * @param additionalProperties Accumulates the bindings of any additional properties,
+   *        or <code>null</code> if they are not needed.
+   * @return The query, or <code>null</code> if the constraint can't match anything.
+   */
+  private RelationalQuery buildInstanceQuery(Constraint head, RelationalConstraint constraint, Definition defn,
+      List<Tuples> additionalProperties) throws TuplesException {
 
     RelationalQuery query = new RelationalQuery();
 
@@ -389,7 +440,6 @@ public class RelationalResolution extends AbstractTuples implements Resolution {
     includeInstanceQuery(query, subj, classMap);
 
     // Include properties
-    List<Tuples> additionalProperties = new ArrayList<Tuples>();
     Map<String,? extends PropertyBridgeElem> propBs = defn.objPropBridges.get(classMap.klass);
     Map<String,? extends PropertyBridgeElem> dataBs = defn.dataPropBridges.get(classMap.klass);
     List<Constraint> constraints = constraint.getConstraintsBySubject(subj);
@@ -406,15 +456,17 @@ public class RelationalResolution extends AbstractTuples implements Resolution {
 
           if (ape.name.equals(c.getElement(1).toString())) {
             if (c.getElement(2) instanceof Variable) {
-              additionalProperties.add(TuplesOperations.assign((Variable)c.getElement(2), ape.valueNode));
+              if (additionalProperties != null) {
+                additionalProperties.add(TuplesOperations.assign((Variable)c.getElement(2), ape.valueNode));
+              }
             } else if (c.getElement(2) instanceof URIReference) {
               if (!ape.value.equals(c.getElement(2).toString())) {
                 // Additional Property match failed, so entire constraint will fail.  Short circuit.
-                return TuplesOperations.empty();
+                return null;
               }
             } else if (c.getElement(2) instanceof Literal) {
               if (!ape.value.equals(((Literal)c.getElement(2)).getLexicalForm())) {
-                return TuplesOperations.empty();
+                return null;
               }
             } else {
               // This shouldn't happen.
@@ -426,31 +478,7 @@ public class RelationalResolution extends AbstractTuples implements Resolution {
       }
     }
 
-    Answer answer;
-    answer = new RelationalAnswer(query, conn);
-
-    Tuples lt, st;
-    try {
-      lt = new LocalizedTuples(resolverSession, answer, false);
-    } finally {
-      answer.close();
-    }
-    try {
-      st = TuplesOperations.sort(lt);
-    } finally {
-      lt.close();
-    }
-    
-    // Combine result with additional properties via join.
-    additionalProperties.add(st);
-    Tuples jt;
-    try {
-      jt = TuplesOperations.join(additionalProperties);
-    } finally {
-      st.close();
-    }
-
-    return jt;
+    return query;
   }
 
 
@@ -0,0 +1,321 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.resolver.relational;
+
+// Java 2 standard packages
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Third party packages
+import org.apache.log4j.Logger;
+
+/**
+ * Estimates the number of rows a query against a relational database will
+ * return, without running the query, so that relational constraints can be
+ * ordered against other constraints in a join.
+ * <p>
+ * The method is set with the <code>mulgara.relational.estimate</code> system
+ * property:
+ * </p>
+ * <dl>
+ *   <dt><code>explain</code></dt>
+ *   <dd>The default. Uses the row estimate of the query planner, from
+ *       <code>EXPLAIN</code>. This understands the output of PostgreSQL and
+ *       MySQL, and uses <code>count</code> for other databases, or for
+ *       plans it can't read.</dd>
+ *   <dt><code>count</code></dt>
+ *   <dd>Counts the rows of the query, up to
+ *       <code>mulgara.relational.countLimit</code> rows, 10000 by default.
+ *       Queries with more rows than this are not estimated.</dd>
+ *   <dt><code>none</code></dt>
+ *   <dd>Does not estimate queries.</dd>
+ * </dl>
+ * <p>
+ * Estimates are kept for <code>mulgara.relational.estimateLifetime</code>
+ * seconds, 600 by default.
+ * </p>
+ *
+ * @created 2026-10-17
+ */
+class RowEstimator {
+
+  /** Logger */
+  private static final Logger logger = Logger.getLogger(RowEstimator.class);
+
+  /** The property for the estimation method. */
+  static final String ESTIMATE_PROPERTY = "mulgara.relational.estimate";
+
+  /** The property for the number of seconds to keep estimates. */
+  static final String ESTIMATE_LIFETIME_PROPERTY = "mulgara.relational.estimateLifetime";
+
+  /** The property for the most rows to count. */
+  static final String COUNT_LIMIT_PROPERTY = "mulgara.relational.countLimit";
+
+  /** The value returned when a query can't be estimated. */
+  static final long UNKNOWN = -1;
+
+  /** The most estimates to keep for a database. */
+  private static final int CACHE_SIZE = 1024;
+
+  /** Finds the row estimate in the PostgreSQL plan. */
+  private static final Pattern ROWS_PATTERN = Pattern.compile("rows=(\\d+)");
+
+  /** The ways of estimating a query. */
+  private enum Method { EXPLAIN, COUNT, NONE }
+
+  /** The configured method. */
+  private static final Method METHOD = getMethod();
+
+  /** The number of milliseconds to keep an estimate for. */
+  private static final long LIFETIME = Long.getLong(ESTIMATE_LIFETIME_PROPERTY, 600).longValue() * 1000;
+
+  /** The most rows to count. */
+  static final int COUNT_LIMIT = Integer.getInteger(COUNT_LIMIT_PROPERTY, 10000).intValue();
+
+  /** A query that any database which understands <code>EXPLAIN</code> can explain. */
+  private static final String EXPLAIN_PROBE = "EXPLAIN SELECT 1";
+
+  /** The pool to get connections to the database from. */
+  private final ConnectionPool pool;
+
+  /** The cached estimates, keyed on query, least recently used first. */
+  private final Map<String,long[]> cache;
+
+  /** Set when the database does not understand <code>EXPLAIN</code> at all. */
+  private volatile boolean explainFailed = false;
+
+  /**
+   * Creates an estimator for a database.
+   * @param pool The pool of connections to the database.
+   */
+  @SuppressWarnings("serial")
+  RowEstimator(ConnectionPool pool) {
+    this.pool = pool;
+    this.cache = new LinkedHashMap<String,long[]>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<String,long[]> eldest) {
+        return size() > CACHE_SIZE;
+      }
+    };
+  }
+
+  /**
+   * Estimates the total rows of a list of queries.
+   * @param queries The SQL of the queries.
+   * @return The estimated rows, or {@link #UNKNOWN}.
+   */
+  long estimate(List<String> queries) {
+    if (METHOD == Method.NONE) return UNKNOWN;
+    long total = 0;
+    for (String sql: queries) {
+      long rows = estimate(sql);
+      if (rows == UNKNOWN) return UNKNOWN;
+      total += rows;
+    }
+    return total;
+  }
+
+  /**
+   * Estimates the rows of a query, using a cached estimate if there is one.
+   * @param sql The SQL of the query.
+   * @return The estimated rows, or {@link #UNKNOWN}.
+   */
+  private long estimate(String sql) {
+    long now = System.currentTimeMillis();
+    synchronized (cache) {
+      long[] cached = cache.get(sql);
+      if (cached != null && now - cached[1] < LIFETIME) return cached[0];
+    }
+
+    long rows = UNKNOWN;
+    try {
+      DatabaseConnection conn = pool.acquire();
+      try {
+        if (METHOD == Method.EXPLAIN && !explainFailed) rows = explain(conn, sql);
+        if (rows == UNKNOWN) rows = count(conn, sql);
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException es) {
+      logger.warn("Unable to estimate rows of query: " + sql, es);
+    }
+
+    if (logger.isDebugEnabled()) logger.debug("Estimated " + rows + " rows for " + sql);
+    synchronized (cache) {
+      cache.put(sql, new long[] { rows, now });
+    }
+    return rows;
+  }
+
+  /**
+   * Gets the row estimate of the query planner.
+   * @param conn The connection to the database.
+   * @param sql The SQL of the query.
+   * @return The estimated rows, or {@link #UNKNOWN} if the query could not be
+   *   explained, or the plan could not be read.
+   * @throws SQLException If the connection could not be reset after a failure.
+   */
+  private long explain(DatabaseConnection conn, String sql) throws SQLException {
+    try {
+      Statement statement = conn.getConnection().createStatement();
+      try {
+        ResultSet result = statement.executeQuery("EXPLAIN " + sql);
+        try {
+          long rows = readPlan(result);
+          if (rows == UNKNOWN && logger.isDebugEnabled()) {
+            logger.debug("Unable to read the plan of query, counting rows instead: " + sql);
+          }
+          return rows;
+        } finally {
+          result.close();
+        }
+      } finally {
+        statement.close();
+      }
+    } catch (SQLException es) {
+      if (logger.isDebugEnabled()) logger.debug("Unable to explain query, counting rows instead: " + sql, es);
+      // a failed statement may abort the transaction in some databases
+      reset(conn);
+    }
+
+    // only stop using EXPLAIN if it fails for a query as simple as they come
+    if (!canExplain(conn)) {
+      logger.info("EXPLAIN is not supported by the database, counting rows instead");
+      explainFailed = true;
+    }
+    return UNKNOWN;
+  }
+
+  /**
+   * Tests if the database understands <code>EXPLAIN</code>.
+   * @param conn The connection to the database.
+   * @return <code>true</code> if a trivial query could be explained.
+   * @throws SQLException If the connection could not be reset after a failure.
+   */
+  private static boolean canExplain(DatabaseConnection conn) throws SQLException {
+    try {
+      Statement statement = conn.getConnection().createStatement();
+      try {
+        statement.executeQuery(EXPLAIN_PROBE).close();
+        return true;
+      } finally {
+        statement.close();
+      }
+    } catch (SQLException es) {
+      reset(conn);
+      return false;
+    }
+  }
+
+  /**
+   * Reads the row estimate from a plan.
+   * @param plan The result of an <code>EXPLAIN</code>.
+   * @return The estimated rows, or {@link #UNKNOWN} if the plan could not be read.
+   * @throws SQLException If the plan could not be read from the database.
+   */
+  static long readPlan(ResultSet plan) throws SQLException {
+    int rowsColumn = findColumn(plan.getMetaData(), "rows");
+    if (rowsColumn > 0) {
+      // MySQL: one row per table, joined in nested loops
+      long rows = 1;
+      boolean read = false;
+      while (plan.next()) {
+        rows *= Math.max(1, plan.getLong(rowsColumn));
+        read = true;
+      }
+      return read ? rows : UNKNOWN;
+    }
+    // PostgreSQL: the first line describes the whole plan
+    if (plan.next()) {
+      String line = plan.getString(1);
+      Matcher m = ROWS_PATTERN.matcher(line == null ? "" : line);
+      if (m.find()) return Long.parseLong(m.group(1));
+    }
+    return UNKNOWN;
+  }
+
+  /**
+   * Counts the rows of a query, up to the {@link #COUNT_LIMIT}.  The rows are
+   * read rather than counted with <code>COUNT(*)</code>, so that the database
+   * can stop at the limit.
+   * @param conn The connection to the database.
+   * @param sql The SQL of the query.
+   * @return The number of rows, or {@link #UNKNOWN} if there are more than the limit.
+   * @throws SQLException If the query could not be counted.
+   */
+  private static long count(DatabaseConnection conn, String sql) throws SQLException {
+    if (COUNT_LIMIT <= 0) return UNKNOWN;
+    Statement statement = conn.getConnection().createStatement();
+    try {
+      statement.setMaxRows(COUNT_LIMIT + 1);
+      statement.setFetchSize(Math.min(COUNT_LIMIT + 1, 1000));
+      ResultSet result = statement.executeQuery(sql);
+      try {
+        long rows = 0;
+        while (result.next()) {
+          if (++rows > COUNT_LIMIT) return UNKNOWN;
+        }
+        return rows;
+      } finally {
+        result.close();
+      }
+    } finally {
+      statement.close();
+    }
+  }
+
+  /**
+   * Ends the transaction of a connection after a failed statement.
+   * @param conn The connection to the database.
+   * @throws SQLException If the transaction could not be rolled back.
+   */
+  private static void reset(DatabaseConnection conn) throws SQLException {
+    if (!conn.getConnection().getAutoCommit()) conn.getConnection().rollback();
+  }
+
+  /**
+   * Finds a column by name.
+   * @param metaData The description of a result set.
+   * @param name The name of the column, in any case.
+   * @return The index of the column, or 0 if there is no column with the name.
+   * @throws SQLException If the description could not be read.
+   */
+  private static int findColumn(ResultSetMetaData metaData, String name) throws SQLException {
+    for (int c = 1; c <= metaData.getColumnCount(); c++) {
+      if (name.equalsIgnoreCase(metaData.getColumnLabel(c))) return c;
+    }
+    return 0;
+  }
+
+  /**
+   * Reads the estimation method from the system properties.
+   * @return The method to use.
+   */
+  private static Method getMethod() {
+    String value = System.getProperty(ESTIMATE_PROPERTY);
+    if (value != null) {
+      try {
+        return Method.valueOf(value.toUpperCase());
+      } catch (IllegalArgumentException e) {
+        logger.warn("Invalid value for property " + ESTIMATE_PROPERTY + ": " + value);
+      }
+    }
+    return Method.EXPLAIN;
+  }
+}
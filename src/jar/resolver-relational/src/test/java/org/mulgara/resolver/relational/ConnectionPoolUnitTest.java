@@ -0,0 +1,128 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.resolver.relational;
+
+// Java 2 standard packages
+import java.util.ArrayList;
+import java.util.List;
+
+// Third party packages
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Test case for {@link ConnectionPool}.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public class ConnectionPoolUnitTest extends TestCase {
+
+  /** The database the pool connects to. */
+  private TestDatabase database;
+
+  /** The pool under test. */
+  private ConnectionPool pool;
+
+  public ConnectionPoolUnitTest(String name) {
+    super(name);
+  }
+
+  public static Test suite() {
+    TestSuite suite = new TestSuite();
+    suite.addTest(new ConnectionPoolUnitTest("testReuse"));
+    suite.addTest(new ConnectionPoolUnitTest("testPoolSize"));
+    suite.addTest(new ConnectionPoolUnitTest("testRelease"));
+    suite.addTest(new ConnectionPoolUnitTest("testDroppedConnection"));
+    suite.addTest(new ConnectionPoolUnitTest("testClosedConnection"));
+    return suite;
+  }
+
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+
+  public void setUp() {
+    database = new TestDatabase();
+    pool = database.createPool();
+  }
+
+  /**
+   * A released connection is handed out again, most recently used first,
+   * and new connections are only opened when none are idle.
+   */
+  public void testReuse() throws Exception {
+    DatabaseConnection a = pool.acquire();
+    DatabaseConnection b = pool.acquire();
+    assertNotSame(a, b);
+    assertEquals(2, database.connections.size());
+
+    a.close();
+    b.close();
+    assertSame(b, pool.acquire());
+    assertSame(a, pool.acquire());
+    assertNotSame(a, pool.acquire());
+    assertEquals(3, database.connections.size());
+  }
+
+  /**
+   * Connections released into a full pool are closed.
+   */
+  public void testPoolSize() throws Exception {
+    List<DatabaseConnection> acquired = new ArrayList<DatabaseConnection>();
+    for (int i = 0; i <= ConnectionPool.POOL_SIZE; i++) acquired.add(pool.acquire());
+    for (DatabaseConnection conn: acquired) conn.close();
+
+    int closed = 0;
+    for (DatabaseConnection conn: acquired) {
+      if (conn.getConnection().isClosed()) closed++;
+    }
+    assertEquals(1, closed);
+    assertTrue(acquired.get(ConnectionPool.POOL_SIZE).getConnection().isClosed());
+  }
+
+  /**
+   * Releasing a connection ends its transaction.
+   */
+  public void testRelease() throws Exception {
+    DatabaseConnection conn = pool.acquire();
+    conn.close();
+    assertEquals(ConnectionPool.FETCH_SIZE != 0 ? 1 : 0, database.rollbacks);
+  }
+
+  /**
+   * An idle connection that the network dropped is closed rather than handed out.
+   */
+  public void testDroppedConnection() throws Exception {
+    DatabaseConnection a = pool.acquire();
+    a.close();
+    database.dropConnections();
+
+    DatabaseConnection b = pool.acquire();
+    assertNotSame(a, b);
+    assertTrue(a.getConnection().isClosed());
+    assertFalse(b.getConnection().isClosed());
+    assertEquals(2, database.connections.size());
+  }
+
+  /**
+   * An idle connection that was closed is not handed out.
+   */
+  public void testClosedConnection() throws Exception {
+    DatabaseConnection a = pool.acquire();
+    a.close();
+    a.getConnection().close();
+    assertNotSame(a, pool.acquire());
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.resolver.relational;
+
+// Java 2 standard packages
+import java.sql.PreparedStatement;
+
+// Third party packages
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Test case for the statement cache of {@link DatabaseConnection}.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public class DatabaseConnectionUnitTest extends TestCase {
+
+  /** The database the connection is to. */
+  private TestDatabase database;
+
+  /** The connection under test. */
+  private DatabaseConnection conn;
+
+  public DatabaseConnectionUnitTest(String name) {
+    super(name);
+  }
+
+  public static Test suite() {
+    TestSuite suite = new TestSuite();
+    suite.addTest(new DatabaseConnectionUnitTest("testReuse"));
+    suite.addTest(new DatabaseConnectionUnitTest("testConcurrentUse"));
+    suite.addTest(new DatabaseConnectionUnitTest("testEviction"));
+    suite.addTest(new DatabaseConnectionUnitTest("testDestroy"));
+    return suite;
+  }
+
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+
+  public void setUp() throws Exception {
+    database = new TestDatabase();
+    conn = database.createPool().acquire();
+  }
+
+  /**
+   * A statement given back is reused for the same query.
+   */
+  public void testReuse() throws Exception {
+    PreparedStatement a = conn.prepare(sql(1));
+    conn.release(sql(1), a);
+    assertSame(a, conn.prepare(sql(1)));
+    assertNotSame(a, conn.prepare(sql(2)));
+    assertFalse(a.isClosed());
+  }
+
+  /**
+   * A statement in use is not handed out again, and only one statement is
+   * cached for a query.
+   */
+  public void testConcurrentUse() throws Exception {
+    PreparedStatement a = conn.prepare(sql(1));
+    PreparedStatement b = conn.prepare(sql(1));
+    assertNotSame(a, b);
+
+    conn.release(sql(1), a);
+    conn.release(sql(1), b);
+    assertFalse(a.isClosed());
+    assertTrue(b.isClosed());
+  }
+
+  /**
+   * The least recently used statement is closed when the cache is full.
+   */
+  public void testEviction() throws Exception {
+    if (ConnectionPool.STATEMENT_CACHE_SIZE <= 0) return;
+
+    int size = ConnectionPool.STATEMENT_CACHE_SIZE;
+    PreparedStatement[] statements = new PreparedStatement[size + 1];
+    for (int i = 0; i < size; i++) statements[i] = conn.prepare(sql(i));
+    for (int i = 0; i < size; i++) conn.release(sql(i), statements[i]);
+
+    // using the first makes the second the least recently used
+    conn.release(sql(0), conn.prepare(sql(0)));
+    statements[size] = conn.prepare(sql(size));
+    conn.release(sql(size), statements[size]);
+
+    assertFalse(statements[0].isClosed());
+    assertTrue(statements[1].isClosed());
+    for (int i = 2; i <= size; i++) assertFalse(statements[i].isClosed());
+    assertNotSame(statements[1], conn.prepare(sql(1)));
+    assertEquals(size + 2, database.prepared.size());
+  }
+
+  /**
+   * Destroying a connection closes its cached statements.
+   */
+  public void testDestroy() throws Exception {
+    PreparedStatement a = conn.prepare(sql(1));
+    conn.release(sql(1), a);
+    conn.destroy();
+    assertTrue(a.isClosed());
+    assertTrue(conn.getConnection().isClosed());
+  }
+
+  /**
+   * @return A query, different for each number.
+   */
+  private static String sql(int i) {
+    return "SELECT t.a FROM t WHERE t.b = " + i;
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.resolver.relational;
+
+// Java 2 standard packages
+import java.util.Arrays;
+import java.util.Collections;
+
+// Third party packages
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Test case for {@link RowEstimator}.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public class RowEstimatorUnitTest extends TestCase {
+
+  /** A query to estimate. */
+  private static final String QUERY = "SELECT t.a FROM t WHERE t.b = 1";
+
+  /** Another query to estimate. */
+  private static final String OTHER_QUERY = "SELECT u.a FROM u";
+
+  /** The columns of a MySQL plan. */
+  private static final String[] MYSQL_COLUMNS = { "id", "select_type", "table", "type", "rows", "Extra" };
+
+  /** The database the queries are estimated against. */
+  private TestDatabase database;
+
+  /** The estimator under test. */
+  private RowEstimator estimator;
+
+  public RowEstimatorUnitTest(String name) {
+    super(name);
+  }
+
+  public static Test suite() {
+    TestSuite suite = new TestSuite();
+    suite.addTest(new RowEstimatorUnitTest("testPostgreSQLPlan"));
+    suite.addTest(new RowEstimatorUnitTest("testMySQLPlan"));
+    suite.addTest(new RowEstimatorUnitTest("testUnreadablePlan"));
+    suite.addTest(new RowEstimatorUnitTest("testFailedExplain"));
+    suite.addTest(new RowEstimatorUnitTest("testUnsupportedExplain"));
+    suite.addTest(new RowEstimatorUnitTest("testCountLimit"));
+    suite.addTest(new RowEstimatorUnitTest("testCache"));
+    return suite;
+  }
+
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+
+  public void setUp() {
+    database = new TestDatabase();
+    database.setResult("EXPLAIN SELECT 1", new String[] { "QUERY PLAN" }, new Object[] { "Result  (cost=0.00..0.01 rows=1 width=0)" });
+    estimator = database.createPool().getEstimator();
+  }
+
+  /**
+   * The estimate of a PostgreSQL plan is on its first line.
+   */
+  public void testPostgreSQLPlan() throws Exception {
+    database.setResult("EXPLAIN " + QUERY, new String[] { "QUERY PLAN" },
+        new Object[] { "Hash Join  (cost=1.09..36.36 rows=1275 width=4)" },
+        new Object[] { "  ->  Seq Scan on t  (cost=0.00..30.40 rows=2040 width=8)" });
+    database.setResult("EXPLAIN " + OTHER_QUERY, new String[] { "QUERY PLAN" },
+        new Object[] { "Seq Scan on u  (cost=0.00..1.04 rows=4 width=4)" });
+    assertEquals(1275, estimator.estimate(Collections.singletonList(QUERY)));
+    assertEquals(1279, estimator.estimate(Arrays.asList(QUERY, OTHER_QUERY)));
+    assertFalse(database.executed.contains(QUERY));
+  }
+
+  /**
+   * The estimate of a MySQL plan is the product of the rows of each table,
+   * counting tables without an estimate as a single row.
+   */
+  public void testMySQLPlan() throws Exception {
+    database.setResult("EXPLAIN " + QUERY, MYSQL_COLUMNS,
+        new Object[] { 1, "SIMPLE", "t", "ALL", 20, "Using where" },
+        new Object[] { 1, "SIMPLE", "v", "ref", 3, null },
+        new Object[] { 1, "SIMPLE", "w", "const", null, null });
+    assertEquals(60, estimator.estimate(Collections.singletonList(QUERY)));
+    assertFalse(database.executed.contains(QUERY));
+  }
+
+  /**
+   * A plan which can't be read falls back to counting, but the next query is
+   * still explained.
+   */
+  public void testUnreadablePlan() throws Exception {
+    database.setResult("EXPLAIN " + QUERY, new String[] { "PLAN" }, new Object[] { "Full scan of t" });
+    database.setResult(QUERY, new String[] { "a" }, new Object[] { 1 }, new Object[] { 2 }, new Object[] { 3 });
+    assertEquals(3, estimator.estimate(Collections.singletonList(QUERY)));
+
+    database.setResult("EXPLAIN " + OTHER_QUERY, new String[] { "QUERY PLAN" },
+        new Object[] { "Seq Scan on u  (cost=0.00..1.04 rows=4 width=4)" });
+    assertEquals(4, estimator.estimate(Collections.singletonList(OTHER_QUERY)));
+  }
+
+  /**
+   * A query which can't be explained is counted, but the next query is still
+   * explained when the database understands <code>EXPLAIN</code>.
+   */
+  public void testFailedExplain() throws Exception {
+    database.setFailure("EXPLAIN " + QUERY);
+    database.setResult(QUERY, new String[] { "a" }, new Object[] { 1 }, new Object[] { 2 });
+    assertEquals(2, estimator.estimate(Collections.singletonList(QUERY)));
+
+    database.setResult("EXPLAIN " + OTHER_QUERY, new String[] { "QUERY PLAN" },
+        new Object[] { "Seq Scan on u  (cost=0.00..1.04 rows=4 width=4)" });
+    assertEquals(4, estimator.estimate(Collections.singletonList(OTHER_QUERY)));
+  }
+
+  /**
+   * A database which doesn't understand <code>EXPLAIN</code> isn't asked to
+   * explain any more queries.
+   */
+  public void testUnsupportedExplain() throws Exception {
+    database.setFailure("EXPLAIN SELECT 1");
+    database.setFailure("EXPLAIN " + QUERY);
+    database.setResult(QUERY, new String[] { "a" }, new Object[] { 1 }, new Object[] { 2 });
+    assertEquals(2, estimator.estimate(Collections.singletonList(QUERY)));
+
+    database.setResult(OTHER_QUERY, new String[] { "a" }, new Object[] { 1 });
+    assertEquals(1, estimator.estimate(Collections.singletonList(OTHER_QUERY)));
+    assertFalse(database.executed.contains("EXPLAIN " + OTHER_QUERY));
+  }
+
+  /**
+   * Counting reads no more than one row past the limit, and a query with more
+   * rows than the limit is not estimated.
+   */
+  public void testCountLimit() throws Exception {
+    database.setFailure("EXPLAIN SELECT 1");
+    Object[][] rows = new Object[RowEstimator.COUNT_LIMIT + 5][];
+    for (int i = 0; i < rows.length; i++) rows[i] = new Object[] { i };
+    database.setResult(QUERY, new String[] { "a" }, rows);
+    assertEquals(RowEstimator.UNKNOWN, estimator.estimate(Collections.singletonList(QUERY)));
+    assertEquals(RowEstimator.COUNT_LIMIT + 1, database.lastMaxRows);
+
+    database.setResult(OTHER_QUERY, new String[] { "a" }, Arrays.copyOf(rows, RowEstimator.COUNT_LIMIT));
+    assertEquals(RowEstimator.COUNT_LIMIT, estimator.estimate(Arrays.asList(OTHER_QUERY)));
+    assertEquals(RowEstimator.UNKNOWN, estimator.estimate(Arrays.asList(QUERY, OTHER_QUERY)));
+  }
+
+  /**
+   * Estimates are reused.
+   */
+  public void testCache() throws Exception {
+    database.setResult("EXPLAIN " + QUERY, new String[] { "QUERY PLAN" },
+        new Object[] { "Seq Scan on t  (cost=0.00..30.40 rows=2040 width=8)" });
+    assertEquals(2040, estimator.estimate(Collections.singletonList(QUERY)));
+    assertEquals(2040, estimator.estimate(Collections.singletonList(QUERY)));
+    assertEquals(1, database.executed.size());
+  }
+}
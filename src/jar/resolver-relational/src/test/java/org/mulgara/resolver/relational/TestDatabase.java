@@ -0,0 +1,296 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.resolver.relational;
+
+// Java 2 standard packages
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A stand-in for a relational database, which answers queries with canned
+ * results and records the statements it is sent.  It is reached through a
+ * JDBC driver for DSNs starting with <code>jdbc:test:</code>.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+class TestDatabase {
+
+  /** The databases, keyed on DSN. */
+  private static final Map<String,TestDatabase> databases = new HashMap<String,TestDatabase>();
+
+  /** The number of databases created. */
+  private static int created = 0;
+
+  static {
+    try {
+      DriverManager.registerDriver(proxy(Driver.class, new Handler("driver") {
+        Object invoke(String method, Object[] args) throws SQLException {
+          if (method.equals("acceptsURL")) return ((String)args[0]).startsWith("jdbc:test:");
+          if (method.equals("connect")) {
+            TestDatabase database;
+            synchronized (databases) {
+              database = databases.get(args[0]);
+            }
+            return database == null ? null : database.connect();
+          }
+          return super.invoke(method, args);
+        }
+      }));
+    } catch (SQLException es) {
+      throw new ExceptionInInitializerError(es);
+    }
+  }
+
+  /** The DSN of this database. */
+  final String dsn;
+
+  /** The statements run, in order. */
+  final List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+
+  /** The connections opened. */
+  final List<Connection> connections = Collections.synchronizedList(new ArrayList<Connection>());
+
+  /** The statements prepared. */
+  final List<PreparedStatement> prepared = Collections.synchronizedList(new ArrayList<PreparedStatement>());
+
+  /** The number of transactions rolled back. */
+  volatile int rollbacks = 0;
+
+  /** The number of times the open connections have been dropped. */
+  private volatile int drops = 0;
+
+  /** The results of queries, each a table with a header row, or an exception. */
+  private final Map<String,Object> results = Collections.synchronizedMap(new HashMap<String,Object>());
+
+  /** The most rows requested by the last statement run. */
+  volatile int lastMaxRows;
+
+  /** Creates a database, with a new DSN. */
+  TestDatabase() {
+    synchronized (databases) {
+      dsn = "jdbc:test:" + ++created;
+      databases.put(dsn, this);
+    }
+  }
+
+  /**
+   * @return A new pool of connections to this database.
+   */
+  ConnectionPool createPool() {
+    return new ConnectionPool(dsn, new Properties());
+  }
+
+  /**
+   * Sets the result of a query.
+   * @param sql The query.
+   * @param columns The names of the columns.
+   * @param rows The rows of the result.
+   */
+  void setResult(String sql, String[] columns, Object[]... rows) {
+    List<Object[]> table = new ArrayList<Object[]>();
+    table.add(columns);
+    table.addAll(Arrays.asList(rows));
+    results.put(sql, table);
+  }
+
+  /**
+   * Makes a query fail with a syntax error.
+   * @param sql The query.
+   */
+  void setFailure(String sql) {
+    results.put(sql, new SQLException("syntax error at or near \"" + sql + "\"", "42601"));
+  }
+
+  /**
+   * Drops the open connections, as the network or the database might, without
+   * closing them.
+   */
+  void dropConnections() {
+    drops++;
+  }
+
+  /**
+   * Opens a connection.
+   * @return The connection.
+   */
+  private Connection connect() {
+    Connection conn = proxy(Connection.class, new Handler("connection") {
+      boolean closed = false;
+      boolean autoCommit = true;
+      final int generation = drops;
+
+      Object invoke(String method, Object[] args) throws SQLException {
+        if (method.equals("isClosed")) return closed;
+        if (method.equals("isValid")) return !closed && generation == drops;
+        if (closed) throw new SQLException("Connection is closed");
+        if (method.equals("close")) closed = true;
+        else if (generation != drops) throw new SQLException("Connection reset", "08006");
+        else if (method.equals("getAutoCommit")) return autoCommit;
+        else if (method.equals("setAutoCommit")) autoCommit = (Boolean)args[0];
+        else if (method.equals("rollback")) rollbacks++;
+        else if (method.equals("createStatement")) return statement(Statement.class, null);
+        else if (method.equals("prepareStatement")) {
+          PreparedStatement statement = statement(PreparedStatement.class, (String)args[0]);
+          prepared.add(statement);
+          return statement;
+        }
+        return super.invoke(method, args);
+      }
+    });
+    connections.add(conn);
+    return conn;
+  }
+
+  /**
+   * Creates a statement.
+   * @param type The type of statement.
+   * @param preparedSql The query of a prepared statement, or <code>null</code>.
+   * @return The statement.
+   */
+  private <T extends Statement> T statement(Class<T> type, final String preparedSql) {
+    return proxy(type, new Handler("statement " + preparedSql) {
+      boolean closed = false;
+      int maxRows = 0;
+
+      Object invoke(String method, Object[] args) throws SQLException {
+        if (method.equals("isClosed")) return closed;
+        if (closed) throw new SQLException("Statement is closed");
+        if (method.equals("close")) closed = true;
+        else if (method.equals("setMaxRows")) maxRows = (Integer)args[0];
+        else if (method.equals("executeQuery")) {
+          String sql = args == null ? preparedSql : (String)args[0];
+          executed.add(sql);
+          lastMaxRows = maxRows;
+          return resultSet(sql, maxRows);
+        }
+        return super.invoke(method, args);
+      }
+    });
+  }
+
+  /**
+   * Gets the result of a query.
+   * @param sql The query.
+   * @param maxRows The most rows to return, or 0 for all of them.
+   * @return The rows of the result.
+   * @throws SQLException If the query fails.
+   */
+  @SuppressWarnings("unchecked")
+  private ResultSet resultSet(String sql, final int maxRows) throws SQLException {
+    Object result = results.get(sql);
+    if (result == null) throw new SQLException("No result for " + sql, "42P01");
+    if (result instanceof SQLException) throw (SQLException)result;
+
+    final List<Object[]> table = (List<Object[]>)result;
+    final Object[] columns = table.get(0);
+    final ResultSetMetaData metaData = proxy(ResultSetMetaData.class, new Handler("metadata") {
+      Object invoke(String method, Object[] args) throws SQLException {
+        if (method.equals("getColumnCount")) return columns.length;
+        if (method.equals("getColumnLabel")) return columns[(Integer)args[0] - 1];
+        return super.invoke(method, args);
+      }
+    });
+    return proxy(ResultSet.class, new Handler("result " + sql) {
+      int row = 0;
+
+      Object invoke(String method, Object[] args) throws SQLException {
+        if (method.equals("next")) {
+          if (row < table.size() - 1 && (maxRows == 0 || row < maxRows)) {
+            row++;
+            return true;
+          }
+          return false;
+        }
+        if (method.equals("getMetaData")) return metaData;
+        if (method.equals("getLong")) {
+          Object value = table.get(row)[(Integer)args[0] - 1];
+          return value == null ? 0L : ((Number)value).longValue();
+        }
+        if (method.equals("getString")) {
+          Object value = table.get(row)[(Integer)args[0] - 1];
+          return value == null ? null : value.toString();
+        }
+        return super.invoke(method, args);
+      }
+    });
+  }
+
+  /**
+   * Creates a proxy for a JDBC interface.
+   * @param type The interface.
+   * @param handler The handler for the methods of the interface.
+   * @return The proxy.
+   */
+  private static <T> T proxy(Class<T> type, Handler handler) {
+    return type.cast(Proxy.newProxyInstance(TestDatabase.class.getClassLoader(), new Class<?>[] { type }, handler));
+  }
+
+  /**
+   * Handles the methods of a JDBC interface by name.  Methods which are not
+   * handled do nothing, and return the default value of their type.
+   */
+  private static class Handler implements InvocationHandler {
+
+    /** The name of the proxy. */
+    private final String name;
+
+    Handler(String name) {
+      this.name = name;
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String n = method.getName();
+      if (n.equals("equals")) return proxy == args[0];
+      if (n.equals("hashCode")) return System.identityHashCode(proxy);
+      if (n.equals("toString")) return name;
+      synchronized (this) {
+        Object result = invoke(n, args);
+        if (result != null || method.getReturnType() == void.class) return result;
+      }
+      Class<?> type = method.getReturnType();
+      if (!type.isPrimitive()) return null;
+      if (type == boolean.class) return false;
+      if (type == int.class) return 0;
+      if (type == long.class) return 0L;
+      throw new UnsupportedOperationException(method.toString());
+    }
+
+    /**
+     * Handles a method.
+     * @param method The name of the method.
+     * @param args The arguments of the method.
+     * @return The result, or <code>null</code> for the default value.
+     * @throws SQLException If the method fails.
+     */
+    Object invoke(String method, Object[] args) throws SQLException {
+      return null;
+    }
+  }
+}
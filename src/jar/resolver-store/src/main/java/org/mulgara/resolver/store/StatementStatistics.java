@@ -0,0 +1,216 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.resolver.store;
+
+// Java 2 standard packages
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Third party packages
+import org.apache.log4j.Logger;
+
+// Locally written packages
+import org.mulgara.query.TuplesException;
+import org.mulgara.store.nodepool.NodePool;
+import org.mulgara.store.statement.StatementStore;
+import org.mulgara.store.statement.StatementStoreException;
+import org.mulgara.store.tuples.StatisticsAnnotation;
+import org.mulgara.store.tuples.StoreTuples;
+
+/**
+ * Estimates of the number of distinct values in each position of the
+ * statements matching a pattern, such as the distinct subjects and objects of
+ * a predicate in a graph.  These are shared by all the resolvers of a
+ * statement store, and used to estimate the size of joins.
+ * <p>
+ * The number of statements matching a pattern is cheap to find from the
+ * indexes, but the number of distinct values is not, so an estimate is made
+ * from the first <code>mulgara.statistics.sampleSize</code> statements, 10000
+ * by default, and kept until the number of matching statements changes by more
+ * than a tenth.  A sample size of 0 disables the statistics.
+ * </p>
+ * <p>
+ * Statements are read in index order, so the first position after the fixed
+ * positions of the pattern is sorted, and its distinct values are scaled up in
+ * proportion to the size of the sample.  The values in the other positions are
+ * not sorted, and are estimated from the frequencies of the values in the
+ * sample.
+ * </p>
+ *
+ * @created 2026-10-17
+ */
+class StatementStatistics {
+
+  /** Logger. */
+  private static final Logger logger = Logger.getLogger(StatementStatistics.class);
+
+  /** The property for the number of statements to sample. */
+  static final String SAMPLE_SIZE_PROPERTY = "mulgara.statistics.sampleSize";
+
+  /** The default number of statements to sample. */
+  private static final int DEFAULT_SAMPLE_SIZE = 10000;
+
+  /** The most patterns to keep estimates for. */
+  private static final int CACHE_SIZE = 4096;
+
+  /** The number of statements to sample. */
+  private final int sampleSize;
+
+  /** The estimates, keyed on pattern, least recently used first. */
+  private final Map<List<Long>,Estimate> cache;
+
+  /**
+   * Creates statistics, with a sample size taken from the system properties.
+   */
+  StatementStatistics() {
+    this(Integer.getInteger(SAMPLE_SIZE_PROPERTY, DEFAULT_SAMPLE_SIZE).intValue());
+  }
+
+  /**
+   * Creates statistics.
+   * @param sampleSize The number of statements to sample. 0 disables the statistics.
+   */
+  @SuppressWarnings("serial")
+  StatementStatistics(int sampleSize) {
+    this.sampleSize = sampleSize;
+    this.cache = new LinkedHashMap<List<Long>,Estimate>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<List<Long>,Estimate> eldest) {
+        return size() > CACHE_SIZE;
+      }
+    };
+  }
+
+  /**
+   * Estimates the number of distinct values in each position of the statements
+   * matching a pattern.
+   * @param store The statement store to read.
+   * @param pattern The nodes of the pattern, with {@link NodePool#NONE} for
+   *        positions that are not fixed.
+   * @param rowCount The number of statements matching the pattern.
+   * @return The estimated distinct values in each position, or
+   *         {@link StatisticsAnnotation#UNKNOWN} for fixed positions, or for
+   *         all positions if the statistics are disabled.
+   * @throws TuplesException If the store could not be read.
+   */
+  long[] getDistinctCounts(StatementStore store, long[] pattern, long rowCount) throws TuplesException {
+    if (sampleSize <= 0) return unknown();
+
+    List<Long> key = Arrays.asList(pattern[0], pattern[1], pattern[2], pattern[3]);
+    synchronized (cache) {
+      Estimate cached = cache.get(key);
+      if (cached != null && Math.abs(rowCount - cached.rowCount) * 10 <= cached.rowCount) return cached.distinct;
+    }
+
+    long[] distinct = sample(store, pattern, rowCount);
+    if (logger.isDebugEnabled()) logger.debug("Estimated distinct values " + Arrays.toString(distinct) + " for " + key);
+    synchronized (cache) {
+      cache.put(key, new Estimate(rowCount, distinct));
+    }
+    return distinct;
+  }
+
+  /**
+   * Reads a sample of the statements matching a pattern, and estimates the
+   * distinct values in each position.
+   * @param store The statement store to read.
+   * @param pattern The nodes of the pattern.
+   * @param rowCount The number of statements matching the pattern.
+   * @return The estimated distinct values in each position.
+   * @throws TuplesException If the store could not be read.
+   */
+  private long[] sample(StatementStore store, long[] pattern, long rowCount) throws TuplesException {
+    StoreTuples tuples;
+    try {
+      tuples = store.findTuples(pattern[0], pattern[1], pattern[2], pattern[3]);
+    } catch (StatementStoreException es) {
+      throw new TuplesException("Error accessing StatementStore", es);
+    }
+
+    try {
+      // the fixed positions are the leading columns
+      int[] columnOrder = tuples.getColumnOrder();
+      int leading = 0;
+      while (leading < columnOrder.length && pattern[columnOrder[leading]] != NodePool.NONE) leading++;
+
+      List<Map<Long,int[]>> frequencies = new ArrayList<Map<Long,int[]>>();
+      for (int c = 0; c < columnOrder.length; c++) frequencies.add(new HashMap<Long,int[]>());
+
+      int n = 0;
+      tuples.beforeFirst();
+      while (n < sampleSize && tuples.next()) {
+        n++;
+        for (int c = leading; c < columnOrder.length; c++) {
+          Long value = tuples.getColumnValue(c);
+          int[] count = frequencies.get(c).get(value);
+          if (count == null) frequencies.get(c).put(value, new int[] { 1 });
+          else count[0]++;
+        }
+      }
+
+      long[] distinct = unknown();
+      for (int c = leading; c < columnOrder.length; c++) {
+        Map<Long,int[]> frequency = frequencies.get(c);
+        double estimate;
+        if (n >= rowCount || n == 0) {
+          estimate = frequency.size();
+        } else if (c == leading) {
+          estimate = (double)frequency.size() * rowCount / n;
+        } else {
+          // values seen once stand for the values not sampled
+          double once = 0;
+          double more = 0;
+          for (int[] count: frequency.values()) {
+            if (count[0] == 1) once++;
+            else more++;
+          }
+          estimate = Math.sqrt((double)rowCount / n) * once + more;
+        }
+        distinct[columnOrder[c]] = Math.max(1, Math.min(Math.round(estimate), rowCount));
+      }
+      return distinct;
+    } finally {
+      tuples.close();
+    }
+  }
+
+  /**
+   * @return Distinct counts that are all unknown.
+   */
+  private static long[] unknown() {
+    long[] distinct = new long[4];
+    Arrays.fill(distinct, StatisticsAnnotation.UNKNOWN);
+    return distinct;
+  }
+
+
+  /**
+   * The estimated distinct values for a pattern.
+   */
+  private static class Estimate {
+
+    /** The number of statements matching the pattern when the estimate was made. */
+    final long rowCount;
+
+    /** The estimated distinct values in each position. */
+    final long[] distinct;
+
+    Estimate(long rowCount, long[] distinct) {
+      this.rowCount = rowCount;
+      this.distinct = distinct;
+    }
+  }
+}
@@ -46,6 +46,7 @@ import org.mulgara.store.statement.StatementStoreException;
 import org.mulgara.store.tuples.Annotation;
 import org.mulgara.store.tuples.AbstractTuples;
 import org.mulgara.store.tuples.DefinablePrefixAnnotation;
+import org.mulgara.store.tuples.StatisticsAnnotation;
 import org.mulgara.store.tuples.StoreTuples;
 import org.mulgara.store.tuples.Tuples;
 import org.mulgara.store.tuples.TuplesOperations;
@@ -78,6 +79,12 @@ class StatementStoreResolution extends AbstractTuples implements ReresolvableRes
   /** The graph from which these tuples were generated. */
   private StatementStore store;
 
+  /** The estimates of distinct values shared by the resolvers of the store. */
+  private StatementStatistics statistics;
+
+  /** The estimated distinct values of each constraint position, or null if not yet estimated. */
+  private long[] distinctCounts = null;
+
   /** Number of rows, constrained only by the fixed-prefix */
   private long[] rowCount = new long[] { ROWCOUNT_UNCALCULATED };
 
@@ -129,16 +136,18 @@ class StatementStoreResolution extends AbstractTuples implements ReresolvableRes
    *
    * @param constraint the constraint to satisfy
    * @param store the store to resolve against
+   * @param statistics the estimates of distinct values in the store
    * @throws IllegalArgumentException if <var>constraint</var> or <var>graph
    *      </var> is <code>null</code>
    * @throws TuplesException EXCEPTION TO DO
    */
-  StatementStoreResolution(Constraint constraint, StatementStore store) throws TuplesException {
+  StatementStoreResolution(Constraint constraint, StatementStore store, StatementStatistics statistics) throws TuplesException {
     if (logger.isDebugEnabled()) {
       logger.debug("Resolving constraint against statementStore: " + constraint);
     }
     this.constraint = constraint;
     this.store = store;
+    this.statistics = statistics;
 
     // TODO remove this when the statement store permits query nodes.
     isEmpty =
@@ -366,7 +375,7 @@ class StatementStoreResolution extends AbstractTuples implements ReresolvableRes
     }
     if (reconstrain) {
       ConstraintImpl newConstraint = new ConstraintImpl(e[0], e[1], e[2], e[3]);
-      return new StatementStoreResolution(newConstraint, store);
+      return new StatementStoreResolution(newConstraint, store, statistics);
     } else {
       return null;
     }
@@ -532,6 +541,8 @@ class StatementStoreResolution extends AbstractTuples implements ReresolvableRes
 
     // constraint immutable
     // store immutable
+    // statistics shared
+    // distinctCounts not modified once estimated
     // rowCount native
     cloned.indexedTuples = (Tuples)indexedTuples.clone();
     // columnOrder derived from indexedTuples, realloced if changed
@@ -555,6 +566,30 @@ class StatementStoreResolution extends AbstractTuples implements ReresolvableRes
     return indexedTuples.toString() + " from constraint " + constraint;
   }
 
+  /**
+   * Estimates the number of distinct values in a column, from the statistics
+   * for the constraint.
+   *
+   * @param column the index of the column
+   * @return the estimated number of distinct values, or {@link StatisticsAnnotation#UNKNOWN}
+   * @throws TuplesException if the statement store could not be read
+   */
+  private long getDistinctCount(int column) throws TuplesException {
+    if (isEmpty) return StatisticsAnnotation.UNKNOWN;
+
+    if (distinctCounts == null) {
+      long[] pattern = new long[4];
+      for (int i = 0; i < 4; i++) pattern[i] = toGraphTuplesIndex(constraint.getElement(i));
+      distinctCounts = statistics.getDistinctCounts(store, pattern, getRowCount());
+    }
+
+    Variable var = getVariables()[column];
+    for (int i = 0; i < 4; i++) {
+      if (var.equals(constraint.getElement(i))) return distinctCounts[i];
+    }
+    return StatisticsAnnotation.UNKNOWN;
+  }
+
   protected StatementStoreResolution getSSR() {
     return this;
   }
@@ -582,6 +617,12 @@ class StatementStoreResolution extends AbstractTuples implements ReresolvableRes
           defineIndex(bound);
         }
       };
+    } else if (annotation.equals(StatisticsAnnotation.class)) {
+      return new StatisticsAnnotation() {
+        public long getDistinctCount(int column) throws TuplesException {
+          return getSSR().getDistinctCount(column);
+        }
+      };
     } else {
       return null;
     }
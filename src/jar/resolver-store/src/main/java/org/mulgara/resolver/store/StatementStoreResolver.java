@@ -104,6 +104,11 @@ public class StatementStoreResolver implements SystemResolver {
    */
   private final XAStatementStore statementStore;
 
+  /**
+   * The estimates of distinct values shared with all resolvers from the same factory.
+   */
+  private final StatementStatistics statistics;
+
   private final XAResolverSession xaResolverSession;
 
   private final XAResource xaresource;
@@ -126,6 +131,7 @@ public class StatementStoreResolver implements SystemResolver {
                          URI modelTypeURI,
                          XAResolverSession resolverSession,
                          XAStatementStore statementStore,
+                         StatementStatistics statistics,
                          ResolverFactory resolverFactory)
       throws IllegalArgumentException, ResolverFactoryException
   {
@@ -143,6 +149,7 @@ public class StatementStoreResolver implements SystemResolver {
     this.resolverSession = resolverSession;
     this.statementStoreModelTypeURI = modelTypeURI;
     this.statementStore = statementStore;
+    this.statistics = statistics;
     this.xaResolverSession = resolverSession;
     this.isSystemResolver = true;
     this.xaresource = new StatementStoreXAResource(
@@ -158,6 +165,7 @@ public class StatementStoreResolver implements SystemResolver {
                          URI modelTypeURI,
                          XAResolverSession resolverSession,
                          XAStatementStore statementStore,
+                         StatementStatistics statistics,
                          ResolverFactory resolverFactory)
       throws IllegalArgumentException, ResolverFactoryException
   {
@@ -174,6 +182,7 @@ public class StatementStoreResolver implements SystemResolver {
     this.resolverSession = resolverSession;
     this.statementStoreModelTypeURI = modelTypeURI;
     this.statementStore = statementStore;
+    this.statistics = statistics;
     this.xaResolverSession = resolverSession;
     this.isSystemResolver = false;
     this.xaresource = new StatementStoreXAResource(
@@ -390,7 +399,7 @@ public class StatementStoreResolver implements SystemResolver {
       if (constraintResolvable(constraint)) {
         if (!constraint.isRepeating()) {
           if (constraint instanceof ConstraintImpl) {
-            return new StatementStoreResolution(constraint, statementStore);
+            return new StatementStoreResolution(constraint, statementStore, statistics);
           } else {
             throw new QueryException("Unable to resolve constraint " + constraint + " unknown type");
           }
@@ -447,6 +456,16 @@ public class StatementStoreResolver implements SystemResolver {
     return resolverSession.localizePersistent(node);
   }
 
+  public long[] localize(Node[] nodes) throws LocalizeException
+  {
+    return resolverSession.localize(nodes);
+  }
+
+  public long[] localizePersistent(Node[] nodes) throws LocalizeException
+  {
+    return resolverSession.localizePersistent(nodes);
+  }
+
   public long newBlankNode() throws NodePoolException {
     return resolverSession.newBlankNode();
   }
@@ -75,6 +75,9 @@ public class StatementStoreResolverFactory implements SystemResolverFactory {
 
   protected XAResolverSessionFactory resolverSessionFactory;
 
+  /** The estimates of distinct values in the statement store, shared by the generated resolvers.  */
+  private final StatementStatistics statistics = new StatementStatistics();
+
   //
   // Constructors
   //
@@ -210,6 +213,7 @@ public class StatementStoreResolverFactory implements SystemResolverFactory {
           allowWrites
               ? statementStore.newWritableStatementStore()
               : statementStore.newReadOnlyStatementStore(),
+          statistics,
           this);
     } catch (ResolverSessionFactoryException er) {
       throw new ResolverFactoryException(
@@ -232,6 +236,7 @@ public class StatementStoreResolverFactory implements SystemResolverFactory {
           (XAResolverSession) resolverSessionFactory.newReadOnlyResolverSession(),
           allowWrites ? statementStore.newWritableStatementStore()
           : statementStore.newReadOnlyStatementStore(),
+          statistics,
           this);
     } catch (ResolverSessionFactoryException er) {
       throw new ResolverFactoryException(
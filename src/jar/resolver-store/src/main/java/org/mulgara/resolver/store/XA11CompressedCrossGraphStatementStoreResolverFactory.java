@@ -0,0 +1,65 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.resolver.store;
+
+import java.io.IOException;
+
+import org.mulgara.resolver.spi.FactoryInitializer;
+import org.mulgara.resolver.spi.InitializerException;
+import org.mulgara.resolver.spi.ResolverFactory;
+import org.mulgara.store.statement.xa11.XA11StatementStoreImpl;
+import org.mulgara.store.xa.XAResolverSessionFactory;
+import org.mulgara.store.xa.XAStatementStore;
+
+/**
+ * An extension of XA11CrossGraphStatementStoreResolverFactory which creates its store with
+ * compressed triple blocks as well as the cross-graph indexes. A store which already exists keeps the format it
+ * was created with, and can be converted with
+ * {@link org.mulgara.store.statement.xa.TripleStoreCompressor}.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE.txt">Open Software License v3.0</a>
+ */
+public class XA11CompressedCrossGraphStatementStoreResolverFactory extends XA11CrossGraphStatementStoreResolverFactory {
+
+  /**
+   * Internal construction of a resolver factory.
+   * @throws InitializerException Unable to initialize.
+   */
+  protected XA11CompressedCrossGraphStatementStoreResolverFactory(FactoryInitializer initializer,
+      XAResolverSessionFactory resolverSessionFactory) throws InitializerException {
+    super(initializer, resolverSessionFactory);
+  }
+
+  /**
+   * Factory method for instances of this factory
+   * @param initializer Configuration object for this factory.
+   * @param resolverSessionFactory A factory that this factory can proxy for getting sessions.
+   * @return A new factory for resolver sessions.
+   * @throws InitializerException The factory could not be initialized.
+   */
+  public static ResolverFactory newInstance(FactoryInitializer initializer,
+        XAResolverSessionFactory resolverSessionFactory) throws InitializerException {
+    return new XA11CompressedCrossGraphStatementStoreResolverFactory(initializer, resolverSessionFactory);
+  }
+
+  /**
+   * Creates an XA 1.1 store with the cross-graph indexes and with compressed triple blocks.
+   * @param filePrefix The base for the files being used for storage.
+   * @return a new instance of an XAStatementStore
+   * @throws IOException Error accessing the filesystem
+   */
+  protected XAStatementStore createStore(String filePrefix) throws IOException {
+    return new XA11StatementStoreImpl(filePrefix, true, true);
+  }
+}
@@ -28,6 +28,7 @@ package org.mulgara.store.statement.xa;
 
 // Java 2 standard packages
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.*;
@@ -83,6 +84,9 @@ public final class TripleAVLFile {
   private final static int MAX_TRIPLES =
       BLOCK_SIZE / Constants.SIZEOF_LONG / SIZEOF_TRIPLE;
 
+  /** The most triples held by a compressed triple block. */
+  private final static int MAX_COMPRESSED_TRIPLES = 4 * MAX_TRIPLES;
+
   private final static int IDX_NR_TRIPLES_I = 1;
 
   private final static int IDX_LOW_TRIPLE = 1;
@@ -93,6 +97,22 @@ public final class TripleAVLFile {
 
   private final static int PAYLOAD_SIZE = IDX_BLOCK_ID + 1;
 
+  /**
+   * The property for loading triples into an empty file by sorting them and
+   * building the file in a single pass.  Defaults to <code>true</code>.
+   */
+  public final static String BULK_LOAD_PROPERTY = "mulgara.xa.bulkLoad";
+
+  private static volatile boolean bulkLoad =
+      Boolean.valueOf(System.getProperty(BULK_LOAD_PROPERTY, "true")).booleanValue();
+
+  /** The property for the number of decoded blocks cached for each compressed file. */
+  public final static String DECODED_CACHE_SIZE_PROPERTY = "mulgara.xa.decodedBlockCacheSize";
+
+  private final static int DEFAULT_DECODED_CACHE_SIZE = 64;
+
+  private final static int decodedCacheSize = getDecodedCacheSize();
+
   @SuppressWarnings("unused")
   private File file;
 
@@ -118,6 +138,24 @@ public final class TripleAVLFile {
 
   private TripleComparator tripleComparator;
 
+  /** Whether the triple blocks are compressed. */
+  private final boolean compressed;
+
+  /** Whether the AVL nodes record the number of triples in their subtrees. */
+  private final boolean counted;
+
+  /** The most triples held by a triple block. */
+  private final int maxTriples;
+
+  /** Encodes compressed triple blocks, or null if the blocks are not compressed. */
+  private final TripleBlockCodec codec;
+
+  /**
+   * The most recently read compressed blocks, decoded, by block ID.  These are
+   * shared by all phases, so they are never modified.
+   */
+  private final Map<Long,ByteBuffer> decodedBlocks;
+
 
   /**
    * CONSTRUCTOR TripleAVLFile TO DO
@@ -127,15 +165,67 @@ public final class TripleAVLFile {
    * @throws IOException EXCEPTION TO DO
    */
   public TripleAVLFile(File file, int[] sortOrder) throws IOException {
+    this(file, sortOrder, false);
+  }
+
+
+  /**
+   * Creates a triple file, with triple blocks in either format.  The format
+   * of a file is not recorded in the file, so it must be opened with the
+   * format that it was created with.
+   *
+   * @param file The base name of the files.
+   * @param sortOrder The order of the columns of the triples.
+   * @param compressed <code>true</code> if the triple blocks are compressed.
+   * @throws IOException If the files could not be opened.
+   */
+  public TripleAVLFile(File file, int[] sortOrder, boolean compressed) throws IOException {
+    this(file, sortOrder, compressed, false);
+  }
+
+
+  /**
+   * Creates a triple file, with triple blocks in either format, and optionally
+   * with the number of triples under each AVL node.  Counted files can count
+   * the triples in a range without reading every node of the range.  Neither
+   * choice is recorded in the file, so it must be opened the way it was
+   * created.
+   *
+   * @param file The base name of the files.
+   * @param sortOrder The order of the columns of the triples.
+   * @param compressed <code>true</code> if the triple blocks are compressed.
+   * @param counted <code>true</code> if the AVL nodes are counted.
+   * @throws IOException If the files could not be opened.
+   */
+  public TripleAVLFile(File file, int[] sortOrder, boolean compressed, boolean counted) throws IOException {
     this.file = file;
     this.sortOrder = sortOrder;
+    this.compressed = compressed;
+    this.counted = counted;
+
+    if (compressed) {
+      maxTriples = MAX_COMPRESSED_TRIPLES;
+      codec = new TripleBlockCodec(BLOCK_SIZE, sortOrder);
+      decodedBlocks = Collections.synchronizedMap(
+          new LinkedHashMap<Long,ByteBuffer>(decodedCacheSize, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            protected boolean removeEldestEntry(Map.Entry<Long,ByteBuffer> eldest) {
+              return size() > decodedCacheSize;
+            }
+          }
+      );
+    } else {
+      maxTriples = MAX_TRIPLES;
+      codec = null;
+      decodedBlocks = null;
+    }
 
     order0 = sortOrder[0];
     order1 = sortOrder[1];
     order2 = sortOrder[2];
     order3 = sortOrder[3];
 
-    avlFile = new AVLFile(file, PAYLOAD_SIZE);
+    avlFile = counted ? new AVLFile(file, PAYLOAD_SIZE, IDX_NR_TRIPLES_I) : new AVLFile(file, PAYLOAD_SIZE);
     blockFile = new ManagedBlockFile(file + BLOCKFILE_EXT, BLOCK_SIZE, BlockFile.IOType.DEFAULT);
     avlComparator = new TripleAVLComparator(sortOrder);
     tripleComparator = new TripleComparator(sortOrder);
@@ -156,6 +246,81 @@ public final class TripleAVLFile {
   }
 
 
+  /**
+   * Creates a triple file, with triple blocks in either format.
+   *
+   * @param fileName The base name of the files.
+   * @param sortOrder The order of the columns of the triples.
+   * @param compressed <code>true</code> if the triple blocks are compressed.
+   * @throws IOException If the files could not be opened.
+   */
+  public TripleAVLFile(String fileName, int[] sortOrder, boolean compressed) throws IOException {
+    this(new File(fileName), sortOrder, compressed);
+  }
+
+
+  /**
+   * Creates a triple file, with triple blocks in either format, and optionally
+   * counted AVL nodes.
+   *
+   * @param fileName The base name of the files.
+   * @param sortOrder The order of the columns of the triples.
+   * @param compressed <code>true</code> if the triple blocks are compressed.
+   * @param counted <code>true</code> if the AVL nodes are counted.
+   * @throws IOException If the files could not be opened.
+   */
+  public TripleAVLFile(String fileName, int[] sortOrder, boolean compressed, boolean counted) throws IOException {
+    this(new File(fileName), sortOrder, compressed, counted);
+  }
+
+
+  /**
+   * Tests if the triple blocks of this file are compressed.
+   *
+   * @return <code>true</code> if the triple blocks are compressed.
+   */
+  public boolean isCompressed() {
+    return compressed;
+  }
+
+
+  /**
+   * Tests if the AVL nodes of this file record the number of triples in their
+   * subtrees.
+   *
+   * @return <code>true</code> if the AVL nodes are counted.
+   */
+  public boolean isCounted() {
+    return counted;
+  }
+
+
+  /**
+   * Sets whether triples added to an empty file are loaded in bulk.  This is
+   * used for testing.
+   *
+   * @param enabled <code>true</code> to load triples in bulk.
+   */
+  static void setBulkLoad(boolean enabled) {
+    bulkLoad = enabled;
+  }
+
+
+  /**
+   * Reads the number of decoded blocks to cache from the system properties.
+   *
+   * @return The number of blocks to cache for each file.
+   */
+  private static int getDecodedCacheSize() {
+    Integer size = Integer.getInteger(DECODED_CACHE_SIZE_PROPERTY, DEFAULT_DECODED_CACHE_SIZE);
+    if (size.intValue() < 0) {
+      logger.warn("Invalid value for property " + DECODED_CACHE_SIZE_PROPERTY + ": " + size);
+      return DEFAULT_DECODED_CACHE_SIZE;
+    }
+    return size.intValue();
+  }
+
+
   /**
    * Binary search for a triple given a range to work within.
    *
@@ -228,6 +393,21 @@ public final class TripleAVLFile {
   }
 
 
+  /**
+   * Wraps a buffer of decoded triples in a block.  The block is not attached
+   * to a block file, so it can not be written directly.
+   *
+   * @param blockId The ID of the compressed block that the triples belong to.
+   * @param triples The decoded triples.
+   * @return The block.
+   */
+  private static Block wrapTriples(long blockId, ByteBuffer triples) {
+    return Block.newInstance(
+        null, triples.capacity(), blockId, 0, triples, null, null, null
+    );
+  }
+
+
   /**
    * METHOD TO DO
    *
@@ -254,6 +434,7 @@ public final class TripleAVLFile {
    * @throws IOException if an I/O error occurs.
    */
   public void clear() throws IOException {
+    if (decodedBlocks != null) decodedBlocks.clear();
     avlFile.clear();
     blockFile.clear();
   }
@@ -295,6 +476,7 @@ public final class TripleAVLFile {
    * @throws IOException EXCEPTION TO DO
    */
   public synchronized void close() throws IOException {
+    if (decodedBlocks != null) decodedBlocks.clear();
     try {
       if (avlFile != null) {
         avlFile.close();
@@ -313,6 +495,7 @@ public final class TripleAVLFile {
    * @throws IOException EXCEPTION TO DO
    */
   public synchronized void delete() throws IOException {
+    if (decodedBlocks != null) decodedBlocks.clear();
     try {
       try {
         if (avlFile != null) {
@@ -551,6 +734,15 @@ public final class TripleAVLFile {
 
     private Block cachedBlock = null;
 
+    /** The number of triples in {@link #cachedBlock}. */
+    private int cachedBlockNrTriples;
+
+    /** The encoded size of {@link #cachedBlock}, if the blocks are compressed. */
+    private int cachedBlockSize;
+
+    /** Collects the triples being added while the file is empty, or null. */
+    private TripleBulkLoader bulkLoader = null;
+
 
     /**
      * CONSTRUCTOR Phase TO DO
@@ -695,6 +887,13 @@ public final class TripleAVLFile {
     void syncAddTriples(long[][] triples) throws IOException {
       if (this != currentPhase) throw new IllegalStateException("Attempt to modify a read-only phase.");
 
+      if (bulkLoader != null || (bulkLoad && avlFilePhase.isEmpty())) {
+        // Defer building the file until all of the triples have been added.
+        if (bulkLoader == null) bulkLoader = new TripleBulkLoader(tripleComparator);
+        bulkLoader.add(triples);
+        return;
+      }
+
       Arrays.sort(triples, tripleComparator);
       try {
         for (int i = 0; i < triples.length; ++i) {
@@ -711,11 +910,134 @@ public final class TripleAVLFile {
     }
 
 
+    /**
+     * Builds the file from the triples collected while it was empty.  The
+     * triples are read in order and packed into full triple blocks, and the
+     * AVL tree is built from the bottom up, so no triple is searched for and
+     * no block is split.  Compressed blocks hold a varying number of triples,
+     * so the triples are read twice: once to find how many fit in each block,
+     * and again to build the file.  Called once all pending triples have been
+     * added.
+     *
+     * @throws IOException If the file could not be built.
+     */
+    void finishBulkLoad() throws IOException {
+      if (bulkLoader == null) return;
+
+      final TripleBulkLoader loader = bulkLoader;
+      bulkLoader = null;
+      try {
+        final long nrTriples = loader.finish();
+        final int[] blockTriples = compressed ? packBlocks(loader) : null;
+        final long nrBlocks = compressed ?
+            blockTriples.length : (nrTriples + MAX_TRIPLES - 1) / MAX_TRIPLES;
+
+        avlFilePhase.buildTree(nrBlocks, new AVLFile.PayloadSource() {
+          private long blockIndex = 0;
+          private long nrBuilt = 0;
+          private long[] triple = new long[SIZEOF_TRIPLE];
+
+          public void putPayload(AVLNode node) throws IOException {
+            // Spread the triples evenly over the blocks, unless they are
+            // compressed, when they are packed as found by packBlocks().
+            int nrBlockTriples = compressed ?
+                blockTriples[(int)blockIndex++] :
+                (int)(nrTriples * ++blockIndex / nrBlocks - nrBuilt);
+            Block tripleBlock = allocateTripleBlock();
+            for (int i = 0; i < nrBlockTriples; ++i) {
+              if (!loader.next(triple)) {
+                throw new IllegalStateException("Bulk load ran out of triples");
+              }
+              int pos = i * SIZEOF_TRIPLE;
+              tripleBlock.putLong(pos++, triple[0]);
+              tripleBlock.putLong(pos++, triple[1]);
+              tripleBlock.putLong(pos++, triple[2]);
+              tripleBlock.putLong(pos, triple[3]);
+              if (i == 0) {
+                node.putPayloadLong(IDX_LOW_TRIPLE, triple[0]);
+                node.putPayloadLong(IDX_LOW_TRIPLE + 1, triple[1]);
+                node.putPayloadLong(IDX_LOW_TRIPLE + 2, triple[2]);
+                node.putPayloadLong(IDX_LOW_TRIPLE + 3, triple[3]);
+              }
+            }
+            node.putPayloadLong(IDX_HIGH_TRIPLE, triple[0]);
+            node.putPayloadLong(IDX_HIGH_TRIPLE + 1, triple[1]);
+            node.putPayloadLong(IDX_HIGH_TRIPLE + 2, triple[2]);
+            node.putPayloadLong(IDX_HIGH_TRIPLE + 3, triple[3]);
+            node.putPayloadInt(IDX_NR_TRIPLES_I, nrBlockTriples);
+            node.putPayloadLong(IDX_BLOCK_ID, tripleBlock.getBlockId());
+            writeTripleBlock(tripleBlock, nrBlockTriples);
+            nrBuilt += nrBlockTriples;
+          }
+        });
+        nrFileTriples += nrTriples;
+      } finally {
+        loader.close();
+      }
+    }
+
+
+    /**
+     * Finds how many triples fit in each compressed block when the triples of
+     * a bulk load are packed in order, and then rewinds the triples.
+     *
+     * @param loader The sorted triples.
+     * @return The number of triples in each block.
+     * @throws IOException If the triples could not be read.
+     */
+    private int[] packBlocks(TripleBulkLoader loader) throws IOException {
+      int[] blockTriples = new int[16];
+      int nrBlocks = 0;
+      long[] prev = new long[SIZEOF_TRIPLE];
+      long[] triple = new long[SIZEOF_TRIPLE];
+      int nrTriples = 0;
+      int encodedSize = 0;
+      while (loader.next(triple)) {
+        int tripleSize = nrTriples == 0 ? 0 : codec.size(prev, triple);
+        if (nrTriples == maxTriples || encodedSize + tripleSize > BLOCK_SIZE) {
+          if (nrBlocks == blockTriples.length) {
+            blockTriples = Arrays.copyOf(blockTriples, nrBlocks * 2);
+          }
+          blockTriples[nrBlocks++] = nrTriples;
+          nrTriples = 0;
+        }
+        if (nrTriples == 0) {
+          encodedSize = TripleBlockCodec.HEADER_SIZE + codec.size(null, triple);
+        } else {
+          encodedSize += tripleSize;
+        }
+        nrTriples++;
+        long[] tmp = prev;
+        prev = triple;
+        triple = tmp;
+      }
+      if (nrTriples > 0) {
+        if (nrBlocks == blockTriples.length) {
+          blockTriples = Arrays.copyOf(blockTriples, nrBlocks + 1);
+        }
+        blockTriples[nrBlocks++] = nrTriples;
+      }
+      loader.rewind();
+      return Arrays.copyOf(blockTriples, nrBlocks);
+    }
+
+
+    /**
+     * Discards the triples collected while the file was empty.
+     */
+    void abortBulkLoad() {
+      if (bulkLoader != null) {
+        bulkLoader.close();
+        bulkLoader = null;
+      }
+    }
+
+
     private void releaseCache() throws IOException {
       try {
         if (cachedNode != null) cachedNode.release();
         if (cachedBlock != null) {
-          cachedBlock.write();
+          writeTripleBlock(cachedBlock, cachedBlockNrTriples);
         }
       } finally {
         cachedNode = null;
@@ -724,11 +1046,13 @@ public final class TripleAVLFile {
     }
 
 
-    private void releaseBlockToCache(Block block) throws IOException {
+    private void releaseBlockToCache(Block block, int nrTriples, int encodedSize) throws IOException {
       if (cachedBlock != null) {
-        cachedBlock.write();
+        writeTripleBlock(cachedBlock, cachedBlockNrTriples);
       }
       cachedBlock = block;
+      cachedBlockNrTriples = nrTriples;
+      cachedBlockSize = encodedSize;
     }
 
 
@@ -750,6 +1074,140 @@ public final class TripleAVLFile {
     }
 
 
+    /**
+     * Reads a triple block.  If the blocks are compressed then the decoded
+     * triples are returned, and they may be shared with other readers, so the
+     * block must not be modified.
+     *
+     * @param blockId The ID of the block.
+     * @return The triples of the block.
+     * @throws IOException If the block could not be read.
+     */
+    private Block getTripleBlock(long blockId) throws IOException {
+      if (!compressed) return blockFilePhase.readBlock(blockId);
+
+      Long key = new Long(blockId);
+      ByteBuffer triples = decodedBlocks.get(key);
+      if (triples == null) {
+        triples = codec.decode(blockFilePhase.readBlock(blockId));
+        decodedBlocks.put(key, triples);
+      }
+      return wrapTriples(blockId, triples.duplicate());
+    }
+
+
+    /**
+     * Gets a triple block that can be modified by this phase.  A compressed
+     * block is copied into a new buffer with room for a full block, unless it
+     * is already private to this phase.
+     *
+     * @param block The block to modify.
+     * @param nrTriples The number of triples in the block.
+     * @param isPrivate <code>true</code> if the block has already been returned
+     *      by this method or by {@link #allocateTripleBlock()}.
+     * @return The block to modify.  Its ID may be different to the ID of
+     *      <var>block</var>.
+     * @throws IOException If the block could not be copied.
+     */
+    private Block modifyTripleBlock(Block block, int nrTriples, boolean isPrivate) throws IOException {
+      if (!compressed) {
+        block.modify();
+        return block;
+      }
+      if (isPrivate) return block;
+
+      // Copy on write is handled by the block file, with the encoded block.
+      Block raw = blockFilePhase.readBlock(block.getBlockId());
+      raw.modify();
+      Block triples = wrapTriples(raw.getBlockId(), ByteBuffer.allocate(
+          maxTriples * SIZEOF_TRIPLE * Constants.SIZEOF_LONG
+      ));
+      triples.put(0, block, 0, nrTriples * SIZEOF_TRIPLE * Constants.SIZEOF_LONG);
+      return triples;
+    }
+
+
+    /**
+     * Allocates a new triple block.
+     *
+     * @return The new block.
+     * @throws IOException If the block could not be allocated.
+     */
+    private Block allocateTripleBlock() throws IOException {
+      Block raw = blockFilePhase.allocateBlock();
+      if (!compressed) return raw;
+
+      decodedBlocks.remove(new Long(raw.getBlockId()));
+      return wrapTriples(raw.getBlockId(), ByteBuffer.allocate(
+          maxTriples * SIZEOF_TRIPLE * Constants.SIZEOF_LONG
+      ));
+    }
+
+
+    /**
+     * Writes a triple block that was returned by {@link #modifyTripleBlock} or
+     * {@link #allocateTripleBlock()}.  Compressed blocks are encoded into the
+     * block file.
+     *
+     * @param block The block to write.
+     * @param nrTriples The number of triples in the block.
+     * @throws IOException If the block could not be written.
+     */
+    private void writeTripleBlock(Block block, int nrTriples) throws IOException {
+      if (!compressed) {
+        block.write();
+        return;
+      }
+
+      long blockId = block.getBlockId();
+      Block raw = blockFilePhase.readBlock(blockId);
+      codec.encode(block, nrTriples, raw);
+      raw.write();
+      decodedBlocks.remove(new Long(blockId));
+    }
+
+
+    /**
+     * Frees a triple block.
+     *
+     * @param blockId The ID of the block.
+     * @throws IOException If the block could not be freed.
+     */
+    private void freeTripleBlock(long blockId) throws IOException {
+      blockFilePhase.freeBlock(blockId);
+      if (compressed) decodedBlocks.remove(new Long(blockId));
+    }
+
+
+    /**
+     * Gets the position to split a full triple block at, when the new triple
+     * goes somewhere in the middle of the block.  Compressed blocks are split
+     * so that each half has about the same encoded size.
+     *
+     * @param block The triples of the block.
+     * @param nrTriples The number of triples in the block.
+     * @param encodedSize The encoded size of the block.
+     * @return The index of the first triple to move to the new block.
+     */
+    private int getSplitPoint(Block block, int nrTriples, int encodedSize) {
+      if (!compressed) return nrTriples / 2;
+
+      long[] prev = new long[SIZEOF_TRIPLE];
+      long[] triple = new long[SIZEOF_TRIPLE];
+      int size = TripleBlockCodec.HEADER_SIZE;
+      int splitPoint = 0;
+      while (splitPoint < nrTriples - 1 && size < encodedSize / 2) {
+        block.get(splitPoint * SIZEOF_TRIPLE, triple);
+        size += codec.size(splitPoint == 0 ? null : prev, triple);
+        long[] tmp = prev;
+        prev = triple;
+        triple = tmp;
+        splitPoint++;
+      }
+      return Math.max(splitPoint, 1);
+    }
+
+
     /**
      * Adds a triple to the graph.
      *
@@ -770,7 +1228,7 @@ public final class TripleAVLFile {
 
       if (findResult == null) {
         // Tree is empty.  Create a node and allocate a triple block.
-        Block newTripleBlock = blockFilePhase.allocateBlock();
+        Block newTripleBlock = allocateTripleBlock();
         AVLNode newNode = avlFilePhase.newAVLNodeInstance();
         newNode.putPayloadLong(IDX_LOW_TRIPLE, triple[0]);
         newNode.putPayloadLong(IDX_LOW_TRIPLE + 1, triple[1]);
@@ -788,7 +1246,10 @@ public final class TripleAVLFile {
 
         newTripleBlock.put(0, triple);
         //newTripleBlock.write();
-        releaseBlockToCache(newTripleBlock);
+        releaseBlockToCache(
+            newTripleBlock, 1,
+            compressed ? TripleBlockCodec.HEADER_SIZE + codec.size(null, triple) : 0
+        );
 
         avlFilePhase.insertFirst(newNode);
         releaseNodeToCache(newNode);
@@ -816,8 +1277,8 @@ public final class TripleAVLFile {
 
         // Preferentially choose the lower node.
         if (
-            findResult[0].getPayloadInt(IDX_NR_TRIPLES_I) < MAX_TRIPLES ||
-            findResult[1].getPayloadInt(IDX_NR_TRIPLES_I) == MAX_TRIPLES
+            findResult[0].getPayloadInt(IDX_NR_TRIPLES_I) < maxTriples ||
+            findResult[1].getPayloadInt(IDX_NR_TRIPLES_I) == maxTriples
         ) {
           node = findResult[0];
         } else {
@@ -828,6 +1289,8 @@ public final class TripleAVLFile {
 
       Block tripleBlock = null;
       boolean tripleBlockDirty = false;
+      boolean tripleBlockPrivate = false;
+      int encodedSize = 0;
       try {
         int nrTriples = node.getPayloadInt(IDX_NR_TRIPLES_I);
         if (findResult.length == 1) {
@@ -854,10 +1317,13 @@ public final class TripleAVLFile {
         long blockId = node.getPayloadLong(IDX_BLOCK_ID);
         tripleBlock = getCachedBlock(blockId);
         if (tripleBlock == null) {
-          tripleBlock = blockFilePhase.readBlock(blockId);
+          tripleBlock = getTripleBlock(blockId);
+          if (compressed) encodedSize = codec.encodedSize(tripleBlock, nrTriples);
         } else {
           // Blocks in the cache are always dirty.
           tripleBlockDirty = true;
+          tripleBlockPrivate = true;
+          encodedSize = cachedBlockSize;
         }
 
         int index;
@@ -876,22 +1342,31 @@ public final class TripleAVLFile {
         // Tell the node that it will be modified.
         node.modify();
 
+        // The growth of a compressed block when the triple is inserted.
+        int insertSize = compressed ?
+            codec.insertSize(tripleBlock, nrTriples, index, triple) : 0;
+
         // Split the node if the triple block is full.
-        if (nrTriples == MAX_TRIPLES) {
+        if (
+            nrTriples == maxTriples ||
+            (compressed && encodedSize + insertSize > BLOCK_SIZE)
+        ) {
           // Split the block.  Allocate a new node and block to take the upper
           // portion of the current block.
           //int splitPoint = MAX_TRIPLES / 2;
           int splitPoint = index == 0 ? 0 : (
-              index == MAX_TRIPLES ? MAX_TRIPLES : MAX_TRIPLES / 2
+              index == nrTriples ? nrTriples :
+              getSplitPoint(tripleBlock, nrTriples, encodedSize)
           );
           assert splitPoint > 0 || index == 0;
-          assert splitPoint < MAX_TRIPLES || index == MAX_TRIPLES;
+          assert splitPoint < nrTriples || index == nrTriples;
+          int nrNewTriples = nrTriples - splitPoint;
 
-          Block newTripleBlock = blockFilePhase.allocateBlock();
+          Block newTripleBlock = allocateTripleBlock();
           AVLNode newNode = avlFilePhase.newAVLNodeInstance();
 
           // Low triple.
-          if (splitPoint < MAX_TRIPLES) {
+          if (splitPoint < nrTriples) {
             int pos = splitPoint * SIZEOF_TRIPLE;
             newNode.putPayloadLong(
                 IDX_LOW_TRIPLE, tripleBlock.getLong(pos++)
@@ -908,7 +1383,7 @@ public final class TripleAVLFile {
           }
 
           // High triple.
-          if (index < MAX_TRIPLES) {
+          if (index < nrTriples) {
             int pos = IDX_HIGH_TRIPLE;
             newNode.putPayloadLong(
                 IDX_HIGH_TRIPLE, node.getPayloadLong(pos++)
@@ -924,8 +1399,8 @@ public final class TripleAVLFile {
             );
           }
 
-          if (index < MAX_TRIPLES && index <= splitPoint) {
-            newNode.putPayloadInt(IDX_NR_TRIPLES_I, MAX_TRIPLES - splitPoint);
+          if (index < nrTriples && index <= splitPoint) {
+            newNode.putPayloadInt(IDX_NR_TRIPLES_I, nrNewTriples);
             newNode.putPayloadLong(
                 IDX_BLOCK_ID, newTripleBlock.getBlockId()
             );
@@ -935,8 +1410,8 @@ public final class TripleAVLFile {
           // later or will not change.
           if (index != splitPoint) {
             // If splitPoint is zero then index must also be zero.
-            // If splitPoint is MAX_TRIPLES then index is also MAX_TRIPLES.
-            // If splitPoint is MAX_TRIPLES then no change is required.
+            // If splitPoint is nrTriples then index is also nrTriples.
+            // If splitPoint is nrTriples then no change is required.
             int pos = (splitPoint - 1) * SIZEOF_TRIPLE;
             node.putPayloadLong(
                 IDX_HIGH_TRIPLE, tripleBlock.getLong(pos++)
@@ -953,12 +1428,11 @@ public final class TripleAVLFile {
           }
 
           // Copy the top portion of the full block to the new block.
-          if (splitPoint < MAX_TRIPLES) {
+          if (splitPoint < nrTriples) {
             newTripleBlock.put(
                 0, tripleBlock,
                 splitPoint * SIZEOF_TRIPLE * Constants.SIZEOF_LONG,
-                (MAX_TRIPLES - splitPoint) * SIZEOF_TRIPLE *
-                    Constants.SIZEOF_LONG
+                nrNewTriples * SIZEOF_TRIPLE * Constants.SIZEOF_LONG
             );
           }
 
@@ -980,32 +1454,39 @@ public final class TripleAVLFile {
           int li = AVLFile.leafIndex(findResult);
           findResult[li].insert(newNode, 1 - li);
 
-          if (index == MAX_TRIPLES || index > splitPoint) {
-            nrTriples = MAX_TRIPLES - splitPoint;
+          if (index == nrTriples || index > splitPoint) {
+            nrTriples = nrNewTriples;
             index -= splitPoint;
-            if (tripleBlockDirty) tripleBlock.write();
+            if (tripleBlockDirty) writeTripleBlock(tripleBlock, splitPoint);
             tripleBlock = newTripleBlock;
+            tripleBlockPrivate = true;
             node.write();
             node.release();
             node = newNode;
           } else {
             nrTriples = splitPoint;
-            newTripleBlock.write();
+            writeTripleBlock(newTripleBlock, nrNewTriples);
             newNode.write();
             newNode.release();
           }
 
+          if (compressed) {
+            encodedSize = codec.encodedSize(tripleBlock, nrTriples);
+            insertSize = codec.insertSize(tripleBlock, nrTriples, index, triple);
+          }
+
           // In case nodes are written by insert().
           node.modify();
         }
 
         // Duplicate the triple block.
-        tripleBlock.modify();
+        tripleBlock = modifyTripleBlock(tripleBlock, nrTriples, tripleBlockPrivate);
         node.putPayloadLong(IDX_BLOCK_ID, tripleBlock.getBlockId());
 
         insertTripleInBlock(tripleBlock, nrTriples, index, triple);
         //tripleBlock.write();
         tripleBlockDirty = true;
+        encodedSize += insertSize;
 
         node.putPayloadInt(IDX_NR_TRIPLES_I, nrTriples + 1);
         if (index == nrTriples) {
@@ -1025,7 +1506,11 @@ public final class TripleAVLFile {
         return;
       } finally {
         if (tripleBlock != null) {
-          if (tripleBlockDirty) releaseBlockToCache(tripleBlock);
+          if (tripleBlockDirty) {
+            releaseBlockToCache(
+                tripleBlock, node.getPayloadInt(IDX_NR_TRIPLES_I), encodedSize
+            );
+          }
         }
         AVLFile.release(findResult);
         releaseNodeToCache(node);
@@ -1081,7 +1566,7 @@ public final class TripleAVLFile {
 
       if (nrTriples == 1) {
         // Free the triple block and the avl node.
-        blockFilePhase.freeBlock(node.getPayloadLong(IDX_BLOCK_ID));
+        freeTripleBlock(node.getPayloadLong(IDX_BLOCK_ID));
         node.remove();
         decNrTriples();
         return;
@@ -1120,7 +1605,7 @@ public final class TripleAVLFile {
       }
 
       // Get the triple block.
-      Block tripleBlock = blockFilePhase.readBlock(node.getPayloadLong(IDX_BLOCK_ID));
+      Block tripleBlock = getTripleBlock(node.getPayloadLong(IDX_BLOCK_ID));
       try {
         // Find the triple.
         int index = binarySearch(tripleBlock, tripleComparator, 0, nrTriples, triple);
@@ -1129,11 +1614,12 @@ public final class TripleAVLFile {
 
         // Duplicate both the AVLNode and the triple block.
         node.modify();
-        tripleBlock.modify();
+        tripleBlock = modifyTripleBlock(tripleBlock, nrTriples, false);
         node.putPayloadLong(IDX_BLOCK_ID, tripleBlock.getBlockId());
 
+        // Removing a triple never makes a compressed block larger.
         removeTripleFromBlock(tripleBlock, nrTriples, index);
-        tripleBlock.write();
+        writeTripleBlock(tripleBlock, nrTriples - 1);
 
         node.putPayloadInt(IDX_NR_TRIPLES_I, nrTriples - 1);
         if (index == nrTriples - 1) {
@@ -1258,7 +1744,7 @@ public final class TripleAVLFile {
         if (nrTriples == 2) return false;
 
         // Get the triple block.
-        Block tripleBlock = blockFilePhase.readBlock(node.getPayloadLong(IDX_BLOCK_ID));
+        Block tripleBlock = getTripleBlock(node.getPayloadLong(IDX_BLOCK_ID));
 
         // Find the triple.
         int index = binarySearch(tripleBlock, tripleComparator, 0, nrTriples, triple);
@@ -1317,7 +1803,7 @@ public final class TripleAVLFile {
         if (nrTriples == 2) return false;
 
         // Get the triple block.
-        Block tripleBlock = blockFilePhase.readBlock(node.getPayloadLong(IDX_BLOCK_ID));
+        Block tripleBlock = getTripleBlock(node.getPayloadLong(IDX_BLOCK_ID));
 
         // Find the triple.
         int index = binarySearch(tripleBlock, tripleComparator, 0, nrTriples, triple);
@@ -1381,7 +1867,7 @@ public final class TripleAVLFile {
         // already checked the only two triples for this node.
         if (nrTriples == 2) return false;
         // Get the triple block.
-        Block tripleBlock = blockFilePhase.readBlock(node.getPayloadLong(IDX_BLOCK_ID));
+        Block tripleBlock = getTripleBlock(node.getPayloadLong(IDX_BLOCK_ID));
 
         // Find the triple.
         int index = binarySearch(tripleBlock, tripleComparator, 0, nrTriples, triple);
@@ -1434,13 +1920,20 @@ public final class TripleAVLFile {
 
       do {
         int nrTriples = node.getPayloadInt(IDX_NR_TRIPLES_I);
-        if (nrTriples < 1 || nrTriples > MAX_TRIPLES) {
+        if (nrTriples < 1 || nrTriples > maxTriples) {
           throw new Error(
               "NR_TRIPLES (" + nrTriples + ") is out of bounds in node: " +
               node.getId() + " (index " + nodeIndex + ")"
           );
         }
 
+        if (counted && node.getRank() != totalNrTriples) {
+          throw new Error(
+              "Rank (" + node.getRank() + ") does not match the number of preceding triples (" +
+              totalNrTriples + ") in node: " + node.getId() + " (index " + nodeIndex + ")"
+          );
+        }
+
         triple[0] = node.getPayloadLong(IDX_LOW_TRIPLE);
         triple[1] = node.getPayloadLong(IDX_LOW_TRIPLE + 1);
         triple[2] = node.getPayloadLong(IDX_LOW_TRIPLE + 2);
@@ -1460,7 +1953,7 @@ public final class TripleAVLFile {
 
         Block block;
         try {
-          block = blockFilePhase.readBlock(node.getPayloadLong(IDX_BLOCK_ID));
+          block = getTripleBlock(node.getPayloadLong(IDX_BLOCK_ID));
         } catch (IOException ex) {
           throw new Error("I/O Error", ex);
         }
@@ -1587,7 +2080,7 @@ public final class TripleAVLFile {
         }
 
         // Get the triple block.
-        Block tripleBlock = blockFilePhase.readBlock(node.getPayloadLong(IDX_BLOCK_ID));
+        Block tripleBlock = getTripleBlock(node.getPayloadLong(IDX_BLOCK_ID));
 
         // Find the triple.
         int index = binarySearch(tripleBlock, tripleComparator, 0, nrTriples, triple);
@@ -1647,7 +2140,7 @@ public final class TripleAVLFile {
       }
 
       // Get the triple block.
-      Block tripleBlock = blockFilePhase.readBlock(node.getPayloadLong(IDX_BLOCK_ID));
+      Block tripleBlock = getTripleBlock(node.getPayloadLong(IDX_BLOCK_ID));
 
       // Find the triple.
       int index = binarySearch(tripleBlock, tripleComparator, 0, nrTriples, triple);
@@ -1850,6 +2343,12 @@ public final class TripleAVLFile {
         if (start == null) return nrTriples = 0;
 
         long n = endOffset - start.offset;
+        if (counted) {
+          // the triples in the nodes from the start node up to the end node
+          long endRank = (end.node != null) ? end.node.getRank() : Phase.this.nrFileTriples;
+          return nrTriples = n + endRank - start.node.getRank();
+        }
+
         AVLNode curNode = start.node;
         curNode.incRefCount();
         while (curNode != null && curNode.getId() != endBlockId) {
@@ -2231,7 +2730,7 @@ public final class TripleAVLFile {
         if (tripleBlock == null && node != null) {
           nrBlockTriples = node.getPayloadInt(IDX_NR_TRIPLES_I);
           try {
-            tripleBlock = blockFilePhase.readBlock(node.getPayloadLong(IDX_BLOCK_ID));
+            tripleBlock = getTripleBlock(node.getPayloadLong(IDX_BLOCK_ID));
           } catch (IOException ex) {
             throw new TuplesException("I/O error", ex);
           }
@@ -0,0 +1,266 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.store.statement.xa;
+
+// Java 2 standard packages
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+// Locally written packages
+import org.mulgara.store.xa.Block;
+
+/**
+ * Encodes the sorted triples of a {@link TripleAVLFile} triple block into the
+ * compressed block format, and decodes them again.
+ * <p>
+ * A compressed block starts with the number of triples as an unsigned short.
+ * The first triple follows as four variable-length numbers, in the sort order
+ * of the file.  Each following triple is encoded against the triple before it:
+ * the columns that both triples share are left out, the first column that
+ * differs is written as the difference from the previous value, and the
+ * remaining columns are written in full.  The position of the first different
+ * column is kept in the low two bits of the difference, and the third bit marks
+ * a difference too large to share a number, which follows on its own.
+ * </p>
+ * <p>
+ * Decoded triples are held in the same layout as an uncompressed block, of
+ * {@link #SIZEOF_TRIPLE} longs for each triple in column order.
+ * </p>
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+final class TripleBlockCodec {
+
+  /** The number of longs in a triple. */
+  static final int SIZEOF_TRIPLE = 4;
+
+  /** The size of the header holding the number of triples, in bytes. */
+  static final int HEADER_SIZE = 2;
+
+  /** The flag for a difference that is written after its code. */
+  private static final long LARGE_DELTA = 4;
+
+  /** The number of low bits in a code that do not hold the difference. */
+  private static final int CODE_BITS = 3;
+
+  /** The size of an encoded block, in bytes. */
+  private final int blockSize;
+
+  /** The columns of a triple, in sort order. */
+  private final int[] sortOrder;
+
+  /**
+   * Creates a codec for the blocks of a file.
+   *
+   * @param blockSize The size of an encoded block, in bytes.
+   * @param sortOrder The order of the columns of the file.
+   */
+  TripleBlockCodec(int blockSize, int[] sortOrder) {
+    this.blockSize = blockSize;
+    this.sortOrder = sortOrder;
+  }
+
+  /**
+   * Gets the number of bytes needed to encode a triple after another triple.
+   *
+   * @param prev The previous triple, or <code>null</code> if this is the first triple in a block.
+   * @param triple The triple to encode.  This sorts after <var>prev</var>.
+   * @return The size of the encoded triple, in bytes.
+   */
+  int size(long[] prev, long[] triple) {
+    int c = 0;
+    if (prev != null) {
+      while (c < SIZEOF_TRIPLE && triple[sortOrder[c]] == prev[sortOrder[c]]) c++;
+      assert c < SIZEOF_TRIPLE : "Duplicate triple in block";
+    }
+    int size = 0;
+    if (prev != null) {
+      long delta = triple[sortOrder[c]] - prev[sortOrder[c]];
+      size = isLarge(delta) ? varintSize(LARGE_DELTA) + varintSize(delta) : varintSize(delta << CODE_BITS);
+      c++;
+    }
+    for (; c < SIZEOF_TRIPLE; c++) size += varintSize(triple[sortOrder[c]]);
+    return size;
+  }
+
+  /**
+   * Gets the number of bytes needed to encode the triples of a block.
+   *
+   * @param block The decoded triples.
+   * @param nrTriples The number of triples in the block.
+   * @return The size of the encoded block, in bytes.
+   */
+  int encodedSize(Block block, int nrTriples) {
+    long[] prev = new long[SIZEOF_TRIPLE];
+    long[] triple = new long[SIZEOF_TRIPLE];
+    int size = HEADER_SIZE;
+    for (int i = 0; i < nrTriples; i++) {
+      block.get(i * SIZEOF_TRIPLE, triple);
+      size += size(i == 0 ? null : prev, triple);
+      long[] tmp = prev;
+      prev = triple;
+      triple = tmp;
+    }
+    return size;
+  }
+
+  /**
+   * Gets the number of bytes that the encoding of a block grows by when a
+   * triple is inserted.
+   *
+   * @param block The decoded triples.
+   * @param nrTriples The number of triples in the block.
+   * @param index The position to insert the triple at.
+   * @param triple The triple to insert.
+   * @return The number of extra bytes needed to encode the block.
+   */
+  int insertSize(Block block, int nrTriples, int index, long[] triple) {
+    long[] prev = null;
+    if (index > 0) {
+      prev = new long[SIZEOF_TRIPLE];
+      block.get((index - 1) * SIZEOF_TRIPLE, prev);
+    }
+    int size = size(prev, triple);
+    if (index < nrTriples) {
+      long[] next = new long[SIZEOF_TRIPLE];
+      block.get(index * SIZEOF_TRIPLE, next);
+      size += size(triple, next) - size(prev, next);
+    }
+    return size;
+  }
+
+  /**
+   * Encodes the triples of a block.
+   *
+   * @param block The decoded triples.
+   * @param nrTriples The number of triples to encode.
+   * @param raw The block to write the encoded triples to.
+   * @throws IOException If the triples do not fit in the block.
+   */
+  void encode(Block block, int nrTriples, Block raw) throws IOException {
+    assert nrTriples <= 0xffff;
+    ByteBuffer out = ByteBuffer.allocate(blockSize);
+    out.putShort((short)nrTriples);
+    long[] prev = new long[SIZEOF_TRIPLE];
+    long[] triple = new long[SIZEOF_TRIPLE];
+    try {
+      for (int i = 0; i < nrTriples; i++) {
+        block.get(i * SIZEOF_TRIPLE, triple);
+        int c = 0;
+        if (i > 0) {
+          while (triple[sortOrder[c]] == prev[sortOrder[c]]) c++;
+          long delta = triple[sortOrder[c]] - prev[sortOrder[c]];
+          if (isLarge(delta)) {
+            putVarint(out, LARGE_DELTA | c);
+            putVarint(out, delta);
+          } else {
+            putVarint(out, (delta << CODE_BITS) | c);
+          }
+          c++;
+        }
+        for (; c < SIZEOF_TRIPLE; c++) putVarint(out, triple[sortOrder[c]]);
+        long[] tmp = prev;
+        prev = triple;
+        triple = tmp;
+      }
+    } catch (BufferOverflowException e) {
+      throw new IOException("Triples do not fit in a compressed block: " + nrTriples);
+    }
+    out.flip();
+    raw.put(0, out);
+  }
+
+  /**
+   * Decodes the triples of a block.
+   *
+   * @param raw The encoded block.
+   * @return A buffer holding the decoded triples.  Its capacity is the size of the triples.
+   */
+  ByteBuffer decode(Block raw) {
+    ByteBuffer in = raw.getSlice(0, blockSize);
+    int nrTriples = in.getShort() & 0xffff;
+    ByteBuffer triples = ByteBuffer.allocate(nrTriples * SIZEOF_TRIPLE * 8);
+    long[] triple = new long[SIZEOF_TRIPLE];
+    for (int i = 0; i < nrTriples; i++) {
+      int c = 0;
+      if (i > 0) {
+        long code = getVarint(in);
+        c = (int)(code & 3);
+        long delta = (code & LARGE_DELTA) != 0 ? getVarint(in) : code >>> CODE_BITS;
+        triple[sortOrder[c]] += delta;
+        c++;
+      }
+      for (; c < SIZEOF_TRIPLE; c++) triple[sortOrder[c]] = getVarint(in);
+      for (int j = 0; j < SIZEOF_TRIPLE; j++) triples.putLong(triple[j]);
+    }
+    triples.clear();
+    return triples;
+  }
+
+  /**
+   * Tests if a difference is too large to share a number with the column position.
+   *
+   * @param delta The difference, as an unsigned number.
+   * @return <code>true</code> if the difference must be written separately.
+   */
+  private static boolean isLarge(long delta) {
+    return (delta >>> (64 - CODE_BITS)) != 0;
+  }
+
+  /**
+   * Gets the size of an unsigned variable-length number.
+   *
+   * @param value The number.
+   * @return The number of bytes needed to write the number.
+   */
+  static int varintSize(long value) {
+    int size = 1;
+    while ((value >>>= 7) != 0) size++;
+    return size;
+  }
+
+  /**
+   * Writes an unsigned variable-length number, 7 bits to a byte with the lowest bits first.
+   *
+   * @param out The buffer to write to.
+   * @param value The number to write.
+   */
+  private static void putVarint(ByteBuffer out, long value) {
+    while ((value & ~0x7fL) != 0) {
+      out.put((byte)((value & 0x7f) | 0x80));
+      value >>>= 7;
+    }
+    out.put((byte)value);
+  }
+
+  /**
+   * Reads an unsigned variable-length number.
+   *
+   * @param in The buffer to read from.
+   * @return The number that was read.
+   */
+  private static long getVarint(ByteBuffer in) {
+    long value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = in.get();
+      value |= (long)(b & 0x7f) << shift;
+      shift += 7;
+    } while (b < 0);
+    return value;
+  }
+
+}
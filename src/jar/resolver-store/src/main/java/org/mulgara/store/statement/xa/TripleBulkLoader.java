@@ -0,0 +1,513 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.store.statement.xa;
+
+// Java 2 standard packages
+import java.io.*;
+import java.util.*;
+
+// Third party packages
+import org.apache.log4j.Logger;
+
+// Locally written packages
+import org.mulgara.util.Constants;
+import org.mulgara.util.TempDir;
+
+/**
+ * Collects the triples being loaded into an empty {@link TripleAVLFile}, and sorts
+ * them externally so the file can be built in a single sequential pass.
+ *
+ * Triples are held in memory until a run of {@link #RUN_SIZE_PROPERTY} triples has
+ * been collected. The run is then sorted and written to a temporary file, without
+ * duplicates. Once all the triples have been added the runs are merged, in several
+ * passes if there are too many to read at once, and the merged triples are read in
+ * order with {@link #next(long[])}. If all the triples fit in a single run then
+ * nothing is written to disk.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+final class TripleBulkLoader {
+
+  private final static Logger logger = Logger.getLogger(TripleBulkLoader.class);
+
+  /** The property for the number of triples sorted in memory for each run. */
+  public static final String RUN_SIZE_PROPERTY = "mulgara.xa.bulkLoadRunSize";
+
+  /** The default run size. This is the most triples that a full write queue can hold. */
+  static final int DEFAULT_RUN_SIZE = 500000;
+
+  /** The most runs that are merged at once. */
+  static final int DEFAULT_MERGE_WIDTH = 64;
+
+  /** The size of the buffer for each run being read or written, in bytes. */
+  private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+  private final static String RUNFILE_EXT = "_run";
+
+  private final static int SIZEOF_TRIPLE = 4;
+
+  /** The number of triples sorted in memory for each run. */
+  private static volatile int runSize = getRunSize();
+
+  /** The most runs that are merged at once. */
+  private static volatile int mergeWidth = DEFAULT_MERGE_WIDTH;
+
+  /** The order of the triples. */
+  private final Comparator<Object> comparator;
+
+  /** The triples that have not been written to a run yet. */
+  private final List<long[][]> batches = new ArrayList<long[][]>();
+
+  /** The number of triples in {@link #batches}. */
+  private int batchTriples = 0;
+
+  /** The file holding the sorted runs, or <code>null</code> if none have been written. */
+  private File runFile = null;
+
+  /** The stream writing runs to {@link #runFile}. */
+  private DataOutputStream out = null;
+
+  /** The offsets of each run in {@link #runFile}, in triples. */
+  private long[] runStarts = new long[16];
+
+  /** The number of triples in each run in {@link #runFile}. */
+  private long[] runLengths = new long[16];
+
+  /** The number of runs in {@link #runFile}. */
+  private int nrRuns = 0;
+
+  /** The number of triples written to {@link #runFile}. */
+  private long fileTriples = 0;
+
+  /** The triples when they all fit in memory, sorted without duplicates. */
+  private long[][] memoryRun = null;
+
+  /** The position of the next triple in {@link #memoryRun}. */
+  private int memoryPosition = 0;
+
+  /** The runs being merged, ordered by their current triples. */
+  private PriorityQueue<RunReader> merge = null;
+
+  /** The last triple returned, for skipping duplicates. Null before the first triple. */
+  private long[] lastTriple = null;
+
+
+  /**
+   * Creates an empty loader.
+   *
+   * @param comparator The order of the triples.
+   */
+  TripleBulkLoader(Comparator<Object> comparator) {
+    this.comparator = comparator;
+  }
+
+
+  /**
+   * Adds a batch of triples. The array is kept until it is written to a run, and may
+   * be reordered.
+   *
+   * @param triples The triples to add. May contain duplicates.
+   * @throws IOException If a run could not be written.
+   */
+  void add(long[][] triples) throws IOException {
+    if (merge != null || memoryRun != null) throw new IllegalStateException("Triples added after loading started");
+    batches.add(triples);
+    batchTriples += triples.length;
+    if (batchTriples >= runSize) writeRun();
+  }
+
+
+  /**
+   * Finishes adding triples, and counts the distinct triples. Once this has been
+   * called the triples can be read with {@link #next(long[])}.
+   *
+   * @return The number of distinct triples added.
+   * @throws IOException If the runs could not be written or read.
+   */
+  long finish() throws IOException {
+    if (runFile == null) {
+      // everything fits in memory
+      memoryRun = distinct(sortBatches());
+      memoryPosition = 0;
+      return memoryRun.length;
+    }
+
+    if (batchTriples > 0) writeRun();
+    out.close();
+    out = null;
+    while (nrRuns > mergeWidth) mergePass();
+
+    long count = 0;
+    if (nrRuns > 1) {
+      // a run only has distinct triples, but the same triple may be in more than one run
+      startMerge();
+      long[] triple = new long[SIZEOF_TRIPLE];
+      while (next(triple)) count++;
+    } else if (nrRuns == 1) {
+      count = runLengths[0];
+    }
+    startMerge();
+    if (logger.isDebugEnabled()) logger.debug("Merging " + nrRuns + " runs of " + count + " distinct triples");
+    return count;
+  }
+
+
+  /**
+   * Reads the next distinct triple, in order.
+   *
+   * @param triple The array to put the triple into.
+   * @return <code>false</code> if there are no more triples.
+   * @throws IOException If the runs could not be read.
+   */
+  boolean next(long[] triple) throws IOException {
+    if (memoryRun != null) {
+      if (memoryPosition == memoryRun.length) return false;
+      System.arraycopy(memoryRun[memoryPosition++], 0, triple, 0, triple.length);
+      return true;
+    }
+    if (merge == null) throw new IllegalStateException("Triples read before loading finished");
+
+    RunReader reader;
+    do {
+      reader = merge.poll();
+      if (reader == null) return false;
+      System.arraycopy(reader.triple, 0, triple, 0, triple.length);
+      if (reader.advance()) merge.add(reader);
+      else reader.close();
+    } while (lastTriple != null && comparator.compare(triple, lastTriple) == 0);
+
+    if (lastTriple == null) lastTriple = new long[triple.length];
+    System.arraycopy(triple, 0, lastTriple, 0, triple.length);
+    return true;
+  }
+
+
+  /**
+   * Starts reading the triples again from the first triple.  Only valid once
+   * {@link #finish()} has been called.
+   *
+   * @throws IOException If the runs could not be opened.
+   */
+  void rewind() throws IOException {
+    if (memoryRun != null) {
+      memoryPosition = 0;
+      return;
+    }
+    if (out != null) throw new IllegalStateException("Triples read before loading finished");
+    startMerge();
+  }
+
+
+  /**
+   * Releases the memory and deletes the temporary file.
+   */
+  void close() {
+    batches.clear();
+    memoryRun = null;
+    closeMerge();
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException e) {
+        logger.warn("Unable to close " + runFile, e);
+      }
+      out = null;
+    }
+    if (runFile != null) {
+      if (!runFile.delete()) logger.warn("Unable to delete " + runFile);
+      runFile = null;
+    }
+  }
+
+
+  /**
+   * Sorts the triples held in memory, and appends them to the run file as a new run.
+   *
+   * @throws IOException If the run could not be written.
+   */
+  private void writeRun() throws IOException {
+    long[][] triples = sortBatches();
+    if (runFile == null) {
+      runFile = TempDir.createTempFile("triples", RUNFILE_EXT);
+      out = openOutput(runFile);
+    }
+
+    long length = 0;
+    long[] previous = null;
+    for (int i = 0; i < triples.length; i++) {
+      long[] triple = triples[i];
+      triples[i] = null; // Allow early garbage collection.
+      if (previous != null && comparator.compare(triple, previous) == 0) continue;
+      writeTriple(out, triple);
+      previous = triple;
+      length++;
+    }
+    addRun(fileTriples, length);
+    fileTriples += length;
+  }
+
+
+  /**
+   * Merges groups of runs into longer runs, in a new file.
+   *
+   * @throws IOException If the runs could not be read or written.
+   */
+  private void mergePass() throws IOException {
+    File oldFile = runFile;
+    long[] oldStarts = runStarts;
+    long[] oldLengths = runLengths;
+    int oldRuns = nrRuns;
+
+    runFile = TempDir.createTempFile("triples", RUNFILE_EXT);
+    runStarts = new long[16];
+    runLengths = new long[16];
+    nrRuns = 0;
+    fileTriples = 0;
+    DataOutputStream mergeOut = openOutput(runFile);
+    try {
+      long[] triple = new long[SIZEOF_TRIPLE];
+      for (int first = 0; first < oldRuns; first += mergeWidth) {
+        startMerge(oldFile, oldStarts, oldLengths, first, Math.min(first + mergeWidth, oldRuns));
+        long length = 0;
+        while (next(triple)) {
+          writeTriple(mergeOut, triple);
+          length++;
+        }
+        addRun(fileTriples, length);
+        fileTriples += length;
+      }
+    } finally {
+      closeMerge();
+      mergeOut.close();
+      if (!oldFile.delete()) logger.warn("Unable to delete " + oldFile);
+    }
+  }
+
+
+  /**
+   * Starts merging all of the runs in the run file.
+   *
+   * @throws IOException If the runs could not be opened.
+   */
+  private void startMerge() throws IOException {
+    startMerge(runFile, runStarts, runLengths, 0, nrRuns);
+  }
+
+
+  /**
+   * Starts merging a range of runs.
+   *
+   * @param file The file holding the runs.
+   * @param starts The offsets of the runs, in triples.
+   * @param lengths The number of triples in each run.
+   * @param first The first run to merge.
+   * @param end The run after the last run to merge.
+   * @throws IOException If the runs could not be opened.
+   */
+  private void startMerge(File file, long[] starts, long[] lengths, int first, int end) throws IOException {
+    closeMerge();
+    merge = new PriorityQueue<RunReader>(Math.max(end - first, 1), new Comparator<RunReader>() {
+      public int compare(RunReader r1, RunReader r2) {
+        return comparator.compare(r1.triple, r2.triple);
+      }
+    });
+    lastTriple = null;
+    for (int r = first; r < end; r++) {
+      if (lengths[r] == 0) continue;
+      RunReader reader = new RunReader(file, starts[r], lengths[r]);
+      merge.add(reader);
+    }
+  }
+
+
+  /**
+   * Closes any runs that are being merged.
+   */
+  private void closeMerge() {
+    if (merge != null) {
+      for (RunReader reader: merge) reader.close();
+      merge = null;
+    }
+  }
+
+
+  /**
+   * Sorts all of the triples held in memory, and stops holding them.
+   *
+   * @return The sorted triples.
+   */
+  private long[][] sortBatches() {
+    long[][] triples;
+    if (batches.size() == 1) {
+      triples = batches.get(0);
+    } else {
+      triples = new long[batchTriples][];
+      int pos = 0;
+      for (long[][] batch: batches) {
+        System.arraycopy(batch, 0, triples, pos, batch.length);
+        pos += batch.length;
+      }
+    }
+    batches.clear();
+    batchTriples = 0;
+    Arrays.sort(triples, comparator);
+    return triples;
+  }
+
+
+  /**
+   * Removes the duplicates from sorted triples.
+   *
+   * @param triples The sorted triples.
+   * @return The triples without duplicates. This may be the same array.
+   */
+  private long[][] distinct(long[][] triples) {
+    int length = 0;
+    for (int i = 0; i < triples.length; i++) {
+      if (length == 0 || comparator.compare(triples[i], triples[length - 1]) != 0) triples[length++] = triples[i];
+    }
+    return length == triples.length ? triples : Arrays.copyOf(triples, length);
+  }
+
+
+  /**
+   * Records a run that has been written to the run file.
+   *
+   * @param start The offset of the run, in triples.
+   * @param length The number of triples in the run.
+   */
+  private void addRun(long start, long length) {
+    if (nrRuns == runStarts.length) {
+      runStarts = Arrays.copyOf(runStarts, nrRuns * 2);
+      runLengths = Arrays.copyOf(runLengths, nrRuns * 2);
+    }
+    runStarts[nrRuns] = start;
+    runLengths[nrRuns] = length;
+    nrRuns++;
+  }
+
+
+  /**
+   * Opens a buffered stream for writing runs.
+   *
+   * @param file The file to write to.
+   * @return The new stream.
+   * @throws IOException If the file could not be opened.
+   */
+  private static DataOutputStream openOutput(File file) throws IOException {
+    return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), IO_BUFFER_SIZE));
+  }
+
+
+  /**
+   * Writes a triple to a run.
+   *
+   * @param out The stream to write to.
+   * @param triple The triple to write.
+   * @throws IOException If the triple could not be written.
+   */
+  private static void writeTriple(DataOutputStream out, long[] triple) throws IOException {
+    for (int i = 0; i < triple.length; i++) out.writeLong(triple[i]);
+  }
+
+
+  /**
+   * Reads the number of triples in each run from the system properties.
+   *
+   * @return The run size.
+   */
+  private static int getRunSize() {
+    Integer size = Integer.getInteger(RUN_SIZE_PROPERTY, DEFAULT_RUN_SIZE);
+    if (size.intValue() < 1) {
+      logger.warn("Invalid value for property " + RUN_SIZE_PROPERTY + ": " + size);
+      return DEFAULT_RUN_SIZE;
+    }
+    return size.intValue();
+  }
+
+
+  /**
+   * Sets the number of triples in each run, and the number of runs merged at once.
+   * This is used for testing.
+   *
+   * @param size The number of triples in each run.
+   * @param width The most runs to merge at once.
+   */
+  static void setRunParameters(int size, int width) {
+    if (size < 1 || width < 2) throw new IllegalArgumentException("Invalid run parameters");
+    runSize = size;
+    mergeWidth = width;
+  }
+
+
+  /**
+   * Reads a run from the run file, one triple at a time.
+   */
+  private static final class RunReader {
+
+    /** The current triple of the run. */
+    final long[] triple = new long[SIZEOF_TRIPLE];
+
+    /** The stream reading the run. */
+    private DataInputStream in;
+
+    /** The number of triples not yet read. */
+    private long remaining;
+
+    /**
+     * Opens a run, and reads its first triple.
+     *
+     * @param file The file holding the run.
+     * @param start The offset of the run, in triples.
+     * @param length The number of triples in the run. Must be greater than 0.
+     * @throws IOException If the run could not be read.
+     */
+    RunReader(File file, long start, long length) throws IOException {
+      FileInputStream fileIn = new FileInputStream(file);
+      try {
+        fileIn.getChannel().position(start * SIZEOF_TRIPLE * Constants.SIZEOF_LONG);
+      } catch (IOException e) {
+        fileIn.close();
+        throw e;
+      }
+      in = new DataInputStream(new BufferedInputStream(fileIn, IO_BUFFER_SIZE));
+      remaining = length;
+      advance();
+    }
+
+    /**
+     * Reads the next triple of the run.
+     *
+     * @return <code>false</code> if the run has no more triples.
+     * @throws IOException If the run could not be read.
+     */
+    boolean advance() throws IOException {
+      if (remaining == 0) return false;
+      for (int i = 0; i < triple.length; i++) triple[i] = in.readLong();
+      remaining--;
+      return true;
+    }
+
+    /**
+     * Closes the run.
+     */
+    void close() {
+      try {
+        in.close();
+      } catch (IOException e) {
+        logger.warn("Unable to close run", e);
+      }
+    }
+  }
+}
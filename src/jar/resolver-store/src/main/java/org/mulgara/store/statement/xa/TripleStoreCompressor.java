@@ -0,0 +1,387 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.store.statement.xa;
+
+// Java 2 standard packages
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+// Third party packages
+import org.apache.log4j.Logger;
+
+// Locally written packages
+import org.mulgara.store.nodepool.NodePool;
+import org.mulgara.store.statement.StatementStore;
+import org.mulgara.store.statement.xa11.XA11StatementStoreImpl;
+import org.mulgara.store.tuples.StoreTuples;
+import org.mulgara.store.xa.XAStatementStore;
+
+/**
+ * Converts an existing statement store to compressed triple blocks.
+ * <p>
+ * The triple blocks of a {@link TripleAVLFile} have a fixed size, so
+ * compressing a store means packing more triples into each block, and the
+ * indexes have to be built again.  The triples of a committed phase are copied
+ * into a new compressed store next to the old one, which loads them in bulk.
+ * The phase must be the one the database recovers to, which is the highest
+ * phase committed by every resource, as the statement store may hold a later
+ * phase that the node and string pools never committed.
+ * </p>
+ * <p>
+ * Once the new store has been committed, a manifest of the files of both
+ * stores is written.  The files of the old store are then renamed with a
+ * backup name, and the files of the new store are renamed to replace them.
+ * If this is interrupted, converting the store again finishes the renames
+ * listed in the manifest.  The store must not be open in a server while it is
+ * converted.
+ * </p>
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public final class TripleStoreCompressor {
+
+  /** Logger. */
+  private final static Logger logger = Logger.getLogger(TripleStoreCompressor.class);
+
+  /** Added to the base name of the store while the compressed store is being built. */
+  public final static String TEMP_SUFFIX = "_compressed";
+
+  /** Added to the base name of the store for the files of the old store. */
+  public final static String BACKUP_SUFFIX = "_uncompressed";
+
+  /** Added to the base name of the store for the manifest of a conversion being completed. */
+  public final static String MANIFEST_SUFFIX = ".compress";
+
+  /** The base name of the store files. */
+  private final String fileName;
+
+  /** <code>true</code> if the store is an XA 1.1 store. */
+  private final boolean xa11;
+
+  /**
+   * Creates a converter for a store.
+   *
+   * @param fileName The base name of the store files.
+   * @param xa11 <code>true</code> for an XA 1.1 store, or <code>false</code> for an XA store.
+   */
+  public TripleStoreCompressor(String fileName, boolean xa11) {
+    this.fileName = fileName;
+    this.xa11 = xa11;
+  }
+
+
+  /**
+   * Converts the store, or completes a conversion that was interrupted.
+   * Nothing is done if the store is already compressed.
+   *
+   * @param phaseNumber The phase of the store to convert, which must be the
+   *      highest phase committed by every resource of the database.
+   * @return The number of triples copied.
+   * @throws Exception If the store could not be converted.  The old store is
+   *      only replaced once the new store has been committed.
+   */
+  public long compress(int phaseNumber) throws Exception {
+    if (getManifest().exists()) {
+      logger.info("Completing an earlier conversion of statement store \"" + fileName + "\"");
+      swap();
+      return 0;
+    }
+    long nrTriples = build(phaseNumber);
+    if (nrTriples < 0) return 0;
+    swap();
+    if (logger.isInfoEnabled()) {
+      logger.info("Compressed " + nrTriples + " triples in statement store \"" + fileName + "\"");
+    }
+    return nrTriples;
+  }
+
+
+  /**
+   * Builds the compressed store next to the old one, and writes the manifest
+   * of the files to be renamed.
+   *
+   * @param phaseNumber The phase of the old store to copy.
+   * @return The number of triples copied, or -1 if the store is already compressed.
+   * @throws Exception If the new store could not be built.
+   */
+  long build(int phaseNumber) throws Exception {
+    String tempName = fileName + TEMP_SUFFIX;
+    if (listStoreFiles(fileName).isEmpty()) throw new IOException("No statement store \"" + fileName + "\"");
+
+    long nrTriples;
+    XAStatementStore oldStore = open(fileName, false, false);
+    try {
+      selectPhase(oldStore, phaseNumber);
+      if (isCompressed(oldStore)) {
+        logger.info("Statement store \"" + fileName + "\" is already compressed");
+        return -1;
+      }
+      if (!listStoreFiles(fileName + BACKUP_SUFFIX).isEmpty()) {
+        throw new IOException("Files from an earlier conversion of \"" + fileName + "\" exist");
+      }
+      // without a manifest, a new store left behind was never completed
+      for (File f: listStoreFiles(tempName)) f.delete();
+
+      XAStatementStore newStore = open(tempName, hasCrossGraphIndexes(oldStore), true);
+      try {
+        // commit the new store with the same phase number as the old one, so
+        // that it still matches the phases of the node and string pools
+        newStore.clear(phaseNumber - 1);
+        nrTriples = copy(oldStore, newStore);
+        newStore.prepare();
+        newStore.commit();
+      } catch (Exception e) {
+        newStore.close();
+        for (File f: listStoreFiles(tempName)) f.delete();
+        throw e;
+      }
+      newStore.close();
+    } finally {
+      oldStore.close();
+    }
+
+    writeManifest(listStoreFiles(fileName), listStoreFiles(tempName));
+    return nrTriples;
+  }
+
+
+  /**
+   * Renames the files listed in the manifest, and then removes it.  The files
+   * of the old store are all given the backup name before any file of the new
+   * store is renamed, so a file is only renamed if it has not been already.
+   *
+   * @throws IOException If a file could not be renamed.
+   */
+  void swap() throws IOException {
+    File manifest = getManifest();
+    List<String> oldSuffixes = new ArrayList<String>();
+    List<String> newSuffixes = new ArrayList<String>();
+    BufferedReader in = new BufferedReader(new FileReader(manifest));
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (line.startsWith("old ")) oldSuffixes.add(line.substring(4));
+        else if (line.startsWith("new ")) newSuffixes.add(line.substring(4));
+      }
+    } finally {
+      in.close();
+    }
+
+    for (String suffix: oldSuffixes) rename(fileName + BACKUP_SUFFIX, fileName, suffix);
+    for (String suffix: newSuffixes) rename(fileName, fileName + TEMP_SUFFIX, suffix);
+    if (!manifest.delete()) throw new IOException("Unable to delete " + manifest);
+  }
+
+
+  /**
+   * Writes the manifest of the files to rename.  The manifest is only given
+   * its name once it is complete.
+   *
+   * @param oldFiles The files of the old store.
+   * @param newFiles The files of the new store.
+   * @throws IOException If the manifest could not be written.
+   */
+  private void writeManifest(List<File> oldFiles, List<File> newFiles) throws IOException {
+    File manifest = getManifest();
+    File temp = new File(manifest.getPath() + ".tmp");
+    FileOutputStream out = new FileOutputStream(temp);
+    try {
+      Writer writer = new OutputStreamWriter(out, "UTF-8");
+      int oldPrefix = new File(fileName).getName().length();
+      int newPrefix = oldPrefix + TEMP_SUFFIX.length();
+      for (File f: oldFiles) writer.write("old " + f.getName().substring(oldPrefix) + "\n");
+      for (File f: newFiles) writer.write("new " + f.getName().substring(newPrefix) + "\n");
+      writer.flush();
+      out.getFD().sync();
+    } finally {
+      out.close();
+    }
+    if (!temp.renameTo(manifest)) throw new IOException("Unable to rename " + temp + " to " + manifest);
+  }
+
+
+  /**
+   * @return The file holding the manifest of a conversion.
+   */
+  private File getManifest() {
+    return new File(fileName + MANIFEST_SUFFIX);
+  }
+
+
+  /**
+   * Selects a phase of the store being converted.
+   *
+   * @param store The store.
+   * @param phaseNumber The phase to select.
+   * @throws Exception If the phase is not one of the phases of the store.
+   */
+  private void selectPhase(XAStatementStore store, int phaseNumber) throws Exception {
+    StringBuilder phases = new StringBuilder();
+    for (int p: store.recover()) {
+      if (p == phaseNumber) {
+        store.selectPhase(phaseNumber);
+        return;
+      }
+      phases.append(' ').append(p);
+    }
+    throw new IOException("No phase " + phaseNumber + " in store \"" + fileName + "\". Valid phases:" + phases);
+  }
+
+
+  /**
+   * Copies every triple from one store to another.
+   *
+   * @param from The store to read.
+   * @param to The store to write.
+   * @return The number of triples copied.
+   * @throws Exception If the triples could not be copied.
+   */
+  private static long copy(XAStatementStore from, XAStatementStore to) throws Exception {
+    StoreTuples tuples = from.findTuples(NodePool.NONE, NodePool.NONE, NodePool.NONE, NodePool.NONE);
+    try {
+      int[] columns = new int[StatementStore.VARIABLES.length];
+      for (int i = 0; i < columns.length; i++) {
+        columns[i] = tuples.getColumnIndex(StatementStore.VARIABLES[i]);
+      }
+      long nrTriples = 0;
+      tuples.beforeFirst();
+      while (tuples.next()) {
+        to.addTriple(
+            tuples.getColumnValue(columns[0]), tuples.getColumnValue(columns[1]),
+            tuples.getColumnValue(columns[2]), tuples.getColumnValue(columns[3])
+        );
+        nrTriples++;
+      }
+      return nrTriples;
+    } finally {
+      tuples.close();
+    }
+  }
+
+
+  /**
+   * Opens a store of the type being converted.
+   *
+   * @param name The base name of the store files.
+   * @param crossGraphIndexes For an XA 1.1 store, whether a new store has the cross-graph indexes.
+   * @param compressed Whether a new store is compressed.
+   * @return The store.
+   * @throws IOException If the store could not be opened.
+   */
+  private XAStatementStore open(String name, boolean crossGraphIndexes, boolean compressed) throws IOException {
+    if (xa11) return new XA11StatementStoreImpl(name, crossGraphIndexes, compressed);
+    return new XAStatementStoreImpl(name, compressed);
+  }
+
+
+  /**
+   * Tests if a store has compressed triple blocks.
+   *
+   * @param store The store.
+   * @return <code>true</code> if the store is compressed.
+   */
+  private static boolean isCompressed(XAStatementStore store) {
+    if (store instanceof XA11StatementStoreImpl) return ((XA11StatementStoreImpl)store).isCompressed();
+    return ((XAStatementStoreImpl)store).isCompressed();
+  }
+
+
+  /**
+   * Tests if a store has the cross-graph indexes.
+   *
+   * @param store The store.
+   * @return <code>true</code> if the store is an XA 1.1 store with the cross-graph indexes.
+   */
+  private static boolean hasCrossGraphIndexes(XAStatementStore store) {
+    return store instanceof XA11StatementStoreImpl && ((XA11StatementStoreImpl)store).hasCrossGraphIndexes();
+  }
+
+
+  /**
+   * Renames a file of a store, unless it has been renamed already.
+   *
+   * @param to The new base name of the file.
+   * @param from The base name of the file to rename.
+   * @param suffix The name of the file after the base name.
+   * @throws IOException If the file could not be renamed.
+   */
+  private static void rename(String to, String from, String suffix) throws IOException {
+    File dest = new File(to + suffix);
+    File f = new File(from + suffix);
+    if (dest.exists() && !f.exists()) return;
+    if (!f.renameTo(dest)) throw new IOException("Unable to rename " + f + " to " + dest);
+  }
+
+
+  /**
+   * Lists the files of a statement store.  These are the files with names
+   * starting with the base name followed by <code>.g</code>.
+   *
+   * @param name The base name of the store files.
+   * @return The files of the store.
+   */
+  public static List<File> listStoreFiles(String name) {
+    File base = new File(name).getAbsoluteFile();
+    String prefix = base.getName() + ".g";
+    List<File> files = new ArrayList<File>();
+    File[] all = base.getParentFile().listFiles();
+    if (all != null) {
+      for (File f: all) {
+        if (f.getName().startsWith(prefix) && !f.getName().endsWith(".lock")) files.add(f);
+      }
+    }
+    return files;
+  }
+
+
+  /**
+   * Converts a store named on the command line.
+   *
+   * @param args <code>[-xa11] &lt;phase&gt; &lt;base name&gt;</code>, where the
+   *      phase is the phase the database recovers to, and the base name is the
+   *      path of the store files without the <code>.g</code> extension.
+   */
+  public static void main(String[] args) {
+    boolean xa11 = false;
+    List<String> params = new ArrayList<String>();
+    for (String arg: args) {
+      if (arg.equals("-xa11")) xa11 = true;
+      else params.add(arg);
+    }
+    int phaseNumber = -1;
+    try {
+      if (params.size() == 2) phaseNumber = Integer.parseInt(params.get(0));
+    } catch (NumberFormatException e) { /* fall through */ }
+    if (phaseNumber < 0) {
+      System.err.println("Usage: TripleStoreCompressor [-xa11] <phase> <base name>");
+      System.exit(1);
+    }
+    String name = params.get(1);
+    try {
+      long nrTriples = new TripleStoreCompressor(name, xa11).compress(phaseNumber);
+      System.out.println("Copied " + nrTriples + " triples");
+    } catch (Exception e) {
+      System.err.println("Unable to compress " + name + ": " + e.getMessage());
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+}
@@ -206,6 +206,8 @@ final class TripleWriteThread extends Thread {
       throw new RuntimeException("Interrupted", ex);
     }
 
+    if (phase != null) phase.abortBulkLoad();
+
     if (t != null) {
       // Log any exception that occurred in the TripleWriteThread.
       logger.warn("Exception during abort of " + getName(), t);
@@ -233,6 +235,15 @@ final class TripleWriteThread extends Thread {
     } catch (InterruptedException ex) {
       throw new RuntimeException("Interrupted", ex);
     }
+
+    // All triples have been added, so any bulk load can be completed.
+    if (phase != null) {
+      try {
+        phase.finishBulkLoad();
+      } catch (IOException ex) {
+        throw new RuntimeException("Exception in " + getName(), ex);
+      }
+    }
   }
 
 
@@ -158,6 +158,17 @@ public final class XAStatementStoreImpl implements XAStatementStore {
    */
   private final static int FILE_VERSION = 8;
 
+  /**
+   * The version of the file format for stores with compressed triple blocks.
+   */
+  private final static int COMPRESSED_FILE_VERSION = 9;
+
+  /**
+   * The version of the file format for stores with counted AVL nodes.  The
+   * version for counted stores with compressed triple blocks is one more.
+   */
+  private final static int COUNTED_FILE_VERSION = 10;
+
   /**
    * Index of the file magic number within each of the two on-disk metaroots.
    */
@@ -244,6 +255,17 @@ public final class XAStatementStoreImpl implements XAStatementStore {
    */
   private boolean wrongFileVersion = false;
 
+  /**
+   * Indicates that the triple blocks of the indexes are compressed.
+   */
+  private boolean compressed;
+
+  /**
+   * Indicates that the AVL nodes of the indexes record the number of triples
+   * under them.  This is true for all new stores.
+   */
+  private boolean counted = true;
+
   /**
    * Description of the Field
    */
@@ -304,7 +326,22 @@ public final class XAStatementStoreImpl implements XAStatementStore {
    * @throws IOException EXCEPTION TO DO
    */
   public XAStatementStoreImpl(String fileName) throws IOException {
+    this(fileName, false);
+  }
+
+
+  /**
+   * Creates a statement store using a base filename.
+   *
+   * @param fileName The base filename to operate from.
+   * @param compressed If <code>true</code> then a new store will pack the
+   *      triples of each index into compressed blocks.  An existing store keeps
+   *      the format it was created with.
+   * @throws IOException The mass storage could not be accessed.
+   */
+  public XAStatementStoreImpl(String fileName, boolean compressed) throws IOException {
     this.fileName = fileName;
+    this.compressed = compressed;
 
     lockFile = LockFile.createLockFile(fileName + ".g.lock");
 
@@ -321,8 +358,19 @@ public final class XAStatementStoreImpl implements XAStatementStore {
             fileMagic = XAUtils.bswap(fileMagic);
             fileVersion = XAUtils.bswap(fileVersion);
           }
-          wrongFileVersion =
-              fileMagic != FILE_MAGIC || fileVersion != FILE_VERSION;
+          wrongFileVersion = fileMagic != FILE_MAGIC ||
+              fileVersion < FILE_VERSION || fileVersion > COUNTED_FILE_VERSION + 1;
+          if (!wrongFileVersion) {
+            counted = fileVersion >= COUNTED_FILE_VERSION;
+            boolean fileCompressed = fileVersion == COMPRESSED_FILE_VERSION || fileVersion == COUNTED_FILE_VERSION + 1;
+            if (fileCompressed != compressed && logger.isInfoEnabled()) {
+              logger.info(
+                  "Statement store \"" + fileName + "\" has " +
+                  (fileCompressed ? "compressed" : "uncompressed") + " triple blocks"
+              );
+            }
+            this.compressed = fileCompressed;
+          }
         } else {
           wrongFileVersion = false;
         }
@@ -337,7 +385,7 @@ public final class XAStatementStoreImpl implements XAStatementStore {
       for (int i = 0; i < NR_INDEXES; ++i) {
         tripleAVLFiles[i] = new TripleAVLFile(
             fileName + ".g_" + orders[i][0] + orders[i][1] + orders[i][2] + orders[i][3],
-            orders[i]
+            orders[i], this.compressed, counted
         );
       }
     } catch (IOException ex) {
@@ -351,6 +399,28 @@ public final class XAStatementStoreImpl implements XAStatementStore {
   }
 
 
+  /**
+   * Tests if the triple blocks of this store are compressed.
+   *
+   * @return <code>true</code> if the triple blocks are compressed.
+   */
+  public boolean isCompressed() {
+    return compressed;
+  }
+
+
+  /**
+   * Tests if the indexes of this store can count the triples in a range
+   * without reading every node of the range.  Stores created before counted
+   * indexes were introduced are not counted.
+   *
+   * @return <code>true</code> if the AVL nodes of the indexes are counted.
+   */
+  public boolean isCounted() {
+    return counted;
+  }
+
+
   /**
    * Returns <code>true</code> if there are no triples in the graph
    *
@@ -1191,7 +1261,11 @@ public final class XAStatementStoreImpl implements XAStatementStore {
     if (clear) {
       // Invalidate the metaroots on disk.
       metarootBlocks[0].putInt(IDX_MAGIC, FILE_MAGIC);
-      metarootBlocks[0].putInt(IDX_VERSION, FILE_VERSION);
+      metarootBlocks[0].putInt(
+          IDX_VERSION,
+          counted ? COUNTED_FILE_VERSION + (compressed ? 1 : 0) :
+          compressed ? COMPRESSED_FILE_VERSION : FILE_VERSION
+      );
       metarootBlocks[0].putInt(IDX_VALID, 0);
       metarootBlocks[0].write();
       metarootBlocks[1].putInt(IDX_MAGIC, 0);
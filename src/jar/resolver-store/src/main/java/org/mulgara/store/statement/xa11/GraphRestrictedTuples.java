@@ -0,0 +1,101 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.store.statement.xa11;
+
+// Java 2 standard packages
+import java.util.Set;
+
+// Locally written packages
+import org.mulgara.query.Cursor;
+import org.mulgara.query.TuplesException;
+import org.mulgara.store.tuples.StoreTuples;
+import org.mulgara.store.tuples.Tuples;
+import org.mulgara.store.tuples.WrappedTuples;
+
+/**
+ * The rows of a {@link StoreTuples} whose graph is one of a set of graphs.
+ * This restricts the triples read from an index that does not start with the
+ * graph to the graphs that a search across graphs would have visited one by one.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+class GraphRestrictedTuples extends WrappedTuples implements StoreTuples {
+
+  /** The graphs to keep the rows of. */
+  private final Set<Long> graphs;
+
+  /** The column holding the graph. */
+  private final int graphColumn;
+
+  /** Cache the row count when calculated. */
+  private long rowCount = -1;
+
+  /**
+   * Restricts a tuples to a set of graphs.
+   * @param tuples The tuples to restrict, which must have a graph column.
+   * @param graphs The graphs to keep. This set is not copied.
+   * @throws TuplesException The tuples could not be wrapped.
+   */
+  GraphRestrictedTuples(StoreTuples tuples, Set<Long> graphs) throws TuplesException {
+    super(tuples);
+    this.graphs = graphs;
+    int[] order = tuples.getColumnOrder();
+    int column = order.length - 1;
+    while (column >= 0 && order[column] != 3) column--;
+    if (column < 0) throw new IllegalArgumentException("No graph column in tuples");
+    graphColumn = column;
+  }
+
+  public int[] getColumnOrder() {
+    return ((StoreTuples)tuples).getColumnOrder();
+  }
+
+  public boolean next() throws TuplesException {
+    while (tuples.next()) {
+      if (graphs.contains(tuples.getColumnValue(graphColumn))) return true;
+    }
+    return false;
+  }
+
+  public long getRowCount() throws TuplesException {
+    if (rowCount < 0) {
+      Tuples t = (Tuples)clone();
+      try {
+        long count = 0;
+        t.beforeFirst();
+        while (t.next()) count++;
+        rowCount = count;
+      } finally {
+        t.close();
+      }
+    }
+    return rowCount;
+  }
+
+  public int getRowCardinality() throws TuplesException {
+    if (rowCount >= 0) return rowCount == 0 ? Cursor.ZERO : (rowCount == 1 ? Cursor.ONE : Cursor.MANY);
+    Tuples t = (Tuples)clone();
+    try {
+      t.beforeFirst();
+      if (!t.next()) return Cursor.ZERO;
+      return t.next() ? Cursor.MANY : Cursor.ONE;
+    } finally {
+      t.close();
+    }
+  }
+
+  public boolean isEmpty() throws TuplesException {
+    return getRowCardinality() == Cursor.ZERO;
+  }
+}
@@ -78,14 +78,29 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
   /** The object/subject/predicate index */
   final static int TI_3201 = 2;
 
-  /** The number of indexes */
-  final static int NR_INDEXES = 3;
+  /** The cross-graph subject/predicate/object index */
+  final static int TI_0123 = 3;
+
+  /** The cross-graph predicate/object/subject index */
+  final static int TI_1203 = 4;
+
+  /** The cross-graph object/subject/predicate index */
+  final static int TI_2013 = 5;
+
+  /** The number of indexes that start with the graph */
+  final static int NR_GRAPH_INDEXES = 3;
+
+  /** The number of indexes, including the cross-graph indexes */
+  final static int NR_INDEXES = 6;
 
   /** The ordering of indexes, as indexed by the TI_ values */
   private final static int[][] orders = {
       {3, 0, 1, 2},  // TI_3012
       {3, 1, 2, 0},  // TI_3120
-      {3, 2, 0, 1}   // TI_3201
+      {3, 2, 0, 1},  // TI_3201
+      {0, 1, 2, 3},  // TI_0123
+      {1, 2, 0, 3},  // TI_1203
+      {2, 0, 1, 3}   // TI_2013
   };
 
   private final static int[] selectIndex = {
@@ -99,12 +114,36 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
     /* 3210 */ TI_3012
   };
 
+  /** The index to use for each mask of bound nodes when the graph is not bound */
+  private final static int[] selectCrossGraphIndex = {
+    /* XXXX */ TI_0123,
+    /* XXX0 */ TI_0123,
+    /* XX1X */ TI_1203,
+    /* XX10 */ TI_0123,
+    /* X2XX */ TI_2013,
+    /* X2X0 */ TI_2013,
+    /* X21X */ TI_1203,
+    /* X210 */ TI_0123
+  };
+
   /** A number to identify the correct file type */
   private final static int FILE_MAGIC = 0xa5e7f21e;
 
   /** The version of file format */
   private final static int FILE_VERSION = 9;
 
+  /** Added to the file version for stores which also have the cross-graph indexes */
+  private final static int CROSS_GRAPH_VERSION_FLAG = 1;
+
+  /** Added to the file version for stores with compressed triple blocks */
+  private final static int COMPRESSED_VERSION_FLAG = 2;
+
+  /** Added to the file version for stores with counted AVL nodes */
+  private final static int COUNTED_VERSION_FLAG = 4;
+
+  /** The last version of the file format, with every option */
+  private final static int LAST_FILE_VERSION = FILE_VERSION + CROSS_GRAPH_VERSION_FLAG + COMPRESSED_VERSION_FLAG + COUNTED_VERSION_FLAG;
+
   /** Index of the file magic number within each of the two on-disk metaroots. */
   private final static int IDX_MAGIC = 0;
 
@@ -123,9 +162,6 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
   /** The size of the header of a metaroot in longs. */
   private final static int HEADER_SIZE_LONGS = (HEADER_SIZE_INTS + 1) / 2;
 
-  /** The size of a metaroot in longs. */
-  private final static int METAROOT_SIZE = HEADER_SIZE_LONGS + Phase.RECORD_SIZE;
-
   /** The number of metaroots in the metaroot file. */
   private final static int NR_METAROOTS = 2;
 
@@ -168,6 +204,18 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
   /** The files containing indexed triples */
   private TripleAVLFile[] tripleAVLFiles = new TripleAVLFile[NR_INDEXES];
 
+  /**
+   * The number of indexes in use. This is {@link #NR_INDEXES} if the store has
+   * the cross-graph indexes, or {@link #NR_GRAPH_INDEXES} if it does not.
+   */
+  private int nrIndexes;
+
+  /** Indicates that the triple blocks of the indexes are compressed. */
+  private boolean compressed;
+
+  /** Indicates that the AVL nodes of the indexes are counted. This is true for all new stores. */
+  private boolean counted = true;
+
   /** The current read/write phase. Only the latest phase can write. */
   private Phase currentPhase = null;
 
@@ -208,13 +256,48 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
 
 
   /**
-   * Creates a statement store using a base filename.
+   * Creates a statement store using a base filename. A new store will not have
+   * the cross-graph indexes.
    *
    * @param fileName The base filename to operate from.
    * @throws IOException The mass storage could not be accessed.
    */
   public XA11StatementStoreImpl(String fileName) throws IOException {
+    this(fileName, false);
+  }
+
+
+  /**
+   * Creates a statement store using a base filename. A new store will have
+   * uncompressed triple blocks.
+   *
+   * @param fileName The base filename to operate from.
+   * @param crossGraphIndexes If <code>true</code> then a new store will also index
+   *        triples by subject, predicate and object ahead of the graph.
+   * @throws IOException The mass storage could not be accessed.
+   */
+  public XA11StatementStoreImpl(String fileName, boolean crossGraphIndexes) throws IOException {
+    this(fileName, crossGraphIndexes, false);
+  }
+
+
+  /**
+   * Creates a statement store using a base filename.
+   *
+   * @param fileName The base filename to operate from.
+   * @param crossGraphIndexes If <code>true</code> then a new store will also index
+   *        triples by subject, predicate and object ahead of the graph, so patterns
+   *        with an unbound graph do not need to be found in each graph separately.
+   *        An existing store keeps the indexes it was created with.
+   * @param compressed If <code>true</code> then a new store will pack the triples of
+   *        each index into compressed blocks.  An existing store keeps the format it
+   *        was created with.
+   * @throws IOException The mass storage could not be accessed.
+   */
+  public XA11StatementStoreImpl(String fileName, boolean crossGraphIndexes, boolean compressed) throws IOException {
     this.fileName = fileName;
+    nrIndexes = crossGraphIndexes ? NR_INDEXES : NR_GRAPH_INDEXES;
+    this.compressed = compressed;
 
     lockFile = LockFile.createLockFile(fileName + ".g.lock");
 
@@ -230,7 +313,21 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
             fileMagic = XAUtils.bswap(fileMagic);
             fileVersion = XAUtils.bswap(fileVersion);
           }
-          wrongFileVersion = fileMagic != FILE_MAGIC || fileVersion != FILE_VERSION;
+          wrongFileVersion = fileMagic != FILE_MAGIC || fileVersion < FILE_VERSION || fileVersion > LAST_FILE_VERSION;
+          if (!wrongFileVersion) {
+            int flags = fileVersion - FILE_VERSION;
+            int fileNrIndexes = (flags & CROSS_GRAPH_VERSION_FLAG) != 0 ? NR_INDEXES : NR_GRAPH_INDEXES;
+            if (fileNrIndexes != nrIndexes && logger.isInfoEnabled()) {
+              logger.info("Statement store \"" + fileName + "\" has " + fileNrIndexes + " indexes, not " + nrIndexes);
+            }
+            nrIndexes = fileNrIndexes;
+            boolean fileCompressed = (flags & COMPRESSED_VERSION_FLAG) != 0;
+            if (fileCompressed != compressed && logger.isInfoEnabled()) {
+              logger.info("Statement store \"" + fileName + "\" has " + (fileCompressed ? "compressed" : "uncompressed") + " triple blocks");
+            }
+            this.compressed = fileCompressed;
+            counted = (flags & COUNTED_VERSION_FLAG) != 0;
+          }
         } else {
           wrongFileVersion = false;
         }
@@ -240,9 +337,9 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
         if (metarootRAF != null) metarootRAF.close();
       }
 
-      for (int i = 0; i < NR_INDEXES; ++i) {
+      for (int i = 0; i < nrIndexes; ++i) {
         String suffix = ".g_" + orders[i][0] + orders[i][1] + orders[i][2] + orders[i][3];
-        tripleAVLFiles[i] = new TripleAVLFile(fileName + suffix, orders[i]);
+        tripleAVLFiles[i] = new TripleAVLFile(fileName + suffix, orders[i], this.compressed, counted);
       }
     } catch (IOException ex) {
       try {
@@ -504,7 +601,7 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
       try {
         IOException savedEx = null;
 
-        for (int i = 0; i < NR_INDEXES; ++i) {
+        for (int i = 0; i < nrIndexes; ++i) {
           try {
             if (tripleAVLFiles[i] != null) tripleAVLFiles[i].close();
           } catch (IOException ex) {
@@ -543,7 +640,7 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
       try {
         IOException savedEx = null;
 
-        for (int i = 0; i < NR_INDEXES; ++i) {
+        for (int i = 0; i < nrIndexes; ++i) {
           try {
             if (tripleAVLFiles[i] != null) tripleAVLFiles[i].delete();
           } catch (IOException ex) {
@@ -561,7 +658,7 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
 
         if (savedEx != null) throw new StatementStoreException("I/O error deleting graph.", savedEx);
       } finally {
-        for (int i = 0; i < NR_INDEXES; ++i) tripleAVLFiles[i] = null;
+        for (int i = 0; i < nrIndexes; ++i) tripleAVLFiles[i] = null;
         metarootFile = null;
         if (lockFile != null) {
           lockFile.release();
@@ -626,7 +723,7 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
     }
     this.phaseNumber = phaseNumber;
     phaseIndex = 1;
-    for (int i = 0; i < NR_INDEXES; ++i) tripleAVLFiles[i].clear();
+    for (int i = 0; i < nrIndexes; ++i) tripleAVLFiles[i].clear();
 
     new Phase(true);
   }
@@ -669,7 +766,7 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
       newCurrent.graphNodes = new LinkedHashSet<Long>(recordingPhase.graphNodes);
 
       // Ensure that all data associated with the phase is on disk.
-      for (int i = 0; i < NR_INDEXES; ++i) tripleAVLFiles[i].force();
+      for (int i = 0; i < nrIndexes; ++i) tripleAVLFiles[i].force();
 
       // Write the metaroot.
       int newPhaseIndex = 1 - phaseIndex;
@@ -901,7 +998,7 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
     }
 
     if (tripleAVLFiles != null) {
-      for (int i = 0; i < NR_INDEXES; ++i) {
+      for (int i = 0; i < nrIndexes; ++i) {
         if (tripleAVLFiles[i] != null) tripleAVLFiles[i].unmap();
       }
     }
@@ -932,7 +1029,8 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
    */
   private void openMetarootFile(boolean clear) throws IOException, SimpleXAResourceException {
     if (metarootFile == null) {
-      metarootFile = AbstractBlockFile.openBlockFile(fileName + ".g", METAROOT_SIZE * Constants.SIZEOF_LONG, BlockFile.IOType.EXPLICIT);
+      int metarootSize = HEADER_SIZE_LONGS + TripleAVLFile.Phase.RECORD_SIZE * nrIndexes;
+      metarootFile = AbstractBlockFile.openBlockFile(fileName + ".g", metarootSize * Constants.SIZEOF_LONG, BlockFile.IOType.EXPLICIT);
 
       long nrBlocks = metarootFile.getNrBlocks();
       if (nrBlocks != NR_METAROOTS) {
@@ -956,7 +1054,11 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
     if (clear) {
       // Invalidate the metaroots on disk.
       metarootBlocks[0].putInt(IDX_MAGIC, FILE_MAGIC);
-      metarootBlocks[0].putInt(IDX_VERSION, FILE_VERSION);
+      int version = FILE_VERSION;
+      if (hasCrossGraphIndexes()) version += CROSS_GRAPH_VERSION_FLAG;
+      if (compressed) version += COMPRESSED_VERSION_FLAG;
+      if (counted) version += COUNTED_VERSION_FLAG;
+      metarootBlocks[0].putInt(IDX_VERSION, version);
       metarootBlocks[0].putInt(IDX_VALID, 0);
       metarootBlocks[0].write();
       metarootBlocks[1].putInt(IDX_MAGIC, 0);
@@ -977,6 +1079,34 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
   }
 
 
+  /**
+   * Tests if this store has the indexes for finding triples without a graph.
+   * @return <code>true</code> if the cross-graph indexes are maintained.
+   */
+  public boolean hasCrossGraphIndexes() {
+    return nrIndexes == NR_INDEXES;
+  }
+
+
+  /**
+   * Tests if the triple blocks of this store are compressed.
+   * @return <code>true</code> if the triple blocks are compressed.
+   */
+  public boolean isCompressed() {
+    return compressed;
+  }
+
+
+  /**
+   * Tests if the indexes of this store can count the triples in a range without reading
+   * every node of the range. Stores created before counted indexes were introduced are not counted.
+   * @return <code>true</code> if the AVL nodes of the indexes are counted.
+   */
+  public boolean isCounted() {
+    return counted;
+  }
+
+
   final class ReadOnlyGraph implements XAStatementStore {
 
     private Phase phase = null;
@@ -1189,11 +1319,8 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
    */
   final class Phase implements PersistableMetaRoot {
 
-    /** The size of the data this object stores in the metaroot */
-    final static int RECORD_SIZE = TripleAVLFile.Phase.RECORD_SIZE * NR_INDEXES;
-
     /** Maintaines parallel structural phases between all of the parallel tree data structures */
-    private TripleAVLFile.Phase[] tripleAVLFilePhases = new TripleAVLFile.Phase[NR_INDEXES];
+    private TripleAVLFile.Phase[] tripleAVLFilePhases = new TripleAVLFile.Phase[nrIndexes];
 
     /** The list of graphs valid in this phase. */
     private LinkedHashSet<Long> graphNodes = null;
@@ -1206,7 +1333,7 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
      * @throws IOException Error on the filesystem.
      */
     Phase(boolean initializeGraphs) throws IOException {
-      for (int i = 0; i < NR_INDEXES; ++i) tripleAVLFilePhases[i] = tripleAVLFiles[i].new Phase();
+      for (int i = 0; i < nrIndexes; ++i) tripleAVLFilePhases[i] = tripleAVLFiles[i].new Phase();
       currentPhase = this;
       dirty = true;
       if (initializeGraphs) {
@@ -1227,7 +1354,7 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
     Phase(Phase p) throws IOException {
       assert p != null;
 
-      for (int i = 0; i < NR_INDEXES; ++i) tripleAVLFilePhases[i] = tripleAVLFiles[i].new Phase(p.tripleAVLFilePhases[i]);
+      for (int i = 0; i < nrIndexes; ++i) tripleAVLFilePhases[i] = tripleAVLFiles[i].new Phase(p.tripleAVLFilePhases[i]);
       currentPhase = this;
       dirty = true;
       graphNodes = new LinkedHashSet<Long>(p.graphNodes);
@@ -1241,7 +1368,7 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
      * @throws IOException A filesystem error occurred while accessing the buffer.
      */
     Phase(Block b, int offset) throws IOException {
-      for (int i = 0; i < NR_INDEXES; ++i) {
+      for (int i = 0; i < nrIndexes; ++i) {
         tripleAVLFilePhases[i] = tripleAVLFiles[i].new Phase(b, offset);
         offset += TripleAVLFile.Phase.RECORD_SIZE;
       }
@@ -1262,7 +1389,7 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
      * @param offset The start within the buffer of where the phase information should be written to.
      */
     public void writeToBlock(Block b, int offset) {
-      for (int i = 0; i < NR_INDEXES; ++i) {
+      for (int i = 0; i < nrIndexes; ++i) {
         tripleAVLFilePhases[i].writeToBlock(b, offset);
         offset += TripleAVLFile.Phase.RECORD_SIZE;
       }
@@ -1275,7 +1402,7 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
      */
     public String toString() {
       StringBuffer sb = new StringBuffer();
-      for (int i = 0; i < NR_INDEXES; ++i) {
+      for (int i = 0; i < nrIndexes; ++i) {
         StoreTuples ts = tripleAVLFilePhases[i].allTuples();
         try {
           sb.append(ts).append('\n');
@@ -1297,7 +1424,7 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
      * @return <code>true</code> if any part of this phase is being used.
      */
     boolean isInUse() {
-      for (int i = 0; i < NR_INDEXES; ++i) {
+      for (int i = 0; i < nrIndexes; ++i) {
         if (tripleAVLFilePhases[i].isInUse()) return true;
       }
       return false;
@@ -1346,7 +1473,7 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
 
       long[] triple = new long[]{node0, node1, node2, node3};
 
-      for (int i = 0; i < NR_INDEXES; ++i) tripleAVLFilePhases[i].asyncAddTriple(triple);
+      for (int i = 0; i < nrIndexes; ++i) tripleAVLFilePhases[i].asyncAddTriple(triple);
 
       if (node1 == rdfTypeNode && node2 == graphTypeNode && node3 == systemGraphNode) graphNodes.add(node0);
     }
@@ -1371,7 +1498,7 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
       }
 
       try {
-        for (int i = 0; i < NR_INDEXES; ++i) tripleAVLFilePhases[i].removeTriple(node0, node1, node2, node3);
+        for (int i = 0; i < nrIndexes; ++i) tripleAVLFilePhases[i].removeTriple(node0, node1, node2, node3);
         // removeTriple listeners can be informed here
       } catch (IOException e) {
         throw new StatementStoreException("I/O error", e);
@@ -1456,6 +1583,7 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
         (node3 != NONE ? MASK3 : 0);
 
       if (node3 == NONE && variableMask != 0) {
+        if (hasCrossGraphIndexes()) return findCrossGraphTuples(variableMask, node0, node1, node2);
         return joinGraphedTuples(variableMask, node0, node1, node2);
       }
 
@@ -1500,12 +1628,77 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
           (node2Bound ? MASK2 : 0);
       if (variableMask == 0 || node3Bound) {
         return tripleAVLFilePhases[selectIndex[variableMask]].allTuples();
+      } else if (hasCrossGraphIndexes()) {
+        return restrictToGraphs(tripleAVLFilePhases[selectCrossGraphIndex[variableMask]].allTuples());
       } else {
         return joinGraphedTuples(variableMask);
       }
     }
 
 
+    /**
+     * Finds triples in all graphs from the indexes which do not start with the graph.
+     * Like {@link #joinGraphedTuples(int, long, long, long)}, only the triples in the
+     * graphs of this phase are found.
+     * @param variableMask Pre-calculated from the bound node parameters.
+     * @param node0 The bound value for node0, or &lt; 0 if not bound.
+     * @param node1 The bound value for node1, or &lt; 0 if not bound.
+     * @param node2 The bound value for node2, or &lt; 0 if not bound.
+     * @return A StoreTuples containing all the triples which match the search.
+     * @throws StatementStoreException On an error accessing the store.
+     */
+    StoreTuples findCrossGraphTuples(int variableMask, long node0, long node1, long node2) throws StatementStoreException {
+      assert hasCrossGraphIndexes() : "Cross-graph indexes are not available";
+      try {
+        StoreTuples result;
+        switch (variableMask) {
+          case MASK0:
+            result = tripleAVLFilePhases[TI_0123].findTuples(node0);
+            break;
+          case MASK1:
+            result = tripleAVLFilePhases[TI_1203].findTuples(node1);
+            break;
+          case MASK0 | MASK1:
+            result = tripleAVLFilePhases[TI_0123].findTuples(node0, node1);
+            break;
+          case MASK2:
+            result = tripleAVLFilePhases[TI_2013].findTuples(node2);
+            break;
+          case MASK0 | MASK2:
+            result = tripleAVLFilePhases[TI_2013].findTuples(node2, node0);
+            break;
+          case MASK1 | MASK2:
+            result = tripleAVLFilePhases[TI_1203].findTuples(node1, node2);
+            break;
+          case MASK0 | MASK1 | MASK2:
+            result = tripleAVLFilePhases[TI_0123].findTuples(node0, node1, node2);
+            break;
+          default:
+            throw new AssertionError("Search structure incorrectly calculated");
+        }
+        return restrictToGraphs(result);
+      } catch (IOException ex) {
+        throw new StatementStoreException("I/O error", ex);
+      }
+    }
+
+
+    /**
+     * Restricts triples found in a cross-graph index to the graphs of this phase.
+     * @param tuples The triples from a cross-graph index.
+     * @return The triples in the graphs of this phase.
+     * @throws StatementStoreException On an error accessing the store.
+     */
+    private StoreTuples restrictToGraphs(StoreTuples tuples) throws StatementStoreException {
+      if (graphNodes.isEmpty()) throw new IllegalStateException("Unable to query for variable graphs until graphs are initialized");
+      try {
+        return new GraphRestrictedTuples(tuples, graphNodes);
+      } catch (TuplesException te) {
+        throw new StatementStoreException("Error accessing Tuples", te);
+      }
+    }
+
+
     /**
      * Iterates over all graphs, finding requested tuples, and joining all the results together into a single tuples.
      * @param variableMask Pre-calculated from the bound node parameters.
@@ -1679,14 +1872,14 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
      * @throws AssertionError if the indexes contain a differing number of triples
      */ 
     long checkIntegrity() {
-      long nrTriples[] = new long[NR_INDEXES];
+      long nrTriples[] = new long[nrIndexes];
 
-      for (int i = 0; i < NR_INDEXES; ++i) nrTriples[i] = tripleAVLFilePhases[i].checkIntegrity();
+      for (int i = 0; i < nrIndexes; ++i) nrTriples[i] = tripleAVLFilePhases[i].checkIntegrity();
 
-      for (int i = 1; i < NR_INDEXES; ++i) {
+      for (int i = 1; i < nrIndexes; ++i) {
         if (nrTriples[0] != nrTriples[i]) {
           StringBuffer sb = new StringBuffer("tripleAVLFiles disagree on the number of triples:");
-          for (int j = 0; j < NR_INDEXES; ++j) sb.append(' ').append(nrTriples[j]);
+          for (int j = 0; j < nrIndexes; ++j) sb.append(' ').append(nrTriples[j]);
           throw new AssertionError(sb.toString());
         }
       }
@@ -1734,7 +1927,7 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
     final class Token {
 
       /** A list of tokens from the underlying indexes */
-      private TripleAVLFile.Phase.Token[] tripleAVLFileTokens = new TripleAVLFile.Phase.Token[NR_INDEXES];
+      private TripleAVLFile.Phase.Token[] tripleAVLFileTokens = new TripleAVLFile.Phase.Token[nrIndexes];
 
       /** The phase being referenced */
       private Phase phase = Phase.this;
@@ -1744,7 +1937,7 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
        * Creates a token. This creates tokens for the underlying objects as well.
        */
       Token() {
-        for (int i = 0; i < NR_INDEXES; ++i) tripleAVLFileTokens[i] = tripleAVLFilePhases[i].use();
+        for (int i = 0; i < nrIndexes; ++i) tripleAVLFileTokens[i] = tripleAVLFilePhases[i].use();
       }
 
 
@@ -1764,7 +1957,7 @@ public final class XA11StatementStoreImpl implements XAStatementStore {
        */
       public void release() {
         assert tripleAVLFileTokens != null : "Invalid Token";
-        for (int i = 0; i < NR_INDEXES; ++i) tripleAVLFileTokens[i].release();
+        for (int i = 0; i < nrIndexes; ++i) tripleAVLFileTokens[i].release();
         tripleAVLFileTokens = null;
         phase = null;
       }
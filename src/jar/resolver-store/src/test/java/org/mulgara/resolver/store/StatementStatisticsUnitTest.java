@@ -0,0 +1,164 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.resolver.store;
+
+// Java 2 standard packages
+import java.io.File;
+
+// Third party packages
+import junit.framework.*;
+
+// Locally written packages
+import org.mulgara.store.nodepool.NodePool;
+import org.mulgara.store.statement.xa11.XA11StatementStoreImpl;
+import org.mulgara.store.tuples.StatisticsAnnotation;
+import org.mulgara.util.TempDir;
+
+/**
+ * Test case for {@link StatementStatistics}.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public class StatementStatisticsUnitTest extends TestCase {
+
+  private static final long SYSTEM_GRAPH = 100;
+  private static final long RDF_TYPE = 101;
+  private static final long GRAPH_TYPE = 102;
+  private static final long GRAPH = 103;
+  private static final long PREDICATE = 104;
+
+  /** The number of subjects with the predicate. */
+  private static final int SUBJECTS = 200;
+
+  /** The number of objects of each subject. */
+  private static final int OBJECTS_PER_SUBJECT = 5;
+
+  /** The number of distinct objects of the predicate. */
+  private static final int OBJECTS = 20;
+
+  /** The pattern for the statements with the predicate. */
+  private static final long[] PATTERN = new long[] { NodePool.NONE, PREDICATE, NodePool.NONE, GRAPH };
+
+  /** The store to read. */
+  private XA11StatementStoreImpl store;
+
+  /**
+   * Constructs a new test with the given name.
+   * @param name the name of the test
+   */
+  public StatementStatisticsUnitTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Hook for test runner to obtain a test suite from.
+   * @return The test suite
+   */
+  public static Test suite() {
+    TestSuite suite = new TestSuite();
+    suite.addTest(new StatementStatisticsUnitTest("testCompleteSample"));
+    suite.addTest(new StatementStatisticsUnitTest("testPartialSample"));
+    suite.addTest(new StatementStatisticsUnitTest("testRefresh"));
+    suite.addTest(new StatementStatisticsUnitTest("testDisabled"));
+    return suite;
+  }
+
+  /**
+   * Default text runner.
+   * @param args The command line arguments
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+
+  /**
+   * A sample of all the statements counts the distinct values exactly.
+   */
+  public void testCompleteSample() throws Exception {
+    long[] distinct = new StatementStatistics(10000).getDistinctCounts(store, PATTERN, SUBJECTS * OBJECTS_PER_SUBJECT);
+    assertEquals(SUBJECTS, distinct[0]);
+    assertEquals(StatisticsAnnotation.UNKNOWN, distinct[1]);
+    assertEquals(OBJECTS, distinct[2]);
+    assertEquals(StatisticsAnnotation.UNKNOWN, distinct[3]);
+  }
+
+  /**
+   * A sample of some of the statements estimates the distinct values.
+   */
+  public void testPartialSample() throws Exception {
+    long[] distinct = new StatementStatistics(100).getDistinctCounts(store, PATTERN, SUBJECTS * OBJECTS_PER_SUBJECT);
+    assertTrue("Subjects estimated as " + distinct[0], distinct[0] >= SUBJECTS / 2 && distinct[0] <= SUBJECTS * 2);
+    assertTrue("Objects estimated as " + distinct[2], distinct[2] >= OBJECTS / 2 && distinct[2] <= OBJECTS * 2);
+  }
+
+  /**
+   * Estimates are kept until the number of statements changes by more than a tenth.
+   */
+  public void testRefresh() throws Exception {
+    StatementStatistics statistics = new StatementStatistics(10000);
+    long count = SUBJECTS * OBJECTS_PER_SUBJECT;
+    long[] distinct = statistics.getDistinctCounts(store, PATTERN, count);
+    assertSame(distinct, statistics.getDistinctCounts(store, PATTERN, count + count / 20));
+
+    for (int o = 0; o < count / 2; o++) store.addTriple(999, PREDICATE, 3000 + o, GRAPH);
+    long[] refreshed = statistics.getDistinctCounts(store, PATTERN, count + count / 2);
+    assertNotSame(distinct, refreshed);
+    assertEquals(SUBJECTS + 1, refreshed[0]);
+    assertEquals(OBJECTS + count / 2, refreshed[2]);
+  }
+
+  /**
+   * A sample size of 0 gives no estimates.
+   */
+  public void testDisabled() throws Exception {
+    long[] distinct = new StatementStatistics(0).getDistinctCounts(store, PATTERN, SUBJECTS * OBJECTS_PER_SUBJECT);
+    for (int i = 0; i < distinct.length; i++) assertEquals(StatisticsAnnotation.UNKNOWN, distinct[i]);
+  }
+
+  /**
+   * Creates a store holding a predicate with several objects for each subject.
+   */
+  protected void setUp() throws Exception {
+    boolean exceptionOccurred = true;
+    try {
+      store = new XA11StatementStoreImpl(new File(TempDir.getTempDir(), "statisticstest").toString());
+      store.clear();
+      store.initializeSystemNodes(SYSTEM_GRAPH, RDF_TYPE, GRAPH_TYPE);
+      store.addTriple(SYSTEM_GRAPH, RDF_TYPE, GRAPH_TYPE, SYSTEM_GRAPH);
+      store.addTriple(GRAPH, RDF_TYPE, GRAPH_TYPE, SYSTEM_GRAPH);
+      for (int s = 0; s < SUBJECTS; s++) {
+        for (int o = 0; o < OBJECTS_PER_SUBJECT; o++) {
+          store.addTriple(1000 + s, PREDICATE, 2000 + (s + o) % OBJECTS, GRAPH);
+        }
+      }
+      exceptionOccurred = false;
+    } finally {
+      if (exceptionOccurred) tearDown();
+    }
+  }
+
+  /**
+   * Closes the store.
+   */
+  protected void tearDown() throws Exception {
+    if (store != null) {
+      try {
+        store.unmap();
+        store.delete();
+      } finally {
+        store = null;
+      }
+    }
+  }
+}
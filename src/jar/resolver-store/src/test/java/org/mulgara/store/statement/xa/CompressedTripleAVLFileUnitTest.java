@@ -0,0 +1,202 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.store.statement.xa;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+// Third party packages
+import junit.framework.*;
+
+// Locally written packages
+import org.mulgara.store.xa.Block;
+
+/**
+ * Test cases for TripleAVLFile with compressed triple blocks.  These run all
+ * of the tests for uncompressed files, as well as tests of the compressed
+ * block format.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public class CompressedTripleAVLFileUnitTest extends TripleAVLFileUnitTest {
+
+  /** The size of a compressed block. */
+  private static final int BLOCK_SIZE = 8 * 1024;
+
+  /**
+   * Named constructor.
+   *
+   * @param name The name of the test.
+   */
+  public CompressedTripleAVLFileUnitTest(String name) {
+    super(name);
+  }
+
+
+  /**
+   * Hook for test runner to obtain a test suite from.
+   *
+   * @return The test suite to run.
+   */
+  public static Test suite() {
+    TestSuite suite = new TestSuite();
+    suite.addTest(new CompressedTripleAVLFileUnitTest("testInsert"));
+    suite.addTest(new CompressedTripleAVLFileUnitTest("testContains"));
+    suite.addTest(new CompressedTripleAVLFileUnitTest("testRemove"));
+    suite.addTest(new CompressedTripleAVLFileUnitTest("testReinsert"));
+    suite.addTest(new CompressedTripleAVLFileUnitTest("testPersist"));
+    suite.addTest(new CompressedTripleAVLFileUnitTest("testMultiphase"));
+    suite.addTest(new CompressedTripleAVLFileUnitTest("testFindTuples"));
+    suite.addTest(new CompressedTripleAVLFileUnitTest("testTuplesContent"));
+    suite.addTest(new CompressedTripleAVLFileUnitTest("testLargeTuplesContent"));
+    suite.addTest(new CompressedTripleAVLFileUnitTest("testPrefix"));
+    suite.addTest(new CompressedTripleAVLFileUnitTest("testBulkLoad"));
+    suite.addTest(new CompressedTripleAVLFileUnitTest("testAbortBulkLoad"));
+    suite.addTest(new CompressedTripleAVLFileUnitTest("testCodec"));
+    suite.addTest(new CompressedTripleAVLFileUnitTest("testLargeNodes"));
+    return suite;
+  }
+
+
+  /**
+   * Default test runner.
+   *
+   * @param args The command line arguments
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+
+
+  /**
+   * Creates a file with compressed triple blocks.
+   */
+  protected TripleAVLFile createTripleAVLFile(File file, int[] sortOrder) throws IOException {
+    TripleAVLFile tripleAVLFile = new TripleAVLFile(file, sortOrder, true);
+    assertTrue(tripleAVLFile.isCompressed());
+    return tripleAVLFile;
+  }
+
+
+  /**
+   * Encode and decode blocks, including nodes that need the full 64 bits.
+   *
+   * @throws Exception If a block could not be encoded.
+   */
+  public void testCodec() throws Exception {
+    TripleBlockCodec codec = new TripleBlockCodec(BLOCK_SIZE, new int[] {3, 0, 1, 2});
+    long[][] triples = new long[][] {
+        {1, 2, 3, 4},
+        {1, 2, 4, 4},
+        {1, 7, 0, 4},
+        {Long.MAX_VALUE, 0, 0, 4},
+        {0, 1, 1, Long.MAX_VALUE},
+        {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE}
+    };
+    Block block = Block.newInstance(triples.length * 4 * 8);
+    for (int i = 0; i < triples.length; i++) block.put(i * 4, triples[i]);
+
+    Block raw = Block.newInstance(BLOCK_SIZE);
+    codec.encode(block, triples.length, raw);
+    ByteBuffer decoded = codec.decode(raw);
+    assertEquals(triples.length * 4 * 8, decoded.capacity());
+    for (int i = 0; i < triples.length; i++) {
+      for (int j = 0; j < 4; j++) assertEquals(triples[i][j], decoded.getLong((i * 4 + j) * 8));
+    }
+
+    // {1, 2, 3, 4} takes a byte for each node, and {1, 2, 4, 4} only needs
+    // the difference in the third node
+    assertEquals(TripleBlockCodec.HEADER_SIZE + 4 + 1, codec.encodedSize(block, 2));
+    assertEquals(
+        codec.encodedSize(block, triples.length),
+        codec.encodedSize(block, 1) + codec.insertSize(block, 1, 1, triples[1]) +
+        codec.size(triples[1], triples[2]) + codec.size(triples[2], triples[3]) +
+        codec.size(triples[3], triples[4]) + codec.size(triples[4], triples[5])
+    );
+
+    // inserting between two triples replaces the difference between them
+    Block pair = Block.newInstance(2 * 4 * 8);
+    pair.put(0, triples[0]);
+    pair.put(4, triples[2]);
+    assertEquals(
+        codec.encodedSize(block, 3) - codec.encodedSize(pair, 2),
+        codec.insertSize(pair, 2, 1, triples[1])
+    );
+
+    // a block can not hold too many large nodes
+    Block large = Block.newInstance(300 * 4 * 8);
+    for (int i = 0; i < 300; i++) {
+      large.put(i * 4, new long[] {Long.MAX_VALUE - i, Long.MAX_VALUE, Long.MAX_VALUE, 1L << 62});
+    }
+    try {
+      codec.encode(large, 300, raw);
+      fail("Encoded a block larger than " + BLOCK_SIZE + " bytes");
+    } catch (IOException ex) {
+      // NO-OP
+    }
+  }
+
+
+  /**
+   * Add and remove triples with large and scattered nodes, so that blocks
+   * fill up before they reach the most triples that a block can hold.
+   *
+   * @throws Exception EXCEPTION TO DO
+   */
+  public void testLargeNodes() throws Exception {
+    TripleAVLFile.Phase phase0 = tripleAVLFile.new Phase();
+    tripleAVLFile.clear();
+    TripleAVLFile.Phase.Token token0 = phase0.use();
+    TripleAVLFile.Phase phase1 = tripleAVLFile.new Phase();
+
+    for (int i = 0; i < 5000; i++) {
+      phase1.addTriple(node(i), node(i + 1), node(i + 2), i % 7);
+    }
+    assertEquals(5000, phase1.getNrTriples());
+    assertEquals(5000, phase1.checkIntegrity());
+
+    TripleAVLFile.Phase.Token token1 = phase1.use();
+    TripleAVLFile.Phase phase2 = tripleAVLFile.new Phase();
+    for (int i = 0; i < 5000; i += 2) {
+      phase2.removeTriple(node(i), node(i + 1), node(i + 2), i % 7);
+    }
+    for (int i = 5000; i < 6000; i++) {
+      phase2.addTriple(node(i), node(i + 1), node(i + 2), i % 7);
+    }
+    assertEquals(3500, phase2.getNrTriples());
+    assertEquals(3500, phase2.checkIntegrity());
+
+    // the blocks of the earlier phase are unchanged
+    for (int i = 0; i < 6000; i++) {
+      long n0 = node(i), n1 = node(i + 1), n2 = node(i + 2);
+      assertEquals(i < 5000, phase1.existsTriple(n0, n1, n2, i % 7));
+      assertEquals(i % 2 == 1 || i >= 5000, phase2.existsTriple(n0, n1, n2, i % 7));
+    }
+
+    token1.release();
+    tripleAVLFile.new Phase(phase0);
+    token0.release();
+  }
+
+
+  /**
+   * Gets a large node number, scattered over most of the range of a long.
+   *
+   * @param i The index of the node.
+   * @return The node number.
+   */
+  private static long node(int i) {
+    return ((i + 1) * 0x9E3779B97F4A7C15L) >>> 8;
+  }
+}
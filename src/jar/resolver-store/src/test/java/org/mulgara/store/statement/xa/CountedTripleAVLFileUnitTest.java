@@ -0,0 +1,80 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.store.statement.xa;
+
+import java.io.*;
+
+// Third party packages
+import junit.framework.*;
+
+/**
+ * Test cases for TripleAVLFile with counted AVL nodes.  These run all of the
+ * tests for uncounted files, with and without compressed triple blocks.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public class CountedTripleAVLFileUnitTest extends TripleAVLFileUnitTest {
+
+  /** Whether the triple blocks of the file being tested are compressed. */
+  private final boolean compressed;
+
+  /**
+   * Named constructor.
+   *
+   * @param name The name of the test.
+   * @param compressed Whether to test compressed triple blocks.
+   */
+  public CountedTripleAVLFileUnitTest(String name, boolean compressed) {
+    super(name);
+    this.compressed = compressed;
+  }
+
+
+  /**
+   * Hook for test runner to obtain a test suite from.
+   *
+   * @return The test suite to run.
+   */
+  public static Test suite() {
+    String[] tests = new String[] {
+        "testInsert", "testContains", "testRemove", "testReinsert", "testPersist",
+        "testMultiphase", "testFindTuples", "testTuplesContent", "testLargeTuplesContent",
+        "testPrefix", "testBulkLoad", "testAbortBulkLoad", "testRowCount"
+    };
+    TestSuite suite = new TestSuite();
+    for (String test : tests) suite.addTest(new CountedTripleAVLFileUnitTest(test, false));
+    for (String test : tests) suite.addTest(new CountedTripleAVLFileUnitTest(test, true));
+    return suite;
+  }
+
+
+  /**
+   * Default test runner.
+   *
+   * @param args The command line arguments
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+
+
+  /**
+   * Creates a file with counted AVL nodes.
+   */
+  protected TripleAVLFile createTripleAVLFile(File file, int[] sortOrder) throws IOException {
+    TripleAVLFile tripleAVLFile = new TripleAVLFile(file, sortOrder, compressed, true);
+    assertTrue(tripleAVLFile.isCounted());
+    return tripleAVLFile;
+  }
+}
@@ -73,7 +73,7 @@ public class TripleAVLFileUnitTest extends TestCase {
   /**
    * Description of the Field
    */
-  private TripleAVLFile tripleAVLFile;
+  protected TripleAVLFile tripleAVLFile;
 
   /**
    * Named constructor.
@@ -102,6 +102,9 @@ public class TripleAVLFileUnitTest extends TestCase {
     suite.addTest(new TripleAVLFileUnitTest("testTuplesContent"));
     suite.addTest(new TripleAVLFileUnitTest("testLargeTuplesContent"));
     suite.addTest(new TripleAVLFileUnitTest("testPrefix"));
+    suite.addTest(new TripleAVLFileUnitTest("testBulkLoad"));
+    suite.addTest(new TripleAVLFileUnitTest("testAbortBulkLoad"));
+    suite.addTest(new TripleAVLFileUnitTest("testRowCount"));
     return suite;
   }
 
@@ -124,7 +127,7 @@ public class TripleAVLFileUnitTest extends TestCase {
   public void setUp() throws IOException {
     boolean exceptionOccurred = true;
     try {
-      tripleAVLFile = new TripleAVLFile(
+      tripleAVLFile = createTripleAVLFile(
           new File(TempDir.getTempDir(), "tavlftest"),
           new int[] {0, 1, 2, 3}
       );
@@ -137,6 +140,18 @@ public class TripleAVLFileUnitTest extends TestCase {
     }
   }
 
+  /**
+   * Creates the file to test.
+   *
+   * @param file The base name of the file.
+   * @param sortOrder The order of the columns of the triples.
+   * @return The new file.
+   * @throws IOException If the file could not be created.
+   */
+  protected TripleAVLFile createTripleAVLFile(File file, int[] sortOrder) throws IOException {
+    return new TripleAVLFile(file, sortOrder);
+  }
+
   /**
    * Closes the file used for testing.
    *
@@ -522,5 +537,162 @@ public class TripleAVLFileUnitTest extends TestCase {
     token0.release();
   }
 
-}
 
+  /**
+   * Test loading triples into an empty file, with the triples spread over
+   * several runs which are merged in more than one pass.
+   *
+   * @throws Exception EXCEPTION TO DO
+   */
+  public void testBulkLoad() throws Exception {
+    TripleAVLFile.Phase phase0 = tripleAVLFile.new Phase();
+    tripleAVLFile.clear();
+    TripleAVLFile.Phase.Token token0 = phase0.use();
+    TripleAVLFile.Phase phase1 = tripleAVLFile.new Phase();
+
+    TripleBulkLoader.setRunParameters(1000, 2);
+    try {
+      // add every triple twice, in a scrambled order
+      for (int pass = 0; pass < 2; pass++) {
+        for (int i = 0; i < 60000; i++) {
+          int n = (i * 7919) % 60000;
+          phase1.asyncAddTriple(new long[] {n / 1000 + 1, n % 1000 + 1, 7, 6});
+        }
+      }
+      assertEquals(60000, phase1.getNrTriples());
+      assertEquals(60000, phase1.checkIntegrity());
+    } finally {
+      TripleBulkLoader.setRunParameters(
+          TripleBulkLoader.DEFAULT_RUN_SIZE, TripleBulkLoader.DEFAULT_MERGE_WIDTH
+      );
+    }
+
+    Tuples tuples = phase1.findTuples(3);
+    tuples.beforeFirst();
+    for (int j = 1; j <= 1000; j++) {
+      assertTrue(tuples.next());
+      assertEquals(j, tuples.getColumnValue(0));
+    }
+    assertTrue(!tuples.next());
+    tuples.close();
+
+    // the file can be modified as usual after a bulk load
+    assertTrue(phase1.existsTriple(60, 1000, 7, 6));
+    phase1.addTriple(30, 1001, 7, 6);
+    phase1.addTriple(70, 1, 7, 6);
+    phase1.removeTriple(1, 1, 7, 6);
+    assertTrue(phase1.existsTriple(30, 1001, 7, 6));
+    assertTrue(!phase1.existsTriple(1, 1, 7, 6));
+    assertEquals(60001, phase1.getNrTriples());
+    assertEquals(60001, phase1.checkIntegrity());
+
+    tripleAVLFile.new Phase(phase0);
+    token0.release();
+  }
+
+
+  /**
+   * Test that a bulk load is discarded when the phase is rolled back.
+   *
+   * @throws Exception EXCEPTION TO DO
+   */
+  public void testAbortBulkLoad() throws Exception {
+    TripleAVLFile.Phase phase0 = tripleAVLFile.new Phase();
+    tripleAVLFile.clear();
+    TripleAVLFile.Phase.Token token0 = phase0.use();
+    TripleAVLFile.Phase phase1 = tripleAVLFile.new Phase();
+
+    for (int i = 1; i <= 60000; i++) {
+      phase1.asyncAddTriple(new long[] {i, 2, 3, 4});
+    }
+
+    TripleAVLFile.Phase phase2 = tripleAVLFile.new Phase(phase0);
+    assertTrue(phase2.isEmpty());
+    assertEquals(0, phase2.getNrTriples());
+
+    phase2.addTriple(1, 2, 3, 4);
+    assertEquals(1, phase2.checkIntegrity());
+
+    tripleAVLFile.new Phase(phase0);
+    token0.release();
+  }
+
+
+
+  /**
+   * Test counting the rows of ranges of triples, as triples are added and
+   * removed, and that the counts of an earlier phase are not changed by a
+   * later one.
+   *
+   * @throws Exception EXCEPTION TO DO
+   */
+  public void testRowCount() throws Exception {
+    TripleAVLFile.Phase phase0 = tripleAVLFile.new Phase();
+    tripleAVLFile.clear();
+    TripleAVLFile.Phase.Token token0 = phase0.use();
+    TripleAVLFile.Phase phase1 = tripleAVLFile.new Phase();
+
+    // enough triples to split blocks and rebalance the tree, in a scrambled order
+    for (int i = 0; i < 20000; i++) {
+      int n = (i * 7919) % 20000;
+      phase1.addTriple(n % 50 + 1, n / 50 + 1, n % 7 + 1, 1);
+    }
+    for (int n = 0; n < 20000; n += 3) {
+      phase1.removeTriple(n % 50 + 1, n / 50 + 1, n % 7 + 1, 1);
+    }
+    assertEquals(phase1.getNrTriples(), phase1.checkIntegrity());
+    assertRowCounts(phase1);
+
+    TripleAVLFile.Phase.Token token1 = phase1.use();
+    TripleAVLFile.Phase phase2 = tripleAVLFile.new Phase();
+    for (int n = 1; n < 20000; n += 3) {
+      phase2.removeTriple(n % 50 + 1, n / 50 + 1, n % 7 + 1, 1);
+    }
+    for (int i = 0; i < 5000; i++) {
+      phase2.addTriple(i % 60 + 1, i / 60 + 1000, 1, 1);
+    }
+    assertEquals(phase2.getNrTriples(), phase2.checkIntegrity());
+    assertRowCounts(phase2);
+
+    // the earlier phase is unchanged
+    assertEquals(phase1.getNrTriples(), phase1.checkIntegrity());
+    assertRowCounts(phase1);
+    token1.release();
+
+    tripleAVLFile.new Phase(phase0);
+    token0.release();
+  }
+
+
+  /**
+   * Checks the row counts of tuples for single nodes and pairs of nodes
+   * against the number of rows that the tuples contain.
+   *
+   * @param phase The phase to check.
+   * @throws Exception If the tuples could not be read.
+   */
+  private static void assertRowCounts(TripleAVLFile.Phase phase) throws Exception {
+    for (long node0 = 1; node0 <= 61; node0 += 4) {
+      assertRowCount(phase.findTuples(node0));
+      for (long node1 = 1; node1 <= 1100; node1 += 97) {
+        assertRowCount(phase.findTuples(node0, node1));
+      }
+    }
+  }
+
+
+  /**
+   * Checks the row count of tuples against the number of rows they contain,
+   * and closes the tuples.
+   *
+   * @param tuples The tuples to check.
+   * @throws Exception If the tuples could not be read.
+   */
+  private static void assertRowCount(Tuples tuples) throws Exception {
+    long rows = 0;
+    tuples.beforeFirst();
+    while (tuples.next()) rows++;
+    assertEquals(rows, tuples.getRowCount());
+    tuples.close();
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+package org.mulgara.store.statement.xa;
+
+// Java 2 standard packages
+import java.io.*;
+import java.util.List;
+
+// JUnit
+import junit.framework.*;
+
+// locally written packages
+import org.mulgara.util.*;
+
+/**
+ * Test case for {@link TripleStoreCompressor}.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public class TripleStoreCompressorUnitTest extends TestCase {
+
+  /** start of filenames to build the store with. */
+  private final static String DBFILENAME = "compressortest";
+
+  /**
+   * Named constructor.
+   *
+   * @param name The name of the test.
+   */
+  public TripleStoreCompressorUnitTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Hook for test runner to obtain a test suite from.
+   *
+   * @return The test suite to run.
+   */
+  public static Test suite() {
+    TestSuite suite = new TestSuite();
+    suite.addTest(new TripleStoreCompressorUnitTest("testResume"));
+    return suite;
+  }
+
+  /**
+   * Default test runner.
+   *
+   * @param args The command line arguments
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+
+  /**
+   * Test that converting a store again completes a conversion that stopped
+   * part way through renaming the files.
+   *
+   * @throws Exception The store could not be converted.
+   */
+  public void testResume() throws Exception {
+    String name = TempDir.getTempDir().getPath() + File.separatorChar + DBFILENAME;
+    String backupName = name + TripleStoreCompressor.BACKUP_SUFFIX;
+    try {
+      XAStatementStoreImpl oldStore = new XAStatementStoreImpl(name, false);
+      oldStore.clear();
+      for (int i = 1; i <= 1000; i++) oldStore.addTriple(i, 2, i * 1000L, 1 + i % 3);
+      oldStore.prepare();
+      oldStore.commit();
+      int phase = oldStore.getPhaseNumber();
+      oldStore.close();
+
+      TripleStoreCompressor compressor = new TripleStoreCompressor(name, false);
+      assertEquals(1000, compressor.build(phase));
+      assertTrue(new File(name + TripleStoreCompressor.MANIFEST_SUFFIX).exists());
+
+      // stop after renaming one of the old files
+      List<File> oldFiles = TripleStoreCompressor.listStoreFiles(name);
+      File first = oldFiles.get(0);
+      assertTrue(first.renameTo(new File(backupName + first.getName().substring(new File(name).getName().length()))));
+
+      assertEquals(0, new TripleStoreCompressor(name, false).compress(phase));
+      assertFalse(new File(name + TripleStoreCompressor.MANIFEST_SUFFIX).exists());
+      assertTrue(TripleStoreCompressor.listStoreFiles(name + TripleStoreCompressor.TEMP_SUFFIX).isEmpty());
+      assertEquals(oldFiles.size(), TripleStoreCompressor.listStoreFiles(backupName).size());
+
+      XAStatementStoreImpl newStore = new XAStatementStoreImpl(name, false);
+      try {
+        newStore.recover();
+        newStore.selectPhase(phase);
+        assertTrue(newStore.isCompressed());
+        assertEquals(1000, newStore.getNrTriples());
+        assertTrue(newStore.existsTriples(123, 2, 123000L, 1 + 123 % 3));
+      } finally {
+        newStore.close();
+      }
+    } finally {
+      for (File f: TripleStoreCompressor.listStoreFiles(name)) f.delete();
+      for (File f: TripleStoreCompressor.listStoreFiles(backupName)) f.delete();
+    }
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+package org.mulgara.store.statement.xa11;
+
+// Java 2 standard packages
+import java.io.*;
+
+// JUnit
+import junit.framework.*;
+
+// locally written packages
+import org.mulgara.store.statement.*;
+import org.mulgara.store.statement.xa.TripleStoreCompressor;
+import org.mulgara.store.tuples.TestTuples;
+import org.mulgara.util.*;
+
+/**
+ * Test case for {@link XA11StatementStoreImpl} with compressed triple blocks.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public class XA11CompressedStatementStoreImplUnitTest extends StatementStoreAbstractUnitTest {
+
+  /** start of filenames to build the graph with. */
+  private final static String DBFILENAME = "compressedtest";
+
+  /** The store being tested. */
+  private XA11StatementStoreImpl xaStore;
+
+  /**
+   * Named constructor.
+   *
+   * @param name The name of the test.
+   */
+  public XA11CompressedStatementStoreImplUnitTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Hook for test runner to obtain a test suite from.
+   *
+   * @return The test suite to run.
+   */
+  public static Test suite() {
+    return new TestSuite(XA11CompressedStatementStoreImplUnitTest.class);
+  }
+
+  /**
+   * Default test runner.
+   *
+   * @param args The command line arguments
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+
+  /**
+   * Test that a store keeps its compressed format when it is opened again.
+   *
+   * @throws Exception The store could not be reopened.
+   */
+  public void testReopen() throws Exception {
+    assertTrue(xaStore.isCompressed());
+    xaStore.prepare();
+    xaStore.commit();
+    xaStore.close();
+
+    xaStore = new XA11StatementStoreImpl(getFileName(), false, false);
+    store = xaStore;
+    xaStore.selectPhase(lastPhase(xaStore.recover()));
+    assertTrue(xaStore.isCompressed());
+    assertFalse(xaStore.hasCrossGraphIndexes());
+    assertEquals(6, xaStore.checkIntegrity());
+    assertTrue(xaStore.existsTriples(2, 5, 6, 2));
+  }
+
+  /**
+   * Test converting an uncompressed store.
+   *
+   * @throws Exception The store could not be converted.
+   */
+  public void testCompressor() throws Exception {
+    String name = getFileName() + "_old";
+    XA11StatementStoreImpl oldStore = new XA11StatementStoreImpl(name, true, false);
+    oldStore.clear();
+    for (int i = 1; i <= 3000; i++) oldStore.addTriple(i, 2, i * 1000L, 1 + i % 3);
+    oldStore.prepare();
+    oldStore.commit();
+    oldStore.removeTriples(3000, 2, 3000000L, 1);
+    oldStore.prepare();
+    oldStore.commit();
+    int oldPhase = oldStore.getPhaseNumber();
+    oldStore.close();
+
+    // only a phase committed by the store can be converted
+    try {
+      new TripleStoreCompressor(name, true).compress(oldPhase + 1);
+      fail("Converted a phase that was never committed");
+    } catch (IOException e) { }
+    assertTrue(TripleStoreCompressor.listStoreFiles(name + TripleStoreCompressor.TEMP_SUFFIX).isEmpty());
+
+    assertEquals(2999, new TripleStoreCompressor(name, true).compress(oldPhase));
+    assertFalse(TripleStoreCompressor.listStoreFiles(name + TripleStoreCompressor.BACKUP_SUFFIX).isEmpty());
+    assertTrue(TripleStoreCompressor.listStoreFiles(name + TripleStoreCompressor.TEMP_SUFFIX).isEmpty());
+    assertFalse(new File(name + TripleStoreCompressor.MANIFEST_SUFFIX).exists());
+
+    XA11StatementStoreImpl newStore = new XA11StatementStoreImpl(name, false, false);
+    try {
+      // the phase must still match the other resources of the database
+      int[] phaseNumbers = newStore.recover();
+      boolean found = false;
+      for (int p: phaseNumbers) found |= p == oldPhase;
+      assertTrue("Phase " + oldPhase + " not recovered", found);
+      newStore.selectPhase(oldPhase);
+      assertTrue(newStore.isCompressed());
+      assertTrue(newStore.hasCrossGraphIndexes());
+      assertEquals(2999, newStore.getNrTriples());
+      assertEquals(2999, newStore.checkIntegrity());
+      assertTrue(newStore.existsTriples(1234, 2, 1234000L, 1 + 1234 % 3));
+      assertFalse(newStore.existsTriples(1234, 2, 1234001L, 1 + 1234 % 3));
+      newStore.close();
+
+      // a compressed store is left alone
+      assertEquals(0, new TripleStoreCompressor(name, true).compress(oldPhase));
+    } finally {
+      newStore.close();
+      for (File f: TripleStoreCompressor.listStoreFiles(name)) f.delete();
+      for (File f: TripleStoreCompressor.listStoreFiles(name + TripleStoreCompressor.BACKUP_SUFFIX)) f.delete();
+    }
+  }
+
+  /**
+   * Creates a new compressed store before each test.
+   *
+   * @throws Exception The store could not be created.
+   */
+  protected void setUp() throws Exception {
+    boolean exceptionOccurred = true;
+    try {
+      xaStore = new XA11StatementStoreImpl(getFileName(), false, true);
+      store = xaStore;
+      xaStore.clear();
+      super.setUp();
+      exceptionOccurred = false;
+    } finally {
+      if (exceptionOccurred) tearDown();
+    }
+  }
+
+  /**
+   * The teardown method for JUnit
+   *
+   * @throws Exception The store could not be closed.
+   */
+  protected void tearDown() throws Exception {
+    if (xaStore != null) xaStore.unmap();
+    super.tearDown();
+  }
+
+  /**
+   * Return a dump of all tuples, sorted by the primary index: 3012.
+   * @see org.mulgara.store.statement.StatementStoreAbstractUnitTest#getDump()
+   */
+  protected TestTuples getDump() {
+    TestTuples expected = new TestTuples();
+    add(expected, StatementStore.VARIABLES, new long[] {1, 2, 3, 1});
+    add(expected, StatementStore.VARIABLES, new long[] {1, 2, 4, 2});
+    add(expected, StatementStore.VARIABLES, new long[] {2, 5, 6, 2});
+    add(expected, StatementStore.VARIABLES, new long[] {1, RDF_TYPE, GRAPH_TYPE, SYSTEM_GRAPH});
+    add(expected, StatementStore.VARIABLES, new long[] {2, RDF_TYPE, GRAPH_TYPE, SYSTEM_GRAPH});
+    add(expected, StatementStore.VARIABLES, new long[] {SYSTEM_GRAPH, RDF_TYPE, GRAPH_TYPE, SYSTEM_GRAPH});
+    return expected;
+  }
+
+  /**
+   * Gets the latest of the phases found when recovering a store.
+   *
+   * @param phaseNumbers The phase numbers.
+   * @return The latest phase number.
+   */
+  private static int lastPhase(int[] phaseNumbers) {
+    int phaseNumber = phaseNumbers[0];
+    for (int p: phaseNumbers) phaseNumber = Math.max(phaseNumber, p);
+    return phaseNumber;
+  }
+
+  /**
+   * Gets the base name of the store files.
+   *
+   * @return The base file name.
+   */
+  private static String getFileName() {
+    return TempDir.getTempDir().getPath() + File.separatorChar + DBFILENAME;
+  }
+
+}
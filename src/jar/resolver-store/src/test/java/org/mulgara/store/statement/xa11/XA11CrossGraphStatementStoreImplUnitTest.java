@@ -0,0 +1,184 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+package org.mulgara.store.statement.xa11;
+
+// Java 2 standard packages
+import java.io.*;
+
+// JUnit
+import junit.framework.*;
+
+// locally written packages
+import org.mulgara.query.Variable;
+import org.mulgara.store.nodepool.NodePool;
+import org.mulgara.store.statement.*;
+import org.mulgara.store.tuples.StoreTuples;
+import org.mulgara.store.tuples.TestTuples;
+import org.mulgara.store.tuples.Tuples;
+import org.mulgara.util.*;
+
+/**
+ * Test case for {@link XA11StatementStoreImpl} with the cross-graph indexes.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public class XA11CrossGraphStatementStoreImplUnitTest extends StatementStoreAbstractUnitTest {
+
+  /** start of filenames to build the graph with. */
+  private final static String DBFILENAME = "crossgraphtest";
+
+  /** The store being tested. */
+  private XA11StatementStoreImpl xaStore;
+
+  /**
+   * Named constructor.
+   *
+   * @param name The name of the test.
+   */
+  public XA11CrossGraphStatementStoreImplUnitTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Hook for test runner to obtain a test suite from.
+   *
+   * @return The test suite to run.
+   */
+  public static Test suite() {
+    return new TestSuite(XA11CrossGraphStatementStoreImplUnitTest.class);
+  }
+
+  /**
+   * Default test runner.
+   *
+   * @param args The command line arguments
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+
+  /**
+   * Test that a store keeps its cross-graph indexes when it is opened again.
+   */
+  public void testReopen() throws Exception {
+    assertTrue(xaStore.hasCrossGraphIndexes());
+    xaStore.prepare();
+    xaStore.commit();
+    xaStore.close();
+
+    xaStore = new XA11StatementStoreImpl(getFileName(), false);
+    store = xaStore;
+    xaStore.initializeSystemNodes(SYSTEM_GRAPH, RDF_TYPE, GRAPH_TYPE);
+    int[] phaseNumbers = xaStore.recover();
+    int phaseNumber = phaseNumbers[0];
+    for (int p: phaseNumbers) phaseNumber = Math.max(phaseNumber, p);
+    xaStore.selectPhase(phaseNumber);
+    assertTrue(xaStore.hasCrossGraphIndexes());
+    assertEquals(6, xaStore.checkIntegrity());
+
+    TestTuples expected = new TestTuples();
+    Variable[] vars = new Variable[] {StatementStore.VARIABLES[2], StatementStore.VARIABLES[0], StatementStore.VARIABLES[3]};
+    add(expected, vars, new long[] {3, 1, 1});
+    add(expected, vars, new long[] {4, 1, 2});
+    Tuples t = xaStore.findTuples(NodePool.NONE, 2, NodePool.NONE, NodePool.NONE);
+    assertEquals(expected, t);
+    t.close();
+    expected.close();
+  }
+
+  /**
+   * Test that the cross-graph indexes only find triples in the graphs of the store,
+   * like a search of each graph in turn.
+   */
+  public void testUnregisteredGraph() throws Exception {
+    xaStore.addTriple(7, 2, 8, 9);
+
+    TestTuples expected = new TestTuples();
+    Variable[] vars = new Variable[] {StatementStore.VARIABLES[2], StatementStore.VARIABLES[0], StatementStore.VARIABLES[3]};
+    add(expected, vars, new long[] {3, 1, 1});
+    add(expected, vars, new long[] {4, 1, 2});
+    Tuples t = xaStore.findTuples(NodePool.NONE, 2, NodePool.NONE, NodePool.NONE);
+    assertEquals(expected, t);
+    assertEquals(2, t.getRowCount());
+    t.close();
+    expected.close();
+
+    StoreTuples st = xaStore.findTuples(7, 2, 8, NodePool.NONE);
+    assertTrue(st.isEmpty());
+    assertEquals(0, st.getRowCount());
+    st.close();
+
+    st = xaStore.findTuples(false, true, false, false);
+    assertEquals(6, st.getRowCount());
+    st.close();
+
+    // registering the graph makes its triples visible
+    xaStore.addTriple(9, RDF_TYPE, GRAPH_TYPE, SYSTEM_GRAPH);
+    st = xaStore.findTuples(7, 2, 8, NodePool.NONE);
+    assertEquals(1, st.getRowCount());
+    st.close();
+  }
+
+  /**
+   * Creates a new store with the cross-graph indexes before each test.
+   *
+   * @throws Exception The store could not be created.
+   */
+  protected void setUp() throws Exception {
+    boolean exceptionOccurred = true;
+    try {
+      xaStore = new XA11StatementStoreImpl(getFileName(), true);
+      store = xaStore;
+      xaStore.clear();
+      super.setUp();
+      exceptionOccurred = false;
+    } finally {
+      if (exceptionOccurred) tearDown();
+    }
+  }
+
+  /**
+   * The teardown method for JUnit
+   *
+   * @throws Exception The store could not be closed.
+   */
+  protected void tearDown() throws Exception {
+    if (xaStore != null) xaStore.unmap();
+    super.tearDown();
+  }
+
+  /**
+   * Return a dump of all tuples, sorted by the primary index: 3012.
+   * @see org.mulgara.store.statement.StatementStoreAbstractUnitTest#getDump()
+   */
+  protected TestTuples getDump() {
+    TestTuples expected = new TestTuples();
+    add(expected, StatementStore.VARIABLES, new long[] {1, 2, 3, 1});
+    add(expected, StatementStore.VARIABLES, new long[] {1, 2, 4, 2});
+    add(expected, StatementStore.VARIABLES, new long[] {2, 5, 6, 2});
+    add(expected, StatementStore.VARIABLES, new long[] {1, RDF_TYPE, GRAPH_TYPE, SYSTEM_GRAPH});
+    add(expected, StatementStore.VARIABLES, new long[] {2, RDF_TYPE, GRAPH_TYPE, SYSTEM_GRAPH});
+    add(expected, StatementStore.VARIABLES, new long[] {SYSTEM_GRAPH, RDF_TYPE, GRAPH_TYPE, SYSTEM_GRAPH});
+    return expected;
+  }
+
+  /**
+   * Gets the base name of the store files.
+   *
+   * @return The base file name.
+   */
+  private static String getFileName() {
+    return TempDir.getTempDir().getPath() + File.separatorChar + DBFILENAME;
+  }
+
+}
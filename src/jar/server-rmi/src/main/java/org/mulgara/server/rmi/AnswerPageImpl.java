@@ -87,6 +87,9 @@ public class AnswerPageImpl implements AnswerPage, Externalizable {
   /** Efficiency flag to indicate if this is the last page buildable from an answer. */
   private boolean lastPage;
 
+  /** The uncompressed size of the serialized page. Only known for a page that has been read. */
+  private int dataSize = 0;
+
   public AnswerPageImpl() throws TuplesException {
     // nothing
   }
@@ -204,6 +207,14 @@ public class AnswerPageImpl implements AnswerPage, Externalizable {
     return lastPage;
   }
 
+  /**
+   * Gets the number of bytes this page took when serialized, before compression.
+   * @return The size of the serialized data, or 0 if this page was not read from a stream.
+   */
+  public int getDataSize() {
+    return dataSize;
+  }
+
   /**
    * Reads the entire page to the input stream, decompressing if requested.
    * @param in The data stream to read from.
@@ -219,6 +230,7 @@ public class AnswerPageImpl implements AnswerPage, Externalizable {
 
     // read in the bytes which make up the rest of the object
     byte[] byteArray = (byte[])in.readObject();
+    dataSize = compression ? uncompressedSize : byteArray.length;
 
     // convert the bytes to a stream
     InputStream dataStream = new ByteArrayInputStream(byteArray);
@@ -77,6 +77,22 @@ public class AnswerWrapperRemoteAnswer extends Rmi implements RemoteAnswer, Clon
    */
   protected final Answer answer;
 
+  /**
+   * The time to wait for an earlier page to be requested, in milliseconds.
+   */
+  private final int sequenceTimeout = Integer.getInteger(RemoteAnswerWrapperAnswer.PREFETCH_TIMEOUT_PROPERTY,
+      RemoteAnswerWrapperAnswer.DEFAULT_PREFETCH_TIMEOUT).intValue();
+
+  /**
+   * The number of the next page to be built by {@link #nextPage(int, int)}.
+   */
+  private int nextSequence = 0;
+
+  /**
+   * Set when the last page has been built, so the answer is not moved past its end.
+   */
+  private boolean exhausted = false;
+
   /**
    * Wraps a new answer for paging of results.
    *
@@ -108,6 +124,9 @@ public class AnswerWrapperRemoteAnswer extends Rmi implements RemoteAnswer, Clon
     try {
       answer.beforeFirst();
       AnswerPage result = nextPage();
+      nextSequence = 0;
+      exhausted = result == null || result.isLastPage();
+      notifyAll();
       return result;
     }
     catch (TuplesException et) {
@@ -247,6 +266,52 @@ public class AnswerWrapperRemoteAnswer extends Rmi implements RemoteAnswer, Clon
     }
   }
 
+  /**
+   * Builds a numbered page of the solution. A request that arrives before the pages
+   * ahead of it waits for them, so pages are built in the order they are numbered,
+   * even when a client has several requests in progress.
+   *
+   * @param sequence The number of the page to return.
+   * @param pageSize The maximum number of rows to put in the page.
+   * @return The new page, or <code>null</code> if there is no data left in the answer.
+   * @throws TuplesException Iterating through the answer caused a problem, or an earlier
+   *         page was not requested in time.
+   * @throws RemoteException Required for RMI interfaces.
+   */
+  public synchronized AnswerPage nextPage(int sequence, int pageSize) throws TuplesException,
+      RemoteException {
+    long end = System.currentTimeMillis() + sequenceTimeout;
+    while (sequence > nextSequence) {
+      long wait = end - System.currentTimeMillis();
+      if (wait <= 0) throw new TuplesException("Timed out waiting for page " + nextSequence + " before page " + sequence);
+      try {
+        wait(wait);
+      } catch (InterruptedException e) {
+        throw new TuplesException("Interrupted waiting for page " + nextSequence, e);
+      }
+    }
+    if (sequence < nextSequence) throw new TuplesException("Page " + sequence + " has already been requested");
+
+    nextSequence++;
+    notifyAll();
+    if (exhausted) return null;
+    try {
+      AnswerPageImpl page = new AnswerPageImpl(answer, Math.max(pageSize, 1));
+      exhausted = page.isLastPage();
+      return (page.getPageSize() == 0) ? null : page;
+    }
+    catch (TuplesException et) {
+      exhausted = true;
+      logger.warn("TuplesException thrown in nextPage", et);
+      throw et;
+    }
+    catch (Throwable t) {
+      exhausted = true;
+      logger.warn("Throwable thrown in nextPage", t);
+      throw new TuplesException("Error in nextPage", t);
+    }
+  }
+
   /**
    * Accessor for the binding of a given variable within the current product
    * term (row).
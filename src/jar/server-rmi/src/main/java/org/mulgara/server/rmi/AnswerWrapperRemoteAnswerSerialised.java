@@ -246,6 +246,16 @@ public class AnswerWrapperRemoteAnswerSerialised implements RemoteAnswer,
     return (getRowCardinality() == ZERO || !nextCanBeCalled) ? null : this;
   }
 
+  /**
+   * The whole answer is held in a single page, so this is the same as {@link #nextPage()}.
+   * @param sequence The number of the page to return. Ignored.
+   * @param pageSize The maximum number of rows in the page. Ignored.
+   * @return This object, or <code>null</code> if there is no data left in the answer.
+   */
+  public AnswerPage nextPage(int sequence, int pageSize) throws TuplesException, RemoteException {
+    return nextPage();
+  }
+
   /**
    * Retrieves the number of rows in this page.
    * @return The number of rows in the current page, this is less than or equal to the page size.
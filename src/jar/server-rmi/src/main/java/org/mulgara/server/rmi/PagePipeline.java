@@ -0,0 +1,358 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.server.rmi;
+
+// Java 2 standard packages
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Third party packages
+import org.apache.log4j.Logger;
+
+// Local packages
+import org.mulgara.query.TuplesException;
+
+/**
+ * Fetches pages from a {@link RemoteAnswer} with several requests in progress at once,
+ * so that the time taken to retrieve a large answer is not dominated by the network
+ * latency of each request. Requests are numbered, and the server builds the pages in
+ * order. The requests are run on a shared pool of threads.
+ *
+ * <p>The number of rows in each page can adapt to the answer. Each page is timed from
+ * when its request started, or when the page before it arrived if that was later, so
+ * the time covers the work done for that page alone. The page size is scaled towards a
+ * target time, and is limited so a page does not take more than a set number of bytes,
+ * using the average width of the rows seen so far.</p>
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+class PagePipeline {
+
+  /** Logger. */
+  private static final Logger logger = Logger.getLogger(PagePipeline.class.getName());
+
+  /** The property for the number of page requests to have in progress. */
+  public static final String WINDOW_PROPERTY = "mulgara.rmi.pagewindow";
+
+  /** The property for the target time to fetch each page, in milliseconds. 0 to use a fixed page size. */
+  public static final String PAGE_TIME_PROPERTY = "mulgara.rmi.pagetime";
+
+  /** The property for the maximum number of bytes in a page. */
+  public static final String PAGE_BYTES_PROPERTY = "mulgara.rmi.pagebytes";
+
+  /** The default number of page requests to have in progress. 1 disables pipelining. */
+  public static final int DEFAULT_WINDOW = 1;
+
+  /** The default target time for fetching a page. */
+  public static final int DEFAULT_PAGE_TIME = 200;
+
+  /** The default maximum size of a page. */
+  public static final int DEFAULT_PAGE_BYTES = 4 * 1024 * 1024;
+
+  /** The smallest number of rows an adaptive page will be reduced to. */
+  static final int MIN_PAGE_SIZE = 100;
+
+  /** The threads used for fetching pages. Threads are reused between answers. */
+  private static final ExecutorService executor = Executors.newCachedThreadPool(new FetchThreadFactory());
+
+  /** The answer to fetch pages from. */
+  private final RemoteAnswer remoteAnswer;
+
+  /** The number of requests to have in progress. */
+  private final int window;
+
+  /** The time to wait for a page, in milliseconds. */
+  private final int timeout;
+
+  /** The target time for fetching a page, in milliseconds. 0 if the page size is fixed. */
+  private final int pageTime;
+
+  /** The maximum number of bytes to put in a page. */
+  private final int pageBytes;
+
+  /** The requests in progress, in the order of the pages. */
+  private final ArrayDeque<Fetch> pending = new ArrayDeque<Fetch>();
+
+  /** The number of the next page to request. */
+  private int sequence = 0;
+
+  /** Set once the last page has been received, or requested. */
+  private boolean finished = false;
+
+  /** The number of rows to request in the next page. */
+  private int pageSize;
+
+  /** The average number of bytes in a row. 0 until a page has been measured. */
+  private double rowBytes = 0;
+
+  /** The time the last page arrived. */
+  private long lastArrival = 0;
+
+
+  /**
+   * Creates a pipeline using the configured window and page sizes.
+   * @param remoteAnswer The answer to fetch pages from.
+   * @param window The number of requests to have in progress.
+   * @param timeout The time to wait for each page, in milliseconds.
+   */
+  PagePipeline(RemoteAnswer remoteAnswer, int window, int timeout) {
+    this(remoteAnswer, window, timeout,
+         Integer.getInteger(AnswerPage.PAGE_SIZE_PROPERTY, AnswerPage.DEFAULT_PAGE_SIZE).intValue(),
+         Integer.getInteger(PAGE_TIME_PROPERTY, DEFAULT_PAGE_TIME).intValue(),
+         Integer.getInteger(PAGE_BYTES_PROPERTY, DEFAULT_PAGE_BYTES).intValue());
+  }
+
+
+  /**
+   * Creates a pipeline.
+   * @param remoteAnswer The answer to fetch pages from.
+   * @param window The number of requests to have in progress.
+   * @param timeout The time to wait for each page, in milliseconds.
+   * @param pageSize The number of rows to request in the first page.
+   * @param pageTime The target time to fetch each page, or 0 to keep the page size fixed.
+   * @param pageBytes The maximum number of bytes in a page, when the page size adapts.
+   */
+  PagePipeline(RemoteAnswer remoteAnswer, int window, int timeout, int pageSize, int pageTime, int pageBytes) {
+    if (window < 1) throw new IllegalArgumentException("Page window must be at least 1");
+    this.remoteAnswer = remoteAnswer;
+    this.window = window;
+    this.timeout = timeout;
+    this.pageSize = Math.max(pageSize, 1);
+    this.pageTime = pageTime;
+    this.pageBytes = pageBytes;
+  }
+
+
+  /**
+   * Starts fetching from the start of the answer. The answer must have just been reset
+   * with {@link RemoteAnswer#beforeFirstAndInitPage()}, and no requests may be in progress.
+   * @param firstPage The page returned when the answer was reset.
+   */
+  void restart(AnswerPage firstPage) {
+    assert pending.isEmpty();
+    sequence = 0;
+    finished = firstPage == null || firstPage.isLastPage();
+    lastArrival = System.currentTimeMillis();
+    if (firstPage != null) measureWidth(firstPage);
+    fill();
+  }
+
+
+  /**
+   * Gets the next page, and requests more pages to replace it.
+   * @return The next page, or <code>null</code> if there are no more pages.
+   * @throws RMITimeoutException The page did not arrive in time.
+   * @throws TuplesException The server could not build the page.
+   * @throws RemoteException There was a network error.
+   */
+  AnswerPage next() throws RMITimeoutException, TuplesException, RemoteException {
+    if (pending.isEmpty()) {
+      if (finished) return null;
+      fill();
+    }
+    Fetch fetch = pending.poll();
+    AnswerPage page = fetch.get();
+    if (page == null || page.isLastPage()) {
+      finished = true;
+    } else {
+      adapt(page, fetch);
+      fill();
+    }
+    return page;
+  }
+
+
+  /**
+   * Waits for all the requests in progress to complete, keeping their pages.
+   * This must be done before any other call is made on the answer.
+   * @throws RMITimeoutException A page did not arrive in time.
+   */
+  void await() throws RMITimeoutException {
+    for (Fetch fetch: pending) fetch.await();
+  }
+
+
+  /**
+   * Waits for all the requests in progress to complete, and drops their pages.
+   * @throws RMITimeoutException A page did not arrive in time.
+   */
+  void discard() throws RMITimeoutException {
+    try {
+      await();
+    } finally {
+      pending.clear();
+      finished = true;
+    }
+  }
+
+
+  /**
+   * Gets the number of rows that will be requested for the next page.
+   * @return The current page size.
+   */
+  int getPageSize() {
+    return pageSize;
+  }
+
+
+  /**
+   * Requests pages until the window is full.
+   */
+  private void fill() {
+    while (!finished && pending.size() < window) {
+      pending.add(new Fetch(sequence++, pageSize));
+    }
+  }
+
+
+  /**
+   * Updates the page size using the measurements from a page that has arrived.
+   * Only full pages are used, since a short page is not a useful measure of the time.
+   * @param page The page that arrived.
+   * @param fetch The request for the page.
+   */
+  private void adapt(AnswerPage page, Fetch fetch) throws TuplesException {
+    long arrival = fetch.finish;
+    long elapsed = arrival - Math.max(fetch.start, lastArrival);
+    lastArrival = arrival;
+    if (pageTime <= 0 || page.getPageSize() < fetch.size) return;
+
+    measureWidth(page);
+    double scale = (double)pageTime / Math.max(elapsed, 1);
+    scale = Math.max(0.5, Math.min(2.0, scale));
+    long size = (long)(pageSize * scale);
+    if (rowBytes > 0) size = Math.min(size, (long)(pageBytes / rowBytes));
+    size = Math.max(size, Math.min(MIN_PAGE_SIZE, pageSize));
+    pageSize = (int)Math.max(1, Math.min(size, Integer.MAX_VALUE));
+    if (logger.isDebugEnabled()) {
+      logger.debug("Page of " + fetch.size + " rows took " + elapsed + "ms. Next page size: " + pageSize);
+    }
+  }
+
+
+  /**
+   * Updates the average width of a row, using the serialized size of a page.
+   * @param page The page to measure.
+   */
+  private void measureWidth(AnswerPage page) {
+    if (!(page instanceof AnswerPageImpl)) return;
+    AnswerPageImpl p = (AnswerPageImpl)page;
+    if (p.getDataSize() == 0 || p.getPageSize() == 0) return;
+    double width = (double)p.getDataSize() / p.getPageSize();
+    rowBytes = (rowBytes == 0) ? width : (rowBytes + width) / 2;
+  }
+
+
+  /**
+   * A request for a page.
+   */
+  private class Fetch implements Callable<AnswerPage> {
+
+    /** The number of the page. */
+    final int sequence;
+
+    /** The number of rows requested. */
+    final int size;
+
+    /** The result of the request. */
+    private final Future<AnswerPage> future;
+
+    /** The time the request was sent. */
+    volatile long start;
+
+    /** The time the page arrived. */
+    volatile long finish;
+
+    /**
+     * Sends a request for a page.
+     * @param sequence The number of the page.
+     * @param size The number of rows to request.
+     */
+    Fetch(int sequence, int size) {
+      this.sequence = sequence;
+      this.size = size;
+      future = executor.submit(this);
+    }
+
+    /** @see java.util.concurrent.Callable#call() */
+    public AnswerPage call() throws Exception {
+      start = System.currentTimeMillis();
+      try {
+        return remoteAnswer.nextPage(sequence, size);
+      } finally {
+        finish = System.currentTimeMillis();
+      }
+    }
+
+    /**
+     * Waits for the page to arrive.
+     * @return The page, or <code>null</code> if the answer has no more pages.
+     */
+    AnswerPage get() throws RMITimeoutException, TuplesException, RemoteException {
+      try {
+        return future.get(timeout, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        throw new RMITimeoutException("No data returned within " + timeout + "ms");
+      } catch (InterruptedException e) {
+        throw new TuplesException("Interrupted waiting for page " + sequence, e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof TuplesException) throw (TuplesException)cause;
+        if (cause instanceof RemoteException) throw (RemoteException)cause;
+        throw new TuplesException("Error fetching page " + sequence, cause);
+      }
+    }
+
+    /**
+     * Waits for the request to complete, ignoring the result.
+     */
+    void await() throws RMITimeoutException {
+      try {
+        future.get(timeout, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        throw new RMITimeoutException("No data returned within " + timeout + "ms");
+      } catch (InterruptedException e) {
+        // Not concerned about interruptions, only in finishing
+      } catch (ExecutionException e) {
+        logger.warn("Exception thrown while fetching page " + sequence, e.getCause());
+      }
+    }
+  }
+
+
+  /**
+   * Creates daemon threads for fetching pages, so idle threads don't hold up shutdown.
+   */
+  private static class FetchThreadFactory implements ThreadFactory {
+
+    /** The number of threads created. */
+    private final AtomicInteger count = new AtomicInteger();
+
+    /** @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable) */
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "rmi-page-fetch-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }
+  }
+}
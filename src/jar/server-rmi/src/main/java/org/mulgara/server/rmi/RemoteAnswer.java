@@ -198,6 +198,21 @@ public interface RemoteAnswer extends Remote
    */
   public AnswerPage nextPage() throws TuplesException, RemoteException;
 
+  /**
+   * Gets a numbered page of the solution. Pages are numbered from 0 after the page
+   * returned by {@link #beforeFirstAndInitPage()}, and are built in order, so a client
+   * may have several requests outstanding at once. A request is held until all the
+   * pages before it have been built.
+   *
+   * @param sequence The number of the page to return.
+   * @param pageSize The maximum number of rows to put in the page.
+   * @return The new page, or <code>null</code> if there is no data left in the answer.
+   * @throws TuplesException Iterating through the answer caused a problem, or the earlier
+   *         pages were not requested in time.
+   * @throws RemoteException Required for RMI interfaces.
+   */
+  public AnswerPage nextPage(int sequence, int pageSize) throws TuplesException, RemoteException;
+
   /**
    * Returns a clone for a remote client 
    *
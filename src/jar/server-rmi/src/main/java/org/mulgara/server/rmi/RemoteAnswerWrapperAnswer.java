@@ -92,6 +92,11 @@ class RemoteAnswerWrapperAnswer implements Answer, Cloneable {
    */
   private PrefetchThread prefetchThread;
 
+  /**
+   * Fetches several pages at once, when pipelining is enabled. <code>null</code> otherwise.
+   */
+  private PagePipeline pipeline;
+
   /**
    * Optimisation to prevent dropping of the first page when beforeFirst is called.
    */
@@ -114,6 +119,19 @@ class RemoteAnswerWrapperAnswer implements Answer, Cloneable {
    *   <code>null</code>
    */
   RemoteAnswerWrapperAnswer(RemoteAnswer remoteAnswer) throws RemoteException {
+    this(remoteAnswer, Integer.getInteger(PagePipeline.WINDOW_PROPERTY, PagePipeline.DEFAULT_WINDOW).intValue());
+  }
+
+  /**
+   * Wrap a {@link RemoteAnswer} to make it into an {@link Answer}, fetching pages
+   * through a pipeline.
+   *
+   * @param remoteAnswer  the instance to wrap
+   * @param window  the number of pages to request at once; 1 to prefetch a single page
+   * @throws IllegalArgumentException  if <var>remoteAnswer</var> is
+   *   <code>null</code>
+   */
+  RemoteAnswerWrapperAnswer(RemoteAnswer remoteAnswer, int window) throws RemoteException {
     // Validate "remoteAnswer" parameter
     if (remoteAnswer == null) {
       throw new IllegalArgumentException("Null \"remoteAnswer\" parameter");
@@ -129,6 +147,11 @@ class RemoteAnswerWrapperAnswer implements Answer, Cloneable {
     // Initialize the page timeout
     timeout = Integer.getInteger(PREFETCH_TIMEOUT_PROPERTY,
                                  DEFAULT_PREFETCH_TIMEOUT).intValue();
+
+    // a serialised answer is already local, and is all in one page
+    if (window > 1 && !(remoteAnswer instanceof AnswerWrapperRemoteAnswerSerialised)) {
+      pipeline = new PagePipeline(remoteAnswer, window, timeout);
+    }
   }
 
   //
@@ -212,6 +235,12 @@ class RemoteAnswerWrapperAnswer implements Answer, Cloneable {
       waitForPrefetchThread();
       if (onFirstPage) {
         currentPage.beforeFirstInPage();
+      } else if (pipeline != null) {
+        // Abandon the pages in progress, and start requesting from the new first page
+        pipeline.discard();
+        currentPage = remoteAnswer.beforeFirstAndInitPage();
+        onFirstPage = (currentPage != null);
+        pipeline.restart(currentPage);
       } else {
         currentPage = remoteAnswer.beforeFirstAndInitPage();
         // make onFirstPage false if the page is invalid
@@ -247,6 +276,15 @@ class RemoteAnswerWrapperAnswer implements Answer, Cloneable {
       prefetchThread = null;
     }
 
+    //ensure no pages are being fetched
+    if (pipeline != null) {
+      try {
+        pipeline.discard();
+      } catch (RMITimeoutException e) {
+        logger.warn("No RMI data returned within " + timeout + "ms while closing");
+      }
+    }
+
     if (closed != null) {
       logger.warn("Was already closed at: " + closed);
       throw new TuplesException("Attempting to close answer twice.\n" + new StackTrace());
@@ -455,6 +493,8 @@ class RemoteAnswerWrapperAnswer implements Answer, Cloneable {
    */
   protected AnswerPage nextPage() throws RMITimeoutException, TuplesException, RemoteException {
 
+    if (pipeline != null) return pipeline.next();
+
     waitForPrefetchThread();
     assert prefetchThread == null || prefetchThread.hasFinished();
 
@@ -480,6 +520,8 @@ class RemoteAnswerWrapperAnswer implements Answer, Cloneable {
    */
   private void waitForPrefetchThread() throws RMITimeoutException {
 
+    if (pipeline != null) pipeline.await();
+
     if (prefetchThread != null) {
       try {
         prefetchThread.join(timeout);
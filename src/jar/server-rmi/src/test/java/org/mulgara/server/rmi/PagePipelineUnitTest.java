@@ -0,0 +1,187 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.server.rmi;
+
+// JUnit
+import junit.framework.*;
+
+// Locally written packages
+import org.mulgara.query.*;
+import org.mulgara.query.rdf.LiteralImpl;
+
+/**
+ * Test case for {@link PagePipeline}, and pipelined paging in {@link RemoteAnswerWrapperAnswer}.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public class PagePipelineUnitTest extends TestCase {
+
+  /**
+   * Constructs a new test with the given name.
+   * @param name the name of the test
+   */
+  public PagePipelineUnitTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Hook for test runner to obtain a test suite from.
+   * @return The test suite
+   */
+  public static Test suite() {
+    TestSuite suite = new TestSuite();
+    suite.addTest(new PagePipelineUnitTest("testPageOrder"));
+    suite.addTest(new PagePipelineUnitTest("testOutOfSequence"));
+    suite.addTest(new PagePipelineUnitTest("testAdaptiveSize"));
+    suite.addTest(new PagePipelineUnitTest("testAnswer"));
+    return suite;
+  }
+
+  /**
+   * Default text runner.
+   * @param args The command line arguments
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+
+  /**
+   * Fetch pages with several requests in progress, and check they arrive in order.
+   */
+  public void testPageOrder() throws Exception {
+    AnswerWrapperRemoteAnswer remote = new AnswerWrapperRemoteAnswer(buildAnswer(3000));
+    try {
+      PagePipeline pipeline = new PagePipeline(remote, 4, 10000, 7, 0, 0);
+      AnswerPage first = remote.beforeFirstAndInitPage();
+      pipeline.restart(first);
+      int row = (int)first.getPageSize();
+      AnswerPage page;
+      while ((page = pipeline.next()) != null) {
+        assertTrue(page.getPageSize() <= 7);
+        page.beforeFirstInPage();
+        while (page.nextInPage()) {
+          assertEquals(new LiteralImpl("X" + row), page.getObjectFromPage(0));
+          row++;
+        }
+      }
+      assertEquals(3000, row);
+      assertNull(pipeline.next());
+
+      // start again part way through
+      pipeline.discard();
+      pipeline.restart(remote.beforeFirstAndInitPage());
+      page = pipeline.next();
+      page.beforeFirstInPage();
+      page.nextInPage();
+      assertEquals(new LiteralImpl("X" + first.getPageSize()), page.getObjectFromPage(0));
+      pipeline.discard();
+    } finally {
+      remote.close();
+    }
+  }
+
+  /**
+   * Check that the server only builds pages in order.
+   */
+  public void testOutOfSequence() throws Exception {
+    System.setProperty(RemoteAnswerWrapperAnswer.PREFETCH_TIMEOUT_PROPERTY, "100");
+    AnswerWrapperRemoteAnswer remote;
+    try {
+      remote = new AnswerWrapperRemoteAnswer(buildAnswer(2000));
+    } finally {
+      System.clearProperty(RemoteAnswerWrapperAnswer.PREFETCH_TIMEOUT_PROPERTY);
+    }
+    try {
+      remote.beforeFirstAndInitPage();
+      try {
+        remote.nextPage(1, 10);
+        fail("Page 1 should not be built before page 0");
+      } catch (TuplesException e) {
+        // expected
+      }
+      assertEquals(10, remote.nextPage(0, 10).getPageSize());
+      assertEquals(10, remote.nextPage(1, 10).getPageSize());
+      try {
+        remote.nextPage(1, 10);
+        fail("Page 1 should not be built twice");
+      } catch (TuplesException e) {
+        // expected
+      }
+    } finally {
+      remote.close();
+    }
+  }
+
+  /**
+   * Check that pages grow when they arrive faster than the target time.
+   */
+  public void testAdaptiveSize() throws Exception {
+    AnswerWrapperRemoteAnswer remote = new AnswerWrapperRemoteAnswer(buildAnswer(5000));
+    try {
+      PagePipeline pipeline = new PagePipeline(remote, 2, 10000, 10, 60000, Integer.MAX_VALUE);
+      AnswerPage first = remote.beforeFirstAndInitPage();
+      pipeline.restart(first);
+      long rows = first.getPageSize();
+      long pages = 0;
+      AnswerPage page;
+      while ((page = pipeline.next()) != null) {
+        rows += page.getPageSize();
+        pages++;
+      }
+      assertEquals(5000, rows);
+      assertTrue(pipeline.getPageSize() > 10);
+      // 4000 rows in pages of 10 rows would take 400 pages
+      assertTrue(pages < 400);
+    } finally {
+      remote.close();
+    }
+  }
+
+  /**
+   * Read a whole answer through a pipelined wrapper.
+   */
+  public void testAnswer() throws Exception {
+    Answer answer = new RemoteAnswerWrapperAnswer(new AnswerWrapperRemoteAnswer(buildAnswer(5000)), 3);
+    try {
+      for (int pass = 0; pass < 2; pass++) {
+        answer.beforeFirst();
+        int row = 0;
+        while (answer.next()) {
+          assertEquals(new LiteralImpl("X" + row), answer.getObject(0));
+          assertEquals(new LiteralImpl("Y" + row), answer.getObject("y"));
+          row++;
+        }
+        assertEquals(5000, row);
+      }
+    } finally {
+      answer.close();
+    }
+  }
+
+  /**
+   * Populate a 2 column test answer.
+   * @param rows The number of rows in the answer.
+   */
+  private Answer buildAnswer(int rows) throws TuplesException {
+    LiteralImpl[] fields = new LiteralImpl[rows * 2];
+    for (int r = 0; r < rows; r++) {
+      fields[r * 2 + 0] = new LiteralImpl("X" + r);
+      fields[r * 2 + 1] = new LiteralImpl("Y" + r);
+    }
+    // since this is an ArrayAnswer it is SAFE to not call close()
+    Answer answer = new ArrayAnswer(new Variable[] { new Variable("x"), new Variable("y") }, fields);
+    answer.beforeFirst();
+    return answer;
+  }
+}
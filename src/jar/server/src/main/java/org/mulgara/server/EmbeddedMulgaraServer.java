@@ -118,6 +118,9 @@ public class EmbeddedMulgaraServer implements SessionFactoryProvider {
   /** The system property to disable the RMI service. */
   private static final String DISABLE_RMI = "no_rmi";
 
+  /** The system property for the size of the string pool value caches. */
+  private static final String STRING_POOL_CACHE_BYTES = "mulgara.xa11.cacheBytes";
+
   /** The Mulgara server instance. In this case, an RMIServer. */
   private ServerMBean serverManagement = null;
 
@@ -613,6 +616,11 @@ public class EmbeddedMulgaraServer implements SessionFactoryProvider {
         if (smtpServer == null) smtpServer = mulgaraConfig.getSmtp();
        // set the property for mail package to pickup
         System.setProperty(SYSTEM_MAIL, smtpServer);
+
+        // set the string pool cache size, unless it was given on the command line
+        if (mulgaraConfig.hasStringPoolCacheBytes() && System.getProperty(STRING_POOL_CACHE_BYTES) == null) {
+          System.setProperty(STRING_POOL_CACHE_BYTES, Long.toString(mulgaraConfig.getStringPoolCacheBytes()));
+        }
       }
     } catch (MalformedURLException mue) {
       log.warn("Invalid URL on command line - " + mue.getMessage());
@@ -314,6 +314,14 @@ public class MulgaraUserConfig extends MulgaraConfig {
     return (usr && userConfig.hasIdleTimeout()) ? userConfig.getIdleTimeout() : systemConfig.getIdleTimeout();
   }
 
+  /**
+   * @see org.mulgara.config.MulgaraConfig#getStringPoolCacheBytes()
+   */
+  @Override
+  public long getStringPoolCacheBytes() {
+    return (usr && userConfig.hasStringPoolCacheBytes()) ? userConfig.getStringPoolCacheBytes() : systemConfig.getStringPoolCacheBytes();
+  }
+
   /**
    * Note that this configuration is expected to be completely overridden, or not at all!
    * @see org.mulgara.config.MulgaraConfig#getJetty()
@@ -603,6 +611,14 @@ public class MulgaraUserConfig extends MulgaraConfig {
     return (usr && userConfig.hasIdleTimeout()) || systemConfig.hasIdleTimeout();
   }
 
+  /**
+   * @see org.mulgara.config.MulgaraConfig#hasStringPoolCacheBytes()
+   */
+  @Override
+  public boolean hasStringPoolCacheBytes() {
+    return (usr && userConfig.hasStringPoolCacheBytes()) || systemConfig.hasStringPoolCacheBytes();
+  }
+
   /**
    * @see org.mulgara.config.MulgaraConfig#hasRMIPort()
    */
@@ -721,6 +737,15 @@ public class MulgaraUserConfig extends MulgaraConfig {
   }
 
 
+  /**
+   * @see org.mulgara.config.MulgaraConfig#deleteStringPoolCacheBytes()
+   */
+  @Override
+  public void deleteStringPoolCacheBytes() {
+    throw new UnsupportedOperationException("Read only class");
+  }
+
+
   /**
    * @see org.mulgara.config.MulgaraConfig#deleteRMIPort()
    */
@@ -946,6 +971,15 @@ public class MulgaraUserConfig extends MulgaraConfig {
   }
 
 
+  /**
+   * @see org.mulgara.config.MulgaraConfig#setStringPoolCacheBytes(long)
+   */
+  @Override
+  public void setStringPoolCacheBytes(long stringPoolCacheBytes) {
+    throw new UnsupportedOperationException("Read only class");
+  }
+
+
   /**
    * @see org.mulgara.config.MulgaraConfig#setJetty(org.mulgara.config.Jetty)
    */
@@ -279,6 +279,12 @@ public final class MemoryStringPoolImpl implements XAStringPool {
     return findGNodeInternal(spObject, xaNodePool);
   }
 
+  public long[] findGNodes(SPObject[] spObjects, boolean create) throws StringPoolException {
+    long[] gNodes = new long[spObjects.length];
+    for (int i = 0; i < spObjects.length; i++) gNodes[i] = create ? findGNode(spObjects[i], true) : findGNode(spObjects[i]);
+    return gNodes;
+  }
+
   @Deprecated
   public long findGNode(SPObject spObject, NodePool nodePool) throws StringPoolException {
     return findGNodeInternal(spObject, nodePool);
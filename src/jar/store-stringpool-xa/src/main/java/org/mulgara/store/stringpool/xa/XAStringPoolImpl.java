@@ -32,8 +32,7 @@ import java.io.*;
 import java.nio.*;
 import java.util.*;
 import java.net.URI;
-import java.lang.ref.Reference;
-import java.lang.ref.SoftReference;
+import java.util.concurrent.atomic.AtomicLong;
 
 // log4j classes
 import org.apache.log4j.*;
@@ -191,6 +190,12 @@ public final class XAStringPoolImpl implements XAStringPool {
   /** Maps gNodes to SPObjects. */
   private GN2SPOCache gn2spoCache = new GN2SPOCache();
 
+  /** Maps SPObjects to gNodes. Shared by all phases, with entries versioned by phase generation. */
+  private SPO2GNCache spo2gnCache = new SPO2GNCache();
+
+  /** The source of generation numbers for new phases. */
+  private final AtomicLong lastGeneration = new AtomicLong();
+
   /** The node pool to use with this string pool. */
   private XANodePool xaNodePool;
 
@@ -297,6 +302,26 @@ public final class XAStringPoolImpl implements XAStringPool {
   }
 
 
+  /**
+   * Gets the cache of SPObject to gNode mappings, to monitor its size, hits, misses and evictions.
+   *
+   * @return The cache used when localizing.
+   */
+  public StripedCache<?,?> getLocalizeCache() {
+    return spo2gnCache.getStatistics();
+  }
+
+
+  /**
+   * Gets the cache of gNode to SPObject mappings, to monitor its size, hits, misses and evictions.
+   *
+   * @return The cache used when globalizing.
+   */
+  public StripedCache<?,?> getGlobalizeCache() {
+    return gn2spoCache.getStatistics();
+  }
+
+
   //
   // Methods from StringPool.
   //
@@ -426,6 +451,17 @@ public final class XAStringPoolImpl implements XAStringPool {
   }
 
 
+  /**
+   * Looks up each object in turn.
+   * @see org.mulgara.store.xa.XAStringPool#findGNodes(org.mulgara.store.stringpool.SPObject[], boolean)
+   */
+  public synchronized long[] findGNodes(SPObject[] spObjects, boolean create) throws StringPoolException {
+    long[] gNodes = new long[spObjects.length];
+    for (int i = 0; i < spObjects.length; i++) gNodes[i] = create ? findGNode(spObjects[i], true) : findGNode(spObjects[i]);
+    return gNodes;
+  }
+
+
   /**
    * @see org.mulgara.store.stringpool.StringPool#findGNode(org.mulgara.store.stringpool.SPObject, org.mulgara.store.nodepool.NodePool)
    */
@@ -591,6 +627,8 @@ public final class XAStringPoolImpl implements XAStringPool {
     }
     this.phaseNumber = phaseNumber;
     phaseIndex = 1;
+    spo2gnCache.clear();
+    gn2spoCache.clear();
     avlFile.clear();
     gNodeToDataFile.clear();
     for (int i = 0; i < NR_BLOCK_FILES; ++i) blockFiles[i].clear();
@@ -813,6 +851,8 @@ public final class XAStringPoolImpl implements XAStringPool {
 
     // Load a duplicate of the selected phase.  The duplicate will have a
     // phase number which is one higher than the original phase.
+    spo2gnCache.clear();
+    gn2spoCache.clear();
     try {
       synchronized (committedPhaseLock) {
         committedPhaseToken = new Phase(
@@ -862,6 +902,8 @@ public final class XAStringPoolImpl implements XAStringPool {
             "I/O error while performing rollback (invalidating metaroot)", ex
         );
       } finally {
+        // mappings added in the abandoned phase are no longer valid
+        spo2gnCache.clear();
         try {
           new Phase(committedPhaseToken.getPhase());
         } catch (IOException ex) {
@@ -882,6 +924,7 @@ public final class XAStringPoolImpl implements XAStringPool {
     if (committedPhaseToken != null) {
       recordingPhaseToken = null;
       prepared = false;
+      spo2gnCache.clear();
 
       try {
         new Phase(committedPhaseToken.getPhase());
@@ -930,6 +973,10 @@ public final class XAStringPoolImpl implements XAStringPool {
    * @throws IOException EXCEPTION TO DO
    */
   private void close(boolean deleteFiles) throws IOException {
+    if (logger.isDebugEnabled()) {
+      logger.debug("Localize cache: " + spo2gnCache.getStatistics());
+      logger.debug("Globalize cache: " + gn2spoCache.getStatistics());
+    }
     try {
       unmap();
     } finally {
@@ -1167,6 +1214,13 @@ public final class XAStringPoolImpl implements XAStringPool {
       return phase.findGNode(spObject, null);
     }
 
+    public synchronized long[] findGNodes(SPObject[] spObjects, boolean create) throws StringPoolException {
+      if (create) throw new UnsupportedOperationException("Trying to modify a read-only string pool.");
+      long[] gNodes = new long[spObjects.length];
+      for (int i = 0; i < spObjects.length; i++) gNodes[i] = phase.findGNode(spObjects[i], null);
+      return gNodes;
+    }
+
 
     /**
      * Finds and returns the SPObject corresponding to <var>gNode</var>, or
@@ -1277,7 +1331,8 @@ public final class XAStringPoolImpl implements XAStringPool {
         AVLFile.Phase.RECORD_SIZE +
         ManagedBlockFile.Phase.RECORD_SIZE * NR_BLOCK_FILES;
 
-    private SPO2GNCache spo2gnCache = new SPO2GNCache();
+    /** The generation of this phase, used to version the entries it reads from the SPObject cache. */
+    private final long generation = lastGeneration.incrementAndGet();
 
     private AVLFile.Phase avlFilePhase;
 
@@ -1411,8 +1466,8 @@ public final class XAStringPoolImpl implements XAStringPool {
 
         put(gNode, findResult,typeCategory, typeId, subtypeId, data);
 
-        if (GN2SPO_CACHE_ENABLED) gn2spoCache.put(gNode, spObject);
-        if (SPO2GN_CACHE_ENABLED) spo2gnCache.put(spObject, gNode);
+        if (GN2SPO_CACHE_ENABLED) gn2spoCache.put(gNode, spObject, data.limit());
+        if (SPO2GN_CACHE_ENABLED) spo2gnCache.put(spObject, gNode, data.limit(), generation);
       } catch (IOException ex) {
         throw new StringPoolException("I/O Error", ex);
       } finally {
@@ -1621,7 +1676,7 @@ public final class XAStringPoolImpl implements XAStringPool {
           return false;
         }
         if (SPO2GN_CACHE_ENABLED) {
-          spo2gnCache.remove(spObject);
+          spo2gnCache.remove(spObject, generation);
         }
 
         SPObject.TypeCategory typeCategory = spObject.getTypeCategory();
@@ -1685,7 +1740,7 @@ public final class XAStringPoolImpl implements XAStringPool {
       long gNode;
       Long gNodeL;
       if (SPO2GN_CACHE_ENABLED) {
-        gNodeL = spo2gnCache.get(spObject);
+        gNodeL = spo2gnCache.get(spObject, generation);
       }
       if (SPO2GN_CACHE_ENABLED && gNodeL != null) {
         // Found the entry in the cache.
@@ -1716,7 +1771,7 @@ public final class XAStringPoolImpl implements XAStringPool {
               //gn2spoCache.put(gNode, spObject);
             }
             if (SPO2GN_CACHE_ENABLED) {
-              spo2gnCache.put(spObject, gNode);
+              spo2gnCache.put(spObject, gNode, data.limit(), generation);
             }
           } else {
             if (nodePool != null) {
@@ -1729,7 +1784,7 @@ public final class XAStringPoolImpl implements XAStringPool {
               if (GN2SPO_CACHE_ENABLED) {
                 //gn2spoCache.put(gNode, spObject);
               }
-              if (SPO2GN_CACHE_ENABLED) spo2gnCache.put(spObject, gNode);
+              if (SPO2GN_CACHE_ENABLED) spo2gnCache.put(spObject, gNode, data.limit(), generation);
             } else {
               // Not found.
               gNode = NodePool.NONE;
@@ -1772,14 +1827,13 @@ public final class XAStringPoolImpl implements XAStringPool {
     SPObject findSPObject(long gNode) throws StringPoolException {
       if (gNode < NodePool.MIN_NODE) throw new IllegalArgumentException("gNode=" + gNode + " < MIN_NODE");
 
-      Long gNodeL = new Long(gNode);
-      SPObject spObject;
-      if (GN2SPO_CACHE_ENABLED) spObject = gn2spoCache.get(gNodeL);
-      if (!GN2SPO_CACHE_ENABLED || spObject == null) {
-        if (gn2spoCache.isBlankNode(gNodeL)) {
-          if (logger.isDebugEnabled()) logger.debug("findSPObject(" + gNode + ") = Blank node");
-          return null;
-        }
+      Object cached = GN2SPO_CACHE_ENABLED ? gn2spoCache.get(gNode) : null;
+      if (cached == GN2SPOCache.BLANK_NODE) {
+        if (logger.isDebugEnabled()) logger.debug("findSPObject(" + gNode + ") = Blank node");
+        return null;
+      }
+      SPObject spObject = (SPObject)cached;
+      if (spObject == null) {
 
         // Lookup the SPObject in the index.
         try {
@@ -1832,7 +1886,7 @@ public final class XAStringPoolImpl implements XAStringPool {
           // Construct the SPObject and return it.
           spObject = SPO_FACTORY.newSPObject(typeCategory, typeId, subtypeId, data);
 
-          if (GN2SPO_CACHE_ENABLED) gn2spoCache.put(gNode, spObject);
+          if (GN2SPO_CACHE_ENABLED) gn2spoCache.put(gNode, spObject, dataSize);
           if (SPO2GN_CACHE_ENABLED) {
             //spo2gnCache.put(spObject, gNode);
           }
@@ -2830,176 +2884,119 @@ public final class XAStringPoolImpl implements XAStringPool {
   }
 
 
-  static final class SPO2GNCache {
-    private static final int DEFAULT_MAX_SIZE = 1000;
-    private static final int MAX_SIZE;
-    private Reference<Cache<SPObject,Long>> cacheRef;
-
-    static {
-      String cacheSizeProp = System.getProperty("mulgara.sp.localizeCacheSize");
-      if (cacheSizeProp == null) cacheSizeProp = System.getProperty("mulgara.sp.cacheSize");
-      if (cacheSizeProp != null) {
-        MAX_SIZE = Integer.parseInt(cacheSizeProp);
-        if (MAX_SIZE < 1) throw new ExceptionInInitializerError("bad mulgara.sp.cacheSize property: " + cacheSizeProp);
-      } else {
-        MAX_SIZE = DEFAULT_MAX_SIZE;
-      }
-    }
+  /**
+   * Reads a cache size in bytes from the system properties. The older properties giving
+   * a number of entries are still accepted, and are converted using an estimated entry size.
+   *
+   * @param bytesProp The property for the size of this cache in bytes.
+   * @param sizeProp The property for the number of entries in this cache.
+   * @return The number of bytes to use for the cache.
+   */
+  static long cacheBytes(String bytesProp, String sizeProp) {
+    String prop = bytesProp;
+    String value = System.getProperty(prop);
+    if (value == null) value = System.getProperty(prop = "mulgara.sp.cacheBytes");
+    long scale = 1;
+    if (value == null) {
+      value = System.getProperty(prop = sizeProp);
+      if (value == null) value = System.getProperty(prop = "mulgara.sp.cacheSize");
+      scale = ESTIMATED_ENTRY_BYTES;
+    }
+    if (value == null) return DEFAULT_CACHE_BYTES;
+    try {
+      long size = Long.parseLong(value.trim());
+      if (size >= 0) return size * scale;
+    } catch (NumberFormatException e) { /* fall through */ }
+    logger.warn("Bad value for " + prop + " property: " + value);
+    return DEFAULT_CACHE_BYTES;
+  }
 
-    public SPO2GNCache() {
-      cacheRef = new SoftReference<Cache<SPObject,Long>>(new Cache<SPObject,Long>(MAX_SIZE));
-    }
+  /** The default size of each cache, in bytes. */
+  private static final long DEFAULT_CACHE_BYTES = 16L * 1024 * 1024;
 
-    private Cache<SPObject,Long> getCache() {
-      Cache<SPObject,Long> cache = cacheRef.get();
-      if (cache == null) {
-        cache = new Cache<SPObject,Long>(MAX_SIZE);
-        cacheRef = new SoftReference<Cache<SPObject,Long>>(cache);
-      }
-      return cache;
-    }
+  /** The estimated size of a cache entry, when the size is configured as a number of entries. */
+  private static final long ESTIMATED_ENTRY_BYTES = 256;
+
+
+  /**
+   * Maps SPObjects to gNodes. This is shared by all phases of the string pool. Each entry
+   * is versioned with the generation of the phase that inserted it, so a phase only sees
+   * mappings that were inserted by itself or an earlier phase. Removing a mapping stops
+   * older phases from re-inserting mappings that they may still see.
+   */
+  static final class SPO2GNCache {
+    private static final long MAX_BYTES = cacheBytes("mulgara.sp.localizeCacheBytes", "mulgara.sp.localizeCacheSize");
+
+    private final StripedCache<SPObject,Long> cache = new StripedCache<SPObject,Long>(MAX_BYTES);
 
-    public void put(SPObject spObject, long gNode) {
+    public void put(SPObject spObject, long gNode, int size, long generation) {
       assert gNode >= NodePool.MIN_NODE;
-      put(spObject, new Long(gNode));
+      assert spObject != null;
+      cache.put(spObject, gNode, size, generation);
     }
 
-    public synchronized void put(SPObject spObject, Long gNodeL) {
-      assert gNodeL != null;
+    public void remove(SPObject spObject, long generation) {
       assert spObject != null;
-
-      Long old = getCache().put(spObject, gNodeL);
-      assert old == null || old.equals(gNodeL);
+      cache.remove(spObject, generation);
     }
 
-    public synchronized void remove(SPObject spObject) {
+    public Long get(SPObject spObject, long generation) {
       assert spObject != null;
-      getCache().remove(spObject);
+      return cache.get(spObject, generation);
     }
 
-    public synchronized Long get(SPObject spObject) {
-      assert spObject != null;
-      return getCache().get(spObject);
+    public void clear() {
+      cache.clear();
+    }
+
+    public StripedCache<SPObject,Long> getStatistics() {
+      return cache;
     }
 
   }
 
 
+  /**
+   * Maps gNodes to SPObjects. A gNode is not reused while any phase can still see it,
+   * so this is shared by all phases without versioning.
+   */
   static final class GN2SPOCache {
-    private static final int DEFAULT_MAX_SIZE = 1000;
-    private static final int MAX_SIZE;
-    private Reference<Cache<Long,SPObject>> cacheRef;
-
-    static {
-      String cacheSizeProp = System.getProperty("mulgara.sp.globalizeCacheSize");
-      if (cacheSizeProp == null) cacheSizeProp = System.getProperty("mulgara.sp.cacheSize");
-      if (cacheSizeProp != null) {
-        MAX_SIZE = Integer.parseInt(cacheSizeProp);
-        if (MAX_SIZE < 1) throw new ExceptionInInitializerError("bad mulgara.sp.cacheSize property: " + cacheSizeProp);
-      } else {
-        MAX_SIZE = DEFAULT_MAX_SIZE;
-      }
-    }
+    private static final long MAX_BYTES = cacheBytes("mulgara.sp.globalizeCacheBytes", "mulgara.sp.globalizeCacheSize");
 
-    public GN2SPOCache() {
-      cacheRef = new SoftReference<Cache<Long,SPObject>>(new Cache<Long,SPObject>(MAX_SIZE));
-    }
+    /** The value used to mark a gNode as a blank node. */
+    static final Object BLANK_NODE = new Object();
 
-    private Cache<Long,SPObject> getCache() {
-      Cache<Long,SPObject> cache = cacheRef.get();
-      if (cache == null) {
-        cache = new Cache<Long,SPObject>(MAX_SIZE);
-        cacheRef = new SoftReference<Cache<Long,SPObject>>(cache);
-      }
-      return cache;
-    }
+    private final StripedCache<Long,Object> cache = new StripedCache<Long,Object>(MAX_BYTES);
 
-    public void put(long gNode, SPObject spObject) {
+    public void put(long gNode, SPObject spObject, int size) {
       assert gNode >= NodePool.MIN_NODE;
-      put(new Long(gNode), spObject);
-    }
-
-    public synchronized void put(Long gNodeL, SPObject spObject) {
-      assert gNodeL != null;
       assert spObject != null;
-
-      SPObject old = getCache().put(gNodeL, spObject);
-      assert old == null || old.equals(spObject);
+      cache.put(gNode, spObject, size);
     }
 
     public void remove(long gNode) {
       assert gNode >= NodePool.MIN_NODE;
-      remove(new Long(gNode));
-    }
-
-    public synchronized void remove(Long gNodeL) {
-      assert gNodeL != null;
-      getCache().remove(gNodeL);
+      cache.remove(gNode);
     }
 
     public void putBlankNode(long gNode) {
       assert gNode >= NodePool.MIN_NODE;
-      putBlankNode(new Long(gNode));
-    }
-
-    public synchronized void putBlankNode(Long gNodeL) {
-      assert gNodeL != null;
-      SPObject old = getCache().put(gNodeL, null);
-      assert old == null;
+      cache.put(gNode, BLANK_NODE, 0);
     }
 
-    public SPObject get(long gNode) {
-      return get(new Long(gNode));
-    }
-
-    public synchronized SPObject get(Long gNodeL) {
-      assert gNodeL != null;
-      return getCache().get(gNodeL);
-    }
-
-    public boolean isBlankNode(long gNode) {
-      return isBlankNode(new Long(gNode));
-    }
-
-    public synchronized boolean isBlankNode(Long gNodeL) {
-      assert gNodeL != null;
-      Cache<Long,SPObject> cache = getCache();
-      return cache.containsKey(gNodeL) && cache.get(gNodeL) == null;
-    }
-
-  }
-
-
-  /**
-   * A LRU cache.
-   */
-  @SuppressWarnings("serial")
-  static final class Cache<K,V> extends LinkedHashMap<K,V> {
-
-    /** The load factor on the internal hash table. */
-    public static final float LOAD_FACTOR = 0.75F;
-
-    /** The largest number of elements to store in this cache. */
-    final int MAX_SIZE;
-
     /**
-     * Constucts a new cache.
-     *
-     * @param maxSize largest number of elements to store in the cache.
+     * @return The cached SPObject, {@link #BLANK_NODE} for a blank node, or <code>null</code> if not cached.
      */
-    public Cache(int maxSize) {
-      super((int)Math.ceil(maxSize / LOAD_FACTOR + 1), LOAD_FACTOR, true);
-      MAX_SIZE = maxSize;
+    public Object get(long gNode) {
+      return cache.get(gNode);
     }
 
-    /**
-     * Used by {@link #put} to reduce memory consumption.
-     *
-     * @param eldest The eldest entry in the map.  Ignored.
-     * @return <code>true</code> when the cache is overfull and data should be removed.
-     */
-    protected boolean removeEldestEntry(Map.Entry<K,V> eldest) {
-      return size() > MAX_SIZE;
+    public void clear() {
+      cache.clear();
+    }
+
+    public StripedCache<Long,Object> getStatistics() {
+      return cache;
     }
 
   }
@@ -22,10 +22,15 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
 import org.mulgara.query.Constraint;
@@ -61,6 +66,7 @@ import org.mulgara.store.xa.XAStringPool;
 import org.mulgara.store.xa.XAUtils;
 import org.mulgara.util.Constants;
 import org.mulgara.util.LongMapper;
+import org.mulgara.util.StripedCache;
 import org.mulgara.util.functional.Pair;
 
 import static org.mulgara.store.stringpool.xa11.DataStruct.*;
@@ -88,6 +94,9 @@ public class XA11StringPoolImpl implements XAStringPool, XANodePool {
   /** A factory for this class. */
   static final SPObjectFactory SPO_FACTORY = SPObjectFactoryImpl.getInstance();
 
+  /** The property for the number of bytes to use for caching values in each direction. */
+  static final String CACHE_BYTES_PROP = "mulgara.xa11.cacheBytes";
+
   /** The main data structures are rooted on this filename. */
   private String mainFilename;
 
@@ -154,13 +163,31 @@ public class XA11StringPoolImpl implements XAStringPool, XANodePool {
   /** A flag used to delay throwing an exception on the file version until it is needed. */
   private boolean wrongFileVersion = false;
 
+  /** Caches values in both directions. <code>null</code> if caching is not configured. */
+  private final ValueCache valueCache;
+
   /**
-   * Create a string pool instance using a set of directories.
+   * Create a string pool instance using a set of directories. Values are cached if
+   * the {@link #CACHE_BYTES_PROP} property is set.
    * @param basenames A list of paths for creating string pool files in.
    *        Each path is expected to be on a separate file system.
    * @throws IOException The files cannot be created or read.
    */
   public XA11StringPoolImpl(String[] basenames) throws IOException {
+    this(basenames, cacheBytes());
+  }
+
+
+  /**
+   * Create a string pool instance using a set of directories, with a given cache size.
+   * @param basenames A list of paths for creating string pool files in.
+   *        Each path is expected to be on a separate file system.
+   * @param cacheBytes The number of bytes to use for caching values in each direction.
+   *        Caching is disabled if this is 0.
+   * @throws IOException The files cannot be created or read.
+   */
+  public XA11StringPoolImpl(String[] basenames, long cacheBytes) throws IOException {
+    valueCache = cacheBytes > 0 ? new ValueCache(cacheBytes) : null;
     distributeFilenames(basenames);
 
     lockFile = LockFile.createLockFile(mainFilename + ".sp.lock");
@@ -260,8 +287,7 @@ public class XA11StringPoolImpl implements XAStringPool, XANodePool {
    * @see org.mulgara.store.stringpool.StringPool#findGNode(org.mulgara.store.stringpool.SPObject)
    */
   public long findGNode(SPObject spObject) throws StringPoolException {
-    checkInitialized();
-    return currentPhase.findGNode(spObject, false);
+    return findGNode(spObject, false);
   }
 
   /**
@@ -270,8 +296,7 @@ public class XA11StringPoolImpl implements XAStringPool, XANodePool {
    */
   public long findGNode(SPObject spObject, NodePool nodePool) throws StringPoolException {
     if (nodePool != this) throw new IllegalStateException("The XA11 data store must manage its own nodes");
-    checkInitialized();
-    return currentPhase.findGNode(spObject, true);
+    return findGNode(spObject, true);
   }
 
   /**
@@ -279,9 +304,79 @@ public class XA11StringPoolImpl implements XAStringPool, XANodePool {
    */
   public long findGNode(SPObject spObject, boolean create) throws StringPoolException {
     checkInitialized();
+    if (valueCache != null && spObject != null) {
+      Long gNode = valueCache.getGNode(spObject);
+      if (gNode != null) return gNode;
+    }
     return currentPhase.findGNode(spObject, create);
   }
 
+  /**
+   * Searches for the objects in the order of the index, with each search starting
+   * from where the previous one ended. Objects which are not found are then
+   * inserted in the same order.
+   * @see org.mulgara.store.xa.XAStringPool#findGNodes(org.mulgara.store.stringpool.SPObject[], boolean)
+   */
+  public synchronized long[] findGNodes(SPObject[] spObjects, boolean create) throws StringPoolException {
+    checkInitialized();
+    long[] gNodes = new long[spObjects.length];
+    // read the version before the tree, so an invalidation while searching blocks the insertion
+    long version = valueCache != null ? valueCache.getVersion() : 0;
+
+    List<BatchEntry> entryList = new ArrayList<BatchEntry>(spObjects.length);
+    for (int i = 0; i < spObjects.length; i++) {
+      if (spObjects[i] == null) throw new StringPoolException("spObject parameter is null");
+      if (valueCache != null) {
+        Long gNode = valueCache.getGNode(spObjects[i]);
+        if (gNode != null) {
+          gNodes[i] = gNode;
+          continue;
+        }
+      }
+      entryList.add(new BatchEntry(i, spObjects[i]));
+    }
+    if (entryList.isEmpty()) return gNodes;
+
+    BatchEntry[] entries = entryList.toArray(new BatchEntry[entryList.size()]);
+    Arrays.sort(entries, BATCH_ORDER);
+
+    int missing = currentPhase.findGNodes(entries);
+
+    if (create && missing > 0) {
+      try {
+        if (!dirty && currentPhase.isInUse()) {
+          currentPhase = new TreePhase();
+          dirty = true;
+        }
+        for (int i = 0; i < entries.length; i++) {
+          BatchEntry entry = entries[i];
+          if (entry.duplicate) {
+            entry.gNode = entries[i - 1].gNode;
+          } else if (entry.gNode == NodePool.NONE) {
+            long gNode = nextGNodeValue;
+            entry.data.setGNode(gNode);
+            // allocated gNodes move up by the size of the data between them
+            nextGNodeValue += entry.data.writeTo(gNodeToDataAppender);
+            currentPhase.put(entry.data, entry.spObject.getSPComparator());
+            informNodeListeners(gNode);
+            if (valueCache != null) valueCache.putSPObject(gNode, entry.spObject, entry.data.getDataSize(), version);
+            entry.gNode = gNode;
+          }
+        }
+      } catch (IOException ex) {
+        throw new StringPoolException("I/O Error", ex);
+      }
+    }
+
+    for (BatchEntry entry: entries) {
+      gNodes[entry.index] = entry.gNode;
+      if (valueCache != null && entry.gNode != NodePool.NONE) {
+        valueCache.putGNode(entry.spObject, entry.gNode, entry.data.getDataSize(), version);
+      }
+    }
+    return gNodes;
+  }
+
   /**
    * @see org.mulgara.store.stringpool.StringPool#findGNodes(org.mulgara.store.stringpool.SPObject, boolean, org.mulgara.store.stringpool.SPObject, boolean)
    */
@@ -309,8 +404,19 @@ public class XA11StringPoolImpl implements XAStringPool, XANodePool {
     if (BlankNodeAllocator.isBlank(node)) return null;
     // outside of the allocated range
     if (node >= nextGNodeValue) return null;
+    SPObject spObject = null;
+    long version = 0;
+    if (valueCache != null) {
+      spObject = valueCache.getSPObject(node);
+      if (spObject != null) return spObject;
+      // read the version before the file, so an invalidation while reading blocks the insertion
+      version = valueCache.getVersion();
+    }
     try {
-      return new DataStruct(gNodeToDataReadOnly, node).getSPObject();
+      DataStruct data = new DataStruct(gNodeToDataReadOnly, node);
+      spObject = data.getSPObject();
+      if (valueCache != null && spObject != null) valueCache.putSPObject(node, spObject, data.getDataSize(), version);
+      return spObject;
     } catch (IllegalArgumentException iae) {
       throw new StringPoolException("Bad node data. gNode = " + node, iae);
     } catch (IOException ioe) {
@@ -523,7 +629,10 @@ public class XA11StringPoolImpl implements XAStringPool, XANodePool {
         try {
           try {
             blankNodeAllocator.rollback();
+            // gNodes allocated in this transaction will be reused
+            boolean allocated = nextGNodeValue != committedNextGNode;
             nextGNodeValue = committedNextGNode;
+            if (allocated && valueCache != null) valueCache.invalidate();
             long offset = DataStruct.toOffset(nextGNodeValue);
             gNodeToDataAppender.truncate(offset);
             gNodeToDataAppender.position(offset);
@@ -578,6 +687,7 @@ public class XA11StringPoolImpl implements XAStringPool, XANodePool {
     // clear the flat file
     nextGNodeValue = NodePool.MIN_NODE;
     committedNextGNode = NodePool.MIN_NODE;
+    if (valueCache != null) valueCache.invalidate();
     // this forces a seek to 0
     gNodeToDataAppender.truncate(0);
 
@@ -626,6 +736,7 @@ public class XA11StringPoolImpl implements XAStringPool, XANodePool {
     long fileSize = metaroot.getFlatFileSize();
     committedNextGNode = DataStruct.toGNode(fileSize);
     nextGNodeValue = committedNextGNode;
+    if (valueCache != null) valueCache.invalidate();
     updateAppender(fileSize);
     currentPhase = new TreePhase();
 
@@ -767,6 +878,7 @@ public class XA11StringPoolImpl implements XAStringPool, XANodePool {
         logger.warn("Exception while rolling back in unmap()", t);
       }
       currentPhase = null;
+      if (valueCache != null) valueCache.invalidate();
 
       synchronized (committedPhaseLock) {
         committedPhaseToken.release();
@@ -790,6 +902,7 @@ public class XA11StringPoolImpl implements XAStringPool, XANodePool {
    * @throws IOException There was an error accessing the filesystem.
    */
   private void close(boolean deleteFiles) throws IOException {
+    if (valueCache != null && logger.isDebugEnabled()) logger.debug("Value cache statistics: " + valueCache);
     try {
       unmap();
     } finally {
@@ -1190,6 +1303,135 @@ public class XA11StringPoolImpl implements XAStringPool, XANodePool {
       return XA11StringPoolImpl.this.findGNode(spObject, false);
     }
 
+    public long[] findGNodes(SPObject[] spObjects, boolean create) throws StringPoolException {
+      if (create) throw new UnsupportedOperationException("Trying to modify a read-only string pool.");
+      return XA11StringPoolImpl.this.findGNodes(spObjects, false);
+    }
+
+  }
+
+
+  /**
+   * Reads the size of the value caches from the system properties.
+   * @return The number of bytes for each cache, or 0 if caching is disabled.
+   */
+  private static long cacheBytes() {
+    String value = System.getProperty(CACHE_BYTES_PROP);
+    if (value == null) return 0;
+    try {
+      long bytes = Long.parseLong(value.trim());
+      if (bytes >= 0) return bytes;
+    } catch (NumberFormatException e) { /* fall through */ }
+    logger.warn("Invalid value for " + CACHE_BYTES_PROP + ": " + value + ". Value caching disabled.");
+    return 0;
+  }
+
+
+  /**
+   * Caches the mappings between gNodes and objects. The data pool only appends, so a mapping
+   * stays correct until a rollback abandons the gNodes allocated in a transaction, or the
+   * pool is cleared or moved to a different phase. At these points the caches are emptied,
+   * and the version is moved forward so lookups that started beforehand cannot put back
+   * what they found.
+   */
+  private static final class ValueCache {
+
+    /** Maps objects to gNodes. */
+    private final StripedCache<SPObject,Long> gNodes;
+
+    /** Maps gNodes to objects. */
+    private final StripedCache<Long,SPObject> spObjects;
+
+    /** Increases each time the caches are invalidated. */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * Creates the caches.
+     * @param maxBytes The size of the cache in each direction.
+     */
+    ValueCache(long maxBytes) {
+      gNodes = new StripedCache<SPObject,Long>(maxBytes);
+      spObjects = new StripedCache<Long,SPObject>(maxBytes);
+    }
+
+    /** @return The version to use for inserting the result of a lookup that is about to start. */
+    long getVersion() {
+      return version.get();
+    }
+
+    Long getGNode(SPObject spObject) {
+      return gNodes.get(spObject);
+    }
+
+    SPObject getSPObject(long gNode) {
+      return spObjects.get(gNode);
+    }
+
+    void putGNode(SPObject spObject, long gNode, int size, long v) {
+      gNodes.put(spObject, gNode, size, v);
+    }
+
+    void putSPObject(long gNode, SPObject spObject, int size, long v) {
+      spObjects.put(gNode, spObject, size, v);
+    }
+
+    /**
+     * Empties both caches, and rejects insertions from lookups that started before now.
+     */
+    void invalidate() {
+      long v = version.incrementAndGet();
+      gNodes.clear(v);
+      spObjects.clear(v);
+    }
+
+    /** @see java.lang.Object#toString() */
+    public String toString() {
+      return "objects to gNodes [" + gNodes + "], gNodes to objects [" + spObjects + "]";
+    }
+  }
+
+
+  /**
+   * Orders the entries of a batch in the same way as the index, using the
+   * same fields as {@link DataAVLComparator}.
+   */
+  private static final Comparator<BatchEntry> BATCH_ORDER = new Comparator<BatchEntry>() {
+    public int compare(BatchEntry e1, BatchEntry e2) {
+      int c = e1.data.getTypeCategoryId() - e2.data.getTypeCategoryId();
+      if (c != 0) return c;
+      if (e1.data.getTypeId() != e2.data.getTypeId()) return e1.data.getTypeId() < e2.data.getTypeId() ? -1 : 1;
+      ByteBuffer d1 = e1.data.getData();
+      ByteBuffer d2 = e2.data.getData();
+      d1.rewind();
+      d2.rewind();
+      return e1.spObject.getSPComparator().compare(d1, e1.data.getSubtypeId(), d2, e2.data.getSubtypeId());
+    }
+  };
+
+
+  /**
+   * An object being looked up in a batch.
+   */
+  private static final class BatchEntry {
+
+    /** The position of the object in the batch. */
+    final int index;
+
+    final SPObject spObject;
+
+    final DataStruct data;
+
+    /** The gNode of the object, or NONE if it has not been found. */
+    long gNode = NodePool.NONE;
+
+    /** Indicates that the object is the same as the previous entry in index order. */
+    boolean duplicate = false;
+
+    BatchEntry(int index, SPObject spObject) {
+      this.index = index;
+      this.spObject = spObject;
+      this.data = new DataStruct(spObject);
+    }
   }
 
 
@@ -1312,6 +1554,8 @@ public class XA11StringPoolImpl implements XAStringPool, XANodePool {
 
       long gNode;
       AVLNode[] findResult = null;
+      // read the version before the tree, so an invalidation while searching blocks the insertion
+      long version = valueCache != null ? valueCache.getVersion() : 0;
       try {
         SPComparator spComparator = spObject.getSPComparator();
         DataStruct objectData = new DataStruct(spObject);
@@ -1329,11 +1573,13 @@ public class XA11StringPoolImpl implements XAStringPool, XANodePool {
             nextGNodeValue += objectData.writeTo(gNodeToDataAppender);
             put(objectData, findResult);
             informNodeListeners(gNode);
+            if (valueCache != null) valueCache.putSPObject(gNode, spObject, objectData.getDataSize(), version);
           } else {
             // Not found.
             gNode = NodePool.NONE;
           }
         }
+        if (valueCache != null && gNode != NodePool.NONE) valueCache.putGNode(spObject, gNode, objectData.getDataSize(), version);
       } catch (IOException ex) {
         throw new StringPoolException("I/O Error", ex);
       } catch (RuntimeException ex) {
@@ -1352,6 +1598,66 @@ public class XA11StringPoolImpl implements XAStringPool, XANodePool {
     }
 
 
+    /**
+     * Finds the graph nodes for a batch of objects in a single walk of the tree.
+     * Each search starts from the node where the previous one ended.
+     * @param entries The objects to find, sorted into the order of the tree. The gNode
+     *        of each entry which is found is set, and duplicates are marked.
+     * @return The number of distinct objects which were not found.
+     * @throws StringPoolException For an internal search error.
+     */
+    int findGNodes(BatchEntry[] entries) throws StringPoolException {
+      int missing = 0;
+      AVLNode lastNode = null;
+      try {
+        for (int i = 0; i < entries.length; i++) {
+          BatchEntry entry = entries[i];
+          if (i > 0 && BATCH_ORDER.compare(entries[i - 1], entry) == 0) {
+            entry.duplicate = true;
+            entry.gNode = entries[i - 1].gNode;
+            continue;
+          }
+
+          AVLComparator avlComparator = new DataAVLComparator(entry.spObject.getSPComparator(), entry.data, gNodeToDataReadOnly);
+          AVLNode[] findResult = lastNode == null ?
+              avlFilePhase.find(avlComparator, null) :
+              AVLNode.findAscending(lastNode, avlComparator, null);
+          if (findResult == null) {
+            // empty tree
+            missing++;
+            continue;
+          }
+
+          try {
+            AVLNode node;
+            if (findResult.length == 1) {
+              node = findResult[0];
+              entry.gNode = node.getPayloadLong(IDX_GRAPH_NODE);
+            } else {
+              node = findResult[AVLFile.leafIndex(findResult)];
+              missing++;
+            }
+            // the next search starts here
+            node.incRefCount();
+            if (lastNode != null) lastNode.release();
+            lastNode = node;
+          } finally {
+            AVLFile.release(findResult);
+          }
+        }
+      } catch (RuntimeException ex) {
+        if (logger.isDebugEnabled()) logger.debug("RuntimeException in findGNodes()", ex);
+        throw ex;
+      } catch (Error e) {
+        if (logger.isDebugEnabled()) logger.debug("Error in findGNodes()", e);
+        throw e;
+      } finally {
+        if (lastNode != null) lastNode.release();
+      }
+      return missing;
+    }
+
+
     /**
      * Finds a range of SPObjects.
      * @param lowValue The low end of the range.
@@ -96,6 +96,8 @@ public class XA11StringPoolImplTest extends TestCase {
     suite.addTest(new XA11StringPoolImplTest("testNewPhase"));
     suite.addTest(new XA11StringPoolImplTest("testAllTypes"));
     suite.addTest(new XA11StringPoolImplTest("testFindNodes"));
+    suite.addTest(new XA11StringPoolImplTest("testFindGNodes"));
+    suite.addTest(new XA11StringPoolImplTest("testValueCache"));
     return suite;
   }
 
@@ -789,6 +791,71 @@ public class XA11StringPoolImplTest extends TestCase {
     return dataToNodes.get(spoFactory.newSPString(s));
   }
 
+  /**
+   * Tests that cached values are dropped when a rollback reuses gNodes.
+   */
+  public void testValueCache() throws Exception {
+    stringPool.close();
+    stringPool = new XA11StringPoolImpl(
+        new String[] {TempDir.getTempDir().getPath() + File.separatorChar + "stringpooltest"}, 1024 * 1024
+    );
+    ((SimpleXAResource) stringPool).clear();
+    simpleConfig();
+    ((SimpleXAResource) stringPool).prepare();
+    ((SimpleXAResource) stringPool).commit();
+
+    // read twice, to fill the caches and then read from them
+    for (int i = 0; i < 2; i++) {
+      testNodeRetrieval("foo");
+      testObjRetrieval("bar");
+    }
+
+    SPObject quux = spoFactory.newSPString("quux");
+    long node = stringPool.findGNode(quux, true);
+    assertEquals(node, stringPool.findGNode(quux));
+    assertEquals(quux, stringPool.findSPObject(node));
+
+    ((SimpleXAResource) stringPool).rollback();
+    assertEquals(NodePool.NONE, stringPool.findGNode(quux));
+    assertNull(stringPool.findSPObject(node));
+
+    // the rolled back gNode is allocated again
+    SPObject zulu = spoFactory.newSPString("zulu");
+    assertEquals(node, stringPool.findGNode(zulu, true));
+    assertEquals(zulu, stringPool.findSPObject(node));
+    assertEquals(NodePool.NONE, stringPool.findGNode(quux));
+    testNodeRetrieval("foo");
+    testObjRetrieval("bar");
+  }
+
+  /**
+   * Test {@link XAStringPool#findGNodes}.
+   */
+  public void testFindGNodes() throws Exception {
+    ((SimpleXAResource) stringPool).clear();
+    for (int i = 0; i < 200; i += 2) put(spoFactory.newSPString("s" + i));
+
+    // unsorted, with duplicates and missing objects
+    SPObject[] objects = new SPObject[300];
+    for (int i = 0; i < objects.length; i++) {
+      objects[i] = spoFactory.newSPString("s" + ((i * 37) % 250));
+    }
+
+    long[] nodes = stringPool.findGNodes(objects, false);
+    assertEquals(objects.length, nodes.length);
+    for (int i = 0; i < objects.length; i++) {
+      assertEquals(objects[i].toString(), stringPool.findGNode(objects[i]), nodes[i]);
+    }
+
+    nodes = stringPool.findGNodes(objects, true);
+    for (int i = 0; i < objects.length; i++) {
+      assertFalse(objects[i].toString(), nodes[i] == NodePool.NONE);
+      assertEquals(objects[i].toString(), stringPool.findGNode(objects[i]), nodes[i]);
+      assertEquals(objects[i], stringPool.findSPObject(nodes[i]));
+    }
+    assertEquals(NodePool.NONE, stringPool.findGNode(spoFactory.newSPString("s251")));
+  }
+
   long mappedDbl(double d) {
     return dataToNodes.get(spoFactory.newSPDouble(d));
   }
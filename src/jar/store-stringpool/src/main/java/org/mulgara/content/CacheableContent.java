@@ -0,0 +1,47 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.content;
+
+// Java 2 standard packages
+import java.io.IOException;
+
+/**
+ * {@link Content} which can tell whether it has changed since it was read,
+ * so that the statements parsed from it can be kept and reused.
+ *
+ * A validator is an opaque string describing a version of the content, such
+ * as an HTTP entity tag or the modification time of a file.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public interface CacheableContent extends Content {
+
+  /**
+   * Gets the validator of the content as it was when it was last read by
+   * {@link #newInputStream}.
+   *
+   * @return the validator, or <code>null</code> if the content has not been
+   *   read or has no validator, in which case it is not cached
+   */
+  public String getValidator();
+
+  /**
+   * Checks whether the content is still the version described by a validator.
+   *
+   * @param validator  a validator previously returned by {@link #getValidator}
+   * @return <code>true</code> if the content has not changed
+   * @throws IOException if the content could not be checked
+   */
+  public boolean isUnmodified(String validator) throws IOException;
+}
@@ -30,6 +30,7 @@
 package org.mulgara.content;
 
 // Java 2 standard packages
+import java.io.IOException;
 import java.net.URI;
 import java.util.*;
 import javax.transaction.xa.XAResource;
@@ -51,6 +52,12 @@ import org.mulgara.store.nodepool.NodePool;
 /**
  * Resolves constraints in models defined by parsing a {@link Content} stream.
  *
+ * Each document is parsed once for each resolver, and its statements are
+ * indexed so that every constraint against it does not have to parse it again.
+ * The statements of {@link CacheableContent} are also kept in a
+ * {@link ParsedContentCache} shared by all resolvers, until the content
+ * changes.
+ *
  * @created 2004-10-04
  *
  * @author <a href="http://staff.pisoftware.com/raboczi">Simon Raboczi</a>
@@ -82,6 +89,15 @@ public abstract class ContentResolver implements Resolver {
 
   protected final ContentHandlerManager contentManager;
 
+  /** The statements parsed from external documents, shared by all resolvers. */
+  private static final ParsedContentCache cache = new ParsedContentCache();
+
+  /** Map from the model node of each document indexed by this resolver to its statements. */
+  private final Map<Long,ParsedGraph> graphMap = new HashMap<Long,ParsedGraph>();
+
+  /** The model nodes of the documents too large to index. */
+  private final Set<Long> unindexed = new HashSet<Long>();
+
   /** Current system resolver */
   @SuppressWarnings("unused")
   private final Resolver systemResolver;
@@ -154,6 +170,11 @@ public abstract class ContentResolver implements Resolver {
     Content content = toContent(model);
     assert content != null;
 
+    // The document is about to change, so its statements can't be reused
+    graphMap.remove(model);
+    unindexed.remove(model);
+    if (content.getURIString() != null) cache.remove(content.getURIString());
+
     try {
       ContentHandler contentHandler = contentManager.getContentHandler(content);
       contentHandler.serialize(statements, content, resolverSession);
@@ -180,7 +201,9 @@ public abstract class ContentResolver implements Resolver {
 
   /**
    * Resolve a constraint against an RDF/XML document.
-   * Resolution is by filtration of a stream, and thus very slow.
+   * Resolution is from the indexed statements of the document, unless it is
+   * too large to index, in which case it is by filtration of a stream, and
+   * thus very slow.
    */
   public Resolution resolve(Constraint constraint) throws QueryException {
     if (logger.isDebugEnabled()) logger.debug("Resolve " + constraint);
@@ -225,7 +248,22 @@ public abstract class ContentResolver implements Resolver {
     assert content != null;
     assert contentMap.get(modelURIReference) == content;
 
-    Statements statements = toStatements(content);
+    // Use the indexed statements of the document, parsing and indexing them if necessary
+    Statements statements = null;
+    ParsedGraph graph = graphMap.get(modelNode);
+    if (graph == null && cache.getLimit() > 0 && !unindexed.contains(modelNode)) {
+      String key = modelURIReference.getURI().toString();
+      graph = revalidate(key, content);
+      if (graph == null) {
+        statements = toStatements(content);
+        graph = index(key, content, statements);
+      }
+      if (graph != null) graphMap.put(modelNode, graph);
+      else unindexed.add(modelNode);
+    }
+    if (graph != null) return new ParsedGraphResolution(constraint, graph);
+
+    if (statements == null) statements = toStatements(content);
     assert statements != null;
 
     // Generate the resolution
@@ -241,6 +279,84 @@ public abstract class ContentResolver implements Resolver {
   // Internal methods
   //
 
+  /**
+   * Localizes the cached statements of a document, if the content has not
+   * changed since they were parsed.
+   *
+   * @param key  the URI of the document in the cache
+   * @param content  the content of the document
+   * @return the statements of the document, or <code>null</code> if they have
+   *   to be parsed
+   */
+  private ParsedGraph revalidate(String key, Content content) throws QueryException {
+    if (!(content instanceof CacheableContent)) return null;
+    ParsedContentCache.Document document = cache.get(key);
+    if (document == null) return null;
+
+    try {
+      if (((CacheableContent)content).isUnmodified(document.validator)) {
+        if (logger.isDebugEnabled()) logger.debug("Reusing parsed content of " + key);
+        return document.localize(resolverSession);
+      }
+    } catch (IOException e) {
+      logger.info("Unable to validate parsed content of " + key, e);
+    } catch (LocalizeException e) {
+      throw new QueryException("Unable to localize parsed content of " + key, e);
+    }
+    cache.remove(key);
+    return null;
+  }
+
+  /**
+   * Reads and indexes the statements of a document, and caches them if the
+   * content has a validator.
+   *
+   * @param key  the URI of the document in the cache
+   * @param content  the content of the document
+   * @param statements  the statements parsed from the <var>content</var>
+   * @return the statements of the document, or <code>null</code> if there are
+   *   too many to index, in which case the <var>statements</var> are left open
+   */
+  private ParsedGraph index(String key, Content content, Statements statements) throws QueryException {
+    int limit = cache.getLimit();
+    long[] triples = new long[1024 * ParsedGraph.SIZEOF_TRIPLE];
+    int count = 0;
+    try {
+      statements.beforeFirst();
+      while (statements.next()) {
+        if (count >= limit) {
+          if (logger.isDebugEnabled()) logger.debug("Too many statements to index in " + out(content));
+          return null;
+        }
+        if ((count + 1) * ParsedGraph.SIZEOF_TRIPLE > triples.length) {
+          long[] grown = new long[(int)Math.min(triples.length * 2L, (long)limit * ParsedGraph.SIZEOF_TRIPLE)];
+          System.arraycopy(triples, 0, grown, 0, triples.length);
+          triples = grown;
+        }
+        triples[count * ParsedGraph.SIZEOF_TRIPLE] = statements.getSubject();
+        triples[count * ParsedGraph.SIZEOF_TRIPLE + 1] = statements.getPredicate();
+        triples[count * ParsedGraph.SIZEOF_TRIPLE + 2] = statements.getObject();
+        count++;
+      }
+      statements.close();
+    } catch (TuplesException e) {
+      throw new QueryException("Unable to parse " + out(content), e);
+    }
+    ParsedGraph graph = new ParsedGraph(triples, count);
+
+    if (content instanceof CacheableContent) {
+      String validator = ((CacheableContent)content).getValidator();
+      if (validator != null) {
+        try {
+          cache.put(key, new ParsedContentCache.Document(graph, validator, resolverSession));
+        } catch (GlobalizeException e) {
+          throw new QueryException("Unable to globalize parsed content of " + key, e);
+        }
+      }
+    }
+    return graph;
+  }
+
   /**
    * @param content  the stream to parse, never <code>null</code>
    * @return RDF statements parsed from the <var>content</var>
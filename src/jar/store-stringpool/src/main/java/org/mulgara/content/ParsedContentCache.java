@@ -0,0 +1,218 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.content;
+
+// Java 2 standard packages
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Third party packages
+import org.apache.log4j.Logger;
+import org.jrdf.graph.BlankNode;
+import org.jrdf.graph.Node;
+
+// Locally written packages
+import org.mulgara.query.rdf.BlankNodeImpl;
+import org.mulgara.resolver.spi.GlobalizeException;
+import org.mulgara.resolver.spi.LocalizeException;
+import org.mulgara.resolver.spi.ResolverSession;
+
+/**
+ * The statements parsed from external documents, shared by all the content
+ * resolvers so that a document is not parsed again until it changes.
+ * <p>
+ * Local nodes are only meaningful within the session that allocated them, so
+ * the statements are held as global nodes, and localized again for each
+ * resolver that uses them.  Each document is kept with the validator of the
+ * {@link CacheableContent} it was parsed from, and is only reused if the
+ * content is still unmodified.
+ * </p>
+ * <p>
+ * The cache holds at most <code>mulgara.content.cacheSize</code> statements,
+ * 1000000 by default, discarding the least recently used documents first.
+ * Larger documents are not indexed at all.  A size of 0 disables the cache.
+ * </p>
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+class ParsedContentCache {
+
+  /** Logger. */
+  private static final Logger logger = Logger.getLogger(ParsedContentCache.class);
+
+  /** The property for the most statements to cache. */
+  static final String CACHE_SIZE_PROPERTY = "mulgara.content.cacheSize";
+
+  /** The default for the most statements to cache. */
+  private static final int DEFAULT_CACHE_SIZE = 1000000;
+
+  /** The most statements to cache. */
+  private final int limit;
+
+  /** The documents, keyed on URI, least recently used first. */
+  private final Map<String,Document> documents = new LinkedHashMap<String,Document>(16, 0.75f, true);
+
+  /** The number of statements in the cached documents. */
+  private long size = 0;
+
+  /**
+   * Creates a cache, with a size taken from the system properties.
+   */
+  ParsedContentCache() {
+    this(Integer.getInteger(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE).intValue());
+  }
+
+  /**
+   * Creates a cache.
+   * @param limit The most statements to cache. 0 disables the cache.
+   */
+  ParsedContentCache(int limit) {
+    this.limit = limit;
+  }
+
+  /**
+   * @return The most statements to cache, which is also the most statements
+   *         of a document that will be indexed.
+   */
+  int getLimit() {
+    return limit;
+  }
+
+  /**
+   * Gets a cached document.
+   * @param uri The URI of the document.
+   * @return The document, or <code>null</code> if it is not cached.
+   */
+  synchronized Document get(String uri) {
+    return documents.get(uri);
+  }
+
+  /**
+   * Caches a document, discarding the least recently used documents to make room for it.
+   * @param uri The URI of the document.
+   * @param document The document.
+   */
+  synchronized void put(String uri, Document document) {
+    if (document.size() > limit) return;
+    remove(uri);
+    documents.put(uri, document);
+    size += document.size();
+
+    Iterator<Map.Entry<String,Document>> i = documents.entrySet().iterator();
+    while (size > limit && i.hasNext()) {
+      Map.Entry<String,Document> eldest = i.next();
+      if (logger.isDebugEnabled()) logger.debug("Discarding parsed content of " + eldest.getKey());
+      size -= eldest.getValue().size();
+      i.remove();
+    }
+  }
+
+  /**
+   * Discards a cached document.
+   * @param uri The URI of the document.
+   */
+  synchronized void remove(String uri) {
+    Document document = documents.remove(uri);
+    if (document != null) size -= document.size();
+  }
+
+
+  /**
+   * The statements of a parsed document, as global nodes.
+   */
+  static class Document {
+
+    /** The validator of the content the document was parsed from. */
+    final String validator;
+
+    /** The distinct nodes of the document, other than blank nodes. */
+    private final Node[] nodes;
+
+    /** The number of distinct blank nodes in the document. */
+    private final int blankNodes;
+
+    /**
+     * The statements, three to a statement, as indexes into {@link #nodes},
+     * or as <code>-1 - n</code> for the <var>n</var>th blank node.
+     */
+    private final int[] statements;
+
+    /**
+     * Globalizes the statements of a parsed document.
+     * @param graph The statements, as local nodes.
+     * @param validator The validator of the content the statements were parsed from.
+     * @param session The session the local nodes belong to.
+     * @throws GlobalizeException If a node could not be globalized.
+     */
+    Document(ParsedGraph graph, String validator, ResolverSession session) throws GlobalizeException {
+      this.validator = validator;
+      this.statements = new int[graph.size * ParsedGraph.SIZEOF_TRIPLE];
+
+      Map<Long,Integer> codes = new HashMap<Long,Integer>();
+      List<Node> nodeList = new ArrayList<Node>();
+      int blanks = 0;
+      for (int row = 0; row < graph.size; row++) {
+        for (int column = 0; column < ParsedGraph.SIZEOF_TRIPLE; column++) {
+          Long local = graph.get(0, row, column);
+          Integer code = codes.get(local);
+          if (code == null) {
+            Node node = session.globalize(local);
+            if (node instanceof BlankNode) {
+              code = -1 - blanks++;
+            } else {
+              code = nodeList.size();
+              nodeList.add(node);
+            }
+            codes.put(local, code);
+          }
+          statements[row * ParsedGraph.SIZEOF_TRIPLE + column] = code;
+        }
+      }
+      this.nodes = nodeList.toArray(new Node[nodeList.size()]);
+      this.blankNodes = blanks;
+    }
+
+    /**
+     * @return The number of statements in the document.
+     */
+    int size() {
+      return statements.length / ParsedGraph.SIZEOF_TRIPLE;
+    }
+
+    /**
+     * Localizes the statements of the document for a session.  Each blank
+     * node is given a new local node.
+     * @param session The session to localize the nodes in.
+     * @return The statements, as local nodes.
+     * @throws LocalizeException If a node could not be localized.
+     */
+    ParsedGraph localize(ResolverSession session) throws LocalizeException {
+      long[] local = new long[nodes.length];
+      for (int i = 0; i < nodes.length; i++) local[i] = session.localize(nodes[i]);
+      long[] blank = new long[blankNodes];
+      for (int i = 0; i < blankNodes; i++) blank[i] = session.localize(new BlankNodeImpl());
+
+      long[] triples = new long[statements.length];
+      for (int i = 0; i < statements.length; i++) {
+        int code = statements[i];
+        triples[i] = (code >= 0) ? local[code] : blank[-1 - code];
+      }
+      return new ParsedGraph(triples, size());
+    }
+  }
+}
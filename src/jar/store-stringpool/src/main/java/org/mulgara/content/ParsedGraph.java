@@ -0,0 +1,191 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.content;
+
+/**
+ * The statements parsed from a document, as local nodes indexed for lookup.
+ *
+ * The triples are held as sorted arrays of primitive <code>long</code>s, three
+ * to a triple, once in each of the {@link #ORDERS}.  Duplicate triples are
+ * removed.  A graph is immutable once it has been built.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+final class ParsedGraph {
+
+  /** The number of nodes in a triple. */
+  static final int SIZEOF_TRIPLE = 3;
+
+  /**
+   * The column orders of the indexes.  Every combination of columns is a
+   * prefix of one of the orders.
+   */
+  static final int[][] ORDERS = {
+      {0, 1, 2},
+      {1, 2, 0},
+      {2, 0, 1}
+  };
+
+  /** Below this size, sections of an array are sorted by insertion. */
+  private static final int INSERTION_SORT_THRESHOLD = 8;
+
+  /** The triples, sorted in each of the {@link #ORDERS}. */
+  private final long[][] indexes;
+
+  /** The number of triples. */
+  final int size;
+
+  /**
+   * Indexes some triples.
+   *
+   * @param triples  the triples, three nodes to a triple; this array is reused
+   *   for the first index
+   * @param count  the number of triples in the array
+   */
+  ParsedGraph(long[] triples, int count) {
+    indexes = new long[ORDERS.length][];
+
+    sort(triples, ORDERS[0], 0, count);
+    int size = 0;
+    for (int i = 0; i < count; i++) {
+      if (size == 0 || compare(triples, i * SIZEOF_TRIPLE, triples, (size - 1) * SIZEOF_TRIPLE, ORDERS[0]) != 0) {
+        System.arraycopy(triples, i * SIZEOF_TRIPLE, triples, size * SIZEOF_TRIPLE, SIZEOF_TRIPLE);
+        size++;
+      }
+    }
+    this.size = size;
+
+    indexes[0] = triples;
+    for (int i = 1; i < ORDERS.length; i++) {
+      long[] index = new long[size * SIZEOF_TRIPLE];
+      System.arraycopy(triples, 0, index, 0, index.length);
+      sort(index, ORDERS[i], 0, size);
+      indexes[i] = index;
+    }
+  }
+
+  /**
+   * Gets a column of a triple.
+   *
+   * @param index  the index holding the triple
+   * @param row  the position of the triple in the index
+   * @param column  the column to get
+   * @return the node in the column
+   */
+  long get(int index, int row, int column) {
+    return indexes[index][row * SIZEOF_TRIPLE + column];
+  }
+
+  /**
+   * Finds the boundary of the triples that start with a prefix.
+   *
+   * @param index  the index to search
+   * @param prefix  the values of the leading columns of the index
+   * @param length  the number of values in the <var>prefix</var>
+   * @param first  <code>true</code> to find the first triple starting with
+   *   the prefix, or <code>false</code> to find the triple after the last one
+   * @return the position of the boundary in the index
+   */
+  int find(int index, long[] prefix, int length, boolean first) {
+    long[] triples = indexes[index];
+    int[] order = ORDERS[index];
+    int lo = 0, hi = size;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      int offset = mid * SIZEOF_TRIPLE;
+      int c = 0;
+      for (int i = 0; i < length && c == 0; i++) {
+        long x = triples[offset + order[i]];
+        if (x != prefix[i]) c = x < prefix[i] ? -1 : 1;
+      }
+      if (c < 0 || (c == 0 && !first)) lo = mid + 1;
+      else hi = mid;
+    }
+    return lo;
+  }
+
+  /**
+   * Compares two triples.
+   *
+   * @param a  the array holding the first triple
+   * @param aOffset  the position of the first triple in <var>a</var>
+   * @param b  the array holding the second triple
+   * @param bOffset  the position of the second triple in <var>b</var>
+   * @param order  the columns to compare, in order
+   * @return a negative number, zero or a positive number if the first triple
+   *   sorts before, with or after the second
+   */
+  private static int compare(long[] a, int aOffset, long[] b, int bOffset, int[] order) {
+    for (int c: order) {
+      long x = a[aOffset + c];
+      long y = b[bOffset + c];
+      if (x != y) return x < y ? -1 : 1;
+    }
+    return 0;
+  }
+
+  /**
+   * Sorts triples of an array in place.
+   *
+   * @param a  the array of triples
+   * @param order  the columns of a triple to sort by
+   * @param from  the first triple to sort
+   * @param to  the triple after the last one to sort
+   */
+  private static void sort(long[] a, int[] order, int from, int to) {
+    final int stride = SIZEOF_TRIPLE;
+    long[] tmp = new long[stride];
+    long[] pivot = new long[stride];
+    while (to - from > INSERTION_SORT_THRESHOLD) {
+      // Partition around the median of three triples
+      int mid = (from + to) >>> 1;
+      int last = to - 1;
+      if (compare(a, mid * stride, a, from * stride, order) < 0) swap(a, mid, from, tmp);
+      if (compare(a, last * stride, a, mid * stride, order) < 0) {
+        swap(a, last, mid, tmp);
+        if (compare(a, mid * stride, a, from * stride, order) < 0) swap(a, mid, from, tmp);
+      }
+      System.arraycopy(a, mid * stride, pivot, 0, stride);
+      int i = from, j = last;
+      while (i <= j) {
+        while (compare(a, i * stride, pivot, 0, order) < 0) i++;
+        while (compare(a, j * stride, pivot, 0, order) > 0) j--;
+        if (i <= j) swap(a, i++, j--, tmp);
+      }
+
+      // Recurse into the smaller part, and loop on the larger one
+      if (j - from < to - i) {
+        sort(a, order, from, j + 1);
+        from = i;
+      } else {
+        sort(a, order, i, to);
+        to = j + 1;
+      }
+    }
+    for (int i = from + 1; i < to; i++) {
+      for (int j = i; j > from && compare(a, j * stride, a, (j - 1) * stride, order) < 0; j--) {
+        swap(a, j, j - 1, tmp);
+      }
+    }
+  }
+
+  /**
+   * Swaps two triples of an array.
+   */
+  private static void swap(long[] a, int i, int j, long[] tmp) {
+    System.arraycopy(a, i * SIZEOF_TRIPLE, tmp, 0, SIZEOF_TRIPLE);
+    System.arraycopy(a, j * SIZEOF_TRIPLE, a, i * SIZEOF_TRIPLE, SIZEOF_TRIPLE);
+    System.arraycopy(tmp, 0, a, j * SIZEOF_TRIPLE, SIZEOF_TRIPLE);
+  }
+}
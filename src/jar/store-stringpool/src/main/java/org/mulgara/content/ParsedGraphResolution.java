@@ -0,0 +1,264 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.content;
+
+// Java 2 standard packages
+import java.util.*;
+
+// Locally written packages
+import org.mulgara.query.*;
+import org.mulgara.resolver.spi.Resolution;
+import org.mulgara.store.nodepool.NodePool;
+import org.mulgara.store.tuples.AbstractTuples;
+import org.mulgara.store.tuples.Tuples;
+
+/**
+ * {@link Resolution} of a constraint against the indexed statements of a
+ * parsed document.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+class ParsedGraphResolution extends AbstractTuples implements Resolution {
+
+  /** The constraint this instance resolves. */
+  private final Constraint constraint;
+
+  /** The triples from which to filter the resolution. */
+  private final ParsedGraph graph;
+
+  /**
+   * The value of each column of the constraint, or {@link NodePool#NONE} for
+   * the columns which are not bound to a {@link LocalNode}.
+   */
+  private final long[] bound = new long[ParsedGraph.SIZEOF_TRIPLE];
+
+  /**
+   * The number of triples which satisfy the constraint, or <code>-1</code>
+   * if the constraint has to be filtered row by row.
+   */
+  private final long constraintRowCount;
+
+  /** The number of triples in the range of the index scanned for the constraint. */
+  private final long constraintUpperBound;
+
+  /**
+   * Which column of the current triple provides the value of each column of
+   * the current resolution tuple row.
+   */
+  private final int[] columnIndex;
+
+  /** The index scanned since the most recent invocation of {@link #beforeFirst}. */
+  private int index;
+
+  /**
+   * The values of each column of a triple, for the constraint combined with
+   * the prefix passed into the most recent invocation of {@link #beforeFirst}.
+   */
+  private long[] filter;
+
+  /**
+   * The number of leading columns of the {@link #index} which are bound by
+   * the {@link #filter}.  The remaining bound columns are checked row by row.
+   */
+  private int filterLength;
+
+  /** The position of the current triple in the {@link #index}. */
+  private int row;
+
+  /**
+   * The position after the last triple in the {@link #index} which starts
+   * with the bound columns, or <code>-1</code> if {@link #beforeFirst} hasn't
+   * been called.
+   */
+  private int end = -1;
+
+  /**
+   * Construct the resolution to a constraint from a parsed document.
+   *
+   * @param constraint  the constraint to resolve, never <code>null</code>
+   * @param graph  the triples to filter for constraint satisfaction, never
+   *   <code>null</code>
+   * @throws IllegalArgumentException if the <var>constraint</var> or
+   *   <var>graph</var> are <code>null</code>
+   */
+  ParsedGraphResolution(Constraint constraint, ParsedGraph graph) {
+    if (constraint == null) throw new IllegalArgumentException("Null \"constraint\" parameter");
+    if (graph == null) throw new IllegalArgumentException("Null \"graph\" parameter");
+
+    this.constraint = constraint;
+    this.graph = graph;
+
+    // Calculate columnIndex and set the variable list
+    int length = 0;
+    int[] temp = new int[ParsedGraph.SIZEOF_TRIPLE];
+    List<Variable> variableList = new ArrayList<Variable>(ParsedGraph.SIZEOF_TRIPLE);
+    for (int i = 0; i < ParsedGraph.SIZEOF_TRIPLE; i++) {
+      if (constraint.getElement(i) instanceof Variable) {
+        temp[length++] = i;
+        variableList.add((Variable)constraint.getElement(i));
+      }
+      bound[i] = constraint.getElement(i) instanceof LocalNode ?
+          ((LocalNode)constraint.getElement(i)).getValue() : NodePool.NONE;
+    }
+    columnIndex = new int[length];
+    for (int i = 0; i < length; i++) columnIndex[i] = temp[i];
+    setVariables(variableList);
+
+    // Count the triples satisfying the constraint from the range of an index
+    select(bound);
+    constraintUpperBound = end - row - 1;
+    constraintRowCount = filterLength == countBound(bound) ? constraintUpperBound : -1;
+    end = -1;
+  }
+
+  //
+  // Methods implementing Resolution
+  //
+
+  public Constraint getConstraint() {
+    return constraint;
+  }
+
+  /**
+   * @return <code>true</code>, since the document is the whole graph
+   */
+  public boolean isComplete() {
+    return true;
+  }
+
+  //
+  // Methods implementing Tuples
+  //
+
+  public void beforeFirst(long[] prefix, int suffixTruncation) throws TuplesException {
+    if (prefix == null) throw new IllegalArgumentException("Null \"prefix\" parameter");
+    if (prefix.length > columnIndex.length) {
+      throw new TuplesException("Bad prefix (>" + columnIndex.length + "): " + toString(prefix));
+    }
+    if (suffixTruncation != 0) throw new IllegalArgumentException("Nonzero suffix truncation");
+
+    // Combine the prefix with the constraint, and find the matching triples
+    long[] values = bound.clone();
+    for (int i = 0; i < prefix.length; i++) values[columnIndex[i]] = prefix[i];
+    select(values);
+  }
+
+  public Object clone() {
+    // Copy mutable fields by value (the graph is immutable)
+    ParsedGraphResolution cloned = (ParsedGraphResolution)super.clone();
+    if (filter != null) cloned.filter = filter.clone();
+    return cloned;
+  }
+
+  public void close() throws TuplesException {
+    // null implementation
+  }
+
+  public long getColumnValue(int column) throws TuplesException {
+    if (end < 0 || row < 0 || row >= end) throw new TuplesException("Not on a row");
+    if (column < 0 || column >= columnIndex.length) {
+      throw new TuplesException("No such column: " + column);
+    }
+    return graph.get(index, row, columnIndex[column]);
+  }
+
+  @SuppressWarnings("unchecked")
+  public List<Tuples> getOperands() {
+    return (List<Tuples>)Collections.EMPTY_LIST;
+  }
+
+  public long getRowCount() throws TuplesException {
+    if (constraintRowCount >= 0) return constraintRowCount;
+    return super.getRowCount();
+  }
+
+  public long getRowUpperBound() throws TuplesException {
+    return constraintUpperBound;
+  }
+
+  public long getRowExpectedCount() throws TuplesException {
+    return constraintRowCount >= 0 ? constraintRowCount : constraintUpperBound;
+  }
+
+  public boolean hasNoDuplicates() throws TuplesException {
+    return true;
+  }
+
+  public boolean isColumnEverUnbound(int column) throws TuplesException {
+    if (column < 0 || column >= columnIndex.length) {
+      throw new TuplesException("No such column: " + column);
+    }
+    return false;
+  }
+
+  public boolean next() throws TuplesException {
+    if (end < 0) throw new TuplesException("Haven't called beforeFirst");
+
+    // Advance to the next triple that satisfies the remaining bound columns
+    int[] order = ParsedGraph.ORDERS[index];
+    filtering_triples: while (++row < end) {
+      for (int i = filterLength; i < order.length; i++) {
+        int column = order[i];
+        if (filter[column] != NodePool.NONE && filter[column] != graph.get(index, row, column)) {
+          continue filtering_triples;
+        }
+      }
+      return true;
+    }
+
+    row = end;
+    return false;
+  }
+
+  //
+  // Internal methods
+  //
+
+  /**
+   * Select the index with the most leading columns bound, and position the
+   * cursor before the triples which start with those columns.
+   *
+   * @param values  the value of each column, or {@link NodePool#NONE} for
+   *   unbound columns
+   */
+  private void select(long[] values) {
+    index = 0;
+    filterLength = -1;
+    for (int i = 0; i < ParsedGraph.ORDERS.length; i++) {
+      int[] order = ParsedGraph.ORDERS[i];
+      int length = 0;
+      while (length < order.length && values[order[length]] != NodePool.NONE) length++;
+      if (length > filterLength) {
+        index = i;
+        filterLength = length;
+      }
+    }
+
+    int[] order = ParsedGraph.ORDERS[index];
+    long[] prefix = new long[filterLength];
+    for (int i = 0; i < filterLength; i++) prefix[i] = values[order[i]];
+    filter = values;
+    row = graph.find(index, prefix, filterLength, true) - 1;
+    end = graph.find(index, prefix, filterLength, false);
+  }
+
+  /**
+   * @return the number of bound columns in <var>values</var>
+   */
+  private static int countBound(long[] values) {
+    int count = 0;
+    for (long value: values) if (value != NodePool.NONE) count++;
+    return count;
+  }
+}
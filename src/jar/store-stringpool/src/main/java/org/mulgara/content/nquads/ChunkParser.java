@@ -0,0 +1,373 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.content.nquads;
+
+// Java 2 standard packages
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+// Third party packages
+import org.jrdf.graph.Node;
+
+// Locally written packages
+import org.mulgara.parser.MulgaraParserException;
+import org.mulgara.query.rdf.LiteralImpl;
+import org.mulgara.query.rdf.URIReferenceImpl;
+
+/**
+ * Parses a chunk of the lines of an N-Triples or N-Quads document into global
+ * nodes.  Chunks are independent of each other, so they can be parsed in
+ * parallel.
+ *
+ * Each distinct term of the chunk is converted to a node only once, and the
+ * statements refer to the terms by number, so that the nodes can be localized
+ * once for each chunk rather than once for each statement.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+class ChunkParser implements Callable<ChunkParser.Chunk> {
+
+  /** The code for the graph of a statement in the default graph. */
+  static final int DEFAULT_GRAPH = Integer.MIN_VALUE;
+
+  /** The number of codes for each statement: subject, predicate, object and graph. */
+  static final int SIZEOF_QUAD = 4;
+
+  /** The document being parsed, for error messages. */
+  private final URI baseURI;
+
+  /** The lines to parse. */
+  private final String[] lines;
+
+  /** The number of lines to parse. */
+  private final int lineCount;
+
+  /** The line number of the first line. */
+  private final long firstLine;
+
+  /** The code of each distinct term, keyed on its text. */
+  private final Map<String,Integer> codes = new HashMap<String,Integer>();
+
+  /** The nodes of the terms which are not blank nodes. */
+  private final List<Node> nodes = new ArrayList<Node>();
+
+  /** The labels of the blank nodes. */
+  private final List<String> blankNodes = new ArrayList<String>();
+
+  /** The line being parsed. */
+  private String line;
+
+  /** The position in the {@link #line}. */
+  private int pos;
+
+  /**
+   * @param baseURI  the document being parsed, for error messages
+   * @param lines  the lines to parse
+   * @param lineCount  the number of lines to parse
+   * @param firstLine  the line number of the first line in the document
+   */
+  ChunkParser(URI baseURI, String[] lines, int lineCount, long firstLine) {
+    this.baseURI = baseURI;
+    this.lines = lines;
+    this.lineCount = lineCount;
+    this.firstLine = firstLine;
+  }
+
+  /**
+   * Parses the lines.
+   *
+   * @return the statements of the lines
+   * @throws MulgaraParserException if a line is not a valid statement
+   */
+  public Chunk call() throws MulgaraParserException {
+    int[] quads = new int[lineCount * SIZEOF_QUAD];
+    int size = 0;
+    for (int i = 0; i < lineCount; i++) {
+      line = lines[i];
+      pos = 0;
+      try {
+        if (statement(quads, size * SIZEOF_QUAD)) size++;
+      } catch (MulgaraParserException e) {
+        throw new MulgaraParserException("Line " + (firstLine + i) + " of " + baseURI + ": " + e.getMessage(), e);
+      }
+    }
+    return new Chunk(nodes.toArray(new Node[nodes.size()]),
+                     blankNodes.toArray(new String[blankNodes.size()]),
+                     size == lineCount ? quads : Arrays.copyOf(quads, size * SIZEOF_QUAD),
+                     size);
+  }
+
+  /**
+   * Parses the current line.
+   *
+   * @param quads  the array to put the codes of the statement into
+   * @param offset  the position in <var>quads</var> for the statement
+   * @return <code>true</code> if the line is a statement, or <code>false</code>
+   *   if it is blank or a comment
+   * @throws MulgaraParserException if the line is not a valid statement
+   */
+  private boolean statement(int[] quads, int offset) throws MulgaraParserException {
+    skipSpace();
+    if (pos == line.length() || line.charAt(pos) == '#') return false;
+
+    quads[offset] = code(term(true, false));
+    skipSpace();
+    quads[offset + 1] = code(term(false, false));
+    skipSpace();
+    quads[offset + 2] = code(term(true, true));
+    skipSpace();
+    if (pos < line.length() && line.charAt(pos) != '.') {
+      quads[offset + 3] = code(term(true, false));
+      skipSpace();
+    } else {
+      quads[offset + 3] = DEFAULT_GRAPH;
+    }
+
+    if (pos == line.length() || line.charAt(pos) != '.') throw new MulgaraParserException("Expected '.'");
+    pos++;
+    skipSpace();
+    if (pos < line.length() && line.charAt(pos) != '#') {
+      throw new MulgaraParserException("Unexpected text after '.'");
+    }
+    return true;
+  }
+
+  /**
+   * Reads the text of a term.
+   *
+   * @param blank  whether the term may be a blank node
+   * @param literal  whether the term may be a literal
+   * @return the text of the term
+   * @throws MulgaraParserException if there is no valid term at the current position
+   */
+  private String term(boolean blank, boolean literal) throws MulgaraParserException {
+    if (pos == line.length()) throw new MulgaraParserException("Unexpected end of line");
+    int start = pos;
+    switch (line.charAt(pos)) {
+      case '<':
+        pos = line.indexOf('>', pos);
+        if (pos < 0) throw new MulgaraParserException("Unterminated IRI");
+        pos++;
+        break;
+
+      case '_':
+        if (!blank) throw new MulgaraParserException("Unexpected blank node");
+        if (!line.startsWith("_:", pos)) throw new MulgaraParserException("Invalid blank node");
+        pos += 2;
+        while (pos < line.length() && !isDelimiter(line.charAt(pos))) pos++;
+        // a label can't end with '.', so that is the end of the statement
+        while (line.charAt(pos - 1) == '.') pos--;
+        if (pos == start + 2) throw new MulgaraParserException("Empty blank node label");
+        break;
+
+      case '"':
+        if (!literal) throw new MulgaraParserException("Unexpected literal");
+        pos = endOfString(pos);
+        if (pos < line.length() && line.charAt(pos) == '@') {
+          pos++;
+          while (pos < line.length() && (Character.isLetterOrDigit(line.charAt(pos)) || line.charAt(pos) == '-')) pos++;
+        } else if (line.startsWith("^^<", pos)) {
+          pos = line.indexOf('>', pos);
+          if (pos < 0) throw new MulgaraParserException("Unterminated datatype IRI");
+          pos++;
+        }
+        break;
+
+      default:
+        throw new MulgaraParserException("Unexpected character '" + line.charAt(pos) + "'");
+    }
+    return line.substring(start, pos);
+  }
+
+  /**
+   * Finds the code of a term, converting it to a node if it hasn't been seen
+   * in this chunk before.
+   *
+   * @param term  the text of the term
+   * @return the code of the term
+   * @throws MulgaraParserException if the term is not valid
+   */
+  private int code(String term) throws MulgaraParserException {
+    Integer code = codes.get(term);
+    if (code == null) {
+      if (term.charAt(0) == '_') {
+        code = -1 - blankNodes.size();
+        blankNodes.add(term);
+      } else {
+        code = nodes.size();
+        nodes.add(toNode(term));
+      }
+      codes.put(term, code);
+    }
+    return code;
+  }
+
+  /**
+   * Converts the text of an IRI or literal to a node.
+   *
+   * @param term  the text of the term
+   * @return the node
+   * @throws MulgaraParserException if the term is not valid
+   */
+  private static Node toNode(String term) throws MulgaraParserException {
+    if (term.charAt(0) == '<') return toURIReference(term.substring(1, term.length() - 1));
+
+    int end = term.lastIndexOf('"');
+    String lexicalForm = unescape(term.substring(1, end));
+    if (end + 1 == term.length()) return new LiteralImpl(lexicalForm);
+    if (term.charAt(end + 1) == '@') return new LiteralImpl(lexicalForm, term.substring(end + 2));
+    return new LiteralImpl(lexicalForm, toURIReference(term.substring(end + 4, term.length() - 1)).getURI());
+  }
+
+  /**
+   * @param iri  the text of an IRI, without the angle brackets
+   * @return the IRI as a node
+   * @throws MulgaraParserException if the IRI is not a valid absolute URI
+   */
+  private static URIReferenceImpl toURIReference(String iri) throws MulgaraParserException {
+    if (iri.indexOf('\\') >= 0) iri = unescape(iri);
+    try {
+      return new URIReferenceImpl(new URI(iri));
+    } catch (URISyntaxException e) {
+      throw new MulgaraParserException("Invalid IRI <" + iri + ">", e);
+    } catch (IllegalArgumentException e) {
+      throw new MulgaraParserException("Invalid IRI <" + iri + ">", e);
+    }
+  }
+
+  /**
+   * Finds the end of a quoted string.
+   *
+   * @param start  the position of the opening quote
+   * @return the position after the closing quote
+   * @throws MulgaraParserException if the string is not terminated
+   */
+  private int endOfString(int start) throws MulgaraParserException {
+    for (int i = start + 1; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '\\') i++;
+      else if (c == '"') return i + 1;
+    }
+    throw new MulgaraParserException("Unterminated literal");
+  }
+
+  /**
+   * Replaces the escape sequences in a string.
+   *
+   * @param s  the escaped string
+   * @return the unescaped string
+   * @throws MulgaraParserException if an escape sequence is not valid
+   */
+  static String unescape(String s) throws MulgaraParserException {
+    int i = s.indexOf('\\');
+    if (i < 0) return s;
+
+    StringBuilder b = new StringBuilder(s.length());
+    b.append(s, 0, i);
+    while (i < s.length()) {
+      char c = s.charAt(i++);
+      if (c != '\\') {
+        b.append(c);
+        continue;
+      }
+      if (i == s.length()) throw new MulgaraParserException("Incomplete escape sequence");
+      c = s.charAt(i++);
+      switch (c) {
+        case 't': b.append('\t'); break;
+        case 'b': b.append('\b'); break;
+        case 'n': b.append('\n'); break;
+        case 'r': b.append('\r'); break;
+        case 'f': b.append('\f'); break;
+        case '"': b.append('"'); break;
+        case '\'': b.append('\''); break;
+        case '\\': b.append('\\'); break;
+        case 'u': i = appendCodePoint(b, s, i, 4); break;
+        case 'U': i = appendCodePoint(b, s, i, 8); break;
+        default: throw new MulgaraParserException("Invalid escape sequence \\" + c);
+      }
+    }
+    return b.toString();
+  }
+
+  /**
+   * Appends a character given as hexadecimal digits.
+   *
+   * @param b  the string to append to
+   * @param s  the string holding the digits
+   * @param start  the position of the first digit
+   * @param length  the number of digits
+   * @return the position after the digits
+   * @throws MulgaraParserException if the digits are not a valid character
+   */
+  private static int appendCodePoint(StringBuilder b, String s, int start, int length) throws MulgaraParserException {
+    if (start + length > s.length()) throw new MulgaraParserException("Incomplete escape sequence");
+    try {
+      b.appendCodePoint(Integer.parseInt(s.substring(start, start + length), 16));
+    } catch (NumberFormatException e) {
+      throw new MulgaraParserException("Invalid escape sequence " + s.substring(start - 2, start + length));
+    } catch (IllegalArgumentException e) {
+      throw new MulgaraParserException("Invalid character " + s.substring(start - 2, start + length));
+    }
+    return start + length;
+  }
+
+  /**
+   * Skips spaces and tabs.
+   */
+  private void skipSpace() {
+    while (pos < line.length() && (line.charAt(pos) == ' ' || line.charAt(pos) == '\t')) pos++;
+  }
+
+  /**
+   * @return whether a character ends a blank node label
+   */
+  private static boolean isDelimiter(char c) {
+    return c == ' ' || c == '\t' || c == '<' || c == '"' || c == '#';
+  }
+
+  /**
+   * The statements parsed from a chunk of lines, with each term numbered.
+   */
+  static class Chunk {
+
+    /** The distinct nodes of the chunk, other than blank nodes. */
+    final Node[] nodes;
+
+    /** The labels of the distinct blank nodes of the chunk. */
+    final String[] blankNodes;
+
+    /**
+     * The statements, {@link #SIZEOF_QUAD} codes to a statement.  A code is an
+     * index into {@link #nodes}, <code>-1 - n</code> for the <var>n</var>th
+     * blank node, or {@link #DEFAULT_GRAPH}.
+     */
+    final int[] quads;
+
+    /** The number of statements. */
+    final int size;
+
+    Chunk(Node[] nodes, String[] blankNodes, int[] quads, int size) {
+      this.nodes = nodes;
+      this.blankNodes = blankNodes;
+      this.quads = quads;
+      this.size = size;
+    }
+  }
+}
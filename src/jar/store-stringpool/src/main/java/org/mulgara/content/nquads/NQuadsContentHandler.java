@@ -0,0 +1,106 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.content.nquads;
+
+// Java packages
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+// Java 2 enterprise packages
+import javax.activation.MimeType;
+import javax.activation.MimeTypeParseException;
+
+// Local packages
+import org.mulgara.content.Content;
+import org.mulgara.content.ContentHandler;
+import org.mulgara.content.ContentHandlerException;
+import org.mulgara.content.ModifiedException;
+import org.mulgara.content.NotModifiedException;
+import org.mulgara.content.n3.N3Writer;
+import org.mulgara.resolver.spi.ResolverSession;
+import org.mulgara.resolver.spi.Statements;
+
+/**
+ * Parses N-Triples and N-Quads documents, splitting the document between
+ * several threads.
+ *
+ * Statements in a named graph are returned as {@link org.mulgara.resolver.spi.QuadStatements},
+ * so they can be loaded into their own graphs.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public class NQuadsContentHandler implements ContentHandler {
+
+  /** The MIME types of N-Triples and N-Quads. */
+  private static final MimeType APPLICATION_N_TRIPLES;
+  private static final MimeType APPLICATION_N_QUADS;
+  private static final MimeType TEXT_X_NQUADS;
+
+  static {
+    try {
+      APPLICATION_N_TRIPLES = new MimeType("application", "n-triples");
+      APPLICATION_N_QUADS   = new MimeType("application", "n-quads");
+      TEXT_X_NQUADS         = new MimeType("text", "x-nquads");
+    } catch (MimeTypeParseException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  //
+  // Methods implementing ContentHandler
+  //
+
+  public Statements parse(Content content, ResolverSession resolverSession) throws ContentHandlerException {
+    return new NQuadsStatements(content, resolverSession);
+  }
+
+  /**
+   * @return <code>true</code> if the content has an N-Triples or N-Quads MIME type,
+   *   or the file part of the URI has an <code>.nt</code> or <code>.nq</code> extension
+   */
+  public boolean canParse(Content content) throws NotModifiedException {
+    MimeType contentType = content.getContentType();
+    if (contentType != null && (APPLICATION_N_TRIPLES.match(contentType) ||
+        APPLICATION_N_QUADS.match(contentType) || TEXT_X_NQUADS.match(contentType))) {
+      return true;
+    }
+
+    // Sniff at the pathname extension
+    if (content.getURI() == null) return false;
+    String path = content.getURI().getPath();
+    if (path == null) return false;
+
+    path = path.toLowerCase();
+    if (path.endsWith(".gz")) path = path.substring(0, path.length() - 3);
+    return path.endsWith(".nt") || path.endsWith(".nq");
+  }
+
+  /**
+   * Writes out the statements in N-Triples format.
+   */
+  public void serialize(Statements      statements,
+                        Content         content,
+                        ResolverSession resolverSession)
+      throws ContentHandlerException, ModifiedException {
+    try {
+      Writer out = new BufferedWriter(new OutputStreamWriter(content.newOutputStream(), "utf-8"));
+      new N3Writer().write(statements, resolverSession, out);
+      out.close();
+    } catch (IOException e) {
+      throw new ContentHandlerException("Failed to serialize N-Triples to " + content.getURIString(), e);
+    }
+  }
+}
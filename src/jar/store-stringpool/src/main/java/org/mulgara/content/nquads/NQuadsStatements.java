@@ -0,0 +1,253 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.content.nquads;
+
+// Java 2 standard packages
+import java.util.Collections;
+import java.util.List;
+
+// Third party packages
+import org.apache.log4j.Logger;
+
+// Locally written packages
+import org.mulgara.content.Content;
+import org.mulgara.content.NotModifiedException;
+import org.mulgara.content.NotModifiedTuplesException;
+import org.mulgara.query.TuplesException;
+import org.mulgara.query.Variable;
+import org.mulgara.resolver.spi.QuadStatements;
+import org.mulgara.resolver.spi.ResolverSession;
+import org.mulgara.resolver.spi.Statements;
+import org.mulgara.resolver.spi.StatementsWrapperResolution;
+import org.mulgara.store.tuples.AbstractTuples;
+import org.mulgara.store.tuples.Tuples;
+
+/**
+ * Parses an N-Triples or N-Quads {@link java.io.InputStream} into
+ * {@link Statements}, with the graph of each statement.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public class NQuadsStatements extends AbstractTuples implements QuadStatements {
+  /** Logger. */
+  private static final Logger logger = Logger.getLogger(NQuadsStatements.class.getName());
+
+  /** The N-Triples or N-Quads document. */
+  private Content content;
+
+  /** The session used to localize the RDF nodes from the stream. */
+  private ResolverSession resolverSession;
+
+  /** The parser of the document, or <code>null</code> if it is not being read. */
+  private Parser parser = null;
+
+  /** The current chunk of statements, four nodes to a statement, or <code>null</code>. */
+  private long[] quads = null;
+
+  /** The position of the current statement in the {@link #quads}. */
+  private int row;
+
+  private long rowCount;
+
+  private boolean rowCountIsValid = false;
+
+  /** Guess at a large number */
+  private static final long LARGE_FILE_SIZE = 1000000L;
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Construct an N-Quads stream parser.
+   *
+   * @param content  the N-Triples or N-Quads content
+   * @param resolverSession  session against which to localize RDF nodes
+   * @throws IllegalArgumentException if <var>content</var> or
+   *   <var>resolverSession</var> are <code>null</code>
+   */
+  NQuadsStatements(Content content, ResolverSession resolverSession) {
+    if (content == null) throw new IllegalArgumentException("Null \"content\" parameter");
+    if (resolverSession == null) throw new IllegalArgumentException("Null \"resolverSession\" parameter");
+
+    this.content = content;
+    this.resolverSession = resolverSession;
+
+    // Fix the magical column names for RDF statements
+    setVariables(new Variable[] { new Variable("subject"),
+                                  new Variable("predicate"),
+                                  new Variable("object") });
+  }
+
+  //
+  // Methods implementing QuadStatements
+  //
+
+  public long getSubject() throws TuplesException {
+    return getColumnValue(0);
+  }
+
+  public long getPredicate() throws TuplesException {
+    return getColumnValue(1);
+  }
+
+  public long getObject() throws TuplesException {
+    return getColumnValue(2);
+  }
+
+  public long getGraph() throws TuplesException {
+    if (quads == null) throw new TuplesException("There is no current row");
+    return quads[row * ChunkParser.SIZEOF_QUAD + 3];
+  }
+
+  //
+  // Methods implementing AbstractTuples
+  //
+
+  /**
+   * {@inheritDoc}
+   *
+   * Non-zero length <var>prefix</var> values don't need to be supported by
+   * this class because prefix filtration is implemented by the
+   * {@link StatementsWrapperResolution} which the existing external resolvers
+   * always apply to their content before returning it.
+   *
+   * @throws NotModifiedTuplesException if the underlying tuples are cached
+   * @throws TuplesException {@inheritDoc}; also if <var>prefix</var> is non-zero length
+   */
+  public void beforeFirst(long[] prefix, int suffixTruncation) throws TuplesException {
+    if (logger.isDebugEnabled()) logger.debug("Before first");
+
+    if (prefix == null) throw new IllegalArgumentException("Null \"prefix\" parameter");
+    if (prefix.length != 0) {
+      throw new TuplesException(getClass() + ".beforeFirst isn't implemented for non-zero length prefix");
+    }
+    if (suffixTruncation != 0) throw new IllegalArgumentException("Nonzero suffix truncation");
+
+    // Shut down any existing parse
+    stopParser();
+
+    try {
+      parser = new Parser(content, resolverSession);
+    } catch (NotModifiedException e) {
+      throw new NotModifiedTuplesException(e);
+    }
+    parser.start();
+  }
+
+  /**
+   * The cursor position isn't cloned by this method.
+   */
+  public Object clone() {
+    NQuadsStatements cloned = (NQuadsStatements)super.clone();
+    cloned.parser = null;
+    cloned.quads = null;
+    return cloned;
+  }
+
+  public void close() throws TuplesException {
+    stopParser();
+  }
+
+  /**
+   * @param column  0 for the subject, 1 for the predicate, 2 for the object
+   */
+  public long getColumnValue(int column) throws TuplesException {
+    if (quads == null) throw new TuplesException("There is no current row");
+    if (column < 0 || column > 2) throw new TuplesException("No such column " + column);
+    return quads[row * ChunkParser.SIZEOF_QUAD + column];
+  }
+
+  public List<Tuples> getOperands() {
+    return Collections.emptyList();
+  }
+
+  public long getRowCount() throws TuplesException {
+    if (!rowCountIsValid) {
+      // Parse the entire document, without localizing it
+      Parser p;
+      try {
+        p = new Parser(content, resolverSession);
+      } catch (NotModifiedException e) {
+        throw new NotModifiedTuplesException(e);
+      }
+      p.start();
+      try {
+        rowCount = p.waitForStatementTotal();
+      } finally {
+        p.abort();
+      }
+      rowCountIsValid = true;
+    }
+    return rowCount;
+  }
+
+  public long getRowUpperBound() throws TuplesException {
+    // If the row count isn't yet available, return an absurdly huge value
+    return rowCountIsValid ? rowCount : Long.MAX_VALUE;
+  }
+
+  public long getRowExpectedCount() throws TuplesException {
+    return rowCountIsValid ? rowCount : LARGE_FILE_SIZE;
+  }
+
+  public boolean hasNoDuplicates() throws TuplesException {
+    return false;
+  }
+
+  public boolean isColumnEverUnbound(int column) throws TuplesException {
+    switch (column) {
+    case 0: case 1: case 2:
+      return false;
+    default:
+      throw new TuplesException("No such column " + column);
+    }
+  }
+
+  public boolean next() throws TuplesException {
+    if (parser == null) return false;
+
+    if (quads != null && ++row < quads.length / ChunkParser.SIZEOF_QUAD) return true;
+
+    try {
+      do {
+        quads = parser.nextChunk(true);
+      } while (quads != null && quads.length == 0);
+    } catch (TuplesException e) {
+      stopParser();
+      throw e;
+    }
+
+    if (quads == null) {
+      // Hit the end of the document
+      rowCount = parser.getStatementCount();
+      rowCountIsValid = true;
+      stopParser();
+      return false;
+    }
+    row = 0;
+    return true;
+  }
+
+  /**
+   * Stops the parser if it is running, and clears the current row.
+   */
+  private void stopParser() {
+    if (parser != null) {
+      parser.abort();
+      parser = null;
+    }
+    quads = null;
+  }
+}
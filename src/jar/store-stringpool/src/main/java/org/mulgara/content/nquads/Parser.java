@@ -0,0 +1,389 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.content.nquads;
+
+// Java 2 standard packages
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Third party packages
+import org.apache.log4j.Logger;
+import org.jrdf.graph.Node;
+
+// Locally written packages
+import org.mulgara.content.Content;
+import org.mulgara.content.NotModifiedException;
+import org.mulgara.query.TuplesException;
+import org.mulgara.query.rdf.BlankNodeImpl;
+import org.mulgara.query.rdf.Mulgara;
+import org.mulgara.resolver.spi.LocalizeException;
+import org.mulgara.resolver.spi.ResolverSession;
+import org.mulgara.store.nodepool.NodePool;
+import org.mulgara.util.StringToLongMap;
+
+/**
+ * Parses N-Triples and N-Quads data on several threads.
+ *
+ * <p>This class reads the lines of the document in a background thread, and
+ * hands chunks of <code>mulgara.nquads.chunkSize</code> lines, 10000 by
+ * default, to a pool of <code>mulgara.nquads.threads</code> threads, one for
+ * each processor by default, to be parsed in parallel.  The parsed chunks are
+ * taken in document order by the consumer thread.</p>
+ *
+ * <p>Because ResolverSession (and the underlying StringPoolSession) may not be
+ * accessed concurrently from multiple threads, the nodes are localized in the
+ * consumer thread.  The distinct nodes of a chunk are localized together in a
+ * single batch, and the most recently used nodes are remembered between
+ * chunks, so frequent nodes such as predicates and graphs are only localized
+ * once.</p>
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+class Parser extends Thread {
+  /** Logger. */
+  private static final Logger logger = Logger.getLogger(Parser.class.getName());
+
+  /** The property for the number of threads to parse with. */
+  static final String THREADS_PROPERTY = "mulgara.nquads.threads";
+
+  /** The property for the number of lines in each chunk. */
+  static final String CHUNK_SIZE_PROPERTY = "mulgara.nquads.chunkSize";
+
+  /** The default number of lines in each chunk. */
+  private static final int DEFAULT_CHUNK_SIZE = 10000;
+
+  /** The number of distinct nodes to remember the local nodes of between chunks. */
+  private static final int NODE_CACHE_SIZE = 100000;
+
+  /** The number of threads to parse with. */
+  private static final int threads = getIntProperty(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+
+  /** The number of lines in each chunk. */
+  private static final int chunkSize = getIntProperty(CHUNK_SIZE_PROPERTY, DEFAULT_CHUNK_SIZE);
+
+  /** The threads for parsing chunks, shared by all parsers. */
+  private static ExecutorService executor = null;
+
+  /** Marks the end of the document in the {@link #chunks} queue. */
+  private static final Future<ChunkParser.Chunk> END = completed(null);
+
+  /** The resolverSession to localize nodes in. */
+  private final ResolverSession resolverSession;
+
+  /** The stream containing the data to be parsed. */
+  private final InputStream inputStream;
+
+  /** The document being parsed, for error messages. */
+  private final URI baseURI;
+
+  /**
+   * The chunks being parsed, in document order.  Allowing two chunks for each
+   * thread keeps the threads busy while the consumer localizes a chunk.
+   */
+  private final BlockingQueue<Future<ChunkParser.Chunk>> chunks =
+      new ArrayBlockingQueue<Future<ChunkParser.Chunk>>(2 * threads + 1);
+
+  /** The local nodes of the most recently used nodes. */
+  @SuppressWarnings("serial")
+  private final Map<Node,Long> nodeCache = new LinkedHashMap<Node,Long>(16, 0.75f, true) {
+    protected boolean removeEldestEntry(Map.Entry<Node,Long> eldest) {
+      return size() > NODE_CACHE_SIZE;
+    }
+  };
+
+  /** Mapping between blank node labels and local node numbers, for the whole document. */
+  private StringToLongMap blankNodeMap = null;
+
+  /** The number of statements taken from the parser so far. */
+  private long statementCount = 0;
+
+  /** Whether the end of the document has been taken from the parser. */
+  private boolean complete = false;
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Sole constructor.
+   */
+  Parser(Content content, ResolverSession resolverSession) throws NotModifiedException, TuplesException {
+    // Validate parameters
+    if (content == null) throw new IllegalArgumentException("Null \"content\" parameter");
+    if (resolverSession == null) throw new IllegalArgumentException("Null \"resolverSession\" parameter");
+
+    // Initialize fields
+    this.resolverSession = resolverSession;
+    this.baseURI = content.getURI() != null ? content.getURI() : URI.create(Mulgara.NAMESPACE);
+    try {
+      this.inputStream = content.newInputStream();
+    } catch (IOException e) {
+      throw new TuplesException("Unable to obtain input stream from " + baseURI, e);
+    }
+    setName("nquads-reader");
+    setDaemon(true);
+  }
+
+  /**
+   * @return the number of statements taken from the parser so far
+   */
+  long getStatementCount() {
+    return statementCount;
+  }
+
+  /**
+   * @return whether {@link #getStatementCount} is the number of statements in the document
+   */
+  boolean isStatementCountTotal() {
+    return complete;
+  }
+
+  /**
+   * Takes the rest of the document from the parser, without localizing it.
+   *
+   * @return the total number of statements in the document
+   * @throws TuplesException if the document could not be parsed
+   */
+  long waitForStatementTotal() throws TuplesException {
+    while (nextChunk(false) != null);
+    return statementCount;
+  }
+
+  //
+  // Method implementing Runnable
+  //
+
+  /**
+   * Reads the document into chunks of lines, and queues them to be parsed.
+   */
+  public void run() {
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
+      String[] lines = new String[chunkSize];
+      int count = 0;
+      long lineNumber = 0;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines[count++] = line;
+        if (count == chunkSize) {
+          chunks.put(getExecutor().submit(new ChunkParser(baseURI, lines, count, lineNumber + 1)));
+          lineNumber += count;
+          lines = new String[chunkSize];
+          count = 0;
+        }
+      }
+      if (count > 0) chunks.put(getExecutor().submit(new ChunkParser(baseURI, lines, count, lineNumber + 1)));
+      chunks.put(END);
+      if (logger.isDebugEnabled()) logger.debug("Read " + (lineNumber + count) + " lines from " + baseURI);
+    } catch (InterruptedException e) {
+      if (logger.isDebugEnabled()) logger.debug("Aborted reading " + baseURI);
+    } catch (final Throwable t) {
+      // hand the exception to the consumer in place of the next chunk
+      try {
+        chunks.put(completed(t));
+      } catch (InterruptedException e) {
+        if (logger.isDebugEnabled()) logger.debug("Aborted reading " + baseURI);
+      }
+    } finally {
+      try {
+        inputStream.close();
+      } catch (IOException e) {
+        logger.warn("Unable to close " + baseURI, e);
+      }
+    }
+  }
+
+  /**
+   * Takes the next chunk of statements from the parser.
+   *
+   * @param localize  whether to localize the statements
+   * @return the statements, four nodes to a statement, with {@link NodePool#NONE}
+   *   for the graph of statements in the default graph, or <code>null</code> at
+   *   the end of the document; if <var>localize</var> is <code>false</code>,
+   *   an empty array
+   * @throws TuplesException if the document could not be parsed
+   */
+  long[] nextChunk(boolean localize) throws TuplesException {
+    if (complete) return null;
+
+    ChunkParser.Chunk chunk;
+    try {
+      chunk = chunks.take().get();
+    } catch (InterruptedException e) {
+      throw new TuplesException("Abort");
+    } catch (ExecutionException e) {
+      throw new TuplesException("Exception while reading " + baseURI, e.getCause());
+    }
+
+    if (chunk == null) {
+      complete = true;
+      deleteBlankNodeMap();
+      return null;
+    }
+    statementCount += chunk.size;
+    return localize ? localize(chunk) : new long[0];
+  }
+
+  /**
+   * Stops parsing.
+   */
+  void abort() {
+    interrupt();
+    Future<ChunkParser.Chunk> f;
+    while ((f = chunks.poll()) != null) f.cancel(true);
+    deleteBlankNodeMap();
+  }
+
+  //
+  // Internal methods
+  //
+
+  /**
+   * Localizes the statements of a chunk.
+   *
+   * @param chunk  the parsed chunk
+   * @return the statements, four nodes to a statement
+   * @throws TuplesException if the nodes could not be localized
+   */
+  private long[] localize(ChunkParser.Chunk chunk) throws TuplesException {
+    try {
+      long[] local = new long[chunk.nodes.length];
+      int[] missing = new int[local.length];
+      int missingCount = 0;
+      for (int i = 0; i < local.length; i++) {
+        Long l = nodeCache.get(chunk.nodes[i]);
+        if (l == null) missing[missingCount++] = i;
+        else local[i] = l;
+      }
+
+      // localize the nodes which weren't cached in a single batch
+      if (missingCount > 0) {
+        Node[] nodes = new Node[missingCount];
+        for (int i = 0; i < missingCount; i++) nodes[i] = chunk.nodes[missing[i]];
+        long[] localized = resolverSession.localize(nodes);
+        for (int i = 0; i < missingCount; i++) {
+          local[missing[i]] = localized[i];
+          nodeCache.put(nodes[i], localized[i]);
+        }
+      }
+
+      long[] blank = new long[chunk.blankNodes.length];
+      if (blank.length > 0 && blankNodeMap == null) blankNodeMap = new StringToLongMap();
+      for (int i = 0; i < blank.length; i++) {
+        long b = blankNodeMap.get(chunk.blankNodes[i]);
+        if (b == 0) {
+          b = resolverSession.localize(new BlankNodeImpl());
+          blankNodeMap.put(chunk.blankNodes[i], b);
+        }
+        blank[i] = b;
+      }
+
+      int[] codes = chunk.quads;
+      long[] quads = new long[chunk.size * ChunkParser.SIZEOF_QUAD];
+      for (int i = 0; i < quads.length; i++) {
+        int code = codes[i];
+        if (code >= 0) quads[i] = local[code];
+        else if (code == ChunkParser.DEFAULT_GRAPH) quads[i] = NodePool.NONE;
+        else quads[i] = blank[-1 - code];
+      }
+      return quads;
+    } catch (LocalizeException e) {
+      throw new TuplesException("Unable to localize statements from " + baseURI, e);
+    } catch (IOException e) {
+      throw new TuplesException("Unable to map blank nodes from " + baseURI, e);
+    }
+  }
+
+  /**
+   * Releases the blank node labels of the document.
+   */
+  private void deleteBlankNodeMap() {
+    if (blankNodeMap != null) {
+      blankNodeMap.delete();
+      blankNodeMap = null;
+    }
+  }
+
+  /**
+   * Creates a future which has already completed.
+   *
+   * @param t  the exception to fail with, or <code>null</code> to return <code>null</code>
+   * @return the future
+   */
+  private static Future<ChunkParser.Chunk> completed(final Throwable t) {
+    FutureTask<ChunkParser.Chunk> f = new FutureTask<ChunkParser.Chunk>(new Callable<ChunkParser.Chunk>() {
+      public ChunkParser.Chunk call() throws Exception {
+        if (t instanceof Exception) throw (Exception)t;
+        if (t != null) throw new ExecutionException(t);
+        return null;
+      }
+    });
+    f.run();
+    return f;
+  }
+
+  /**
+   * Gets the threads for parsing chunks, creating them if needed.
+   * @return The shared parsing executor.
+   */
+  private static synchronized ExecutorService getExecutor() {
+    if (executor == null) executor = Executors.newFixedThreadPool(threads, new ParserThreadFactory());
+    return executor;
+  }
+
+  /**
+   * Reads a positive integer from the system properties.
+   * @param property The name of the property.
+   * @param defaultValue The value to use if the property is not set or not valid.
+   * @return The value of the property.
+   */
+  private static int getIntProperty(String property, int defaultValue) {
+    Integer value = Integer.getInteger(property, defaultValue);
+    if (value.intValue() < 1) {
+      logger.warn("Invalid value for property " + property + ": " + value);
+      return defaultValue;
+    }
+    return value.intValue();
+  }
+
+  /**
+   * Creates daemon threads for parsing, so idle threads don't hold up shutdown.
+   */
+  private static class ParserThreadFactory implements ThreadFactory {
+
+    /** The number of threads created. */
+    private final AtomicInteger count = new AtomicInteger();
+
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "nquads-parser-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }
+  }
+}
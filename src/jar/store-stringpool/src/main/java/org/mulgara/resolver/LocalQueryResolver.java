@@ -62,6 +62,7 @@ import org.mulgara.resolver.spi.LocalizeException;
 import org.mulgara.resolver.spi.QueryEvaluationContext;
 import org.mulgara.resolver.spi.ResolverSession;
 import org.mulgara.store.tuples.RestrictPredicateFactory;
+import org.mulgara.store.tuples.RowComparator;
 import org.mulgara.store.tuples.Tuples;
 import org.mulgara.store.tuples.TuplesOperations;
 import org.mulgara.util.StackTrace;
@@ -380,8 +381,14 @@ class LocalQueryResolver implements QueryEvaluationContext {
     List orderList = query.getOrderList();
     if (orderList.size() > 0 && result.getRowCardinality() > Cursor.ONE) {
       Tuples tmp = result;
-      result = TuplesOperations.sort(result,
-                 new OrderByRowComparator(result, orderList, resolverSession));
+      RowComparator comparator = new OrderByRowComparator(result, orderList, resolverSession);
+      Integer limit = query.getLimit();
+      if (limit != null) {
+        // only the rows up to the end of the limit can be returned
+        result = TuplesOperations.sort(result, comparator, (long)query.getOffset() + limit.intValue());
+      } else {
+        result = TuplesOperations.sort(result, comparator);
+      }
       tmp.close();
     }
 
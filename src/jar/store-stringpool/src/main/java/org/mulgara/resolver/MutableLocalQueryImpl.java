@@ -53,11 +53,14 @@ import org.mulgara.resolver.spi.MutableLocalQuery;
  */
 class MutableLocalQueryImpl implements MutableLocalQuery
 {
+  private final Query query;
+
   private ConstraintExpression constraintExpression;
 
   private boolean modified;
 
   MutableLocalQueryImpl(Query query) {
+    this.query = query;
     this.constraintExpression = query.getConstraintExpression();
     this.modified = false;
   }
@@ -84,6 +87,10 @@ class MutableLocalQueryImpl implements MutableLocalQuery
     }
   }
 
+  public Query getQuery() {
+    return query;
+  }
+
   public String toString() {
     return getClass().toString() + ":=:" + constraintExpression.toString();
   }
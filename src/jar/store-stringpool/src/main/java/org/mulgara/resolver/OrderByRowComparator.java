@@ -28,7 +28,6 @@
 package org.mulgara.resolver;
 
 // Java 2 standard packages
-import java.lang.ref.SoftReference;
 import java.util.*;
 
 // Third party packages
@@ -67,32 +66,16 @@ import org.mulgara.store.tuples.Tuples;
  */
 public class OrderByRowComparator implements RowComparator {
 
-  protected static class Cache extends LinkedHashMap {
-    public static final int MAXSIZE = 100000;
-    public static final float LOAD_FACTOR = 0.75F;
-    public static final int INITIAL_SIZE = 133334; // ceil(MAXSIZE / LOAD_FACTOR + 1)
-
-    public Cache() {
-      super(INITIAL_SIZE, LOAD_FACTOR, true);
-    }
-
-    protected boolean removeEldestEntry(Map.Entry eldest) {
-      return size() > MAXSIZE;
-    }
-
-    public void put(long key, Object value) {
-      super.put(new Long(key), value);
-    }
-
-    public Object get(long key) {
-      return super.get(new Long(key));
-    }
-  }
-
   /** Logger. */
   private static Logger logger =
       Logger.getLogger(OrderByRowComparator.class);
 
+  /** The property for the largest number of nodes to hold sort keys for. */
+  public static final String MAX_SORT_KEYS_PROPERTY = "mulgara.sort.maxKeys";
+
+  /** The default largest number of nodes to hold sort keys for. */
+  public static final int DEFAULT_MAX_SORT_KEYS = 500000;
+
   /**
    * The index corresponds to positions in the <code>ORDER BY</code> clause; the
    * indexed value corresponds to column position in the {@link Tuples} being
@@ -112,7 +95,19 @@ public class OrderByRowComparator implements RowComparator {
   /** Description of the Field */
   private ResolverSession session;
 
-  private Cache globalNodeCache;
+  /**
+   * The sort keys of the nodes seen so far by each sorting thread, so each node is only
+   * globalized once by a thread. Each thread has its own table, so sort threads sharing
+   * this comparator do not contend for it.
+   */
+  private final ThreadLocal<SortKeyTable> sortKeys = new ThreadLocal<SortKeyTable>() {
+    protected SortKeyTable initialValue() {
+      return new SortKeyTable(maxSortKeys);
+    }
+  };
+
+  /** The largest number of nodes to hold sort keys for in each table. */
+  private final int maxSortKeys;
 
   //
   // Constructor
@@ -135,7 +130,7 @@ public class OrderByRowComparator implements RowComparator {
 
     columnMap = new int[orderList.size()];
     directionMap = new int[orderList.size()];
-    globalNodeCache = new Cache();
+    maxSortKeys = getMaxSortKeys();
 
     // Populate the columnMap array
     int n = 0;
@@ -252,8 +247,6 @@ public class OrderByRowComparator implements RowComparator {
    */
   private int columnCompare(long lhs, long rhs) throws TuplesException
   {
-    int result;
-
     if (lhs == Tuples.UNBOUND && rhs == Tuples.UNBOUND) {
       return 0;
     } else if (lhs == Tuples.UNBOUND) {
@@ -262,36 +255,12 @@ public class OrderByRowComparator implements RowComparator {
       return +1;
     }
 
-    Comparable lhsComparable;
-    try {
-      lhsComparable = valueToComparable(globalize(lhs));
-    } catch (GlobalizeException e) {
-      throw new TuplesException("Couldn't globalize local LHS node "+lhs, e);
-    }
-
-    Comparable rhsComparable;
-    try {
-      rhsComparable = valueToComparable(globalize(rhs));
-    } catch (GlobalizeException e) {
-      throw new TuplesException("Couldn't globalize local RHS node "+rhs, e);
-    }
-
-    if (rhsComparable != null) {
-      if (lhsComparable != null) {
-        Class lhsClass = lhsComparable.getClass();
-        Class rhsClass = rhsComparable.getClass();
-
-        result = (lhsClass == rhsClass)
-                  ? ( -lhsComparable.compareTo(rhsComparable))
-                  : ( - lhsClass.getName().compareTo(rhsClass.getName()));
-      } else {
-        result = -1;
-      }
-    } else {
-      result = (lhsComparable == null) ? 0 : 1;
-    }
-
-    return result;
+    SortKeyTable table = sortKeys.get();
+    // reserve space first, so finding the RHS can't invalidate the LHS entry
+    table.reserve(2);
+    int lhsEntry = sortKey(table, lhs);
+    int rhsEntry = sortKey(table, rhs);
+    return -table.compare(lhsEntry, rhsEntry);
 
     /* The following code uses the SPObject collation order
          try {
@@ -310,24 +279,59 @@ public class OrderByRowComparator implements RowComparator {
   }
 
 
-  private Node globalize(long localNode) throws GlobalizeException
+  /**
+   * Finds the sort key for a local node, globalizing the node if it has not been seen before.
+   * @param sortKeys The sort key table of the current thread.
+   * @param localNode The node to find the key for. Not {@link Tuples#UNBOUND}.
+   * @return The entry for the node in <var>sortKeys</var>.
+   * @throws TuplesException If the node could not be globalized.
+   */
+  private int sortKey(SortKeyTable sortKeys, long localNode) throws TuplesException
   {
+    int entry = sortKeys.find(localNode);
+    if (entry >= 0) {
+      return entry;
+    }
+
     // log what we're doing
     if (logger.isDebugEnabled()) {
       logger.debug("Finding literal for node " + localNode);
     }
 
-    Node value = null;
-    SoftReference ref = (SoftReference)globalNodeCache.get(localNode);
-    if (ref != null) {
-      value = (Node)ref.get();
+    Comparable value;
+    try {
+      // only globalizing is shared between sort threads
+      Node node;
+      synchronized (session) {
+        node = session.globalize(localNode);
+      }
+      value = valueToComparable(node);
+    } catch (GlobalizeException e) {
+      throw new TuplesException("Couldn't globalize local node "+localNode, e);
     }
+
     if (value == null) {
-      value = session.globalize(localNode);
-      globalNodeCache.put(localNode, new SoftReference(value));
+      return sortKeys.add(localNode, SortKeyTable.NONE, 0, null);
+    } else if (value instanceof Float) {
+      return sortKeys.add(localNode, SortKeyTable.NUMBER, ((Float)value).floatValue(), null);
+    } else {
+      return sortKeys.add(localNode, SortKeyTable.TEXT, 0, (String)value);
     }
+  }
 
-    return value;
+
+  /**
+   * Reads the largest number of nodes to hold sort keys for from the system properties.
+   * @return The maximum size of the sort key table.
+   */
+  private static int getMaxSortKeys()
+  {
+    int max = Integer.getInteger(MAX_SORT_KEYS_PROPERTY, DEFAULT_MAX_SORT_KEYS).intValue();
+    if (max < 2) {
+      logger.warn("Invalid value for property " + MAX_SORT_KEYS_PROPERTY + ": " + max);
+      return DEFAULT_MAX_SORT_KEYS;
+    }
+    return max;
   }
 
 
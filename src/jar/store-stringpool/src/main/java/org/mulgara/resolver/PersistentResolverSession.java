@@ -104,6 +104,21 @@ public class PersistentResolverSession implements ResolverSession {
     return resolverSession.localizePersistent(node);
   }
 
+  /* Perform the re-direction of localize to localizePersistent
+   *
+   * @see org.mulgara.resolver.spi.ResolverSession#localize(org.jrdf.graph.Node[])
+   */
+  public long[] localize(Node[] nodes) throws LocalizeException {
+    return resolverSession.localizePersistent(nodes);
+  }
+
+  /*
+   * @see org.mulgara.resolver.spi.ResolverSession#localizePersistent(org.jrdf.graph.Node[])
+   */
+  public long[] localizePersistent(Node[] nodes) throws LocalizeException {
+    return resolverSession.localizePersistent(nodes);
+  }
+
   /*
    * @see org.mulgara.resolver.spi.ResolverSession#newBlankNode()
    */
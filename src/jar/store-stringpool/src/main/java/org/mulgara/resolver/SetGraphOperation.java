@@ -30,11 +30,18 @@ package org.mulgara.resolver;
 // Java 2 standard packages
 import java.io.*;
 import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
 
 import javax.activation.MimeType;
 
 // Third party packages
 import org.apache.log4j.Logger;
+import org.jrdf.graph.BlankNode;
+import org.jrdf.graph.Node;
+import org.jrdf.graph.URIReference;
 
 // Local packages
 import org.mulgara.content.Content;
@@ -72,6 +79,12 @@ class SetGraphOperation implements Operation {
   /** Logger. */
   private static final Logger logger = Logger.getLogger(SetGraphOperation.class.getName());
 
+  /** The number of statements written to a named graph at a time. */
+  private static final int BATCH_SIZE = 10000;
+
+  /** The number of statements buffered for all graphs before they are all written. */
+  private static final int MAX_BUFFERED = 100000;
+
   private final URI         srcModelURI;
   private final URI         destModelURI;
   private final InputStream inputStream;
@@ -152,6 +165,15 @@ class SetGraphOperation implements Operation {
       logger.debug("Modifying " + destModelURI + " using " + destinationResolver);
     }
 
+    if (statements instanceof QuadStatements) {
+      statementCount = loadQuads((QuadStatements)statements, destinationModel, destinationResolver,
+                                 operationContext, systemResolver, metadata);
+      if (logger.isDebugEnabled()) {
+        logger.debug("Modified " + destModelURI + " and its named graphs");
+      }
+      return;
+    }
+
     destinationResolver.modifyModel(destinationModel, statements, true);
     if (logger.isDebugEnabled()) {
       logger.debug("Modified " + destModelURI);
@@ -160,6 +182,153 @@ class SetGraphOperation implements Operation {
     statementCount = statements.getRowCount();
   }
 
+  /**
+   * Writes statements into the graphs named by their document. Statements
+   * are buffered for each graph, and written in batches. Named graphs which
+   * don't exist are created.
+   *
+   * @param statements  the statements to load
+   * @param destinationModel  the graph for statements in the default graph
+   * @param destinationResolver  the resolver for <var>destinationModel</var>
+   * @return the number of statements loaded
+   */
+  private long loadQuads(QuadStatements   statements,
+                         long             destinationModel,
+                         Resolver         destinationResolver,
+                         OperationContext operationContext,
+                         SystemResolver   systemResolver,
+                         DatabaseMetadata metadata) throws Exception
+  {
+    Map<Long,GraphBuffer> buffers = new HashMap<Long,GraphBuffer>();
+    GraphBuffer defaultBuffer = new GraphBuffer(destinationModel, destinationResolver);
+    long count = 0;
+    int buffered = 0;
+
+    try {
+      statements.beforeFirst();
+      while (statements.next()) {
+        long graph = statements.getGraph();
+        GraphBuffer buffer;
+        if (graph == Statements.NONE) {
+          buffer = defaultBuffer;
+        } else {
+          buffer = buffers.get(graph);
+          if (buffer == null) {
+            buffer = prepareGraph(graph, operationContext, systemResolver, metadata);
+            buffers.put(graph, buffer);
+          }
+        }
+
+        buffered -= buffer.size;
+        buffer.add(statements.getSubject(), statements.getPredicate(), statements.getObject());
+        buffered += buffer.size;
+        count++;
+
+        // Bound the memory used by many small graphs
+        if (buffered >= MAX_BUFFERED) {
+          defaultBuffer.flush();
+          for (GraphBuffer b: buffers.values()) b.flush();
+          buffered = 0;
+        }
+      }
+    } finally {
+      statements.close();
+    }
+
+    defaultBuffer.flush();
+    for (GraphBuffer b: buffers.values()) b.flush();
+    return count;
+  }
+
+  /**
+   * Finds the resolver for a named graph from the content, creating the graph if needed.
+   * A graph with a blank node label is created with a new name relative to the database.
+   *
+   * @param graph  the node of the graph, as it appears in the content
+   * @return an empty buffer for the graph
+   */
+  private GraphBuffer prepareGraph(long             graph,
+                                   OperationContext operationContext,
+                                   SystemResolver   systemResolver,
+                                   DatabaseMetadata metadata) throws Exception
+  {
+    Node node = systemResolver.globalize(graph);
+    URI graphURI;
+    if (node instanceof URIReference) {
+      graphURI = ((URIReference)node).getURI();
+    } else if (node instanceof BlankNode) {
+      // A blank graph label only names a graph within its document, so give it a new name
+      URI databaseURI = metadata.getURI();
+      graphURI = new URI(databaseURI.getScheme(), databaseURI.getSchemeSpecificPart(), "graph-" + UUID.randomUUID());
+      graph = systemResolver.localizePersistent(new URIReferenceImpl(graphURI));
+    } else {
+      throw new QueryException("Invalid graph name: " + node);
+    }
+
+    graph = operationContext.getCanonicalModel(graph);
+
+    // Create the graph if the system graph doesn't know its type
+    Resolution resolution = systemResolver.resolve(new ConstraintImpl(
+        new LocalNode(graph),
+        new LocalNode(metadata.getRdfTypeNode()),
+        new Variable("x"),
+        new LocalNode(metadata.getSystemModelNode())));
+    boolean exists;
+    try {
+      resolution.beforeFirst();
+      exists = resolution.next();
+    } finally {
+      resolution.close();
+    }
+    if (!exists) {
+      if (logger.isDebugEnabled()) logger.debug("Creating " + graphURI + " for " + destModelURI);
+      new CreateGraphOperation(graphURI, null).execute(operationContext, systemResolver, metadata);
+    }
+
+    // Make sure security adapters are satisfied
+    for (SecurityAdapter securityAdapter: operationContext.getSecurityAdapterList()) {
+      if (!securityAdapter.canSeeModel(graph, systemResolver)) {
+        throw new QueryException("No such graph " + graphURI);
+      }
+      if (!securityAdapter.canModifyModel(graph, systemResolver)) {
+        throw new QueryException("You aren't allowed to modify " + graphURI);
+      }
+    }
+
+    Resolver resolver = operationContext.obtainResolver(operationContext.findModelResolverFactory(graph));
+    assert resolver != null;
+    return new GraphBuffer(graph, resolver);
+  }
+
+  /**
+   * Statements waiting to be written to a graph.
+   */
+  private static class GraphBuffer {
+    final long graph;
+    final Resolver resolver;
+    long[] triples = new long[3 * 16];
+    int size = 0;
+
+    GraphBuffer(long graph, Resolver resolver) {
+      this.graph = graph;
+      this.resolver = resolver;
+    }
+
+    void add(long subject, long predicate, long object) throws ResolverException {
+      if (size * 3 == triples.length) triples = Arrays.copyOf(triples, triples.length * 2);
+      triples[size * 3] = subject;
+      triples[size * 3 + 1] = predicate;
+      triples[size * 3 + 2] = object;
+      if (++size == BATCH_SIZE) flush();
+    }
+
+    void flush() throws ResolverException {
+      if (size == 0) return;
+      resolver.modifyModel(graph, new TripleArrayStatements(triples, size), true);
+      size = 0;
+    }
+  }
+
   /**
    * @return <code>true</code>
    */
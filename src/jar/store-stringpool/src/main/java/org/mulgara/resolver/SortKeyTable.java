@@ -0,0 +1,221 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.resolver;
+
+// Java 2 standard packages
+import java.util.Arrays;
+
+/**
+ * The sort keys for the local nodes being ordered by an {@link OrderByRowComparator}.
+ * Each node is given an entry when it is first seen, so it only needs to be globalized
+ * once. The keys are held in primitive arrays indexed by entry, and the entries are found
+ * with an open addressing hash table on the local node, so looking up and comparing keys
+ * does not allocate any objects.
+ *
+ * A key is either a number, text, or missing, and the kinds sort in that order.
+ * Numbers are compared as floats and text is compared by character value.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+class SortKeyTable {
+
+  /** The kind of key for a numeric value. */
+  static final byte NUMBER = 0;
+
+  /** The kind of key for any other value. */
+  static final byte TEXT = 1;
+
+  /** The kind of key for a node with no value. */
+  static final byte NONE = 2;
+
+  /** The value used for empty slots in the hash table. This is never a valid local node. */
+  private static final long EMPTY = 0;
+
+  /** The initial number of entries. */
+  private static final int INITIAL_SIZE = 1024;
+
+  /** The largest number of entries before the table is cleared. */
+  private final int maxEntries;
+
+  /** The local node in each slot of the hash table, or {@link #EMPTY}. */
+  private long[] nodes;
+
+  /** The entry for each slot of the hash table. */
+  private int[] slots;
+
+  /** The kind of key for each entry. */
+  private byte[] kinds;
+
+  /** The numeric key for each entry, when the kind is {@link #NUMBER}. */
+  private float[] numbers;
+
+  /** The text key for each entry, when the kind is {@link #TEXT}. */
+  private String[] texts;
+
+  /** The number of entries. */
+  private int size;
+
+
+  /**
+   * Creates an empty table.
+   * @param maxEntries The largest number of entries to hold before the table is cleared.
+   */
+  SortKeyTable(int maxEntries) {
+    if (maxEntries < 2) throw new IllegalArgumentException("Sort key table must hold at least 2 entries");
+    this.maxEntries = maxEntries;
+    clear();
+  }
+
+
+  /**
+   * Makes sure that entries can be added without the table being cleared. Entries found
+   * before this call may no longer be valid afterwards.
+   * @param count The number of entries that may be added.
+   */
+  void reserve(int count) {
+    if (size + count > maxEntries) clear();
+  }
+
+
+  /**
+   * Finds the entry for a local node.
+   * @param node The local node to find.
+   * @return The entry for the node, or -1 if it has not been added.
+   */
+  int find(long node) {
+    int mask = nodes.length - 1;
+    for (int i = hash(node) & mask; nodes[i] != EMPTY; i = (i + 1) & mask) {
+      if (nodes[i] == node) return slots[i];
+    }
+    return -1;
+  }
+
+
+  /**
+   * Adds the key for a local node. The node must not already be in the table, and space
+   * must have been reserved for it.
+   * @param node The local node. May not be {@link #EMPTY}.
+   * @param kind The kind of key.
+   * @param number The numeric key, if the kind is {@link #NUMBER}.
+   * @param text The text key, if the kind is {@link #TEXT}.
+   * @return The entry for the node.
+   */
+  int add(long node, byte kind, float number, String text) {
+    assert node != EMPTY && find(node) < 0 && size < maxEntries;
+    if (size == kinds.length) {
+      int length = (int)Math.min((long)size * 2, maxEntries);
+      kinds = Arrays.copyOf(kinds, length);
+      numbers = Arrays.copyOf(numbers, length);
+      texts = Arrays.copyOf(texts, length);
+    }
+    if (size * 2 >= nodes.length) rehash(nodes.length * 2);
+
+    int entry = size++;
+    kinds[entry] = kind;
+    numbers[entry] = number;
+    texts[entry] = text;
+    insert(node, entry);
+    return entry;
+  }
+
+
+  /**
+   * Compares the keys of two entries.
+   * @param first The first entry.
+   * @param second The second entry.
+   * @return A negative value if the first key sorts before the second, 0 if they are equal,
+   *   or a positive value if the first key sorts after the second.
+   */
+  int compare(int first, int second) {
+    if (first == second) return 0;
+    byte kind = kinds[first];
+    if (kind != kinds[second]) return kind < kinds[second] ? -1 : 1;
+    switch (kind) {
+      case NUMBER: return Float.compare(numbers[first], numbers[second]);
+      case TEXT: return texts[first].compareTo(texts[second]);
+      default: return 0;
+    }
+  }
+
+
+  /** @return The number of entries in the table. */
+  int size() {
+    return size;
+  }
+
+
+  /**
+   * Removes all of the entries.
+   */
+  void clear() {
+    int length = Math.min(INITIAL_SIZE, maxEntries);
+    nodes = new long[tableSize(length)];
+    slots = new int[nodes.length];
+    kinds = new byte[length];
+    numbers = new float[length];
+    texts = new String[length];
+    size = 0;
+  }
+
+
+  /**
+   * Puts an entry into the hash table.
+   * @param node The local node for the entry.
+   * @param entry The entry.
+   */
+  private void insert(long node, int entry) {
+    int mask = nodes.length - 1;
+    int i = hash(node) & mask;
+    while (nodes[i] != EMPTY) i = (i + 1) & mask;
+    nodes[i] = node;
+    slots[i] = entry;
+  }
+
+
+  /**
+   * Moves all the entries into a hash table of a new size.
+   * @param length The new size of the hash table. A power of 2.
+   */
+  private void rehash(int length) {
+    long[] oldNodes = nodes;
+    int[] oldSlots = slots;
+    nodes = new long[length];
+    slots = new int[length];
+    for (int i = 0; i < oldNodes.length; i++) {
+      if (oldNodes[i] != EMPTY) insert(oldNodes[i], oldSlots[i]);
+    }
+  }
+
+
+  /**
+   * Finds the size of hash table to use for a number of entries.
+   * @param entries The number of entries.
+   * @return A power of 2 at least twice the number of entries.
+   */
+  private static int tableSize(int entries) {
+    int length = Integer.highestOneBit(Math.max(entries, 1)) << 1;
+    return length < entries * 2 ? length << 1 : length;
+  }
+
+
+  /**
+   * Spreads the bits of a local node, since nodes are often allocated in sequence.
+   * @param node The local node.
+   * @return The hash for the node.
+   */
+  private static int hash(long node) {
+    long h = node * 0x9E3779B97F4A7C15L;
+    return (int)(h ^ (h >>> 32));
+  }
+}
@@ -226,6 +226,19 @@ public class StringPoolSession implements XAResolverSession, BackupRestoreSessio
     }
   }
 
+  public long[] localize(Node[] nodes) throws LocalizeException {
+    return localize(nodes, WRITE | TEMP);
+  }
+
+  public long[] localizePersistent(Node[] nodes) throws LocalizeException {
+    checkCurrentThread();
+    try {
+      return localize(nodes, WRITE | PERSIST);
+    } finally {
+      releaseCurrentThread();
+    }
+  }
+
   public long newBlankNode() throws NodePoolException {
     checkCurrentThread();
     try {
@@ -474,6 +487,81 @@ public class StringPoolSession implements XAResolverSession, BackupRestoreSessio
   }
 
 
+  /**
+   * Localizes a batch of nodes.  Blank nodes are localized individually, and
+   * the other nodes are looked up in the persistent string pool together.
+   *
+   * @param nodes The nodes to localize.
+   * @param flags Indicates where the nodes are looked up, and if they may be created.
+   * @return The local node for each of the <var>nodes</var>.
+   * @throws LocalizeException If a node could not be localized.
+   */
+  protected long[] localize(Node[] nodes, int flags) throws LocalizeException
+  {
+    if (state != OBTAIN) {
+      throw new LocalizeException(nodes.length > 0 ? nodes[0] : null, "Attempting to localize outside transaction (STATE = " + state + ") " + System.identityHashCode(this));
+    }
+
+    long[] localNodes = new long[nodes.length];
+
+    // The positions of the nodes in the string pool, and their objects
+    int[] positions = new int[nodes.length];
+    SPObject[] spObjects = new SPObject[nodes.length];
+    SPObject[] relativeSPObjects = new SPObject[nodes.length];
+    int count = 0;
+
+    SPObjectFactory spoFactory = persistentStringPool.getSPObjectFactory();
+    for (int i = 0; i < nodes.length; i++) {
+      Node node = nodes[i];
+      if (node == null) throw new IllegalArgumentException("Null 'node' parameter");
+
+      if (node instanceof BlankNode) {
+        localNodes[i] = localizeBlankNode((BlankNode)node, flags);
+      } else {
+        try {
+          spObjects[count] = spoFactory.newSPObject(node);
+        } catch (RuntimeException ex) {
+          throw new LocalizeException(node, "Couldn't convert Node to SPObject", ex);
+        }
+        relativeSPObjects[count] = mapRelative(spObjects[count]);
+        positions[count++] = i;
+      }
+    }
+    if (count == 0) return localNodes;
+
+    boolean persist = (flags & STORE_MASK) == PERSIST;
+    boolean write = (flags & WRITE_MASK) == WRITE;
+    int j = 0;
+    try {
+      long[] gNodes = persistentStringPool.findGNodes(
+          count == nodes.length ? relativeSPObjects : Arrays.copyOf(relativeSPObjects, count),
+          persist && write);
+
+      for (j = 0; j < count; j++) {
+        long localNode = gNodes[j];
+        if (localNode == NONE) {
+          if (persist) throw new StringPoolException("Unable to find literal in StringPool");
+          // Not found persistently, so use the temp pool
+          localNode = temporaryStringPool.findGNode(spObjects[j]);
+          if (localNode == NONE) {
+            if (!write) throw new StringPoolException("Unable to find literal in StringPool");
+            localNode = temporaryNodePool.newNode();
+            temporaryStringPool.put(localNode, spObjects[j]);
+          }
+          localNode = -localNode;
+        }
+        localNodes[positions[j]] = localNode;
+      }
+    } catch (NodePoolException e) {
+      throw new LocalizeException(nodes[positions[Math.min(j, count - 1)]], "Couldn't localize node", e);
+    } catch (StringPoolException e) {
+      throw new LocalizeException(nodes[positions[Math.min(j, count - 1)]], "Couldn't localize node", e);
+    }
+
+    return localNodes;
+  }
+
+
   protected long localizeBlankNode(BlankNode node, int flags) throws LocalizeException {
     try {
 
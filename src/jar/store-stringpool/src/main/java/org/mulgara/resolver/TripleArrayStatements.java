@@ -0,0 +1,149 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.resolver;
+
+// Local packages
+import org.mulgara.query.TuplesException;
+import org.mulgara.query.Variable;
+import org.mulgara.resolver.spi.Statements;
+
+/**
+ * {@link Statements} over an array of localized triples, three nodes to a
+ * statement. The array is not copied, so it may be reused for the next batch
+ * of statements once they have been written.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+class TripleArrayStatements implements Statements, Cloneable {
+
+  static final Variable subject   = new Variable("subject");
+  static final Variable predicate = new Variable("predicate");
+  static final Variable object    = new Variable("object");
+
+  /** The nodes of the statements. */
+  private final long[] triples;
+
+  /** The number of statements in {@link #triples}. */
+  private final int size;
+
+  /** The offset of the current statement, or -1 if not on a statement. */
+  private int offset = -1;
+
+  /** The offset of the next statement. */
+  private int next = -1;
+
+  /**
+   * @param triples  the subject, predicate and object of each statement
+   * @param size  the number of statements to use from the start of <var>triples</var>
+   */
+  TripleArrayStatements(long[] triples, int size) {
+    if (size * 3 > triples.length) throw new IllegalArgumentException("Not enough nodes for " + size + " statements");
+    this.triples = triples;
+    this.size = size;
+  }
+
+  public void beforeFirst() {
+    offset = -1;
+    next = 0;
+  }
+
+  public void close() {
+    offset = -1;
+    next = -1;
+  }
+
+  public int getColumnIndex(Variable column) throws TuplesException {
+    if (column.equals(subject)) {
+      return 0;
+    } else if (column.equals(predicate)) {
+      return 1;
+    } else if (column.equals(object)) {
+      return 2;
+    } else {
+      throw new TuplesException("Variable " + column + " not valid on Statements");
+    }
+  }
+
+  public int getNumberOfVariables() {
+    return 3;
+  }
+
+  public Variable[] getVariables() {
+    return new Variable[] { subject, predicate, object };
+  }
+
+  public boolean isUnconstrained() {
+    return false;
+  }
+
+  public long getRowCount() {
+    return size;
+  }
+
+  public long getRowUpperBound() {
+    return size;
+  }
+
+  public long getRowExpectedCount() {
+    return size;
+  }
+
+  public int getRowCardinality() {
+    switch (size) {
+      case 0: return ZERO;
+      case 1: return ONE;
+      default: return MANY;
+    }
+  }
+
+  public boolean next() throws TuplesException {
+    if (next < 0) throw new TuplesException("next() called before beforeFirst()");
+
+    if (next >= size * 3) {
+      offset = -1;
+      return false;
+    }
+    offset = next;
+    next += 3;
+    return true;
+  }
+
+  public long getSubject() throws TuplesException {
+    return get(0);
+  }
+
+  public long getPredicate() throws TuplesException {
+    return get(1);
+  }
+
+  public long getObject() throws TuplesException {
+    return get(2);
+  }
+
+  private long get(int column) throws TuplesException {
+    if (offset < 0) throw new TuplesException("Not on a statement");
+    return triples[offset + column];
+  }
+
+  public Object clone() {
+    try {
+      TripleArrayStatements cloned = (TripleArrayStatements)super.clone();
+      cloned.offset = -1;
+      cloned.next = -1;
+      return cloned;
+    } catch (CloneNotSupportedException e) {
+      throw new Error("TripleArrayStatements super.clone() failed");
+    }
+  }
+}
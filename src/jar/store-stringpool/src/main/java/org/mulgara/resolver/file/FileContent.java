@@ -38,6 +38,7 @@ import javax.activation.MimeType;
 
 // Local packages
 import org.jrdf.graph.BlankNode;
+import org.mulgara.content.CacheableContent;
 import org.mulgara.content.Content;
 
 /**
@@ -53,7 +54,7 @@ import org.mulgara.content.Content;
  *   Technology Inc</a>
  * @licence <a href="{@docRoot}/../../LICENCE">Mozilla Public License v1.1</a>
  */
-public class FileContent implements Content {
+public class FileContent implements CacheableContent {
 
   /**
    * A map containing any format-specific blank node mappings from previous
@@ -66,6 +67,12 @@ public class FileContent implements Content {
    */
   private File file;
 
+  /**
+   * The modification time and length of the file when it was last read, or
+   * <code>null</code> if it hasn't been read.
+   */
+  private String validator = null;
+
   //
   // Constructor
   //
@@ -107,6 +114,8 @@ public class FileContent implements Content {
   }
 
   public InputStream newInputStream() throws IOException {
+    // Take the validator first, so that a change while reading invalidates it
+    validator = toValidator();
     InputStream inputStream = new FileInputStream(file);
 
     // Guess at transfer encoding (compression scheme) based on file extension
@@ -152,4 +161,23 @@ public class FileContent implements Content {
     return file.toURI().toString();
   }
 
+  //
+  // Methods implementing CacheableContent
+  //
+
+  public String getValidator() {
+    return validator;
+  }
+
+  public boolean isUnmodified(String validator) {
+    return validator.equals(toValidator());
+  }
+
+  /**
+   * @return a validator for the current state of the file
+   */
+  private String toValidator() {
+    return file.lastModified() + ":" + file.length();
+  }
+
 }
@@ -70,6 +70,7 @@ public abstract class AbstractSymbolicTransformer implements SymbolicTransformat
     if (expr instanceof ConstraintFilter) return transformFilter(context, (ConstraintFilter)expr);
     if (expr instanceof ConstraintIn) return transformIn(context, (ConstraintIn)expr);
     if (expr instanceof ConstraintOperation) return transformOperation(context, (ConstraintOperation)expr);
+    if (expr instanceof CompoundConstraint) return transformCompound(context, (CompoundConstraint)expr);
     // do the actual work of this transformer
     if (expr instanceof Constraint) return transformConstraint(context, (Constraint)expr);
     // By default we do not recognise the constraint type, so pass it unchanged.
@@ -138,6 +139,26 @@ public abstract class AbstractSymbolicTransformer implements SymbolicTransformat
     return oper;
   }
 
+  /**
+   * Transform the compound constraint. This invokes {@link #transformExpression} on the inner
+   * expression, and {@link #transformConstraint} on the constraint if that was not changed.
+   *
+   * @param context the current transformation context
+   * @param c the compound constraint to transform
+   * @return a new expression is something was changed, or <var>c</var> if nothing was changed.
+   * @throws SymbolicTransformationException If there is an error applying the transform
+   */
+  protected ConstraintExpression transformCompound(SymbolicTransformationContext context,
+                                                   CompoundConstraint c)
+        throws SymbolicTransformationException {
+    ConstraintExpression inner = c.getInnerExpression();
+    if (inner != null) {
+      ConstraintExpression tx = transformExpression(context, inner);
+      if (tx != inner) return c.withInnerExpression(tx);
+    }
+    return transformConstraint(context, c);
+  }
+
   /**
    * Transform the given expression. The main work of this class is usually performed in this
    * method.
@@ -0,0 +1,41 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.resolver.spi;
+
+// Local packages
+import org.mulgara.query.Constraint;
+import org.mulgara.query.ConstraintExpression;
+
+/**
+ * A constraint which holds an expression of other constraints that it resolves
+ * along with its own.  Symbolic transformations built on
+ * {@link AbstractSymbolicTransformer} are applied to the inner expression, so
+ * wrapping an expression in one of these does not hide it from them.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public interface CompoundConstraint extends Constraint {
+
+  /**
+   * @return The expression held by this constraint, or <code>null</code> if there is none.
+   */
+  public ConstraintExpression getInnerExpression();
+
+  /**
+   * Creates a copy of this constraint holding a different expression.
+   * @param inner The new inner expression.
+   * @return The new constraint.
+   */
+  public Constraint withInnerExpression(ConstraintExpression inner);
+}
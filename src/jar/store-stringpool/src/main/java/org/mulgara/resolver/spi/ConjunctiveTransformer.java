@@ -95,7 +95,7 @@ public abstract class ConjunctiveTransformer extends AbstractSymbolicTransformer
 
     // A single constraint could still be transformed as a singleton conjunction.
     // Therefore pack in conjunction, attempt transform, and check to see if it was.
-    if (expr instanceof Constraint) {
+    if (expr instanceof Constraint && !(expr instanceof CompoundConstraint)) {
       ConstraintConjunction conj = new ConstraintConjunction(Arrays.asList(new ConstraintExpression[] { expr }));
       ConstraintConjunction trans = transformConj(context, conj);
       if (conj == trans) {
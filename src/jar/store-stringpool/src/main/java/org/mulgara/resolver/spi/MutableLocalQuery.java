@@ -79,4 +79,12 @@ public interface MutableLocalQuery
    * @throws IllegalStateException if modification is not allowed at this time
    */
   public void setConstraintExpression(ConstraintExpression constraintExpression);
+
+  /**
+   * @return the query being transformed, for the clauses other than the
+   *   <code>WHERE</code> clause, such as <code>ORDER BY</code> and
+   *   <code>LIMIT</code>; use {@link #getConstraintExpression} for the
+   *   current <code>WHERE</code> clause
+   */
+  public Query getQuery();
 }
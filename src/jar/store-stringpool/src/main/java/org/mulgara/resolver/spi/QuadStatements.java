@@ -0,0 +1,37 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.resolver.spi;
+
+// Local packages
+import org.mulgara.query.TuplesException;
+
+/**
+ * Localized RDF statements which each belong to a named graph, or to the
+ * default graph of their document.
+ *
+ * The graph is not one of the columns of the statements, so they can be used
+ * anywhere {@link Statements} can, in which case the graphs are ignored.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public interface QuadStatements extends Statements {
+
+  /**
+   * Return the graph node of the current statement.
+   *
+   * @return the graph, or {@link Statements#NONE} if the statement is in the
+   *   default graph, which is the graph the statements are loaded into
+   */
+  public long getGraph() throws TuplesException;
+}
@@ -127,6 +127,27 @@ public interface ResolverSession extends BackupRestoreSession {
    */
   public long localizePersistent(Node node) throws LocalizeException;
 
+  /**
+   * Localize a batch of nodes, as {@link #localize(Node)} would localize each
+   * of them.  This is faster than localizing large numbers of nodes one at a
+   * time, as the string pool can search for the nodes in its own order.
+   *
+   * @param nodes  RDF {@link Node}s, none of which are <code>null</code>
+   * @return the local node number of each of the <var>nodes</var>
+   * @throws LocalizeException if the lookup fails
+   */
+  public long[] localize(Node[] nodes) throws LocalizeException;
+
+  /**
+   * Localize a batch of nodes, as {@link #localizePersistent(Node)} would
+   * localize each of them.
+   *
+   * @param nodes  RDF {@link Node}s, none of which are <code>null</code>
+   * @return the local node number of each of the <var>nodes</var>
+   * @throws LocalizeException if the lookup fails
+   */
+  public long[] localizePersistent(Node[] nodes) throws LocalizeException;
+
   /**
    * Allocates a new blank node in a session.  Unlike localization, blank nodes
    * do not need to be inserted into the string pool.
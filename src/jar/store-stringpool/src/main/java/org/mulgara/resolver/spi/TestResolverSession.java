@@ -143,6 +143,16 @@ public class TestResolverSession implements ResolverSession {
     return localize(node);
   }
 
+  public long[] localize(Node[] nodes) throws LocalizeException {
+    long[] localNodes = new long[nodes.length];
+    for (int i = 0; i < nodes.length; i++) localNodes[i] = localize(nodes[i]);
+    return localNodes;
+  }
+
+  public long[] localizePersistent(Node[] nodes) throws LocalizeException {
+    return localize(nodes);
+  }
+
   public long newBlankNode() {
     throw new UnsupportedOperationException("Not implemented");
   }
@@ -0,0 +1,954 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.store.tuples;
+
+// Java 2 standard packages
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.*;
+
+// Third party packages
+import org.apache.log4j.Logger;
+
+// Locally written packages
+import org.mulgara.query.TuplesException;
+import org.mulgara.query.Variable;
+import org.mulgara.store.xa.AbstractBlockFile;
+import org.mulgara.store.xa.Block;
+import org.mulgara.store.xa.BlockFile;
+import org.mulgara.util.TempDir;
+
+/**
+ * Logical conjunction of two operands, implemented as a hash join.
+ *
+ * Unlike {@link UnboundJoin}, this join places no requirements on the order of
+ * either operand. The operand with the smaller expected row count is read into
+ * a hash table keyed on the shared variables, and the other operand is streamed
+ * past it. When the table would exceed the memory budget then both operands are
+ * partitioned on the hash of their shared variables into temporary block files,
+ * and each pair of partitions is joined in turn.
+ *
+ * The shared variables must never be unbound in either operand. This class is
+ * not responsible for deciding when a hash join is appropriate; that
+ * responsibility falls to {@link TuplesOperations#join}.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public class HashJoin extends AbstractTuples {
+
+  private static final Logger logger = Logger.getLogger(HashJoin.class.getName());
+
+  /** The system property for the number of bytes a hash table may use before being spilled to disk. */
+  public static final String MEMORY_BUDGET_PROP = "mulgara.join.hashMemory";
+
+  /** The default number of bytes a hash table may use before being spilled to disk. */
+  static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+  /** The block size for partition files. */
+  static final int BLOCK_SIZE = 8192;
+
+  /** The largest number of partitions to split the operands into. Must be a power of 2. */
+  static final int MAX_PARTITIONS = 256;
+
+  /** The extension for partition files. */
+  static final String PARTITION_EXT = "_hj";
+
+  /** Marks the end of a hash chain. */
+  private static final int NO_ROW = -1;
+
+  /** The configured memory budget. */
+  private static final long memoryBudget = Long.getLong(MEMORY_BUDGET_PROP, DEFAULT_MEMORY_BUDGET).longValue();
+
+  /** The left operand. Its columns form the leading columns of this tuples. */
+  protected Tuples lhs;
+
+  /** The right operand. */
+  protected Tuples rhs;
+
+  /** Indicates that the hash table is built from the lhs, and the rhs is probed. */
+  protected boolean buildIsLhs;
+
+  /** The key columns in the operand used to build the hash table. */
+  protected int[] buildKeys;
+
+  /** The key columns in the operand used to probe the hash table. */
+  protected int[] probeKeys;
+
+  /** For each output column, indicates that the value comes from the build operand. */
+  protected boolean[] fromBuild;
+
+  /** For each output column, the column of the operand it comes from. */
+  protected int[] sourceColumn;
+
+  /** The materialized build side, shared between clones. */
+  protected BuildState state;
+
+  /** The hash table currently being probed. */
+  private RowTable table = null;
+
+  /** The current row of the probe operand. */
+  private long[] probeRow;
+
+  /** The row of the hash table currently matching {@link #probeRow}. */
+  private int matchRow = NO_ROW;
+
+  /** The partition currently being joined, when the operands are partitioned. */
+  private int partition;
+
+  /** Reads the current probe partition, when the operands are partitioned. */
+  private SpillFile.Reader probeReader = null;
+
+  /** The prefix to restrict rows to. <code>null</code> when beforeFirst has not been called. */
+  private long[] prefix = null;
+
+  /** Indicates that the cursor is after the last row. */
+  private boolean isAfterLast = false;
+
+
+  /**
+   * Configure a hash join for lazy evaluation, using the configured memory budget.
+   *
+   * @param lhs The left operand.
+   * @param rhs The right operand.
+   * @throws IllegalArgumentException If the operands have no variables in common,
+   *         or a shared variable may be unbound.
+   * @throws TuplesException If the operands could not be accessed.
+   */
+  HashJoin(Tuples lhs, Tuples rhs) throws TuplesException {
+    this(lhs, rhs, memoryBudget);
+  }
+
+
+  /**
+   * Configure a hash join for lazy evaluation.
+   *
+   * @param lhs The left operand.
+   * @param rhs The right operand.
+   * @param budget The number of bytes the hash table may use before spilling to disk.
+   * @throws IllegalArgumentException If the operands have no variables in common,
+   *         or a shared variable may be unbound.
+   * @throws TuplesException If the operands could not be accessed.
+   */
+  HashJoin(Tuples lhs, Tuples rhs, long budget) throws TuplesException {
+    Variable[] lhsVars = lhs.getVariables();
+    Variable[] rhsVars = rhs.getVariables();
+
+    // find the key columns, and the columns from the rhs to be appended to the output
+    List<Variable> variables = new ArrayList<Variable>(Arrays.asList(lhsVars));
+    List<Integer> lhsKeyList = new ArrayList<Integer>();
+    List<Integer> rhsKeyList = new ArrayList<Integer>();
+    List<Integer> rhsExtraList = new ArrayList<Integer>();
+    for (int r = 0; r < rhsVars.length; r++) {
+      int l = variables.indexOf(rhsVars[r]);
+      if (l >= 0 && l < lhsVars.length) {
+        if (lhs.isColumnEverUnbound(l) || rhs.isColumnEverUnbound(r)) {
+          throw new IllegalArgumentException("Hash join on a variable that may be unbound: " + rhsVars[r]);
+        }
+        lhsKeyList.add(l);
+        rhsKeyList.add(r);
+      } else {
+        rhsExtraList.add(r);
+        variables.add(rhsVars[r]);
+      }
+    }
+    if (lhsKeyList.isEmpty()) throw new IllegalArgumentException("Hash join requires shared variables");
+    setVariables(variables);
+
+    this.lhs = (Tuples)lhs.clone();
+    this.rhs = (Tuples)rhs.clone();
+
+    // build on the smaller side
+    buildIsLhs = lhs.getRowExpectedCount() < rhs.getRowExpectedCount();
+    int[] lhsKeys = toIntArray(lhsKeyList);
+    int[] rhsKeys = toIntArray(rhsKeyList);
+    buildKeys = buildIsLhs ? lhsKeys : rhsKeys;
+    probeKeys = buildIsLhs ? rhsKeys : lhsKeys;
+
+    // map the output columns onto the build and probe rows
+    fromBuild = new boolean[variables.size()];
+    sourceColumn = new int[variables.size()];
+    for (int c = 0; c < lhsVars.length; c++) {
+      fromBuild[c] = buildIsLhs;
+      sourceColumn[c] = c;
+    }
+    for (int e = 0; e < rhsExtraList.size(); e++) {
+      int c = lhsVars.length + e;
+      fromBuild[c] = !buildIsLhs;
+      sourceColumn[c] = rhsExtraList.get(e);
+    }
+
+    probeRow = new long[getProbe().getNumberOfVariables()];
+    state = new BuildState(budget);
+
+    if (logger.isDebugEnabled()) {
+      logger.debug("Hash join on " + toString(lhsKeys) + " of " + toString(lhsVars) + " with " +
+                   toString(rhsKeys) + " of " + toString(rhsVars) + ", building on the " + (buildIsLhs ? "lhs" : "rhs"));
+    }
+  }
+
+
+  /** @return The operand used to build the hash table. */
+  private Tuples getBuild() {
+    return buildIsLhs ? lhs : rhs;
+  }
+
+
+  /** @return The operand streamed past the hash table. */
+  private Tuples getProbe() {
+    return buildIsLhs ? rhs : lhs;
+  }
+
+
+  /**
+   * {@inheritDoc}
+   * The build side is materialized on the first call to this method.
+   */
+  public void beforeFirst(long[] prefix, int suffixTruncation) throws TuplesException {
+    if (prefix == null) throw new IllegalArgumentException("Null \"prefix\" parameter");
+    if (suffixTruncation != 0) throw new TuplesException("Suffix truncation not implemented");
+    if (prefix.length > getNumberOfVariables()) throw new TuplesException("Prefix too long");
+
+    state.materialize(getBuild(), getProbe(), buildKeys, probeKeys);
+
+    this.prefix = prefix;
+    matchRow = NO_ROW;
+    isAfterLast = false;
+    if (state.isPartitioned()) {
+      partition = -1;
+      probeReader = null;
+      table = null;
+    } else {
+      table = state.getTable();
+      if (table.size() == 0) {
+        isAfterLast = true;
+        return;
+      }
+      // the lhs columns lead the output, so the prefix can be passed on if the lhs is being probed
+      long[] probePrefix = (!buildIsLhs && prefix.length <= lhs.getNumberOfVariables()) ? prefix : Tuples.NO_PREFIX;
+      getProbe().beforeFirst(probePrefix, 0);
+    }
+  }
+
+
+  public boolean next() throws TuplesException {
+    if (prefix == null) throw new TuplesException("next() called before beforeFirst()");
+    if (isAfterLast) return false;
+
+    while (true) {
+      if (matchRow != NO_ROW) matchRow = table.next(matchRow, probeRow, probeKeys);
+      while (matchRow == NO_ROW) {
+        if (!advanceProbe()) {
+          isAfterLast = true;
+          return false;
+        }
+        matchRow = table.first(probeRow, probeKeys);
+      }
+      if (matchesPrefix()) return true;
+    }
+  }
+
+
+  public long getColumnValue(int column) throws TuplesException {
+    if (column < 0 || column >= sourceColumn.length) throw new TuplesException("Invalid column: " + column);
+    return fromBuild[column] ? table.get(matchRow, sourceColumn[column]) : probeRow[sourceColumn[column]];
+  }
+
+
+  /**
+   * @return {@inheritDoc}  This is estimated as the size of the Cartesian product.
+   * @throws TuplesException {@inheritDoc}
+   */
+  public long getRowUpperBound() throws TuplesException {
+    BigInteger rowCount = BigInteger.valueOf(lhs.getRowUpperBound()).multiply(BigInteger.valueOf(rhs.getRowUpperBound()));
+    return rowCount.bitLength() > 63 ? Long.MAX_VALUE : rowCount.longValue();
+  }
+
+
+  /**
+   * @return {@inheritDoc}  This is estimated as the minimum of the operand row counts.
+   * @throws TuplesException {@inheritDoc}
+   */
+  public long getRowExpectedCount() throws TuplesException {
+    return Math.min(lhs.getRowExpectedCount(), rhs.getRowExpectedCount());
+  }
+
+
+  public boolean isColumnEverUnbound(int column) throws TuplesException {
+    if (column < 0 || column >= sourceColumn.length) throw new TuplesException("No such column " + column);
+    Tuples source = (fromBuild[column] == buildIsLhs) ? lhs : rhs;
+    return source.isColumnEverUnbound(sourceColumn[column]);
+  }
+
+
+  public boolean isUnconstrained() throws TuplesException {
+    return lhs.isUnconstrained() && rhs.isUnconstrained();
+  }
+
+
+  public boolean hasNoDuplicates() throws TuplesException {
+    return lhs.hasNoDuplicates() && rhs.hasNoDuplicates();
+  }
+
+
+  public List<Tuples> getOperands() {
+    return Arrays.asList(new Tuples[] { lhs, rhs });
+  }
+
+
+  /**
+   * Closes the operands, and removes any partition files once all clones are closed.
+   * @throws TuplesException If the operands could not be closed.
+   */
+  public void close() throws TuplesException {
+    try {
+      lhs.close();
+      rhs.close();
+    } finally {
+      state.release();
+    }
+  }
+
+
+  public Object clone() {
+    HashJoin cloned = (HashJoin)super.clone();
+    cloned.lhs = (Tuples)lhs.clone();
+    cloned.rhs = (Tuples)rhs.clone();
+    cloned.probeRow = probeRow.clone();
+    if (probeReader != null) cloned.probeReader = (SpillFile.Reader)probeReader.clone();
+    state.retain();
+    return cloned;
+  }
+
+
+  /**
+   * Moves to the next row of the probe side, reading it into {@link #probeRow}.
+   * @return <code>true</code> if a row was found.
+   * @throws TuplesException If the probe side could not be read.
+   */
+  private boolean advanceProbe() throws TuplesException {
+    if (!state.isPartitioned()) {
+      Tuples probe = getProbe();
+      if (!probe.next()) return false;
+      for (int c = 0; c < probeRow.length; c++) probeRow[c] = probe.getColumnValue(c);
+      return true;
+    }
+
+    while (probeReader == null || !probeReader.next(probeRow)) {
+      // move to the next partition with rows on both sides
+      do {
+        if (++partition >= state.getNrPartitions()) return false;
+      } while (!state.hasRows(partition));
+      table = state.loadTable(partition);
+      probeReader = state.getProbeReader(partition);
+    }
+    return true;
+  }
+
+
+  /**
+   * Tests if the current row meets the prefix given to {@link #beforeFirst(long[], int)}.
+   * @return <code>true</code> if the prefix is matched.
+   * @throws TuplesException If the current row could not be read.
+   */
+  private boolean matchesPrefix() throws TuplesException {
+    for (int c = 0; c < prefix.length; c++) {
+      if (prefix[c] != Tuples.UNBOUND && prefix[c] != getColumnValue(c)) return false;
+    }
+    return true;
+  }
+
+
+  /**
+   * Converts a list of Integer to an array of int.
+   * @param list The list to convert.
+   * @return An array with the same contents as the list.
+   */
+  private static int[] toIntArray(List<Integer> list) {
+    int[] result = new int[list.size()];
+    for (int i = 0; i < result.length; i++) result[i] = list.get(i);
+    return result;
+  }
+
+
+  /**
+   * Hashes the key columns of a row.
+   * @param row The row to hash.
+   * @param keys The key columns.
+   * @return The hash of the key columns. The high bits select a partition, and the low bits a bucket.
+   */
+  static int hash(long[] row, int[] keys) {
+    long h = 0;
+    for (int k = 0; k < keys.length; k++) h = (h + row[keys[k]]) * 0x9E3779B97F4A7C15L;
+    h ^= (h >>> 31);
+    h *= 0xBF58476D1CE4E5B9L;
+    return (int)(h ^ (h >>> 32));
+  }
+
+
+  /**
+   * The materialized build side of a join, along with the partitioned probe side when
+   * the build side does not fit in memory. This is shared between clones, and the
+   * partition files are removed when the last clone is closed.
+   */
+  static class BuildState {
+
+    /** The number of bytes a hash table may use before spilling to disk. */
+    private final long budget;
+
+    /** The number of joins referring to this state. */
+    private int refCount = 1;
+
+    /** Indicates that the build side has been read. */
+    private boolean materialized = false;
+
+    /** The hash table of the entire build side, when it fits in memory. */
+    private RowTable table = null;
+
+    /** The number of partitions, when the operands are partitioned. */
+    private int nrPartitions = 0;
+
+    /** The partitioned build side. */
+    private SpillFile buildFile = null;
+
+    /** The partitioned probe side. */
+    private SpillFile probeFile = null;
+
+    /** The keys of the build side. */
+    private int[] buildKeys;
+
+    BuildState(long budget) {
+      this.budget = budget;
+    }
+
+    /**
+     * Reads the build side, partitioning both operands if the build side is too large.
+     * @param build The operand to build the hash table from. This is not moved.
+     * @param probe The operand to probe the hash table with. This is not moved.
+     * @param buildKeys The key columns in the build operand.
+     * @param probeKeys The key columns in the probe operand.
+     * @throws TuplesException If the operands could not be read.
+     */
+    synchronized void materialize(Tuples build, Tuples probe, int[] buildKeys, int[] probeKeys) throws TuplesException {
+      if (materialized) return;
+      this.buildKeys = buildKeys;
+
+      int width = build.getNumberOfVariables();
+      long maxRows = Math.max(budget / RowTable.bytesPerRow(width), 1);
+      long[] row = new long[width];
+      RowTable rows = new RowTable(width, buildKeys, (int)Math.min(Math.max(build.getRowExpectedCount(), 16), maxRows));
+
+      Tuples b = (Tuples)build.clone();
+      try {
+        b.beforeFirst();
+        boolean more;
+        while ((more = b.next()) && rows.size() < maxRows) {
+          readRow(b, row);
+          rows.add(row);
+        }
+        if (!more) {
+          rows.index();
+          table = rows;
+          materialized = true;
+          if (logger.isDebugEnabled()) logger.debug("Hash join built in memory with " + rows.size() + " rows");
+          return;
+        }
+
+        // too large for memory, so partition the build side
+        long expected = Math.max(build.getRowExpectedCount(), rows.size() * 2L);
+        nrPartitions = partitionsFor(expected * RowTable.bytesPerRow(width));
+        if (logger.isInfoEnabled()) logger.info("Hash join exceeded memory budget. Spilling to " + nrPartitions + " partitions");
+        buildFile = new SpillFile(width, nrPartitions);
+        for (int r = 0; r < rows.size(); r++) {
+          rows.copyRow(r, row);
+          buildFile.add(partitionOf(row, buildKeys), row);
+        }
+        rows = null;
+        do {
+          readRow(b, row);
+          buildFile.add(partitionOf(row, buildKeys), row);
+        } while (b.next());
+        buildFile.flush();
+      } finally {
+        b.close();
+      }
+
+      // partition the probe side to match
+      Tuples p = (Tuples)probe.clone();
+      try {
+        row = new long[probe.getNumberOfVariables()];
+        probeFile = new SpillFile(row.length, nrPartitions);
+        p.beforeFirst();
+        while (p.next()) {
+          readRow(p, row);
+          probeFile.add(partitionOf(row, probeKeys), row);
+        }
+        probeFile.flush();
+      } finally {
+        p.close();
+      }
+      materialized = true;
+    }
+
+    /** @return <code>true</code> if the operands have been partitioned to disk. */
+    boolean isPartitioned() {
+      return nrPartitions > 0;
+    }
+
+    /** @return The number of partitions. */
+    int getNrPartitions() {
+      return nrPartitions;
+    }
+
+    /** @return The in-memory hash table of the build side. */
+    RowTable getTable() {
+      return table;
+    }
+
+    /**
+     * Tests if a partition can produce any output.
+     * @param p The partition to test.
+     * @return <code>true</code> if both sides of the partition contain rows.
+     */
+    boolean hasRows(int p) {
+      return buildFile.getRowCount(p) > 0 && probeFile.getRowCount(p) > 0;
+    }
+
+    /**
+     * Reads a partition of the build side into a hash table.
+     * @param p The partition to read.
+     * @return A new hash table for the partition.
+     * @throws TuplesException If the partition could not be read.
+     */
+    RowTable loadTable(int p) throws TuplesException {
+      long size = buildFile.getRowCount(p);
+      if (size > Integer.MAX_VALUE / buildFile.getWidth()) throw new TuplesException("Hash join partition too large: " + size);
+      if (size * RowTable.bytesPerRow(buildFile.getWidth()) > budget) {
+        logger.warn("Hash join partition of " + size + " rows exceeds the memory budget");
+      }
+      RowTable partTable = new RowTable(buildFile.getWidth(), buildKeys, (int)size);
+      long[] row = new long[buildFile.getWidth()];
+      SpillFile.Reader reader = buildFile.getReader(p);
+      while (reader.next(row)) partTable.add(row);
+      partTable.index();
+      return partTable;
+    }
+
+    /**
+     * Gets a reader for a partition of the probe side.
+     * @param p The partition to read.
+     * @return A new reader.
+     */
+    SpillFile.Reader getProbeReader(int p) {
+      return probeFile.getReader(p);
+    }
+
+    /** Registers another join as using this state. */
+    synchronized void retain() {
+      refCount++;
+    }
+
+    /**
+     * Deregisters a join from this state, removing the partition files if it was the last.
+     * @throws TuplesException If the partition files could not be removed.
+     */
+    synchronized void release() throws TuplesException {
+      if (--refCount > 0) return;
+      table = null;
+      try {
+        if (buildFile != null) buildFile.delete();
+        if (probeFile != null) probeFile.delete();
+      } catch (IOException e) {
+        throw new TuplesException("Failed to delete hash join partition file", e);
+      } finally {
+        buildFile = null;
+        probeFile = null;
+      }
+    }
+
+    /**
+     * Chooses the number of partitions needed for each to fit into memory.
+     * @param bytes The expected number of bytes for the entire build side.
+     * @return A power of 2, no larger than {@link HashJoin#MAX_PARTITIONS}.
+     */
+    private int partitionsFor(long bytes) {
+      // aim for partitions half the size of the budget, to allow for skew
+      long wanted = (2 * bytes + budget - 1) / budget;
+      int partitions = 2;
+      while (partitions < wanted && partitions < MAX_PARTITIONS) partitions <<= 1;
+      return partitions;
+    }
+
+    /**
+     * Selects the partition for a row.
+     * @param row The row to partition.
+     * @param keys The key columns of the row.
+     * @return The partition number.
+     */
+    private int partitionOf(long[] row, int[] keys) {
+      return (hash(row, keys) >>> 24) & (nrPartitions - 1);
+    }
+
+    /**
+     * Reads the current row of a tuples.
+     * @param tuples The tuples to read.
+     * @param row The array to read into.
+     * @throws TuplesException If the tuples could not be read.
+     */
+    private static void readRow(Tuples tuples, long[] row) throws TuplesException {
+      for (int c = 0; c < row.length; c++) row[c] = tuples.getColumnValue(c);
+    }
+  }
+
+
+  /**
+   * An in-memory hash table of rows, chained on their key columns. Rows are stored
+   * contiguously in a single array, and chains are preserved in insertion order.
+   * Once indexed, the table is immutable and may be shared.
+   */
+  static class RowTable {
+
+    /** The number of columns in each row. */
+    private final int width;
+
+    /** The key columns. */
+    private final int[] keys;
+
+    /** The row data. */
+    private long[] rows;
+
+    /** The number of rows. */
+    private int size = 0;
+
+    /** The first row in each bucket. */
+    private int[] buckets;
+
+    /** The next row in the same bucket. */
+    private int[] chain;
+
+    /** Masks a hash down to a bucket. */
+    private int mask;
+
+    /**
+     * Creates an empty table.
+     * @param width The number of columns in each row.
+     * @param keys The key columns.
+     * @param capacity The expected number of rows.
+     */
+    RowTable(int width, int[] keys, int capacity) {
+      this.width = width;
+      this.keys = keys;
+      this.rows = new long[Math.max(capacity, 1) * width];
+    }
+
+    /**
+     * Estimates the memory used per row.
+     * @param width The number of columns in each row.
+     * @return The approximate number of bytes used for each row.
+     */
+    static long bytesPerRow(int width) {
+      // row data, plus a chain and an average of 2 bucket entries
+      return width * 8L + 12;
+    }
+
+    /** @return The number of rows in the table. */
+    int size() {
+      return size;
+    }
+
+    /**
+     * Appends a row. The table must be re-indexed before it can be probed.
+     * @param row The row to append.
+     */
+    void add(long[] row) {
+      if ((size + 1) * width > rows.length) {
+        long[] newRows = new long[Math.max(rows.length * 2, (size + 1) * width)];
+        System.arraycopy(rows, 0, newRows, 0, size * width);
+        rows = newRows;
+      }
+      System.arraycopy(row, 0, rows, size * width, width);
+      size++;
+    }
+
+    /**
+     * Copies a row out of the table.
+     * @param r The row number.
+     * @param row The array to copy into.
+     */
+    void copyRow(int r, long[] row) {
+      System.arraycopy(rows, r * width, row, 0, width);
+    }
+
+    /** Builds the hash chains for all the rows in the table. */
+    void index() {
+      int nrBuckets = 1;
+      while (nrBuckets < size) nrBuckets <<= 1;
+      buckets = new int[nrBuckets];
+      Arrays.fill(buckets, NO_ROW);
+      chain = new int[size];
+      mask = nrBuckets - 1;
+
+      long[] row = new long[width];
+      // insert in reverse so the chains are in insertion order
+      for (int r = size - 1; r >= 0; r--) {
+        copyRow(r, row);
+        int b = hash(row, keys) & mask;
+        chain[r] = buckets[b];
+        buckets[b] = r;
+      }
+    }
+
+    /**
+     * Finds the first row matching a probe row.
+     * @param probe The row being probed for.
+     * @param probeKeys The key columns of the probe row.
+     * @return The matching row number, or {@link HashJoin#NO_ROW} if there is no match.
+     */
+    int first(long[] probe, int[] probeKeys) {
+      return match(buckets[hash(probe, probeKeys) & mask], probe, probeKeys);
+    }
+
+    /**
+     * Finds the next row matching a probe row.
+     * @param r The last row matched.
+     * @param probe The row being probed for.
+     * @param probeKeys The key columns of the probe row.
+     * @return The matching row number, or {@link HashJoin#NO_ROW} if there are no more matches.
+     */
+    int next(int r, long[] probe, int[] probeKeys) {
+      return match(chain[r], probe, probeKeys);
+    }
+
+    /**
+     * Gets a value from the table.
+     * @param r The row number.
+     * @param column The column number.
+     * @return The value at the given row and column.
+     */
+    long get(int r, int column) {
+      return rows[r * width + column];
+    }
+
+    /**
+     * Follows a chain to the first row matching a probe row.
+     * @param r The row to start from.
+     * @param probe The row being probed for.
+     * @param probeKeys The key columns of the probe row.
+     * @return The matching row number, or {@link HashJoin#NO_ROW} if there is no match.
+     */
+    private int match(int r, long[] probe, int[] probeKeys) {
+      R: for (; r != NO_ROW; r = chain[r]) {
+        int base = r * width;
+        for (int k = 0; k < keys.length; k++) {
+          if (rows[base + keys[k]] != probe[probeKeys[k]]) continue R;
+        }
+        return r;
+      }
+      return NO_ROW;
+    }
+  }
+
+
+  /**
+   * Partitioned rows, written to a temporary block file. Each partition is a list
+   * of blocks, with rows packed into each block. Rows can only be read once all
+   * partitions have been flushed.
+   */
+  static class SpillFile {
+
+    /** The file holding the blocks of all partitions. */
+    private BlockFile file;
+
+    /** The number of columns in each row. */
+    private final int width;
+
+    /** The number of rows that fit in a block. */
+    private final int rowsPerBlock;
+
+    /** The IDs of the blocks in each partition. */
+    private final long[][] blockIds;
+
+    /** The number of blocks in each partition. */
+    private final int[] nrBlocks;
+
+    /** The number of rows in each partition. */
+    private final long[] rowCounts;
+
+    /** The block currently being filled for each partition. */
+    private final Block[] current;
+
+    /** The next block ID to allocate. */
+    private long nextBlockId = 0;
+
+    /**
+     * Creates a new temporary file for partitioned rows.
+     * @param width The number of columns in each row.
+     * @param nrPartitions The number of partitions.
+     * @throws TuplesException If the file could not be created.
+     */
+    SpillFile(int width, int nrPartitions) throws TuplesException {
+      this.width = width;
+      this.rowsPerBlock = BLOCK_SIZE / (width * 8);
+      if (rowsPerBlock == 0) throw new TuplesException("Rows too wide to partition: " + width);
+      blockIds = new long[nrPartitions][4];
+      nrBlocks = new int[nrPartitions];
+      rowCounts = new long[nrPartitions];
+      current = new Block[nrPartitions];
+      try {
+        File f = TempDir.createTempFile("hashjoin", PARTITION_EXT);
+        f.deleteOnExit();
+        file = AbstractBlockFile.openBlockFile(f, BLOCK_SIZE, BlockFile.IOType.AUTO);
+      } catch (IOException e) {
+        logger.warn("Failed to open temporary block file.", e);
+        throw new TuplesException("Failed to open temporary block file.", e);
+      }
+    }
+
+    /** @return The number of columns in each row. */
+    int getWidth() {
+      return width;
+    }
+
+    /**
+     * Gets the number of rows in a partition.
+     * @param p The partition.
+     * @return The number of rows written to the partition.
+     */
+    long getRowCount(int p) {
+      return rowCounts[p];
+    }
+
+    /**
+     * Appends a row to a partition.
+     * @param p The partition to append to.
+     * @param row The row to append.
+     * @throws TuplesException If the row could not be written.
+     */
+    void add(int p, long[] row) throws TuplesException {
+      try {
+        int r = (int)(rowCounts[p] % rowsPerBlock);
+        if (r == 0) {
+          if (current[p] != null) current[p].write();
+          current[p] = allocate(p);
+        }
+        int offset = r * width;
+        for (int c = 0; c < width; c++) current[p].putLong(offset + c, row[c]);
+        rowCounts[p]++;
+      } catch (IOException e) {
+        throw new TuplesException("Failed to write hash join partition", e);
+      }
+    }
+
+    /**
+     * Writes all partially filled blocks.
+     * @throws TuplesException If the blocks could not be written.
+     */
+    void flush() throws TuplesException {
+      try {
+        for (int p = 0; p < current.length; p++) {
+          if (current[p] != null) current[p].write();
+          current[p] = null;
+        }
+      } catch (IOException e) {
+        throw new TuplesException("Failed to write hash join partition", e);
+      }
+    }
+
+    /**
+     * Creates a reader for a partition.
+     * @param p The partition to read.
+     * @return A reader positioned before the first row.
+     */
+    Reader getReader(int p) {
+      return new Reader(p);
+    }
+
+    /**
+     * Removes the file.
+     * @throws IOException If the file could not be removed.
+     */
+    void delete() throws IOException {
+      if (file != null) {
+        file.delete();
+        file = null;
+      }
+    }
+
+    /**
+     * Allocates a new block at the end of a partition.
+     * @param p The partition to extend.
+     * @return The new block.
+     * @throws IOException If the file could not be extended.
+     */
+    private Block allocate(int p) throws IOException {
+      if (nextBlockId >= file.getNrBlocks()) file.setNrBlocks(Math.max(nextBlockId + 1, file.getNrBlocks() * 2));
+      if (nrBlocks[p] == blockIds[p].length) {
+        long[] ids = new long[blockIds[p].length * 2];
+        System.arraycopy(blockIds[p], 0, ids, 0, nrBlocks[p]);
+        blockIds[p] = ids;
+      }
+      blockIds[p][nrBlocks[p]++] = nextBlockId;
+      return file.allocateBlock(nextBlockId++);
+    }
+
+    /** Reads the rows of a single partition in order. */
+    class Reader implements Cloneable {
+
+      /** The partition being read. */
+      private final int p;
+
+      /** The number of the next row to read. */
+      private long nextRow = 0;
+
+      /** The block containing the next row. */
+      private Block block = null;
+
+      /**
+       * Creates a reader for a partition.
+       * @param p The partition to read.
+       */
+      Reader(int p) {
+        this.p = p;
+      }
+
+      /**
+       * Reads the next row.
+       * @param row The array to read into.
+       * @return <code>true</code> if a row was read, or <code>false</code> at the end of the partition.
+       * @throws TuplesException If the row could not be read.
+       */
+      boolean next(long[] row) throws TuplesException {
+        if (nextRow >= rowCounts[p]) return false;
+        int r = (int)(nextRow % rowsPerBlock);
+        try {
+          if (r == 0 || block == null) block = file.readBlock(blockIds[p][(int)(nextRow / rowsPerBlock)]);
+        } catch (IOException e) {
+          throw new TuplesException("Failed to read hash join partition", e);
+        }
+        int offset = r * width;
+        for (int c = 0; c < width; c++) row[c] = block.getLong(offset + c);
+        nextRow++;
+        return true;
+      }
+
+      public Object clone() {
+        try {
+          return super.clone();
+        } catch (CloneNotSupportedException e) {
+          throw new Error(getClass() + " doesn't support clone, which it must", e);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,307 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.store.tuples;
+
+// Java 2 standard packages
+import java.util.*;
+
+// Third party packages
+import org.apache.log4j.Logger;
+
+// Locally written packages
+import org.mulgara.query.TuplesException;
+import org.mulgara.query.Variable;
+
+/**
+ * Chooses the order in which the operands of a join are nested, by estimating
+ * the cost of each order.
+ *
+ * The cost of an order is the number of rows read to evaluate it as a series of
+ * nested joins. Each operand is searched once for every row of the operands to
+ * its left, and reads the rows that match the variables it can be indexed on.
+ * The size of each intermediate result is estimated from the number of distinct
+ * values of the shared variables, using a {@link StatisticsAnnotation} when an
+ * operand has one, and otherwise assuming the rows of an operand are spread
+ * evenly over its columns.
+ *
+ * Joins of up to <code>mulgara.join.dpLimit</code> operands, 10 by default and
+ * at most 12, are ordered by finding the cheapest order for every subset of the
+ * operands in turn. Larger joins are ordered greedily, adding the operand that is cheapest
+ * to join to the operands already ordered.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+class JoinPlanner {
+
+  private static final Logger logger = Logger.getLogger(JoinPlanner.class.getName());
+
+  /** The system property for the most operands that are ordered exhaustively. */
+  static final String DP_LIMIT_PROP = "mulgara.join.dpLimit";
+
+  /** The default for the most operands that are ordered exhaustively. */
+  private static final int DEFAULT_DP_LIMIT = 10;
+
+  /**
+   * The highest value allowed for {@link #DP_LIMIT_PROP}. The planner keeps a
+   * plan for every subset of the operands, so this bounds a join to 2^12 plans.
+   */
+  static final int MAX_DP_LIMIT = 12;
+
+  /** The most operands that are ordered exhaustively. */
+  private static final int dpLimit = getDpLimit();
+
+  /** The operands to order. */
+  private final Operand[] operands;
+
+  /** The expected row count both sides of a join need before a hash join is used. */
+  private final long hashJoinThreshold;
+
+  /** The most operands to order exhaustively. */
+  private final int exhaustiveLimit;
+
+  /**
+   * Creates a planner for the operands of a join.
+   * @param tuples The operands.
+   * @param hashJoinThreshold The expected row count both sides of a join need before a hash join is used.
+   * @throws TuplesException If the operands could not be accessed.
+   */
+  JoinPlanner(List<Tuples> tuples, long hashJoinThreshold) throws TuplesException {
+    this(tuples, hashJoinThreshold, dpLimit);
+  }
+
+  /**
+   * Creates a planner for the operands of a join.
+   * @param tuples The operands.
+   * @param hashJoinThreshold The expected row count both sides of a join need before a hash join is used.
+   * @param exhaustiveLimit The most operands to order exhaustively.
+   * @throws TuplesException If the operands could not be accessed.
+   */
+  JoinPlanner(List<Tuples> tuples, long hashJoinThreshold, int exhaustiveLimit) throws TuplesException {
+    this.operands = new Operand[tuples.size()];
+    for (int i = 0; i < operands.length; i++) operands[i] = new Operand(tuples.get(i));
+    this.hashJoinThreshold = hashJoinThreshold;
+    this.exhaustiveLimit = exhaustiveLimit;
+  }
+
+  /**
+   * Finds the cheapest order for the operands.
+   * @return The operands, in the order they should be joined.
+   * @throws TuplesException If no order meets the binding requirements of the operands.
+   */
+  List<Tuples> order() throws TuplesException {
+    Plan plan = (operands.length <= exhaustiveLimit) ? orderExhaustively() : orderGreedily();
+
+    if (plan == null) {
+      logger.info("Unable to meet ordering constraints");
+      for (Operand op: operands) logger.info("    Operand: " + TuplesOperations.tuplesSummary(op.tuples));
+      throw new TuplesException("Unable to meet ordering constraints");
+    }
+
+    if (logger.isDebugEnabled()) logger.debug("Join order estimated to read " + plan.cost + " rows for " + plan.rows + " results");
+    Tuples[] result = new Tuples[operands.length];
+    for (int i = operands.length - 1; plan.parent != null; i--, plan = plan.parent) {
+      result[i] = operands[plan.operand].tuples;
+    }
+    return new ArrayList<Tuples>(Arrays.asList(result));
+  }
+
+  /**
+   * Finds the cheapest order by building the cheapest plan for each subset of
+   * the operands from the cheapest plans of its subsets.
+   * @return The cheapest plan for all the operands, or <code>null</code> if there is none.
+   */
+  private Plan orderExhaustively() {
+    Plan[] best = new Plan[1 << operands.length];
+    best[0] = new Plan();
+    // every subset of a set is numbered lower than the set
+    for (int set = 0; set < best.length; set++) {
+      if (best[set] == null) continue;
+      for (int i = 0; i < operands.length; i++) {
+        int extended = set | (1 << i);
+        if (extended == set) continue;
+        Plan plan = extend(best[set], i);
+        if (plan != null && (best[extended] == null || plan.cost < best[extended].cost)) best[extended] = plan;
+      }
+    }
+    return best[best.length - 1];
+  }
+
+  /**
+   * Finds an order by repeatedly adding the operand that is cheapest to join
+   * and has the smallest result.
+   * @return The plan for all the operands, or <code>null</code> if the operands
+   *         could not all be ordered.
+   */
+  private Plan orderGreedily() {
+    Plan plan = new Plan();
+    boolean[] used = new boolean[operands.length];
+    for (int n = 0; n < operands.length; n++) {
+      Plan best = null;
+      for (int i = 0; i < operands.length; i++) {
+        if (used[i]) continue;
+        Plan candidate = extend(plan, i);
+        if (candidate != null && (best == null || candidate.cost + candidate.rows < best.cost + best.rows)) best = candidate;
+      }
+      if (best == null) return null;
+      used[best.operand] = true;
+      plan = best;
+    }
+    return plan;
+  }
+
+  /**
+   * Estimates the cost of joining an operand to the right of a plan.
+   * @param plan The operands already ordered.
+   * @param index The index of the operand to add.
+   * @return The extended plan, or <code>null</code> if the operand needs variables the plan does not bind.
+   */
+  private Plan extend(Plan plan, int index) {
+    Operand op = operands[index];
+    if (op.mandatory != null && !op.mandatory.meetsRequirement(plan.distinct.keySet())) return null;
+
+    double selectivity = 1.0;
+    double probeRows = op.rows;
+    boolean prefix = true;
+    boolean searchable = true;
+    int shared = 0;
+    for (int i = 0; i < op.vars.length; i++) {
+      Double leftDistinct = plan.distinct.get(op.vars[i]);
+      if (leftDistinct != null) {
+        shared++;
+        selectivity /= Math.max(leftDistinct, op.distinct[i]);
+        if (prefix) probeRows /= op.distinct[i];
+        else searchable = false;
+      } else if (!op.definable) {
+        // a sorted operand can only be searched on its leading columns
+        prefix = false;
+      }
+    }
+
+    Plan result = new Plan(plan, index);
+    double stepCost;
+    if (plan.parent == null) {
+      result.rows = op.rows;
+      stepCost = op.rows;
+    } else {
+      result.rows = plan.rows * op.rows * selectivity;
+      stepCost = plan.rows * (1.0 + Math.max(probeRows, 1.0));
+      if (!searchable && shared > 0 && op.mandatory == null &&
+          plan.rows >= hashJoinThreshold && op.rows >= hashJoinThreshold) {
+        stepCost = Math.min(stepCost, plan.rows + op.rows);
+      }
+    }
+    result.cost = plan.cost + stepCost;
+
+    double maxDistinct = Math.max(result.rows, 1.0);
+    for (Map.Entry<Variable,Double> entry: plan.distinct.entrySet()) {
+      result.distinct.put(entry.getKey(), Math.min(entry.getValue(), maxDistinct));
+    }
+    for (int i = 0; i < op.vars.length; i++) {
+      if (op.everUnbound[i]) continue;
+      Double leftDistinct = result.distinct.get(op.vars[i]);
+      double distinct = (leftDistinct == null) ? op.distinct[i] : Math.min(leftDistinct, op.distinct[i]);
+      result.distinct.put(op.vars[i], Math.min(distinct, maxDistinct));
+    }
+    return result;
+  }
+
+  /**
+   * Reads the most operands to order exhaustively from the system properties.
+   * @return The most operands to order exhaustively.
+   */
+  static int getDpLimit() {
+    int limit = Integer.getInteger(DP_LIMIT_PROP, DEFAULT_DP_LIMIT).intValue();
+    if (limit <= MAX_DP_LIMIT) return limit;
+    logger.warn("Limiting " + DP_LIMIT_PROP + " to " + MAX_DP_LIMIT + " operands");
+    return MAX_DP_LIMIT;
+  }
+
+  /**
+   * The estimates for an operand, read once before planning.
+   */
+  private static class Operand {
+
+    /** The operand. */
+    final Tuples tuples;
+
+    /** The variables of the operand. */
+    final Variable[] vars;
+
+    /** Whether each column may be unbound. */
+    final boolean[] everUnbound;
+
+    /** The estimated number of distinct values in each column. */
+    final double[] distinct;
+
+    /** The expected number of rows. */
+    final double rows;
+
+    /** Whether the operand can be searched on any of its columns. */
+    final boolean definable;
+
+    /** The variables the operand needs bound to its left, or <code>null</code>. */
+    final MandatoryBindingAnnotation mandatory;
+
+    Operand(Tuples tuples) throws TuplesException {
+      this.tuples = tuples;
+      this.vars = tuples.getVariables();
+      this.rows = Math.max(tuples.getRowExpectedCount(), 0);
+      this.definable = tuples.getAnnotation(DefinablePrefixAnnotation.class) != null;
+      this.mandatory = (MandatoryBindingAnnotation)tuples.getAnnotation(MandatoryBindingAnnotation.class);
+
+      StatisticsAnnotation statistics = (StatisticsAnnotation)tuples.getAnnotation(StatisticsAnnotation.class);
+      // without statistics, the rows are assumed to be spread evenly over the columns
+      double evenDistinct = (vars.length > 0) ? Math.pow(rows, 1.0 / vars.length) : 1.0;
+      this.everUnbound = new boolean[vars.length];
+      this.distinct = new double[vars.length];
+      for (int i = 0; i < vars.length; i++) {
+        everUnbound[i] = tuples.isColumnEverUnbound(i);
+        long count = (statistics != null) ? statistics.getDistinctCount(i) : StatisticsAnnotation.UNKNOWN;
+        double d = (count > 0) ? count : evenDistinct;
+        distinct[i] = Math.max(Math.min(d, rows), 1.0);
+      }
+    }
+  }
+
+  /**
+   * An order for some of the operands, as a chain of plans each adding one operand.
+   */
+  private static class Plan {
+
+    /** The plan for the operands to the left, or <code>null</code> for the empty plan. */
+    final Plan parent;
+
+    /** The index of the last operand. */
+    final int operand;
+
+    /** The estimated rows read to evaluate the plan. */
+    double cost = 0.0;
+
+    /** The estimated rows of the result. */
+    double rows = 1.0;
+
+    /** The estimated distinct values of each variable always bound by the plan. */
+    final Map<Variable,Double> distinct = new HashMap<Variable,Double>();
+
+    /** Creates the empty plan. */
+    Plan() {
+      this(null, -1);
+    }
+
+    Plan(Plan parent, int operand) {
+      this.parent = parent;
+      this.operand = operand;
+    }
+  }
+}
@@ -0,0 +1,39 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.store.tuples;
+
+// Locally written packages
+import org.mulgara.query.TuplesException;
+
+/**
+ * Statistics about the values in the columns of a tuples, used to estimate
+ * the size of joins.  Tuples without this annotation are assumed to have
+ * their values spread evenly over their columns.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public interface StatisticsAnnotation extends Annotation {
+
+  /** The value returned when the number of values in a column is not known. */
+  public static final long UNKNOWN = -1;
+
+  /**
+   * Estimates the number of distinct values in a column.
+   *
+   * @param column The index of the column.
+   * @return The estimated number of distinct values, or {@link #UNKNOWN}.
+   * @throws TuplesException If the tuples could not be accessed.
+   */
+  public long getDistinctCount(int column) throws TuplesException;
+}
@@ -0,0 +1,261 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.store.tuples;
+
+// Java 2 standard packages
+import java.util.*;
+
+// Third party packages
+import org.apache.log4j.Logger;
+
+// Locally written packages
+import org.mulgara.query.TuplesException;
+
+/**
+ * The first rows of a tuples in the order of a {@link RowComparator}, without sorting
+ * the whole tuples. The operand is scanned once, and the smallest rows seen so far are
+ * kept in a bounded heap, with the largest of them at the root. A row that is not smaller
+ * than the root is discarded without further comparison. The memory used is proportional
+ * to the number of rows kept, rather than the size of the operand.
+ *
+ * Rows that compare as equal are kept in the order they appear in the operand. This is
+ * used for queries with both an <code>ORDER BY</code> and a <code>LIMIT</code>, where
+ * only the rows up to the limit and offset can appear in the result.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public class TopKTuples extends AbstractTuples {
+
+  private static final Logger logger = Logger.getLogger(TopKTuples.class.getName());
+
+  /** The rows kept from the operand, in sorted order. Not modified once built. */
+  private final long[][] rows;
+
+  /** The number of rows in {@link #rows}. */
+  private final int rowCount;
+
+  /** The order of the rows. */
+  private final RowComparator comparator;
+
+  /** The columns that are unbound in at least one of the rows. */
+  private final boolean[] columnEverUnbound;
+
+  /** Whether the operand had no duplicate rows. */
+  private final boolean noDuplicates;
+
+  /** The prefix the current iteration is restricted to. */
+  private long[] prefix = Tuples.NO_PREFIX;
+
+  /** The index of the current row. */
+  private int current = -1;
+
+
+  /**
+   * Collects the first rows of a tuples. The operand is not closed.
+   * @param tuples The operand to read the rows from.
+   * @param comparator The order of the rows.
+   * @param maxRows The number of rows to keep.
+   * @throws TuplesException If the operand could not be read or compared.
+   */
+  TopKTuples(Tuples tuples, RowComparator comparator, int maxRows) throws TuplesException {
+    if (maxRows < 0) throw new IllegalArgumentException("Negative row count: " + maxRows);
+    this.comparator = comparator;
+    setVariables(tuples.getVariables());
+    noDuplicates = tuples.hasNoDuplicates();
+
+    int width = tuples.getNumberOfVariables();
+    long upperBound = tuples.getRowUpperBound();
+    int capacity = (int)Math.min(maxRows, Math.max(upperBound, 0));
+    long[][] heap = new long[capacity][];
+    // the position of each row in the operand, so the first of equal rows is kept
+    long[] positions = new long[capacity];
+    int size = 0;
+    long scanned = 0;
+
+    if (capacity > 0) {
+      long[] row = new long[width];
+      tuples.beforeFirst();
+      while (tuples.next()) {
+        for (int c = 0; c < width; c++) row[c] = tuples.getColumnValue(c);
+        if (size < capacity) {
+          siftUp(heap, positions, size++, row, scanned);
+          row = new long[width];
+        } else if (comparator.compare(row, heap[0]) < 0) {
+          // replace the largest row kept, and reuse its array for the next row
+          long[] largest = heap[0];
+          siftDown(heap, positions, 0, size, row, scanned);
+          row = largest;
+        }
+        scanned++;
+      }
+    }
+
+    // heapsort what remains, moving the largest rows to the end
+    for (int end = size - 1; end > 0; end--) {
+      long[] largest = heap[0];
+      long largestPosition = positions[0];
+      siftDown(heap, positions, 0, end, heap[end], positions[end]);
+      heap[end] = largest;
+      positions[end] = largestPosition;
+    }
+
+    rows = heap;
+    rowCount = size;
+    columnEverUnbound = new boolean[width];
+    for (int r = 0; r < size; r++) {
+      for (int c = 0; c < width; c++) {
+        if (heap[r][c] == Tuples.UNBOUND) columnEverUnbound[c] = true;
+      }
+    }
+    if (logger.isDebugEnabled()) logger.debug("Kept " + rowCount + " of " + scanned + " rows");
+  }
+
+
+  /**
+   * Compares two rows, using their positions in the operand when they are otherwise equal.
+   * @return A negative value if the first row is smaller, or positive if it is larger.
+   */
+  private int compare(long[] row1, long position1, long[] row2, long position2) throws TuplesException {
+    int c = comparator.compare(row1, row2);
+    if (c != 0) return c;
+    return position1 < position2 ? -1 : (position1 > position2 ? 1 : 0);
+  }
+
+
+  /**
+   * Inserts a row into the heap, moving it towards the root until it is no larger than its parent.
+   * @param heap The rows in the heap.
+   * @param positions The positions in the operand of the rows in the heap.
+   * @param i The index to insert the row at. This must be the end of the heap.
+   * @param row The row to insert.
+   * @param position The position of the row in the operand.
+   */
+  private void siftUp(long[][] heap, long[] positions, int i, long[] row, long position) throws TuplesException {
+    while (i > 0) {
+      int parent = (i - 1) >>> 1;
+      if (compare(row, position, heap[parent], positions[parent]) < 0) break;
+      heap[i] = heap[parent];
+      positions[i] = positions[parent];
+      i = parent;
+    }
+    heap[i] = row;
+    positions[i] = position;
+  }
+
+
+  /**
+   * Inserts a row into the heap in place of an existing row, moving it away from the root
+   * until it is no smaller than its children.
+   * @param heap The rows in the heap.
+   * @param positions The positions in the operand of the rows in the heap.
+   * @param i The index of the row being replaced.
+   * @param size The number of rows in the heap.
+   * @param row The row to insert.
+   * @param position The position of the row in the operand.
+   */
+  private void siftDown(long[][] heap, long[] positions, int i, int size, long[] row, long position) throws TuplesException {
+    int child;
+    while ((child = 2 * i + 1) < size) {
+      if (child + 1 < size && compare(heap[child + 1], positions[child + 1], heap[child], positions[child]) > 0) child++;
+      if (compare(row, position, heap[child], positions[child]) > 0) break;
+      heap[i] = heap[child];
+      positions[i] = positions[child];
+      i = child;
+    }
+    heap[i] = row;
+    positions[i] = position;
+  }
+
+
+  public long getColumnValue(int column) throws TuplesException {
+    if (current < 0 || current >= rowCount) throw new TuplesException("No current row");
+    return rows[current][column];
+  }
+
+  public long getRowCount() throws TuplesException {
+    return rowCount;
+  }
+
+  public long getRowUpperBound() throws TuplesException {
+    return rowCount;
+  }
+
+  public long getRowExpectedCount() throws TuplesException {
+    return rowCount;
+  }
+
+  public boolean isColumnEverUnbound(int column) throws TuplesException {
+    return columnEverUnbound[column];
+  }
+
+  public boolean isMaterialized() {
+    return true;
+  }
+
+  public boolean hasNoDuplicates() throws TuplesException {
+    return noDuplicates;
+  }
+
+  public RowComparator getComparator() {
+    return comparator;
+  }
+
+  public List<Tuples> getOperands() {
+    return Collections.emptyList();
+  }
+
+  /**
+   * Moves before the first row that matches a prefix. The rows are not ordered by their
+   * columns, so rows that do not match the prefix are skipped by {@link #next()}.
+   */
+  public void beforeFirst(long[] prefix, int suffixTruncation) throws TuplesException {
+    assert prefix != null;
+    if (prefix.length > getNumberOfVariables()) {
+      throw new TuplesException("Prefix too long: " + prefix.length + " > " + getNumberOfVariables());
+    }
+    if (suffixTruncation != 0) throw new TuplesException("Suffix truncation not supported");
+    this.prefix = prefix;
+    current = -1;
+  }
+
+  public boolean next() throws TuplesException {
+    while (++current < rowCount) {
+      if (matchesPrefix(rows[current])) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Tests if a row matches the current prefix. Unbound values in the prefix match anything.
+   * @param row The row to test.
+   * @return <code>true</code> if the row matches.
+   */
+  private boolean matchesPrefix(long[] row) {
+    for (int c = 0; c < prefix.length; c++) {
+      if (prefix[c] != Tuples.UNBOUND && row[c] != prefix[c]) return false;
+    }
+    return true;
+  }
+
+  public void close() throws TuplesException {
+    // no resources to release
+  }
+
+  public Object clone() {
+    TopKTuples copy = (TopKTuples)super.clone();
+    copy.prefix = Tuples.NO_PREFIX;
+    copy.current = -1;
+    return copy;
+  }
+}
@@ -60,6 +60,24 @@ public abstract class TuplesOperations {
   /** The factory used to generate new {@link Tuples} instances. */
   private static TuplesFactory tuplesFactory = TuplesFactory.newInstance();
 
+  /** The system property for the expected row count both sides of a join need before a hash join is used. */
+  public static final String HASH_JOIN_THRESHOLD_PROP = "mulgara.join.hashThreshold";
+
+  /** The default expected row count both sides of a join need before a hash join is used. */
+  private static final long DEFAULT_HASH_JOIN_THRESHOLD = 10000;
+
+  /** The expected row count both sides of a join need before a hash join is used. */
+  private static long hashJoinThreshold = Long.getLong(HASH_JOIN_THRESHOLD_PROP, DEFAULT_HASH_JOIN_THRESHOLD).longValue();
+
+  /** The system property for the largest number of rows kept in memory when sorting for a limited result. */
+  public static final String TOP_K_THRESHOLD_PROP = "mulgara.sort.topKThreshold";
+
+  /** The default largest number of rows kept in memory when sorting for a limited result. */
+  private static final int DEFAULT_TOP_K_THRESHOLD = 100000;
+
+  /** The largest number of rows kept in memory when sorting for a limited result. */
+  private static final int topKThreshold = Integer.getInteger(TOP_K_THRESHOLD_PROP, DEFAULT_TOP_K_THRESHOLD).intValue();
+
   /**
    * Create a proposition which is always false. This is the additive identity
    * of the relational algebra: appending the empty value to a tuples leaves it
@@ -361,8 +379,7 @@ public abstract class TuplesOperations {
           return sorted.get(0);
 
         default:
-          if (logger.isDebugEnabled()) logger.debug("return UnboundJoin");
-          Tuples result = new UnboundJoin(sorted.toArray(new Tuples[sorted.size()]));
+          Tuples result = joinSorted(sorted);
           closeOperands(sorted);
           return result;
       }
@@ -376,6 +393,106 @@ public abstract class TuplesOperations {
   }
 
 
+  /**
+   * Joins operands that have already been ordered by {@link #sortOperands(List)}.
+   * Operands are nested into an {@link UnboundJoin} while they can be searched using the
+   * bindings to their left. An operand that would have to be scanned for every row to its
+   * left is instead joined to everything on its left with a {@link HashJoin}, when both
+   * sides are large enough to make the scan expensive.
+   * @param sorted The operands to join. These are not closed.
+   * @return A Tuples containing the conjunction of all the operands.
+   * @throws TuplesException If the operands could not be accessed.
+   */
+  private static Tuples joinSorted(List<Tuples> sorted) throws TuplesException {
+    List<Tuples> group = new ArrayList<Tuples>();
+    List<Tuples> intermediates = new ArrayList<Tuples>();
+    Set<Variable> boundVars = new HashSet<Variable>();
+    try {
+      for (Tuples operand: sorted) {
+        if (!group.isEmpty() && useHashJoin(group, boundVars, operand)) {
+          if (logger.isDebugEnabled()) logger.debug("HashJoin on " + tuplesSummary(operand));
+          Tuples lhs = group.get(0);
+          if (group.size() > 1) {
+            lhs = new UnboundJoin(group.toArray(new Tuples[group.size()]));
+            intermediates.add(lhs);
+          }
+          Tuples hashed = new HashJoin(lhs, operand);
+          intermediates.add(hashed);
+          group.clear();
+          group.add(hashed);
+        } else {
+          group.add(operand);
+        }
+        Variable[] vars = operand.getVariables();
+        for (int i = 0; i < vars.length; i++) {
+          if (!operand.isColumnEverUnbound(i)) boundVars.add(vars[i]);
+        }
+      }
+      if (group.size() == 1) return (Tuples)group.get(0).clone();
+      if (logger.isDebugEnabled()) logger.debug("return UnboundJoin");
+      return new UnboundJoin(group.toArray(new Tuples[group.size()]));
+    } finally {
+      closeOperands(intermediates);
+    }
+  }
+
+
+  /**
+   * Decides if an operand should be hash joined to the operands on its left, rather
+   * than being nested inside an {@link UnboundJoin} with them.
+   * @param left The operands to the left of the operand.
+   * @param boundVars The variables that are always bound by the operands to the left.
+   * @param operand The operand to test.
+   * @return <code>true</code> if a {@link HashJoin} should be used.
+   * @throws TuplesException If the operands could not be accessed.
+   */
+  private static boolean useHashJoin(List<Tuples> left, Set<Variable> boundVars, Tuples operand) throws TuplesException {
+    // operands that can be indexed by, or need, the bindings from the left stay nested
+    if (operand.getAnnotation(DefinablePrefixAnnotation.class) != null) return false;
+    if (operand.getAnnotation(MandatoryBindingAnnotation.class) != null) return false;
+
+    Variable[] vars = operand.getVariables();
+    int shared = 0;
+    for (int i = 0; i < vars.length; i++) {
+      if (boundVars.contains(vars[i])) {
+        if (operand.isColumnEverUnbound(i)) return false;
+        shared++;
+      }
+    }
+    // a cartesian product gives nothing to hash on
+    if (shared == 0) return false;
+    // every variable shared with the left becomes a key, so all of them must be bound
+    List<Variable> operandVars = Arrays.asList(vars);
+    for (Tuples t: left) {
+      for (Variable v: t.getVariables()) {
+        if (!boundVars.contains(v) && operandVars.contains(v)) return false;
+      }
+    }
+    // a sorted operand can be searched if the bound variables are its leading columns
+    if (operand.getComparator() != null && calculateNumberOfLeftBindings(operand, boundVars) == shared) return false;
+
+    if (operand.getRowExpectedCount() < hashJoinThreshold) return false;
+    long leftCount = Long.MAX_VALUE;
+    for (Tuples t: left) {
+      if (t.getNumberOfVariables() > 0) leftCount = Math.min(leftCount, t.getRowExpectedCount());
+    }
+    return leftCount >= hashJoinThreshold;
+  }
+
+
+  /**
+   * Sets the expected row count both sides of a join need before a hash join is used.
+   * This is used for testing.
+   * @param threshold The new threshold.
+   * @return The previous threshold.
+   */
+  static long setHashJoinThreshold(long threshold) {
+    long old = hashJoinThreshold;
+    hashJoinThreshold = threshold;
+    return old;
+  }
+
+
   /**
    * This is approximately a subtraction.  The subtrahend is matched against the minuend in the same
    * way as a conjunction, and the matching lines removed from the minuend.  The remaining lines in
@@ -674,16 +791,20 @@ public abstract class TuplesOperations {
 
 
   /**
-   * Sorts operands by weighted row count in-place.
-   * Each row count is discounted by the number of free-names bound to its left.
-   * Weighted-row-count = row-count ^ (free-after-binding / free-before-binding)
+   * Sorts operands into the order with the lowest estimated cost, as chosen by a
+   * {@link JoinPlanner}, and defines the prefix of each operand that can be
+   * searched on the variables bound to its left.
+   * @param operands The operands to sort. Consumed by this function.
+   * @return The operands in the order they should be joined.
+   * @throws TuplesException If no order meets the binding requirements of the operands.
    */
   private static List<Tuples> sortOperands(List<Tuples> operands) throws TuplesException {
     Set<Variable> boundVars = new HashSet<Variable>();
-    List<Tuples> result = new ArrayList<Tuples>();
+    List<Tuples> result = new JoinPlanner(operands, hashJoinThreshold).order();
+    operands.clear();
 
-    while (!operands.isEmpty()) {
-      Tuples bestTuples = removeBestTuples(operands, boundVars);
+    for (Tuples bestTuples: result) {
+      if (logger.isDebugEnabled()) logger.debug("Selected: " + tuplesSummary(bestTuples));
 
       DefinablePrefixAnnotation definable =
           (DefinablePrefixAnnotation)bestTuples.getAnnotation(DefinablePrefixAnnotation.class);
@@ -699,78 +820,12 @@ public abstract class TuplesOperations {
       for (int i = 0; i < vars.length; i++) {
         if (!bestTuples.isColumnEverUnbound(i)) boundVars.add(vars[i]);
       }
-
-      result.add(bestTuples);
     }
 
     return result;
   }
 
 
-  // FIXME: Method too long.  Refactor.
-  private static Tuples removeBestTuples(List<Tuples> operands, Set<Variable> boundVars) throws TuplesException {
-    ListIterator<Tuples> iter = operands.listIterator();
-    Tuples minTuples = null;
-    double minRowCount = Double.MAX_VALUE;
-    int minIndex = -1;
-
-    assert(iter.hasNext());
-
-    logger.debug("removeBestTuples");
-    while (iter.hasNext()) {
-      Tuples tuples = (Tuples)iter.next();
-      if (logger.isDebugEnabled()) logger.debug("tuples: " + tuplesSummary(tuples));
-
-      // Check tuples meets any mandatory left bindings.
-      MandatoryBindingAnnotation bindingRequirements =
-          (MandatoryBindingAnnotation)tuples.getAnnotation(MandatoryBindingAnnotation.class);
-
-      if (bindingRequirements != null && !bindingRequirements.meetsRequirement(boundVars)) continue;
-
-      Variable[] vars = tuples.getVariables();
-      int numLeftBindings = calculateNumberOfLeftBindings(tuples, boundVars);
-      if (logger.isDebugEnabled()) logger.debug("numLeftBindings: " + numLeftBindings);
-
-      // Basic formula assumes uniform distribution.  So number of rows is the
-      // product of the length of each variable taken seperately, hence expected
-      // row count for n from m bindings is expected(0 from m)**((m - n) / m).
-      // This fails to consider the effect on performance of worst case so we
-      // incorporate weighted terms to allow for possible skew on each column.
-      // We assume a reducing probability of compounded failure so weight each
-      // term by 100**term (0-indexed), this is a fudge factor that needs proper
-      // analysis.
-      double weightedRowCount = 0.0;
-      for (int weight = 0; weight < numLeftBindings + 1; weight++) {
-        double term = vars.length > 0
-                        ? Math.pow(tuples.getRowExpectedCount(), (double)(vars.length - (numLeftBindings - weight)) / vars.length)
-                        : tuples.getRowExpectedCount();
-        weightedRowCount += term / Math.pow(100.0, weight);
-      }
-
-      if (logger.isDebugEnabled()) {
-        logger.debug("weightedRowCount: " + weightedRowCount);
-        logger.debug("minRowCount: " + minRowCount);
-      }
-
-      if (weightedRowCount < minRowCount) {
-        minRowCount = weightedRowCount;
-        minTuples = tuples;
-        minIndex = iter.nextIndex() - 1;
-      }
-    }
-
-    if (minTuples == null) {
-      logger.info("Unable to meet ordering constraints with bindings: " + boundVars);
-      for (Tuples op: operands) logger.info("    Operand: " + tuplesSummary(op));
-      throw new TuplesException("Unable to meet ordering constraints");
-    }
-
-    if (logger.isDebugEnabled()) logger.debug("Selected: " + tuplesSummary(minTuples) + " with weightedRowCount: " + minRowCount);
-    operands.remove(minIndex);
-    return minTuples;
-  }
-
-
   private static int calculateNumberOfLeftBindings(Tuples tuples, Set<Variable> boundVars) throws TuplesException {
     int numLeftBindings = 0;
     Variable[] vars = tuples.getVariables();
@@ -931,6 +986,28 @@ public abstract class TuplesOperations {
     }
   }
 
+  /**
+   * Sort into a specified order, where only the first rows of the result are needed.
+   * When few enough rows are needed then only those rows are kept, using a single pass
+   * over the tuples, instead of sorting all of the tuples. Otherwise this is the same as
+   * {@link #sort(Tuples, RowComparator)}. The parameter is not closed.
+   *
+   * @param tuples the tuples to sort
+   * @param rowComparator the ordering
+   * @param maxRows the number of rows needed from the start of the result
+   * @return A Tuples with at least the first <var>maxRows</var> bindings, sorted according to the rowComparator.
+   * @throws TuplesException if the sorting can't be accomplished
+   */
+  public static Tuples sort(Tuples tuples, RowComparator rowComparator, long maxRows) throws TuplesException {
+    if (maxRows < 0 || maxRows > topKThreshold || rowComparator.equals(tuples.getComparator()) ||
+        maxRows >= tuples.getRowUpperBound()) {
+      return sort(tuples, rowComparator);
+    }
+    tuples = new TopKTuples(tuples, rowComparator, (int)maxRows);
+    if (logger.isDebugEnabled()) logger.debug("Sorted first " + maxRows + " rows: " + tuples + " (using supplied row comparator)");
+    return tuples;
+  }
+
   /**
    * Sort into an order given by the list of variables.  The parameter is not closed, and this
    * method will create and return a new tuples.
@@ -27,12 +27,19 @@
 
 package org.mulgara.store.xa;
 
+import java.util.ArrayDeque;
 import java.util.Collections;
 import java.util.Set;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.io.File;
 import java.io.IOException;
 
@@ -80,6 +87,21 @@ public final class HybridTuples implements Tuples {
   protected static final int MAX_READ_BUFFER_SIZE = 256 * 1024;
   protected static final String LISTFILE_EXT = "_ml";
 
+  /** The property for the number of threads used to sort each tuples. 1 to sort on the calling thread. */
+  public static final String SORT_THREADS_PROPERTY = "mulgara.sort.threads";
+
+  /** The property for the number of bytes of rows held in memory while sorting each tuples. */
+  public static final String SORT_MEMORY_PROPERTY = "mulgara.sort.memory";
+
+  /** The number of threads used to sort each tuples. */
+  private static volatile int sortThreads = getSortThreads();
+
+  /** The number of bytes of rows held in memory while sorting each tuples. */
+  private static volatile long sortMemory = getSortMemory();
+
+  /** The threads for sorting runs, shared by all tuples. Created when first needed. */
+  private static ExecutorService sortExecutor = null;
+
   protected final Variable[] vars;
   protected final int width;
   protected final int tuplesPerBuffer;
@@ -158,11 +180,15 @@ public final class HybridTuples implements Tuples {
     this.width = uniqueVars.size();
     this.columnEverUnbound = new boolean[this.width];
     Arrays.fill(this.columnEverUnbound, false);
-    this.tuplesPerBuffer = this.width > 0 ? MAX_READ_BUFFER_SIZE / (SIZEOF_NODE * this.width) : 1;
+    this.tuplesPerBuffer = this.width > 0 ? bufferRows(this.width) : 1;
 
     this.blockFileRefCount = new RefCount();
 //    long timer = System.currentTimeMillis();
-    materialiseTuples(tuples);
+    if (sortThreads > 1 && this.width > 0) {
+      materialiseTuplesInParallel(tuples);
+    } else {
+      materialiseTuples(tuples);
+    }
 //    logger.warn("Materialising tuples(" + (System.currentTimeMillis() - timer) + ") from " + TuplesOperations.formatTuplesTree(tuples));
     this.beforeFirstCalled = false;
     this.nextCalled = false;
@@ -585,6 +611,64 @@ public final class HybridTuples implements Tuples {
   }
 
 
+  /**
+   * Reads the tuples into runs of up to {@link #tuplesPerBuffer} rows, and sorts the runs
+   * on the sort threads while the next run is read. Up to {@link #sortThreads} runs are
+   * held in memory. If the tuples fits in those runs then they are all kept in memory,
+   * otherwise the oldest run is written to the block file whenever another run is needed.
+   * The runs are merged by the heap of cache lines, as for {@link #materialiseTuples(Tuples)}.
+   */
+  private int materialiseTuplesInParallel(Tuples tuples) throws TuplesException {
+    long upperBound = tuples.getRowUpperBound();
+    int runRows = upperBound < this.tuplesPerBuffer ? (int)upperBound + 1 : this.tuplesPerBuffer;
+    ExecutorService executor = getSortExecutor();
+    ArrayDeque<SortedRun> runs = new ArrayDeque<SortedRun>();
+    List<CacheLine> lines = new ArrayList<CacheLine>();
+    boolean spilled = false;
+    tuples.beforeFirst();
+
+    try {
+      DenseLongMatrix buffer = new DenseLongMatrix(runRows, this.width);
+      int size;
+      while ((size = populateArray(buffer, tuples)) > 0) {
+        runs.add(new SortedRun(buffer, size, executor));
+        if (size < buffer.getLength()) break;
+
+        if (runs.size() < sortThreads) {
+          buffer = new DenseLongMatrix(runRows, this.width);
+        } else {
+          // all the memory is in use, so write out the oldest run and reuse its buffer
+          if (!spilled) {
+            initialiseBlockFile();
+            spilled = true;
+          }
+          SortedRun oldest = runs.poll();
+          oldest.await();
+          lines.add(new BlockCacheLine(blockFile, BLOCK_SIZE, oldest.buffer, oldest.size));
+          buffer = oldest.buffer;
+        }
+      }
+
+      while (!runs.isEmpty()) {
+        SortedRun run = runs.poll();
+        run.await();
+        lines.add(spilled ? new BlockCacheLine(blockFile, BLOCK_SIZE, run.buffer, run.size)
+                          : new MemoryCacheLine(run.buffer, run.size));
+      }
+      if (lines.isEmpty()) lines.add(new MemoryCacheLine(buffer, 0));
+    } finally {
+      // if reading failed then the remaining runs must finish before their buffers are released
+      for (SortedRun run: runs) run.cancel();
+    }
+
+    if (logger.isDebugEnabled()) {
+      logger.debug("Sorted " + lines.size() + " runs of up to " + runRows + " rows" + (spilled ? " to disk" : ""));
+    }
+    this.heapCache = lines.toArray(new CacheLine[lines.size()]);
+    return this.heapCache.length;
+  }
+
+
   private int primeBuffer(DenseLongMatrix buffer, Tuples tuples)
       throws TuplesException {
     int size;
@@ -849,6 +933,171 @@ public final class HybridTuples implements Tuples {
     public int refCount;
   }
 
+
+  /**
+   * Finds the number of rows to hold in each buffer, so that the buffers for all of the
+   * sort threads fit within the memory for sorting.
+   * @param width The number of columns in a row.
+   * @return The number of rows in a buffer.
+   */
+  private static int bufferRows(int width) {
+    long rows = sortMemory / sortThreads / (SIZEOF_NODE * width);
+    // the rows of a buffer are held in a single array
+    rows = Math.min(rows, (Integer.MAX_VALUE - 8) / width);
+    return (int)Math.max(rows, 1);
+  }
+
+
+  /**
+   * Reads the number of sort threads from the system properties.
+   * @return The number of threads to sort each tuples with.
+   */
+  private static int getSortThreads() {
+    Integer threads = Integer.getInteger(SORT_THREADS_PROPERTY, 1);
+    if (threads.intValue() < 1) {
+      logger.warn("Invalid value for property " + SORT_THREADS_PROPERTY + ": " + threads);
+      return 1;
+    }
+    return threads.intValue();
+  }
+
+
+  /**
+   * Reads the memory for sorting from the system properties. This defaults to
+   * {@link #MAX_READ_BUFFER_SIZE} for each sort thread.
+   * @return The number of bytes of rows to hold in memory while sorting.
+   */
+  private static long getSortMemory() {
+    long defaultMemory = (long)MAX_READ_BUFFER_SIZE * sortThreads;
+    Long memory = Long.getLong(SORT_MEMORY_PROPERTY, defaultMemory);
+    if (memory.longValue() < 1) {
+      logger.warn("Invalid value for property " + SORT_MEMORY_PROPERTY + ": " + memory);
+      return defaultMemory;
+    }
+    return memory.longValue();
+  }
+
+
+  /**
+   * Gets the threads for sorting runs, creating them if needed.
+   * @return The shared sort executor.
+   */
+  private static synchronized ExecutorService getSortExecutor() {
+    if (sortExecutor == null) sortExecutor = Executors.newFixedThreadPool(sortThreads, new SortThreadFactory());
+    return sortExecutor;
+  }
+
+
+  /**
+   * Sets the number of sort threads and the memory for sorting. This is used for testing.
+   * @param threads The number of threads to sort each tuples with.
+   * @param memory The number of bytes of rows to hold in memory while sorting.
+   */
+  static synchronized void setSortParameters(int threads, long memory) {
+    if (threads < 1 || memory < 1) throw new IllegalArgumentException("Invalid sort parameters");
+    if (sortExecutor != null && threads != sortThreads) {
+      sortExecutor.shutdown();
+      sortExecutor = null;
+    }
+    sortThreads = threads;
+    sortMemory = memory;
+  }
+
+
+  /**
+   * A run of rows being sorted on a sort thread.
+   */
+  private class SortedRun implements Runnable {
+
+    /** The rows of the run. */
+    final DenseLongMatrix buffer;
+
+    /** The number of rows in the buffer. */
+    final int size;
+
+    /** The result of the sort. */
+    private final Future<?> future;
+
+    /**
+     * Starts sorting a run.
+     * @param buffer The rows to sort.
+     * @param size The number of rows in the buffer.
+     * @param executor The executor to sort on.
+     */
+    SortedRun(DenseLongMatrix buffer, int size, ExecutorService executor) {
+      this.buffer = buffer;
+      this.size = size;
+      this.future = executor.submit(this);
+    }
+
+    /** Sorts the run. */
+    public void run() {
+      try {
+        buffer.sort(comparator, size);
+      } catch (TuplesException e) {
+        throw new SortException(e);
+      }
+    }
+
+    /**
+     * Waits for the run to be sorted.
+     * @throws TuplesException If the rows could not be compared.
+     */
+    void await() throws TuplesException {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        throw new TuplesException("Interrupted while sorting", e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof SortException) throw (TuplesException)cause.getCause();
+        if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+        if (cause instanceof Error) throw (Error)cause;
+        throw new TuplesException("Error sorting rows", cause);
+      }
+    }
+
+    /**
+     * Stops the run from being sorted if it has not started, or waits for it to finish.
+     */
+    void cancel() {
+      if (future.cancel(false)) return;
+      try {
+        future.get();
+      } catch (Exception e) {
+        // the run is being discarded
+      }
+    }
+  }
+
+
+  /**
+   * Carries a {@link TuplesException} out of a sort thread.
+   */
+  private static class SortException extends RuntimeException {
+    private static final long serialVersionUID = 3297504211740925133L;
+
+    SortException(TuplesException cause) {
+      super(cause);
+    }
+  }
+
+
+  /**
+   * Creates daemon threads for sorting, so idle threads don't hold up shutdown.
+   */
+  private static class SortThreadFactory implements ThreadFactory {
+
+    /** The number of threads created. */
+    private final AtomicInteger count = new AtomicInteger();
+
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "tuples-sort-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }
+  }
+
   /**
    * Copied from AbstractTuples
    */
@@ -102,6 +102,21 @@ public interface XAStringPool extends SimpleXAResource, NewNodeListener,
    */
   public long findGNode(SPObject spObject, boolean create) throws StringPoolException;
 
+  /**
+   * Finds the graph nodes corresponding to a batch of SPObjects, as
+   * {@link #findGNode(SPObject, boolean)} does for each of them.  The objects
+   * are searched for in the order of the string pool, so a large batch is
+   * resolved with mostly sequential access to the index.
+   *
+   * @param spObjects The SPObjects to search for, which may contain duplicates.
+   * @param create A flag to indicate that new nodes should be created if needed.
+   * @return the graph node corresponding to each element of <var>spObjects</var>,
+   *   or {@link org.mulgara.store.nodepool.NodePool#NONE} for objects which are
+   *   not in the pool if <var>create</var> is <code>false</code>.
+   * @throws StringPoolException if an internal error occurs.
+   */
+  public long[] findGNodes(SPObject[] spObjects, boolean create) throws StringPoolException;
+
   /**
    * Sets the node pool to be used in association with this StringPool.
    * @param nodePool The node pool this string pool will allocate nodes from.
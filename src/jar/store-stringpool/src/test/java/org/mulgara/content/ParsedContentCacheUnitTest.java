@@ -0,0 +1,249 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.content;
+
+// Java 2 standard packages
+import java.net.URI;
+import java.util.*;
+
+// Third party packages
+import junit.framework.*;
+import org.jrdf.graph.BlankNode;
+import org.jrdf.graph.Node;
+
+// Locally written packages
+import org.mulgara.query.*;
+import org.mulgara.query.rdf.BlankNodeImpl;
+import org.mulgara.query.rdf.URIReferenceImpl;
+import org.mulgara.resolver.spi.ResolverSession;
+import org.mulgara.resolver.spi.TestResolverSession;
+import org.mulgara.store.tuples.Tuples;
+
+/**
+ * Test case for {@link ParsedContentCache} and {@link ParsedGraphResolution}.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public class ParsedContentCacheUnitTest extends TestCase {
+
+  final Variable x = new Variable("x");
+  final Variable y = new Variable("y");
+
+  /** The model node of the constraints. */
+  final LocalNode model = new LocalNode(99);
+
+  /**
+   * Constructs a new test with the given name.
+   * @param name the name of the test
+   */
+  public ParsedContentCacheUnitTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Hook for test runner to obtain a test suite from.
+   * @return The test suite
+   */
+  public static Test suite() {
+    TestSuite testSuite = new TestSuite();
+    testSuite.addTest(new ParsedContentCacheUnitTest("testResolution"));
+    testSuite.addTest(new ParsedContentCacheUnitTest("testPrefix"));
+    testSuite.addTest(new ParsedContentCacheUnitTest("testLocalize"));
+    testSuite.addTest(new ParsedContentCacheUnitTest("testEviction"));
+    return testSuite;
+  }
+
+  /**
+   * Default text runner.
+   * @param args The command line arguments
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+
+  /**
+   * Constraints are resolved from the indexes, without duplicates.
+   * @throws Exception if query fails when it should have succeeded
+   */
+  public void testResolution() throws Exception {
+    ParsedGraph graph = new ParsedGraph(new long[] {
+        3, 1, 2,   1, 1, 2,   1, 1, 3,   2, 2, 3,   1, 1, 2,   3, 2, 1
+    }, 6);
+    assertEquals(5, graph.size);
+
+    Tuples t = new ParsedGraphResolution(new ConstraintImpl(x, new LocalNode(1), y, model), graph);
+    assertEquals(3, t.getRowCount());
+    assertTrue(t.hasNoDuplicates());
+    assertEquals(set(row(1, 2), row(1, 3), row(3, 2)), rows(t, new long[0]));
+
+    t = new ParsedGraphResolution(new ConstraintImpl(x, y, new LocalNode(2), model), graph);
+    assertEquals(2, t.getRowCount());
+    assertEquals(set(row(1, 1), row(3, 1)), rows(t, new long[0]));
+
+    // subject and object are bound, which is not the prefix of any index
+    t = new ParsedGraphResolution(new ConstraintImpl(new LocalNode(3), x, new LocalNode(1), model), graph);
+    assertEquals(set(row(2)), rows(t, new long[0]));
+    assertEquals(1, t.getRowCount());
+
+    t = new ParsedGraphResolution(new ConstraintImpl(new LocalNode(4), x, y, model), graph);
+    assertEquals(0, t.getRowCount());
+    assertEquals(set(), rows(t, new long[0]));
+  }
+
+  /**
+   * Prefixes are looked up in the indexes.
+   * @throws Exception if query fails when it should have succeeded
+   */
+  public void testPrefix() throws Exception {
+    ParsedGraph graph = new ParsedGraph(new long[] {
+        1, 5, 2,   1, 5, 3,   2, 5, 3,   2, 6, 3
+    }, 4);
+    Tuples t = new ParsedGraphResolution(new ConstraintImpl(x, new LocalNode(5), y, model), graph);
+    assertEquals(set(row(1, 2), row(1, 3)), rows(t, new long[] { 1 }));
+    assertEquals(set(row(2, 3)), rows(t, new long[] { 2, 3 }));
+    assertEquals(set(), rows(t, new long[] { 2, 4 }));
+  }
+
+  /**
+   * A cached document is localized with the same nodes, and new blank nodes.
+   * @throws Exception if query fails when it should have succeeded
+   */
+  public void testLocalize() throws Exception {
+    ResolverSession session = new TestResolverSession();
+    long a = session.localize(new URIReferenceImpl(new URI("http://example.org/a")));
+    long b = session.localize(new URIReferenceImpl(new URI("http://example.org/b")));
+    long blank = session.localize(new BlankNodeImpl());
+    ParsedGraph graph = new ParsedGraph(new long[] { a, b, blank,   blank, b, a }, 2);
+
+    ParsedContentCache.Document document = new ParsedContentCache.Document(graph, "v1", session);
+    assertEquals(2, document.size());
+    assertEquals("v1", document.validator);
+
+    ResolverSession other = new TestResolverSession();
+    other.localize(new URIReferenceImpl(new URI("http://example.org/c")));
+    ParsedGraph localized = document.localize(other);
+    assertEquals(2, localized.size);
+
+    Set<List<Node>> original = globalize(graph, session);
+    Set<List<Node>> copy = globalize(localized, other);
+    assertEquals(replaceBlankNodes(original), replaceBlankNodes(copy));
+
+    // the blank node is the same node in both statements
+    long[] first = { localized.get(0, 0, 0), localized.get(0, 0, 1), localized.get(0, 0, 2) };
+    long[] second = { localized.get(0, 1, 0), localized.get(0, 1, 1), localized.get(0, 1, 2) };
+    long localBlank = (other.globalize(first[0]) instanceof BlankNode) ? first[0] : first[2];
+    assertTrue(localBlank == second[0] || localBlank == second[2]);
+  }
+
+  /**
+   * The least recently used documents are discarded to keep the cache within its size.
+   * @throws Exception if query fails when it should have succeeded
+   */
+  public void testEviction() throws Exception {
+    ParsedContentCache cache = new ParsedContentCache(5);
+    ResolverSession session = new TestResolverSession();
+
+    ParsedContentCache.Document three = document(session, 3);
+    ParsedContentCache.Document two = document(session, 2);
+    cache.put("three", three);
+    cache.put("two", two);
+    assertSame(three, cache.get("three"));
+    assertSame(two, cache.get("two"));
+
+    // "three" is the least recently used
+    cache.put("another", document(session, 2));
+    assertNull(cache.get("three"));
+    assertSame(two, cache.get("two"));
+    assertNotNull(cache.get("another"));
+
+    // too large to cache
+    cache.put("six", document(session, 6));
+    assertNull(cache.get("six"));
+    assertSame(two, cache.get("two"));
+
+    // replacing a document frees its space
+    cache.put("two", document(session, 3));
+    assertNotNull(cache.get("two"));
+    assertNotNull(cache.get("another"));
+    cache.remove("another");
+    assertNull(cache.get("another"));
+  }
+
+  /**
+   * Creates a document of distinct statements.
+   * @param session The session to localize the nodes in.
+   * @param size The number of statements.
+   */
+  private ParsedContentCache.Document document(ResolverSession session, int size) throws Exception {
+    long[] triples = new long[size * 3];
+    for (int i = 0; i < size; i++) {
+      for (int c = 0; c < 3; c++) {
+        triples[i * 3 + c] = session.localize(new URIReferenceImpl(new URI("http://example.org/" + (i + c))));
+      }
+    }
+    return new ParsedContentCache.Document(new ParsedGraph(triples, size), "v", session);
+  }
+
+  /**
+   * Reads the rows of a tuples.
+   * @param t The tuples.
+   * @param prefix The prefix to read.
+   */
+  private Set<List<Long>> rows(Tuples t, long[] prefix) throws TuplesException {
+    Set<List<Long>> rows = new HashSet<List<Long>>();
+    t.beforeFirst(prefix, 0);
+    while (t.next()) {
+      List<Long> row = new ArrayList<Long>();
+      for (int c = 0; c < t.getNumberOfVariables(); c++) row.add(t.getColumnValue(c));
+      assertTrue(rows.add(row));
+    }
+    return rows;
+  }
+
+  /**
+   * Globalizes the statements of a graph.
+   */
+  private Set<List<Node>> globalize(ParsedGraph graph, ResolverSession session) throws Exception {
+    Set<List<Node>> statements = new HashSet<List<Node>>();
+    for (int row = 0; row < graph.size; row++) {
+      List<Node> statement = new ArrayList<Node>();
+      for (int c = 0; c < 3; c++) statement.add(session.globalize(graph.get(0, row, c)));
+      statements.add(statement);
+    }
+    return statements;
+  }
+
+  /**
+   * Replaces the blank nodes of some statements with a label, so they can be compared.
+   */
+  private Set<List<Object>> replaceBlankNodes(Set<List<Node>> statements) {
+    Set<List<Object>> result = new HashSet<List<Object>>();
+    for (List<Node> statement: statements) {
+      List<Object> replaced = new ArrayList<Object>();
+      for (Node node: statement) replaced.add(node instanceof BlankNode ? "_:blank" : node);
+      result.add(replaced);
+    }
+    return result;
+  }
+
+  private static List<Long> row(long... values) {
+    List<Long> row = new ArrayList<Long>();
+    for (long value: values) row.add(value);
+    return row;
+  }
+
+  private static Set<List<Long>> set(List<Long>... rows) {
+    return new HashSet<List<Long>>(Arrays.asList(rows));
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.content.nquads;
+
+// Java 2 standard packages
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+
+// Third party packages
+import junit.framework.*;
+import org.jrdf.graph.BlankNode;
+
+// Locally written packages
+import org.mulgara.content.Content;
+import org.mulgara.parser.MulgaraParserException;
+import org.mulgara.query.rdf.LiteralImpl;
+import org.mulgara.query.rdf.URIReferenceImpl;
+import org.mulgara.resolver.file.FileContent;
+import org.mulgara.resolver.spi.ResolverSession;
+import org.mulgara.resolver.spi.Statements;
+import org.mulgara.resolver.spi.TestResolverSession;
+
+/**
+ * Test case for {@link NQuadsStatements} and {@link ChunkParser}.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public class NQuadsStatementsUnitTest extends TestCase {
+
+  static {
+    // Split even small documents between threads
+    System.setProperty(Parser.CHUNK_SIZE_PROPERTY, "2");
+  }
+
+  /** The document to parse. */
+  private File file;
+
+  /**
+   * Constructs a new test with the given name.
+   * @param name the name of the test
+   */
+  public NQuadsStatementsUnitTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Hook for test runner to obtain a test suite from.
+   * @return The test suite
+   */
+  public static Test suite() {
+    TestSuite testSuite = new TestSuite();
+    testSuite.addTest(new NQuadsStatementsUnitTest("testChunk"));
+    testSuite.addTest(new NQuadsStatementsUnitTest("testBlankGraph"));
+    testSuite.addTest(new NQuadsStatementsUnitTest("testUnescape"));
+    testSuite.addTest(new NQuadsStatementsUnitTest("testError"));
+    testSuite.addTest(new NQuadsStatementsUnitTest("testStatements"));
+    return testSuite;
+  }
+
+  /**
+   * Default text runner.
+   * @param args The command line arguments
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+
+  public void tearDown() {
+    if (file != null) file.delete();
+  }
+
+  /**
+   * Terms are numbered within a chunk, and comments are skipped.
+   * @throws Exception if parsing fails when it should have succeeded
+   */
+  public void testChunk() throws Exception {
+    String[] lines = {
+        "# a comment",
+        "<http://example.org/a> <http://example.org/p> \"x\\ty\"@en .",
+        "",
+        "_:b1 <http://example.org/p> <http://example.org/a> <http://example.org/g> .",
+        "<http://example.org/a> <http://example.org/p> \"1\"^^<http://www.w3.org/2001/XMLSchema#int> . # trailing",
+        "_:b1 <http://example.org/q> _:b2.",
+        "unused"
+    };
+    ChunkParser.Chunk chunk = new ChunkParser(new URI("http://example.org/doc"), lines, 6, 1).call();
+
+    assertEquals(4, chunk.size);
+    assertEquals(2, chunk.blankNodes.length);
+    int[] q = chunk.quads;
+    assertEquals(new URIReferenceImpl(new URI("http://example.org/a")), chunk.nodes[q[0]]);
+    assertEquals(new LiteralImpl("x\ty", "en"), chunk.nodes[q[2]]);
+    assertEquals(ChunkParser.DEFAULT_GRAPH, q[3]);
+
+    // the same terms have the same codes
+    assertEquals(q[1], q[5]);
+    assertEquals(q[0], q[6]);
+    assertEquals(-1, q[4]);
+    assertEquals(q[4], q[12]);
+    assertEquals(new URIReferenceImpl(new URI("http://example.org/g")), chunk.nodes[q[7]]);
+    assertEquals(new LiteralImpl("1", new URI("http://www.w3.org/2001/XMLSchema#int")), chunk.nodes[q[10]]);
+    assertEquals(-2, q[14]);
+  }
+
+  /**
+   * A graph may be labelled with a blank node, which shares its code with the same label elsewhere.
+   * @throws Exception if parsing fails when it should have succeeded
+   */
+  public void testBlankGraph() throws Exception {
+    String[] lines = {
+        "_:g <http://example.org/p> <http://example.org/a> _:g .",
+        "<http://example.org/a> <http://example.org/p> _:b _:g."
+    };
+    ChunkParser.Chunk chunk = new ChunkParser(new URI("http://example.org/doc"), lines, 2, 1).call();
+
+    assertEquals(2, chunk.size);
+    assertEquals(2, chunk.blankNodes.length);
+    int[] q = chunk.quads;
+    assertEquals(-1, q[0]);
+    assertEquals(-1, q[3]);
+    assertEquals(-2, q[6]);
+    assertEquals(-1, q[7]);
+  }
+
+  /**
+   * Escape sequences are replaced.
+   * @throws Exception if parsing fails when it should have succeeded
+   */
+  public void testUnescape() throws Exception {
+    assertEquals("plain", ChunkParser.unescape("plain"));
+    assertEquals("a\"b\\c\nd", ChunkParser.unescape("a\\\"b\\\\c\\nd"));
+    assertEquals("\u00e9", ChunkParser.unescape("\\u00E9"));
+    assertEquals(new String(Character.toChars(0x1F600)), ChunkParser.unescape("\\U0001F600"));
+    try {
+      ChunkParser.unescape("bad\\q");
+      fail("Invalid escape sequence was accepted");
+    } catch (MulgaraParserException e) { }
+  }
+
+  /**
+   * Errors report the line they were found on.
+   * @throws Exception if the test fails unexpectedly
+   */
+  public void testError() throws Exception {
+    String[] lines = {
+        "<http://example.org/a> <http://example.org/p> <http://example.org/b> .",
+        "<http://example.org/a> \"literal\" <http://example.org/b> ."
+    };
+    try {
+      new ChunkParser(new URI("http://example.org/doc"), lines, 2, 41).call();
+      fail("Literal predicate was accepted");
+    } catch (MulgaraParserException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("Line 42 of http://example.org/doc"));
+    }
+  }
+
+  /**
+   * Statements from several chunks are localized in order, with their graphs.
+   * @throws Exception if parsing fails when it should have succeeded
+   */
+  public void testStatements() throws Exception {
+    file = File.createTempFile("nquads", ".nq");
+    Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+    for (int i = 0; i < 7; i++) {
+      out.write("_:s <http://example.org/p> \"" + i + "\"" + (i % 2 == 0 ? "" : " <http://example.org/g>") + " .\n");
+    }
+    out.close();
+
+    ResolverSession session = new TestResolverSession();
+    long p = session.localize(new URIReferenceImpl(new URI("http://example.org/p")));
+    long g = session.localize(new URIReferenceImpl(new URI("http://example.org/g")));
+
+    Content content = new FileContent(file);
+    assertTrue(new NQuadsContentHandler().canParse(content));
+    NQuadsStatements statements = new NQuadsStatements(content, session);
+    assertEquals(7, statements.getRowCount());
+
+    statements.beforeFirst();
+    long subject = Statements.NONE;
+    for (int i = 0; i < 7; i++) {
+      assertTrue(statements.next());
+      if (i == 0) subject = statements.getSubject();
+      assertEquals(subject, statements.getSubject());
+      assertEquals(p, statements.getPredicate());
+      assertEquals(new LiteralImpl(Integer.toString(i)), session.globalize(statements.getObject()));
+      assertEquals(i % 2 == 0 ? Statements.NONE : g, statements.getGraph());
+    }
+    assertFalse(statements.next());
+    assertTrue(session.globalize(subject) instanceof BlankNode);
+    statements.close();
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.resolver;
+
+// Java 2 standard packages
+import java.net.URI;
+import java.util.*;
+
+// Third party packages
+import junit.framework.*;
+import org.jrdf.graph.Node;
+
+// Locally written packages
+import org.mulgara.query.Order;
+import org.mulgara.query.TuplesException;
+import org.mulgara.query.Variable;
+import org.mulgara.query.rdf.LiteralImpl;
+import org.mulgara.query.rdf.URIReferenceImpl;
+import org.mulgara.resolver.spi.GlobalizeException;
+import org.mulgara.resolver.spi.TestResolverSession;
+import org.mulgara.store.tuples.LiteralTuples;
+import org.mulgara.store.tuples.RowComparator;
+import org.mulgara.store.tuples.Tuples;
+
+/**
+ * Test case for {@link OrderByRowComparator} and its {@link SortKeyTable}.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public class OrderByRowComparatorUnitTest extends TestCase {
+
+  /** A node which the session globalizes to <code>null</code>. */
+  private static final long NO_VALUE = 999999;
+
+  /** The session for localizing and globalizing nodes. */
+  private TestResolverSession session;
+
+  /**
+   * Constructs a new test with the given name.
+   * @param name the name of the test
+   */
+  public OrderByRowComparatorUnitTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Hook for test runner to obtain a test suite from.
+   * @return The test suite
+   */
+  public static Test suite() {
+    TestSuite suite = new TestSuite();
+    suite.addTest(new OrderByRowComparatorUnitTest("testKeyTable"));
+    suite.addTest(new OrderByRowComparatorUnitTest("testAscending"));
+    suite.addTest(new OrderByRowComparatorUnitTest("testDescending"));
+    suite.addTest(new OrderByRowComparatorUnitTest("testSmallKeyTable"));
+    return suite;
+  }
+
+  /**
+   * Default text runner.
+   * @param args The command line arguments
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+
+  public void setUp() {
+    session = new TestResolverSession() {
+      public Node globalize(long node) throws GlobalizeException {
+        return node == NO_VALUE ? null : super.globalize(node);
+      }
+    };
+  }
+
+  /**
+   * Test adding, finding and comparing keys, including growing and clearing the table.
+   */
+  public void testKeyTable() {
+    SortKeyTable table = new SortKeyTable(5000);
+    for (int i = 1; i <= 3000; i++) {
+      assertEquals(-1, table.find(i * 7919L));
+      assertEquals(i - 1, table.add(i * 7919L, SortKeyTable.NUMBER, 3000 - i, null));
+    }
+    assertEquals(3000, table.size());
+    for (int i = 1; i <= 3000; i++) assertEquals(i - 1, table.find(i * 7919L));
+    assertTrue(table.compare(table.find(7919L), table.find(2 * 7919L)) > 0);
+
+    int text = table.add(-5, SortKeyTable.TEXT, 0, "a");
+    int none = table.add(-6, SortKeyTable.NONE, 0, null);
+    assertTrue(table.compare(0, text) < 0);
+    assertTrue(table.compare(text, none) < 0);
+    assertEquals(0, table.compare(text, text));
+
+    table.reserve(1000);
+    assertEquals(3002, table.size());
+    table.reserve(2000);
+    assertEquals(0, table.size());
+    assertEquals(-1, table.find(7919L));
+  }
+
+  /**
+   * Sort mixed values in ascending order. Nodes without a global value come
+   * after the others, and missing values come last.
+   */
+  public void testAscending() throws Exception {
+    long[][] rows = rows(new String[] { "b", "10", "?", "a", "9.5", "-2", "http://x/", null, "1.0", "1" });
+    sort(rows, true);
+    assertEquals(Arrays.asList(new String[] { "-2", "1.0", "1", "9.5", "10", "a", "b", "http://x/", "?", null }),
+                 values(rows));
+  }
+
+  /**
+   * Sort on a second column in descending order.
+   */
+  public void testDescending() throws Exception {
+    long[][] rows = new long[][] {
+        { node("1"), node("x") }, { node("2"), node("y") }, { node("3"), node("x") }, { node("4"), Tuples.UNBOUND } };
+    RowComparator comparator = comparator(new Order[] {
+        new Order(new Variable("b"), false), new Order(new Variable("a"), true) });
+    Arrays.sort(rows, adapt(comparator));
+    assertEquals(Arrays.asList(new String[] { "4", "2", "1", "3" }), values(rows));
+  }
+
+  /**
+   * Sort with a table that is too small to hold all of the keys.
+   */
+  public void testSmallKeyTable() throws Exception {
+    List<String> expected = new ArrayList<String>();
+    String[] values = new String[200];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = Integer.toString((i * 37) % 200);
+      expected.add(Integer.toString(i));
+    }
+    long[][] rows = rows(values);
+    System.setProperty(OrderByRowComparator.MAX_SORT_KEYS_PROPERTY, "16");
+    try {
+      sort(rows, true);
+    } finally {
+      System.clearProperty(OrderByRowComparator.MAX_SORT_KEYS_PROPERTY);
+    }
+    assertEquals(expected, values(rows));
+  }
+
+  /**
+   * Sorts single column rows.
+   * @param rows The rows to sort.
+   * @param ascending The direction to sort in.
+   */
+  private void sort(long[][] rows, boolean ascending) throws Exception {
+    Arrays.sort(rows, adapt(comparator(new Order[] { new Order(new Variable("a"), ascending) })));
+  }
+
+  /**
+   * Creates a comparator on two columns, named a and b.
+   * @param order The order to sort by.
+   */
+  private RowComparator comparator(Order[] order) throws Exception {
+    Tuples tuples = new LiteralTuples(new String[] { "a", "b" });
+    return new OrderByRowComparator(tuples, Arrays.asList(order), session);
+  }
+
+  /**
+   * Creates single column rows with literal values. URIs are recognised by their scheme.
+   * @param values The values for the rows. <code>null</code> for an unbound value.
+   */
+  private long[][] rows(String[] values) throws Exception {
+    long[][] rows = new long[values.length][];
+    for (int i = 0; i < values.length; i++) rows[i] = new long[] { node(values[i]), Tuples.UNBOUND };
+    return rows;
+  }
+
+  /**
+   * Localizes a value.
+   * @param value The value, <code>?</code> for a node without a global value,
+   *   or <code>null</code> for an unbound value.
+   */
+  private long node(String value) throws Exception {
+    if (value == null) return Tuples.UNBOUND;
+    if (value.equals("?")) return NO_VALUE;
+    if (value.startsWith("http:")) return session.localize(new URIReferenceImpl(new URI(value)));
+    return session.localize(new LiteralImpl(value));
+  }
+
+  /**
+   * Gets the values in the first column of some rows.
+   * @param rows The rows to read.
+   */
+  private List<String> values(long[][] rows) throws Exception {
+    List<String> result = new ArrayList<String>();
+    for (long[] row: rows) {
+      if (row[0] == Tuples.UNBOUND) {
+        result.add(null);
+      } else {
+        Node n = session.globalize(row[0]);
+        if (n == null) result.add("?");
+        else result.add(n instanceof LiteralImpl ? ((LiteralImpl)n).getLexicalForm() : ((URIReferenceImpl)n).getURI().toString());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Wraps a row comparator for sorting arrays.
+   */
+  private static Comparator<long[]> adapt(final RowComparator comparator) {
+    return new Comparator<long[]>() {
+      public int compare(long[] first, long[] second) {
+        try {
+          return comparator.compare(first, second);
+        } catch (TuplesException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+  }
+}
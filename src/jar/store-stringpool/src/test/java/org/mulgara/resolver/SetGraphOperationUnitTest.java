@@ -0,0 +1,279 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.resolver;
+
+// Java 2 standard packages
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.*;
+
+// Third party packages
+import junit.framework.*;
+
+// Locally written packages
+import org.mulgara.content.ContentHandlerManager;
+import org.mulgara.content.nquads.NQuadsContentHandler;
+import org.mulgara.query.ConstraintImpl;
+import org.mulgara.query.LocalNode;
+import org.mulgara.query.rdf.LiteralImpl;
+import org.mulgara.query.rdf.URIReferenceImpl;
+import org.mulgara.resolver.spi.Resolution;
+import org.mulgara.resolver.spi.Resolver;
+import org.mulgara.resolver.spi.ResolverFactory;
+import org.mulgara.resolver.spi.Statements;
+import org.mulgara.resolver.spi.SystemResolver;
+import org.mulgara.resolver.spi.TestResolverSession;
+
+/**
+ * Test case for loading an N-Quads document with {@link SetGraphOperation}.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public class SetGraphOperationUnitTest extends TestCase {
+
+  /** The URI of the database. */
+  private static final URI DATABASE = URI.create("rmi://localhost/server1");
+
+  /** The graph the document is loaded into. */
+  private static final URI DEST = URI.create("rmi://localhost/server1#dest");
+
+  /** A named graph which already exists. */
+  private static final URI G1 = URI.create("rmi://localhost/server1#g1");
+
+  /** A named graph which does not exist. */
+  private static final URI G2 = URI.create("rmi://localhost/server1#g2");
+
+  /** The nodes of the test. */
+  private TestResolverSession session;
+
+  /** The graphs which exist. */
+  private Set<Long> graphs;
+
+  /** The graphs created by the operation. */
+  private List<Long> created;
+
+  /** The objects of the statements written to each graph, in order. */
+  private Map<Long,List<Object>> written;
+
+  /** The number of writes to each graph. */
+  private Map<Long,Integer> writes;
+
+  /**
+   * Constructs a new test with the given name.
+   * @param name the name of the test
+   */
+  public SetGraphOperationUnitTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Hook for test runner to obtain a test suite from.
+   * @return The test suite
+   */
+  public static Test suite() {
+    TestSuite suite = new TestSuite();
+    suite.addTest(new SetGraphOperationUnitTest("testNamedGraphs"));
+    return suite;
+  }
+
+  /**
+   * Default text runner.
+   * @param args The command line arguments
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+
+  public void setUp() {
+    session = new TestResolverSession();
+    graphs = new HashSet<Long>();
+    created = new ArrayList<Long>();
+    written = new HashMap<Long,List<Object>>();
+    writes = new HashMap<Long,Integer>();
+  }
+
+  /**
+   * Statements are written to the default graph and to each named graph in
+   * one batch, and the named graphs which don't exist are created.
+   * @throws Exception if the test fails unexpectedly
+   */
+  public void testNamedGraphs() throws Exception {
+    StringBuilder document = new StringBuilder();
+    String[] graphLabels = { "", " <" + G1 + ">", " <" + G2 + ">", " _:g" };
+    for (int i = 0; i < 8; i++) {
+      document.append("<http://example.org/s> <http://example.org/p> \"" + i + "\"" + graphLabels[i % 4] + " .\n");
+    }
+
+    DatabaseMetadataImpl metadata = new DatabaseMetadataImpl(DATABASE, Collections.<String>emptySet(),
+        null, URI.create(DATABASE + "#"), URI.create("http://www.w3.org/1999/02/22-rdf-syntax-ns#type"),
+        URI.create("http://mulgara.org/mulgara#Model"), URI.create("sys:default"));
+    metadata.initializeSystemNodes(node(metadata.getSystemModelURI()), node(metadata.getRdfTypeURI()),
+                                   node(metadata.getSystemModelTypeURI()));
+    long dest = node(DEST);
+    long g1 = node(G1);
+    long g2 = node(G2);
+    graphs.add(dest);
+    graphs.add(g1);
+
+    SetGraphOperation operation = new SetGraphOperation(URI.create("file:/tmp/test.nq"), DEST,
+        new ByteArrayInputStream(document.toString().getBytes("UTF-8")), null, contentHandlers(), null);
+    assertTrue(operation.preExecute());
+    operation.execute(operationContext(), systemResolver(), metadata);
+
+    assertEquals(8, operation.getStatementCount());
+    assertEquals(2, created.size());
+    assertEquals(g2, (long)created.get(0));
+    URI blankGraph = ((URIReferenceImpl)session.globalize(created.get(1))).getURI();
+    assertEquals(DATABASE.getSchemeSpecificPart(), blankGraph.getSchemeSpecificPart());
+    assertNotNull(blankGraph.getFragment());
+
+    long[] expected = { dest, g1, g2, created.get(1) };
+    for (int g = 0; g < expected.length; g++) {
+      assertEquals(1, (int)writes.get(expected[g]));
+      assertEquals(Arrays.asList(new LiteralImpl(Integer.toString(g)), new LiteralImpl(Integer.toString(g + 4))),
+                   written.get(expected[g]));
+    }
+  }
+
+  /**
+   * @return the node of a URI
+   */
+  private long node(URI uri) throws Exception {
+    return session.localize(new URIReferenceImpl(uri));
+  }
+
+  /**
+   * @return a content handler manager which parses everything as N-Quads
+   */
+  private ContentHandlerManager contentHandlers() {
+    return proxy(ContentHandlerManager.class, new Handler() {
+      Object invoke(String method, Object[] args) {
+        if (method.equals("getContentHandler")) return new NQuadsContentHandler();
+        return null;
+      }
+    });
+  }
+
+  /**
+   * @return an operation context for the resolver which records the statements written
+   */
+  private OperationContext operationContext() {
+    final Resolver resolver = resolver();
+    final ResolverFactory factory = proxy(ResolverFactory.class, new Handler());
+    return proxy(OperationContext.class, new Handler() {
+      Object invoke(String method, Object[] args) {
+        if (method.equals("getCanonicalModel")) return args[0];
+        if (method.equals("findModelResolverFactory") || method.equals("findModelTypeResolverFactory")) return factory;
+        if (method.equals("obtainResolver")) return resolver;
+        if (method.equals("getSecurityAdapterList")) return Collections.emptyList();
+        throw new UnsupportedOperationException(method);
+      }
+    });
+  }
+
+  /**
+   * @return a resolver which records the graphs created and the statements written
+   */
+  private Resolver resolver() {
+    return proxy(Resolver.class, new Handler() {
+      Object invoke(String method, Object[] args) throws Exception {
+        long graph = (Long)args[0];
+        if (method.equals("createModel")) {
+          assertTrue(graphs.add(graph));
+          created.add(graph);
+          return null;
+        }
+        if (!method.equals("modifyModel")) throw new UnsupportedOperationException(method);
+
+        assertTrue(graphs.contains(graph));
+        Integer count = writes.get(graph);
+        writes.put(graph, count == null ? 1 : count + 1);
+        List<Object> objects = written.get(graph);
+        if (objects == null) written.put(graph, objects = new ArrayList<Object>());
+        Statements statements = (Statements)args[1];
+        statements.beforeFirst();
+        while (statements.next()) objects.add(session.globalize(statements.getObject()));
+        return null;
+      }
+    });
+  }
+
+  /**
+   * @return a system resolver which knows the nodes of the session and the graphs which exist
+   */
+  private SystemResolver systemResolver() {
+    return proxy(SystemResolver.class, new Handler() {
+      Object invoke(String method, Object[] args) throws Exception {
+        if (method.equals("resolve")) {
+          long graph = ((LocalNode)((ConstraintImpl)args[0]).getElement(0)).getValue();
+          return resolution(graphs.contains(graph));
+        }
+        return TestResolverSession.class.getMethod(method, types(args)).invoke(session, args);
+      }
+    });
+  }
+
+  /**
+   * @param exists whether the graph exists
+   * @return the types of a graph
+   */
+  private Resolution resolution(final boolean exists) {
+    return proxy(Resolution.class, new Handler() {
+      boolean before = true;
+      Object invoke(String method, Object[] args) throws Exception {
+        if (method.equals("next")) {
+          boolean next = before && exists;
+          before = false;
+          return next;
+        }
+        if (method.equals("getColumnValue")) return node(URI.create("http://mulgara.org/mulgara#Model"));
+        return null;
+      }
+    });
+  }
+
+  /**
+   * @return the types to look up a method of the session with
+   */
+  private static Class<?>[] types(Object[] args) {
+    Class<?>[] types = new Class<?>[args.length];
+    for (int i = 0; i < args.length; i++) {
+      types[i] = args[i] instanceof Long ? long.class : args[i] instanceof org.jrdf.graph.Node ? org.jrdf.graph.Node.class : args[i].getClass();
+    }
+    return types;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T proxy(Class<T> type, Handler handler) {
+    return (T)Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+  }
+
+  /**
+   * Handles the methods of a fake, returning defaults for the methods it doesn't handle.
+   */
+  private static class Handler implements InvocationHandler {
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      Object result = invoke(method.getName(), args);
+      if (result == null && method.getReturnType() == boolean.class) return false;
+      return result;
+    }
+
+    Object invoke(String method, Object[] args) throws Exception {
+      return null;
+    }
+  }
+}
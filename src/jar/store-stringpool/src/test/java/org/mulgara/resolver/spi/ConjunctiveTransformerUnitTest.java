@@ -58,6 +58,7 @@ import org.mulgara.query.ConstraintExpression;
 import org.mulgara.query.ConstraintConjunction;
 import org.mulgara.query.ConstraintDisjunction;
 import org.mulgara.query.ConstraintOperation;
+import org.mulgara.query.Query;
 import org.mulgara.query.QueryException;
 import org.mulgara.query.Variable;
 import org.mulgara.query.rdf.URIReferenceImpl;
@@ -618,6 +619,10 @@ public class ConjunctiveTransformerUnitTest extends TestCase {
         modified = true;
       }
     }
+
+    public Query getQuery() {
+      return null;
+    }
   }
 
   @SuppressWarnings("serial")
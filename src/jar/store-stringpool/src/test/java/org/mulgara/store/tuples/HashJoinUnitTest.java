@@ -0,0 +1,303 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.store.tuples;
+
+// Java 2 standard packages
+import java.util.*;
+
+// Third party packages
+import junit.framework.*;
+
+// Locally written packages
+import org.mulgara.query.Variable;
+
+/**
+ * Test case for {@link HashJoin}.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public class HashJoinUnitTest extends TestCase {
+
+  final Variable x = new Variable("x");
+  final Variable y = new Variable("y");
+  final Variable z = new Variable("z");
+
+  /**
+   * Constructs a new test with the given name.
+   * @param name the name of the test
+   */
+  public HashJoinUnitTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Hook for test runner to obtain a test suite from.
+   * @return The test suite
+   */
+  public static Test suite() {
+    TestSuite testSuite = new TestSuite();
+    testSuite.addTest(new HashJoinUnitTest("testSimpleJoin"));
+    testSuite.addTest(new HashJoinUnitTest("testBuildOnRight"));
+    testSuite.addTest(new HashJoinUnitTest("testEmptyJoin"));
+    testSuite.addTest(new HashJoinUnitTest("testPrefix"));
+    testSuite.addTest(new HashJoinUnitTest("testClone"));
+    testSuite.addTest(new HashJoinUnitTest("testPartitioned"));
+    testSuite.addTest(new HashJoinUnitTest("testUnboundKey"));
+    testSuite.addTest(new HashJoinUnitTest("testJoinSelection"));
+    testSuite.addTest(new HashJoinUnitTest("testUnboundSharedVariable"));
+    return testSuite;
+  }
+
+  /**
+   * Default text runner.
+   * @param args The command line arguments
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+
+  /**
+   * Join a small lhs to a larger rhs, building on the lhs and returning rows in rhs order.
+   * @throws Exception if query fails when it should have succeeded
+   */
+  public void testSimpleJoin() throws Exception {
+    Tuples lhs = LiteralTuples.create(new String[] { "x", "y" }, new long[][] {
+        { 1, 2 }, { 3, 4 }, { 5, 6 } });
+    Tuples rhs = LiteralTuples.create(new String[] { "z", "y" }, new long[][] {
+        { 7, 2 }, { 8, 6 }, { 9, 2 }, { 10, 11 } });
+
+    Tuples joined = new HashJoin(lhs, rhs);
+    TuplesTestingUtil.testVariables(new Variable[] { x, y, z }, joined.getVariables());
+    joined.beforeFirst();
+    TuplesTestingUtil.testTuplesRow(joined, new long[] { 1, 2, 7 });
+    TuplesTestingUtil.testTuplesRow(joined, new long[] { 5, 6, 8 });
+    TuplesTestingUtil.testTuplesRow(joined, new long[] { 1, 2, 9 });
+    assertFalse(joined.next());
+    assertFalse(joined.next());
+
+    TuplesTestingUtil.closeTuples(new Tuples[] { joined, lhs, rhs });
+  }
+
+  /**
+   * Join a larger lhs to a small rhs, building on the rhs.
+   * @throws Exception if query fails when it should have succeeded
+   */
+  public void testBuildOnRight() throws Exception {
+    Tuples lhs = LiteralTuples.create(new String[] { "x", "y" }, new long[][] {
+        { 1, 2 }, { 3, 4 }, { 5, 2 }, { 7, 8 } });
+    Tuples rhs = LiteralTuples.create(new String[] { "y", "z" }, new long[][] {
+        { 2, 10 }, { 4, 11 } });
+
+    Tuples joined = new HashJoin(lhs, rhs);
+    TuplesTestingUtil.testVariables(new Variable[] { x, y, z }, joined.getVariables());
+    assertEquals(Arrays.asList(new String[] { "[1, 2, 10]", "[3, 4, 11]", "[5, 2, 10]" }), rows(joined));
+
+    TuplesTestingUtil.closeTuples(new Tuples[] { joined, lhs, rhs });
+  }
+
+  /**
+   * Join operands with no matching rows.
+   * @throws Exception if query fails when it should have succeeded
+   */
+  public void testEmptyJoin() throws Exception {
+    Tuples lhs = LiteralTuples.create(new String[] { "x", "y" }, new long[][] { { 1, 2 }, { 3, 4 } });
+    Tuples rhs = LiteralTuples.create(new String[] { "y" }, new long[][] { { 5 } });
+    Tuples empty = LiteralTuples.create(new String[] { "y" }, new long[][] {});
+
+    Tuples joined = new HashJoin(lhs, rhs);
+    assertTrue(rows(joined).isEmpty());
+    Tuples joinedEmpty = new HashJoin(lhs, empty);
+    assertTrue(rows(joinedEmpty).isEmpty());
+
+    TuplesTestingUtil.closeTuples(new Tuples[] { joined, joinedEmpty, lhs, rhs, empty });
+  }
+
+  /**
+   * Restrict a join with a prefix.
+   * @throws Exception if query fails when it should have succeeded
+   */
+  public void testPrefix() throws Exception {
+    Tuples lhs = LiteralTuples.create(new String[] { "x", "y" }, new long[][] {
+        { 1, 2 }, { 1, 4 }, { 3, 2 } });
+    Tuples rhs = LiteralTuples.create(new String[] { "y", "z" }, new long[][] {
+        { 2, 5 }, { 2, 6 }, { 4, 7 }, { 4, 8 } });
+
+    Tuples joined = new HashJoin(lhs, rhs);
+    joined.beforeFirst(new long[] { 1 }, 0);
+    TuplesTestingUtil.testTuplesRow(joined, new long[] { 1, 2, 5 });
+    TuplesTestingUtil.testTuplesRow(joined, new long[] { 1, 2, 6 });
+    TuplesTestingUtil.testTuplesRow(joined, new long[] { 1, 4, 7 });
+    TuplesTestingUtil.testTuplesRow(joined, new long[] { 1, 4, 8 });
+    assertFalse(joined.next());
+
+    joined.beforeFirst(new long[] { 3, 2, 6 }, 0);
+    TuplesTestingUtil.testTuplesRow(joined, new long[] { 3, 2, 6 });
+    assertFalse(joined.next());
+
+    TuplesTestingUtil.closeTuples(new Tuples[] { joined, lhs, rhs });
+  }
+
+  /**
+   * Clone a join part way through, and check both copies continue independently.
+   * @throws Exception if query fails when it should have succeeded
+   */
+  public void testClone() throws Exception {
+    Tuples lhs = LiteralTuples.create(new String[] { "x", "y" }, new long[][] {
+        { 1, 2 }, { 3, 4 } });
+    Tuples rhs = LiteralTuples.create(new String[] { "y", "z" }, new long[][] {
+        { 2, 5 }, { 4, 6 }, { 4, 7 } });
+
+    Tuples joined = new HashJoin(lhs, rhs);
+    joined.beforeFirst();
+    TuplesTestingUtil.testTuplesRow(joined, new long[] { 1, 2, 5 });
+    Tuples cloned = (Tuples)joined.clone();
+    TuplesTestingUtil.testTuplesRow(joined, new long[] { 3, 4, 6 });
+    TuplesTestingUtil.testTuplesRow(cloned, new long[] { 3, 4, 6 });
+    TuplesTestingUtil.testTuplesRow(cloned, new long[] { 3, 4, 7 });
+    assertFalse(cloned.next());
+    TuplesTestingUtil.testTuplesRow(joined, new long[] { 3, 4, 7 });
+    assertFalse(joined.next());
+
+    TuplesTestingUtil.closeTuples(new Tuples[] { joined, cloned, lhs, rhs });
+  }
+
+  /**
+   * Join with a memory budget small enough to force partitioning to disk.
+   * @throws Exception if query fails when it should have succeeded
+   */
+  public void testPartitioned() throws Exception {
+    final int size = 5000;
+    LiteralTuples lhs = new LiteralTuples(new Variable[] { x, y });
+    LiteralTuples rhs = new LiteralTuples(new Variable[] { y, z });
+    for (int i = 1; i <= size; i++) {
+      lhs.appendTuple(new long[] { i, (i * 7919L) % size + 1 });
+      if (i % 2 == 0) rhs.appendTuple(new long[] { i, i + size });
+    }
+    rhs.appendTuple(new long[] { 2, 1 });
+
+    Tuples inMemory = new HashJoin(lhs, rhs);
+    Tuples partitioned = new HashJoin(lhs, rhs, 1024);
+    List<String> expected = rows(inMemory);
+    List<String> actual = rows(partitioned);
+    assertTrue(partitioned instanceof HashJoin && ((HashJoin)partitioned).state.isPartitioned());
+    assertEquals(size / 2 + 1, expected.size());
+    Collections.sort(expected);
+    Collections.sort(actual);
+    assertEquals(expected, actual);
+
+    // clones share the partitions
+    Tuples cloned = (Tuples)partitioned.clone();
+    partitioned.close();
+    assertEquals(size / 2 + 1, rows(cloned).size());
+
+    TuplesTestingUtil.closeTuples(new Tuples[] { inMemory, cloned, lhs, rhs });
+  }
+
+  /**
+   * A variable that may be unbound can't be used for a hash join.
+   * @throws Exception if query fails when it should have succeeded
+   */
+  public void testUnboundKey() throws Exception {
+    Tuples lhs = LiteralTuples.create(new String[] { "x", "y" }, new long[][] { { 1, Tuples.UNBOUND } });
+    Tuples rhs = LiteralTuples.create(new String[] { "y" }, new long[][] { { 2 } });
+    try {
+      new HashJoin(lhs, rhs);
+      fail("Hash join on an unbound variable should fail");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    TuplesTestingUtil.closeTuples(new Tuples[] { lhs, rhs });
+  }
+
+  /**
+   * Check that {@link TuplesOperations#join(Tuples, Tuples)} selects a hash join for
+   * large unsorted operands, and gets the same result as a nested join.
+   * @throws Exception if query fails when it should have succeeded
+   */
+  public void testJoinSelection() throws Exception {
+    LiteralTuples lhs = new LiteralTuples(new Variable[] { x, y });
+    LiteralTuples rhs = new LiteralTuples(new Variable[] { z, y });
+    for (int i = 1; i <= 200; i++) {
+      lhs.appendTuple(new long[] { i, i % 50 + 1 });
+      rhs.appendTuple(new long[] { i + 1000, i % 70 + 1 });
+    }
+
+    Tuples nested = TuplesOperations.join(lhs, rhs);
+    assertTrue(nested instanceof UnboundJoin);
+    long threshold = TuplesOperations.setHashJoinThreshold(100);
+    Tuples hashed;
+    try {
+      hashed = TuplesOperations.join(lhs, rhs);
+    } finally {
+      TuplesOperations.setHashJoinThreshold(threshold);
+    }
+    assertTrue(hashed instanceof HashJoin);
+
+    List<String> expected = rows(nested);
+    List<String> actual = rows(hashed);
+    Collections.sort(expected);
+    Collections.sort(actual);
+    assertEquals(expected, actual);
+
+    TuplesTestingUtil.closeTuples(new Tuples[] { nested, hashed, lhs, rhs });
+  }
+
+  /**
+   * Check that {@link TuplesOperations#join(Tuples, Tuples)} does not select a hash join
+   * when the operands share a bound variable and also a variable that may be unbound.
+   * @throws Exception if query fails when it should have succeeded
+   */
+  public void testUnboundSharedVariable() throws Exception {
+    LiteralTuples lhs = new LiteralTuples(new Variable[] { x, y });
+    LiteralTuples rhs = new LiteralTuples(new Variable[] { x, y, z });
+    for (int i = 1; i <= 200; i++) {
+      lhs.appendTuple(new long[] { i % 50 + 1, i % 3 == 0 ? Tuples.UNBOUND : i });
+      rhs.appendTuple(new long[] { i % 70 + 1, i % 4 == 0 ? Tuples.UNBOUND : i, i + 1000 });
+    }
+
+    Tuples nested = TuplesOperations.join(lhs, rhs);
+    long threshold = TuplesOperations.setHashJoinThreshold(100);
+    Tuples joined;
+    try {
+      joined = TuplesOperations.join(lhs, rhs);
+    } finally {
+      TuplesOperations.setHashJoinThreshold(threshold);
+    }
+    assertFalse(joined instanceof HashJoin);
+
+    List<String> expected = rows(nested);
+    List<String> actual = rows(joined);
+    Collections.sort(expected);
+    Collections.sort(actual);
+    assertEquals(expected, actual);
+
+    TuplesTestingUtil.closeTuples(new Tuples[] { nested, joined, lhs, rhs });
+  }
+
+  /**
+   * Read all the rows of a tuples, with the columns in the order of the tuples variables.
+   * @param tuples The tuples to read.
+   * @return A list of the rows, each formatted as a string.
+   */
+  private List<String> rows(Tuples tuples) throws Exception {
+    List<String> result = new ArrayList<String>();
+    tuples.beforeFirst();
+    while (tuples.next()) {
+      long[] row = new long[tuples.getNumberOfVariables()];
+      for (int c = 0; c < row.length; c++) row[c] = tuples.getColumnValue(c);
+      result.add(Arrays.toString(row));
+    }
+    return result;
+  }
+}
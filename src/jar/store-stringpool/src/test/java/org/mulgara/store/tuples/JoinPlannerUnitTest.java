@@ -0,0 +1,199 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.store.tuples;
+
+// Java 2 standard packages
+import java.util.*;
+
+// Third party packages
+import junit.framework.*;
+
+// Locally written packages
+import org.mulgara.query.TuplesException;
+import org.mulgara.query.Variable;
+
+/**
+ * Test case for {@link JoinPlanner}.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public class JoinPlannerUnitTest extends TestCase {
+
+  final Variable x = new Variable("x");
+  final Variable y = new Variable("y");
+  final Variable z = new Variable("z");
+
+  /**
+   * Constructs a new test with the given name.
+   * @param name the name of the test
+   */
+  public JoinPlannerUnitTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Hook for test runner to obtain a test suite from.
+   * @return The test suite
+   */
+  public static Test suite() {
+    TestSuite testSuite = new TestSuite();
+    testSuite.addTest(new JoinPlannerUnitTest("testEvenOrder"));
+    testSuite.addTest(new JoinPlannerUnitTest("testStatisticsOrder"));
+    testSuite.addTest(new JoinPlannerUnitTest("testGreedyOrder"));
+    testSuite.addTest(new JoinPlannerUnitTest("testMandatoryBinding"));
+    testSuite.addTest(new JoinPlannerUnitTest("testCartesianProduct"));
+    testSuite.addTest(new JoinPlannerUnitTest("testDpLimit"));
+    return testSuite;
+  }
+
+  /**
+   * Default text runner.
+   * @param args The command line arguments
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+
+  /**
+   * Without statistics, an operand that is expected to match fewer rows for each binding is preferred.
+   * @throws Exception if query fails when it should have succeeded
+   */
+  public void testEvenOrder() throws Exception {
+    Tuples s = new EstimatedTuples(new Variable[] { x }, 10, null);
+    Tuples a = new EstimatedTuples(new Variable[] { x, y }, 10000, null);
+    Tuples b = new EstimatedTuples(new Variable[] { x, z }, 20000, null);
+    assertEquals(Arrays.asList(s, a, b), order(10, b, a, s));
+  }
+
+  /**
+   * With statistics, an operand whose shared variable is more selective is joined first,
+   * even when it has more rows.
+   * @throws Exception if query fails when it should have succeeded
+   */
+  public void testStatisticsOrder() throws Exception {
+    Tuples s = new EstimatedTuples(new Variable[] { x }, 10, null);
+    Tuples a = new EstimatedTuples(new Variable[] { x, y }, 10000, new long[] { 10, 10000 });
+    Tuples b = new EstimatedTuples(new Variable[] { x, z }, 20000, new long[] { 20000, 20000 });
+    assertEquals(Arrays.asList(s, b, a), order(10, a, b, s));
+  }
+
+  /**
+   * Large joins are ordered greedily, which finds the same order for a simple join.
+   * @throws Exception if query fails when it should have succeeded
+   */
+  public void testGreedyOrder() throws Exception {
+    Tuples s = new EstimatedTuples(new Variable[] { x }, 10, null);
+    Tuples a = new EstimatedTuples(new Variable[] { x, y }, 10000, new long[] { 10, 10000 });
+    Tuples b = new EstimatedTuples(new Variable[] { x, z }, 20000, new long[] { 20000, 20000 });
+    assertEquals(Arrays.asList(s, b, a), order(0, a, b, s));
+  }
+
+  /**
+   * An operand is not ordered before the variables it needs are bound.
+   * @throws Exception if query fails when it should have succeeded
+   */
+  public void testMandatoryBinding() throws Exception {
+    EstimatedTuples m = new EstimatedTuples(new Variable[] { x, y }, 1, null);
+    m.mandatory = new MandatoryBindingAnnotation(new Variable[] { y });
+    Tuples a = new EstimatedTuples(new Variable[] { y, z }, 1000, null);
+    assertEquals(Arrays.asList(a, m), order(10, m, a));
+    assertEquals(Arrays.asList(a, m), order(0, m, a));
+
+    EstimatedTuples n = new EstimatedTuples(new Variable[] { z }, 1, null);
+    n.mandatory = new MandatoryBindingAnnotation(new Variable[] { x });
+    try {
+      order(10, n, a);
+      fail("Ordered an operand without its mandatory bindings");
+    } catch (TuplesException e) { }
+    try {
+      order(0, n, a);
+      fail("Ordered an operand without its mandatory bindings");
+    } catch (TuplesException e) { }
+  }
+
+  /**
+   * Operands that share no variables are not joined until variables are shared.
+   * @throws Exception if query fails when it should have succeeded
+   */
+  public void testCartesianProduct() throws Exception {
+    Tuples a = new EstimatedTuples(new Variable[] { x }, 100, null);
+    Tuples b = new EstimatedTuples(new Variable[] { y }, 50, null);
+    Tuples c = new EstimatedTuples(new Variable[] { x, y }, 200, null);
+    List<Tuples> ordered = order(10, a, b, c);
+    assertFalse(Arrays.asList(a, b).equals(ordered.subList(0, 2)));
+    assertFalse(Arrays.asList(b, a).equals(ordered.subList(0, 2)));
+  }
+
+  /**
+   * The number of operands ordered exhaustively can't be configured beyond the maximum.
+   */
+  public void testDpLimit() {
+    try {
+      System.setProperty(JoinPlanner.DP_LIMIT_PROP, "8");
+      assertEquals(8, JoinPlanner.getDpLimit());
+      System.setProperty(JoinPlanner.DP_LIMIT_PROP, "20");
+      assertEquals(JoinPlanner.MAX_DP_LIMIT, JoinPlanner.getDpLimit());
+      System.setProperty(JoinPlanner.DP_LIMIT_PROP, "many");
+      assertEquals(10, JoinPlanner.getDpLimit());
+    } finally {
+      System.clearProperty(JoinPlanner.DP_LIMIT_PROP);
+    }
+  }
+
+  /**
+   * Orders some operands.
+   * @param exhaustiveLimit The most operands to order exhaustively.
+   * @param operands The operands.
+   * @return The ordered operands.
+   */
+  private List<Tuples> order(int exhaustiveLimit, Tuples... operands) throws TuplesException {
+    return new JoinPlanner(Arrays.asList(operands), 10000, exhaustiveLimit).order();
+  }
+
+  /**
+   * An empty tuples, with an expected row count and statistics for planning.
+   */
+  static class EstimatedTuples extends LiteralTuples {
+
+    final long rows;
+    final long[] distinct;
+    MandatoryBindingAnnotation mandatory = null;
+
+    EstimatedTuples(Variable[] vars, long rows, long[] distinct) {
+      super(vars);
+      this.rows = rows;
+      this.distinct = distinct;
+    }
+
+    public long getRowExpectedCount() {
+      return rows;
+    }
+
+    public Annotation getAnnotation(Class<? extends Annotation> annotationClass) {
+      if (annotationClass.equals(MandatoryBindingAnnotation.class)) return mandatory;
+      if (annotationClass.equals(StatisticsAnnotation.class) && distinct != null) {
+        return new StatisticsAnnotation() {
+          public long getDistinctCount(int column) {
+            return distinct[column];
+          }
+        };
+      }
+      return null;
+    }
+
+    public String toString() {
+      return Arrays.asList(getVariables()) + " " + rows;
+    }
+  }
+}
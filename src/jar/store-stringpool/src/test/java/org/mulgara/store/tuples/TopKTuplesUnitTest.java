@@ -0,0 +1,236 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.store.tuples;
+
+// Java 2 standard packages
+import java.util.*;
+
+// Third party packages
+import junit.framework.*;
+
+// Locally written packages
+import org.mulgara.query.TuplesException;
+
+/**
+ * Test case for {@link TopKTuples}.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public class TopKTuplesUnitTest extends TestCase {
+
+  /** Orders rows by descending y, then ascending x. */
+  private final RowComparator comparator = new DescendingComparator();
+
+  /**
+   * Constructs a new test with the given name.
+   * @param name the name of the test
+   */
+  public TopKTuplesUnitTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Hook for test runner to obtain a test suite from.
+   * @return The test suite
+   */
+  public static Test suite() {
+    TestSuite testSuite = new TestSuite();
+    testSuite.addTest(new TopKTuplesUnitTest("testTopRows"));
+    testSuite.addTest(new TopKTuplesUnitTest("testFewRows"));
+    testSuite.addTest(new TopKTuplesUnitTest("testTies"));
+    testSuite.addTest(new TopKTuplesUnitTest("testPrefix"));
+    testSuite.addTest(new TopKTuplesUnitTest("testSortSelection"));
+    return testSuite;
+  }
+
+  /**
+   * Default text runner.
+   * @param args The command line arguments
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+
+  /**
+   * Compare the first rows against a full sort of random rows.
+   * @throws Exception if query fails when it should have succeeded
+   */
+  public void testTopRows() throws Exception {
+    Random random = new Random(42);
+    long[][] data = new long[2000][];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = new long[] { i + 1, random.nextInt(500) + 1 };
+    }
+    Tuples tuples = LiteralTuples.create(new String[] { "x", "y" }, data);
+
+    List<String> expected = sorted(data);
+    for (int k: new int[] { 1, 7, 100, 1999 }) {
+      Tuples top = new TopKTuples(tuples, comparator, k);
+      assertEquals(k, top.getRowCount());
+      assertEquals(expected.subList(0, k), rows(top));
+      assertSame(comparator, top.getComparator());
+      assertTrue(top.isMaterialized());
+      top.close();
+    }
+    tuples.close();
+  }
+
+  /**
+   * Keep all of the rows when there are fewer than requested, and none when none are requested.
+   * @throws Exception if query fails when it should have succeeded
+   */
+  public void testFewRows() throws Exception {
+    long[][] data = new long[][] { { 1, 3 }, { 2, 9 }, { 3, Tuples.UNBOUND } };
+    Tuples tuples = LiteralTuples.create(new String[] { "x", "y" }, data);
+
+    Tuples top = new TopKTuples(tuples, comparator, 10);
+    assertEquals(Arrays.asList(new String[] { "[2, 9]", "[1, 3]", "[3, 0]" }), rows(top));
+    assertFalse(top.isColumnEverUnbound(0));
+    assertTrue(top.isColumnEverUnbound(1));
+    top.close();
+
+    Tuples none = new TopKTuples(tuples, comparator, 0);
+    assertEquals(0, none.getRowCount());
+    assertTrue(rows(none).isEmpty());
+    assertEquals(2, none.getNumberOfVariables());
+    none.close();
+    tuples.close();
+  }
+
+  /**
+   * Rows that compare equally are kept in the order of the operand.
+   * @throws Exception if query fails when it should have succeeded
+   */
+  public void testTies() throws Exception {
+    RowComparator byY = new RowComparator() {
+      public int compare(Tuples first, Tuples second) { throw new UnsupportedOperationException(); }
+      public int compare(long[] array, Tuples tuples) { throw new UnsupportedOperationException(); }
+      public int compare(long[] first, long[] second) {
+        return first[1] < second[1] ? -1 : (first[1] > second[1] ? 1 : 0);
+      }
+    };
+    Tuples tuples = LiteralTuples.create(new String[] { "x", "y" }, new long[][] {
+        { 1, 5 }, { 2, 1 }, { 3, 5 }, { 4, 5 }, { 5, 2 }, { 6, 5 } });
+
+    Tuples top = new TopKTuples(tuples, byY, 4);
+    assertEquals(Arrays.asList(new String[] { "[2, 1]", "[5, 2]", "[1, 5]", "[3, 5]" }), rows(top));
+    top.close();
+    tuples.close();
+  }
+
+  /**
+   * Restrict the rows with a prefix.
+   * @throws Exception if query fails when it should have succeeded
+   */
+  public void testPrefix() throws Exception {
+    Tuples tuples = LiteralTuples.create(new String[] { "x", "y" }, new long[][] {
+        { 1, 2 }, { 2, 8 }, { 1, 6 }, { 3, 4 }, { 1, 9 } });
+
+    Tuples top = new TopKTuples(tuples, comparator, 4);
+    top.beforeFirst(new long[] { 1 }, 0);
+    TuplesTestingUtil.testTuplesRow(top, new long[] { 1, 9 });
+    TuplesTestingUtil.testTuplesRow(top, new long[] { 1, 6 });
+    assertFalse(top.next());
+
+    Tuples copy = (Tuples)top.clone();
+    assertEquals(Arrays.asList(new String[] { "[1, 9]", "[2, 8]", "[1, 6]", "[3, 4]" }), rows(copy));
+    TuplesTestingUtil.closeTuples(new Tuples[] { copy, top, tuples });
+  }
+
+  /**
+   * Check when a limited sort keeps only the first rows.
+   * @throws Exception if query fails when it should have succeeded
+   */
+  public void testSortSelection() throws Exception {
+    Tuples tuples = LiteralTuples.create(new String[] { "x", "y" }, new long[][] {
+        { 1, 2 }, { 2, 8 }, { 3, 6 } });
+
+    Tuples top = TuplesOperations.sort(tuples, comparator, 2);
+    assertTrue(top instanceof TopKTuples);
+    assertEquals(Arrays.asList(new String[] { "[2, 8]", "[3, 6]" }), rows(top));
+
+    // already in order, so the tuples is not read again
+    Tuples ordered = TuplesOperations.sort(top, comparator, 1);
+    assertEquals(rows(top), rows(ordered));
+    TuplesTestingUtil.closeTuples(new Tuples[] { ordered, top });
+
+    // no benefit when every row is needed
+    Tuples all = TuplesOperations.sort(tuples, comparator, 3);
+    assertFalse(all instanceof TopKTuples);
+    all.close();
+    tuples.close();
+  }
+
+  /**
+   * Sorts rows with the test comparator.
+   * @param data The rows to sort.
+   * @return The sorted rows, as strings.
+   */
+  private List<String> sorted(long[][] data) throws TuplesException {
+    List<long[]> list = new ArrayList<long[]>(Arrays.asList(data));
+    Collections.sort(list, new Comparator<long[]>() {
+      public int compare(long[] a, long[] b) {
+        try {
+          return comparator.compare(a, b);
+        } catch (TuplesException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+    List<String> result = new ArrayList<String>();
+    for (long[] row: list) result.add(Arrays.toString(row));
+    return result;
+  }
+
+  /**
+   * Reads all of the rows of a tuples.
+   * @param tuples The tuples to read.
+   * @return The rows, as strings.
+   */
+  private List<String> rows(Tuples tuples) throws Exception {
+    List<String> result = new ArrayList<String>();
+    tuples.beforeFirst();
+    while (tuples.next()) {
+      long[] row = new long[tuples.getNumberOfVariables()];
+      for (int c = 0; c < row.length; c++) row[c] = tuples.getColumnValue(c);
+      result.add(Arrays.toString(row));
+    }
+    return result;
+  }
+
+  /**
+   * Orders rows by descending second column, then ascending first column.
+   * Unbound values sort last.
+   */
+  private static class DescendingComparator implements RowComparator {
+
+    public int compare(Tuples first, Tuples second) throws TuplesException {
+      return compare(new long[] { first.getColumnValue(0), first.getColumnValue(1) },
+                     new long[] { second.getColumnValue(0), second.getColumnValue(1) });
+    }
+
+    public int compare(long[] array, Tuples tuples) throws TuplesException {
+      return compare(array, new long[] { tuples.getColumnValue(0), tuples.getColumnValue(1) });
+    }
+
+    public int compare(long[] first, long[] second) {
+      if (first[1] != second[1]) {
+        if (first[1] == Tuples.UNBOUND) return 1;
+        if (second[1] == Tuples.UNBOUND) return -1;
+        return first[1] > second[1] ? -1 : 1;
+      }
+      return first[0] < second[0] ? -1 : (first[0] > second[0] ? 1 : 0);
+    }
+  }
+}
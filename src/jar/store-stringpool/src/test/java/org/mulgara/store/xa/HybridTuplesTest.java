@@ -113,6 +113,8 @@ public class HybridTuplesTest extends TestCase {
     suite.addTest(new HybridTuplesTest("testLargeOrdered"));
     suite.addTest(new HybridTuplesTest("testSmallBeforeFirst"));
     suite.addTest(new HybridTuplesTest("testLargeBeforeFirst"));
+    suite.addTest(new HybridTuplesTest("testParallelSort"));
+    suite.addTest(new HybridTuplesTest("testParallelSortInMemory"));
 
     return suite;
   }
@@ -641,6 +643,97 @@ public class HybridTuplesTest extends TestCase {
   }
 
 
+  /**
+   * Sort with several threads and a memory budget small enough to write runs to disk.
+   *
+   * @throws Throwable EXCEPTION TO DO
+   */
+  public void testParallelSort() throws Throwable {
+    // 4 runs of 1024 rows at a time
+    HybridTuples.setSortParameters(4, 4 * 1024 * WIDTH * 8);
+    try {
+      checkParallelSort(ODD_LOAD_SIZE);
+    } finally {
+      HybridTuples.setSortParameters(1, HybridTuples.MAX_READ_BUFFER_SIZE);
+    }
+  }
+
+
+  /**
+   * Sort with several threads, where the whole tuples fits in memory.
+   *
+   * @throws Throwable EXCEPTION TO DO
+   */
+  public void testParallelSortInMemory() throws Throwable {
+    HybridTuples.setSortParameters(4, 16 * 1024 * 1024);
+    try {
+      checkParallelSort(ODD_LOAD_SIZE);
+      hybridTuples.close();
+      hybridTuples = null;
+      checkParallelSort(3);
+      hybridTuples.close();
+      hybridTuples = null;
+      checkParallelSort(0);
+    } finally {
+      HybridTuples.setSortParameters(1, HybridTuples.MAX_READ_BUFFER_SIZE);
+    }
+  }
+
+
+  /**
+   * Sorts random rows, and checks them against a sort of the same rows in memory.
+   *
+   * @param rows The number of rows to sort.
+   * @throws Throwable EXCEPTION TO DO
+   */
+  private void checkParallelSort(int rows) throws Throwable {
+    Variable[] vars = new Variable[WIDTH];
+    for (int c = 0; c < WIDTH; c++) {
+      vars[c] = new Variable("test" + (c + 1));
+    }
+
+    Random r = new Random(42);
+    LiteralTuples tt = new LiteralTuples(vars);
+    List<long[]> values = new ArrayList<long[]>();
+    for (int i = 0; i < rows; i++) {
+      long[] v = new long[WIDTH];
+      for (int c = 0; c < WIDTH; c++) v[c] = (r.nextLong() & 0x0000FFFFL) + 1;
+      values.add(v);
+      tt.appendTuple(v);
+    }
+    Collections.sort(values, new Comparator<long[]>() {
+      public int compare(long[] a1, long[] a2) {
+        for (int c = 0; c < a1.length; c++) {
+          if (a1[c] != a2[c]) return a1[c] < a2[c] ? -1 : +1;
+        }
+        return 0;
+      }
+    });
+
+    hybridTuples = new HybridTuples(tt, rowComparator);
+    assertEquals(rows, hybridTuples.getRowCount());
+    for (int pass = 0; pass < 2; pass++) {
+      hybridTuples.beforeFirst();
+      int i = 0;
+      for (long[] v: values) {
+        assertTrue("On iteration " + i, hybridTuples.next());
+        for (int c = 0; c < WIDTH; c++) {
+          assertEquals("On iteration " + i, v[c], hybridTuples.getColumnValue(c));
+        }
+        i++;
+      }
+      assertFalse(hybridTuples.next());
+    }
+
+    if (rows > 0) {
+      long[] first = values.get(0);
+      hybridTuples.beforeFirst(new long[] { first[0] }, 0);
+      assertTrue(hybridTuples.next());
+      assertEquals(first[1], hybridTuples.getColumnValue(1));
+    }
+  }
+
+
   /**
    * METHOD TO DO
    *
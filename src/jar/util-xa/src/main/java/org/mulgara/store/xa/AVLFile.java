@@ -45,6 +45,14 @@ import org.mulgara.util.Constants;
  * phase, while other phases all get to read their own immutable
  * version of the file.
  *
+ * <p>A file may be <em>counted</em>, in which case each node has a weight,
+ * held in an int of its payload, and also records the total weight of the
+ * nodes in its subtree.  The totals are kept up to date as nodes are added,
+ * removed, rotated or have their weights changed, which allows the total
+ * weight of any range of nodes to be found from the nodes at either end of
+ * the range, with {@link AVLNode#getRank}, without visiting the nodes
+ * between them.</p>
+ *
  * @created 2001-10-03
  *
  * @author David Makepeace
@@ -79,6 +87,12 @@ public final class AVLFile {
   /** The most recent phase for the file. */
   private Phase currentPhase;
 
+  /** The offset of the weight of each node in its payload, in ints, or 0 if the file is not counted. */
+  private final int weightOffset;
+
+  /** The index of the subtree weight in each node, in longs, or -1 if the file is not counted. */
+  private final int subtreeWeightIndex;
+
 
   /**
    * Creates a new block file which contains an AVL tree.
@@ -88,12 +102,35 @@ public final class AVLFile {
    * @throws IOException If an i/o error occurs.
    */
   public AVLFile(File file, int payloadSize) throws IOException {
+    this(file, payloadSize, 0);
+  }
+
+  /**
+   * Creates a new block file which contains an AVL tree, optionally recording
+   * the total weight of the subtree under each node.  The nodes of a counted
+   * file are a long larger than those of an uncounted file, so a file must
+   * always be opened the same way.  The weight of a node must only be changed
+   * with {@link AVLNode#putPayloadInt}.
+   *
+   * @param file A {@link java.io.File} object giving the details of the file.
+   * @param payloadSize Size of the payload in longs.  Must be at least 1.
+   * @param weightOffset The offset of the weight of each node in its payload,
+   *     in ints, or 0 if the file is not counted.
+   * @throws IOException If an i/o error occurs.
+   */
+  public AVLFile(File file, int payloadSize, int weightOffset) throws IOException {
     if (payloadSize < 1) {
       throw new IllegalArgumentException("payloadSize is less than 1");
     }
+    if (weightOffset < 0 || weightOffset >= payloadSize * 2) {
+      throw new IllegalArgumentException("weightOffset is outside the payload: " + weightOffset);
+    }
 
-    avlBlockFile = new ManagedBlockFile(file, (AVLNode.HEADER_SIZE + payloadSize) * Constants.SIZEOF_LONG,
-        BlockFile.IOType.MAPPED);
+    int nodeSize = AVLNode.HEADER_SIZE + payloadSize;
+    this.weightOffset = weightOffset;
+    this.subtreeWeightIndex = (weightOffset != 0) ? nodeSize++ : -1;
+
+    avlBlockFile = new ManagedBlockFile(file, nodeSize * Constants.SIZEOF_LONG, BlockFile.IOType.MAPPED);
     this.payloadSize = payloadSize;
   }
 
@@ -108,6 +145,15 @@ public final class AVLFile {
     this(new File(fileName), payloadSize);
   }
 
+  /**
+   * Tests if the nodes of this file record the total weight of their subtrees.
+   *
+   * @return <code>true</code> if the file is counted.
+   */
+  public boolean isCounted() {
+    return weightOffset != 0;
+  }
+
   /**
    * Returns the index of the leaf node in the find result which was returned
    * when a node was not found.
@@ -196,6 +242,31 @@ public final class AVLFile {
     }
   }
 
+  /**
+   * Gets the height of a subtree built by {@link Phase#buildTree}.
+   *
+   * @param size The number of nodes in the subtree.
+   * @return The height of the subtree, which is 0 for an empty subtree.
+   */
+  private static int height(long size) {
+    return 64 - Long.numberOfLeadingZeros(size);
+  }
+
+  /**
+   * Writes the payloads of the nodes in a tree being built by
+   * {@link Phase#buildTree}.
+   */
+  public interface PayloadSource {
+
+    /**
+     * Writes the payload of the next node, in the order of the tree.
+     *
+     * @param node The new node.  The node is writable and must not be released.
+     * @throws IOException If an I/O error occurred.
+     */
+    void putPayload(AVLNode node) throws IOException;
+  }
+
   /**
    * This class represents a set of branches in the file which contain
    * a unique view of the data.
@@ -353,6 +424,57 @@ public final class AVLFile {
       incNrNodes();
     }
 
+    /**
+     * Builds a balanced tree in an empty phase, without searching or
+     * rebalancing.  Nodes are allocated and given their payloads in order,
+     * from the lowest to the highest, so the payloads can be read from a
+     * sorted stream in a single pass.  Only the nodes on the path to the
+     * current node are held while the tree is being built.
+     *
+     * @param nrNodes The number of nodes to put in the tree.
+     * @param source Writes the payload for each node in order.
+     * @throws IOException If an I/O error occurred.
+     */
+    public void buildTree(long nrNodes, PayloadSource source) throws IOException {
+      if (!isEmpty()) {
+        throw new IllegalStateException(
+            "buildTree() called on AVL tree that is not empty");
+      }
+      if (nrNodes < 0) throw new IllegalArgumentException("nrNodes: " + nrNodes);
+
+      setRootId(buildSubtree(nrNodes, source));
+      this.nrNodes = nrNodes;
+    }
+
+    /**
+     * Builds a balanced subtree.  The lower half of the nodes go into the left
+     * subtree, so the left subtree is never shorter than the right.
+     *
+     * @param size The number of nodes in the subtree.
+     * @param source Writes the payload for each node in order.
+     * @return The ID of the root of the subtree, or {@link AVLNode#NULL_NODE}
+     *     if the subtree is empty.
+     * @throws IOException If an I/O error occurred.
+     */
+    private long buildSubtree(long size, PayloadSource source) throws IOException {
+      if (size == 0) return AVLNode.NULL_NODE;
+
+      long leftSize = size / 2;
+      long rightSize = size - 1 - leftSize;
+      long leftId = buildSubtree(leftSize, source);
+
+      AVLNode node = newAVLNodeInstance();
+      try {
+        source.putPayload(node);
+        long rightId = buildSubtree(rightSize, source);
+        node.setChildren(leftId, rightId, height(leftSize) - height(rightSize));
+        node.write();
+        return node.getId();
+      } finally {
+        node.release();
+      }
+    }
+
     /**
      * Finds an AVLNode containing the requested data.
      *
@@ -408,6 +530,24 @@ public final class AVLFile {
       this.rootId = rootId;
     }
 
+    /**
+     * Gets the offset of the weight of each node in its payload.
+     *
+     * @return The offset in ints, or 0 if the file is not counted.
+     */
+    int getWeightOffset() {
+      return weightOffset;
+    }
+
+    /**
+     * Gets the index of the subtree weight in each node.
+     *
+     * @return The index in longs, or -1 if the file is not counted.
+     */
+    int getSubtreeWeightIndex() {
+      return subtreeWeightIndex;
+    }
+
     /**
      * Get the phase of the underlying block file.
      *
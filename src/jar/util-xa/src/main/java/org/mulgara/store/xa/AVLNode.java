@@ -265,6 +265,58 @@ public final class AVLNode {
     return findDown(node, comparator, key);
   }
 
+  /**
+   * Finds a key which is greater than the key of a previous search, starting
+   * from the last node visited by that search.  The search only climbs as far
+   * as the smallest subtree which can hold the key before descending again, so
+   * a series of searches for ascending keys walks the tree once from left to
+   * right rather than from the root for each key.  The tree must not have been
+   * modified since the previous search.
+   *
+   * @param node the last node visited by the previous search, which is the
+   *   found node or the leaf index node of the result of a failed search.
+   *   This node is not released.
+   * @param comparator the comparator to use to compare a key and an AVLNode.
+   * @param key the key, which must be greater than the previous key.
+   * @return the one or two element array of AVLNodes, as for
+   *   {@link #find(AVLNode, AVLComparator, long[])}.
+   */
+  public static AVLNode[] findAscending(
+      AVLNode node, AVLComparator comparator, long[] key
+  ) {
+    if (node == null) return null;
+
+    // The subtree of a left child is bounded above by its parent.  Any other
+    // bound is shared with the parent, and the lower bound is already below
+    // the key.
+    AVLNode upperNode = null;
+    while (node.parentNode != null) {
+      if (node.childIndex == IDX_LEFT) {
+        int c = comparator.compare(key, node.parentNode);
+        if (c < 0) {
+          upperNode = node.parentNode;
+          break;
+        }
+        if (c == 0) {
+          node.parentNode.incRefCount();
+          return new AVLNode[] {node.parentNode};
+        }
+      }
+      node = node.parentNode;
+    }
+
+    // Find the lower bound of the subtree, in case the key is not found.
+    AVLNode lowerNode = null;
+    for (AVLNode n = node; n.parentNode != null; n = n.parentNode) {
+      if (n.childIndex == IDX_RIGHT) {
+        lowerNode = n.parentNode;
+        break;
+      }
+    }
+
+    return findDown(node, comparator, key, lowerNode, upperNode);
+  }
+
   /**
    * Returns an AVLNode array with a single element (the found node) if the
    * node was found or with two elements if the node was not found. If the node
@@ -280,6 +332,23 @@ public final class AVLNode {
    */
   static AVLNode[] findDown(
       AVLNode node, AVLComparator comparator, long[] key
+  ) {
+    return findDown(node, comparator, key, null, null);
+  }
+
+  /**
+   * Searches down a subtree, as for {@link #findDown(AVLNode, AVLComparator, long[])}.
+   *
+   * @param node the root of the subtree.
+   * @param comparator the comparator to use to compare a key and an AVLNode.
+   * @param key the key.
+   * @param lowerNode the node preceding the subtree, or <code>null</code>.
+   * @param upperNode the node following the subtree, or <code>null</code>.
+   * @return the one or two element array of AVLNodes.
+   */
+  private static AVLNode[] findDown(
+      AVLNode node, AVLComparator comparator, long[] key,
+      AVLNode lowerNode, AVLNode upperNode
   ) {
     assert node != null;
 
@@ -287,8 +356,8 @@ public final class AVLNode {
 
     // Now search down the tree.
     AVLNode nextNode;
-    AVLNode lastLeftChildNode = null;
-    AVLNode lastRightChildNode = null;
+    AVLNode lastLeftChildNode = upperNode;
+    AVLNode lastRightChildNode = lowerNode;
 
     int c;
     while ((c = comparator.compare(key, node)) != 0) {
@@ -584,6 +653,36 @@ public final class AVLNode {
     return block.getByte(IDX_PAYLOAD_B + offset);
   }
 
+  /**
+   * Gets the total weight of the nodes in the subtree under this node,
+   * including this node.  The file must be counted.
+   *
+   * @return The weight of the subtree.
+   */
+  public long getSubtreeWeight() {
+    assert phase.getSubtreeWeightIndex() >= 0 : "AVLFile is not counted";
+    return block.getLong(phase.getSubtreeWeightIndex());
+  }
+
+  /**
+   * Gets the total weight of the nodes which come before this node in the
+   * tree.  The weight of a range of nodes is the difference between the ranks
+   * of the nodes at either end.  Only the nodes on the path to the root are
+   * visited.  The file must be counted.
+   *
+   * @return The total weight of the preceding nodes.
+   */
+  public long getRank() {
+    assert phase.getSubtreeWeightIndex() >= 0 : "AVLFile is not counted";
+    long rank = getChildSubtreeWeight(IDX_LEFT);
+    for (AVLNode node = this; node.parentNode != null; node = node.parentNode) {
+      if (node.childIndex == IDX_RIGHT) {
+        rank += node.parentNode.getWeight() + node.parentNode.getChildSubtreeWeight(IDX_LEFT);
+      }
+    }
+    return rank;
+  }
+
   /**
    * Gets the minimum node to the left of this AVLNode (the smallest node
    * in this subtree).  The current node has its reference released.
@@ -737,6 +836,9 @@ public final class AVLNode {
   public void putPayloadInt(int offset, int i) {
     assert dirty;
     assert offset > 0;
+    if (offset == phase.getWeightOffset()) {
+      addSubtreeWeight(i - block.getInt(IDX_PAYLOAD_I + offset));
+    }
     block.putInt(IDX_PAYLOAD_I + offset, i);
   }
 
@@ -824,6 +926,9 @@ public final class AVLNode {
     }
 
     block.putLong(ci, newNode.getId());
+    if (phase.getSubtreeWeightIndex() >= 0) {
+      addSubtreeWeight(newNode.getSubtreeWeight());
+    }
     rebalanceInsert(ci);
     phase.incNrNodes();
   }
@@ -836,6 +941,9 @@ public final class AVLNode {
   public void remove() throws IOException {
     assert refCount == 1;
 
+    int subtreeWeightIndex = phase.getSubtreeWeightIndex();
+    if (subtreeWeightIndex >= 0) addSubtreeWeight(-getWeight());
+
     if (isLeafNode()) {
       assert leftChildNode == null;
       assert rightChildNode == null;
@@ -873,6 +981,15 @@ public final class AVLNode {
         ci = IDX_RIGHT;
       }
 
+      // The adjacent node no longer counts towards the nodes between it and this node.
+      if (subtreeWeightIndex >= 0) {
+        long adjacentWeight = adjacentNode.getWeight();
+        for (AVLNode node = adjacentNode.parentNode; node != this; node = node.parentNode) {
+          node.modify();
+          node.block.putLong(subtreeWeightIndex, node.block.getLong(subtreeWeightIndex) - adjacentWeight);
+        }
+      }
+
       // Save adjacent node pointers.
       long adjacentNodeChildId = adjacentNode.block.getLong(ci);
       AVLNode adjacentParent = adjacentNode.parentNode;
@@ -887,6 +1004,9 @@ public final class AVLNode {
       adjacentNode.block.putLong(IDX_LEFT, block.getLong(IDX_LEFT));
       adjacentNode.block.putLong(IDX_RIGHT, block.getLong(IDX_RIGHT));
       adjacentNode.block.putByte(IDX_BALANCE_B, block.getByte(IDX_BALANCE_B));
+      if (subtreeWeightIndex >= 0) {
+        adjacentNode.block.putLong(subtreeWeightIndex, block.getLong(subtreeWeightIndex));
+      }
 
       if (parentNode == null) {
         phase.setRootId(adjacentNode.getId());
@@ -1021,6 +1141,25 @@ public final class AVLNode {
     return sb.toString();
   }
 
+  /**
+   * Sets the children and balance of a new node which has not been inserted
+   * into a tree.  Used when building a tree from the bottom up, where the
+   * children of each node are known and no rebalancing is needed.
+   *
+   * @param leftId The ID of the left child node, or {@link #NULL_NODE}.
+   * @param rightId The ID of the right child node, or {@link #NULL_NODE}.
+   * @param balance The height of the left subtree minus the height of the
+   *     right subtree.  Must be -1, 0 or 1.
+   */
+  void setChildren(long leftId, long rightId, int balance) {
+    assert dirty && parentNode == null;
+    assert balance >= -1 && balance <= 1;
+    block.putLong(IDX_LEFT, leftId);
+    block.putLong(IDX_RIGHT, rightId);
+    block.putByte(IDX_BALANCE_B, (byte)balance);
+    updateSubtreeWeight();
+  }
+
   /**
    * Gets the ID of the left child node to this node.
    *
@@ -1169,6 +1308,73 @@ public final class AVLNode {
     block.putLong(IDX_LEFT, NULL_NODE);
     block.putLong(IDX_RIGHT, NULL_NODE);
     block.putByte(IDX_BALANCE_B, (byte) 0);
+    if (phase.getSubtreeWeightIndex() >= 0) {
+      block.putInt(IDX_PAYLOAD_I + phase.getWeightOffset(), 0);
+      block.putLong(phase.getSubtreeWeightIndex(), 0);
+    }
+  }
+
+  /**
+   * Gets the weight of this node.  The file must be counted.
+   *
+   * @return The weight from the payload.
+   */
+  private long getWeight() {
+    return block.getInt(IDX_PAYLOAD_I + phase.getWeightOffset());
+  }
+
+  /**
+   * Gets the weight of the subtree under a child of this node.  The file must
+   * be counted.
+   *
+   * @param ci The index of the child.  Either {@link #IDX_LEFT} or
+   *     {@link #IDX_RIGHT}.
+   * @return The weight of the subtree, or 0 if there is no child.
+   */
+  private long getChildSubtreeWeight(int ci) {
+    AVLNode childNode = (ci == IDX_LEFT) ? leftChildNode : rightChildNode;
+    if (childNode != null) return childNode.getSubtreeWeight();
+
+    long nodeId = block.getLong(ci);
+    if (nodeId == NULL_NODE) return 0;
+    try {
+      return phase.getAVLBlockFilePhase().readBlock(nodeId).getLong(phase.getSubtreeWeightIndex());
+    } catch (IOException ex) {
+      throw new Error("IOException", ex);
+    }
+  }
+
+  /**
+   * Adds to the subtree weight of this node and of each node above it.  The
+   * nodes are modified if the file is counted.
+   *
+   * @param delta The change in weight.
+   */
+  private void addSubtreeWeight(long delta) {
+    int subtreeWeightIndex = phase.getSubtreeWeightIndex();
+    if (subtreeWeightIndex < 0 || delta == 0) return;
+
+    try {
+      for (AVLNode node = this; node != null; node = node.parentNode) {
+        node.modify();
+        node.block.putLong(subtreeWeightIndex, node.block.getLong(subtreeWeightIndex) + delta);
+      }
+    } catch (IOException ex) {
+      throw new Error("IOException", ex);
+    }
+  }
+
+  /**
+   * Sets the subtree weight of this node from its own weight and those of its
+   * children, if the file is counted.  The node must be writable.
+   */
+  private void updateSubtreeWeight() {
+    int subtreeWeightIndex = phase.getSubtreeWeightIndex();
+    if (subtreeWeightIndex < 0) return;
+    block.putLong(
+        subtreeWeightIndex,
+        getWeight() + getChildSubtreeWeight(IDX_LEFT) + getChildSubtreeWeight(IDX_RIGHT)
+    );
   }
 
   /**
@@ -1357,6 +1563,12 @@ public final class AVLNode {
     parentNode = nodeL;
     childIndex = IDX_RIGHT;
 
+    // The rotated subtree has the same weight, now under nodeL.
+    if (phase.getSubtreeWeightIndex() >= 0) {
+      nodeL.block.putLong(phase.getSubtreeWeightIndex(), getSubtreeWeight());
+      updateSubtreeWeight();
+    }
+
     // Recalculate the balances.
     int deltaHeight = calcNewBalances(
         block.getByte(IDX_BALANCE_B), nodeL.block.getByte(IDX_BALANCE_B),
@@ -1419,6 +1631,12 @@ public final class AVLNode {
     parentNode = nodeR;
     childIndex = IDX_LEFT;
 
+    // The rotated subtree has the same weight, now under nodeR.
+    if (phase.getSubtreeWeightIndex() >= 0) {
+      nodeR.block.putLong(phase.getSubtreeWeightIndex(), getSubtreeWeight());
+      updateSubtreeWeight();
+    }
+
     // Recalculate the balances.
     int deltaHeight = calcNewBalances(
         -block.getByte(IDX_BALANCE_B), -nodeR.block.getByte(IDX_BALANCE_B),
@@ -0,0 +1,729 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.store.xa;
+
+// Java 2 standard packages
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+// Third party packages
+import org.apache.log4j.Logger;
+
+/**
+ * A process-wide cache of file blocks, for block files that use explicit I/O.
+ * The cached data is held in direct buffers.  These are allocated in slabs as
+ * needed, until the size of the cache is reached.  Each slab is divided into
+ * frames for blocks of a single size, and can be divided again for another
+ * size once none of its blocks are being used.
+ *
+ * Cached blocks are shared between threads, so callers are given a copy of
+ * the data rather than the cached frame.  A frame is pinned while it is being
+ * copied, and is never changed once it has been published: writing a block
+ * puts the new data into a different frame.  When the cache is full, frames
+ * are evicted with the clock algorithm, skipping pinned frames and giving
+ * recently read frames a second chance.  When the clock finds an unused frame
+ * of a different size, the whole slab is reclaimed if none of it is in use.
+ *
+ * The size of the cache is set in bytes with the {@link #CACHE_SIZE_PROPERTY}
+ * property, and is rounded down to a whole number of slabs.  A size of 0
+ * disables the cache.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public final class BlockCache {
+
+  private final static Logger logger = Logger.getLogger(BlockCache.class);
+
+  /** The property for the size of the shared cache, in bytes. */
+  public final static String CACHE_SIZE_PROPERTY = "mulgara.xa.blockCacheSize";
+
+  /** The default size of the shared cache, in bytes. */
+  private final static long DEFAULT_CACHE_SIZE = 64L * 1024 * 1024;
+
+  /** The size of each slab of frames, in bytes. */
+  private final static int SLAB_SIZE = 256 * 1024;
+
+  /** The largest block that will be cached, in bytes. */
+  private final static int MAX_BLOCK_SIZE = SLAB_SIZE;
+
+  /** The number of bits of a cache key used for the block ID. */
+  private final static int BLOCK_ID_BITS = 48;
+
+  /** The shared cache, or <code>null</code> if it is disabled or not yet created. */
+  private static BlockCache sharedCache = null;
+
+  /** Set when the shared cache has been created, or found to be disabled. */
+  private static boolean sharedCacheInitialized = false;
+
+  /** The most slabs to allocate. */
+  private final int maxSlabs;
+
+  /** The frames holding blocks, by file and block ID. */
+  private final Map<Long,Frame> frames = new HashMap<Long,Frame>();
+
+  /** The free frames for each block size. */
+  private final Map<Integer,LinkedList<Frame>> freeFrames = new HashMap<Integer,LinkedList<Frame>>();
+
+  /** Every slab that has been allocated, in the order the clock visits them. */
+  private final List<Slab> slabs = new ArrayList<Slab>();
+
+  /** The slab the clock is visiting. */
+  private int slabHand = 0;
+
+  /** The next frame the clock will visit in its slab. */
+  private int frameHand = 0;
+
+  /** The ID for the next file to be registered. */
+  private int nextRegionId = 0;
+
+  /** The IDs of files that have been closed, for reuse. */
+  private final LinkedList<Integer> freeRegionIds = new LinkedList<Integer>();
+
+
+  /**
+   * Creates a cache.
+   *
+   * @param capacity The most bytes of blocks to hold.  At least one slab is
+   *     allocated.
+   */
+  BlockCache(long capacity) {
+    if (capacity <= 0) throw new IllegalArgumentException("capacity: " + capacity);
+    maxSlabs = (int)Math.min(Math.max(capacity / SLAB_SIZE, 1), Integer.MAX_VALUE);
+  }
+
+
+  /**
+   * Gets the cache shared by all block files, creating it if needed.
+   *
+   * @return The shared cache, or <code>null</code> if caching is disabled.
+   */
+  public static synchronized BlockCache getSharedCache() {
+    if (!sharedCacheInitialized) {
+      long size = getCacheSize();
+      if (size > 0) sharedCache = new BlockCache(size);
+      sharedCacheInitialized = true;
+    }
+    return sharedCache;
+  }
+
+
+  /**
+   * Starts caching the blocks of a file.
+   *
+   * @param file The file, used when reporting statistics.
+   * @param blockSize The size of the blocks in the file.
+   * @return The region of the cache for the file, or <code>null</code> if the
+   *     blocks are too large to cache.
+   */
+  public synchronized Region register(File file, int blockSize) {
+    if (blockSize <= 0 || blockSize > MAX_BLOCK_SIZE) return null;
+
+    int id;
+    if (!freeRegionIds.isEmpty()) {
+      id = freeRegionIds.removeFirst();
+    } else if (nextRegionId < 1 << (63 - BLOCK_ID_BITS)) {
+      id = nextRegionId++;
+    } else {
+      logger.warn("Too many files open to cache: " + file);
+      return null;
+    }
+    return new Region(id, file, blockSize);
+  }
+
+
+  /**
+   * Gets the size of the cache.
+   *
+   * @return The most bytes of blocks this cache will hold.
+   */
+  public long getCapacity() {
+    return (long)maxSlabs * SLAB_SIZE;
+  }
+
+
+  /**
+   * Gets the number of bytes of frames allocated so far.
+   *
+   * @return The size of all the slabs allocated.
+   */
+  public synchronized long getAllocated() {
+    return (long)slabs.size() * SLAB_SIZE;
+  }
+
+
+  /**
+   * Gets a frame that is not in use, evicting a block if needed.
+   *
+   * @param blockSize The size of frame needed.
+   * @return A frame of the requested size, or <code>null</code> if every frame
+   *     that could be evicted is pinned.
+   */
+  private Frame getFreeFrame(int blockSize) {
+    LinkedList<Frame> free = getFreeList(blockSize);
+    Frame frame = removeFree(free);
+    if (frame != null) return frame;
+
+    if (slabs.size() < maxSlabs) {
+      Slab slab = new Slab(ByteBuffer.allocateDirect(SLAB_SIZE));
+      slabs.add(slab);
+      divide(slab, blockSize);
+      if (logger.isDebugEnabled()) logger.debug("Allocated " + slabs.size() + " slabs of " + maxSlabs);
+      return removeFree(free);
+    }
+
+    // Frames visited once have their reference cleared, so two turns of the
+    // clock is enough to find any frame that is not in use.
+    int nrFrames = 0;
+    for (Slab slab: slabs) nrFrames += slab.frames.length;
+    for (int steps = 2 * nrFrames; steps > 0; --steps) {
+      frame = nextFrame();
+      if (frame.slab.blockSize != blockSize) {
+        // A frame of another size is only useful if its whole slab can be reclaimed.
+        if (frame.state == Frame.FREE || (frame.state == Frame.RESIDENT && !frame.referenced)) {
+          if (frame.slab.isUnused()) {
+            divide(frame.slab, blockSize);
+            return removeFree(free);
+          }
+        }
+      }
+      if (frame.state != Frame.RESIDENT || frame.pins > 0) continue;
+      if (frame.referenced) {
+        frame.referenced = false;
+        continue;
+      }
+      if (frame.slab.blockSize == blockSize) {
+        evict(frame);
+        return frame;
+      }
+    }
+    return null;
+  }
+
+
+  /**
+   * Moves the clock to the next frame.
+   *
+   * @return The frame the clock has moved to.
+   */
+  private Frame nextFrame() {
+    if (slabHand >= slabs.size()) slabHand = 0;
+    Slab slab = slabs.get(slabHand);
+    if (frameHand >= slab.frames.length) {
+      frameHand = 0;
+      if (++slabHand == slabs.size()) slabHand = 0;
+      slab = slabs.get(slabHand);
+    }
+    return slab.frames[frameHand++];
+  }
+
+
+  /**
+   * Removes the block in a frame from the cache, leaving the frame unused.
+   *
+   * @param frame The frame to evict.  Must be resident and not pinned.
+   */
+  private void evict(Frame frame) {
+    frames.remove(frame.key);
+    frame.region.evictions++;
+    frame.region = null;
+    frame.state = Frame.FREE;
+  }
+
+
+  /**
+   * Divides a slab into new frames for blocks of one size.  Any blocks in the
+   * slab are evicted, and its old frames are discarded.
+   *
+   * @param slab The slab to divide.  None of its frames may be in use.
+   * @param blockSize The size of the new frames.
+   */
+  private void divide(Slab slab, int blockSize) {
+    if (slab.frames != null) {
+      for (Frame frame: slab.frames) {
+        if (frame.state == Frame.RESIDENT) evict(frame);
+        frame.state = Frame.DISCARDED;
+      }
+    }
+
+    LinkedList<Frame> free = getFreeList(blockSize);
+    slab.blockSize = blockSize;
+    slab.frames = new Frame[SLAB_SIZE / blockSize];
+    for (int i = 0; i < slab.frames.length; i++) {
+      ByteBuffer buffer = slab.buffer.duplicate();
+      buffer.limit((i + 1) * blockSize).position(i * blockSize);
+      slab.frames[i] = new Frame(slab, buffer.slice());
+      free.add(slab.frames[i]);
+    }
+  }
+
+
+  /**
+   * Takes a frame from a free list, skipping frames that have been discarded.
+   *
+   * @param free The free list.
+   * @return A free frame, or <code>null</code> if the list is empty.
+   */
+  private static Frame removeFree(LinkedList<Frame> free) {
+    while (!free.isEmpty()) {
+      Frame frame = free.removeFirst();
+      if (frame.state == Frame.FREE) return frame;
+    }
+    return null;
+  }
+
+
+  /**
+   * Gets the list of free frames of a size.
+   *
+   * @param blockSize The size of the frames.
+   * @return The list of free frames.
+   */
+  private LinkedList<Frame> getFreeList(int blockSize) {
+    LinkedList<Frame> free = freeFrames.get(blockSize);
+    if (free == null) {
+      free = new LinkedList<Frame>();
+      freeFrames.put(blockSize, free);
+    }
+    return free;
+  }
+
+
+  /**
+   * Removes a frame from the cache.  A pinned frame is freed when it is unpinned.
+   *
+   * @param frame The frame to remove.  Must be resident.
+   */
+  private void retire(Frame frame) {
+    frames.remove(frame.key);
+    frame.region = null;
+    if (frame.pins > 0) {
+      frame.state = Frame.STALE;
+    } else {
+      frame.state = Frame.FREE;
+      getFreeList(frame.slab.blockSize).add(frame);
+    }
+  }
+
+
+  /**
+   * Releases a pin on a frame.
+   *
+   * @param frame The pinned frame.
+   */
+  private void unpin(Frame frame) {
+    assert frame.pins > 0;
+    if (--frame.pins == 0 && frame.state == Frame.STALE) {
+      frame.state = Frame.FREE;
+      getFreeList(frame.slab.blockSize).add(frame);
+    }
+  }
+
+
+  /**
+   * Copies the contents of one buffer to another, without changing the
+   * positions of either buffer.
+   *
+   * @param src The buffer to copy from.
+   * @param dst The buffer to copy to.
+   * @param length The number of bytes to copy.
+   */
+  private static void copy(ByteBuffer src, ByteBuffer dst, int length) {
+    ByteBuffer s = src.duplicate();
+    s.limit(length).position(0);
+    ByteBuffer d = dst.duplicate();
+    d.limit(length).position(0);
+    d.put(s);
+  }
+
+
+  /**
+   * Reads the size of the shared cache from the system properties.
+   *
+   * @return The size of the cache in bytes, or 0 to disable it.
+   */
+  private static long getCacheSize() {
+    Long size = Long.getLong(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE);
+    if (size.longValue() < 0) {
+      logger.warn("Invalid value for property " + CACHE_SIZE_PROPERTY + ": " + size);
+      return DEFAULT_CACHE_SIZE;
+    }
+    return size.longValue();
+  }
+
+
+  /**
+   * A buffer which holds one cached block.
+   */
+  private static final class Frame {
+
+    /** The frame is not holding a block. */
+    static final int FREE = 0;
+
+    /** The frame is being filled, and is not yet visible to readers. */
+    static final int LOADING = 1;
+
+    /** The frame holds a block, and can be read. */
+    static final int RESIDENT = 2;
+
+    /** The frame has been replaced or evicted while pinned. */
+    static final int STALE = 3;
+
+    /** The slab has been divided into new frames, so this frame is no longer used. */
+    static final int DISCARDED = 4;
+
+    /** The slab holding the frame. */
+    final Slab slab;
+
+    /** The data for the block. */
+    final ByteBuffer buffer;
+
+    /** The state of the frame. */
+    int state = FREE;
+
+    /** The key of the block in the frame. */
+    long key;
+
+    /** The file the block is from, while the frame holds a block. */
+    Region region;
+
+    /** The number of readers copying from the frame. */
+    int pins = 0;
+
+    /** Set when the block is used, and cleared by the clock. */
+    boolean referenced;
+
+    Frame(Slab slab, ByteBuffer buffer) {
+      this.slab = slab;
+      this.buffer = buffer;
+    }
+  }
+
+
+  /**
+   * A direct buffer divided into frames of one size.
+   */
+  private static final class Slab {
+
+    /** The memory for all the frames. */
+    final ByteBuffer buffer;
+
+    /** The size of the frames. */
+    int blockSize;
+
+    /** The frames the slab is divided into. */
+    Frame[] frames;
+
+    Slab(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    /**
+     * Tests if the slab can be divided again.
+     *
+     * @return <code>true</code> if every frame is either free, or holds a
+     *     block which is not pinned and has not been used since the clock
+     *     last visited it.
+     */
+    boolean isUnused() {
+      for (Frame frame: frames) {
+        if (frame.state == Frame.FREE) continue;
+        if (frame.state != Frame.RESIDENT || frame.pins > 0 || frame.referenced) return false;
+      }
+      return true;
+    }
+  }
+
+
+  /**
+   * The part of the cache holding the blocks of one file, with statistics
+   * on how the cache has been used by the file.
+   */
+  public final class Region {
+
+    /** The ID of the region, which forms the top bits of each key. */
+    private final int id;
+
+    /** The file being cached. */
+    private final File file;
+
+    /** The size of the blocks in the file. */
+    private final int blockSize;
+
+    /** Incremented when a block is written or discarded, so reads that race with it can be ignored. */
+    private long version = 0;
+
+    /** Set once the file is closed. */
+    private boolean closed = false;
+
+    private long hits = 0;
+
+    private long misses = 0;
+
+    private long evictions = 0;
+
+    private long writes = 0;
+
+
+    /**
+     * Creates a region for a file.
+     *
+     * @param id The ID of the region.
+     * @param file The file being cached.
+     * @param blockSize The size of the blocks in the file.
+     */
+    private Region(int id, File file, int blockSize) {
+      this.id = id;
+      this.file = file;
+      this.blockSize = blockSize;
+    }
+
+
+    /**
+     * Copies a block from the cache.
+     *
+     * @param blockId The ID of the block.
+     * @param dst The buffer to copy the block into.
+     * @return <code>true</code> if the block was found, or <code>false</code>
+     *     if it must be read from the file.
+     */
+    public boolean read(long blockId, ByteBuffer dst) {
+      Frame frame;
+      synchronized (BlockCache.this) {
+        frame = frames.get(key(blockId));
+        if (frame == null) {
+          misses++;
+          return false;
+        }
+        frame.pins++;
+        frame.referenced = true;
+        hits++;
+      }
+
+      try {
+        copy(frame.buffer, dst, blockSize);
+      } finally {
+        synchronized (BlockCache.this) {
+          unpin(frame);
+        }
+      }
+      return true;
+    }
+
+
+    /**
+     * Gets a value which changes whenever a block in this region is written or
+     * discarded.  This is read before reading a block from the file that was
+     * not in the cache, and passed to {@link #fill}.
+     *
+     * @return The version of the region.
+     */
+    public long getVersion() {
+      synchronized (BlockCache.this) {
+        return version;
+      }
+    }
+
+
+    /**
+     * Adds a block that has been read from the file.  The block is not added
+     * if any block of the file was written since the read started, as the data
+     * read may be out of date.
+     *
+     * @param blockId The ID of the block.
+     * @param src The data that was read.
+     * @param readVersion The result of {@link #getVersion} before the read.
+     */
+    public void fill(long blockId, ByteBuffer src, long readVersion) {
+      synchronized (BlockCache.this) {
+        if (readVersion != version) return;
+      }
+      store(blockId, src, readVersion);
+    }
+
+
+    /**
+     * Updates a block that has been written to the file.
+     *
+     * @param blockId The ID of the block.
+     * @param src The data that was written.
+     */
+    public void write(long blockId, ByteBuffer src) {
+      store(blockId, src, startWrite(blockId));
+    }
+
+
+    /**
+     * Removes a block that is being written from the cache.
+     *
+     * @param blockId The ID of the block.
+     * @return The version of the region the new data belongs to.
+     */
+    long startWrite(long blockId) {
+      synchronized (BlockCache.this) {
+        writes++;
+        // The old data must not be read, even if the new data is not cached.
+        Frame old = frames.get(key(blockId));
+        if (old != null) retire(old);
+        return ++version;
+      }
+    }
+
+
+    /**
+     * Discards all the blocks from a block ID up.  Used when a file is truncated.
+     *
+     * @param fromBlockId The lowest block ID to discard.
+     */
+    public void invalidate(long fromBlockId) {
+      synchronized (BlockCache.this) {
+        version++;
+        for (Slab slab: slabs) {
+          for (Frame frame: slab.frames) {
+            if (
+                frame.region == this &&
+                (frame.state == Frame.RESIDENT || frame.state == Frame.LOADING) &&
+                (frame.key & ((1L << BLOCK_ID_BITS) - 1)) >= fromBlockId
+            ) {
+              if (frame.state == Frame.RESIDENT) retire(frame);
+              else frame.region = null;
+            }
+          }
+        }
+      }
+    }
+
+
+    /**
+     * Stops caching the file, and discards its blocks.
+     */
+    public void close() {
+      invalidate(0);
+      synchronized (BlockCache.this) {
+        if (closed) return;
+        closed = true;
+        freeRegionIds.add(id);
+      }
+      if (logger.isDebugEnabled()) logger.debug("Closed " + this);
+    }
+
+
+    /** @return The number of blocks read from the cache. */
+    public long getHits() {
+      synchronized (BlockCache.this) {
+        return hits;
+      }
+    }
+
+
+    /** @return The number of blocks that were not in the cache. */
+    public long getMisses() {
+      synchronized (BlockCache.this) {
+        return misses;
+      }
+    }
+
+
+    /** @return The number of blocks of this file evicted to make room for others. */
+    public long getEvictions() {
+      synchronized (BlockCache.this) {
+        return evictions;
+      }
+    }
+
+
+    /** @return The number of blocks written through the cache. */
+    public long getWrites() {
+      synchronized (BlockCache.this) {
+        return writes;
+      }
+    }
+
+
+    public String toString() {
+      synchronized (BlockCache.this) {
+        return "BlockCache region for " + file + ": " + hits + " hits, " + misses +
+            " misses, " + evictions + " evictions, " + writes + " writes";
+      }
+    }
+
+
+    /**
+     * Puts a copy of a block into a frame, replacing any frame already holding
+     * the block.  The copy is made while the frame is not visible to readers.
+     * The copy is not published if the region changed while it was made, as
+     * the data may then be older than a block written at the same time.
+     *
+     * @param blockId The ID of the block.
+     * @param src The data for the block.
+     * @param storeVersion The version of the region the data belongs to.
+     */
+    void store(long blockId, ByteBuffer src, long storeVersion) {
+      long key = key(blockId);
+      Frame frame;
+      synchronized (BlockCache.this) {
+        if (closed) return;
+        frame = getFreeFrame(blockSize);
+        if (frame == null) {
+          // No room, so make sure the old data is not read.
+          Frame old = frames.get(key);
+          if (old != null) retire(old);
+          return;
+        }
+        frame.state = Frame.LOADING;
+        frame.key = key;
+        frame.region = this;
+        frame.pins = 1;
+      }
+
+      copy(src, frame.buffer, blockSize);
+
+      synchronized (BlockCache.this) {
+        frame.pins = 0;
+        // Give up if the block was discarded, or anything was written, while copying.
+        if (frame.region != this || version != storeVersion) {
+          frame.region = null;
+          frame.state = Frame.FREE;
+          getFreeList(blockSize).add(frame);
+          return;
+        }
+        Frame old = frames.put(key, frame);
+        if (old != null) {
+          old.key = -1;
+          old.region = null;
+          if (old.pins > 0) {
+            old.state = Frame.STALE;
+          } else {
+            old.state = Frame.FREE;
+            getFreeList(blockSize).add(old);
+          }
+        }
+        frame.state = Frame.RESIDENT;
+        frame.referenced = true;
+      }
+    }
+
+
+    /**
+     * Gets the key for a block of this file.
+     *
+     * @param blockId The ID of the block.
+     * @return The key, with the region ID in the top bits.
+     */
+    private long key(long blockId) {
+      assert blockId >= 0 && blockId < 1L << BLOCK_ID_BITS;
+      return ((long)id << BLOCK_ID_BITS) | blockId;
+    }
+  }
+}
@@ -67,6 +67,9 @@ public final class IOBlockFile extends AbstractBlockFile {
 
   private int allocationSize; // in blocks
 
+  /** The region of the shared block cache for this file, or null if not cached. */
+  private BlockCache.Region cache;
+
   /**
    * Constructs an IOBlockFile for the file with the specified file name.
    *
@@ -80,6 +83,9 @@ public final class IOBlockFile extends AbstractBlockFile {
     allocatedNrBlocks = nrBlocks;
     allocationSize = blockSize < NOMINAL_ALLOCATION_SIZE ?
         NOMINAL_ALLOCATION_SIZE / blockSize : 1;
+
+    BlockCache blockCache = BlockCache.getSharedCache();
+    cache = blockCache != null ? blockCache.register(file, blockSize) : null;
   }
 
   /**
@@ -102,6 +108,9 @@ public final class IOBlockFile extends AbstractBlockFile {
   public void setNrBlocks(long nrBlocks) throws IOException {
     if (nrBlocks == this.nrBlocks) return;
 
+    // Blocks past the end of the file must be read as zeros if it grows again.
+    if (cache != null && nrBlocks < this.nrBlocks) cache.invalidate(nrBlocks);
+
     super.setNrBlocks(nrBlocks);
 
     if (nrBlocks <= allocatedNrBlocks) return;
@@ -153,6 +162,13 @@ public final class IOBlockFile extends AbstractBlockFile {
 
     ByteBuffer byteBuffer = block.getByteBuffer();
 
+    // Copy the block from the cache if it is there.
+    long cacheVersion = 0;
+    if (cache != null) {
+      if (cache.read(blockId, byteBuffer)) return block;
+      cacheVersion = cache.getVersion();
+    }
+
     for (;;) {
       try {
         // Reset the position in this byte buffer.
@@ -173,6 +189,8 @@ public final class IOBlockFile extends AbstractBlockFile {
       }
     }
 
+    if (cache != null) cache.fill(blockId, byteBuffer, cacheVersion);
+
     // Return the block.
     return block;
   }
@@ -211,6 +229,8 @@ public final class IOBlockFile extends AbstractBlockFile {
         // Loop back and retry the write.
       }
     }
+
+    if (cache != null) cache.write(blockId, byteBuffer);
   }
 
   /**
@@ -228,4 +248,40 @@ public final class IOBlockFile extends AbstractBlockFile {
     block.setBlockId(dstBlockId);
   }
 
+  /**
+   * Truncates the file to zero length, and discards any cached blocks.
+   *
+   * @throws IOException if an I/O error occurs.
+   */
+  public void clear() throws IOException {
+    if (cache != null) cache.invalidate(0);
+    super.clear();
+  }
+
+  /**
+   * Closes the block file, and stops caching its blocks.
+   *
+   * @throws IOException if an I/O error occurs
+   */
+  public synchronized void close() throws IOException {
+    try {
+      super.close();
+    } finally {
+      if (cache != null) {
+        cache.close();
+        cache = null;
+      }
+    }
+  }
+
+  /**
+   * Gets the statistics for the cached blocks of this file.
+   *
+   * @return The region of the shared cache for this file, or <code>null</code>
+   *     if the blocks are not cached.
+   */
+  public BlockCache.Region getCacheRegion() {
+    return cache;
+  }
+
 }
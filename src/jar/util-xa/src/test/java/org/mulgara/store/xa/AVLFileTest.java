@@ -106,6 +106,9 @@ public class AVLFileTest extends TestCase {
     suite.addTest(new AVLFileTest("testReinsert"));
     suite.addTest(new AVLFileTest("testPersist"));
     suite.addTest(new AVLFileTest("testMultiphase"));
+    suite.addTest(new AVLFileTest("testBuildTree"));
+    suite.addTest(new AVLFileTest("testCounted"));
+    suite.addTest(new AVLFileTest("testFindAscending"));
 
     return suite;
   }
@@ -455,6 +458,328 @@ public class AVLFileTest extends TestCase {
     }
   }
 
+  /**
+   * Test building a tree from the bottom up, then modifying it
+   *
+   * @throws IOException EXCEPTION TO DO
+   */
+  public void testBuildTree() throws IOException {
+
+    AVLFile.Phase phase0 = avlFile.new Phase();
+    avlFile.clear();
+
+    phase0.buildTree(0, null);
+    assertTrue(phase0.isEmpty());
+
+    phase0.buildTree(1000, new AVLFile.PayloadSource() {
+      private int value = 0;
+
+      public void putPayload(AVLNode node) {
+
+        value += 2;
+        node.putPayloadInt(1, value);
+      }
+    });
+    assertEquals(1000, phase0.getNrNodes());
+    assertEquals(10, getHeight(phase0));
+    checkBalance(phase0);
+
+    for (int i = 1; i <= 1000; i++) {
+
+      assertFound(find(phase0, i * 2), i * 2);
+    }
+    assertNotFound(find(phase0, 7), 6, 8);
+
+    try {
+
+      phase0.buildTree(1, null);
+      fail("Able to build a tree that is not empty");
+    }
+    catch (IllegalStateException ex) {
+
+    }
+
+    // the balances must be right for later inserts and removes
+    for (int i = 1; i <= 1000; i += 3) {
+
+      insert(phase0, i * 2 + 1);
+      find(phase0, i * 2)[0].remove();
+    }
+    checkBalance(phase0);
+    assertFound(find(phase0, 3), 3);
+    assertNotFound(find(phase0, 2), 0, 3);
+  }
+
+  /**
+   * Test the subtree weights of a counted file through inserts, removes and
+   * changes of weight.
+   *
+   * @throws IOException EXCEPTION TO DO
+   */
+  public void testCounted() throws IOException {
+
+    AVLFile countedFile = new AVLFile(new File(TempDir.getTempDir(), "avlfiletest-counted"), 2, 2);
+
+    try {
+
+      assertTrue(countedFile.isCounted());
+      assertFalse(avlFile.isCounted());
+
+      AVLFile.Phase phase0 = countedFile.new Phase();
+      countedFile.clear();
+
+      // weights are indexed by key, and 0 when the key is not in the tree
+      int[] weights = new int[1000];
+      java.util.Random random = new java.util.Random(42);
+
+      for (int i = 0; i < 600; i++) {
+
+        int key = random.nextInt(weights.length - 1) + 1;
+
+        if (weights[key] == 0) {
+
+          weights[key] = random.nextInt(100) + 1;
+          insert(phase0, key, weights[key]);
+        }
+      }
+      checkWeights(phase0, weights);
+
+      // remove keys, including those with two children
+      for (int key = 1; key < weights.length; key += 3) {
+
+        if (weights[key] != 0) {
+
+          AVLNode[] nodes = find(phase0, key);
+          nodes[0].remove();
+          weights[key] = 0;
+        }
+      }
+      checkWeights(phase0, weights);
+
+      // change weights in place
+      for (int key = 2; key < weights.length; key += 5) {
+
+        if (weights[key] != 0) {
+
+          AVLNode[] nodes = find(phase0, key);
+
+          try {
+
+            nodes[0].modify();
+            weights[key] = random.nextInt(100) + 1;
+            nodes[0].putPayloadInt(2, weights[key]);
+            nodes[0].write();
+          }
+          finally {
+
+            AVLFile.release(nodes);
+          }
+        }
+      }
+      checkWeights(phase0, weights);
+
+      // remove everything
+      for (int key = 1; key < weights.length; key++) {
+
+        if (weights[key] != 0) {
+
+          find(phase0, key)[0].remove();
+          weights[key] = 0;
+        }
+      }
+      assertTrue(phase0.isEmpty());
+    }
+    finally {
+
+      countedFile.unmap();
+      countedFile.close();
+    }
+  }
+
+  /**
+   * Searches for ascending keys, starting from the node where the previous
+   * search ended, give the same results as searches from the root.
+   *
+   * @throws IOException If an i/o error occurs.
+   */
+  public void testFindAscending() throws IOException {
+
+    AVLFile.Phase phase0 = avlFile.new Phase();
+    avlFile.clear();
+
+    java.util.Random random = new java.util.Random(42);
+    boolean[] present = new boolean[300];
+
+    for (int i = 0; i < 150; i++) {
+
+      int key = 2 * (random.nextInt(present.length / 2 - 1) + 1);
+
+      if (!present[key]) {
+
+        present[key] = true;
+        insert(phase0, key);
+      }
+    }
+
+    AVLNode hint = null;
+
+    try {
+
+      for (int key = 1; key < present.length; key++) {
+
+        AVLNode[] expected = find(phase0, key);
+        AVLNode[] nodes = (hint == null) ? find(phase0, key)
+            : AVLNode.findAscending(hint, comparator, new long[] {key});
+
+        try {
+
+          assertEquals("Wrong result for " + key, expected.length, nodes.length);
+          assertEquals(present[key] ? 1 : 2, nodes.length);
+
+          for (int i = 0; i < nodes.length; i++) {
+
+            assertEquals("Wrong node for " + key, getKey(expected[i]), getKey(nodes[i]));
+          }
+
+          AVLNode last = nodes[nodes.length == 1 ? 0 : AVLFile.leafIndex(nodes)];
+          last.incRefCount();
+
+          if (hint != null) {
+
+            hint.release();
+          }
+          hint = last;
+        }
+        finally {
+
+          AVLFile.release(expected);
+          AVLFile.release(nodes);
+        }
+      }
+    }
+    finally {
+
+      if (hint != null) {
+
+        hint.release();
+      }
+    }
+  }
+
+  /**
+   * Checks the subtree weight and rank of every node in a counted tree.
+   *
+   * @param phase The phase holding the tree.
+   * @param weights The weight of each key in the tree.
+   */
+  private void checkWeights(AVLFile.Phase phase, int[] weights) {
+
+    checkBalance(phase);
+
+    long total = 0;
+
+    for (int key = 1; key < weights.length; key++) {
+
+      if (weights[key] != 0) {
+
+        AVLNode[] nodes = find(phase, key);
+
+        try {
+
+          assertEquals("Wrong rank for " + key, total, nodes[0].getRank());
+        }
+        finally {
+
+          AVLFile.release(nodes);
+        }
+
+        total += weights[key];
+      }
+    }
+
+    AVLNode rootNode = phase.getRootNode();
+    assertEquals(total, rootNode.getSubtreeWeight());
+    checkSubtreeWeight(rootNode);
+    rootNode.release();
+  }
+
+  /**
+   * Checks that every node in a subtree records the weight of its subtree.
+   *
+   * @param node The root of the subtree.
+   * @return The weight of the subtree.
+   */
+  private long checkSubtreeWeight(AVLNode node) {
+
+    if (node == null) {
+
+      return 0;
+    }
+
+    AVLNode lNode = node.getLeftChildNode();
+    AVLNode rNode = node.getRightChildNode();
+    long weight = checkSubtreeWeight(lNode) + checkSubtreeWeight(rNode) + node.getPayloadInt(2);
+
+    if (lNode != null) {
+
+      lNode.release();
+    }
+
+    if (rNode != null) {
+
+      rNode.release();
+    }
+
+    assertEquals("Wrong subtree weight for " + getKey(node), weight, node.getSubtreeWeight());
+
+    return weight;
+  }
+
+  /**
+   * Checks that every node in a tree has the balance of its subtrees.
+   *
+   * @param phase The phase holding the tree.
+   */
+  private void checkBalance(AVLFile.Phase phase) {
+
+    AVLNode node = phase.getRootNode();
+    checkBalance(node);
+    node.release();
+  }
+
+  /**
+   * Checks that every node in a subtree has the balance of its subtrees.
+   *
+   * @param node The root of the subtree.
+   * @return The height of the subtree.
+   */
+  private int checkBalance(AVLNode node) {
+
+    if (node == null) {
+
+      return 0;
+    }
+
+    AVLNode lNode = node.getLeftChildNode();
+    AVLNode rNode = node.getRightChildNode();
+    int heightL = checkBalance(lNode);
+    int heightR = checkBalance(rNode);
+
+    if (lNode != null) {
+
+      lNode.release();
+    }
+
+    if (rNode != null) {
+
+      rNode.release();
+    }
+
+    assertEquals("Wrong balance for " + getKey(node), heightL - heightR, node.getBalance());
+
+    return Math.max(heightL, heightR) + 1;
+  }
+
   /**
    * METHOD TO DO
    *
@@ -527,6 +852,19 @@ public class AVLFileTest extends TestCase {
    */
   private void insert(AVLFile.Phase phase, int value) throws IOException {
 
+    insert(phase, value, 0);
+  }
+
+  /**
+   * Inserts a node with a weight into a counted tree.
+   *
+   * @param phase The phase holding the tree.
+   * @param value The key of the node.
+   * @param weight The weight of the node, or 0 for an uncounted tree.
+   * @throws IOException If an i/o error occurs.
+   */
+  private void insert(AVLFile.Phase phase, int value, int weight) throws IOException {
+
     AVLNode[] findResult = find(phase, value);
 
     try {
@@ -536,6 +874,11 @@ public class AVLFileTest extends TestCase {
       try {
 
         newNode.putPayloadInt(1, value);
+
+        if (weight != 0) {
+
+          newNode.putPayloadInt(2, weight);
+        }
         newNode.write();
 
         if (findResult == null) {
@@ -0,0 +1,264 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.store.xa;
+
+// Java 2 standard packages
+import java.io.*;
+import java.nio.ByteBuffer;
+
+// Third party packages
+import junit.framework.*;
+
+import org.mulgara.util.TempDir;
+
+/**
+ * Test cases for {@link BlockCache}, and its use by {@link IOBlockFile}.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public class BlockCacheTest extends TestCase {
+
+  /** A block size which gives 4 frames to a slab. */
+  private static final int BLOCK_SIZE = 64 * 1024;
+
+  /**
+   * Named constructor.
+   *
+   * @param name The name of the test.
+   */
+  public BlockCacheTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Hook for test runner to obtain a test suite from.
+   *
+   * @return The test suite to run.
+   */
+  public static Test suite() {
+    TestSuite suite = new TestSuite();
+    suite.addTest(new BlockCacheTest("testReadWrite"));
+    suite.addTest(new BlockCacheTest("testEviction"));
+    suite.addTest(new BlockCacheTest("testStaleFill"));
+    suite.addTest(new BlockCacheTest("testConcurrentWrite"));
+    suite.addTest(new BlockCacheTest("testInvalidate"));
+    suite.addTest(new BlockCacheTest("testBlockFile"));
+    return suite;
+  }
+
+  /**
+   * Default test runner.
+   *
+   * @param args The command line arguments
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+
+  /**
+   * Read blocks after writing them, and count hits and misses.
+   */
+  public void testReadWrite() {
+    BlockCache cache = new BlockCache(1024 * 1024);
+    BlockCache.Region region = cache.register(new File("a"), BLOCK_SIZE);
+    ByteBuffer dst = ByteBuffer.allocateDirect(BLOCK_SIZE);
+
+    assertFalse(region.read(3, dst));
+    region.write(3, block(42));
+    assertTrue(region.read(3, dst));
+    assertEquals(42, dst.getInt(0));
+    assertEquals(42, dst.getInt(BLOCK_SIZE - 4));
+
+    // the cache holds a copy
+    ByteBuffer src = block(7);
+    region.write(4, src);
+    src.putInt(0, 8);
+    assertTrue(region.read(4, dst));
+    assertEquals(7, dst.getInt(0));
+
+    region.write(4, block(9));
+    assertTrue(region.read(4, dst));
+    assertEquals(9, dst.getInt(0));
+
+    // blocks of other files are kept apart
+    BlockCache.Region other = cache.register(new File("b"), BLOCK_SIZE);
+    assertFalse(other.read(3, dst));
+
+    assertEquals(3, region.getHits());
+    assertEquals(1, region.getMisses());
+    assertEquals(3, region.getWrites());
+    assertEquals(1, other.getMisses());
+    assertNull(cache.register(new File("c"), 2 * 1024 * 1024));
+  }
+
+  /**
+   * Fill a small cache, and check that the least recently used blocks are evicted.
+   */
+  public void testEviction() {
+    BlockCache cache = new BlockCache(4 * BLOCK_SIZE);
+    BlockCache.Region region = cache.register(new File("a"), BLOCK_SIZE);
+    ByteBuffer dst = ByteBuffer.allocateDirect(BLOCK_SIZE);
+
+    for (int i = 0; i < 4; i++) region.write(i, block(i));
+    assertEquals(4 * BLOCK_SIZE, cache.getAllocated());
+    assertEquals(0, region.getEvictions());
+
+    // a full turn of the clock clears every reference, then block 0 goes
+    region.write(4, block(4));
+    assertEquals(1, region.getEvictions());
+    assertFalse(region.read(0, dst));
+
+    // block 1 has been used, so block 2 goes next
+    assertTrue(region.read(1, dst));
+    region.write(5, block(5));
+    assertTrue(region.read(1, dst));
+    assertFalse(region.read(2, dst));
+    assertTrue(region.read(5, dst));
+    assertEquals(5, dst.getInt(0));
+    assertEquals(4 * BLOCK_SIZE, cache.getAllocated());
+
+    // a slab is divided again for another size once none of it is being used
+    BlockCache.Region small = cache.register(new File("b"), BLOCK_SIZE / 2);
+    small.write(0, ByteBuffer.allocateDirect(BLOCK_SIZE / 2));
+    assertTrue(small.read(0, ByteBuffer.allocateDirect(BLOCK_SIZE / 2)));
+    assertFalse(region.read(1, dst));
+    assertEquals(6, region.getEvictions());
+    assertEquals(4 * BLOCK_SIZE, cache.getAllocated());
+  }
+
+  /**
+   * Of two writes to a block which overlap, the older data is never published,
+   * whichever copy finishes last.
+   */
+  public void testConcurrentWrite() {
+    BlockCache cache = new BlockCache(1024 * 1024);
+    BlockCache.Region region = cache.register(new File("a"), BLOCK_SIZE);
+    ByteBuffer dst = ByteBuffer.allocateDirect(BLOCK_SIZE);
+
+    // the older write finishes copying last
+    long older = region.startWrite(2);
+    long newer = region.startWrite(2);
+    region.store(2, block(2), newer);
+    region.store(2, block(1), older);
+    assertTrue(region.read(2, dst));
+    assertEquals(2, dst.getInt(0));
+
+    // the older write finishes copying first
+    older = region.startWrite(2);
+    assertFalse(region.read(2, dst));
+    newer = region.startWrite(2);
+    region.store(2, block(3), older);
+    assertFalse(region.read(2, dst));
+    region.store(2, block(4), newer);
+    assertTrue(region.read(2, dst));
+    assertEquals(4, dst.getInt(0));
+  }
+
+  /**
+   * Data read from a file is not cached if a block was written while it was read.
+   */
+  public void testStaleFill() {
+    BlockCache cache = new BlockCache(1024 * 1024);
+    BlockCache.Region region = cache.register(new File("a"), BLOCK_SIZE);
+    ByteBuffer dst = ByteBuffer.allocateDirect(BLOCK_SIZE);
+
+    long version = region.getVersion();
+    region.write(1, block(2));
+    region.fill(1, block(1), version);
+    assertTrue(region.read(1, dst));
+    assertEquals(2, dst.getInt(0));
+
+    region.fill(6, block(6), version);
+    assertFalse(region.read(6, dst));
+    region.fill(6, block(6), region.getVersion());
+    assertTrue(region.read(6, dst));
+    assertEquals(6, dst.getInt(0));
+  }
+
+  /**
+   * Discard blocks when a file is truncated or closed.
+   */
+  public void testInvalidate() {
+    BlockCache cache = new BlockCache(1024 * 1024);
+    BlockCache.Region region = cache.register(new File("a"), BLOCK_SIZE);
+    ByteBuffer dst = ByteBuffer.allocateDirect(BLOCK_SIZE);
+
+    for (int i = 0; i < 8; i++) region.write(i, block(i));
+    region.invalidate(5);
+    for (int i = 0; i < 8; i++) assertEquals(i < 5, region.read(i, dst));
+
+    region.close();
+    assertFalse(region.read(0, dst));
+    region.write(0, block(0));
+    assertFalse(region.read(0, dst));
+
+    // the frames are reused
+    BlockCache.Region other = cache.register(new File("b"), BLOCK_SIZE);
+    for (int i = 0; i < 16; i++) other.write(i, block(i));
+    assertEquals(16 * BLOCK_SIZE, cache.getAllocated());
+  }
+
+  /**
+   * Read and write through an explicit I/O block file.
+   *
+   * @throws IOException If the file could not be used.
+   */
+  public void testBlockFile() throws IOException {
+    assertNotNull("The shared cache should be enabled by default", BlockCache.getSharedCache());
+    IOBlockFile blockFile = new IOBlockFile(new File(TempDir.getTempDir(), "bcachetest"), BLOCK_SIZE);
+    try {
+      blockFile.clear();
+      BlockCache.Region region = blockFile.getCacheRegion();
+      assertNotNull(region);
+
+      blockFile.setNrBlocks(10);
+      for (int i = 0; i < 10; i++) {
+        Block block = blockFile.allocateBlock(i);
+        block.putInt(0, i + 100);
+        block.write();
+      }
+      for (int i = 0; i < 10; i++) {
+        assertEquals(i + 100, blockFile.readBlock(i).getInt(0));
+      }
+      assertEquals(10, region.getHits());
+
+      // truncating the file discards the cached blocks past the end
+      blockFile.setNrBlocks(5);
+      blockFile.setNrBlocks(10);
+      assertEquals(104, blockFile.readBlock(4).getInt(0));
+      blockFile.readBlock(7);
+      assertEquals(11, region.getHits());
+      assertEquals(1, region.getMisses());
+
+      blockFile.clear();
+      blockFile.setNrBlocks(1);
+      assertEquals(0, blockFile.readBlock(0).getInt(0));
+    } finally {
+      blockFile.delete();
+    }
+    assertNull(blockFile.getCacheRegion());
+  }
+
+  /**
+   * Creates a block with every int set to a value.
+   *
+   * @param value The value to fill the block with.
+   * @return The new block.
+   */
+  private static ByteBuffer block(int value) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_SIZE);
+    for (int i = 0; i < BLOCK_SIZE; i += 4) buffer.putInt(i, value);
+    return buffer;
+  }
+}
@@ -0,0 +1,342 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mulgara.util;
+
+// Java 2 standard packages
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache that can be read concurrently without locking. The size of the cache
+ * is measured in bytes, with the size of each entry estimated by the caller. Entries are
+ * spread over a number of stripes, each with its own lock for modifications and its own
+ * share of the size budget. Each stripe evicts entries with the CLOCK algorithm, which
+ * gives a recently read entry a second chance before it is removed.
+ *
+ * <p>Entries can be tagged with a version, for caches that are shared between phases of a
+ * transactional store. A lookup only sees entries with a version no greater than the
+ * version of the reader. Removing an entry records the version of the remover, and later
+ * insertions with an older version are ignored in that stripe, since the inserted value
+ * may no longer be current.</p>
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public class StripedCache<K,V> {
+
+  /** The default number of stripes. */
+  public static final int DEFAULT_STRIPES = 16;
+
+  /** The estimated number of bytes used by an entry, in addition to the size of its value. */
+  public static final int ENTRY_OVERHEAD = 64;
+
+  /** The version used for entries that are not versioned. */
+  private static final long UNVERSIONED = 0;
+
+  /** All of the entries in the cache. */
+  private final ConcurrentHashMap<K,Entry<K,V>> map;
+
+  /** The stripes holding the entries. */
+  private final Stripe<K,V>[] stripes;
+
+  /** The mask for selecting a stripe from a hash code. */
+  private final int mask;
+
+  /** The maximum number of bytes for each stripe. */
+  private final long stripeBytes;
+
+
+  /**
+   * Creates a cache with the default number of stripes.
+   * @param maxBytes The approximate maximum number of bytes to be held by the cache.
+   */
+  public StripedCache(long maxBytes) {
+    this(maxBytes, DEFAULT_STRIPES);
+  }
+
+
+  /**
+   * Creates a cache.
+   * @param maxBytes The approximate maximum number of bytes to be held by the cache.
+   * @param nrStripes The number of independently locked stripes. Rounded up to a power of 2.
+   */
+  public StripedCache(long maxBytes, int nrStripes) {
+    if (maxBytes < 0) throw new IllegalArgumentException("Negative cache size: " + maxBytes);
+    if (nrStripes < 1) throw new IllegalArgumentException("Cache must have at least one stripe");
+    int n = Integer.highestOneBit(nrStripes);
+    if (n < nrStripes) n <<= 1;
+    mask = n - 1;
+    stripeBytes = maxBytes / n;
+    @SuppressWarnings("unchecked")
+    Stripe<K,V>[] s = (Stripe<K,V>[])new Stripe[n];
+    for (int i = 0; i < n; i++) s[i] = new Stripe<K,V>();
+    stripes = s;
+    map = new ConcurrentHashMap<K,Entry<K,V>>(16, 0.75F, n);
+  }
+
+
+  /**
+   * Gets an unversioned value from the cache.
+   * @param key The key to look up.
+   * @return The value for the key, or <code>null</code> if it is not in the cache.
+   */
+  public V get(K key) {
+    return get(key, Long.MAX_VALUE);
+  }
+
+
+  /**
+   * Gets a value from the cache, if it was inserted at or before the given version.
+   * @param key The key to look up.
+   * @param version The version of the reader.
+   * @return The value for the key, or <code>null</code> if it is not in the cache for this version.
+   */
+  public V get(K key, long version) {
+    Entry<K,V> e = map.get(key);
+    Stripe<K,V> s = stripe(key);
+    if (e == null || e.version > version) {
+      s.misses.incrementAndGet();
+      return null;
+    }
+    e.referenced = true;
+    s.hits.incrementAndGet();
+    return e.value;
+  }
+
+
+  /**
+   * Inserts an unversioned value into the cache.
+   * @param key The key for the value.
+   * @param value The value to insert. May not be <code>null</code>.
+   * @param bytes The estimated size of the value, in bytes.
+   */
+  public void put(K key, V value, int bytes) {
+    put(key, value, bytes, UNVERSIONED);
+  }
+
+
+  /**
+   * Inserts a value into the cache. This is ignored if an entry in the same stripe has been
+   * removed by a version later than the version inserting the value.
+   * @param key The key for the value.
+   * @param value The value to insert. May not be <code>null</code>.
+   * @param bytes The estimated size of the value, in bytes.
+   * @param version The version of the inserter.
+   * @return <code>true</code> if the value was inserted.
+   */
+  public boolean put(K key, V value, int bytes, long version) {
+    if (value == null) throw new IllegalArgumentException("Null values cannot be cached");
+    int weight = bytes + ENTRY_OVERHEAD;
+    if (weight > stripeBytes) return false;
+    Stripe<K,V> s = stripe(key);
+    synchronized (s) {
+      if (version < s.removedVersion) return false;
+      Entry<K,V> e = new Entry<K,V>(key, value, weight, version);
+      Entry<K,V> old = map.put(key, e);
+      if (old != null) s.discard(old);
+      s.add(e);
+      while (s.bytes > stripeBytes) {
+        Entry<K,V> victim = s.clock.poll();
+        if (!victim.live) continue;
+        if (victim.referenced) {
+          victim.referenced = false;
+          s.clock.add(victim);
+        } else {
+          map.remove(victim.key, victim);
+          s.discard(victim);
+          s.evictions++;
+        }
+      }
+    }
+    return true;
+  }
+
+
+  /**
+   * Removes an unversioned value from the cache.
+   * @param key The key of the value to remove.
+   */
+  public void remove(K key) {
+    remove(key, UNVERSIONED);
+  }
+
+
+  /**
+   * Removes a value from the cache, and prevents older versions from inserting into the same stripe.
+   * @param key The key of the value to remove.
+   * @param version The version of the remover.
+   */
+  public void remove(K key, long version) {
+    Stripe<K,V> s = stripe(key);
+    synchronized (s) {
+      if (version > s.removedVersion) s.removedVersion = version;
+      Entry<K,V> e = map.remove(key);
+      if (e != null) s.discard(e);
+    }
+  }
+
+
+  /**
+   * Removes all entries from the cache.
+   */
+  public void clear() {
+    clear(UNVERSIONED);
+  }
+
+
+  /**
+   * Removes all entries from the cache, and prevents older versions from inserting into it.
+   * @param version The version of the remover.
+   */
+  public void clear(long version) {
+    for (Stripe<K,V> s: stripes) {
+      synchronized (s) {
+        if (version > s.removedVersion) s.removedVersion = version;
+        for (Entry<K,V> e: s.clock) {
+          if (e.live) {
+            map.remove(e.key, e);
+            e.live = false;
+          }
+        }
+        s.clock.clear();
+        s.bytes = 0;
+        s.count = 0;
+      }
+    }
+  }
+
+
+  /** @return The number of entries in the cache. */
+  public int size() {
+    return map.size();
+  }
+
+  /** @return The estimated number of bytes held by the cache. */
+  public long getBytes() {
+    long total = 0;
+    for (Stripe<K,V> s: stripes) total += s.bytes;
+    return total;
+  }
+
+  /** @return The number of lookups that found a value. */
+  public long getHits() {
+    long total = 0;
+    for (Stripe<K,V> s: stripes) total += s.hits.get();
+    return total;
+  }
+
+  /** @return The number of lookups that did not find a value. */
+  public long getMisses() {
+    long total = 0;
+    for (Stripe<K,V> s: stripes) total += s.misses.get();
+    return total;
+  }
+
+  /** @return The number of entries removed to make space for new entries. */
+  public long getEvictions() {
+    long total = 0;
+    for (Stripe<K,V> s: stripes) total += s.evictions;
+    return total;
+  }
+
+
+  /**
+   * Describes the state of the cache.
+   * @return A string with the size and counters of the cache.
+   */
+  public String toString() {
+    return "entries=" + size() + ", bytes=" + getBytes() + ", hits=" + getHits() +
+           ", misses=" + getMisses() + ", evictions=" + getEvictions();
+  }
+
+
+  /**
+   * Finds the stripe for a key.
+   * @param key The key to find the stripe for.
+   * @return The stripe holding the key.
+   */
+  private Stripe<K,V> stripe(K key) {
+    int h = key.hashCode();
+    h ^= (h >>> 20) ^ (h >>> 12);
+    h ^= (h >>> 7) ^ (h >>> 4);
+    return stripes[h & mask];
+  }
+
+
+  /**
+   * A cached value.
+   */
+  private static final class Entry<K,V> {
+    final K key;
+    final V value;
+    final int weight;
+    final long version;
+    /** Set when the entry is read, and cleared as the clock passes it. */
+    volatile boolean referenced = false;
+    /** Cleared when the entry is no longer in the map. Guarded by the stripe. */
+    boolean live = true;
+
+    Entry(K key, V value, int weight, long version) {
+      this.key = key;
+      this.value = value;
+      this.weight = weight;
+      this.version = version;
+    }
+  }
+
+
+  /**
+   * A section of the cache, with its own clock and size. The fields are guarded by the stripe.
+   */
+  private static final class Stripe<K,V> {
+    /** The entries of this stripe, in clock order. May contain entries that are no longer live. */
+    final ArrayDeque<Entry<K,V>> clock = new ArrayDeque<Entry<K,V>>();
+    final AtomicLong hits = new AtomicLong();
+    final AtomicLong misses = new AtomicLong();
+    volatile long evictions = 0;
+    volatile long bytes = 0;
+    /** The number of live entries. */
+    int count = 0;
+    /** The latest version to remove an entry from this stripe. */
+    long removedVersion = UNVERSIONED;
+
+    /**
+     * Adds a new live entry to the clock.
+     * @param e The entry to add.
+     */
+    void add(Entry<K,V> e) {
+      clock.add(e);
+      bytes += e.weight;
+      count++;
+    }
+
+    /**
+     * Marks an entry as no longer live. When more than half the clock is made up of entries
+     * that are not live then these are cleaned out.
+     * @param e The entry that has been removed from the map.
+     */
+    void discard(Entry<K,V> e) {
+      if (!e.live) return;
+      e.live = false;
+      bytes -= e.weight;
+      count--;
+      if (clock.size() > 2 * count + 16) {
+        for (Iterator<Entry<K,V>> i = clock.iterator(); i.hasNext(); ) {
+          if (!i.next().live) i.remove();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * The contents of this file are subject to the Open Software License
+ * Version 3.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.opensource.org/licenses/osl-3.0.txt
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ */
+
+package org.mulgara.util;
+
+// Third party packages
+import junit.framework.*;
+
+/**
+ * Test cases for {@link StripedCache}.
+ *
+ * @created 2026-10-17
+ * @licence <a href="{@docRoot}/../../LICENCE">Open Software License v3.0</a>
+ */
+public class StripedCacheUnitTest extends TestCase {
+
+  /**
+   * Named constructor.
+   *
+   * @param name The name of the test.
+   */
+  public StripedCacheUnitTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Hook for test runner to obtain a test suite from.
+   *
+   * @return The test suite to run.
+   */
+  public static Test suite() {
+    TestSuite suite = new TestSuite();
+    suite.addTest(new StripedCacheUnitTest("testPutAndGet"));
+    suite.addTest(new StripedCacheUnitTest("testEviction"));
+    suite.addTest(new StripedCacheUnitTest("testSecondChance"));
+    suite.addTest(new StripedCacheUnitTest("testVersions"));
+    suite.addTest(new StripedCacheUnitTest("testConcurrent"));
+    return suite;
+  }
+
+  /**
+   * Default text runner.
+   *
+   * @param args The command line arguments
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+
+  /**
+   * Test basic insertion, lookup and removal.
+   */
+  public void testPutAndGet() {
+    StripedCache<Long,String> cache = new StripedCache<Long,String>(1024 * 1024);
+    for (long i = 0; i < 100; i++) cache.put(i, "v" + i, 2);
+    assertEquals(100, cache.size());
+    assertEquals(100 * (2 + StripedCache.ENTRY_OVERHEAD), cache.getBytes());
+    for (long i = 0; i < 100; i++) assertEquals("v" + i, cache.get(i));
+    assertNull(cache.get(100L));
+    assertEquals(100, cache.getHits());
+    assertEquals(1, cache.getMisses());
+
+    cache.put(5L, "five", 4);
+    assertEquals("five", cache.get(5L));
+    assertEquals(100 * (2 + StripedCache.ENTRY_OVERHEAD) + 2, cache.getBytes());
+    cache.remove(5L);
+    assertNull(cache.get(5L));
+    assertEquals(99, cache.size());
+
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getBytes());
+    assertNull(cache.get(1L));
+  }
+
+  /**
+   * Test that the cache stays within its size.
+   */
+  public void testEviction() {
+    int entry = 36 + StripedCache.ENTRY_OVERHEAD;
+    StripedCache<Integer,String> cache = new StripedCache<Integer,String>(4 * 100 * entry, 4);
+    for (int i = 0; i < 10000; i++) cache.put(i, "value", 36);
+    assertTrue(cache.getBytes() <= 4 * 100 * entry);
+    assertTrue(cache.size() > 0 && cache.size() <= 400);
+    assertEquals(10000 - cache.size(), cache.getEvictions());
+
+    // values larger than a stripe are not cached
+    cache.put(-1, "big", 200 * entry);
+    assertNull(cache.get(-1));
+  }
+
+  /**
+   * Test that recently read entries survive eviction in preference to unread entries.
+   */
+  public void testSecondChance() {
+    int entry = StripedCache.ENTRY_OVERHEAD;
+    StripedCache<Integer,String> cache = new StripedCache<Integer,String>(10 * entry, 1);
+    for (int i = 0; i < 10; i++) cache.put(i, "v" + i, 0);
+    assertEquals("v0", cache.get(0));
+    cache.put(10, "v10", 0);
+    assertEquals("v0", cache.get(0));
+    assertNull(cache.get(1));
+    assertEquals("v10", cache.get(10));
+    assertEquals(1, cache.getEvictions());
+  }
+
+  /**
+   * Test that versions hide newer entries, and block stale insertions after a removal.
+   */
+  public void testVersions() {
+    StripedCache<String,Long> cache = new StripedCache<String,Long>(1024 * 1024, 1);
+    assertTrue(cache.put("a", 1L, 0, 5));
+    assertEquals(Long.valueOf(1), cache.get("a", 5));
+    assertEquals(Long.valueOf(1), cache.get("a", 6));
+    assertNull(cache.get("a", 4));
+
+    cache.remove("a", 7);
+    assertNull(cache.get("a", 7));
+    // an older reader can't put back what it sees
+    assertFalse(cache.put("a", 1L, 0, 6));
+    assertFalse(cache.put("b", 2L, 0, 6));
+    assertNull(cache.get("a", 8));
+    assertTrue(cache.put("a", 3L, 0, 7));
+    assertEquals(Long.valueOf(3), cache.get("a", 8));
+
+    // clearing blocks older insertions in every stripe
+    StripedCache<Integer,String> striped = new StripedCache<Integer,String>(1024 * 1024, 4);
+    for (int i = 0; i < 10; i++) assertTrue(striped.put(i, "v" + i, 0, 1));
+    striped.clear(2);
+    assertEquals(0, striped.size());
+    for (int i = 0; i < 10; i++) assertFalse(striped.put(i, "v" + i, 0, 1));
+    assertTrue(striped.put(3, "v3", 0, 2));
+    assertEquals("v3", striped.get(3));
+  }
+
+  /**
+   * Test reading and writing from several threads at once.
+   */
+  public void testConcurrent() throws Exception {
+    final StripedCache<Integer,Integer> cache = new StripedCache<Integer,Integer>(1000 * (4 + StripedCache.ENTRY_OVERHEAD), 4);
+    final Throwable[] failure = new Throwable[1];
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      final int seed = t;
+      threads[t] = new Thread() {
+        public void run() {
+          try {
+            for (int i = 0; i < 20000; i++) {
+              int k = (i * 31 + seed) % 3000;
+              Integer v = cache.get(k);
+              if (v == null) cache.put(k, k, 4);
+              else assertEquals(k, v.intValue());
+            }
+          } catch (Throwable e) {
+            failure[0] = e;
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread t: threads) t.join();
+    if (failure[0] != null) throw new Exception("Failure in cache thread", failure[0]);
+    assertEquals(80000, cache.getHits() + cache.getMisses());
+    assertTrue(cache.getBytes() <= 1000 * (4 + StripedCache.ENTRY_OVERHEAD));
+  }
+}